@@ -0,0 +1,166 @@
+package com.echocampus.bot.benchmark;
+
+import com.echocampus.bot.vector.MilvusVectorCodec;
+import io.milvus.grpc.CollectionSchema;
+import io.milvus.grpc.DataType;
+import io.milvus.grpc.DescribeCollectionResponse;
+import io.milvus.grpc.FieldData;
+import io.milvus.grpc.InsertRequest;
+import io.milvus.grpc.MsgBase;
+import io.milvus.grpc.MsgType;
+import io.milvus.grpc.ScalarField;
+import io.milvus.grpc.SearchRequest;
+import io.milvus.grpc.StringArray;
+import io.milvus.param.MetricType;
+import io.milvus.param.ParamUtils;
+import io.milvus.param.collection.FieldType;
+import io.milvus.param.dml.InsertParam;
+import io.milvus.param.dml.SearchParam;
+import io.milvus.response.DescCollResponseWrapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Milvus写入/检索请求的向量转换开销：SDK装箱路径 与 MilvusVectorCodec 对比
+ * <p>
+ * 只测请求构建（不发起RPC）。配合 -prof gc 查看 gc.alloc.rate.norm（每次操作分配字节数）。
+ * 运行方式：mvn -Pjmh test-compile exec:exec -Djmh.args="MilvusVectorCodec -prof gc"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MilvusVectorCodecBenchmark {
+
+    private static final String COLLECTION = "knowledge";
+
+    @Param({"1024"})
+    private int dim;
+
+    @Param({"1000"})
+    private int rows;
+
+    private List<float[]> vectors;
+    private List<String> ids;
+    private float[] query;
+    private DescCollResponseWrapper schema;
+    private SearchRequest searchTemplate;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        vectors = new ArrayList<>(rows);
+        ids = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            vectors.add(randomVector(random));
+            ids.add(UUID.randomUUID().toString());
+        }
+        query = randomVector(random);
+
+        FieldType idField = FieldType.newBuilder()
+                .withName("id")
+                .withDataType(DataType.VarChar)
+                .withMaxLength(100)
+                .withPrimaryKey(true)
+                .build();
+        FieldType vectorField = FieldType.newBuilder()
+                .withName("vector")
+                .withDataType(DataType.FloatVector)
+                .withDimension(dim)
+                .build();
+        schema = new DescCollResponseWrapper(DescribeCollectionResponse.newBuilder()
+                .setCollectionName(COLLECTION)
+                .setSchema(CollectionSchema.newBuilder()
+                        .setName(COLLECTION)
+                        .addFields(ParamUtils.ConvertField(idField))
+                        .addFields(ParamUtils.ConvertField(vectorField)))
+                .build());
+        searchTemplate = ParamUtils.convertSearchParam(searchParam(
+                Collections.singletonList(Collections.singletonList(0f))));
+    }
+
+    /**
+     * 改造前：float[] 装箱为 List&lt;Float&gt;，再由 SDK 校验并转换
+     */
+    @Benchmark
+    public InsertRequest insertBoxed() {
+        List<InsertParam.Field> fields = List.of(
+                new InsertParam.Field("id", ids),
+                new InsertParam.Field("vector", boxed(vectors)));
+        InsertParam param = InsertParam.newBuilder()
+                .withCollectionName(COLLECTION)
+                .withFields(fields)
+                .build();
+        return new ParamUtils.InsertBuilderWrapper(param, schema).buildInsertRequest();
+    }
+
+    @Benchmark
+    public InsertRequest insertCodec() {
+        return InsertRequest.newBuilder()
+                .setBase(MsgBase.newBuilder().setMsgType(MsgType.Insert))
+                .setCollectionName(COLLECTION)
+                .setNumRows(rows)
+                .addFieldsData(FieldData.newBuilder()
+                        .setFieldName("id")
+                        .setType(DataType.VarChar)
+                        .setScalars(ScalarField.newBuilder().setStringData(StringArray.newBuilder().addAllData(ids))))
+                .addFieldsData(MilvusVectorCodec.floatVectorField("vector", vectors))
+                .build();
+    }
+
+    @Benchmark
+    public SearchRequest searchBoxed() {
+        List<Float> boxed = new ArrayList<>();
+        for (float v : query) {
+            boxed.add(v);
+        }
+        return ParamUtils.convertSearchParam(searchParam(Collections.singletonList(boxed)));
+    }
+
+    @Benchmark
+    public SearchRequest searchCodec() {
+        return searchTemplate.toBuilder()
+                .setPlaceholderGroup(MilvusVectorCodec.placeholderGroup(query))
+                .build();
+    }
+
+    private SearchParam searchParam(List<List<Float>> queryVectors) {
+        return SearchParam.newBuilder()
+                .withCollectionName(COLLECTION)
+                .withMetricType(MetricType.COSINE)
+                .withOutFields(List.of("id", "chunk_id", "doc_id", "content", "category"))
+                .withTopK(5)
+                .withVectors(queryVectors)
+                .withVectorFieldName("vector")
+                .withParams("{\"nprobe\":16}")
+                .build();
+    }
+
+    private static List<List<Float>> boxed(List<float[]> vectors) {
+        List<List<Float>> result = new ArrayList<>(vectors.size());
+        for (float[] vector : vectors) {
+            List<Float> list = new ArrayList<>();
+            for (float v : vector) {
+                list.add(v);
+            }
+            result.add(list);
+        }
+        return result;
+    }
+
+    private float[] randomVector(Random random) {
+        float[] vector = new float[dim];
+        for (int i = 0; i < dim; i++) {
+            vector[i] = random.nextFloat() * 2 - 1;
+        }
+        return vector;
+    }
+}
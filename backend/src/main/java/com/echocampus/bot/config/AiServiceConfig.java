@@ -5,7 +5,7 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
 /**
- * AI服务配置（Embedding + LLM）
+ * AI服务配置（Embedding + LLM + 重排序 + HTTP传输 + 流式输出）
  */
 @Data
 @Configuration
@@ -22,6 +22,21 @@ public class AiServiceConfig {
      */
     private LlmConfig llm = new LlmConfig();
 
+    /**
+     * 重排序服务配置
+     */
+    private RerankConfig rerank = new RerankConfig();
+
+    /**
+     * AI服务共用的HTTP传输配置
+     */
+    private HttpConfig http = new HttpConfig();
+
+    /**
+     * 流式回答输出配置
+     */
+    private StreamConfig stream = new StreamConfig();
+
     @Data
     public static class EmbeddingConfig {
         /**
@@ -53,6 +68,69 @@ public class AiServiceConfig {
          * 最大重试次数
          */
         private Integer maxRetries = 3;
+
+        /**
+         * 重试初始退避时间（毫秒），每次重试翻倍
+         */
+        private Long retryBackoffMs = 500L;
+
+        /**
+         * 重试最大退避时间（毫秒）
+         */
+        private Long retryMaxBackoffMs = 8000L;
+
+        /**
+         * 批量向量化时同时进行中的批次请求数
+         */
+        private Integer maxInFlightBatches = 4;
+
+        /**
+         * 批量向量化（文档入库）每秒最多发起的请求数（令牌桶速率），小于等于0表示不限流
+         */
+        private Double requestsPerSecond = 10.0;
+
+        /**
+         * 令牌桶容量（允许的突发请求数）
+         */
+        private Integer requestBurst = 4;
+
+        /**
+         * 检索问题向量化每秒最多发起的请求数（独立的令牌桶，不与文档入库排队），小于等于0表示不限流
+         */
+        private Double queryRequestsPerSecond = 20.0;
+
+        /**
+         * 检索问题向量化的令牌桶容量
+         */
+        private Integer queryRequestBurst = 10;
+
+        /**
+         * 查询向量缓存配置
+         */
+        private EmbeddingCacheConfig cache = new EmbeddingCacheConfig();
+    }
+
+    @Data
+    public static class EmbeddingCacheConfig {
+        /**
+         * 是否启用查询向量缓存
+         */
+        private Boolean enabled = true;
+
+        /**
+         * 最大缓存条目数
+         */
+        private Integer maxEntries = 10000;
+
+        /**
+         * 最大内存占用（MB）
+         */
+        private Integer maxMemoryMb = 64;
+
+        /**
+         * 缓存过期时间（秒）
+         */
+        private Long ttlSeconds = 3600L;
     }
 
     @Data
@@ -87,4 +165,150 @@ public class AiServiceConfig {
          */
         private Integer timeout = 60;
     }
+
+    @Data
+    public static class RerankConfig {
+        /**
+         * 是否启用重排序（关闭时按向量检索顺序取前 topK）
+         */
+        private Boolean enabled = false;
+
+        /**
+         * 重排序实现：remote（调用重排序模型接口）/ local（本地字符重叠打分，不依赖外部服务）
+         */
+        private String provider = "remote";
+
+        /**
+         * API Key
+         */
+        private String apiKey;
+
+        /**
+         * API URL（请求体为 {model, query, documents, top_n}，响应为 results[{index, relevance_score}]）
+         */
+        private String apiUrl = "https://dashscope.aliyuncs.com/compatible-api/v1/reranks";
+
+        /**
+         * 模型名称
+         */
+        private String model = "gte-rerank-v2";
+
+        /**
+         * 重排序候选数（向量检索多取的数量）
+         */
+        private Integer candidates = 30;
+
+        /**
+         * 超时时间（毫秒），超时按向量检索顺序
+         */
+        private Long timeoutMs = 800L;
+
+        /**
+         * 分数缓存最大条目数（键为模型 + 问题 + 切块ID）
+         */
+        private Integer cacheMaxEntries = 5000;
+
+        /**
+         * 分数缓存过期时间（秒）
+         */
+        private Long cacheTtlSeconds = 600L;
+    }
+
+    @Data
+    public static class HttpConfig {
+        /**
+         * 每个服务主机同时进行中的最大请求数（HTTP/2 下为同一连接上的并发流数），超出时排队等待
+         */
+        private Integer maxRequestsPerHost = 32;
+
+        /**
+         * 等待并发名额的最长时间（毫秒），超时请求失败
+         */
+        private Long acquireTimeoutMs = 10000L;
+
+        /**
+         * 每个服务主机连接池保留的最大空闲连接数
+         */
+        private Integer maxIdleConnectionsPerHost = 8;
+
+        /**
+         * 空闲连接保活时间（秒）
+         */
+        private Long keepAliveSeconds = 300L;
+
+        /**
+         * 连接超时（毫秒）
+         */
+        private Long connectTimeoutMs = 10000L;
+
+        /**
+         * 写超时（毫秒）
+         */
+        private Long writeTimeoutMs = 30000L;
+
+        /**
+         * 默认读超时（毫秒），调用方可按请求覆盖
+         */
+        private Long readTimeoutMs = 60000L;
+
+        /**
+         * 是否启用HTTP/2（HTTPS下通过ALPN协商，服务端不支持时回退HTTP/1.1）
+         */
+        private Boolean http2 = true;
+
+        /**
+         * HTTP/2 连接保活PING间隔（秒），小于等于0表示不发送
+         */
+        private Integer pingIntervalSeconds = 30;
+
+        /**
+         * 启动时是否预先建立到各服务主机的连接（完成DNS解析和TLS握手）
+         */
+        private Boolean warmUp = true;
+
+        /**
+         * 非阻塞流式请求每个服务主机同时进行中的最大数量，超出时立即失败（等待响应期间不占用线程，
+         * 只受内存和上游服务限制；入口的并发由 RateLimiter 控制）
+         */
+        private Integer maxStreamsPerHost = 2000;
+
+        /**
+         * 非阻塞流式响应的回调线程数（解析数据块并转发内容片段）
+         */
+        private Integer streamCallbackThreads = 8;
+    }
+
+    @Data
+    public static class StreamConfig {
+        /**
+         * 是否合并内容片段（关闭时每个LLM片段单独写出一个SSE事件）
+         */
+        private Boolean coalesceEnabled = true;
+
+        /**
+         * 缓冲的字符数达到该值时立即写出
+         */
+        private Integer maxBufferChars = 128;
+
+        /**
+         * 最短合并窗口（毫秒），从缓冲第一个片段开始计时
+         */
+        private Long minFlushIntervalMs = 20L;
+
+        /**
+         * 最长合并窗口（毫秒），客户端写出变慢时窗口在最短和最长之间自适应增大
+         */
+        private Long maxFlushIntervalMs = 40L;
+
+        /**
+         * 片段以句末标点或换行结尾时是否立即写出
+         */
+        private Boolean flushOnSentenceEnd = true;
+
+        /**
+         * 流式对话的生成阶段是否非阻塞执行：等待LLM响应期间不占用线程，同时进行的流式对话数不受线程池大小限制；
+         * 关闭时每个流式对话在SSE线程池中占用一个线程直到生成结束
+         */
+        private Boolean nonBlocking = true;
+    }
 }
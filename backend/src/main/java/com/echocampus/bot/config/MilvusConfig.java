@@ -38,7 +38,9 @@ public class MilvusConfig {
     private String metricType = "COSINE";
 
     /**
-     * 索引类型: IVF_FLAT, HNSW等
+     * 索引类型: FLAT, IVF_FLAT, IVF_SQ8, IVF_PQ, HNSW, DISKANN
+     * <p>
+     * 只在创建集合时生效；已有集合更换索引需通过 /v1/system/milvus/index/rebuild 在线重建
      */
     private String indexType = "IVF_FLAT";
 
@@ -48,7 +50,62 @@ public class MilvusConfig {
     private Integer nlist = 1024;
 
     /**
-     * 搜索时探测的聚类数
+     * 搜索时探测的聚类数（IVF_FLAT / IVF_SQ8 / IVF_PQ）
      */
     private Integer nprobe = 10;
+
+    /**
+     * IVF_PQ 的子向量数（须整除向量维度）
+     */
+    private Integer pqM = 16;
+
+    /**
+     * IVF_PQ 每个子向量的编码位数
+     */
+    private Integer pqNbits = 8;
+
+    /**
+     * HNSW 每个节点的最大邻居数
+     */
+    private Integer hnswM = 16;
+
+    /**
+     * HNSW 建图时的候选队列长度
+     */
+    private Integer efConstruction = 200;
+
+    /**
+     * HNSW 检索时的候选队列长度（实际取值不小于 topK）
+     */
+    private Integer ef = 64;
+
+    /**
+     * DISKANN 检索时的候选列表长度（实际取值不小于 topK）
+     */
+    private Integer searchList = 100;
+
+    /**
+     * 在线重建索引时每批复制的向量数
+     */
+    private Integer rebuildBatchSize = 1000;
+
+    /**
+     * 在线重建索引时等待新集合建完索引的最长时间（分钟）
+     */
+    private Integer rebuildTimeoutMinutes = 30;
+
+    /**
+     * 重新向量化重建集合时同时进行的向量化批次数
+     */
+    private Integer rebuildEmbedConcurrency = 4;
+
+    /**
+     * 启动时发现集合维度与配置不一致，是否自动在后台重新向量化重建版本集合
+     */
+    private Boolean autoRebuildOnDimensionChange = true;
+
+    /**
+     * 分区键（category字段）对应的分区数，分类数多于分区数时按哈希共用分区
+     */
+    private Integer partitionNum = 16;
 }
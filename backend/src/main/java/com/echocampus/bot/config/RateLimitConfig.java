@@ -17,8 +17,15 @@ import java.util.concurrent.atomic.AtomicInteger;
 @EnableScheduling
 public class RateLimitConfig {
 
-    private static final int MAX_CONCURRENT_REQUESTS = 100;
-    private static final int MAX_SSE_CONNECTIONS = 50;
+    /**
+     * 最大并发请求数。非阻塞流式对话在生成阶段不占用线程，但会话准备仍在 sseExecutor 中执行
+     * （20个线程、队列100，满载时 CallerRunsPolicy 在请求线程上执行）；调大时需同时调大 sseExecutor
+     */
+    @Value("${rate-limit.max-concurrent-requests:100}")
+    private int maxConcurrentRequests;
+
+    @Value("${rate-limit.max-sse-connections:50}")
+    private int maxSseConnections;
 
     @Value("${verification-code.send-interval-seconds:60}")
     private int sendIntervalSeconds;
@@ -85,9 +92,9 @@ public class RateLimitConfig {
         @Override
         public boolean tryAcquire(Long userId) {
             int current = totalConcurrentRequests.incrementAndGet();
-            if (current > MAX_CONCURRENT_REQUESTS) {
+            if (current > maxConcurrentRequests) {
                 totalConcurrentRequests.decrementAndGet();
-                log.warn("请求限流: 当前并发数={}, 最大并发数={}", current, MAX_CONCURRENT_REQUESTS);
+                log.warn("请求限流: 当前并发数={}, 最大并发数={}", current, maxConcurrentRequests);
                 return false;
             }
             
@@ -112,9 +119,9 @@ public class RateLimitConfig {
         @Override
         public boolean tryAcquireSse() {
             int current = totalSseConnections.incrementAndGet();
-            if (current > MAX_SSE_CONNECTIONS) {
+            if (current > maxSseConnections) {
                 totalSseConnections.decrementAndGet();
-                log.warn("SSE连接限流: 当前连接数={}, 最大连接数={}", current, MAX_SSE_CONNECTIONS);
+                log.warn("SSE连接限流: 当前连接数={}, 最大连接数={}", current, maxSseConnections);
                 return false;
             }
             log.debug("SSE连接获取成功, 当前总连接数={}", current);
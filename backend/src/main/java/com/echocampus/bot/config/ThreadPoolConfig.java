@@ -53,7 +53,7 @@ public class ThreadPoolConfig {
     }
 
     @Bean(name = "sseExecutor")
-    public Executor sseExecutor() {
+    public ThreadPoolTaskExecutor sseExecutor() {
         ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
         executor.setCorePoolSize(10);
         executor.setMaxPoolSize(20);
@@ -3,6 +3,8 @@ package com.echocampus.bot.config;
 import com.echocampus.bot.interceptor.RoleInterceptor;
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
@@ -10,7 +12,11 @@ import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 @RequiredArgsConstructor
 public class WebMvcConfig implements WebMvcConfigurer {
 
+    /** 异步请求（流式聊天）超时时间：5分钟 */
+    private static final long ASYNC_TIMEOUT_MS = 300000L;
+
     private final RoleInterceptor roleInterceptor;
+    private final ThreadPoolTaskExecutor sseExecutor;
 
     @Override
     public void addInterceptors(InterceptorRegistry registry) {
@@ -18,4 +24,13 @@ public class WebMvcConfig implements WebMvcConfigurer {
                 .addPathPatterns("/api/**")
                 .excludePathPatterns("/api/v1/auth/**", "/api/v1/health", "/api/doc.html", "/api/v3/api-docs/**");
     }
+
+    /**
+     * 异步请求在SSE线程池中执行；流式聊天的连接在超时前保持
+     */
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setTaskExecutor(sseExecutor);
+        configurer.setDefaultTimeout(ASYNC_TIMEOUT_MS);
+    }
 }
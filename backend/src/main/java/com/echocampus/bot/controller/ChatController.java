@@ -4,6 +4,7 @@ import com.echocampus.bot.annotation.OpLog;
 import com.echocampus.bot.common.Result;
 import com.echocampus.bot.common.ResultCode;
 import com.echocampus.bot.common.exception.BusinessException;
+import com.echocampus.bot.config.AiServiceConfig;
 import com.echocampus.bot.config.RateLimitConfig;
 import com.echocampus.bot.dto.request.ChatRequest;
 import com.echocampus.bot.dto.response.ChatResponse;
@@ -12,21 +13,35 @@ import com.echocampus.bot.entity.Conversation;
 import com.echocampus.bot.entity.Message;
 import com.echocampus.bot.entity.OperationLog;
 import com.echocampus.bot.service.ChatService;
+import com.echocampus.bot.service.stream.SseEventWriter;
+import com.echocampus.bot.service.stream.StreamCancellation;
+import com.echocampus.bot.service.stream.TokenCoalescer;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.CacheControl;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.web.bind.annotation.*;
-import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.context.request.async.DeferredResultProcessingInterceptor;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
 
 import java.io.IOException;
 import java.util.List;
-import java.util.concurrent.Executor;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  * 聊天控制器
@@ -38,10 +53,17 @@ import java.util.concurrent.Executor;
 @RequiredArgsConstructor
 public class ChatController {
 
+    /**
+     * 流式请求开始异步处理时启动生成的拦截器键
+     */
+    private static final String STREAM_START_KEY = ChatController.class.getName() + ".STREAM_START";
+
     private final ChatService chatService;
     private final ObjectMapper objectMapper = new ObjectMapper();
-    private final Executor sseExecutor;
     private final RateLimitConfig.RateLimiter rateLimiter;
+    private final TokenCoalescer tokenCoalescer;
+    private final ThreadPoolTaskExecutor sseExecutor;
+    private final AiServiceConfig aiConfig;
 
     @Operation(summary = "发送消息", description = "发送消息并获取AI回复")
     @PostMapping("/message")
@@ -65,7 +87,8 @@ public class ChatController {
             description = "发送流式聊天消息",
             saveResponseResult = false
     )
-    public SseEmitter sendMessageStream(HttpServletRequest request, @Valid @RequestBody ChatRequest chatRequest) {
+    public ResponseEntity<ResponseBodyEmitter> sendMessageStream(HttpServletRequest request, HttpServletResponse response,
+                                                                 @Valid @RequestBody ChatRequest chatRequest) {
         Long userId = (Long) request.getAttribute("userId");
         
         // 限流检查
@@ -73,54 +96,100 @@ public class ChatController {
             throw new BusinessException(ResultCode.SYSTEM_BUSY, "系统繁忙，请稍后再试");
         }
         
-        // 创建SSE发射器，超时时间5分钟
-        SseEmitter emitter = new SseEmitter(300000L);
-        
-        // 异步执行流式响应
-        sseExecutor.execute(() -> {
-            try {
-                chatService.sendMessageStream(userId, chatRequest, streamResponse -> {
-                    try {
-                        String json = objectMapper.writeValueAsString(streamResponse);
-                        emitter.send(SseEmitter.event()
-                                .name(streamResponse.getType().name().toLowerCase())
-                                .data(json));
-                    } catch (IOException e) {
-                        log.error("SSE发送失败: {}", e.getMessage());
-                        emitter.completeWithError(e);
+        // 会话准备在SSE线程池中执行；非阻塞模式下生成阶段不占用线程，由HTTP客户端回调推进。
+        // 内容片段合并后编码为SSE帧，每帧一次写出；回调线程只追加缓冲，所有写出都在SSE线程池中执行。
+        // ResponseBodyEmitter 只负责异步请求的生命周期（超时、完成、出错回调），SSE帧直接写入响应输出流，
+        // 不经过 emitter.send 的消息转换器；写出在异步处理开始（响应头已设置）后才开始。
+        // 连接关闭、出错或超时即取消：中止上游LLM请求，不再发起工具调用，已生成的部分照常保存
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter();
+        StreamCancellation cancellation = new StreamCancellation();
+        emitter.onCompletion(cancellation::cancel);
+        emitter.onError(e -> cancellation.cancel());
+        emitter.onTimeout(cancellation::cancel);
+        TokenCoalescer.Sink sink;
+        try {
+            sink = tokenCoalescer.open(new SseEventWriter(response.getOutputStream(), objectMapper), sseExecutor);
+        } catch (IOException | RuntimeException e) {
+            rateLimiter.release(userId);
+            log.error("流式响应启动失败: {}", e.getMessage(), e);
+            throw new BusinessException(ResultCode.SYSTEM_BUSY, "系统繁忙，请稍后再试");
+        }
+        WebAsyncUtils.getAsyncManager(request).registerDeferredResultInterceptor(STREAM_START_KEY,
+                new DeferredResultProcessingInterceptor() {
+                    @Override
+                    public <T> void preProcess(NativeWebRequest webRequest, DeferredResult<T> deferredResult) {
+                        startStream(userId, chatRequest, sink, cancellation, emitter);
                     }
                 });
-                emitter.complete();
-            } catch (Exception e) {
-                log.error("流式响应异常: {}", e.getMessage(), e);
-                try {
-                    StreamChatResponse errorResponse = StreamChatResponse.error(
-                            chatRequest.getConversationId(), null, e.getMessage());
-                    String json = objectMapper.writeValueAsString(errorResponse);
-                    emitter.send(SseEmitter.event().name("error").data(json));
-                } catch (IOException ex) {
-                    log.error("发送错误事件失败: {}", ex.getMessage());
-                }
-                emitter.completeWithError(e);
-            }
-        });
-        
-        // 设置完成和超时回调
-        emitter.onCompletion(() -> {
-            log.debug("SSE连接完成");
-            rateLimiter.release(userId);
-        });
-        emitter.onTimeout(() -> {
-            log.warn("SSE连接超时");
-            emitter.complete();
-            rateLimiter.release(userId);
-        });
-        emitter.onError(e -> {
-            log.error("SSE连接错误: {}", e.getMessage());
+        return ResponseEntity.ok()
+                .contentType(MediaType.TEXT_EVENT_STREAM)
+                .cacheControl(CacheControl.noCache())
+                // 禁止反向代理缓冲，保证逐个事件送达
+                .header("X-Accel-Buffering", "no")
+                .body(emitter);
+    }
+
+    /**
+     * 异步处理开始后在SSE线程池中执行流式对话，结束后释放限流并完成异步请求
+     */
+    private void startStream(Long userId, ChatRequest chatRequest, TokenCoalescer.Sink sink,
+                             StreamCancellation cancellation, ResponseBodyEmitter emitter) {
+        try {
+            sseExecutor.execute(() -> streamResponse(userId, chatRequest, sink, cancellation)
+                    .whenComplete((ignored, e) -> {
+                        rateLimiter.release(userId);
+                        emitter.complete();
+                    }));
+        } catch (RuntimeException e) {
             rateLimiter.release(userId);
+            log.error("流式响应启动失败: {}", e.getMessage(), e);
+            emitter.completeWithError(e);
+        }
+    }
+
+    /**
+     * 执行流式对话并写出事件；客户端断开（写出失败）后不再写出并取消生成，已生成的部分照常保存
+     *
+     * @return 对话结束（含失败时已写出错误事件、取消）且剩余事件已在SSE线程池中写出时完成
+     */
+    private CompletableFuture<Void> streamResponse(Long userId, ChatRequest chatRequest, TokenCoalescer.Sink sink,
+                                                   StreamCancellation cancellation) {
+        Consumer<StreamChatResponse> sender = streamResponse -> {
+            if (sink.isFailed()) {
+                cancellation.cancel();
+                return;
+            }
+            try {
+                sink.send(streamResponse);
+            } catch (IOException e) {
+                log.warn("SSE发送失败，客户端可能已断开: {}", e.getMessage());
+                cancellation.cancel();
+            }
+        };
+        CompletableFuture<Void> result;
+        try {
+            if (Boolean.TRUE.equals(aiConfig.getStream().getNonBlocking())) {
+                result = chatService.sendMessageStreamAsync(userId, chatRequest, sender, cancellation);
+            } else {
+                chatService.sendMessageStream(userId, chatRequest, sender, cancellation);
+                result = CompletableFuture.completedFuture(null);
+            }
+        } catch (Exception e) {
+            result = CompletableFuture.failedFuture(e);
+        }
+        return result.handle((ignored, e) -> {
+            if (e != null) {
+                Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                log.error("流式响应异常: {}", cause.getMessage(), cause);
+                sender.accept(StreamChatResponse.error(chatRequest.getConversationId(), null, cause.getMessage()));
+            } else {
+                log.debug("SSE连接完成");
+            }
+            return sink.isFailed() ? CompletableFuture.<Void>completedFuture(null) : sink.close();
+        }).thenCompose(Function.identity()).exceptionally(e -> {
+            log.error("SSE发送失败: {}", e.getMessage());
+            return null;
         });
-        
-        return emitter;
     }
 
     @Operation(summary = "获取会话列表", description = "获取用户的会话列表")
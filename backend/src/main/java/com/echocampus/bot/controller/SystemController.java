@@ -2,24 +2,44 @@ package com.echocampus.bot.controller;
 
 import com.echocampus.bot.annotation.OpLog;
 import com.echocampus.bot.common.Result;
+import com.echocampus.bot.common.exception.BusinessException;
+import com.echocampus.bot.dto.request.MilvusIndexRebuildRequest;
+import com.echocampus.bot.dto.request.RetrievalEvalRequest;
 import com.echocampus.bot.entity.OperationLog;
+import com.echocampus.bot.service.AnswerCacheService;
 import com.echocampus.bot.service.DataCleanupService;
+import com.echocampus.bot.service.impl.CachingEmbeddingService;
+import com.echocampus.bot.service.impl.LocalVectorService;
+import com.echocampus.bot.service.impl.MilvusIndexRebuildService;
+import com.echocampus.bot.service.retrieval.ChunkHitResolver;
+import com.echocampus.bot.service.retrieval.HybridRetrievalStrategy;
+import com.echocampus.bot.service.retrieval.KnowledgeRetriever;
+import com.echocampus.bot.service.retrieval.NeighbourChunkExpander;
+import com.echocampus.bot.service.retrieval.RerankService;
+import com.echocampus.bot.service.retrieval.RetrievalEvaluator;
+import com.echocampus.bot.service.stream.TokenCoalescer;
+import com.echocampus.bot.service.transport.AiHttpTransport;
+import com.echocampus.bot.vector.MilvusIndexProfile;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
  * 系统管理控制器
  * <p>
- * 提供系统管理相关的接口，如数据清理等
+ * 提供系统管理相关的接口，如数据清理、运行指标等
  */
 @Slf4j
 @Tag(name = "System", description = "系统管理接口")
@@ -29,6 +49,18 @@ import java.util.Map;
 public class SystemController {
 
     private final DataCleanupService dataCleanupService;
+    private final CachingEmbeddingService cachingEmbeddingService;
+    private final AnswerCacheService answerCacheService;
+    private final LocalVectorService localVectorService;
+    private final ChunkHitResolver chunkHitResolver;
+    private final KnowledgeRetriever knowledgeRetriever;
+    private final HybridRetrievalStrategy hybridRetrievalStrategy;
+    private final RerankService rerankService;
+    private final NeighbourChunkExpander neighbourChunkExpander;
+    private final RetrievalEvaluator retrievalEvaluator;
+    private final MilvusIndexRebuildService milvusIndexRebuildService;
+    private final AiHttpTransport aiHttpTransport;
+    private final TokenCoalescer tokenCoalescer;
 
     /**
      * 手动触发数据清理
@@ -58,4 +90,80 @@ public class SystemController {
         
         return Result.success(result);
     }
+
+    /**
+     * 获取运行指标
+     * <p>
+     * 返回各缓存的命中、未命中、淘汰计数，以及本地向量索引的状态等
+     */
+    @Operation(summary = "获取运行指标", description = "获取缓存命中率等运行指标")
+    @PreAuthorize("hasRole('ADMIN')")
+    @GetMapping("/metrics")
+    public Result<Map<String, Object>> getMetrics() {
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("embeddingCache", cachingEmbeddingService.getCacheStats().toMap());
+        metrics.put("answerCache", answerCacheService.getStats());
+        metrics.put("localVectorIndex", localVectorService.getStats());
+        metrics.put("retrieval", chunkHitResolver.getStats());
+        metrics.put("retrievalStrategy", knowledgeRetriever.getStrategyName());
+        metrics.put("hybridRetrieval", hybridRetrievalStrategy.getStats());
+        metrics.put("rerank", rerankService.getStats());
+        metrics.put("contextExpansion", neighbourChunkExpander.getStats());
+        metrics.put("aiTransport", aiHttpTransport.getStats());
+        metrics.put("streamCoalescing", tokenCoalescer.getStats());
+        return Result.success(metrics);
+    }
+
+    /**
+     * 检索离线评估
+     * <p>
+     * 在标注查询集上对比各检索策略的 hit@k 和 MRR，只执行检索、不调用大模型
+     */
+    @Operation(summary = "检索离线评估", description = "在标注查询集上对比各检索策略的 hit@k")
+    @PreAuthorize("hasRole('ADMIN')")
+    @PostMapping("/retrieval/evaluate")
+    public Result<List<RetrievalEvaluator.Report>> evaluateRetrieval(@Valid @RequestBody RetrievalEvalRequest request) {
+        log.info("检索离线评估: queries={}, strategies={}, budgets={}", request.getQueries().size(),
+                request.getStrategies(), request.getBudgets());
+        return Result.success(retrievalEvaluator.evaluate(request.getQueries(), request.getStrategies(),
+                request.getKs(), request.getBudgets()));
+    }
+
+    /**
+     * 获取Milvus索引状态
+     * <p>
+     * 返回当前集合、索引参数及在线重建的进度
+     */
+    @Operation(summary = "获取Milvus索引状态", description = "获取当前索引参数及在线重建进度")
+    @PreAuthorize("hasRole('ADMIN')")
+    @GetMapping("/milvus/index")
+    public Result<Map<String, Object>> getMilvusIndexStatus() {
+        return Result.success(milvusIndexRebuildService.getStatus());
+    }
+
+    /**
+     * 在线重建Milvus索引
+     * <p>
+     * 按新的索引参数创建新版本集合，在后台复制向量或从知识库切块重新向量化（更换Embedding模型时），
+     * 完成后切换别名，重建期间检索不受影响
+     */
+    @Operation(summary = "在线重建Milvus索引", description = "按新的索引参数或Embedding模型重建版本集合，完成后切换别名")
+    @PreAuthorize("hasRole('ADMIN')")
+    @PostMapping("/milvus/index/rebuild")
+    @OpLog(
+            operationType = OperationLog.OperationType.OTHER,
+            resourceType = OperationLog.ResourceType.SYSTEM,
+            description = "在线重建Milvus索引"
+    )
+    public Result<Map<String, Object>> rebuildMilvusIndex(@Valid @RequestBody MilvusIndexRebuildRequest request) {
+        MilvusIndexProfile profile;
+        try {
+            profile = request.mergeInto(milvusIndexRebuildService.currentProfile());
+        } catch (IllegalArgumentException e) {
+            throw new BusinessException(e.getMessage());
+        }
+        boolean reembed = Boolean.TRUE.equals(request.getReembed());
+        log.info("在线重建Milvus索引: type={}, params={}, reembed={}", profile.indexType(), profile.indexParams(), reembed);
+        return Result.success(milvusIndexRebuildService.start(profile, reembed));
+    }
 }
@@ -0,0 +1,92 @@
+package com.echocampus.bot.dto.request;
+
+import com.echocampus.bot.vector.MilvusIndexProfile;
+import jakarta.validation.constraints.Positive;
+import lombok.Data;
+
+/**
+ * Milvus索引在线重建请求DTO
+ * <p>
+ * 未填写的参数沿用当前集合的索引参数
+ */
+@Data
+public class MilvusIndexRebuildRequest {
+
+    /**
+     * 是否重新向量化：从 knowledge_chunks 读取正文，用当前Embedding模型重新生成向量（更换模型或维度时使用）；
+     * 否则直接复制现有向量
+     */
+    private Boolean reembed = false;
+
+    /**
+     * 索引类型: FLAT, IVF_FLAT, IVF_SQ8, IVF_PQ, HNSW, DISKANN
+     */
+    private String indexType;
+
+    /**
+     * IVF聚类数
+     */
+    @Positive(message = "nlist必须大于0")
+    private Integer nlist;
+
+    /**
+     * IVF检索时探测的聚类数
+     */
+    @Positive(message = "nprobe必须大于0")
+    private Integer nprobe;
+
+    /**
+     * IVF_PQ子向量数
+     */
+    @Positive(message = "pqM必须大于0")
+    private Integer pqM;
+
+    /**
+     * IVF_PQ编码位数
+     */
+    @Positive(message = "pqNbits必须大于0")
+    private Integer pqNbits;
+
+    /**
+     * HNSW最大邻居数
+     */
+    @Positive(message = "hnswM必须大于0")
+    private Integer hnswM;
+
+    /**
+     * HNSW建图候选队列长度
+     */
+    @Positive(message = "efConstruction必须大于0")
+    private Integer efConstruction;
+
+    /**
+     * HNSW检索候选队列长度
+     */
+    @Positive(message = "ef必须大于0")
+    private Integer ef;
+
+    /**
+     * DISKANN检索候选列表长度
+     */
+    @Positive(message = "searchList必须大于0")
+    private Integer searchList;
+
+    /**
+     * 以当前索引参数为基础，覆盖请求中填写的参数
+     *
+     * @throws IllegalArgumentException 索引类型不支持
+     */
+    public MilvusIndexProfile mergeInto(MilvusIndexProfile current) {
+        return new MilvusIndexProfile(
+                indexType != null ? indexType : current.indexType(),
+                current.metricType(),
+                nlist != null ? nlist : current.nlist(),
+                nprobe != null ? nprobe : current.nprobe(),
+                pqM != null ? pqM : current.pqM(),
+                pqNbits != null ? pqNbits : current.pqNbits(),
+                hnswM != null ? hnswM : current.hnswM(),
+                efConstruction != null ? efConstruction : current.efConstruction(),
+                ef != null ? ef : current.ef(),
+                searchList != null ? searchList : current.searchList());
+    }
+}
@@ -0,0 +1,61 @@
+package com.echocampus.bot.dto.request;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 检索离线评估请求DTO
+ */
+@Data
+public class RetrievalEvalRequest {
+
+    /**
+     * 标注查询集
+     */
+    @Valid
+    @NotEmpty(message = "标注查询不能为空")
+    @Size(max = 1000, message = "单次最多评估1000条查询")
+    private List<LabelledQuery> queries = new ArrayList<>();
+
+    /**
+     * 参与对比的检索策略（为空时评估全部策略）
+     */
+    private List<String> strategies = new ArrayList<>();
+
+    /**
+     * 检索预算（fast / balanced / accurate），为空时使用配置的默认检索参数
+     */
+    private List<String> budgets = new ArrayList<>();
+
+    /**
+     * 计算 hit@k 的 k 值列表
+     */
+    private List<Integer> ks = new ArrayList<>(List.of(1, 3, 5, 10));
+
+    /**
+     * 标注查询：命中任一相关片段或相关文档即视为命中
+     */
+    @Data
+    public static class LabelledQuery {
+
+        @NotBlank(message = "查询内容不能为空")
+        private String query;
+
+        /**
+         * 相关片段ID
+         */
+        private Set<Long> relevantChunkIds = Set.of();
+
+        /**
+         * 相关文档ID（片段ID难以标注时按文档粒度判断）
+         */
+        private Set<Long> relevantDocIds = Set.of();
+    }
+}
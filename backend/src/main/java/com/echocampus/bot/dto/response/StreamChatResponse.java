@@ -6,6 +6,7 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.util.List;
+import java.util.Map;
 
 /**
  * 流式聊天响应DTO（SSE事件）
@@ -56,6 +57,11 @@ public class StreamChatResponse {
      */
     private Long responseTimeMs;
 
+    /**
+     * 各阶段耗时（毫秒，当type为DONE时），键名以 Ms 结尾的为阶段耗时、以 AtMs 结尾的为距请求开始的时刻
+     */
+    private Map<String, Long> timings;
+
     /**
      * 错误信息（当type为ERROR时）
      */
@@ -116,12 +122,18 @@ public class StreamChatResponse {
     }
 
     public static StreamChatResponse done(Long conversationId, Long messageId, ChatResponse.TokenUsage usage, Long responseTimeMs) {
+        return done(conversationId, messageId, usage, responseTimeMs, null);
+    }
+
+    public static StreamChatResponse done(Long conversationId, Long messageId, ChatResponse.TokenUsage usage,
+                                          Long responseTimeMs, Map<String, Long> timings) {
         return StreamChatResponse.builder()
                 .type(EventType.DONE)
                 .conversationId(conversationId)
                 .messageId(messageId)
                 .usage(usage)
                 .responseTimeMs(responseTimeMs)
+                .timings(timings)
                 .build();
     }
 
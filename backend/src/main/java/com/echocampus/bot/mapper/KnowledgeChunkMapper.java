@@ -2,9 +2,12 @@ package com.echocampus.bot.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.echocampus.bot.entity.KnowledgeChunk;
+import com.echocampus.bot.utils.DateTimeUtil;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -13,6 +16,57 @@ import java.util.List;
 @Mapper
 public interface KnowledgeChunkMapper extends BaseMapper<KnowledgeChunk> {
 
+    /**
+     * 批量插入时单条语句的最大行数（每行12个绑定参数，需低于PostgreSQL单语句65535个参数的上限）
+     */
+    int INSERT_BATCH_SIZE = 500;
+
+    /**
+     * 批量插入片段，每 {@link #INSERT_BATCH_SIZE} 行发送一条多行 INSERT，并回填自增ID
+     *
+     * @param chunks 片段列表
+     * @return 插入行数
+     */
+    default int insertBatch(List<KnowledgeChunk> chunks) {
+        // 自定义SQL不经过自动填充处理器，与单条插入保持一致的创建时间
+        LocalDateTime now = DateTimeUtil.now();
+        chunks.stream().filter(c -> c.getCreatedAt() == null).forEach(c -> c.setCreatedAt(now));
+        int inserted = 0;
+        for (int from = 0; from < chunks.size(); from += INSERT_BATCH_SIZE) {
+            inserted += insertRows(chunks.subList(from, Math.min(from + INSERT_BATCH_SIZE, chunks.size())));
+        }
+        return inserted;
+    }
+
+    /**
+     * 单条多行 INSERT，生成的ID按行顺序回填到 chunks 中
+     */
+    int insertRows(@Param("chunks") List<KnowledgeChunk> chunks);
+
+    /**
+     * 批量更新片段的位置信息（序号、页码、起止位置），用于增量重建索引时保留的片段
+     */
+    int updatePositions(@Param("chunks") List<KnowledgeChunk> chunks);
+
+    /**
+     * 批量回写片段对应的Milvus向量ID
+     */
+    int updateVectorIds(@Param("chunks") List<KnowledgeChunk> chunks);
+
+    /**
+     * 按ID批量删除片段，每 {@link #INSERT_BATCH_SIZE} 个ID发送一条语句
+     *
+     * @param ids 片段ID列表
+     * @return 删除行数
+     */
+    default int deleteBatch(List<Long> ids) {
+        int deleted = 0;
+        for (int from = 0; from < ids.size(); from += INSERT_BATCH_SIZE) {
+            deleted += deleteBatchIds(ids.subList(from, Math.min(from + INSERT_BATCH_SIZE, ids.size())));
+        }
+        return deleted;
+    }
+
     /**
      * 查询文档的所有片段
      */
@@ -32,4 +86,67 @@ public interface KnowledgeChunkMapper extends BaseMapper<KnowledgeChunk> {
      * 根据内容哈希查询（用于去重）
      */
     KnowledgeChunk selectByContentHash(@Param("contentHash") String contentHash);
+
+    /**
+     * 查询文档片段的索引信息（不含正文），用于增量重建索引时比对内容哈希
+     */
+    List<KnowledgeChunk> selectIndexEntriesByDocId(@Param("docId") Long docId);
+
+    /**
+     * 查询所有片段的ID、文档ID、正文、向量ID和页码，用于重建本地向量索引
+     */
+    List<KnowledgeChunk> selectIndexSources();
+
+    /**
+     * 按ID顺序分页查询片段的ID、文档ID、正文、向量ID和页码，用于重新向量化重建Milvus集合
+     *
+     * @param afterId 只返回ID大于该值的片段
+     * @param limit 最大返回数
+     */
+    List<KnowledgeChunk> selectIndexSourcesAfter(@Param("afterId") long afterId, @Param("limit") int limit);
+
+    /**
+     * 按ID顺序分页查询片段的ID、文档ID和序号（不含正文），用于构建文档切块序号索引
+     *
+     * @param afterId 只返回ID大于该值的片段
+     * @param limit 最大返回数
+     */
+    List<KnowledgeChunk> selectPositionsAfter(@Param("afterId") long afterId, @Param("limit") int limit);
+
+    /**
+     * 查询所有已向量化片段的向量ID（去重、有序），用于在线重建Milvus索引时分批复制向量
+     */
+    List<String> selectVectorIds();
+
+    /**
+     * 按内容哈希查询其他文档中已向量化的片段，每个哈希最多返回一条（用于复用向量）
+     */
+    List<KnowledgeChunk> selectVectorizedByContentHashes(@Param("contentHashes") Collection<String> contentHashes,
+                                                         @Param("excludeDocId") Long excludeDocId);
+
+    /**
+     * 全文检索片段（使用 content_tsv 列上的 idx_knowledge_chunks_content_search 索引，语句超时1秒），
+     * 按相关度降序，只返回ID、文档ID、正文、向量ID和页码
+     *
+     * @param tsQuery to_tsquery 格式的查询（english 配置）
+     * @param limit 最大返回数
+     * @param categories 限定的文档分类，为空时不限
+     * @param docIds 限定的文档ID，为空时不限
+     */
+    List<KnowledgeChunk> searchFullText(@Param("tsQuery") String tsQuery, @Param("limit") int limit,
+                                        @Param("categories") Collection<String> categories,
+                                        @Param("docIds") Collection<Long> docIds);
+
+    /**
+     * 按子串检索片段（ILIKE，使用 content 列上的三元组索引 idx_knowledge_chunks_content_trgm，语句超时1秒），
+     * 按命中的子串数降序，只返回ID、文档ID、正文、向量ID和页码
+     *
+     * @param patterns ILIKE 模式（如 "%图书馆%"），任一命中即返回
+     * @param limit 最大返回数
+     * @param categories 限定的文档分类，为空时不限
+     * @param docIds 限定的文档ID，为空时不限
+     */
+    List<KnowledgeChunk> searchSubstrings(@Param("patterns") List<String> patterns, @Param("limit") int limit,
+                                          @Param("categories") Collection<String> categories,
+                                          @Param("docIds") Collection<Long> docIds);
 }
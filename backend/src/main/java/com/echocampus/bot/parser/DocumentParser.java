@@ -1,6 +1,7 @@
 package com.echocampus.bot.parser;
 
 import com.echocampus.bot.parser.dto.DocumentMetadata;
+import com.echocampus.bot.parser.dto.ParsedSegment;
 import com.echocampus.bot.parser.exception.DocumentParseException;
 
 import java.io.File;
@@ -22,6 +23,24 @@ public interface DocumentParser {
      */
     String parse(String filePath) throws DocumentParseException;
 
+    /**
+     * 流式解析文档，按页面、段落等自然边界分段输出文本
+     * <p>
+     * 默认实现一次性解析后整体输出；大文件常见的格式应覆盖为边读边输出，使内存占用与单段大小相关而与文件大小无关
+     *
+     * @param filePath 文件路径
+     * @param consumer 文本段消费者（下游处理不过来时会阻塞）
+     * @throws DocumentParseException 解析异常
+     * @throws InterruptedException 等待下游时被中断
+     */
+    default void parseSegments(String filePath, SegmentConsumer consumer)
+            throws DocumentParseException, InterruptedException {
+        String content = parse(filePath);
+        if (content != null && !content.isEmpty()) {
+            consumer.accept(new ParsedSegment(content, null, 100));
+        }
+    }
+
     /**
      * 获取文档元数据
      *
@@ -38,6 +57,14 @@ public interface DocumentParser {
      */
     List<String> getSupportedTypes();
 
+    /**
+     * 文本段消费者
+     */
+    @FunctionalInterface
+    interface SegmentConsumer {
+        void accept(ParsedSegment segment) throws InterruptedException;
+    }
+
     /**
      * 验证文件路径参数
      *
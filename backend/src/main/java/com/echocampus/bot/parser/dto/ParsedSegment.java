@@ -0,0 +1,11 @@
+package com.echocampus.bot.parser.dto;
+
+/**
+ * 流式解析输出的文本段
+ *
+ * @param text 文本内容
+ * @param pageNumber 所在页码（仅PDF等分页文档，其余为 null）
+ * @param progress 解析进度百分比 (0-100)
+ */
+public record ParsedSegment(String text, Integer pageNumber, int progress) {
+}
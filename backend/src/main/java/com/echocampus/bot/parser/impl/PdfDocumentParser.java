@@ -2,6 +2,7 @@ package com.echocampus.bot.parser.impl;
 
 import com.echocampus.bot.parser.DocumentParser;
 import com.echocampus.bot.parser.dto.DocumentMetadata;
+import com.echocampus.bot.parser.dto.ParsedSegment;
 import com.echocampus.bot.parser.exception.DocumentParseException;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.pdfbox.Loader;
@@ -46,6 +47,40 @@ public class PdfDocumentParser implements DocumentParser {
         }
     }
 
+    /**
+     * 逐页输出文本，同时记录页码
+     */
+    @Override
+    public void parseSegments(String filePath, SegmentConsumer consumer)
+            throws DocumentParseException, InterruptedException {
+        validateFilePath(filePath);
+        
+        try (PDDocument document = Loader.loadPDF(new File(filePath))) {
+            PDFTextStripper stripper = new PDFTextStripper();
+            
+            stripper.setSortByPosition(true);
+            stripper.setLineSeparator("\n");
+            
+            int pageCount = document.getNumberOfPages();
+            long totalLength = 0;
+            for (int page = 1; page <= pageCount; page++) {
+                stripper.setStartPage(page);
+                stripper.setEndPage(page);
+                String text = cleanText(stripper.getText(document));
+                if (!text.isEmpty()) {
+                    totalLength += text.length();
+                    consumer.accept(new ParsedSegment(text, page, page * 100 / pageCount));
+                }
+            }
+            
+            log.info("PDF流式解析成功: 文件={}, 页数={}, 文本长度={}", filePath, pageCount, totalLength);
+            
+        } catch (IOException e) {
+            log.error("PDF解析失败: {}", filePath, e);
+            throw new DocumentParseException("PDF解析失败: " + e.getMessage(), e);
+        }
+    }
+
     @Override
     public DocumentMetadata getMetadata(String filePath) throws DocumentParseException {
         validateFilePath(filePath);
@@ -2,12 +2,21 @@ package com.echocampus.bot.parser.impl;
 
 import com.echocampus.bot.parser.DocumentParser;
 import com.echocampus.bot.parser.dto.DocumentMetadata;
+import com.echocampus.bot.parser.dto.ParsedSegment;
 import com.echocampus.bot.parser.exception.DocumentParseException;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
 import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -22,6 +31,9 @@ import java.util.List;
 @Component
 public class TxtDocumentParser implements DocumentParser {
 
+    /** 流式解析时每段的目标字符数，在此之后遇到空行即输出 */
+    private static final int SEGMENT_CHARS = 32 * 1024;
+
     @Override
     public String parse(String filePath) throws DocumentParseException {
         validateFilePath(filePath);
@@ -48,6 +60,69 @@ public class TxtDocumentParser implements DocumentParser {
         }
     }
 
+    /**
+     * 逐行读取，累积到一定长度后在段落边界（空行）处输出
+     */
+    @Override
+    public void parseSegments(String filePath, SegmentConsumer consumer)
+            throws DocumentParseException, InterruptedException {
+        validateFilePath(filePath);
+        
+        Path path = Paths.get(filePath);
+        try (FileChannel channel = FileChannel.open(path)) {
+            // 非UTF-8文本按GBK（中文Windows常用）读取
+            Charset charset = isUtf8(path) ? StandardCharsets.UTF_8 : Charset.forName("GBK");
+            long fileSize = Math.max(1, channel.size());
+            long totalLength = 0;
+            
+            try (BufferedReader reader = new BufferedReader(Channels.newReader(channel, charset.newDecoder(), -1))) {
+                StringBuilder segment = new StringBuilder();
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    segment.append(line).append('\n');
+                    boolean paragraphEnd = line.isBlank() && segment.length() >= SEGMENT_CHARS;
+                    if (paragraphEnd || segment.length() >= SEGMENT_CHARS * 2) {
+                        totalLength += emit(segment, consumer, (int) Math.min(99, channel.position() * 100 / fileSize));
+                    }
+                }
+                totalLength += emit(segment, consumer, 100);
+            }
+            
+            log.info("TXT流式解析成功: 文件={}, 编码={}, 文本长度={}", filePath, charset, totalLength);
+            
+        } catch (IOException e) {
+            log.error("TXT解析失败: {}", filePath, e);
+            throw new DocumentParseException("TXT解析失败: " + e.getMessage(), e);
+        }
+    }
+
+    private int emit(StringBuilder segment, SegmentConsumer consumer, int progress) throws InterruptedException {
+        String text = segment.toString().trim();
+        segment.setLength(0);
+        if (!text.isEmpty()) {
+            consumer.accept(new ParsedSegment(text, null, progress));
+        }
+        return text.length();
+    }
+
+    /**
+     * 流式校验文件是否为合法的UTF-8编码（不将整个文件读入内存）
+     */
+    private boolean isUtf8(Path path) throws IOException {
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        try (Reader reader = new InputStreamReader(Files.newInputStream(path), decoder)) {
+            char[] buffer = new char[8192];
+            while (reader.read(buffer) != -1) {
+                // 只校验，不保留内容
+            }
+            return true;
+        } catch (CharacterCodingException e) {
+            return false;
+        }
+    }
+
     @Override
     public DocumentMetadata getMetadata(String filePath) throws DocumentParseException {
         validateFilePath(filePath);
@@ -0,0 +1,66 @@
+package com.echocampus.bot.service;
+
+import com.echocampus.bot.service.RagService.SourceInfo;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * 语义回答缓存服务接口
+ * <p>
+ * 以问题向量为键缓存回答及其知识来源，相似问题（余弦相似度超过阈值）直接复用回答。
+ * 只适用于无历史上下文的首轮提问，多轮追问的回答依赖上下文，不应复用。
+ */
+public interface AnswerCacheService {
+
+    /**
+     * 查找相似问题的缓存回答
+     *
+     * @param question 用户问题
+     * @return 缓存的回答（未命中时为空）
+     */
+    Optional<CachedAnswer> lookup(String question);
+
+    /**
+     * 获取当前知识库版本，生成回答前获取，写入缓存时传回
+     *
+     * @return 知识库版本号
+     */
+    long currentVersion();
+
+    /**
+     * 缓存回答
+     *
+     * @param question 用户问题
+     * @param answer 回答内容
+     * @param sources 知识来源
+     * @param version 生成回答前获取的知识库版本，期间知识库有变更时不缓存
+     */
+    void store(String question, String answer, List<SourceInfo> sources, long version);
+
+    /**
+     * 文档变更（删除、重建索引、重新入库、元信息更新）时失效相关缓存
+     * <p>
+     * 引用了该文档的回答，以及没有任何知识来源的回答（新文档可能已能回答）都会被移除
+     *
+     * @param docId 文档ID
+     */
+    void invalidateDocument(Long docId);
+
+    /**
+     * 获取缓存统计信息
+     *
+     * @return 统计信息
+     */
+    Map<String, Object> getStats();
+
+    /**
+     * 缓存的回答
+     */
+    record CachedAnswer(
+            String answer,
+            List<SourceInfo> sources,
+            float similarity
+    ) {}
+}
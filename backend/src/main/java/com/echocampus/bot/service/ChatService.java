@@ -5,8 +5,10 @@ import com.echocampus.bot.dto.response.ChatResponse;
 import com.echocampus.bot.dto.response.StreamChatResponse;
 import com.echocampus.bot.entity.Conversation;
 import com.echocampus.bot.entity.Message;
+import com.echocampus.bot.service.stream.StreamCancellation;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
 
 /**
@@ -27,8 +29,23 @@ public interface ChatService {
      * @param userId 用户ID
      * @param request 聊天请求
      * @param responseConsumer 流式响应消费者
+     * @param cancellation 取消标记（客户端断开时取消），取消后中止生成并保存已生成的部分回答
      */
-    void sendMessageStream(Long userId, ChatRequest request, Consumer<StreamChatResponse> responseConsumer);
+    void sendMessageStream(Long userId, ChatRequest request, Consumer<StreamChatResponse> responseConsumer,
+                           StreamCancellation cancellation);
+
+    /**
+     * 发送消息并获取流式AI回复（非阻塞）：会话准备（保存消息、检索、加载历史）在调用线程上完成，
+     * 生成阶段不占用线程，返回时回答可能仍在生成
+     * @param userId 用户ID
+     * @param request 聊天请求
+     * @param responseConsumer 流式响应消费者（生成阶段在其他线程上调用）
+     * @param cancellation 取消标记（客户端断开时取消），取消后中止生成并保存已生成的部分回答
+     * @return 完成事件发送后完成
+     */
+    CompletableFuture<Void> sendMessageStreamAsync(Long userId, ChatRequest request,
+                                                   Consumer<StreamChatResponse> responseConsumer,
+                                                   StreamCancellation cancellation);
 
     /**
      * 获取用户的会话列表
@@ -23,6 +23,19 @@ public interface EmbeddingService {
      */
     List<float[]> embedBatch(List<String> texts);
 
+    /**
+     * 批量向量化检索问题（同一轮的多个问题合并为一次请求）
+     * <p>
+     * 默认等同于 {@link #embedBatch(List)}；带查询缓存的实现只对未命中缓存的问题发起请求，
+     * 远程实现按交互查询限流，不与文档入库的批量请求排队。
+     *
+     * @param queries 问题列表
+     * @return 向量列表（与输入顺序一致）
+     */
+    default List<float[]> embedQueries(List<String> queries) {
+        return embedBatch(queries);
+    }
+
     /**
      * 获取向量维度
      *
@@ -36,4 +49,42 @@ public interface EmbeddingService {
      * @return 是否可用
      */
     boolean isAvailable();
+
+    /**
+     * 当前使用的模型（检索和入库写入的向量都由它生成，与当前Milvus集合中的向量一致）
+     *
+     * @return 模型，实现不区分模型时名称为 null
+     */
+    default EmbeddingModel getModel() {
+        return new EmbeddingModel(null, getDimension());
+    }
+
+    /**
+     * 使用指定模型向量化，不改变当前模型（重新向量化重建新集合时使用）
+     *
+     * @param model 目标模型
+     * @return 绑定到目标模型的向量化服务
+     * @throws UnsupportedOperationException 实现不支持切换模型
+     */
+    default EmbeddingService forModel(EmbeddingModel model) {
+        throw new UnsupportedOperationException("不支持指定Embedding模型");
+    }
+
+    /**
+     * 切换当前模型（重新向量化的新集合切换上线时调用）
+     *
+     * @param model 新模型
+     * @throws UnsupportedOperationException 实现不支持切换模型
+     */
+    default void activate(EmbeddingModel model) {
+        throw new UnsupportedOperationException("不支持切换Embedding模型");
+    }
+
+    /**
+     * Embedding模型
+     *
+     * @param name 模型名称
+     * @param dimension 向量维度
+     */
+    record EmbeddingModel(String name, int dimension) {}
 }
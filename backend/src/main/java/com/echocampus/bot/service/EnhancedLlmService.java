@@ -1,9 +1,12 @@
 package com.echocampus.bot.service;
 
 import com.echocampus.bot.entity.Message;
+import com.echocampus.bot.service.stream.StreamCancellation;
 import dev.langchain4j.agent.tool.ToolSpecification;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
 
 /**
@@ -36,14 +39,35 @@ public interface EnhancedLlmService {
      * @param tools 可用的工具规范列表
      * @param toolExecutor 工具执行器
      * @param contentConsumer 内容消费者
-     * @return 完整的AI回复
+     * @param cancellation 取消标记，取消时中止进行中的请求、不再执行工具调用
+     * @return 完整的AI回复（取消时为已生成的部分）
      */
     String chatWithToolsStream(String systemPrompt,
                               String userPrompt,
                               List<Message> historyMessages,
                               List<ToolSpecification> tools,
                               ToolExecutor toolExecutor,
-                              Consumer<String> contentConsumer);
+                              Consumer<String> contentConsumer,
+                              StreamCancellation cancellation);
+
+    /**
+     * 非阻塞的流式聊天（支持工具调用）：立即返回，等待LLM响应期间不占用线程；
+     * 内容片段在响应到达时回调，工具在线程池中执行
+     * <p>
+     * 默认实现在调用线程上阻塞执行 {@link #chatWithToolsStream}。
+     *
+     * @return 完整的AI回复（失败时为已回调的错误提示）
+     */
+    default CompletableFuture<String> chatWithToolsStreamAsync(String systemPrompt,
+                                                               String userPrompt,
+                                                               List<Message> historyMessages,
+                                                               List<ToolSpecification> tools,
+                                                               ToolExecutor toolExecutor,
+                                                               Consumer<String> contentConsumer,
+                                                               StreamCancellation cancellation) {
+        return CompletableFuture.completedFuture(chatWithToolsStream(systemPrompt, userPrompt, historyMessages,
+                tools, toolExecutor, contentConsumer, cancellation));
+    }
     
     /**
      * 工具执行器接口
@@ -58,5 +82,28 @@ public interface EnhancedLlmService {
          * @return 工具执行结果
          */
         String execute(String toolName, String arguments);
+
+        /**
+         * 执行AI在同一轮回复中发起的全部工具调用，实现可合并处理（如批量检索）
+         *
+         * @param toolCalls 本轮工具调用
+         * @return 与调用一一对应的执行结果
+         */
+        default List<String> executeAll(List<ToolCall> toolCalls) {
+            List<String> results = new ArrayList<>(toolCalls.size());
+            for (ToolCall toolCall : toolCalls) {
+                results.add(execute(toolCall.name(), toolCall.arguments()));
+            }
+            return results;
+        }
     }
+
+    /**
+     * 一次工具调用
+     *
+     * @param id 调用ID（回传给模型以对应结果）
+     * @param name 工具名称
+     * @param arguments 工具参数（JSON格式）
+     */
+    record ToolCall(String id, String name, String arguments) {}
 }
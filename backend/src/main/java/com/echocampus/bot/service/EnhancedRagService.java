@@ -3,8 +3,10 @@ package com.echocampus.bot.service;
 import com.echocampus.bot.entity.Message;
 import com.echocampus.bot.service.RagService.RagResponse;
 import com.echocampus.bot.service.RagService.SourceInfo;
+import com.echocampus.bot.service.stream.StreamCancellation;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
 
 /**
@@ -34,11 +36,30 @@ public interface EnhancedRagService {
      * @param statusConsumer 状态消费者
      * @param sourcesConsumer 来源消费者
      * @param contentConsumer 内容消费者
+     * @param cancellation 取消标记，取消时中止生成和检索工具调用，返回已生成的部分
      * @return 完整回答
      */
     String answerWithAutoRetrievalStream(String question, List<Message> historyMessages,
                                         Long userId, Long conversationId,
                                         Consumer<String> statusConsumer,
                                         Consumer<List<SourceInfo>> sourcesConsumer,
-                                        Consumer<String> contentConsumer);
+                                        Consumer<String> contentConsumer,
+                                        StreamCancellation cancellation);
+
+    /**
+     * 非阻塞的智能流式问答：立即返回，等待LLM响应期间不占用线程，检索工具在线程池中执行
+     * <p>
+     * 默认实现在调用线程上阻塞执行 {@link #answerWithAutoRetrievalStream}。
+     *
+     * @return 完整回答
+     */
+    default CompletableFuture<String> answerWithAutoRetrievalStreamAsync(String question, List<Message> historyMessages,
+                                                                         Long userId, Long conversationId,
+                                                                         Consumer<String> statusConsumer,
+                                                                         Consumer<List<SourceInfo>> sourcesConsumer,
+                                                                         Consumer<String> contentConsumer,
+                                                                         StreamCancellation cancellation) {
+        return CompletableFuture.completedFuture(answerWithAutoRetrievalStream(question, historyMessages,
+                userId, conversationId, statusConsumer, sourcesConsumer, contentConsumer, cancellation));
+    }
 }
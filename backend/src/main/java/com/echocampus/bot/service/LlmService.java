@@ -1,8 +1,10 @@
 package com.echocampus.bot.service;
 
 import com.echocampus.bot.entity.Message;
+import com.echocampus.bot.service.stream.StreamCancellation;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
 
 /**
@@ -64,6 +66,31 @@ public interface LlmService {
      */
     void ragAnswerStream(String question, String context, List<Message> historyMessages, Consumer<String> chunkConsumer);
 
+    /**
+     * 可取消的流式RAG问答：取消时中止进行中的上游请求，已回调的内容保留
+     * <p>
+     * 默认实现不支持取消，执行 {@link #ragAnswerStream(String, String, List, Consumer)}。
+     */
+    default void ragAnswerStream(String question, String context, List<Message> historyMessages,
+                                 Consumer<String> chunkConsumer, StreamCancellation cancellation) {
+        ragAnswerStream(question, context, historyMessages, chunkConsumer);
+    }
+
+    /**
+     * 非阻塞的流式RAG问答：立即返回，内容片段在响应到达时回调（不在调用线程上）
+     * <p>
+     * 默认实现在调用线程上阻塞执行 {@link #ragAnswerStream(String, String, List, Consumer, StreamCancellation)}。
+     *
+     * @param cancellation 取消标记，取消时中止上游请求并正常完成
+     * @return 生成结束（含失败时已回调错误提示、取消）时完成
+     */
+    default CompletableFuture<Void> ragAnswerStreamAsync(String question, String context, List<Message> historyMessages,
+                                                         Consumer<String> chunkConsumer,
+                                                         StreamCancellation cancellation) {
+        ragAnswerStream(question, context, historyMessages, chunkConsumer, cancellation);
+        return CompletableFuture.completedFuture(null);
+    }
+
     /**
      * 检查服务是否可用
      *
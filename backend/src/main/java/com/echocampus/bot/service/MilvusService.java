@@ -1,6 +1,11 @@
 package com.echocampus.bot.service;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Milvus向量数据库服务接口
@@ -19,10 +24,13 @@ public interface MilvusService {
      * @param docIds 对应的文档ID列表
      * @param contents 对应的文本内容列表
      * @param categories 对应的分类列表
+     * @param pageNumbers 对应的页码列表（元素可为null）
+     * @param titles 对应的文档标题列表
      * @return 向量ID列表
      */
-    List<String> insertVectors(List<float[]> vectors, List<Long> chunkIds, List<Long> docIds, 
-                                List<String> contents, List<String> categories);
+    List<String> insertVectors(List<float[]> vectors, List<Long> chunkIds, List<Long> docIds,
+                                List<String> contents, List<String> categories,
+                                List<Integer> pageNumbers, List<String> titles);
 
     /**
      * 搜索相似向量
@@ -31,7 +39,58 @@ public interface MilvusService {
      * @param threshold 相似度阈值
      * @return 搜索结果列表
      */
-    List<SearchResult> search(float[] queryVector, int topK, float threshold);
+    default List<SearchResult> search(float[] queryVector, int topK, float threshold) {
+        return search(queryVector, topK, threshold, SearchFilter.NONE);
+    }
+
+    /**
+     * 在限定范围内搜索相似向量（分类为分区键，按分类过滤时只检索对应分区）
+     * @param queryVector 查询向量
+     * @param topK 返回数量
+     * @param threshold 相似度阈值
+     * @param filter 标量过滤条件，{@link SearchFilter#NONE} 表示不过滤
+     * @return 搜索结果列表
+     */
+    List<SearchResult> search(float[] queryVector, int topK, float threshold, SearchFilter filter);
+
+    /**
+     * 批量搜索相似向量（多个查询向量共用同一过滤条件）
+     * <p>
+     * 默认逐条检索；Milvus实现在一次请求中检索全部向量。
+     * @param queryVectors 查询向量列表
+     * @param topK 每个查询的返回数量
+     * @param threshold 相似度阈值
+     * @param filter 标量过滤条件，{@link SearchFilter#NONE} 表示不过滤
+     * @return 与查询向量一一对应的搜索结果列表
+     */
+    default List<List<SearchResult>> searchBatch(List<float[]> queryVectors, int topK, float threshold,
+                                                 SearchFilter filter) {
+        List<List<SearchResult>> results = new ArrayList<>(queryVectors.size());
+        for (float[] queryVector : queryVectors) {
+            results.add(search(queryVector, topK, threshold, filter));
+        }
+        return results;
+    }
+
+    /**
+     * 按检索预算搜索相似向量（预算决定 ef / nprobe 等检索参数，在延迟和召回率之间取舍）
+     * <p>
+     * 默认忽略预算；支持调参的实现按预算换算检索参数。
+     * @param budget 检索预算，为null时使用配置的默认参数
+     */
+    default List<SearchResult> search(float[] queryVector, int topK, float threshold, SearchFilter filter,
+                                      SearchBudget budget) {
+        return search(queryVector, topK, threshold, filter);
+    }
+
+    /**
+     * 按检索预算批量搜索相似向量
+     * @param budget 检索预算，为null时使用配置的默认参数
+     */
+    default List<List<SearchResult>> searchBatch(List<float[]> queryVectors, int topK, float threshold,
+                                                 SearchFilter filter, SearchBudget budget) {
+        return searchBatch(queryVectors, topK, threshold, filter);
+    }
 
     /**
      * 删除向量
@@ -39,11 +98,33 @@ public interface MilvusService {
      */
     void deleteVectors(List<String> vectorIds);
 
+    /**
+     * 按切块ID删除向量
+     * @param chunkIds 切块ID列表
+     */
+    void deleteByChunkIds(List<Long> chunkIds);
+
+    /**
+     * 按向量ID读取已存储的向量（用于复用相同内容的向量）
+     * @param vectorIds 向量ID列表
+     * @return 向量ID到向量的映射，不存在或服务不可用的ID不包含在内
+     */
+    Map<String, float[]> getVectors(List<String> vectorIds);
+
     /**
      * 删除文档相关的所有向量
      * @param docId 文档ID
      */
-    void deleteByDocId(Long docId);
+    default void deleteByDocId(Long docId) {
+        deleteByDocId(docId, null);
+    }
+
+    /**
+     * 删除文档相关的所有向量，已知分类时只在对应分区中删除
+     * @param docId 文档ID
+     * @param category 文档分类（写入向量时的分类），为null时扫描全部分区
+     */
+    void deleteByDocId(Long docId, String category);
 
     /**
      * 获取集合中的向量数量
@@ -57,8 +138,90 @@ public interface MilvusService {
      */
     boolean isAvailable();
 
+    /**
+     * 检索预算：按倍数缩放配置的检索参数（HNSW的ef、IVF的nprobe、DISKANN的search_list），
+     * 倍数越大召回率越高、延迟越大。各档位的实际召回率和延迟可用 MilvusIndexSweepBenchmark 或检索离线评估测得。
+     */
+    enum SearchBudget {
+        /** 低延迟，召回率略低 */
+        FAST(0.5),
+        /** 配置的默认参数 */
+        BALANCED(1),
+        /** 高召回率，延迟较大 */
+        ACCURATE(4);
+
+        private final double scale;
+
+        SearchBudget(double scale) {
+            this.scale = scale;
+        }
+
+        public double scale() {
+            return scale;
+        }
+
+        /**
+         * 按名称解析（不区分大小写），空白时返回null
+         *
+         * @throws IllegalArgumentException 名称无效
+         */
+        public static SearchBudget of(String name) {
+            if (name == null || name.isBlank()) {
+                return null;
+            }
+            try {
+                return valueOf(name.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("未知的检索预算: " + name + "，可用: " + Arrays.toString(values()));
+            }
+        }
+    }
+
+    /**
+     * 检索过滤条件：同一字段内为"或"，不同字段之间为"且"，集合为空表示该字段不限
+     *
+     * @param categories 限定的文档分类
+     * @param docIds 限定的文档ID
+     */
+    record SearchFilter(Set<String> categories, Set<Long> docIds) {
+
+        public static final SearchFilter NONE = new SearchFilter(Set.of(), Set.of());
+
+        public SearchFilter {
+            categories = categories == null ? Set.of() : Set.copyOf(categories);
+            docIds = docIds == null ? Set.of() : Set.copyOf(docIds);
+        }
+
+        /**
+         * 按单个分类过滤，分类为空白时不过滤
+         */
+        public static SearchFilter byCategory(String category) {
+            return category == null || category.isBlank()
+                    ? NONE : new SearchFilter(Set.of(category.trim()), Set.of());
+        }
+
+        public static SearchFilter byDocIds(Set<Long> docIds) {
+            return new SearchFilter(Set.of(), docIds);
+        }
+
+        public boolean isEmpty() {
+            return categories.isEmpty() && docIds.isEmpty();
+        }
+
+        /**
+         * 判断一条记录是否满足条件（用于不支持表达式的本地索引和全文检索结果）
+         */
+        public boolean matches(Long docId, String category) {
+            return (categories.isEmpty() || categories.contains(category))
+                    && (docIds.isEmpty() || docIds.contains(docId));
+        }
+    }
+
     /**
      * 搜索结果类
+     * <p>
+     * payloadLoaded 为 true 时 content/pageNumber/title 均来自向量库，可直接构建检索结果而无需回查数据库；
+     * 旧集合缺少页码、标题字段时为 false。
      */
     class SearchResult {
         private String vectorId;
@@ -66,6 +229,9 @@ public interface MilvusService {
         private Long docId;
         private String content;
         private String category;
+        private Integer pageNumber;
+        private String title;
+        private boolean payloadLoaded;
         private Float score;
 
         // Getters and Setters
@@ -79,6 +245,12 @@ public interface MilvusService {
         public void setContent(String content) { this.content = content; }
         public String getCategory() { return category; }
         public void setCategory(String category) { this.category = category; }
+        public Integer getPageNumber() { return pageNumber; }
+        public void setPageNumber(Integer pageNumber) { this.pageNumber = pageNumber; }
+        public String getTitle() { return title; }
+        public void setTitle(String title) { this.title = title; }
+        public boolean isPayloadLoaded() { return payloadLoaded; }
+        public void setPayloadLoaded(boolean payloadLoaded) { this.payloadLoaded = payloadLoaded; }
         public Float getScore() { return score; }
         public void setScore(Float score) { this.score = score; }
     }
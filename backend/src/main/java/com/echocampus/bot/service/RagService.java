@@ -2,9 +2,14 @@ package com.echocampus.bot.service;
 
 import com.echocampus.bot.dto.response.ChatResponse;
 import com.echocampus.bot.entity.KnowledgeChunk;
+import com.echocampus.bot.entity.KnowledgeDoc;
 import com.echocampus.bot.entity.Message;
+import com.echocampus.bot.service.stream.StreamCancellation;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
 
 /**
@@ -41,13 +46,51 @@ public interface RagService {
                         Consumer<String> contentConsumer);
 
     /**
-     * 检索相关知识片段
+     * 基于已完成的检索结果流式生成回答（检索可先于会话持久化、历史加载开始，见 ChatServiceImpl）
+     *
+     * @param question 用户问题
+     * @param retrieval 检索结果
+     * @param historyMessages 历史消息列表
+     * @param contentConsumer 内容片段消费者
+     * @param cancellation 取消标记，取消时中止生成，返回已生成的部分
+     * @return 完整的回答内容
+     */
+    String answerStream(String question, RetrievalResult retrieval, List<Message> historyMessages,
+                        Consumer<String> contentConsumer, StreamCancellation cancellation);
+
+    /**
+     * 基于已完成的检索结果非阻塞地流式生成回答：立即返回，等待LLM响应期间不占用线程
+     * <p>
+     * 默认实现在调用线程上阻塞执行 {@link #answerStream(String, RetrievalResult, List, Consumer, StreamCancellation)}。
+     *
+     * @return 完整的回答内容（取消时为已生成的部分）
+     */
+    default CompletableFuture<String> answerStreamAsync(String question, RetrievalResult retrieval,
+                                                        List<Message> historyMessages,
+                                                        Consumer<String> contentConsumer,
+                                                        StreamCancellation cancellation) {
+        return CompletableFuture.completedFuture(
+                answerStream(question, retrieval, historyMessages, contentConsumer, cancellation));
+    }
+
+    /**
+     * 按默认数量检索相关知识片段
+     */
+    RetrievalResult retrieve(String question);
+
+    /**
+     * 检索相关知识片段（一次向量化 + 一次向量搜索）
      *
      * @param question 用户问题
      * @param topK 返回数量
-     * @return 相关的知识片段列表
+     * @return 检索结果（按相似度降序的知识片段、分数及检索元信息）
+     */
+    RetrievalResult retrieve(String question, int topK);
+
+    /**
+     * 由检索结果构建来源信息（分数取自检索结果）
      */
-    List<KnowledgeChunk> retrieve(String question, int topK);
+    List<SourceInfo> buildSources(RetrievalResult retrieval);
 
     /**
      * RAG响应结果
@@ -58,6 +101,38 @@ public interface RagService {
             long responseTimeMs
     ) {}
 
+    /**
+     * 检索结果
+     *
+     * @param chunks 按相似度降序排列的知识片段
+     * @param scores 片段ID到相似度分数的映射
+     * @param docs 片段所属文档ID到文档的映射
+     * @param topK 检索数量
+     * @param threshold 相似度阈值
+     * @param elapsedMs 检索耗时（毫秒）
+     */
+    record RetrievalResult(
+            List<KnowledgeChunk> chunks,
+            Map<Long, Float> scores,
+            Map<Long, KnowledgeDoc> docs,
+            int topK,
+            float threshold,
+            long elapsedMs
+    ) {
+        public static RetrievalResult empty(int topK, float threshold, long elapsedMs) {
+            return new RetrievalResult(Collections.emptyList(), Collections.emptyMap(),
+                    Collections.emptyMap(), topK, threshold, elapsedMs);
+        }
+
+        public boolean isEmpty() {
+            return chunks.isEmpty();
+        }
+
+        public float scoreOf(Long chunkId) {
+            return scores.getOrDefault(chunkId, 0f);
+        }
+    }
+
     /**
      * 来源信息
      */
@@ -0,0 +1,205 @@
+package com.echocampus.bot.service.impl;
+
+import com.echocampus.bot.service.AnswerCacheService;
+import com.echocampus.bot.service.EmbeddingService;
+import com.echocampus.bot.service.RagService.SourceInfo;
+import com.echocampus.bot.utils.LruTtlCache;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * 语义回答缓存服务实现
+ * <p>
+ * 问题向量归一化后存储，查找时线性扫描计算余弦相似度（条目数有上限，扫描开销在毫秒级以内）。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class AnswerCacheServiceImpl implements AnswerCacheService {
+
+    /** LLM服务失败时返回的兜底回答前缀，这类回答不缓存 */
+    private static final List<String> ERROR_ANSWER_PREFIXES = List.of(
+            "抱歉，AI服务", "抱歉，AI响应", "抱歉，处理");
+
+    private final EmbeddingService embeddingService;
+
+    @Value("${rag.answer-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${rag.answer-cache.similarity-threshold:0.95}")
+    private float similarityThreshold;
+
+    @Value("${rag.answer-cache.max-entries:2000}")
+    private int maxEntries;
+
+    @Value("${rag.answer-cache.ttl-seconds:86400}")
+    private long ttlSeconds;
+
+    private LruTtlCache<String, Entry> cache;
+    private final AtomicLong version = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        cache = new LruTtlCache<>(maxEntries, maxEntries, ttlSeconds * 1000L, (key, entry) -> 1);
+        log.info("语义回答缓存初始化: enabled={}, threshold={}, maxEntries={}, ttlSeconds={}",
+                enabled, similarityThreshold, maxEntries, ttlSeconds);
+    }
+
+    @Override
+    public Optional<CachedAnswer> lookup(String question) {
+        if (!enabled || question == null || question.isBlank()) {
+            return Optional.empty();
+        }
+
+        float[] queryVector = embedQuietly(question);
+        if (queryVector == null) {
+            return Optional.empty();
+        }
+
+        String bestKey = null;
+        Entry best = null;
+        float bestSimilarity = -1f;
+        for (Map.Entry<String, Entry> e : cache.snapshot().entrySet()) {
+            float similarity = dot(queryVector, e.getValue().vector());
+            if (similarity > bestSimilarity) {
+                bestSimilarity = similarity;
+                bestKey = e.getKey();
+                best = e.getValue();
+            }
+        }
+
+        // 命中后再通过 get 刷新LRU顺序，期间被失效则视为未命中
+        if (best == null || bestSimilarity < similarityThreshold || cache.get(bestKey) == null) {
+            misses.incrementAndGet();
+            return Optional.empty();
+        }
+
+        hits.incrementAndGet();
+        log.info("语义回答缓存命中: question={}, cachedQuestion={}, similarity={}",
+                question, best.question(), bestSimilarity);
+        return Optional.of(new CachedAnswer(best.answer(), best.sources(), bestSimilarity));
+    }
+
+    @Override
+    public long currentVersion() {
+        return version.get();
+    }
+
+    @Override
+    public void store(String question, String answer, List<SourceInfo> sources, long expectedVersion) {
+        if (!enabled || question == null || question.isBlank() || answer == null || answer.isBlank()) {
+            return;
+        }
+        if (ERROR_ANSWER_PREFIXES.stream().anyMatch(answer::startsWith)) {
+            return;
+        }
+        // 生成回答期间知识库有变更，回答可能引用了已失效的内容
+        if (version.get() != expectedVersion) {
+            log.debug("知识库已变更，跳过回答缓存: question={}", question);
+            return;
+        }
+
+        float[] vector = embedQuietly(question);
+        if (vector == null) {
+            return;
+        }
+
+        List<SourceInfo> sourceList = sources != null ? List.copyOf(sources) : List.of();
+        Set<Long> docIds = sourceList.stream()
+                .map(SourceInfo::docId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toUnmodifiableSet());
+        cache.put(CachingEmbeddingService.normalize(question),
+                new Entry(vector, question, answer, sourceList, docIds));
+    }
+
+    @Override
+    public void invalidateDocument(Long docId) {
+        version.incrementAndGet();
+        int removed = cache.invalidateIf((key, entry) -> entry.docIds().isEmpty() || entry.docIds().contains(docId));
+        invalidations.addAndGet(removed);
+        if (removed > 0) {
+            log.info("文档变更，失效语义回答缓存: docId={}, 移除{}条", docId, removed);
+        }
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long h = hits.get();
+        long m = misses.get();
+        stats.put("enabled", enabled);
+        stats.put("hits", h);
+        stats.put("misses", m);
+        stats.put("hitRate", h + m == 0 ? 0 : Math.round(h * 10000.0 / (h + m)) / 10000.0);
+        stats.put("invalidations", invalidations.get());
+        LruTtlCache.Stats cacheStats = cache.stats();
+        stats.put("evictions", cacheStats.evictions());
+        stats.put("expirations", cacheStats.expirations());
+        stats.put("size", cacheStats.size());
+        return stats;
+    }
+
+    /**
+     * 向量化问题并归一化，失败时返回 null（缓存不可用不影响正常问答）
+     */
+    private float[] embedQuietly(String question) {
+        try {
+            return normalize(embeddingService.embed(question));
+        } catch (Exception e) {
+            log.warn("语义回答缓存向量化失败: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 归一化为单位向量，零向量（向量化失败）返回 null
+     */
+    private float[] normalize(float[] vector) {
+        if (vector == null) {
+            return null;
+        }
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        if (norm == 0) {
+            return null;
+        }
+        float inv = (float) (1.0 / Math.sqrt(norm));
+        float[] result = new float[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            result[i] = vector[i] * inv;
+        }
+        return result;
+    }
+
+    private float dot(float[] a, float[] b) {
+        if (a.length != b.length) {
+            return -1f;
+        }
+        float sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    private record Entry(
+            float[] vector,
+            String question,
+            String answer,
+            List<SourceInfo> sources,
+            Set<Long> docIds
+    ) {}
+}
@@ -0,0 +1,208 @@
+package com.echocampus.bot.service.impl;
+
+import com.echocampus.bot.config.AiServiceConfig;
+import com.echocampus.bot.service.EmbeddingService;
+import com.echocampus.bot.utils.LruTtlCache;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Service;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+/**
+ * 带查询向量缓存的Embedding服务
+ * <p>
+ * 对单条查询的向量化结果做LRU+TTL缓存（键为规范化文本 + 模型 + 维度），
+ * 相同问题并发未命中时只发起一次远程请求。批量向量化（文档入库）直接透传，不占用缓存；
+ * 批量问题（{@link #embedQueries}）与单条问题共用缓存，未命中的问题合并为一次批量请求。
+ * 模型取被包装服务的当前模型，{@link #activate} 切换模型时清空缓存。
+ */
+@Slf4j
+@Primary
+@Service
+public class CachingEmbeddingService implements EmbeddingService {
+
+    /** 每个缓存条目的固定开销估算（对象头、引用、链表节点等） */
+    private static final int ENTRY_OVERHEAD_BYTES = 96;
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final EmbeddingService delegate;
+    private final AiServiceConfig aiConfig;
+    private final LruTtlCache<String, float[]> cache;
+    private final ConcurrentMap<String, CompletableFuture<float[]>> inFlight = new ConcurrentHashMap<>();
+
+    public CachingEmbeddingService(@Qualifier("embeddingServiceImpl") EmbeddingService delegate,
+                                   AiServiceConfig aiConfig) {
+        this.delegate = delegate;
+        this.aiConfig = aiConfig;
+        AiServiceConfig.EmbeddingCacheConfig cacheConfig = aiConfig.getEmbedding().getCache();
+        this.cache = new LruTtlCache<>(
+                cacheConfig.getMaxEntries(),
+                cacheConfig.getMaxMemoryMb() * 1024L * 1024L,
+                cacheConfig.getTtlSeconds() * 1000L,
+                (key, vector) -> ENTRY_OVERHEAD_BYTES + key.length() * 2L + vector.length * 4L
+        );
+        log.info("查询向量缓存初始化: enabled={}, maxEntries={}, maxMemoryMb={}, ttlSeconds={}",
+                cacheConfig.getEnabled(), cacheConfig.getMaxEntries(),
+                cacheConfig.getMaxMemoryMb(), cacheConfig.getTtlSeconds());
+    }
+
+    @Override
+    public float[] embed(String text) {
+        if (text == null || text.trim().isEmpty() || !aiConfig.getEmbedding().getCache().getEnabled()) {
+            return delegate.embed(text);
+        }
+
+        String normalized = normalize(text);
+        String key = cacheKey(normalized);
+
+        float[] cached = cache.get(key);
+        if (cached != null) {
+            return cached.clone();
+        }
+
+        // 同一问题并发未命中时合并为一次远程请求
+        CompletableFuture<float[]> pending = new CompletableFuture<>();
+        CompletableFuture<float[]> existing = inFlight.putIfAbsent(key, pending);
+        if (existing != null) {
+            try {
+                return existing.join().clone();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException re ? re : e;
+            }
+        }
+
+        try {
+            float[] vector = delegate.embed(normalized);
+            // 失败时返回的零向量不缓存
+            if (vector != null && !allZeros(vector)) {
+                cache.put(key, vector.clone());
+            }
+            pending.complete(vector);
+            return vector;
+        } catch (RuntimeException e) {
+            pending.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, pending);
+        }
+    }
+
+    @Override
+    public List<float[]> embedQueries(List<String> queries) {
+        if (!aiConfig.getEmbedding().getCache().getEnabled()) {
+            return delegate.embedQueries(queries);
+        }
+
+        List<String> keys = new ArrayList<>(queries.size());
+        float[][] vectors = new float[queries.size()][];
+        // 未命中的规范化文本 → 对应的输入下标（重复问题只请求一次）
+        Map<String, List<Integer>> misses = new LinkedHashMap<>();
+        for (int i = 0; i < queries.size(); i++) {
+            String normalized = normalize(queries.get(i));
+            String key = cacheKey(normalized);
+            keys.add(key);
+            float[] cached = cache.get(key);
+            if (cached != null) {
+                vectors[i] = cached.clone();
+            } else {
+                misses.computeIfAbsent(normalized, k -> new ArrayList<>()).add(i);
+            }
+        }
+
+        if (!misses.isEmpty()) {
+            List<String> texts = new ArrayList<>(misses.keySet());
+            List<float[]> embedded = delegate.embedQueries(texts);
+            for (int t = 0; t < texts.size(); t++) {
+                float[] vector = embedded.get(t);
+                List<Integer> indexes = misses.get(texts.get(t));
+                if (vector != null && !allZeros(vector)) {
+                    cache.put(keys.get(indexes.get(0)), vector.clone());
+                }
+                for (int index : indexes) {
+                    vectors[index] = vector != null ? vector.clone() : null;
+                }
+            }
+        }
+        return Arrays.asList(vectors);
+    }
+
+    @Override
+    public List<float[]> embedBatch(List<String> texts) {
+        return delegate.embedBatch(texts);
+    }
+
+    @Override
+    public int getDimension() {
+        return delegate.getDimension();
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return delegate.isAvailable();
+    }
+
+    @Override
+    public EmbeddingModel getModel() {
+        return delegate.getModel();
+    }
+
+    /**
+     * 指定模型的向量化只用于重建新集合的批量请求，不经过缓存
+     */
+    @Override
+    public EmbeddingService forModel(EmbeddingModel model) {
+        return delegate.forModel(model);
+    }
+
+    @Override
+    public void activate(EmbeddingModel model) {
+        delegate.activate(model);
+        clearCache();
+    }
+
+    /**
+     * 获取缓存统计信息
+     */
+    public LruTtlCache.Stats getCacheStats() {
+        return cache.stats();
+    }
+
+    /**
+     * 清空缓存（例如切换Embedding模型后）
+     */
+    public void clearCache() {
+        cache.clear();
+    }
+
+    /**
+     * 规范化查询文本：Unicode兼容归一（全角转半角等）、去首尾空白、合并连续空白
+     */
+    static String normalize(String text) {
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFKC).trim();
+        return WHITESPACE.matcher(normalized).replaceAll(" ");
+    }
+
+    private String cacheKey(String normalizedText) {
+        EmbeddingModel model = delegate.getModel();
+        return model.name() + '|' + model.dimension() + '|' + normalizedText;
+    }
+
+    private boolean allZeros(float[] vector) {
+        for (float v : vector) {
+            if (v != 0) return false;
+        }
+        return true;
+    }
+}
@@ -9,9 +9,11 @@ import com.echocampus.bot.entity.Conversation;
 import com.echocampus.bot.entity.Message;
 import com.echocampus.bot.mapper.ConversationMapper;
 import com.echocampus.bot.mapper.MessageMapper;
+import com.echocampus.bot.service.AnswerCacheService;
 import com.echocampus.bot.service.ChatService;
 import com.echocampus.bot.service.RagService;
 import com.echocampus.bot.service.EnhancedRagService;
+import com.echocampus.bot.service.stream.StreamCancellation;
 import com.echocampus.bot.utils.DateTimeUtil;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -21,9 +23,16 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
@@ -40,6 +49,11 @@ public class ChatServiceImpl implements ChatService {
     private final MessageMapper messageMapper;
     private final RagService ragService;
     private final EnhancedRagService enhancedRagService;
+    private final AnswerCacheService answerCacheService;
+    private final Executor chatExecutor;
+    
+    /** 缓存回答回放时每个内容事件的字符数 */
+    private static final int REPLAY_SEGMENT_LENGTH = 16;
     
     @Value("${rag.enhanced-mode:true}")
     private boolean enhancedMode;
@@ -78,15 +92,28 @@ public class ChatServiceImpl implements ChatService {
                 .collect(Collectors.toList());
         
         // 4. 调用RAG服务生成回复（根据配置选择增强模式或传统模式）
+        // 无历史上下文的首轮提问（历史中只有刚保存的用户消息）优先复用语义缓存中的回答
+        boolean cacheable = recentMessages.size() <= 1;
+        Optional<AnswerCacheService.CachedAnswer> cached = cacheable
+                ? answerCacheService.lookup(request.getMessage()) : Optional.empty();
         RagService.RagResponse ragResponse;
-        if (enhancedMode) {
-            // 增强模式：支持AI自主判断和上下文检索
-            ragResponse = enhancedRagService.answerWithAutoRetrieval(
-                    request.getMessage(), recentMessages, userId, conversation.getId());
+        if (cached.isPresent()) {
+            ragResponse = new RagService.RagResponse(cached.get().answer(), cached.get().sources(),
+                    System.currentTimeMillis() - startTime);
         } else {
-            // 传统模式：总是检索知识库
-            ragResponse = ragService.answer(
-                    request.getMessage(), recentMessages, userId, conversation.getId());
+            long kbVersion = answerCacheService.currentVersion();
+            if (enhancedMode) {
+                // 增强模式：支持AI自主判断和上下文检索
+                ragResponse = enhancedRagService.answerWithAutoRetrieval(
+                        request.getMessage(), recentMessages, userId, conversation.getId());
+            } else {
+                // 传统模式：总是检索知识库
+                ragResponse = ragService.answer(
+                        request.getMessage(), recentMessages, userId, conversation.getId());
+            }
+            if (cacheable) {
+                answerCacheService.store(request.getMessage(), ragResponse.answer(), ragResponse.sources(), kbVersion);
+            }
         }
                 
         String aiAnswer = ragResponse.answer();
@@ -125,39 +152,123 @@ public class ChatServiceImpl implements ChatService {
                 .build();
     }
 
+    /**
+     * 流式对话。各步骤按依赖关系并行：
+     * <pre>
+     *            ┌ 检索（向量化 + 向量检索）、无历史会话的语义缓存查询 ─┬→ 来源事件 ─┐
+     * 校验会话 ──┤                                                     │             ├→ 生成
+     *            └ 创建新会话 → 保存用户消息 → 创建AI消息 → 状态事件 ─┘             │
+     *                        → 历史加载（只读，与消息写入并行） ───────────────────┘
+     * </pre>
+     * 已有会话先按主键校验，会话不存在时不启动检索；检索不依赖任何数据库写入，随后立即启动。
+     * 检索完成、AI消息ID已知且确定不使用缓存回答后立即发送来源，不等待历史加载。
+     * 增强模式由AI通过工具决定是否检索，无法提前。
+     * 完成事件中附带各阶段耗时。客户端断开（取消）时中止生成，已生成的部分回答照常保存，但不写入语义缓存。
+     */
     @Override
     @Transactional
-    public void sendMessageStream(Long userId, ChatRequest request, Consumer<StreamChatResponse> responseConsumer) {
-        long startTime = System.currentTimeMillis();
-        
-        // 1. 获取或创建会话
-        Conversation conversation = getOrCreateConversation(userId, request);
-        final Long conversationId = conversation.getId();
+    public void sendMessageStream(Long userId, ChatRequest request, Consumer<StreamChatResponse> responseConsumer,
+                                  StreamCancellation cancellation) {
+        await(startStream(userId, request, responseConsumer, cancellation, false));
+    }
 
-        // 2. 保存用户消息
-        Message userMessage = saveUserMessage(conversationId, request.getMessage());
-        
-        // 3. 创建AI回复消息（先保存空消息，获取ID）
-        Message botMessage = createEmptyBotMessage(conversationId, userMessage.getId());
-        final Long messageId = botMessage.getId();
+    /**
+     * 非阻塞流式对话：准备步骤同 {@link #sendMessageStream}，生成阶段由非阻塞HTTP客户端回调推进，
+     * 生成结束后的消息更新、缓存写入在聊天线程池中执行
+     * <p>
+     * 不开启事务：后续的消息更新（生成结束、增强模式拆分消息）在其他线程、其他连接上执行，
+     * 且可能早于本方法返回。会话和消息的写入须在执行后立即提交，否则这些更新看不到刚写入的消息，
+     * 更新0行，AI消息停留为空内容。
+     */
+    @Override
+    public CompletableFuture<Void> sendMessageStreamAsync(Long userId, ChatRequest request,
+                                                          Consumer<StreamChatResponse> responseConsumer,
+                                                          StreamCancellation cancellation) {
+        return startStream(userId, request, responseConsumer, cancellation, true);
+    }
+
+    private CompletableFuture<Void> startStream(Long userId, ChatRequest request,
+                                                Consumer<StreamChatResponse> responseConsumer,
+                                                StreamCancellation cancellation, boolean nonBlocking) {
+        long startTime = System.currentTimeMillis();
+        TurnTimings timings = new TurnTimings(startTime);
+        String question = request.getMessage();
+        boolean newConversation = request.getConversationId() == null;
         
-        // 4. 发送状态：开始处理
-        responseConsumer.accept(StreamChatResponse.status(conversationId, messageId, "正在处理您的问题..."));
+        // 1. 已有会话按主键校验，会话不存在时直接失败，不启动检索
+        Conversation existing = newConversation ? null : getOrCreateConversation(userId, request);
         
-        // 5. 获取历史消息
-        List<Message> recentMessages = retrieveRecentMessages(conversationId, userMessage.getId(), messageId);
+        // 2. 立即开始检索；没有历史的会话（新会话或还没有消息的会话）可以使用语义缓存，缓存查询同时开始
+        CompletableFuture<RagService.RetrievalResult> retrievalFuture = enhancedMode ? null
+                : CompletableFuture.supplyAsync(() -> {
+                    long retrievalStart = System.currentTimeMillis();
+                    RagService.RetrievalResult result = ragService.retrieve(question);
+                    timings.record("retrievalMs", System.currentTimeMillis() - retrievalStart);
+                    return result;
+                }, chatExecutor);
+        boolean withoutHistory = existing == null || existing.getMessageCount() == null
+                || existing.getMessageCount() == 0;
+        CompletableFuture<Optional<AnswerCacheService.CachedAnswer>> cachedFuture = withoutHistory
+                ? CompletableFuture.supplyAsync(() -> answerCacheService.lookup(question), chatExecutor) : null;
         
-        // 6. 处理流式响应
-        handleStreamResponse(
-            conversationId,
-            messageId,
-            userMessage.getId(),
-            request.getMessage(),
-            recentMessages,
-            userId,
-            responseConsumer,
-            startTime
-        );
+        try {
+            // 3. 新会话在检索的同时创建
+            Conversation conversation = existing != null ? existing : getOrCreateConversation(userId, request);
+            final Long conversationId = conversation.getId();
+            timings.mark("conversationAtMs");
+            
+            // 4. 加载历史消息（只读，与消息写入并行；新会话没有历史）
+            CompletableFuture<List<Message>> historyFuture = newConversation
+                    ? CompletableFuture.completedFuture(List.of())
+                    : CompletableFuture.supplyAsync(() -> messageMapper.selectByConversationId(conversationId),
+                    chatExecutor);
+            
+            // 5. 保存用户消息，创建AI回复消息（先保存空消息，获取ID）
+            long persistStart = System.currentTimeMillis();
+            Message userMessage = saveUserMessage(conversationId, question);
+            Message botMessage = createEmptyBotMessage(conversationId, userMessage.getId());
+            final Long messageId = botMessage.getId();
+            timings.record("persistMs", System.currentTimeMillis() - persistStart);
+            
+            // 6. 发送状态：开始处理
+            responseConsumer.accept(StreamChatResponse.status(conversationId, messageId, "正在处理您的问题..."));
+            
+            // 7. 检索完成且缓存未命中时立即发送来源（可能已完成，在当前线程发送），不等待历史加载；
+            //    缓存命中时由回放发送缓存的来源
+            CompletableFuture<RetrievedSources> sourcesFuture = retrievalFuture == null ? null
+                    : retrievalFuture.thenCombine(cacheMiss(cachedFuture), (retrieval, miss) -> {
+                        RetrievedSources retrieved = RetrievedSources.of(ragService.buildSources(retrieval), retrieval);
+                        if (miss) {
+                            sendSources(retrieved, conversationId, messageId, responseConsumer, timings);
+                        }
+                        return retrieved;
+                    });
+            
+            // 8. 历史消息（排除本轮刚写入的两条）
+            List<Message> recentMessages = recentMessages(await(historyFuture), userMessage.getId(), messageId);
+            timings.mark("historyAtMs");
+            
+            // 9. 处理流式响应
+            return handleStreamResponse(
+                conversationId,
+                messageId,
+                userMessage.getId(),
+                question,
+                recentMessages,
+                userId,
+                sourcesFuture,
+                cachedFuture,
+                responseConsumer,
+                timings,
+                cancellation,
+                nonBlocking
+            );
+        } finally {
+            // 异常或命中缓存时不再需要检索结果
+            if (retrievalFuture != null) {
+                retrievalFuture.cancel(false);
+            }
+        }
     }
 
     /**
@@ -206,10 +317,9 @@ public class ChatServiceImpl implements ChatService {
     }
 
     /**
-     * 获取最近的历史消息
+     * 取最近10轮对话（20条消息），排除本轮的用户消息和AI消息
      */
-    private List<Message> retrieveRecentMessages(Long conversationId, Long userMessageId, Long botMessageId) {
-        List<Message> historyMessages = messageMapper.selectByConversationId(conversationId);
+    private static List<Message> recentMessages(List<Message> historyMessages, Long userMessageId, Long botMessageId) {
         return historyMessages.stream()
                 .filter(m -> !m.getId().equals(userMessageId) && !m.getId().equals(botMessageId))
                 .sorted((a, b) -> b.getCreatedAt().compareTo(a.getCreatedAt()))
@@ -220,79 +330,178 @@ public class ChatServiceImpl implements ChatService {
 
     /**
      * 处理流式响应
+     *
+     * @param nonBlocking 是否使用非阻塞生成（返回时回答可能仍在生成）
+     * @return 完成事件发送后完成
      */
-    private void handleStreamResponse(
+    private CompletableFuture<Void> handleStreamResponse(
             Long conversationId,
             Long initialMessageId,
             Long userMessageId,
             String question,
             List<Message> recentMessages,
             Long userId,
+            CompletableFuture<RetrievedSources> sourcesFuture,
+            CompletableFuture<Optional<AnswerCacheService.CachedAnswer>> cachedFuture,
             Consumer<StreamChatResponse> responseConsumer,
-            long startTime) {
+            TurnTimings timings,
+            StreamCancellation cancellation,
+            boolean nonBlocking) {
         
         // 用于收集完整回答的StringBuilder和知识来源
         StringBuilder fullAnswer = new StringBuilder();
         List<ChatResponse.SourceDoc> allSourceDocs = new ArrayList<>();
         
+        // 无历史上下文的首轮提问优先复用语义缓存中的回答（追问依赖上下文，不走缓存）；
+        // 是否查询缓存在开始时按会话消息数确定，来源事件据此决定是否等待缓存结果
+        boolean cacheable = cachedFuture != null && recentMessages.isEmpty();
+        if (cacheable) {
+            Optional<AnswerCacheService.CachedAnswer> cached = await(cachedFuture);
+            if (cached.isPresent()) {
+                replayCachedAnswer(cached.get(), conversationId, initialMessageId, fullAnswer, allSourceDocs, responseConsumer);
+                updateFinalMessage(initialMessageId, fullAnswer.toString(), allSourceDocs);
+                sendCompletionEvent(conversationId, initialMessageId, responseConsumer, timings);
+                return CompletableFuture.completedFuture(null);
+            }
+        }
+        long kbVersion = answerCacheService.currentVersion();
+        List<RagService.SourceInfo> allSources = new ArrayList<>();
+        
         // 用于追踪当前正在流式输出的消息ID（支持多条消息，线程安全）
         final AtomicLong currentMessageId = new AtomicLong(initialMessageId);
         final AtomicLong currentParentId = new AtomicLong(userMessageId);
         
         // 调用RAG流式服务（根据配置选择增强模式或传统模式）
-        String answer;
+        long generationStart = System.currentTimeMillis();
+        CompletableFuture<String> answer;
         if (enhancedMode) {
             // 增强模式：支持AI自主判断和上下文检索
-            answer = enhancedRagService.answerWithAutoRetrievalStream(
-                    question,
-                    recentMessages,
-                    userId,
-                    conversationId,
-                    // 状态消费者
-                    status -> handleStatusUpdate(status, conversationId, currentMessageId, currentParentId, fullAnswer, responseConsumer),
-                    // 来源消费者
-                    sources -> handleSourcesUpdate(sources, conversationId, currentMessageId, allSourceDocs, responseConsumer),
-                    // 内容消费者
-                    chunk -> handleContentUpdate(chunk, conversationId, currentMessageId, fullAnswer, responseConsumer)
-            );
+            Consumer<String> statusConsumer = status ->
+                    handleStatusUpdate(status, conversationId, currentMessageId, currentParentId, fullAnswer, responseConsumer);
+            Consumer<List<RagService.SourceInfo>> sourcesConsumer = sources -> {
+                allSources.addAll(sources);
+                handleSourcesUpdate(sources, conversationId, currentMessageId, allSourceDocs, responseConsumer);
+                timings.markOnce("sourcesAtMs");
+            };
+            Consumer<String> contentConsumer = chunk -> {
+                timings.markOnce("firstTokenAtMs");
+                handleContentUpdate(chunk, conversationId, currentMessageId, fullAnswer, responseConsumer);
+            };
+            answer = nonBlocking
+                    ? enhancedRagService.answerWithAutoRetrievalStreamAsync(question, recentMessages, userId,
+                            conversationId, statusConsumer, sourcesConsumer, contentConsumer, cancellation)
+                    : CompletableFuture.completedFuture(enhancedRagService.answerWithAutoRetrievalStream(question,
+                            recentMessages, userId, conversationId, statusConsumer, sourcesConsumer, contentConsumer,
+                            cancellation));
         } else {
-            // 传统模式：总是检索知识库（不支持多条消息）
-            answer = ragService.answerStream(
-                    question,
-                    recentMessages,
-                    userId,
-                    conversationId,
-                    // 状态消费者
-                    status -> responseConsumer.accept(
-                            StreamChatResponse.status(conversationId, currentMessageId.get(), status)),
-                    // 来源消费者
-                    sources -> {
-                        List<ChatResponse.SourceDoc> sourceDocs = sources.stream()
-                                .map(s -> ChatResponse.SourceDoc.builder()
-                                        .docId(s.docId())
-                                        .title(s.docTitle())
-                                        .content(s.content())
-                                        .similarity(s.score())
-                                        .build())
-                                .collect(Collectors.toList());
-                        allSourceDocs.addAll(sourceDocs);
-                        responseConsumer.accept(
-                                StreamChatResponse.sources(conversationId, currentMessageId.get(), sourceDocs));
-                    },
-                    // 内容消费者
-                    chunk -> {
-                        fullAnswer.append(chunk);
-                        responseConsumer.accept(
-                                StreamChatResponse.content(conversationId, currentMessageId.get(), chunk));
-                    }
-            );
+            // 传统模式：总是检索知识库（不支持多条消息）；检索已在保存消息的同时开始，来源通常已在检索完成时发送，
+            // 缓存命中但因有历史不能使用时在这里补发
+            RetrievedSources retrieved = await(sourcesFuture);
+            if (!retrieved.sent().get()) {
+                sendSources(retrieved, conversationId, currentMessageId.get(), responseConsumer, timings);
+            }
+            RagService.RetrievalResult retrieval = retrieved.retrieval();
+            allSources.addAll(retrieved.sources());
+            allSourceDocs.addAll(retrieved.sourceDocs());
+            responseConsumer.accept(StreamChatResponse.status(conversationId, currentMessageId.get(), "正在生成回答..."));
+            
+            // 内容消费者
+            Consumer<String> contentConsumer = chunk -> {
+                timings.markOnce("firstTokenAtMs");
+                fullAnswer.append(chunk);
+                responseConsumer.accept(
+                        StreamChatResponse.content(conversationId, currentMessageId.get(), chunk));
+            };
+            answer = nonBlocking
+                    ? ragService.answerStreamAsync(question, retrieval, recentMessages, contentConsumer, cancellation)
+                    : CompletableFuture.completedFuture(
+                            ragService.answerStream(question, retrieval, recentMessages, contentConsumer, cancellation));
+        }
+        
+        // 生成结束后的数据库更新、缓存写入（含向量化）不在HTTP回调线程上执行
+        Executor finishExecutor = nonBlocking ? chatExecutor : Runnable::run;
+        return answer.thenAcceptAsync(ignored -> {
+            timings.record("generationMs", System.currentTimeMillis() - generationStart);
+            
+            // 更新最后一条AI消息的内容和元数据（客户端已断开时保存已生成的部分）
+            updateFinalMessage(currentMessageId.get(), fullAnswer.toString(), allSourceDocs);
+            
+            // 回答被拆分为多条消息时无法按单条回放，不缓存；中途取消的回答不完整，不缓存
+            if (cancellation.isCancelled()) {
+                log.info("客户端已断开，已保存部分回答: messageId={}, length={}", currentMessageId.get(), fullAnswer.length());
+            } else if (cacheable && currentMessageId.get() == initialMessageId) {
+                answerCacheService.store(question, fullAnswer.toString(), allSources, kbVersion);
+            }
+            
+            // 发送完成事件
+            sendCompletionEvent(conversationId, currentMessageId.get(), responseConsumer, timings);
+        }, finishExecutor);
+    }
+
+    /**
+     * 缓存未命中（或不查询缓存）时完成为true
+     */
+    private static CompletableFuture<Boolean> cacheMiss(
+            CompletableFuture<Optional<AnswerCacheService.CachedAnswer>> cachedFuture) {
+        return cachedFuture == null ? CompletableFuture.completedFuture(true) : cachedFuture.thenApply(Optional::isEmpty);
+    }
+
+    /**
+     * 发送检索片段数状态和来源事件
+     */
+    private static void sendSources(RetrievedSources retrieved, Long conversationId, Long messageId,
+                                    Consumer<StreamChatResponse> responseConsumer, TurnTimings timings) {
+        responseConsumer.accept(StreamChatResponse.status(conversationId, messageId,
+                "检索到 " + retrieved.retrieval().chunks().size() + " 个相关片段"));
+        responseConsumer.accept(StreamChatResponse.sources(conversationId, messageId, retrieved.sourceDocs()));
+        retrieved.sent().set(true);
+        timings.mark("sourcesAtMs");
+    }
+
+    /**
+     * 传统模式的检索结果及其来源；sent 表示来源事件是否已发送
+     */
+    private record RetrievedSources(RagService.RetrievalResult retrieval, List<RagService.SourceInfo> sources,
+                                    List<ChatResponse.SourceDoc> sourceDocs, AtomicBoolean sent) {
+        
+        static RetrievedSources of(List<RagService.SourceInfo> sources, RagService.RetrievalResult retrieval) {
+            List<ChatResponse.SourceDoc> sourceDocs = sources.stream()
+                    .map(s -> ChatResponse.SourceDoc.builder()
+                            .docId(s.docId())
+                            .title(s.docTitle())
+                            .content(s.content())
+                            .similarity(s.score())
+                            .build())
+                    .collect(Collectors.toList());
+            return new RetrievedSources(retrieval, sources, sourceDocs, new AtomicBoolean());
         }
+    }
+
+    /**
+     * 回放缓存的回答：按正常生成时的事件顺序发送来源和分段内容，前端无需区分
+     */
+    private void replayCachedAnswer(
+            AnswerCacheService.CachedAnswer cached,
+            Long conversationId,
+            Long messageId,
+            StringBuilder fullAnswer,
+            List<ChatResponse.SourceDoc> allSourceDocs,
+            Consumer<StreamChatResponse> responseConsumer) {
         
-        // 更新最后一条AI消息的内容和元数据
-        updateFinalMessage(currentMessageId.get(), fullAnswer.toString(), allSourceDocs);
+        if (!cached.sources().isEmpty()) {
+            handleSourcesUpdate(cached.sources(), conversationId, new AtomicLong(messageId), allSourceDocs, responseConsumer);
+        }
         
-        // 发送完成事件
-        sendCompletionEvent(conversationId, currentMessageId.get(), responseConsumer, startTime);
+        String answer = cached.answer();
+        int start = 0;
+        while (start < answer.length()) {
+            // 按码点切分，避免拆开代理对（emoji等）
+            int end = answer.offsetByCodePoints(start, Math.min(REPLAY_SEGMENT_LENGTH, answer.codePointCount(start, answer.length())));
+            String segment = answer.substring(start, end);
+            fullAnswer.append(segment);
+            responseConsumer.accept(StreamChatResponse.content(conversationId, messageId, segment));
+            start = end;
+        }
     }
 
     /**
@@ -404,9 +613,11 @@ public class ChatServiceImpl implements ChatService {
             Long conversationId,
             Long messageId,
             Consumer<StreamChatResponse> responseConsumer,
-            long startTime) {
+            TurnTimings timings) {
         
-        long responseTime = System.currentTimeMillis() - startTime;
+        long responseTime = timings.elapsed();
+        timings.record("totalMs", responseTime);
+        log.debug("流式对话各阶段耗时: conversationId={}, timings={}", conversationId, timings.toMap());
         responseConsumer.accept(StreamChatResponse.done(
                 conversationId,
                 messageId,
@@ -415,10 +626,61 @@ public class ChatServiceImpl implements ChatService {
                         .completionTokens(0)
                         .totalTokens(0)
                         .build(),
-                responseTime
+                responseTime,
+                timings.toMap()
         ));
     }
 
+    /**
+     * 等待并行步骤的结果，异常按原类型抛出
+     */
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 单轮流式对话的各阶段耗时（毫秒）。xxxMs 为阶段时长，xxxAtMs 为距请求开始的时刻；
+     * 检索在线程池中记录，用线程安全的Map保存，按写入顺序输出
+     */
+    static final class TurnTimings {
+        
+        private final long startTime;
+        private final Map<String, Long> values = Collections.synchronizedMap(new LinkedHashMap<>());
+        
+        TurnTimings(long startTime) {
+            this.startTime = startTime;
+        }
+        
+        long elapsed() {
+            return System.currentTimeMillis() - startTime;
+        }
+        
+        void record(String name, long millis) {
+            values.put(name, millis);
+        }
+        
+        void mark(String name) {
+            values.put(name, elapsed());
+        }
+        
+        void markOnce(String name) {
+            values.putIfAbsent(name, elapsed());
+        }
+        
+        Map<String, Long> toMap() {
+            synchronized (values) {
+                return new LinkedHashMap<>(values);
+            }
+        }
+    }
+
     @Override
     public List<Conversation> getConversations(Long userId, Integer page, Integer size) {
         return conversationMapper.selectRecentByUserId(userId, size);
@@ -0,0 +1,575 @@
+package com.echocampus.bot.service.impl;
+
+import com.echocampus.bot.entity.KnowledgeChunk;
+import com.echocampus.bot.entity.KnowledgeDoc;
+import com.echocampus.bot.mapper.KnowledgeChunkMapper;
+import com.echocampus.bot.parser.DocumentParser;
+import com.echocampus.bot.parser.dto.ParsedSegment;
+import com.echocampus.bot.parser.exception.DocumentParseException;
+import com.echocampus.bot.service.DocumentProgressService;
+import com.echocampus.bot.service.EmbeddingService;
+import com.echocampus.bot.service.MilvusService;
+import com.echocampus.bot.service.TextChunkService;
+import com.echocampus.bot.utils.ContentHashUtil;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 文档入库流水线
+ * <p>
+ * 解析 → 切块并写库 → 向量化 → 写入Milvus 四个阶段各占一个线程，阶段之间通过有界队列按批次传递。
+ * 下游处理不过来时上游阻塞等待，因此内存占用与批次大小、队列容量成正比，而与文档大小无关。
+ * 任一阶段失败时其余阶段尽快退出，失败原因由 {@link #run()} 抛出。
+ * <p>
+ * 重新处理已入库的文档时按内容哈希增量更新：内容未变的切块保留原有行和向量（只更新位置，
+ * 页码变化时用原向量重写Milvus中的记录，使检索载荷中的页码保持一致），
+ * 其他文档中已有相同内容的切块直接复用其向量，只有新内容才调用向量化服务；
+ * 全部阶段成功后再删除新版本中已不存在的旧切块。
+ * <p>
+ * 每个文档创建一个实例，不可重复使用。
+ */
+@Slf4j
+public class DocumentIngestionPipeline {
+
+    private static final long POLL_MILLIS = 100;
+
+    private static final ParsedSegment END_OF_SEGMENTS = new ParsedSegment("", null, 100);
+    private static final List<KnowledgeChunk> END_OF_CHUNKS = Collections.emptyList();
+    private static final EmbeddedBatch END_OF_VECTORS = new EmbeddedBatch(END_OF_CHUNKS, List.of());
+
+    private final KnowledgeDoc doc;
+    private final DocumentParser parser;
+    private final TextChunkService textChunkService;
+    private final KnowledgeChunkMapper knowledgeChunkMapper;
+    private final EmbeddingService embeddingService;
+    private final MilvusService milvusService;
+    private final DocumentProgressService progressService;
+    private final int batchSize;
+
+    private final BlockingQueue<ParsedSegment> segmentQueue;
+    private final BlockingQueue<List<KnowledgeChunk>> chunkQueue;
+    private final BlockingQueue<EmbeddedBatch> vectorQueue;
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    // 增量重建索引：按内容哈希分组的已有切块（仅切块线程访问），以及需要删除的过期切块
+    private final Map<String, Deque<KnowledgeChunk>> existingByHash = new HashMap<>();
+    private final List<KnowledgeChunk> staleChunks = new ArrayList<>();
+    // 保留但页码变化的切块ID，写库时需要重写其Milvus记录（仅切块线程访问）
+    private final Set<Long> movedChunkIds = new HashSet<>();
+
+    // 各阶段计数器（由 progressLock 保护）
+    private final Object progressLock = new Object();
+    private int parseProgress;
+    private long parsedChars;
+    private boolean parsingDone;
+    private int chunkedCount;
+    private boolean chunkingDone;
+    private int embeddedCount;
+    private int storedCount;
+    private int keptCount;
+    private int reusedCount;
+    private String lastReportedStage;
+    private int lastReportedProgress = -1;
+
+    public DocumentIngestionPipeline(KnowledgeDoc doc,
+                                     DocumentParser parser,
+                                     TextChunkService textChunkService,
+                                     KnowledgeChunkMapper knowledgeChunkMapper,
+                                     EmbeddingService embeddingService,
+                                     MilvusService milvusService,
+                                     DocumentProgressService progressService,
+                                     int batchSize,
+                                     int queueCapacity) {
+        this.doc = doc;
+        this.parser = parser;
+        this.textChunkService = textChunkService;
+        this.knowledgeChunkMapper = knowledgeChunkMapper;
+        this.embeddingService = embeddingService;
+        this.milvusService = milvusService;
+        this.progressService = progressService;
+        this.batchSize = Math.max(1, batchSize);
+        this.segmentQueue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        this.chunkQueue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        this.vectorQueue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+    }
+
+    /**
+     * 执行流水线，阻塞直到所有阶段结束
+     *
+     * @return 入库结果统计
+     * @throws Exception 任一阶段的失败原因（解析失败为 DocumentParseException）
+     */
+    public Result run() throws Exception {
+        loadExistingChunks();
+
+        List<Thread> stages = List.of(
+                startStage("parse", this::parseStage),
+                startStage("embed", this::embedStage),
+                startStage("store", this::storeStage));
+
+        // 切块与写库在当前线程执行
+        runStage(this::chunkStage);
+
+        try {
+            for (Thread stage : stages) {
+                stage.join();
+            }
+        } catch (InterruptedException e) {
+            failure.compareAndSet(null, e);
+            stages.forEach(Thread::interrupt);
+            throw e;
+        }
+
+        Throwable error = failure.get();
+        if (error instanceof Exception e) {
+            throw e;
+        }
+        if (error != null) {
+            throw new IllegalStateException("文档入库失败: " + error.getMessage(), error);
+        }
+        if (parsedChars == 0) {
+            throw new DocumentParseException("文档内容为空");
+        }
+        if (chunkedCount == 0) {
+            throw new IllegalStateException("文本切块结果为空");
+        }
+
+        int removed = removeStaleChunks();
+        Result result = new Result(chunkedCount, keptCount, reusedCount,
+                chunkedCount - keptCount - reusedCount, removed);
+        log.info("文档入库完成: docId={}, 切块={}, 保留={}, 复用向量={}, 新向量化={}, 删除={}",
+                doc.getId(), result.chunkCount(), result.keptCount(), result.reusedCount(),
+                result.embeddedCount(), result.removedCount());
+        return result;
+    }
+
+    // ========== 增量比对 ==========
+
+    /**
+     * 加载文档已有的切块索引信息。没有哈希或没有向量ID（上次入库未完成）的切块无法复用，直接视为过期
+     */
+    private void loadExistingChunks() {
+        for (KnowledgeChunk chunk : knowledgeChunkMapper.selectIndexEntriesByDocId(doc.getId())) {
+            if (chunk.getContentHash() == null || chunk.getVectorId() == null) {
+                staleChunks.add(chunk);
+            } else {
+                existingByHash.computeIfAbsent(chunk.getContentHash(), k -> new ArrayDeque<>()).add(chunk);
+            }
+        }
+        if (!existingByHash.isEmpty() || !staleChunks.isEmpty()) {
+            log.info("增量重建索引: docId={}, 可复用切块={}, 过期切块={}", doc.getId(),
+                    existingByHash.values().stream().mapToInt(Deque::size).sum(), staleChunks.size());
+        }
+    }
+
+    /**
+     * 取出一个内容相同的已有切块，并将新位置写入其中。页码相同的候选优先，减少需要重写载荷的切块
+     *
+     * @return 被保留的已有切块，没有匹配时返回 null
+     */
+    private KnowledgeChunk claimExisting(KnowledgeChunk chunk) {
+        Deque<KnowledgeChunk> candidates = existingByHash.get(chunk.getContentHash());
+        if (candidates == null || candidates.isEmpty()) {
+            return null;
+        }
+        KnowledgeChunk existing = candidates.stream()
+                .filter(c -> Objects.equals(c.getPageNumber(), chunk.getPageNumber()))
+                .findFirst()
+                .orElse(candidates.peek());
+        candidates.remove(existing);
+        if (!Objects.equals(existing.getPageNumber(), chunk.getPageNumber())) {
+            // 索引信息不含正文，重写Milvus记录时需要
+            existing.setContent(chunk.getContent());
+            movedChunkIds.add(existing.getId());
+        }
+        existing.setChunkIndex(chunk.getChunkIndex());
+        existing.setPageNumber(chunk.getPageNumber());
+        existing.setStartPosition(chunk.getStartPosition());
+        existing.setEndPosition(chunk.getEndPosition());
+        return existing;
+    }
+
+    /**
+     * 删除新版本中已不存在的旧切块（先删向量再删行），返回删除数
+     */
+    private int removeStaleChunks() {
+        existingByHash.values().forEach(staleChunks::addAll);
+        if (staleChunks.isEmpty()) {
+            return 0;
+        }
+        List<Long> ids = staleChunks.stream().map(KnowledgeChunk::getId).toList();
+        milvusService.deleteByChunkIds(ids);
+        knowledgeChunkMapper.deleteBatch(ids);
+        return ids.size();
+    }
+
+    // ========== 各阶段 ==========
+
+    private void parseStage() throws Exception {
+        parser.parseSegments(doc.getFilePath(), segment -> {
+            put(segmentQueue, segment);
+            synchronized (progressLock) {
+                parseProgress = segment.progress();
+                parsedChars += segment.text().length();
+            }
+            reportProgress();
+        });
+        put(segmentQueue, END_OF_SEGMENTS);
+    }
+
+    private void chunkStage() throws Exception {
+        int chunkIndex = 0;
+        int positionOffset = 0;
+        List<KnowledgeChunk> batch = new ArrayList<>(batchSize);
+        List<KnowledgeChunk> kept = new ArrayList<>(batchSize);
+
+        while (true) {
+            ParsedSegment segment = take(segmentQueue);
+            if (segment == END_OF_SEGMENTS) {
+                synchronized (progressLock) {
+                    parsingDone = true;
+                }
+                break;
+            }
+            // 各段独立切块，续接全局序号和位置
+            for (KnowledgeChunk chunk : textChunkService.chunkText(segment.text(), doc.getId(), doc.getFileType())) {
+                chunk.setChunkIndex(chunkIndex++);
+                chunk.setStartPosition(chunk.getStartPosition() + positionOffset);
+                chunk.setEndPosition(chunk.getEndPosition() + positionOffset);
+                chunk.setPageNumber(segment.pageNumber());
+                if (chunk.getContentHash() == null) {
+                    chunk.setContentHash(ContentHashUtil.sha256Hex(chunk.getContent()));
+                }
+
+                KnowledgeChunk existing = claimExisting(chunk);
+                if (existing != null) {
+                    kept.add(existing);
+                    if (kept.size() >= batchSize) {
+                        flushKept(kept);
+                        kept = new ArrayList<>(batchSize);
+                    }
+                    continue;
+                }
+                batch.add(chunk);
+                if (batch.size() >= batchSize) {
+                    flushChunks(batch);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            positionOffset += segment.text().length();
+        }
+        if (!batch.isEmpty()) {
+            flushChunks(batch);
+        }
+        if (!kept.isEmpty()) {
+            flushKept(kept);
+        }
+
+        synchronized (progressLock) {
+            chunkingDone = true;
+        }
+        put(chunkQueue, END_OF_CHUNKS);
+        reportProgress();
+    }
+
+    private void flushChunks(List<KnowledgeChunk> batch) throws InterruptedException {
+        // 批量写库并回填ID（Milvus 的 chunk_id 字段需要）
+        knowledgeChunkMapper.insertBatch(batch);
+        synchronized (progressLock) {
+            chunkedCount += batch.size();
+        }
+        put(chunkQueue, batch);
+        reportProgress();
+    }
+
+    /**
+     * 内容未变的切块：只更新位置信息，向量和行都保留，直接计为已完成
+     */
+    private void flushKept(List<KnowledgeChunk> kept) {
+        knowledgeChunkMapper.updatePositions(kept);
+        List<KnowledgeChunk> moved = kept.stream().filter(c -> movedChunkIds.contains(c.getId())).toList();
+        if (!moved.isEmpty()) {
+            rewriteMovedVectors(moved);
+        }
+        synchronized (progressLock) {
+            chunkedCount += kept.size();
+            embeddedCount += kept.size();
+            storedCount += kept.size();
+            keptCount += kept.size();
+        }
+        reportProgress();
+    }
+
+    /**
+     * 用原向量重写页码变化切块的Milvus记录（Milvus不支持原地更新标量字段）。
+     * 先写入新记录并回写向量ID，成功后再按旧向量ID删除旧记录，避免中途失败时切块没有向量。
+     * 只影响检索载荷中的页码，失败时记录日志，不中断入库
+     */
+    private void rewriteMovedVectors(List<KnowledgeChunk> moved) {
+        try {
+            Map<String, float[]> stored = milvusService.getVectors(
+                    moved.stream().map(KnowledgeChunk::getVectorId).toList());
+            List<KnowledgeChunk> chunks = moved.stream().filter(c -> stored.containsKey(c.getVectorId())).toList();
+            if (chunks.isEmpty()) {
+                return;
+            }
+            List<float[]> vectors = chunks.stream().map(c -> stored.get(c.getVectorId())).toList();
+            List<String> oldVectorIds = chunks.stream().map(KnowledgeChunk::getVectorId).toList();
+            if (writeVectors(chunks, vectors)) {
+                milvusService.deleteVectors(oldVectorIds);
+            }
+        } catch (Exception e) {
+            log.warn("重写页码变化切块的向量失败，检索载荷中的页码可能过期: docId={}, error={}",
+                    doc.getId(), e.getMessage());
+        }
+    }
+
+    private void embedStage() throws Exception {
+        while (true) {
+            List<KnowledgeChunk> batch = take(chunkQueue);
+            if (batch == END_OF_CHUNKS) {
+                break;
+            }
+            List<float[]> vectors = vectorize(batch);
+            put(vectorQueue, new EmbeddedBatch(batch, vectors));
+            synchronized (progressLock) {
+                embeddedCount += batch.size();
+            }
+            reportProgress();
+        }
+        put(vectorQueue, END_OF_VECTORS);
+    }
+
+    /**
+     * 为一批切块生成向量：其他文档中已有相同内容的直接复用，其余调用向量化服务
+     */
+    private List<float[]> vectorize(List<KnowledgeChunk> batch) {
+        Map<String, float[]> reusable = findReusableVectors(batch);
+        List<String> texts = batch.stream()
+                .filter(c -> !reusable.containsKey(c.getContentHash()))
+                .map(KnowledgeChunk::getContent)
+                .toList();
+        List<float[]> embedded = texts.isEmpty() ? List.of() : embeddingService.embedBatch(texts);
+        if (embedded.size() != texts.size()) {
+            throw new IllegalStateException(String.format(
+                    "向量数量与切块数量不一致: vectors=%d, chunks=%d", embedded.size(), texts.size()));
+        }
+
+        List<float[]> vectors = new ArrayList<>(batch.size());
+        int next = 0;
+        for (KnowledgeChunk chunk : batch) {
+            float[] vector = reusable.get(chunk.getContentHash());
+            vectors.add(vector != null ? vector : embedded.get(next++));
+        }
+        synchronized (progressLock) {
+            reusedCount += batch.size() - texts.size();
+        }
+        return vectors;
+    }
+
+    /**
+     * 按内容哈希查找其他文档中已存储的向量。复用只是优化，查询失败时全部重新向量化
+     */
+    private Map<String, float[]> findReusableVectors(List<KnowledgeChunk> batch) {
+        try {
+            Set<String> hashes = new LinkedHashSet<>();
+            batch.forEach(c -> hashes.add(c.getContentHash()));
+            Map<String, String> hashByVectorId = new HashMap<>();
+            for (KnowledgeChunk source : knowledgeChunkMapper.selectVectorizedByContentHashes(hashes, doc.getId())) {
+                hashByVectorId.put(source.getVectorId(), source.getContentHash());
+            }
+            if (hashByVectorId.isEmpty()) {
+                return Map.of();
+            }
+
+            int dimension = embeddingService.getDimension();
+            Map<String, float[]> vectors = new HashMap<>();
+            milvusService.getVectors(new ArrayList<>(hashByVectorId.keySet())).forEach((vectorId, vector) -> {
+                if (vector.length == dimension) {
+                    vectors.put(hashByVectorId.get(vectorId), vector);
+                }
+            });
+            return vectors;
+        } catch (Exception e) {
+            log.warn("查询可复用向量失败，将重新向量化: docId={}, error={}", doc.getId(), e.getMessage());
+            return Map.of();
+        }
+    }
+
+    private void storeStage() throws Exception {
+        while (true) {
+            EmbeddedBatch batch = take(vectorQueue);
+            if (batch == END_OF_VECTORS) {
+                break;
+            }
+            writeVectors(batch.chunks(), batch.vectors());
+            synchronized (progressLock) {
+                storedCount += batch.chunks().size();
+            }
+            reportProgress();
+        }
+    }
+
+    /**
+     * 写入向量及检索载荷，并回写向量ID
+     *
+     * @return 是否写入成功并回写了向量ID
+     */
+    private boolean writeVectors(List<KnowledgeChunk> chunks, List<float[]> vectors) {
+        String category = doc.getCategory() != null ? doc.getCategory() : "default";
+        List<String> vectorIds = milvusService.insertVectors(
+                vectors,
+                chunks.stream().map(KnowledgeChunk::getId).toList(),
+                Collections.nCopies(chunks.size(), doc.getId()),
+                chunks.stream().map(KnowledgeChunk::getContent).toList(),
+                Collections.nCopies(chunks.size(), category),
+                chunks.stream().map(KnowledgeChunk::getPageNumber).toList(),
+                Collections.nCopies(chunks.size(), doc.getTitle()));
+        // 回写向量ID；写入失败的切块没有向量ID，下次重建索引时会重新向量化
+        if (vectorIds.size() == chunks.size()) {
+            for (int i = 0; i < chunks.size(); i++) {
+                chunks.get(i).setVectorId(vectorIds.get(i));
+            }
+            knowledgeChunkMapper.updateVectorIds(chunks);
+            return true;
+        }
+        log.warn("向量写入数量不一致，未回写向量ID: docId={}, expected={}, actual={}",
+                doc.getId(), chunks.size(), vectorIds.size());
+        return false;
+    }
+
+    // ========== 进度 ==========
+
+    /**
+     * 按最上游的未完成阶段上报进度：上游完成前下游的总数未知，只有上游完成后下游进度才有意义。
+     * 因此总体进度单调递增，且只在阶段或百分比变化时发送。
+     */
+    private void reportProgress() {
+        String stage;
+        int progress;
+        int chunked;
+        int embedded;
+        int stored;
+        synchronized (progressLock) {
+            chunked = chunkedCount;
+            embedded = embeddedCount;
+            stored = storedCount;
+            if (!parsingDone) {
+                stage = "PARSING";
+                progress = Math.min(99, parseProgress);
+            } else if (!chunkingDone) {
+                stage = "CHUNKING";
+                progress = 99;
+            } else if (embedded < chunked) {
+                stage = "EMBEDDING";
+                progress = percent(embedded, chunked);
+            } else {
+                stage = "STORING";
+                progress = percent(stored, chunked);
+            }
+            if (stage.equals(lastReportedStage) && progress == lastReportedProgress) {
+                return;
+            }
+            lastReportedStage = stage;
+            lastReportedProgress = progress;
+        }
+
+        Long docId = doc.getId();
+        switch (stage) {
+            case "PARSING" -> progressService.sendParsingProgress(docId, progress,
+                    String.format("已解析 %d%%，已切块 %d，已向量化 %d，已存储 %d", progress, chunked, embedded, stored));
+            case "CHUNKING" -> progressService.sendChunkingProgress(docId, progress, chunked);
+            case "EMBEDDING" -> progressService.sendEmbeddingProgress(docId, progress, embedded, chunked);
+            default -> progressService.sendStoringProgress(docId, progress,
+                    String.format("已存储 %d/%d 个向量", stored, chunked));
+        }
+    }
+
+    private static int percent(int done, int total) {
+        return total == 0 ? 100 : (int) (done * 100L / total);
+    }
+
+    // ========== 队列与线程 ==========
+
+    private Thread startStage(String name, Stage stage) {
+        Thread thread = new Thread(() -> runStage(stage), "ingest-" + name + "-" + doc.getId());
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    private void runStage(Stage stage) {
+        try {
+            stage.run();
+        } catch (PipelineAbortedException e) {
+            // 其他阶段已失败，直接退出
+        } catch (Throwable e) {
+            if (failure.compareAndSet(null, e)) {
+                log.error("文档入库流水线阶段失败: docId={}, thread={}, error={}",
+                        doc.getId(), Thread.currentThread().getName(), e.getMessage());
+            }
+        }
+    }
+
+    private <T> void put(BlockingQueue<T> queue, T item) throws InterruptedException {
+        while (!queue.offer(item, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+            checkNotFailed();
+        }
+    }
+
+    private <T> T take(BlockingQueue<T> queue) throws InterruptedException {
+        T item;
+        while ((item = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS)) == null) {
+            checkNotFailed();
+        }
+        return item;
+    }
+
+    private void checkNotFailed() {
+        if (failure.get() != null) {
+            throw new PipelineAbortedException();
+        }
+    }
+
+    @FunctionalInterface
+    private interface Stage {
+        void run() throws Exception;
+    }
+
+    private record EmbeddedBatch(List<KnowledgeChunk> chunks, List<float[]> vectors) {}
+
+    /**
+     * 入库结果
+     *
+     * @param chunkCount    文档当前的切块总数
+     * @param keptCount     内容未变、保留原有向量的切块数
+     * @param reusedCount   复用其他文档中相同内容向量的切块数
+     * @param embeddedCount 调用向量化服务的切块数
+     * @param removedCount  删除的旧切块数
+     */
+    public record Result(int chunkCount, int keptCount, int reusedCount, int embeddedCount, int removedCount) {}
+
+    /**
+     * 其他阶段已失败时用于中止当前阶段
+     */
+    private static class PipelineAbortedException extends RuntimeException {
+        PipelineAbortedException() {
+            super(null, null, false, false);
+        }
+    }
+}
@@ -1,6 +1,5 @@
 package com.echocampus.bot.service.impl;
 
-import com.echocampus.bot.entity.KnowledgeChunk;
 import com.echocampus.bot.entity.KnowledgeDoc;
 import com.echocampus.bot.mapper.KnowledgeChunkMapper;
 import com.echocampus.bot.mapper.KnowledgeDocMapper;
@@ -8,15 +7,14 @@ import com.echocampus.bot.parser.DocumentParser;
 import com.echocampus.bot.parser.DocumentParserFactory;
 import com.echocampus.bot.parser.exception.DocumentParseException;
 import com.echocampus.bot.service.*;
+import com.echocampus.bot.service.retrieval.DocumentChunkIndex;
+import com.echocampus.bot.service.retrieval.KnowledgeDocCache;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.stream.Collectors;
-
 /**
  * 文档异步处理服务实现类
  * 将文档处理逻辑独立出来，确保 @Async 注解能正常工作
@@ -33,6 +31,15 @@ public class DocumentProcessServiceImpl implements DocumentProcessService {
     private final EmbeddingService embeddingService;
     private final MilvusService milvusService;
     private final DocumentProgressService documentProgressService;
+    private final AnswerCacheService answerCacheService;
+    private final KnowledgeDocCache knowledgeDocCache;
+    private final DocumentChunkIndex documentChunkIndex;
+
+    @Value("${document.pipeline.batch-size:64}")
+    private int pipelineBatchSize;
+
+    @Value("${document.pipeline.queue-capacity:2}")
+    private int pipelineQueueCapacity;
 
     @Override
     @Async("documentProcessExecutor")
@@ -50,98 +57,35 @@ public class DocumentProcessServiceImpl implements DocumentProcessService {
             // 更新状态为处理中
             knowledgeDocMapper.updateProcessStatus(docId, "PROCESSING", null);
             
-            // 1. 解析文档内容
-            log.info("步骤1: 解析文档 - {}", doc.getFilePath());
+            // 解析 → 切块写库 → 向量化 → 写入Milvus 流水线处理，各阶段通过有界队列衔接
+            log.info("开始流水线处理: file={}, batchSize={}, queueCapacity={}",
+                    doc.getFilePath(), pipelineBatchSize, pipelineQueueCapacity);
             documentProgressService.sendParsingProgress(docId, 0, "开始解析文档...");
             
             DocumentParser parser = parserFactory.getParser(doc.getFileType());
-            documentProgressService.sendParsingProgress(docId, 30, "已选择解析器: " + doc.getFileType());
-            
-            String content = parser.parse(doc.getFilePath());
-            
-            if (content == null || content.trim().isEmpty()) {
-                throw new DocumentParseException("文档内容为空");
-            }
-            log.info("文档解析完成: 内容长度={}", content.length());
-            documentProgressService.sendParsingProgress(docId, 100, "解析完成，内容长度: " + content.length() + " 字符");
-            
-            // 2. 文本切块
-            log.info("步骤2: 文本切块");
-            documentProgressService.sendChunkingProgress(docId, 0, 0);
-            
-            List<KnowledgeChunk> chunks = textChunkService.chunkText(content, docId, doc.getFileType());
-            
-            if (chunks.isEmpty()) {
-                throw new RuntimeException("文本切块结果为空");
-            }
-            log.info("文本切块完成: 切块数量={}", chunks.size());
-            documentProgressService.sendChunkingProgress(docId, 50, chunks.size());
-            
-            // 保存切块到数据库
-            for (int i = 0; i < chunks.size(); i++) {
-                knowledgeChunkMapper.insert(chunks.get(i));
-                // 每保存10个切块更新一次进度
-                if ((i + 1) % 10 == 0 || i == chunks.size() - 1) {
-                    int progress = 50 + (int) ((i + 1) * 50.0 / chunks.size());
-                    documentProgressService.sendChunkingProgress(docId, progress, i + 1);
-                }
-            }
-            documentProgressService.sendChunkingProgress(docId, 100, chunks.size());
-            
-            // 3. 向量化
-            log.info("步骤3: 向量化处理");
-            documentProgressService.sendEmbeddingProgress(docId, 0, 0, chunks.size());
-            
-            List<String> texts = chunks.stream()
-                    .map(KnowledgeChunk::getContent)
-                    .collect(Collectors.toList());
-            
-            // 分批向量化以便追踪进度
-            List<float[]> vectors = new ArrayList<>();
-            int batchSize = 10;
-            for (int i = 0; i < texts.size(); i += batchSize) {
-                int end = Math.min(i + batchSize, texts.size());
-                List<String> batch = texts.subList(i, end);
-                List<float[]> batchVectors = embeddingService.embedBatch(batch);
-                vectors.addAll(batchVectors);
-                
-                int progress = (int) (end * 100.0 / texts.size());
-                documentProgressService.sendEmbeddingProgress(docId, progress, end, texts.size());
-            }
-            log.info("向量化完成: 向量数量={}", vectors.size());
-            
-            // 4. 存入Milvus
-            log.info("步骤4: 存入Milvus向量数据库");
-            documentProgressService.sendStoringProgress(docId, 0, "准备存储向量数据...");
-            
-            List<Long> chunkIds = chunks.stream()
-                    .map(KnowledgeChunk::getId)
-                    .collect(Collectors.toList());
-            List<Long> docIds = chunks.stream()
-                    .map(c -> docId)
-                    .collect(Collectors.toList());
-            List<String> categories = chunks.stream()
-                    .map(c -> doc.getCategory() != null ? doc.getCategory() : "default")
-                    .collect(Collectors.toList());
-            
-            documentProgressService.sendStoringProgress(docId, 30, "正在连接向量数据库...");
-            
-            milvusService.insertVectors(vectors, chunkIds, docIds, texts, categories);
-            
-            documentProgressService.sendStoringProgress(docId, 80, "向量数据已存储");
+            // 重新处理时按内容哈希增量更新，只向量化新增或变化的切块
+            DocumentIngestionPipeline.Result result = new DocumentIngestionPipeline(doc, parser, textChunkService,
+                    knowledgeChunkMapper, embeddingService, milvusService, documentProgressService,
+                    pipelineBatchSize, pipelineQueueCapacity).run();
+            int chunkCount = result.chunkCount();
             
             // 更新文档状态
-            doc.setVectorCount(chunks.size());
+            doc.setVectorCount(chunkCount);
             knowledgeDocMapper.updateById(doc);
             knowledgeDocMapper.updateProcessStatus(docId, "COMPLETED", 
-                    String.format("处理成功: %d个切块", chunks.size()));
+                    String.format("处理成功: %d个切块（保留%d，复用%d，新向量化%d，删除%d）", chunkCount,
+                            result.keptCount(), result.reusedCount(), result.embeddedCount(), result.removedCount()));
             
             documentProgressService.sendStoringProgress(docId, 100, "数据库记录已更新");
             
-            log.info("文档处理完成: docId={}, 切块数={}", docId, chunks.size());
+            // 知识库内容已变化，失效引用该文档或未找到资料的缓存回答
+            answerCacheService.invalidateDocument(docId);
+            knowledgeDocCache.invalidate(docId);
+            
+            log.info("文档处理完成: docId={}, 切块数={}", docId, chunkCount);
             
             // 发送完成状态
-            documentProgressService.sendCompleted(docId, chunks.size());
+            documentProgressService.sendCompleted(docId, chunkCount);
             
         } catch (DocumentParseException e) {
             log.error("文档解析失败: docId={}", docId, e);
@@ -151,6 +95,9 @@ public class DocumentProcessServiceImpl implements DocumentProcessService {
             log.error("文档处理失败: docId={}", docId, e);
             knowledgeDocMapper.updateProcessStatus(docId, "FAILED", e.getMessage());
             documentProgressService.sendFailed(docId, "PROCESSING", e.getMessage());
+        } finally {
+            // 成功或失败都可能已写入切块，按数据库重新加载该文档的切块序号
+            documentChunkIndex.refresh(docId);
         }
     }
 }
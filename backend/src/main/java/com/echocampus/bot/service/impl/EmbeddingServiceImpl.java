@@ -2,91 +2,157 @@ package com.echocampus.bot.service.impl;
 
 import com.echocampus.bot.config.AiServiceConfig;
 import com.echocampus.bot.service.EmbeddingService;
+import com.echocampus.bot.service.transport.AiHttpTransport;
+import com.echocampus.bot.utils.TokenBucket;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import lombok.RequiredArgsConstructor;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import okhttp3.*;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
 import java.util.*;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * 阿里云百炼平台 Embedding服务实现
  * 使用 text-embedding-v3 模型
+ * <p>
+ * 批量向量化时最多 maxInFlightBatches 个批次并发请求，请求速率由令牌桶限制，结果按输入顺序返回。
+ * 检索问题（{@link #embed}、{@link #embedQueries}）使用独立的令牌桶，文档入库的批量请求不会推迟聊天检索。
+ * <p>
+ * 当前模型启动时取配置，更换模型时由重新向量化重建在新集合切换上线时 {@link #activate} 切换；
+ * 重建期间新集合的向量通过 {@link #forModel} 用目标模型生成，不影响检索和写入当前集合。
  */
 @Slf4j
 @Service
-@RequiredArgsConstructor
 public class EmbeddingServiceImpl implements EmbeddingService {
 
     private final AiServiceConfig aiConfig;
     private final ObjectMapper objectMapper = new ObjectMapper();
-    
-    private final OkHttpClient httpClient = new OkHttpClient.Builder()
-            .connectTimeout(30, TimeUnit.SECONDS)
-            .readTimeout(60, TimeUnit.SECONDS)
-            .writeTimeout(30, TimeUnit.SECONDS)
-            .build();
+    private final TokenBucket batchRateLimiter;
+    private final TokenBucket queryRateLimiter;
+    private final ExecutorService batchExecutor;
+    private final AiHttpTransport aiHttpTransport;
+    private volatile EmbeddingModel activeModel;
+
+    public EmbeddingServiceImpl(AiServiceConfig aiConfig, AiHttpTransport aiHttpTransport) {
+        this.aiConfig = aiConfig;
+        this.aiHttpTransport = aiHttpTransport;
+        AiServiceConfig.EmbeddingConfig config = aiConfig.getEmbedding();
+        this.activeModel = new EmbeddingModel(config.getModel(), config.getDimension());
+        this.batchRateLimiter = new TokenBucket(config.getRequestsPerSecond(), config.getRequestBurst());
+        this.queryRateLimiter = new TokenBucket(config.getQueryRequestsPerSecond(), config.getQueryRequestBurst());
+        int maxInFlight = Math.max(1, config.getMaxInFlightBatches());
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.batchExecutor = Executors.newFixedThreadPool(maxInFlight, r -> {
+            Thread thread = new Thread(r, "embedding-batch-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        log.info("Embedding服务初始化: batchSize={}, maxInFlightBatches={}, requestsPerSecond={}, queryRequestsPerSecond={}",
+                config.getBatchSize(), maxInFlight, config.getRequestsPerSecond(), config.getQueryRequestsPerSecond());
+    }
+
+    @PreDestroy
+    public void destroy() {
+        batchExecutor.shutdownNow();
+    }
 
     @Override
     public float[] embed(String text) {
+        return embed(text, activeModel);
+    }
+
+    private float[] embed(String text, EmbeddingModel model) {
         if (text == null || text.trim().isEmpty()) {
             log.warn("输入文本为空，返回零向量");
-            return new float[getDimension()];
+            return new float[model.dimension()];
         }
 
-        List<float[]> results = embedBatch(Collections.singletonList(text));
-        return results.isEmpty() ? new float[getDimension()] : results.get(0);
+        List<float[]> results = doEmbedRequest(Collections.singletonList(text), queryRateLimiter, model);
+        return results.isEmpty() ? new float[model.dimension()] : results.get(0);
+    }
+
+    @Override
+    public List<float[]> embedQueries(List<String> queries) {
+        if (queries == null || queries.isEmpty()) {
+            return new ArrayList<>();
+        }
+        // 同一轮的问题很少超过一个批次，在当前线程依次请求
+        EmbeddingModel model = activeModel;
+        int batchSize = aiConfig.getEmbedding().getBatchSize();
+        List<float[]> embeddings = new ArrayList<>(queries.size());
+        for (int i = 0; i < queries.size(); i += batchSize) {
+            embeddings.addAll(doEmbedRequest(queries.subList(i, Math.min(i + batchSize, queries.size())),
+                    queryRateLimiter, model));
+        }
+        return embeddings;
     }
 
     @Override
     public List<float[]> embedBatch(List<String> texts) {
-        List<float[]> allEmbeddings = new ArrayList<>();
-        
+        return embedBatch(texts, activeModel);
+    }
+
+    private List<float[]> embedBatch(List<String> texts, EmbeddingModel model) {
         if (texts == null || texts.isEmpty()) {
-            return allEmbeddings;
+            return new ArrayList<>();
         }
 
-        AiServiceConfig.EmbeddingConfig config = aiConfig.getEmbedding();
-        int batchSize = config.getBatchSize();
+        int batchSize = aiConfig.getEmbedding().getBatchSize();
+        
+        // 只有一个批次时直接在当前线程请求
+        if (texts.size() <= batchSize) {
+            return doEmbedRequest(texts, batchRateLimiter, model);
+        }
         
-        // 分批处理
+        // 分批并发请求，并发数受线程池大小限制，请求速率受令牌桶限制
+        List<Future<List<float[]>>> futures = new ArrayList<>();
         for (int i = 0; i < texts.size(); i += batchSize) {
-            int end = Math.min(i + batchSize, texts.size());
-            List<String> batch = texts.subList(i, end);
-            
-            List<float[]> batchResult = doEmbedRequest(batch);
-            allEmbeddings.addAll(batchResult);
-            
-            // 批次间添加小延迟，避免频繁请求
-            if (end < texts.size()) {
-                try {
-                    Thread.sleep(100);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                }
+            List<String> batch = texts.subList(i, Math.min(i + batchSize, texts.size()));
+            futures.add(batchExecutor.submit(() -> doEmbedRequest(batch, batchRateLimiter, model)));
+        }
+        
+        // 按提交顺序收集结果，保证与输入顺序一致
+        List<float[]> allEmbeddings = new ArrayList<>(texts.size());
+        try {
+            for (Future<List<float[]>> future : futures) {
+                allEmbeddings.addAll(future.get());
             }
+        } catch (InterruptedException e) {
+            futures.forEach(f -> f.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("批量向量化被中断", e);
+        } catch (ExecutionException e) {
+            futures.forEach(f -> f.cancel(true));
+            throw new IllegalStateException("批量向量化失败: " + e.getCause().getMessage(), e.getCause());
         }
         
         return allEmbeddings;
     }
 
     /**
-     * 执行Embedding API请求
+     * 执行Embedding API请求（失败时按指数退避重试）
+     *
+     * @param rateLimiter 本次请求所属的令牌桶（检索问题或批量入库）
+     * @param model 生成向量的模型
      */
-    private List<float[]> doEmbedRequest(List<String> texts) {
+    private List<float[]> doEmbedRequest(List<String> texts, TokenBucket rateLimiter, EmbeddingModel model) {
         AiServiceConfig.EmbeddingConfig config = aiConfig.getEmbedding();
         List<float[]> embeddings = new ArrayList<>();
         
         int retries = 0;
         while (retries < config.getMaxRetries()) {
+            long retryAfterMs = 0;
             try {
+                rateLimiter.acquire();
+                
                 // 构建请求体
                 Map<String, Object> requestBody = new HashMap<>();
-                requestBody.put("model", config.getModel());
+                requestBody.put("model", model.name());
                 requestBody.put("input", texts);
                 // 可选：指定维度
                 // requestBody.put("dimensions", config.getDimension());
@@ -100,60 +166,110 @@ public class EmbeddingServiceImpl implements EmbeddingService {
                         .post(RequestBody.create(jsonBody, MediaType.parse("application/json")))
                         .build();
 
-                try (Response response = httpClient.newCall(request).execute()) {
+                try (Response response = aiHttpTransport.execute(request, null, null)) {
                     if (!response.isSuccessful()) {
                         String errorBody = response.body() != null ? response.body().string() : "无响应体";
                         log.error("Embedding API请求失败: code={}, body={}", response.code(), errorBody);
+                        retryAfterMs = parseRetryAfter(response.header("Retry-After"));
                         retries++;
-                        continue;
-                    }
-
-                    String responseBody = response.body().string();
-                    JsonNode root = objectMapper.readTree(responseBody);
-                    JsonNode dataArray = root.get("data");
-                    
-                    if (dataArray != null && dataArray.isArray()) {
-                        for (JsonNode item : dataArray) {
-                            JsonNode embeddingNode = item.get("embedding");
-                            if (embeddingNode != null && embeddingNode.isArray()) {
-                                float[] embedding = new float[embeddingNode.size()];
-                                for (int j = 0; j < embeddingNode.size(); j++) {
-                                    embedding[j] = (float) embeddingNode.get(j).asDouble();
+                    } else {
+                        String responseBody = response.body().string();
+                        JsonNode root = objectMapper.readTree(responseBody);
+                        JsonNode dataArray = root.get("data");
+                        
+                        if (dataArray != null && dataArray.isArray()) {
+                            for (JsonNode item : dataArray) {
+                                JsonNode embeddingNode = item.get("embedding");
+                                if (embeddingNode != null && embeddingNode.isArray()) {
+                                    float[] embedding = new float[embeddingNode.size()];
+                                    for (int j = 0; j < embeddingNode.size(); j++) {
+                                        embedding[j] = (float) embeddingNode.get(j).asDouble();
+                                    }
+                                    embeddings.add(embedding);
                                 }
-                                embeddings.add(embedding);
                             }
                         }
+                        
+                        log.debug("Embedding成功: 处理{}条文本, 返回{}个向量", texts.size(), embeddings.size());
+                        return embeddings;
                     }
-                    
-                    log.debug("Embedding成功: 处理{}条文本, 返回{}个向量", texts.size(), embeddings.size());
-                    return embeddings;
                 }
                 
             } catch (IOException e) {
                 log.error("Embedding API请求异常: {}", e.getMessage());
                 retries++;
-                
-                if (retries < config.getMaxRetries()) {
-                    try {
-                        Thread.sleep(1000 * retries); // 指数退避
-                    } catch (InterruptedException ie) {
-                        Thread.currentThread().interrupt();
-                    }
-                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            
+            if (retries < config.getMaxRetries() && !sleepBeforeRetry(config, retries, retryAfterMs)) {
+                break;
             }
         }
         
         log.error("Embedding API请求失败，已达最大重试次数: {}", config.getMaxRetries());
         // 返回空向量列表（或零向量）
         for (int i = 0; i < texts.size(); i++) {
-            embeddings.add(new float[getDimension()]);
+            embeddings.add(new float[model.dimension()]);
         }
         return embeddings;
     }
 
+    /**
+     * 指数退避等待：base * 2^(n-1)，上限 retryMaxBackoffMs，叠加随机抖动避免并发批次同时重试
+     *
+     * @return 是否正常等待结束（被中断时返回 false）
+     */
+    private boolean sleepBeforeRetry(AiServiceConfig.EmbeddingConfig config, int retries, long retryAfterMs) {
+        long backoff = Math.min(config.getRetryMaxBackoffMs(), config.getRetryBackoffMs() << Math.min(retries - 1, 20));
+        long jittered = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+        try {
+            Thread.sleep(Math.max(jittered, Math.min(retryAfterMs, config.getRetryMaxBackoffMs())));
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * 解析 Retry-After 响应头（秒），无法解析时返回0
+     */
+    private long parseRetryAfter(String retryAfter) {
+        if (retryAfter == null) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(retryAfter.trim()) * 1000L;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
     @Override
     public int getDimension() {
-        return aiConfig.getEmbedding().getDimension();
+        return activeModel.dimension();
+    }
+
+    @Override
+    public EmbeddingModel getModel() {
+        return activeModel;
+    }
+
+    @Override
+    public EmbeddingService forModel(EmbeddingModel model) {
+        return new ModelBoundEmbeddingService(model);
+    }
+
+    @Override
+    public void activate(EmbeddingModel model) {
+        EmbeddingModel previous = activeModel;
+        activeModel = model;
+        if (!model.equals(previous)) {
+            log.info("Embedding模型已切换: {}（{}维） -> {}（{}维）",
+                    previous.name(), previous.dimension(), model.name(), model.dimension());
+        }
     }
 
     @Override
@@ -175,4 +291,41 @@ public class EmbeddingServiceImpl implements EmbeddingService {
             return false;
         }
     }
+
+    /**
+     * 绑定到指定模型的视图，与当前模型共用连接、限流和批量线程池
+     */
+    private class ModelBoundEmbeddingService implements EmbeddingService {
+
+        private final EmbeddingModel model;
+
+        ModelBoundEmbeddingService(EmbeddingModel model) {
+            this.model = model;
+        }
+
+        @Override
+        public float[] embed(String text) {
+            return EmbeddingServiceImpl.this.embed(text, model);
+        }
+
+        @Override
+        public List<float[]> embedBatch(List<String> texts) {
+            return EmbeddingServiceImpl.this.embedBatch(texts, model);
+        }
+
+        @Override
+        public int getDimension() {
+            return model.dimension();
+        }
+
+        @Override
+        public boolean isAvailable() {
+            return EmbeddingServiceImpl.this.isAvailable();
+        }
+
+        @Override
+        public EmbeddingModel getModel() {
+            return model;
+        }
+    }
 }
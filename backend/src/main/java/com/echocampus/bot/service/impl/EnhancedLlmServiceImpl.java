@@ -3,6 +3,9 @@ package com.echocampus.bot.service.impl;
 import com.echocampus.bot.config.AiServiceConfig;
 import com.echocampus.bot.entity.Message;
 import com.echocampus.bot.service.EnhancedLlmService;
+import com.echocampus.bot.service.stream.ChatCompletionStreamParser;
+import com.echocampus.bot.service.stream.StreamCancellation;
+import com.echocampus.bot.service.transport.AiHttpTransport;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import dev.langchain4j.agent.tool.ToolSpecification;
@@ -11,12 +14,12 @@ import lombok.extern.slf4j.Slf4j;
 import okhttp3.*;
 import org.springframework.stereotype.Service;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.*;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import java.util.function.Consumer;
 
 /**
@@ -28,28 +31,12 @@ import java.util.function.Consumer;
 public class EnhancedLlmServiceImpl implements EnhancedLlmService {
 
     private final AiServiceConfig aiConfig;
+    private final AiHttpTransport aiHttpTransport;
+    private final Executor chatExecutor;
     private final ObjectMapper objectMapper = new ObjectMapper();
 
-    private volatile OkHttpClient httpClient;
-
-    /**
-     * 获取HTTP客户端（延迟初始化，线程安全）
-     */
-    private OkHttpClient getHttpClient() {
-        if (httpClient == null) {
-            synchronized (this) {
-                if (httpClient == null) {
-                    int timeout = aiConfig.getLlm().getTimeout();
-                    httpClient = new OkHttpClient.Builder()
-                            .connectTimeout(30, TimeUnit.SECONDS)
-                            .readTimeout(timeout, TimeUnit.SECONDS)
-                            .writeTimeout(30, TimeUnit.SECONDS)
-                            .build();
-                }
-            }
-        }
-        return httpClient;
-    }
+    /** 最大工具调用迭代次数 */
+    private static final int MAX_TOOL_ITERATIONS = 5;
 
     @Override
     public String chatWithTools(String systemPrompt, String userPrompt, 
@@ -58,14 +45,13 @@ public class EnhancedLlmServiceImpl implements EnhancedLlmService {
                                ToolExecutor toolExecutor) {
         
         AiServiceConfig.LlmConfig config = aiConfig.getLlm();
-        int maxIterations = 5; // 最大工具调用迭代次数
         
         try {
             // 构建消息列表
             List<Map<String, Object>> messages = buildMessages(systemPrompt, userPrompt, historyMessages);
             
             // 迭代处理工具调用
-            for (int iteration = 0; iteration < maxIterations; iteration++) {
+            for (int iteration = 0; iteration < MAX_TOOL_ITERATIONS; iteration++) {
                 // 构建请求
                 Map<String, Object> requestBody = buildRequestBody(config, messages, tools, false);
                 String jsonBody = objectMapper.writeValueAsString(requestBody);
@@ -80,7 +66,7 @@ public class EnhancedLlmServiceImpl implements EnhancedLlmService {
                         .post(RequestBody.create(jsonBody, MediaType.parse("application/json")))
                         .build();
 
-                try (Response response = getHttpClient().newCall(request).execute()) {
+                try (Response response = aiHttpTransport.execute(request, Duration.ofSeconds(config.getTimeout()), null)) {
                     if (!response.isSuccessful()) {
                         String errorBody = response.body() != null ? response.body().string() : "无响应体";
                         log.error("LLM API请求失败: code={}, body={}", response.code(), errorBody);
@@ -105,27 +91,14 @@ public class EnhancedLlmServiceImpl implements EnhancedLlmService {
                             if (toolCalls != null && toolCalls.isArray() && toolCalls.size() > 0) {
                                 log.info("AI请求调用 {} 个工具", toolCalls.size());
                                 
-                                // 执行所有工具调用
+                                // 同一轮的工具调用一次性交给执行器（可合并检索）
+                                List<ToolCall> calls = new ArrayList<>();
                                 for (JsonNode toolCall : toolCalls) {
-                                    String toolCallId = toolCall.get("id").asText();
                                     JsonNode function = toolCall.get("function");
-                                    String toolName = function.get("name").asText();
-                                    String arguments = function.get("arguments").asText();
-                                    
-                                    log.info("执行工具: name={}, args={}", toolName, arguments);
-                                    
-                                    // 执行工具
-                                    String toolResult = toolExecutor.execute(toolName, arguments);
-                                    
-                                    // 添加工具结果到消息列表
-                                    Map<String, Object> toolMessage = new HashMap<>();
-                                    toolMessage.put("role", "tool");
-                                    toolMessage.put("tool_call_id", toolCallId);
-                                    toolMessage.put("content", toolResult);
-                                    messages.add(toolMessage);
-                                    
-                                    log.info("工具执行完成: result length={}", toolResult.length());
+                                    calls.add(new ToolCall(toolCall.get("id").asText(),
+                                            function.get("name").asText(), function.get("arguments").asText()));
                                 }
+                                executeToolCalls(calls, toolExecutor, messages, "");
                                 
                                 // 继续下一轮迭代，让AI基于工具结果生成回答
                                 continue;
@@ -143,7 +116,7 @@ public class EnhancedLlmServiceImpl implements EnhancedLlmService {
                 }
             }
             
-            log.warn("达到最大工具调用迭代次数: {}", maxIterations);
+            log.warn("达到最大工具调用迭代次数: {}", MAX_TOOL_ITERATIONS);
             return "抱歉，处理您的问题时遇到了复杂情况，请稍后再试。";
             
         } catch (IOException e) {
@@ -160,10 +133,10 @@ public class EnhancedLlmServiceImpl implements EnhancedLlmService {
                                      List<Message> historyMessages,
                                      List<ToolSpecification> tools,
                                      ToolExecutor toolExecutor,
-                                     Consumer<String> contentConsumer) {
+                                     Consumer<String> contentConsumer,
+                                     StreamCancellation cancellation) {
         
         AiServiceConfig.LlmConfig config = aiConfig.getLlm();
-        int maxIterations = 5;
         StringBuilder fullResponse = new StringBuilder();
         
         try {
@@ -171,22 +144,15 @@ public class EnhancedLlmServiceImpl implements EnhancedLlmService {
             List<Map<String, Object>> messages = buildMessages(systemPrompt, userPrompt, historyMessages);
             
             // 迭代处理工具调用
-            for (int iteration = 0; iteration < maxIterations; iteration++) {
-                // 构建请求
-                Map<String, Object> requestBody = buildRequestBody(config, messages, tools, true);
-                String jsonBody = objectMapper.writeValueAsString(requestBody);
-                
-                log.debug("LLM流式请求 (iteration {}): messages={}, tools={}", 
-                         iteration, messages.size(), tools != null ? tools.size() : 0);
-                
-                Request request = new Request.Builder()
-                        .url(config.getApiUrl())
-                        .addHeader("Authorization", "Bearer " + config.getApiKey())
-                        .addHeader("Content-Type", "application/json")
-                        .post(RequestBody.create(jsonBody, MediaType.parse("application/json")))
-                        .build();
+            for (int iteration = 0; iteration < MAX_TOOL_ITERATIONS; iteration++) {
+                if (cancellation.isCancelled()) {
+                    return cancelled(fullResponse, iteration);
+                }
+                Request request = buildStreamRequest(config, messages, tools, iteration);
+                Call call = aiHttpTransport.newCall(request, Duration.ofSeconds(config.getTimeout()), null);
 
-                try (Response response = getHttpClient().newCall(request).execute()) {
+                StreamCancellation.Registration registration = cancellation.onCancel(call::cancel);
+                try (Response response = call.execute()) {
                     if (!response.isSuccessful()) {
                         String errorBody = response.body() != null ? response.body().string() : "无响应体";
                         log.error("LLM API流式请求失败: code={}, body={}", response.code(), errorBody);
@@ -203,116 +169,16 @@ public class EnhancedLlmServiceImpl implements EnhancedLlmService {
                         return errorMsg;
                     }
 
-                    BufferedReader reader = new BufferedReader(
-                            new InputStreamReader(responseBody.byteStream(), StandardCharsets.UTF_8));
-                    
-                    StringBuilder currentContent = new StringBuilder();
-                    List<Map<String, Object>> currentToolCalls = new ArrayList<>();
-                    String line;
+                    StreamTurn turn = new StreamTurn(fullResponse, contentConsumer);
+                    ChatCompletionStreamParser.parse(responseBody.byteStream(), turn);
                     
-                    while ((line = reader.readLine()) != null) {
-                        if (line.trim().isEmpty() || !line.startsWith("data: ")) {
-                            continue;
-                        }
-                        
-                        String data = line.substring(6); // 移除 "data: " 前缀
-                        
-                        if ("[DONE]".equals(data)) {
-                            break;
-                        }
-                        
-                        try {
-                            JsonNode chunk = objectMapper.readTree(data);
-                            JsonNode choices = chunk.get("choices");
-                            
-                            if (choices != null && choices.isArray() && choices.size() > 0) {
-                                JsonNode delta = choices.get(0).get("delta");
-                                
-                                if (delta != null) {
-                                    // 处理内容
-                                    JsonNode content = delta.get("content");
-                                    if (content != null && !content.isNull()) {
-                                        String contentChunk = content.asText();
-                                        currentContent.append(contentChunk);
-                                        fullResponse.append(contentChunk);
-                                        contentConsumer.accept(contentChunk);
-                                    }
-                                    
-                                    // 处理工具调用
-                                    JsonNode toolCalls = delta.get("tool_calls");
-                                    if (toolCalls != null && toolCalls.isArray()) {
-                                        for (JsonNode toolCall : toolCalls) {
-                                            int index = toolCall.get("index").asInt();
-                                            
-                                            // 确保列表足够大
-                                            while (currentToolCalls.size() <= index) {
-                                                currentToolCalls.add(new HashMap<>());
-                                            }
-                                            
-                                            Map<String, Object> tc = currentToolCalls.get(index);
-                                            
-                                            if (toolCall.has("id")) {
-                                                tc.put("id", toolCall.get("id").asText());
-                                            }
-                                            if (toolCall.has("type")) {
-                                                tc.put("type", toolCall.get("type").asText());
-                                            }
-                                            
-                                            JsonNode function = toolCall.get("function");
-                                            if (function != null) {
-                                                Map<String, Object> func = (Map<String, Object>) tc.computeIfAbsent("function", k -> new HashMap<>());
-                                                
-                                                if (function.has("name")) {
-                                                    func.put("name", function.get("name").asText());
-                                                }
-                                                if (function.has("arguments")) {
-                                                    String args = (String) func.getOrDefault("arguments", "");
-                                                    args += function.get("arguments").asText();
-                                                    func.put("arguments", args);
-                                                }
-                                            }
-                                        }
-                                    }
-                                }
-                            }
-                        } catch (Exception e) {
-                            log.warn("解析流式响应块失败: {}", e.getMessage());
-                        }
+                    if (cancellation.isCancelled()) {
+                        return cancelled(fullResponse, iteration);
                     }
                     
                     // 检查是否有工具调用
-                    if (!currentToolCalls.isEmpty()) {
-                        log.info("AI请求调用 {} 个工具 (流式)", currentToolCalls.size());
-                        
-                        // 构建助手消息
-                        Map<String, Object> assistantMessage = new HashMap<>();
-                        assistantMessage.put("role", "assistant");
-                        assistantMessage.put("content", currentContent.toString());
-                        assistantMessage.put("tool_calls", currentToolCalls);
-                        messages.add(assistantMessage);
-                        
-                        // 执行所有工具调用
-                        for (Map<String, Object> toolCall : currentToolCalls) {
-                            String toolCallId = (String) toolCall.get("id");
-                            Map<String, Object> function = (Map<String, Object>) toolCall.get("function");
-                            String toolName = (String) function.get("name");
-                            String arguments = (String) function.get("arguments");
-                            
-                            log.info("执行工具 (流式): name={}, args={}", toolName, arguments);
-                            
-                            // 执行工具
-                            String toolResult = toolExecutor.execute(toolName, arguments);
-                            
-                            // 添加工具结果到消息列表
-                            Map<String, Object> toolMessage = new HashMap<>();
-                            toolMessage.put("role", "tool");
-                            toolMessage.put("tool_call_id", toolCallId);
-                            toolMessage.put("content", toolResult);
-                            messages.add(toolMessage);
-                            
-                            log.info("工具执行完成 (流式): result length={}", toolResult.length());
-                        }
-                        
+                    if (!turn.toolCalls.isEmpty()) {
+                        executeToolRound(turn, toolExecutor, messages);
                         // 继续下一轮迭代
                         continue;
                     }
@@ -320,17 +186,17 @@ public class EnhancedLlmServiceImpl implements EnhancedLlmService {
                     // 没有工具调用，返回最终回答
                     log.debug("LLM流式响应成功 (iteration {}): length={}", iteration, fullResponse.length());
                     return fullResponse.toString();
+                } finally {
+                    registration.close();
                 }
             }
             
-            log.warn("达到最大工具调用迭代次数 (流式): {}", maxIterations);
-            String errorMsg = "抱歉，处理您的问题时遇到了复杂情况，请稍后再试。";
-            if (fullResponse.length() == 0) {
-                contentConsumer.accept(errorMsg);
-            }
-            return fullResponse.length() > 0 ? fullResponse.toString() : errorMsg;
+            return maxIterationsReached(fullResponse, contentConsumer);
             
         } catch (IOException e) {
+            if (cancellation.isCancelled()) {
+                return cancelled(fullResponse, -1);
+            }
             log.error("LLM流式服务异常: {}", e.getMessage(), e);
             String errorMsg = "抱歉，AI服务出现异常：" + e.getMessage();
             contentConsumer.accept(errorMsg);
@@ -343,6 +209,220 @@ public class EnhancedLlmServiceImpl implements EnhancedLlmService {
         }
     }
 
+    @Override
+    public CompletableFuture<String> chatWithToolsStreamAsync(String systemPrompt, String userPrompt,
+                                                              List<Message> historyMessages,
+                                                              List<ToolSpecification> tools,
+                                                              ToolExecutor toolExecutor,
+                                                              Consumer<String> contentConsumer,
+                                                              StreamCancellation cancellation) {
+        StringBuilder fullResponse = new StringBuilder();
+        List<Map<String, Object>> messages = buildMessages(systemPrompt, userPrompt, historyMessages);
+        return streamIteration(messages, tools, toolExecutor, contentConsumer, cancellation, fullResponse, 0)
+                .exceptionally(e -> {
+                    if (cancellation.isCancelled()) {
+                        return cancelled(fullResponse, -1);
+                    }
+                    Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                    String errorMsg;
+                    if (cause instanceof AiHttpTransport.HttpStatusException status) {
+                        log.error("LLM API流式请求失败: code={}, body={}", status.getStatusCode(), status.getBody());
+                        errorMsg = "抱歉，AI服务暂时不可用，请稍后再试。";
+                    } else if (cause instanceof IOException) {
+                        log.error("LLM流式服务异常: {}", cause.getMessage(), cause);
+                        errorMsg = "抱歉，AI服务出现异常：" + cause.getMessage();
+                    } else {
+                        log.error("处理LLM流式请求时发生未知错误: {}", cause.getMessage(), cause);
+                        errorMsg = "抱歉，处理请求时发生错误，请稍后再试。";
+                    }
+                    contentConsumer.accept(errorMsg);
+                    return errorMsg;
+                });
+    }
+
+    /**
+     * 非阻塞流式的一轮：响应读完后若有工具调用，在聊天线程池中执行工具并发起下一轮
+     */
+    private CompletableFuture<String> streamIteration(List<Map<String, Object>> messages,
+                                                      List<ToolSpecification> tools,
+                                                      ToolExecutor toolExecutor,
+                                                      Consumer<String> contentConsumer,
+                                                      StreamCancellation cancellation,
+                                                      StringBuilder fullResponse,
+                                                      int iteration) {
+        if (cancellation.isCancelled()) {
+            return CompletableFuture.completedFuture(cancelled(fullResponse, iteration));
+        }
+        if (iteration >= MAX_TOOL_ITERATIONS) {
+            return CompletableFuture.completedFuture(maxIterationsReached(fullResponse, contentConsumer));
+        }
+        AiServiceConfig.LlmConfig config = aiConfig.getLlm();
+        Request request;
+        try {
+            request = buildStreamRequest(config, messages, tools, iteration);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        StreamTurn turn = new StreamTurn(fullResponse, contentConsumer);
+        ChatCompletionStreamParser parser = new ChatCompletionStreamParser(turn);
+        CompletableFuture<Void> upstream = aiHttpTransport.stream(request, Duration.ofSeconds(config.getTimeout()), parser::feed);
+        // 取消时关闭上游连接，不再读取和计费
+        StreamCancellation.Registration registration = cancellation.onCancel(() -> upstream.cancel(true));
+        return upstream.whenComplete((ignored, e) -> registration.close())
+                .thenComposeAsync(ignored -> {
+                    parser.finish();
+                    if (turn.toolCalls.isEmpty()) {
+                        log.debug("LLM流式响应成功 (iteration {}): length={}", iteration, fullResponse.length());
+                        return CompletableFuture.completedFuture(fullResponse.toString());
+                    }
+                    if (cancellation.isCancelled()) {
+                        return CompletableFuture.completedFuture(cancelled(fullResponse, iteration));
+                    }
+                    executeToolRound(turn, toolExecutor, messages);
+                    return streamIteration(messages, tools, toolExecutor, contentConsumer, cancellation,
+                            fullResponse, iteration + 1);
+                }, chatExecutor);
+    }
+
+    /**
+     * 构建流式请求
+     */
+    private Request buildStreamRequest(AiServiceConfig.LlmConfig config, List<Map<String, Object>> messages,
+                                       List<ToolSpecification> tools, int iteration) throws IOException {
+        Map<String, Object> requestBody = buildRequestBody(config, messages, tools, true);
+        String jsonBody = objectMapper.writeValueAsString(requestBody);
+        
+        log.debug("LLM流式请求 (iteration {}): messages={}, tools={}", 
+                 iteration, messages.size(), tools != null ? tools.size() : 0);
+        
+        return new Request.Builder()
+                .url(config.getApiUrl())
+                .addHeader("Authorization", "Bearer " + config.getApiKey())
+                .addHeader("Content-Type", "application/json")
+                .post(RequestBody.create(jsonBody, MediaType.parse("application/json")))
+                .build();
+    }
+
+    /**
+     * 把本轮的助手消息（含工具调用）加入消息列表，同一轮的工具调用一次性交给执行器（可合并检索）
+     */
+    @SuppressWarnings("unchecked")
+    private void executeToolRound(StreamTurn turn, ToolExecutor toolExecutor, List<Map<String, Object>> messages) {
+        log.info("AI请求调用 {} 个工具 (流式)", turn.toolCalls.size());
+        
+        // 构建助手消息
+        Map<String, Object> assistantMessage = new HashMap<>();
+        assistantMessage.put("role", "assistant");
+        assistantMessage.put("content", turn.content.toString());
+        assistantMessage.put("tool_calls", turn.toolCalls);
+        messages.add(assistantMessage);
+        
+        List<ToolCall> calls = new ArrayList<>();
+        for (Map<String, Object> toolCall : turn.toolCalls) {
+            Map<String, Object> function = (Map<String, Object>) toolCall.get("function");
+            calls.add(new ToolCall((String) toolCall.get("id"),
+                    (String) function.get("name"), (String) function.get("arguments")));
+        }
+        executeToolCalls(calls, toolExecutor, messages, " (流式)");
+    }
+
+    /**
+     * 客户端已断开：不再生成，返回已生成的部分
+     */
+    private static String cancelled(StringBuilder fullResponse, int iteration) {
+        log.info("客户端已断开，LLM流式请求已中止 (iteration {}): 已生成长度={}", iteration, fullResponse.length());
+        return fullResponse.toString();
+    }
+
+    private static String maxIterationsReached(StringBuilder fullResponse, Consumer<String> contentConsumer) {
+        log.warn("达到最大工具调用迭代次数 (流式): {}", MAX_TOOL_ITERATIONS);
+        String errorMsg = "抱歉，处理您的问题时遇到了复杂情况，请稍后再试。";
+        if (fullResponse.length() == 0) {
+            contentConsumer.accept(errorMsg);
+        }
+        return fullResponse.length() > 0 ? fullResponse.toString() : errorMsg;
+    }
+
+    /**
+     * 一轮流式响应的解析结果：内容片段转发并累计，工具调用增量按 index 合并
+     */
+    private static final class StreamTurn implements ChatCompletionStreamParser.Listener {
+
+        private final StringBuilder fullResponse;
+        private final Consumer<String> contentConsumer;
+        private final StringBuilder content = new StringBuilder();
+        private final List<Map<String, Object>> toolCalls = new ArrayList<>();
+
+        StreamTurn(StringBuilder fullResponse, Consumer<String> contentConsumer) {
+            this.fullResponse = fullResponse;
+            this.contentConsumer = contentConsumer;
+        }
+
+        @Override
+        public void onContent(String contentChunk) {
+            content.append(contentChunk);
+            fullResponse.append(contentChunk);
+            contentConsumer.accept(contentChunk);
+        }
+
+        @Override
+        public void onToolCallDelta(int index, String id, String type, String name, String arguments) {
+            mergeToolCallDelta(toolCalls, index, id, type, name, arguments);
+        }
+    }
+
+    /**
+     * 按 index 合并流式返回的工具调用增量：id、type、name 取最新值，arguments 依次拼接
+     */
+    @SuppressWarnings("unchecked")
+    private static void mergeToolCallDelta(List<Map<String, Object>> toolCalls, int index, String id, String type,
+                                           String name, String arguments) {
+        // 确保列表足够大
+        while (toolCalls.size() <= index) {
+            toolCalls.add(new HashMap<>());
+        }
+        Map<String, Object> tc = toolCalls.get(index);
+        if (id != null) {
+            tc.put("id", id);
+        }
+        if (type != null) {
+            tc.put("type", type);
+        }
+        if (name != null || arguments != null) {
+            Map<String, Object> func = (Map<String, Object>) tc.computeIfAbsent("function", k -> new HashMap<>());
+            if (name != null) {
+                func.put("name", name);
+            }
+            if (arguments != null) {
+                func.put("arguments", func.getOrDefault("arguments", "") + arguments);
+            }
+        }
+    }
+
+    /**
+     * 执行同一轮的全部工具调用，并按调用顺序把结果加入消息列表
+     */
+    private void executeToolCalls(List<ToolCall> calls, ToolExecutor toolExecutor,
+                                  List<Map<String, Object>> messages, String logSuffix) {
+        for (ToolCall call : calls) {
+            log.info("执行工具{}: name={}, args={}", logSuffix, call.name(), call.arguments());
+        }
+
+        List<String> results = toolExecutor.executeAll(calls);
+
+        for (int i = 0; i < calls.size(); i++) {
+            String toolResult = results.get(i);
+            Map<String, Object> toolMessage = new HashMap<>();
+            toolMessage.put("role", "tool");
+            toolMessage.put("tool_call_id", calls.get(i).id());
+            toolMessage.put("content", toolResult);
+            messages.add(toolMessage);
+
+            log.info("工具执行完成{}: result length={}", logSuffix, toolResult.length());
+        }
+    }
+
     /**
      * 构建消息列表
      */
@@ -414,10 +494,11 @@ public class EnhancedLlmServiceImpl implements EnhancedLlmService {
                         propDef.put("type", (String) param.get("type"));
                         propDef.put("description", (String) param.get("description"));
                         properties.put(name, propDef);
-                        
-                        // 检查是否必需（简化处理，假设都是必需的）
-                        required.add(name);
                     });
+                    // 只有规范中声明为必需的参数才标记为必需（如检索工具的分类为可选参数）
+                    if (tool.parameters().required() != null) {
+                        required.addAll(tool.parameters().required());
+                    }
                 }
                 
                 parameters.put("properties", properties);
@@ -1,13 +1,10 @@
 package com.echocampus.bot.service.impl;
 
-import com.echocampus.bot.entity.KnowledgeChunk;
-import com.echocampus.bot.entity.KnowledgeDoc;
 import com.echocampus.bot.entity.Message;
-import com.echocampus.bot.mapper.KnowledgeChunkMapper;
-import com.echocampus.bot.mapper.KnowledgeDocMapper;
 import com.echocampus.bot.service.*;
 import com.echocampus.bot.service.RagService.RagResponse;
 import com.echocampus.bot.service.RagService.SourceInfo;
+import com.echocampus.bot.service.stream.StreamCancellation;
 import com.echocampus.bot.service.tool.KnowledgeSearchTool;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import dev.langchain4j.agent.tool.ToolSpecification;
@@ -18,6 +15,7 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
@@ -31,10 +29,6 @@ public class EnhancedRagServiceImpl implements EnhancedRagService {
 
     private final EnhancedLlmService enhancedLlmService;
     private final KnowledgeSearchTool knowledgeSearchTool;
-    private final KnowledgeChunkMapper chunkMapper;
-    private final KnowledgeDocMapper docMapper;
-    private final EmbeddingService embeddingService;
-    private final MilvusService milvusService;
     private final ObjectMapper objectMapper = new ObjectMapper();
 
     @Value("${rag.max-context-length:4000}")
@@ -96,21 +90,17 @@ public class EnhancedRagServiceImpl implements EnhancedRagService {
         // 获取工具规范
         List<ToolSpecification> tools = getToolSpecifications();
         
-        // 创建工具执行器
-        EnhancedLlmService.ToolExecutor toolExecutor = (toolName, arguments) -> {
-            try {
-                if ("searchKnowledge".equals(toolName)) {
-                    Map<String, Object> args = objectMapper.readValue(arguments, Map.class);
-                    String query = (String) args.get("query");
-                    log.info("AI决定检索知识库: query={}", query);
-                    return knowledgeSearchTool.searchKnowledge(query);
-                }
-                return "未知工具: " + toolName;
-            } catch (Exception e) {
-                log.error("工具执行失败: toolName={}, error={}", toolName, e.getMessage(), e);
-                return "工具执行失败: " + e.getMessage();
-            }
-        };
+        // 用于收集知识来源（来自工具调用的同一次检索，按片段去重）
+        Map<Long, SourceInfo> collectedSources = new LinkedHashMap<>();
+        
+        // 创建工具执行器（同一轮的多个检索合并执行）
+        EnhancedLlmService.ToolExecutor toolExecutor = new KnowledgeToolExecutor("", status -> { },
+                result -> {
+                    for (SourceInfo source : result.sources()) {
+                        collectedSources.merge(source.chunkId(), source,
+                                (x, y) -> x.score() >= y.score() ? x : y);
+                    }
+                });
         
         // 调用增强LLM服务
         String answer = enhancedLlmService.chatWithTools(
@@ -121,8 +111,7 @@ public class EnhancedRagServiceImpl implements EnhancedRagService {
                 toolExecutor
         );
         
-        // 提取知识来源（如果有的话）
-        List<SourceInfo> sources = extractSourcesFromAnswer(answer, contextualQuery);
+        List<SourceInfo> sources = new ArrayList<>(collectedSources.values());
         
         long responseTime = System.currentTimeMillis() - startTime;
         log.info("增强RAG问答完成: 耗时={}ms, 来源数={}", responseTime, sources.size());
@@ -135,69 +124,20 @@ public class EnhancedRagServiceImpl implements EnhancedRagService {
                                                Long userId, Long conversationId,
                                                Consumer<String> statusConsumer,
                                                Consumer<List<SourceInfo>> sourcesConsumer,
-                                               Consumer<String> contentConsumer) {
-        log.info("增强RAG流式问答开始: question={}, userId={}, historyCount={}", 
-                question, userId, historyMessages != null ? historyMessages.size() : 0);
-
-        // 1. 状态更新：开始处理
-        statusConsumer.accept("正在智能分析您的问题...");
-        
-        // 构建完整的查询上下文
-        String contextualQuery = buildContextualQuery(question, historyMessages);
-        
-        // 获取工具规范
-        List<ToolSpecification> tools = getToolSpecifications();
-        
-        // 用于收集知识来源
+                                               Consumer<String> contentConsumer,
+                                               StreamCancellation cancellation) {
         List<SourceInfo> allSources = new ArrayList<>();
-        // 用于追踪检索次数
-        final int[] retrievalCount = {0};
-        
-        // 创建工具执行器
-        EnhancedLlmService.ToolExecutor toolExecutor = (toolName, arguments) -> {
-            try {
-                if ("searchKnowledge".equals(toolName)) {
-                    Map<String, Object> args = objectMapper.readValue(arguments, Map.class);
-                    String query = (String) args.get("query");
-                    
-                    retrievalCount[0]++;
-                    log.info("AI决定检索知识库 (流式) 第{}次: query={}", retrievalCount[0], query);
-                    
-                    // 每次工具调用前，发送新消息标记，提示前端保存当前内容并开始新回答
-                    statusConsumer.accept("__NEW_MESSAGE__");
-                    
-                    // 显示AI使用的检索查询文本（统一显示"正在检索"）
-                    statusConsumer.accept("🔍 正在检索：" + query);
-                    
-                    // 执行检索并收集来源
-                    String result = knowledgeSearchTool.searchKnowledge(query);
-                    
-                    // 提取并发送知识来源
-                    List<SourceInfo> sources = extractSourcesFromToolResult(result, query);
-                    if (!sources.isEmpty()) {
-                        allSources.addAll(sources);
-                        sourcesConsumer.accept(sources);
-                    }
-                    
-                    // 发送生成状态
-                    statusConsumer.accept("💡 正在生成回答...");
-                    return result;
-                }
-                return "未知工具: " + toolName;
-            } catch (Exception e) {
-                log.error("工具执行失败 (流式): toolName={}, error={}", toolName, e.getMessage(), e);
-                return "工具执行失败: " + e.getMessage();
-            }
-        };
+        String contextualQuery = startStream(question, historyMessages, userId, statusConsumer);
         
         // 调用增强LLM流式服务
         String answer = enhancedLlmService.chatWithToolsStream(
                 BASE_SYSTEM_PROMPT,
                 contextualQuery,
                 historyMessages,
-                tools,
-                toolExecutor,
-                contentConsumer
+                getToolSpecifications(),
+                streamToolExecutor(statusConsumer, sourcesConsumer, allSources),
+                contentConsumer,
+                cancellation
         );
         
         log.info("增强RAG流式问答完成: 回答长度={}, 来源数={}", answer.length(), allSources.size());
@@ -205,6 +145,140 @@ public class EnhancedRagServiceImpl implements EnhancedRagService {
         return answer;
     }
 
+    @Override
+    public CompletableFuture<String> answerWithAutoRetrievalStreamAsync(String question, List<Message> historyMessages,
+                                                                        Long userId, Long conversationId,
+                                                                        Consumer<String> statusConsumer,
+                                                                        Consumer<List<SourceInfo>> sourcesConsumer,
+                                                                        Consumer<String> contentConsumer,
+                                                                        StreamCancellation cancellation) {
+        List<SourceInfo> allSources = Collections.synchronizedList(new ArrayList<>());
+        String contextualQuery = startStream(question, historyMessages, userId, statusConsumer);
+
+        return enhancedLlmService.chatWithToolsStreamAsync(
+                BASE_SYSTEM_PROMPT,
+                contextualQuery,
+                historyMessages,
+                getToolSpecifications(),
+                streamToolExecutor(statusConsumer, sourcesConsumer, allSources),
+                contentConsumer,
+                cancellation
+        ).thenApply(answer -> {
+            log.info("增强RAG流式问答完成: 回答长度={}, 来源数={}", answer.length(), allSources.size());
+            return answer;
+        });
+    }
+
+    /**
+     * 流式问答开始：发送处理状态并构建完整的查询上下文
+     */
+    private String startStream(String question, List<Message> historyMessages, Long userId,
+                               Consumer<String> statusConsumer) {
+        log.info("增强RAG流式问答开始: question={}, userId={}, historyCount={}", 
+                question, userId, historyMessages != null ? historyMessages.size() : 0);
+
+        // 状态更新：开始处理
+        statusConsumer.accept("正在智能分析您的问题...");
+        
+        return buildContextualQuery(question, historyMessages);
+    }
+
+    /**
+     * 流式问答的工具执行器（同一轮的多个检索合并执行），来源与提供给AI的内容来自同一次检索
+     */
+    private EnhancedLlmService.ToolExecutor streamToolExecutor(Consumer<String> statusConsumer,
+                                                              Consumer<List<SourceInfo>> sourcesConsumer,
+                                                              List<SourceInfo> allSources) {
+        return new KnowledgeToolExecutor(" (流式)", statusConsumer,
+                result -> {
+                    // 发送知识来源
+                    List<SourceInfo> sources = result.sources();
+                    if (!sources.isEmpty()) {
+                        allSources.addAll(sources);
+                        sourcesConsumer.accept(sources);
+                    }
+                });
+    }
+
+    /**
+     * 知识库工具执行器：AI在一轮回复中发起的多个检索调用合并为一次批量检索（一次向量化、一次向量检索）
+     */
+    private class KnowledgeToolExecutor implements EnhancedLlmService.ToolExecutor {
+
+        private final String logSuffix;
+        private final Consumer<String> statusConsumer;
+        private final Consumer<KnowledgeSearchTool.KnowledgeResult> resultConsumer;
+        /** 检索次数 */
+        private int retrievalCount;
+
+        KnowledgeToolExecutor(String logSuffix, Consumer<String> statusConsumer,
+                              Consumer<KnowledgeSearchTool.KnowledgeResult> resultConsumer) {
+            this.logSuffix = logSuffix;
+            this.statusConsumer = statusConsumer;
+            this.resultConsumer = resultConsumer;
+        }
+
+        @Override
+        public String execute(String toolName, String arguments) {
+            return executeAll(List.of(new EnhancedLlmService.ToolCall(null, toolName, arguments))).get(0);
+        }
+
+        @Override
+        public List<String> executeAll(List<EnhancedLlmService.ToolCall> toolCalls) {
+            String[] results = new String[toolCalls.size()];
+            List<Integer> searchIndexes = new ArrayList<>();
+            List<KnowledgeSearchTool.KnowledgeQuery> queries = new ArrayList<>();
+            for (int i = 0; i < toolCalls.size(); i++) {
+                EnhancedLlmService.ToolCall toolCall = toolCalls.get(i);
+                if (!"searchKnowledge".equals(toolCall.name())) {
+                    results[i] = "未知工具: " + toolCall.name();
+                    continue;
+                }
+                try {
+                    Map<String, Object> args = objectMapper.readValue(toolCall.arguments(), Map.class);
+                    String query = (String) args.get("query");
+                    String category = (String) args.get("category");
+                    retrievalCount++;
+                    log.info("AI决定检索知识库{} 第{}次: query={}, category={}", logSuffix, retrievalCount, query, category);
+                    queries.add(new KnowledgeSearchTool.KnowledgeQuery(query, category));
+                    searchIndexes.add(i);
+                } catch (Exception e) {
+                    log.error("工具执行失败{}: toolName={}, error={}", logSuffix, toolCall.name(), e.getMessage(), e);
+                    results[i] = "工具执行失败: " + e.getMessage();
+                }
+            }
+            if (queries.isEmpty()) {
+                return Arrays.asList(results);
+            }
+
+            // 工具调用前发送新消息标记，提示前端保存当前内容并开始新回答；再显示AI使用的检索查询文本
+            statusConsumer.accept("__NEW_MESSAGE__");
+            for (KnowledgeSearchTool.KnowledgeQuery query : queries) {
+                statusConsumer.accept("🔍 正在检索：" + query.query());
+            }
+
+            try {
+                List<KnowledgeSearchTool.KnowledgeResult> searchResults = knowledgeSearchTool.searchBatch(queries);
+                for (int j = 0; j < searchIndexes.size(); j++) {
+                    KnowledgeSearchTool.KnowledgeResult result = searchResults.get(j);
+                    resultConsumer.accept(result);
+                    results[searchIndexes.get(j)] = result.text();
+                }
+            } catch (Exception e) {
+                log.error("工具执行失败{}: toolName=searchKnowledge, error={}", logSuffix, e.getMessage(), e);
+                for (int index : searchIndexes) {
+                    if (results[index] == null) {
+                        results[index] = "工具执行失败: " + e.getMessage();
+                    }
+                }
+            }
+
+            // 发送生成状态
+            statusConsumer.accept("💡 正在生成回答...");
+            return Arrays.asList(results);
+        }
+    }
+
     /**
      * 构建结合上下文的查询
      */
@@ -248,6 +322,10 @@ public class EnhancedRagServiceImpl implements EnhancedRagService {
         queryParam.put("type", "string");
         queryParam.put("description", "要搜索的问题或关键词");
         properties.put("query", queryParam);
+        Map<String, Object> categoryParam = new HashMap<>();
+        categoryParam.put("type", "string");
+        categoryParam.put("description", "可选，限定检索的知识分类（与文档分类一致）；不确定分类时不要填写");
+        properties.put("category", categoryParam);
         
         ToolParameters params = ToolParameters.builder()
                 .properties(properties)
@@ -262,97 +340,4 @@ public class EnhancedRagServiceImpl implements EnhancedRagService {
         
         return Collections.singletonList(spec);
     }
-
-    /**
-     * 从回答中提取知识来源
-     */
-    private List<SourceInfo> extractSourcesFromAnswer(String answer, String query) {
-        // 尝试通过实际检索来获取来源信息
-        try {
-            float[] queryVector = embeddingService.embed(query);
-            if (queryVector != null && !allZeros(queryVector)) {
-                List<MilvusService.SearchResult> searchResults = 
-                        milvusService.search(queryVector, 5, 0.4f);
-                
-                if (!searchResults.isEmpty()) {
-                    List<Long> chunkIds = searchResults.stream()
-                            .map(MilvusService.SearchResult::getChunkId)
-                            .collect(Collectors.toList());
-                    
-                    List<KnowledgeChunk> chunks = chunkMapper.selectBatchIds(chunkIds);
-                    
-                    Map<Long, Float> scoreMap = searchResults.stream()
-                            .collect(Collectors.toMap(
-                                    MilvusService.SearchResult::getChunkId,
-                                    MilvusService.SearchResult::getScore
-                            ));
-                    
-                    return buildSourceInfoList(chunks, scoreMap);
-                }
-            }
-        } catch (Exception e) {
-            log.warn("提取知识来源失败: {}", e.getMessage());
-        }
-        
-        return Collections.emptyList();
-    }
-
-    /**
-     * 从工具结果中提取知识来源
-     */
-    private List<SourceInfo> extractSourcesFromToolResult(String toolResult, String query) {
-        // 工具结果已包含格式化的知识内容，这里通过query重新检索来获取结构化的来源信息
-        return extractSourcesFromAnswer(toolResult, query);
-    }
-
-    /**
-     * 构建来源信息列表
-     */
-    private List<SourceInfo> buildSourceInfoList(List<KnowledgeChunk> chunks, Map<Long, Float> scoreMap) {
-        if (chunks.isEmpty()) {
-            return Collections.emptyList();
-        }
-
-        // 获取相关文档信息
-        Set<Long> docIds = chunks.stream()
-                .map(KnowledgeChunk::getDocId)
-                .collect(Collectors.toSet());
-        
-        List<KnowledgeDoc> docs = docMapper.selectBatchIds(docIds);
-        Map<Long, String> docTitleMap = docs.stream()
-                .collect(Collectors.toMap(KnowledgeDoc::getId, KnowledgeDoc::getTitle));
-
-        return chunks.stream()
-                .map(chunk -> new SourceInfo(
-                        chunk.getDocId(),
-                        docTitleMap.getOrDefault(chunk.getDocId(), "未知文档"),
-                        chunk.getId(),
-                        truncateContent(chunk.getContent(), 200),
-                        scoreMap.getOrDefault(chunk.getId(), 0f)
-                ))
-                .collect(Collectors.toList());
-    }
-
-    /**
-     * 截断内容
-     */
-    private String truncateContent(String content, int maxLength) {
-        if (content == null) {
-            return "";
-        }
-        if (content.length() <= maxLength) {
-            return content;
-        }
-        return content.substring(0, maxLength) + "...";
-    }
-
-    /**
-     * 检查向量是否全为零
-     */
-    private boolean allZeros(float[] vector) {
-        for (float v : vector) {
-            if (v != 0) return false;
-        }
-        return true;
-    }
 }
@@ -7,13 +7,17 @@ import com.echocampus.bot.common.ResultCode;
 import com.echocampus.bot.common.exception.BusinessException;
 import com.echocampus.bot.dto.request.KnowledgeDocRequest;
 import com.echocampus.bot.entity.KnowledgeCategory;
+import com.echocampus.bot.entity.KnowledgeChunk;
 import com.echocampus.bot.entity.KnowledgeDoc;
 import com.echocampus.bot.mapper.KnowledgeCategoryMapper;
 import com.echocampus.bot.mapper.KnowledgeChunkMapper;
 import com.echocampus.bot.mapper.KnowledgeDocMapper;
+import com.echocampus.bot.service.AnswerCacheService;
 import com.echocampus.bot.service.DocumentProcessService;
 import com.echocampus.bot.service.KnowledgeService;
 import com.echocampus.bot.service.MilvusService;
+import com.echocampus.bot.service.retrieval.DocumentChunkIndex;
+import com.echocampus.bot.service.retrieval.KnowledgeDocCache;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
@@ -27,7 +31,10 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.UUID;
 
 
@@ -44,6 +51,9 @@ public class KnowledgeServiceImpl implements KnowledgeService {
     private final KnowledgeChunkMapper knowledgeChunkMapper;
     private final MilvusService milvusService;
     private final DocumentProcessService documentProcessService;
+    private final AnswerCacheService answerCacheService;
+    private final KnowledgeDocCache knowledgeDocCache;
+    private final DocumentChunkIndex documentChunkIndex;
 
     @Value("${document.upload-path:./uploads}")
     private String uploadPath;
@@ -142,6 +152,8 @@ public class KnowledgeServiceImpl implements KnowledgeService {
     @Transactional
     public void updateDocument(Long docId, KnowledgeDocRequest request) {
         KnowledgeDoc doc = getDocumentById(docId);
+        String oldCategory = vectorCategory(doc);
+        String oldTitle = doc.getTitle();
         
         if (request.getTitle() != null) {
             doc.setTitle(request.getTitle());
@@ -157,6 +169,15 @@ public class KnowledgeServiceImpl implements KnowledgeService {
         }
         
         knowledgeDocMapper.updateById(doc);
+        
+        // 分类和标题同时写在向量记录中（分类为分区键），变化时重写向量记录
+        if (!oldCategory.equals(vectorCategory(doc)) || !Objects.equals(oldTitle, doc.getTitle())) {
+            rewriteVectorPayload(doc, oldCategory);
+        }
+        
+        // 标题等元信息会出现在回答来源中，失效相关缓存
+        answerCacheService.invalidateDocument(docId);
+        knowledgeDocCache.invalidate(docId);
     }
 
     @Override
@@ -164,9 +185,9 @@ public class KnowledgeServiceImpl implements KnowledgeService {
     public void deleteDocument(Long docId) {
         KnowledgeDoc doc = getDocumentById(docId);
         
-        // 1. 删除Milvus中的向量
+        // 1. 删除Milvus中的向量（只访问文档分类对应的分区）
         try {
-            milvusService.deleteByDocId(docId);
+            milvusService.deleteByDocId(docId, vectorCategory(doc));
             log.info("已删除文档 {} 的向量数据", docId);
         } catch (Exception e) {
             log.warn("删除Milvus向量失败: {}", e.getMessage());
@@ -194,6 +215,11 @@ public class KnowledgeServiceImpl implements KnowledgeService {
         // 4. 删除数据库记录
         knowledgeDocMapper.deleteById(docId);
         
+        // 5. 失效引用该文档的缓存回答
+        answerCacheService.invalidateDocument(docId);
+        knowledgeDocCache.invalidate(docId);
+        documentChunkIndex.remove(docId);
+        
         log.info("文档已彻底删除: docId={}, title={}", docId, doc.getTitle());
     }
 
@@ -203,6 +229,8 @@ public class KnowledgeServiceImpl implements KnowledgeService {
         KnowledgeDoc doc = getDocumentById(docId);
         doc.setProcessStatus("PENDING");
         knowledgeDocMapper.updateById(doc);
+        answerCacheService.invalidateDocument(docId);
+        knowledgeDocCache.invalidate(docId);
         
         // 在事务提交后异步重新处理（避免异步线程读取到未提交的数据）
         TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
@@ -218,6 +246,63 @@ public class KnowledgeServiceImpl implements KnowledgeService {
         return knowledgeCategoryMapper.selectTopLevel();
     }
 
+    /**
+     * 用原向量重写文档的向量记录（Milvus不支持原地更新标量字段，分区键也不能原地修改）。
+     * 先写入新记录并回写向量ID，再按旧向量ID删除旧记录：任一步失败时旧记录仍在，文档不会检索不到。
+     * 有向量读取不到时不做重写，避免丢失向量，此时需重新索引文档
+     */
+    private void rewriteVectorPayload(KnowledgeDoc doc, String oldCategory) {
+        try {
+            List<KnowledgeChunk> chunks = knowledgeChunkMapper.selectByDocId(doc.getId()).stream()
+                    .filter(c -> c.getVectorId() != null)
+                    .toList();
+            if (chunks.isEmpty()) {
+                return;
+            }
+            Map<String, float[]> stored = milvusService.getVectors(
+                    chunks.stream().map(KnowledgeChunk::getVectorId).toList());
+            if (stored.size() < chunks.size()) {
+                log.warn("文档部分向量读取失败，未重写向量记录，请重新索引: docId={}, expected={}, actual={}",
+                        doc.getId(), chunks.size(), stored.size());
+                return;
+            }
+
+            List<String> oldVectorIds = chunks.stream().map(KnowledgeChunk::getVectorId).toList();
+            List<String> vectorIds = milvusService.insertVectors(
+                    chunks.stream().map(c -> stored.get(c.getVectorId())).toList(),
+                    chunks.stream().map(KnowledgeChunk::getId).toList(),
+                    Collections.nCopies(chunks.size(), doc.getId()),
+                    chunks.stream().map(KnowledgeChunk::getContent).toList(),
+                    Collections.nCopies(chunks.size(), vectorCategory(doc)),
+                    chunks.stream().map(KnowledgeChunk::getPageNumber).toList(),
+                    Collections.nCopies(chunks.size(), doc.getTitle()));
+            if (vectorIds.size() != chunks.size()) {
+                log.warn("重写文档向量记录时写入失败，保留原记录，请重新索引: docId={}", doc.getId());
+                if (!vectorIds.isEmpty()) {
+                    milvusService.deleteVectors(vectorIds);
+                }
+                return;
+            }
+            for (int i = 0; i < chunks.size(); i++) {
+                chunks.get(i).setVectorId(vectorIds.get(i));
+            }
+            knowledgeChunkMapper.updateVectorIds(chunks);
+            milvusService.deleteVectors(oldVectorIds);
+            log.info("已重写文档向量记录: docId={}, category={} -> {}, vectors={}",
+                    doc.getId(), oldCategory, vectorCategory(doc), vectorIds.size());
+        } catch (Exception e) {
+            log.warn("重写文档向量记录失败，按分类检索可能不准确，请重新索引: docId={}, error={}",
+                    doc.getId(), e.getMessage());
+        }
+    }
+
+    /**
+     * 写入向量记录时使用的分类（与入库流水线一致，未分类的文档记为 default）
+     */
+    private static String vectorCategory(KnowledgeDoc doc) {
+        return doc.getCategory() != null ? doc.getCategory() : "default";
+    }
+
     private String getFileExtension(String filename) {
         if (filename == null || !filename.contains(".")) {
             return "";
@@ -3,6 +3,9 @@ package com.echocampus.bot.service.impl;
 import com.echocampus.bot.config.AiServiceConfig;
 import com.echocampus.bot.entity.Message;
 import com.echocampus.bot.service.LlmService;
+import com.echocampus.bot.service.stream.ChatCompletionStreamParser;
+import com.echocampus.bot.service.stream.StreamCancellation;
+import com.echocampus.bot.service.transport.AiHttpTransport;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
@@ -10,12 +13,10 @@ import lombok.extern.slf4j.Slf4j;
 import okhttp3.*;
 import org.springframework.stereotype.Service;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.*;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
 
 /**
@@ -27,29 +28,9 @@ import java.util.function.Consumer;
 public class LlmServiceImpl implements LlmService {
 
     private final AiServiceConfig aiConfig;
+    private final AiHttpTransport aiHttpTransport;
     private final ObjectMapper objectMapper = new ObjectMapper();
 
-    private volatile OkHttpClient httpClient;
-
-    /**
-     * 获取HTTP客户端（延迟初始化，线程安全）
-     */
-    private OkHttpClient getHttpClient() {
-        if (httpClient == null) {
-            synchronized (this) {
-                if (httpClient == null) {
-                    int timeout = aiConfig.getLlm().getTimeout();
-                    httpClient = new OkHttpClient.Builder()
-                            .connectTimeout(30, TimeUnit.SECONDS)
-                            .readTimeout(timeout, TimeUnit.SECONDS)
-                            .writeTimeout(30, TimeUnit.SECONDS)
-                            .build();
-                }
-            }
-        }
-        return httpClient;
-    }
-
     /** RAG系统提示词模板 */
     private static final String RAG_SYSTEM_PROMPT = """
             你是上海应用技术大学SIT“回应”工作室（EchoTech Studio）开发的EchoCampus专业智能校园问答助手“小E”，专门回答与校园相关的问题。
@@ -175,7 +156,7 @@ public class LlmServiceImpl implements LlmService {
                     .post(RequestBody.create(jsonBody, MediaType.parse("application/json")))
                     .build();
 
-            try (Response response = getHttpClient().newCall(request).execute()) {
+            try (Response response = aiHttpTransport.execute(request, Duration.ofSeconds(config.getTimeout()), null)) {
                 if (!response.isSuccessful()) {
                     String errorBody = response.body() != null ? response.body().string() : "无响应体";
                     log.error("LLM API请求失败: code={}, body={}", response.code(), errorBody);
@@ -275,7 +256,58 @@ public class LlmServiceImpl implements LlmService {
 
     @Override
     public void ragAnswerStream(String question, String context, List<Message> historyMessages, Consumer<String> chunkConsumer) {
-        // 构建消息列表
+        ragAnswerStream(question, context, historyMessages, chunkConsumer, StreamCancellation.none());
+    }
+
+    @Override
+    public void ragAnswerStream(String question, String context, List<Message> historyMessages,
+                                Consumer<String> chunkConsumer, StreamCancellation cancellation) {
+        chatStream(ragMessages(question, context, historyMessages), chunkConsumer, cancellation);
+    }
+
+    @Override
+    public CompletableFuture<Void> ragAnswerStreamAsync(String question, String context, List<Message> historyMessages,
+                                                        Consumer<String> chunkConsumer,
+                                                        StreamCancellation cancellation) {
+        if (cancellation.isCancelled()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        AiServiceConfig.LlmConfig config = aiConfig.getLlm();
+        Request request;
+        try {
+            request = buildStreamRequest(config, ragMessages(question, context, historyMessages));
+        } catch (IOException e) {
+            log.error("LLM API流式请求异常: {}", e.getMessage(), e);
+            chunkConsumer.accept("抱歉，AI服务请求失败: " + e.getMessage());
+            return CompletableFuture.completedFuture(null);
+        }
+
+        ChatCompletionStreamParser parser = new ChatCompletionStreamParser(chunkConsumer::accept);
+        CompletableFuture<Void> upstream = aiHttpTransport.stream(request, Duration.ofSeconds(config.getTimeout()), parser::feed);
+        // 取消时关闭上游连接，不再读取和计费
+        StreamCancellation.Registration registration = cancellation.onCancel(() -> upstream.cancel(true));
+        return upstream.handle((ignored, e) -> {
+                    registration.close();
+                    if (e == null) {
+                        parser.finish();
+                        log.debug("LLM流式响应完成");
+                    } else if (cancellation.isCancelled()) {
+                        log.info("客户端已断开，LLM流式请求已中止");
+                    } else if (e instanceof AiHttpTransport.HttpStatusException status) {
+                        log.error("LLM API流式请求失败: code={}, body={}", status.getStatusCode(), status.getBody());
+                        chunkConsumer.accept("抱歉，AI服务暂时不可用，请稍后再试。");
+                    } else {
+                        log.error("LLM API流式请求异常: {}", e.getMessage(), e);
+                        chunkConsumer.accept("抱歉，AI服务请求失败: " + e.getMessage());
+                    }
+                    return null;
+                });
+    }
+
+    /**
+     * RAG消息列表：系统提示词（含知识库上下文）、最近的历史消息、当前问题
+     */
+    private List<ChatMessage> ragMessages(String question, String context, List<Message> historyMessages) {
         List<ChatMessage> messages = new ArrayList<>();
         
         // 1. 添加系统提示词（包含知识库上下文）
@@ -301,47 +333,24 @@ public class LlmServiceImpl implements LlmService {
         
         // 3. 添加当前问题
         messages.add(ChatMessage.user(question));
-        
-        // 4. 流式调用LLM
-        chatStream(messages, chunkConsumer);
+        return messages;
     }
 
     /**
-     * 流式聊天调用
+     * 流式聊天调用；取消时中止请求（关闭连接），已回调的内容保留
      */
-    private void chatStream(List<ChatMessage> messages, Consumer<String> chunkConsumer) {
+    private void chatStream(List<ChatMessage> messages, Consumer<String> chunkConsumer, StreamCancellation cancellation) {
+        if (cancellation.isCancelled()) {
+            return;
+        }
         AiServiceConfig.LlmConfig config = aiConfig.getLlm();
         
         try {
-            // 构建请求体
-            List<Map<String, String>> messageList = new ArrayList<>();
-            for (ChatMessage msg : messages) {
-                Map<String, String> msgMap = new HashMap<>();
-                msgMap.put("role", msg.role());
-                msgMap.put("content", msg.content());
-                messageList.add(msgMap);
-            }
-            
-            Map<String, Object> requestBody = new HashMap<>();
-            requestBody.put("model", config.getModel());
-            requestBody.put("messages", messageList);
-            requestBody.put("max_tokens", config.getMaxTokens());
-            requestBody.put("temperature", config.getTemperature());
-            requestBody.put("stream", true); // 启用流式
-            
-            String jsonBody = objectMapper.writeValueAsString(requestBody);
-            
-            log.debug("LLM流式请求: model={}, messages={}", config.getModel(), messages.size());
-            
-            Request request = new Request.Builder()
-                    .url(config.getApiUrl())
-                    .addHeader("Authorization", "Bearer " + config.getApiKey())
-                    .addHeader("Content-Type", "application/json")
-                    .addHeader("Accept", "text/event-stream")
-                    .post(RequestBody.create(jsonBody, MediaType.parse("application/json")))
-                    .build();
+            Request request = buildStreamRequest(config, messages);
+            Call call = aiHttpTransport.newCall(request, Duration.ofSeconds(config.getTimeout()), null);
 
-            try (Response response = getHttpClient().newCall(request).execute()) {
+            StreamCancellation.Registration registration = cancellation.onCancel(call::cancel);
+            try (Response response = call.execute()) {
                 if (!response.isSuccessful()) {
                     String errorBody = response.body() != null ? response.body().string() : "无响应体";
                     log.error("LLM API流式请求失败: code={}, body={}", response.code(), errorBody);
@@ -352,41 +361,52 @@ public class LlmServiceImpl implements LlmService {
                 // 解析SSE流
                 ResponseBody responseBody = response.body();
                 if (responseBody != null) {
-                    try (BufferedReader reader = new BufferedReader(
-                            new InputStreamReader(responseBody.byteStream(), StandardCharsets.UTF_8))) {
-                        String line;
-                        while ((line = reader.readLine()) != null) {
-                            if (line.startsWith("data: ")) {
-                                String data = line.substring(6).trim();
-                                if ("[DONE]".equals(data)) {
-                                    break;
-                                }
-                                
-                                try {
-                                    JsonNode root = objectMapper.readTree(data);
-                                    JsonNode choices = root.get("choices");
-                                    if (choices != null && choices.isArray() && choices.size() > 0) {
-                                        JsonNode delta = choices.get(0).get("delta");
-                                        if (delta != null && delta.has("content")) {
-                                            String content = delta.get("content").asText();
-                                            if (content != null && !content.isEmpty()) {
-                                                chunkConsumer.accept(content);
-                                            }
-                                        }
-                                    }
-                                } catch (Exception e) {
-                                    log.debug("解析流式响应数据失败: {}", data);
-                                }
-                            }
-                        }
-                    }
+                    ChatCompletionStreamParser.parse(responseBody.byteStream(), chunkConsumer::accept);
                 }
                 log.debug("LLM流式响应完成");
+            } finally {
+                registration.close();
             }
             
         } catch (IOException e) {
+            if (cancellation.isCancelled()) {
+                log.info("客户端已断开，LLM流式请求已中止");
+                return;
+            }
             log.error("LLM API流式请求异常: {}", e.getMessage(), e);
             chunkConsumer.accept("抱歉，AI服务请求失败: " + e.getMessage());
         }
     }
+
+    /**
+     * 构建流式请求
+     */
+    private Request buildStreamRequest(AiServiceConfig.LlmConfig config, List<ChatMessage> messages) throws IOException {
+        List<Map<String, String>> messageList = new ArrayList<>();
+        for (ChatMessage msg : messages) {
+            Map<String, String> msgMap = new HashMap<>();
+            msgMap.put("role", msg.role());
+            msgMap.put("content", msg.content());
+            messageList.add(msgMap);
+        }
+        
+        Map<String, Object> requestBody = new HashMap<>();
+        requestBody.put("model", config.getModel());
+        requestBody.put("messages", messageList);
+        requestBody.put("max_tokens", config.getMaxTokens());
+        requestBody.put("temperature", config.getTemperature());
+        requestBody.put("stream", true); // 启用流式
+        
+        String jsonBody = objectMapper.writeValueAsString(requestBody);
+        
+        log.debug("LLM流式请求: model={}, messages={}", config.getModel(), messages.size());
+        
+        return new Request.Builder()
+                .url(config.getApiUrl())
+                .addHeader("Authorization", "Bearer " + config.getApiKey())
+                .addHeader("Content-Type", "application/json")
+                .addHeader("Accept", "text/event-stream")
+                .post(RequestBody.create(jsonBody, MediaType.parse("application/json")))
+                .build();
+    }
 }
@@ -0,0 +1,780 @@
+package com.echocampus.bot.service.impl;
+
+import com.echocampus.bot.config.MilvusConfig;
+import com.echocampus.bot.entity.KnowledgeChunk;
+import com.echocampus.bot.entity.KnowledgeDoc;
+import com.echocampus.bot.mapper.KnowledgeChunkMapper;
+import com.echocampus.bot.mapper.KnowledgeDocMapper;
+import com.echocampus.bot.service.EmbeddingService;
+import com.echocampus.bot.service.MilvusService;
+import com.echocampus.bot.vector.HnswIndex;
+import com.echocampus.bot.vector.MappedVectorFile;
+import com.echocampus.bot.vector.SearchHits;
+import com.echocampus.bot.vector.VectorArena;
+import com.echocampus.bot.vector.VectorMath;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+
+/**
+ * 进程内向量检索服务
+ * <p>
+ * 向量单位化后存放在 {@link VectorArena} 中，使用 {@link HnswIndex} 做近似检索，
+ * 同时写入内存映射文件持久化。启动时先从文件加载，再在后台线程与 knowledge_chunks 比对：
+ * 删除数据库中已不存在的切块，补齐缺失的切块（优先从Milvus读取向量，否则重新向量化），最后建图。
+ * 比对和建图完成前 {@link #isAvailable()} 返回 false。
+ * <p>
+ * 相似度固定为余弦相似度，并与 {@link MilvusServiceImpl} 一样换算到 0-1 范围。
+ * 作为Milvus的降级方案和低延迟读层，由 {@link TieredMilvusService} 按 vector.local.mode 组合使用。
+ */
+@Slf4j
+@Service
+public class LocalVectorService implements MilvusService {
+
+    /**
+     * 本地索引的使用方式
+     */
+    public enum Mode {
+        /** 不启用本地索引（默认，需显式开启） */
+        OFF,
+        /** Milvus不可用时降级到本地索引 */
+        FALLBACK,
+        /** 本地索引就绪后优先读本地，写入同时写两边 */
+        HOT_TIER,
+        /** 只使用本地索引（小规模部署） */
+        STANDALONE;
+
+        public static Mode parse(String value) {
+            return Mode.valueOf(value.trim().replace('-', '_').toUpperCase(Locale.ROOT));
+        }
+    }
+
+    private final MilvusConfig milvusConfig;
+    private final MilvusServiceImpl remoteMilvusService;
+    private final EmbeddingService embeddingService;
+    private final KnowledgeChunkMapper knowledgeChunkMapper;
+    private final KnowledgeDocMapper knowledgeDocMapper;
+
+    @Value("${vector.local.mode:off}")
+    private String modeName;
+
+    @Value("${vector.local.path:./data/vector-index/knowledge.vec}")
+    private String filePath;
+
+    @Value("${vector.local.hnsw.m:16}")
+    private int hnswM;
+
+    @Value("${vector.local.hnsw.ef-construction:128}")
+    private int efConstruction;
+
+    @Value("${vector.local.hnsw.ef-search:128}")
+    private int efSearch;
+
+    /**
+     * 带过滤条件检索时，满足条件的切块数不超过该值则直接精确检索，否则在图中按选择率多取候选再过滤
+     */
+    @Value("${vector.local.filter-exact-max:2048}")
+    private int filterExactMax;
+
+    @Value("${vector.local.rebuild-batch-size:64}")
+    private int rebuildBatchSize;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private Mode mode = Mode.OFF;
+    private VectorArena arena;
+    private HnswIndex graph;
+    private MappedVectorFile file;
+    private boolean graphLive;
+    private volatile boolean ready;
+    private Thread rebuildThread;
+
+    // 槽位元数据（与存储区槽位一一对应，由 lock 保护）
+    private long[] docIds = new long[0];
+    private String[] contents = new String[0];
+    private String[] categories = new String[0];
+    private int[] pageNumbers = new int[0];
+    private String[] titles = new String[0];
+    private String[] vectorIds = new String[0];
+    private final Map<Long, Integer> slotByChunkId = new HashMap<>();
+    private final Map<String, Integer> slotByVectorId = new HashMap<>();
+    // 未删除槽位按分类、文档计数，用于估算过滤条件的选择率
+    private final Map<String, Integer> liveByCategory = new HashMap<>();
+    private final Map<Long, Integer> liveByDocId = new HashMap<>();
+
+    private final AtomicLong searchCount = new AtomicLong();
+    private final AtomicLong searchNanos = new AtomicLong();
+    private volatile long rebuildMillis = -1;
+
+    public LocalVectorService(MilvusConfig milvusConfig,
+                              MilvusServiceImpl remoteMilvusService,
+                              EmbeddingService embeddingService,
+                              KnowledgeChunkMapper knowledgeChunkMapper,
+                              KnowledgeDocMapper knowledgeDocMapper) {
+        this.milvusConfig = milvusConfig;
+        this.remoteMilvusService = remoteMilvusService;
+        this.embeddingService = embeddingService;
+        this.knowledgeChunkMapper = knowledgeChunkMapper;
+        this.knowledgeDocMapper = knowledgeDocMapper;
+    }
+
+    @PostConstruct
+    public void init() {
+        mode = Mode.parse(modeName);
+        if (mode == Mode.OFF) {
+            log.info("本地向量索引未启用");
+            return;
+        }
+        try {
+            load(Paths.get(filePath), milvusConfig.getDimension());
+        } catch (IOException e) {
+            log.error("本地向量索引文件加载失败，本地检索不可用: path={}, error={}", filePath, e.getMessage());
+            mode = Mode.OFF;
+            return;
+        }
+
+        startRebuild();
+    }
+
+    /**
+     * 丢弃本地索引并按新维度在后台重建（Milvus集合重新向量化切换后调用，已有向量来自旧模型，不能再用）。
+     * 重建完成前 {@link #isAvailable()} 返回 false
+     *
+     * @param dimension 新模型的向量维度
+     */
+    public void reset(int dimension) {
+        if (mode == Mode.OFF) {
+            return;
+        }
+        Thread previous = rebuildThread;
+        if (previous != null) {
+            previous.interrupt();
+            try {
+                previous.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        ready = false;
+        lock.writeLock().lock();
+        try {
+            Path path = file.path();
+            file.close();
+            Files.deleteIfExists(path);
+            slotByChunkId.clear();
+            slotByVectorId.clear();
+            liveByCategory.clear();
+            liveByDocId.clear();
+            docIds = new long[0];
+            contents = new String[0];
+            categories = new String[0];
+            pageNumbers = new int[0];
+            titles = new String[0];
+            vectorIds = new String[0];
+            graphLive = false;
+            load(path, dimension);
+        } catch (IOException e) {
+            log.error("重置本地向量索引失败，本地检索不可用: error={}", e.getMessage());
+            mode = Mode.OFF;
+            return;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("本地向量索引已重置: dimension={}，后台重建", dimension);
+        startRebuild();
+    }
+
+    private void startRebuild() {
+        rebuildThread = new Thread(this::rebuild, "local-vector-rebuild");
+        rebuildThread.setDaemon(true);
+        rebuildThread.start();
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (rebuildThread != null) {
+            rebuildThread.interrupt();
+        }
+        lock.writeLock().lock();
+        try {
+            if (file != null) {
+                file.close();
+                log.info("本地向量索引文件已关闭: {}", file.path());
+            }
+        } catch (IOException e) {
+            log.warn("关闭本地向量索引文件失败: {}", e.getMessage());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    // ========== MilvusService ==========
+
+    @Override
+    public void initCollection() {
+        // 本地索引在启动时自动加载，无需建集合
+    }
+
+    @Override
+    public List<String> insertVectors(List<float[]> vectors, List<Long> chunkIds, List<Long> docIds,
+                                      List<String> contents, List<String> categories,
+                                      List<Integer> pageNumbers, List<String> titles) {
+        List<String> ids = new ArrayList<>(vectors.size());
+        for (int i = 0; i < vectors.size(); i++) {
+            ids.add(UUID.randomUUID().toString());
+        }
+        return put(ids, vectors, chunkIds, docIds, contents, categories, pageNumbers, titles)
+                ? ids : Collections.emptyList();
+    }
+
+    /**
+     * 使用指定的向量ID写入（与Milvus中的ID保持一致），同一切块已存在时替换
+     *
+     * @return 是否写入成功
+     */
+    public boolean put(List<String> ids, List<float[]> vectors, List<Long> chunkIds, List<Long> docIds,
+                       List<String> contents, List<String> categories,
+                       List<Integer> pageNumbers, List<String> titles) {
+        if (mode == Mode.OFF || vectors.isEmpty()) {
+            return false;
+        }
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < vectors.size(); i++) {
+                Integer previous = slotByChunkId.get(chunkIds.get(i));
+                if (previous != null) {
+                    deleteSlot(previous);
+                }
+                addSlot(chunkIds.get(i), VectorMath.normalize(vectors.get(i)), ids.get(i),
+                        new SlotMetadata(docIds.get(i), contents.get(i), categories.get(i),
+                                pageNumbers.get(i), titles.get(i)));
+            }
+            return true;
+        } catch (IOException | IllegalArgumentException e) {
+            log.error("写入本地向量索引失败: {}", e.getMessage());
+            return false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<SearchResult> search(float[] queryVector, int topK, float threshold, SearchFilter filter) {
+        return search(queryVector, topK, threshold, filter, null);
+    }
+
+    /**
+     * 按检索预算缩放 efSearch（与Milvus HNSW的 ef 换算一致）
+     */
+    @Override
+    public List<SearchResult> search(float[] queryVector, int topK, float threshold, SearchFilter filter,
+                                     SearchBudget budget) {
+        if (!ready) {
+            return Collections.emptyList();
+        }
+        if (queryVector.length != arena.dimension()) {
+            log.warn("查询向量维度不匹配: expected={}, actual={}", arena.dimension(), queryVector.length);
+            return Collections.emptyList();
+        }
+
+        long start = System.nanoTime();
+        float[] query = VectorMath.normalize(queryVector);
+        int ef = budget != null ? Math.max(1, (int) Math.round(efSearch * budget.scale())) : efSearch;
+        List<SearchResult> results;
+        lock.readLock().lock();
+        try {
+            if (filter == null || filter.isEmpty()) {
+                results = toResults(graph.search(query, topK, ef), topK, threshold, slot -> true);
+            } else {
+                results = filteredSearch(query, topK, threshold, filter, ef);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        searchCount.incrementAndGet();
+        searchNanos.addAndGet(System.nanoTime() - start);
+        log.debug("本地向量检索完成，返回 {} 条结果", results.size());
+        return results;
+    }
+
+    @Override
+    public List<List<SearchResult>> searchBatch(List<float[]> queryVectors, int topK, float threshold,
+                                                SearchFilter filter, SearchBudget budget) {
+        List<List<SearchResult>> results = new ArrayList<>(queryVectors.size());
+        for (float[] queryVector : queryVectors) {
+            results.add(search(queryVector, topK, threshold, filter, budget));
+        }
+        return results;
+    }
+
+    /**
+     * 带过滤条件的检索：满足条件的切块较少时直接对其精确检索（比图检索更快且不漏召回）；
+     * 较多时按选择率从图中多取候选再过滤，过滤后仍不足 topK 再退回精确检索
+     */
+    private List<SearchResult> filteredSearch(float[] query, int topK, float threshold, SearchFilter filter, int ef) {
+        int matching = estimateMatches(filter);
+        if (matching == 0) {
+            return new ArrayList<>();
+        }
+        IntPredicate accept = slot -> filter.matches(docIds[slot], categories[slot]);
+        if (matching > filterExactMax) {
+            int live = arena.liveCount();
+            int candidates = (int) Math.min(live, (long) topK * 2 * ((live + matching - 1) / matching));
+            List<SearchResult> results = toResults(graph.search(query, candidates, Math.max(ef, candidates)),
+                    topK, threshold, accept);
+            if (results.size() >= topK) {
+                return results;
+            }
+        }
+        return toResults(arena.exactSearch(query, topK, accept), topK, threshold, slot -> true);
+    }
+
+    /**
+     * 满足过滤条件的切块数上限（各字段条件分别计数后取较小值）
+     */
+    private int estimateMatches(SearchFilter filter) {
+        int estimate = arena.liveCount();
+        if (!filter.categories().isEmpty()) {
+            estimate = Math.min(estimate, filter.categories().stream()
+                    .mapToInt(c -> liveByCategory.getOrDefault(c, 0)).sum());
+        }
+        if (!filter.docIds().isEmpty()) {
+            estimate = Math.min(estimate, filter.docIds().stream()
+                    .mapToInt(d -> liveByDocId.getOrDefault(d, 0)).sum());
+        }
+        return estimate;
+    }
+
+    private List<SearchResult> toResults(SearchHits hits, int topK, float threshold, IntPredicate accept) {
+        List<SearchResult> results = new ArrayList<>(Math.min(hits.size(), topK));
+        for (int i = 0; i < hits.size() && results.size() < topK; i++) {
+            int slot = hits.slots()[i];
+            // 与Milvus的COSINE分数换算一致，转换为0-1范围
+            float similarity = (1 + hits.scores()[i]) / 2;
+            if (similarity < threshold || !accept.test(slot)) {
+                continue;
+            }
+            SearchResult result = new SearchResult();
+            result.setVectorId(vectorIds[slot]);
+            result.setChunkId(arena.id(slot));
+            result.setDocId(docIds[slot]);
+            result.setContent(contents[slot] != null ? contents[slot] : "");
+            result.setCategory(categories[slot] != null ? categories[slot] : "");
+            result.setPageNumber(pageNumbers[slot] > 0 ? pageNumbers[slot] : null);
+            result.setTitle(titles[slot] != null ? titles[slot] : "");
+            result.setPayloadLoaded(contents[slot] != null);
+            result.setScore(similarity);
+            results.add(result);
+        }
+        return results;
+    }
+
+    @Override
+    public void deleteVectors(List<String> vectorIds) {
+        if (mode == Mode.OFF || vectorIds.isEmpty()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            for (String vectorId : vectorIds) {
+                Integer slot = slotByVectorId.get(vectorId);
+                if (slot != null) {
+                    deleteSlot(slot);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 本地索引没有分区，按文档ID扫描全部槽位，分类不参与判断
+     */
+    @Override
+    public void deleteByDocId(Long docId, String category) {
+        deleteWhere(slot -> docIds[slot] == docId.longValue());
+    }
+
+    @Override
+    public void deleteByChunkIds(List<Long> chunkIds) {
+        if (mode == Mode.OFF || chunkIds.isEmpty()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            for (Long chunkId : chunkIds) {
+                Integer slot = slotByChunkId.get(chunkId);
+                if (slot != null) {
+                    deleteSlot(slot);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Map<String, float[]> getVectors(List<String> vectorIds) {
+        if (mode == Mode.OFF || vectorIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, float[]> vectors = new HashMap<>();
+        lock.readLock().lock();
+        try {
+            for (String vectorId : vectorIds) {
+                Integer slot = slotByVectorId.get(vectorId);
+                if (slot != null) {
+                    vectors.put(vectorId, arena.get(slot));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return vectors;
+    }
+
+    @Override
+    public long getVectorCount() {
+        if (arena == null) {
+            return 0;
+        }
+        lock.readLock().lock();
+        try {
+            return arena.liveCount();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 启动比对和建图完成后可用
+     */
+    @Override
+    public boolean isAvailable() {
+        return ready;
+    }
+
+    /**
+     * 运行指标
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("mode", mode.name());
+        stats.put("ready", ready);
+        if (arena != null) {
+            lock.readLock().lock();
+            try {
+                stats.put("vectors", arena.liveCount());
+                stats.put("deletedSlots", arena.deletedCount());
+                stats.put("graphNodes", graph.size());
+                stats.put("heapBytes", arena.memoryBytes() + graph.memoryBytes());
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+        long searches = searchCount.get();
+        stats.put("searches", searches);
+        stats.put("avgSearchMicros", searches == 0 ? 0 : searchNanos.get() / searches / 1000);
+        stats.put("rebuildMillis", rebuildMillis);
+        return stats;
+    }
+
+    // ========== 加载与重建 ==========
+
+    /**
+     * 从文件加载向量（元数据待比对时补齐）。已删除记录过多时先压缩文件
+     */
+    private void load(Path path, int dimension) throws IOException {
+        MappedVectorFile opened = MappedVectorFile.open(path, dimension);
+        int deleted = 0;
+        for (int record = 0; record < opened.count(); record++) {
+            if (opened.id(record) == MappedVectorFile.DELETED_ID) {
+                deleted++;
+            }
+        }
+        if (deleted > 0 && deleted >= opened.count() - deleted) {
+            log.info("压缩本地向量索引文件: records={}, deleted={}", opened.count(), deleted);
+            opened = opened.compact(id -> true);
+        }
+
+        lock.writeLock().lock();
+        try {
+            file = opened;
+            arena = new VectorArena(dimension, file.count());
+            graph = new HnswIndex(arena, hnswM, efConstruction, 42L);
+            ensureMetadataCapacity(file.count());
+            for (int record = 0; record < file.count(); record++) {
+                long chunkId = file.id(record);
+                int slot = arena.add(chunkId, file.read(record));
+                if (chunkId == MappedVectorFile.DELETED_ID) {
+                    arena.delete(slot);
+                } else {
+                    slotByChunkId.put(chunkId, slot);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("本地向量索引文件已加载: path={}, vectors={}", path, arena.liveCount());
+    }
+
+    private void rebuild() {
+        long start = System.currentTimeMillis();
+        try {
+            reconcile();
+            buildGraph();
+            ready = true;
+            rebuildMillis = System.currentTimeMillis() - start;
+            log.info("本地向量索引就绪: mode={}, vectors={}, 耗时={}ms", mode, getVectorCount(), rebuildMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("本地向量索引重建失败: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 与 knowledge_chunks 比对：删除已不存在的切块，补齐元数据和缺失的向量
+     * <p>
+     * 比对期间新写入的槽位不受影响；比对期间被删除的切块可能被补回，检索时查不到对应切块，下次启动时清除。
+     */
+    private void reconcile() throws InterruptedException {
+        List<KnowledgeChunk> chunks = knowledgeChunkMapper.selectIndexSources();
+        Map<Long, KnowledgeDoc> docById = new HashMap<>();
+        for (KnowledgeDoc doc : knowledgeDocMapper.selectList(null)) {
+            docById.put(doc.getId(), doc);
+        }
+
+        List<KnowledgeChunk> missing = new ArrayList<>();
+        int removed = 0;
+        lock.writeLock().lock();
+        try {
+            Map<Long, KnowledgeChunk> chunkById = new HashMap<>();
+            chunks.forEach(c -> chunkById.put(c.getId(), c));
+            int boundary = arena.size();
+            for (int slot = 0; slot < boundary; slot++) {
+                if (arena.isDeleted(slot)) {
+                    continue;
+                }
+                KnowledgeChunk chunk = chunkById.get(arena.id(slot));
+                if (chunk == null) {
+                    deleteSlot(slot);
+                    removed++;
+                } else {
+                    setMetadata(slot, chunk.getVectorId(), metadataOf(chunk, docById));
+                }
+            }
+            for (KnowledgeChunk chunk : chunks) {
+                if (!slotByChunkId.containsKey(chunk.getId())) {
+                    missing.add(chunk);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("本地向量索引比对完成: 数据库切块={}, 删除={}, 待补齐={}", chunks.size(), removed, missing.size());
+
+        int batchSize = Math.max(1, rebuildBatchSize);
+        for (int from = 0; from < missing.size(); from += batchSize) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedException();
+            }
+            List<KnowledgeChunk> batch = missing.subList(from, Math.min(from + batchSize, missing.size()));
+            if (!fill(batch, docById)) {
+                log.warn("本地向量索引补齐中止: 已补齐={}, 未补齐={}", from, missing.size() - from);
+                break;
+            }
+        }
+    }
+
+    /**
+     * 补齐一批缺失的切块：有向量ID的先从Milvus读取，其余调用向量化服务
+     *
+     * @return 向量化服务失败时返回 false
+     */
+    private boolean fill(List<KnowledgeChunk> batch, Map<Long, KnowledgeDoc> docById) {
+        Map<String, float[]> remote = Collections.emptyMap();
+        List<String> remoteIds = batch.stream().map(KnowledgeChunk::getVectorId).filter(Objects::nonNull).toList();
+        if (!remoteIds.isEmpty() && remoteMilvusService.isConnected()) {
+            try {
+                remote = remoteMilvusService.getVectors(remoteIds);
+            } catch (Exception e) {
+                log.warn("从Milvus读取向量失败，改为重新向量化: {}", e.getMessage());
+            }
+        }
+
+        List<KnowledgeChunk> toEmbed = new ArrayList<>();
+        List<float[]> vectors = new ArrayList<>(batch.size());
+        List<KnowledgeChunk> ordered = new ArrayList<>(batch.size());
+        for (KnowledgeChunk chunk : batch) {
+            float[] vector = chunk.getVectorId() != null ? remote.get(chunk.getVectorId()) : null;
+            if (vector != null) {
+                ordered.add(chunk);
+                vectors.add(vector);
+            } else {
+                toEmbed.add(chunk);
+            }
+        }
+        boolean embedded = true;
+        if (!toEmbed.isEmpty()) {
+            try {
+                vectors.addAll(embeddingService.embedBatch(toEmbed.stream().map(KnowledgeChunk::getContent).toList()));
+                ordered.addAll(toEmbed);
+            } catch (Exception e) {
+                log.warn("补齐本地向量时向量化失败: {}", e.getMessage());
+                embedded = false;
+            }
+        }
+
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < ordered.size(); i++) {
+                KnowledgeChunk chunk = ordered.get(i);
+                if (slotByChunkId.containsKey(chunk.getId())) {
+                    continue;
+                }
+                String vectorId = chunk.getVectorId() != null ? chunk.getVectorId() : UUID.randomUUID().toString();
+                addSlot(chunk.getId(), VectorMath.normalize(vectors.get(i)), vectorId, metadataOf(chunk, docById));
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            log.error("写入本地向量索引失败: {}", e.getMessage());
+            return false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return embedded;
+    }
+
+    /**
+     * 分批把存储区中的槽位加入图，期间的新写入由后续批次追上；追平后写入直接入图
+     */
+    private void buildGraph() throws InterruptedException {
+        while (true) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedException();
+            }
+            lock.writeLock().lock();
+            try {
+                int end = Math.min(arena.size(), graph.size() + 256);
+                for (int slot = graph.size(); slot < end; slot++) {
+                    graph.add(slot);
+                }
+                if (graph.size() == arena.size()) {
+                    graphLive = true;
+                    return;
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    // ========== 槽位操作（调用方持有写锁） ==========
+
+    private void addSlot(long chunkId, float[] normalized, String vectorId, SlotMetadata metadata) throws IOException {
+        file.append(chunkId, normalized);
+        int slot = arena.add(chunkId, normalized);
+        ensureMetadataCapacity(slot + 1);
+        setMetadata(slot, vectorId, metadata);
+        slotByChunkId.put(chunkId, slot);
+        if (graphLive) {
+            graph.add(slot);
+        }
+    }
+
+    private void deleteSlot(int slot) {
+        if (arena.delete(slot)) {
+            countLive(slot, -1);
+            file.markDeleted(slot);
+            slotByChunkId.remove(arena.id(slot));
+            if (vectorIds[slot] != null) {
+                slotByVectorId.remove(vectorIds[slot]);
+            }
+        }
+    }
+
+    private void deleteWhere(IntPredicate condition) {
+        if (mode == Mode.OFF) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            for (int slot = 0; slot < arena.size(); slot++) {
+                if (!arena.isDeleted(slot) && condition.test(slot)) {
+                    deleteSlot(slot);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void setMetadata(int slot, String vectorId, SlotMetadata metadata) {
+        countLive(slot, -1);
+        docIds[slot] = metadata.docId() != null ? metadata.docId() : 0L;
+        contents[slot] = metadata.content();
+        categories[slot] = metadata.category();
+        countLive(slot, 1);
+        pageNumbers[slot] = metadata.pageNumber() != null ? metadata.pageNumber() : 0;
+        titles[slot] = metadata.title();
+        if (vectorIds[slot] != null) {
+            slotByVectorId.remove(vectorIds[slot]);
+        }
+        vectorIds[slot] = vectorId;
+        if (vectorId != null) {
+            slotByVectorId.put(vectorId, slot);
+        }
+    }
+
+    /**
+     * 按槽位当前的分类、文档更新计数（加载后尚未补齐元数据的槽位不计数）
+     */
+    private void countLive(int slot, int delta) {
+        if (categories[slot] != null) {
+            liveByCategory.merge(categories[slot], delta, (a, b) -> a + b == 0 ? null : a + b);
+        }
+        if (docIds[slot] != 0L) {
+            liveByDocId.merge(docIds[slot], delta, (a, b) -> a + b == 0 ? null : a + b);
+        }
+    }
+
+    private void ensureMetadataCapacity(int required) {
+        if (docIds.length >= required) {
+            return;
+        }
+        int capacity = Math.max(required, Math.max(16, docIds.length * 2));
+        docIds = Arrays.copyOf(docIds, capacity);
+        contents = Arrays.copyOf(contents, capacity);
+        categories = Arrays.copyOf(categories, capacity);
+        pageNumbers = Arrays.copyOf(pageNumbers, capacity);
+        titles = Arrays.copyOf(titles, capacity);
+        vectorIds = Arrays.copyOf(vectorIds, capacity);
+    }
+
+    private static SlotMetadata metadataOf(KnowledgeChunk chunk, Map<Long, KnowledgeDoc> docById) {
+        KnowledgeDoc doc = docById.get(chunk.getDocId());
+        String category = doc != null && doc.getCategory() != null ? doc.getCategory() : "default";
+        return new SlotMetadata(chunk.getDocId(), chunk.getContent(), category,
+                chunk.getPageNumber(), doc != null ? doc.getTitle() : null);
+    }
+
+    /**
+     * 槽位的检索载荷（与Milvus中的标量字段对应）
+     */
+    private record SlotMetadata(Long docId, String content, String category, Integer pageNumber, String title) {}
+}
@@ -0,0 +1,501 @@
+package com.echocampus.bot.service.impl;
+
+import com.echocampus.bot.common.exception.BusinessException;
+import com.echocampus.bot.config.AiServiceConfig;
+import com.echocampus.bot.config.MilvusConfig;
+import com.echocampus.bot.entity.KnowledgeChunk;
+import com.echocampus.bot.entity.KnowledgeDoc;
+import com.echocampus.bot.entity.SystemConfig;
+import com.echocampus.bot.mapper.KnowledgeChunkMapper;
+import com.echocampus.bot.mapper.SystemConfigMapper;
+import com.echocampus.bot.service.EmbeddingService;
+import com.echocampus.bot.service.retrieval.KnowledgeDocCache;
+import com.echocampus.bot.utils.DateTimeUtil;
+import com.echocampus.bot.vector.MilvusIndexProfile;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Milvus集合在线重建任务（蓝绿切换）
+ * <p>
+ * 新建版本集合（配置名_v{n}）并在后台写入全部向量，完成并加载后重放重建期间的写入，再把别名原子切换到新集合；
+ * 切换前检索一直访问旧集合。数据来源有两种：
+ * <ul>
+ *     <li>复制：从当前集合分批复制现有向量，用于只更换索引类型或参数</li>
+ *     <li>重新向量化：按ID顺序分页读取 knowledge_chunks，以有限并发重新生成向量，用于更换Embedding模型或维度</li>
+ * </ul>
+ * 重新向量化的进度不依赖内存：每页先比对新集合中该切块ID范围内已有的向量，删除数据库中已不存在的、
+ * 只向量化缺失的。新集合和Embedding模型记录在 system_config 中，进程崩溃或任务失败后再次发起
+ * （或重启时自动）会沿用同一新集合继续，已写入的切块不再重复向量化。同一时间只允许一个重建任务。
+ * <p>
+ * 更换模型时，当前集合由哪个模型生成同样记录在 system_config 中：启动时若与配置的模型不同，
+ * 检索和写入继续使用记录的旧模型，新集合用配置的模型单独向量化；重建期间写入当前集合的切块在切换前
+ * 按内容用新模型重新向量化后重放，别名切换的同时切换当前模型，并重置本地向量索引。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class MilvusIndexRebuildService {
+
+    /** system_config 中记录未完成的重新向量化任务的配置键 */
+    static final String CHECKPOINT_KEY = "milvus.rebuild.checkpoint";
+
+    /** system_config 中记录当前集合由哪个Embedding模型生成的配置键 */
+    static final String COLLECTION_MODEL_KEY = "milvus.collection.embedding-model";
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private final MilvusServiceImpl milvusService;
+    private final LocalVectorService localVectorService;
+    private final KnowledgeChunkMapper knowledgeChunkMapper;
+    private final KnowledgeDocCache knowledgeDocCache;
+    private final SystemConfigMapper systemConfigMapper;
+    private final EmbeddingService embeddingService;
+    private final MilvusConfig milvusConfig;
+    private final AiServiceConfig aiConfig;
+
+    private ExecutorService executor;
+
+    private volatile String state = "IDLE";
+    private volatile String mode;
+    private volatile String targetCollection;
+    private volatile MilvusIndexProfile targetProfile;
+    private volatile long total;
+    private final AtomicInteger copied = new AtomicInteger();
+    private final AtomicInteger embedded = new AtomicInteger();
+    private volatile String error;
+    private volatile LocalDateTime startedAt;
+    private volatile LocalDateTime finishedAt;
+
+    @PostConstruct
+    public void init() {
+        restoreCollectionModel();
+        executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "milvus-index-rebuild");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.submit(this::resumeOnStartup);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 当前集合的索引参数
+     */
+    public MilvusIndexProfile currentProfile() {
+        return milvusService.getIndexProfile();
+    }
+
+    /**
+     * 启动在线重建，新集合创建成功后立即返回，写入和切换在后台执行
+     *
+     * @param profile 新的索引参数
+     * @param reembed 是否从 knowledge_chunks 重新向量化
+     * @return 重建状态
+     * @throws BusinessException Milvus未连接、已有重建在进行、维度变更却未重新向量化或创建新集合失败
+     */
+    public synchronized Map<String, Object> start(MilvusIndexProfile profile, boolean reembed) {
+        if (!milvusService.isConnected()) {
+            throw new BusinessException("Milvus未连接，无法重建索引");
+        }
+        if ("RUNNING".equals(state)) {
+            throw new BusinessException("已有索引重建在进行: " + targetCollection);
+        }
+        int dimension = aiConfig.getEmbedding().getDimension();
+        if (!reembed && milvusService.getCollectionDimension() != dimension) {
+            throw new BusinessException("向量维度已变更（现有 " + milvusService.getCollectionDimension()
+                    + "，当前模型 " + dimension + "），需重新向量化重建");
+        }
+        try {
+            if (reembed) {
+                startReembed(profile, dimension);
+            } else {
+                String target = milvusService.beginRebuild(profile);
+                begin("COPY", target, profile);
+                executor.submit(() -> runCopy(target, profile));
+            }
+        } catch (IllegalStateException e) {
+            throw new BusinessException(e.getMessage());
+        }
+        return getStatus();
+    }
+
+    /**
+     * 重建进度及当前索引状态
+     */
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>(milvusService.getIndexStatus());
+        Map<String, Object> job = new LinkedHashMap<>();
+        job.put("state", state);
+        job.put("mode", mode);
+        job.put("targetCollection", targetCollection);
+        job.put("targetProfile", targetProfile);
+        job.put("total", total);
+        job.put("copied", copied.get());
+        job.put("embedded", embedded.get());
+        job.put("error", error);
+        job.put("startedAt", startedAt);
+        job.put("finishedAt", finishedAt);
+        status.put("rebuild", job);
+        return status;
+    }
+
+    /**
+     * 启动时继续未完成的重新向量化任务；没有未完成任务而集合维度与配置的模型不一致时按配置自动发起。
+     * 启动期间已手动发起重建时不再处理
+     */
+    private synchronized void resumeOnStartup() {
+        if (!milvusService.isConnected() || "RUNNING".equals(state)) {
+            return;
+        }
+        try {
+            Checkpoint checkpoint = loadCheckpoint();
+            if (checkpoint != null) {
+                log.info("发现未完成的Milvus集合重建: {}，继续执行", checkpoint.collection());
+                start(checkpoint.profile(), true);
+            } else if (Boolean.TRUE.equals(milvusConfig.getAutoRebuildOnDimensionChange())
+                    && milvusService.getCollectionDimension() > 0
+                    && milvusService.getCollectionDimension() != aiConfig.getEmbedding().getDimension()) {
+                log.info("Milvus集合维度 {} 与配置的模型维度 {} 不一致，自动重新向量化重建",
+                        milvusService.getCollectionDimension(), aiConfig.getEmbedding().getDimension());
+                start(milvusService.getIndexProfile(), true);
+            }
+        } catch (Exception e) {
+            log.error("启动时继续Milvus集合重建失败: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 当前集合由记录的模型生成，与配置的模型不同时（已改配置、尚未重建完成）继续使用记录的模型；
+     * 没有记录时视为由配置的模型生成
+     */
+    private void restoreCollectionModel() {
+        EmbeddingService.EmbeddingModel configured = configuredModel();
+        try {
+            EmbeddingService.EmbeddingModel recorded = loadConfig(COLLECTION_MODEL_KEY, EmbeddingService.EmbeddingModel.class);
+            if (recorded == null) {
+                saveCollectionModel(configured);
+            } else if (!recorded.equals(configured)) {
+                log.warn("当前集合由Embedding模型 {}（{}维）生成，与配置的 {}（{}维）不同，重新向量化重建完成前继续使用 {}",
+                        recorded.name(), recorded.dimension(), configured.name(), configured.dimension(), recorded.name());
+                embeddingService.activate(recorded);
+            }
+        } catch (Exception e) {
+            log.warn("读取当前集合的Embedding模型失败，使用配置的模型: {}", e.getMessage());
+        }
+    }
+
+    private EmbeddingService.EmbeddingModel configuredModel() {
+        return new EmbeddingService.EmbeddingModel(aiConfig.getEmbedding().getModel(), aiConfig.getEmbedding().getDimension());
+    }
+
+    /**
+     * 模型和维度与记录一致且新集合仍在时沿用记录的新集合，否则删除旧记录的集合后新建
+     */
+    private void startReembed(MilvusIndexProfile profile, int dimension) {
+        String model = aiConfig.getEmbedding().getModel();
+        Checkpoint checkpoint = loadCheckpoint();
+        String target = null;
+        if (checkpoint != null) {
+            if (checkpoint.model().equals(model) && checkpoint.dimension() == dimension
+                    && milvusService.resumeRebuild(checkpoint.collection())) {
+                target = checkpoint.collection();
+                profile = checkpoint.profile();
+            } else {
+                log.info("放弃未完成的重建集合 {}（模型或维度已变化，或集合不存在）", checkpoint.collection());
+                milvusService.abortRebuild(checkpoint.collection());
+                deleteCheckpoint();
+            }
+        }
+        if (target == null) {
+            target = milvusService.beginRebuild(profile, dimension);
+            saveCheckpoint(new Checkpoint(target, model, dimension, profile));
+        }
+        begin("REEMBED", target, profile);
+        String collection = target;
+        MilvusIndexProfile targetIndex = profile;
+        EmbeddingService.EmbeddingModel targetModel = new EmbeddingService.EmbeddingModel(model, dimension);
+        executor.submit(() -> runReembed(collection, targetIndex, targetModel));
+    }
+
+    private void begin(String jobMode, String target, MilvusIndexProfile profile) {
+        state = "RUNNING";
+        mode = jobMode;
+        targetCollection = target;
+        targetProfile = profile;
+        total = 0;
+        copied.set(0);
+        embedded.set(0);
+        error = null;
+        startedAt = DateTimeUtil.now();
+        finishedAt = null;
+    }
+
+    private void runCopy(String target, MilvusIndexProfile profile) {
+        try {
+            List<String> vectorIds = knowledgeChunkMapper.selectVectorIds();
+            total = vectorIds.size();
+            int batchSize = Math.max(1, milvusConfig.getRebuildBatchSize());
+            for (int from = 0; from < vectorIds.size(); from += batchSize) {
+                List<String> batch = vectorIds.subList(from, Math.min(from + batchSize, vectorIds.size()));
+                milvusService.copyVectors(target, batch);
+                copied.addAndGet(batch.size());
+            }
+            log.info("向量复制完成: {} 条 -> {}，等待索引构建", total, target);
+            milvusService.completeRebuild(target, profile, milvusConfig.getRebuildTimeoutMinutes(), TimeUnit.MINUTES);
+            state = "COMPLETED";
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            fail(target, "重建被中断", true);
+        } catch (Exception e) {
+            log.error("Milvus索引在线重建失败: {}", target, e);
+            fail(target, e.getMessage(), true);
+        } finally {
+            finishedAt = DateTimeUtil.now();
+        }
+    }
+
+    private void runReembed(String target, MilvusIndexProfile profile, EmbeddingService.EmbeddingModel model) {
+        EmbeddingService targetEmbedding = embeddingService.forModel(model);
+        int concurrency = Math.max(1, milvusConfig.getRebuildEmbedConcurrency());
+        AtomicInteger threadIndex = new AtomicInteger();
+        ExecutorService embedPool = Executors.newFixedThreadPool(concurrency, r -> {
+            Thread thread = new Thread(r, "milvus-reembed-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            total = knowledgeChunkMapper.selectCount(null);
+            int batchSize = Math.max(1, milvusConfig.getRebuildBatchSize());
+            // 读取下一页前先取得许可，同时向量化的页数不超过并发数
+            Semaphore permits = new Semaphore(concurrency);
+            AtomicReference<Exception> failure = new AtomicReference<>();
+            long afterId = 0;
+            while (failure.get() == null) {
+                List<KnowledgeChunk> page = knowledgeChunkMapper.selectIndexSourcesAfter(afterId, batchSize);
+                boolean last = page.size() < batchSize;
+                long fromChunkId = afterId + 1;
+                // 最后一页的范围延伸到末尾，清理新集合中ID更大的已删除切块
+                long toChunkId = last ? Long.MAX_VALUE : page.get(page.size() - 1).getId();
+                permits.acquire();
+                embedPool.submit(() -> {
+                    try {
+                        if (failure.get() == null) {
+                            reembedPage(target, targetEmbedding, page, fromChunkId, toChunkId);
+                        }
+                    } catch (Exception e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        permits.release();
+                    }
+                });
+                if (last) {
+                    break;
+                }
+                afterId = toChunkId;
+            }
+            permits.acquire(concurrency);
+            if (failure.get() != null) {
+                throw failure.get();
+            }
+            log.info("重新向量化完成: {} 个切块，其中新向量化 {} 个 -> {}，等待索引构建", copied.get(), embedded.get(), target);
+            // 重建期间的写入由旧模型向量化，重放前按内容重新生成；切换别名的同时切换当前模型
+            milvusService.completeRebuild(target, profile, milvusConfig.getRebuildTimeoutMinutes(), TimeUnit.MINUTES,
+                    contents -> embedChecked(targetEmbedding, contents), () -> switchModel(model));
+            deleteCheckpoint();
+            localVectorService.reset(model.dimension());
+            state = "COMPLETED";
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            fail(target, "重建被中断，重新发起可继续", false);
+        } catch (Exception e) {
+            log.error("Milvus集合重新向量化重建失败: {}", target, e);
+            fail(target, e.getMessage() + "（重新发起可继续）", false);
+        } finally {
+            embedPool.shutdownNow();
+            finishedAt = DateTimeUtil.now();
+        }
+    }
+
+    /**
+     * 比对新集合中 [fromChunkId, toChunkId] 范围内的向量：删除数据库中已不存在的，只向量化缺失的切块。
+     * 没有向量ID的切块（此前写入失败）生成新的向量ID并回写数据库。
+     */
+    private void reembedPage(String target, EmbeddingService targetEmbedding, List<KnowledgeChunk> page,
+                             long fromChunkId, long toChunkId) {
+        Map<String, Long> existing = milvusService.vectorIdsInRange(target, fromChunkId, toChunkId);
+        Set<String> live = new HashSet<>();
+        page.forEach(c -> {
+            if (c.getVectorId() != null) {
+                live.add(c.getVectorId());
+            }
+        });
+        List<String> stale = existing.keySet().stream().filter(id -> !live.contains(id)).toList();
+        milvusService.deleteVectors(target, stale);
+
+        List<KnowledgeChunk> missing = page.stream()
+                .filter(c -> c.getVectorId() == null || !existing.containsKey(c.getVectorId()))
+                .toList();
+        if (!missing.isEmpty()) {
+            List<float[]> vectors = embedChecked(targetEmbedding, missing.stream().map(KnowledgeChunk::getContent).toList());
+            List<KnowledgeChunk> assigned = new ArrayList<>();
+            for (KnowledgeChunk chunk : missing) {
+                if (chunk.getVectorId() == null) {
+                    chunk.setVectorId(UUID.randomUUID().toString());
+                    assigned.add(chunk);
+                }
+            }
+            Map<Long, KnowledgeDoc> docs = knowledgeDocCache.getAll(
+                    missing.stream().map(KnowledgeChunk::getDocId).distinct().toList());
+            List<String> categories = new ArrayList<>(missing.size());
+            List<String> titles = new ArrayList<>(missing.size());
+            for (KnowledgeChunk chunk : missing) {
+                KnowledgeDoc doc = docs.get(chunk.getDocId());
+                categories.add(doc != null && doc.getCategory() != null ? doc.getCategory() : "default");
+                titles.add(doc != null ? doc.getTitle() : null);
+            }
+            milvusService.upsertVectors(target,
+                    missing.stream().map(KnowledgeChunk::getVectorId).toList(),
+                    vectors,
+                    missing.stream().map(KnowledgeChunk::getId).toList(),
+                    missing.stream().map(KnowledgeChunk::getDocId).toList(),
+                    missing.stream().map(KnowledgeChunk::getContent).toList(),
+                    categories,
+                    missing.stream().map(KnowledgeChunk::getPageNumber).toList(),
+                    titles);
+            if (!assigned.isEmpty()) {
+                knowledgeChunkMapper.updateVectorIds(assigned);
+            }
+            embedded.addAndGet(missing.size());
+        }
+        copied.addAndGet(page.size());
+    }
+
+    /**
+     * Embedding服务失败时返回零向量，不能写入新集合
+     */
+    private static List<float[]> embedChecked(EmbeddingService targetEmbedding, List<String> contents) {
+        List<float[]> vectors = targetEmbedding.embedBatch(contents);
+        if (vectors.size() != contents.size() || vectors.stream().anyMatch(MilvusIndexRebuildService::isZero)) {
+            throw new IllegalStateException("向量化失败: " + contents.size() + " 个切块的一批");
+        }
+        return vectors;
+    }
+
+    /**
+     * 别名切换时执行（持有Milvus写锁）：切换当前模型并记录，记录失败只告警，下次启动前仍按新模型检索
+     */
+    private void switchModel(EmbeddingService.EmbeddingModel model) {
+        embeddingService.activate(model);
+        try {
+            saveCollectionModel(model);
+        } catch (Exception e) {
+            log.warn("记录当前集合的Embedding模型失败: {}", e.getMessage());
+        }
+    }
+
+    private void fail(String target, String message, boolean drop) {
+        try {
+            if (drop) {
+                milvusService.abortRebuild(target);
+            } else {
+                milvusService.suspendRebuild();
+            }
+        } catch (Exception e) {
+            log.warn("清理未完成的重建集合失败: {}", target, e);
+        }
+        error = message;
+        state = "FAILED";
+    }
+
+    private static boolean isZero(float[] vector) {
+        if (vector == null) {
+            return true;
+        }
+        for (float v : vector) {
+            if (v != 0f) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Checkpoint loadCheckpoint() {
+        return loadConfig(CHECKPOINT_KEY, Checkpoint.class);
+    }
+
+    private void saveCheckpoint(Checkpoint checkpoint) {
+        saveConfig(CHECKPOINT_KEY, checkpoint, "未完成的Milvus集合重建（新集合、Embedding模型及维度），完成后自动删除");
+    }
+
+    private void saveCollectionModel(EmbeddingService.EmbeddingModel model) {
+        saveConfig(COLLECTION_MODEL_KEY, model, "当前Milvus集合中的向量由哪个Embedding模型生成，重新向量化重建切换时更新");
+    }
+
+    private <T> T loadConfig(String key, Class<T> type) {
+        SystemConfig config = systemConfigMapper.selectByKey(key);
+        if (config == null || config.getConfigValue() == null) {
+            return null;
+        }
+        try {
+            return JSON.readValue(config.getConfigValue(), type);
+        } catch (Exception e) {
+            log.warn("无法解析配置 {}，忽略: {}", key, e.getMessage());
+            return null;
+        }
+    }
+
+    private void saveConfig(String key, Object value, String description) {
+        String json;
+        try {
+            json = JSON.writeValueAsString(value);
+        } catch (Exception e) {
+            throw new IllegalStateException("序列化配置失败: " + key, e);
+        }
+        if (systemConfigMapper.selectByKey(key) != null) {
+            systemConfigMapper.updateValueByKey(key, json);
+            return;
+        }
+        SystemConfig config = new SystemConfig();
+        config.setConfigKey(key);
+        config.setConfigValue(json);
+        config.setConfigType("JSON");
+        config.setDescription(description);
+        config.setIsEditable(false);
+        systemConfigMapper.insert(config);
+    }
+
+    private void deleteCheckpoint() {
+        SystemConfig config = systemConfigMapper.selectByKey(CHECKPOINT_KEY);
+        if (config != null) {
+            systemConfigMapper.deleteById(config.getId());
+        }
+    }
+
+    /**
+     * 未完成的重新向量化任务
+     *
+     * @param collection 新集合名称
+     * @param model 生成向量的Embedding模型
+     * @param dimension 向量维度
+     * @param profile 新集合的索引参数
+     */
+    record Checkpoint(String collection, String model, int dimension, MilvusIndexProfile profile) {}
+}
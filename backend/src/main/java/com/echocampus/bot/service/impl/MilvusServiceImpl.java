@@ -2,11 +2,19 @@ package com.echocampus.bot.service.impl;
 
 import com.echocampus.bot.config.MilvusConfig;
 import com.echocampus.bot.service.MilvusService;
+import com.echocampus.bot.vector.MilvusGrpcAdapter;
+import com.echocampus.bot.vector.MilvusIndexProfile;
+import com.echocampus.bot.vector.MilvusVectorCodec;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.NullNode;
 import io.milvus.client.MilvusServiceClient;
 import io.milvus.grpc.*;
 import io.milvus.param.*;
 import io.milvus.param.collection.*;
 import io.milvus.param.dml.*;
+import io.milvus.param.alias.AlterAliasParam;
+import io.milvus.param.alias.CreateAliasParam;
 import io.milvus.param.index.*;
 import io.milvus.response.QueryResultsWrapper;
 import io.milvus.response.SearchResultsWrapper;
@@ -19,7 +27,12 @@ import org.springframework.stereotype.Service;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * Milvus向量数据库服务实现
@@ -30,14 +43,72 @@ import java.util.concurrent.TimeUnit;
 public class MilvusServiceImpl implements MilvusService {
 
     private final MilvusConfig milvusConfig;
+    private MilvusGrpcAdapter grpcAdapter;
     private MilvusServiceClient milvusClient;
 
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    /**
+     * 按 topK 和检索预算缓存的检索请求模板（除查询向量外的部分），检索时只替换向量占位符
+     */
+    private final Map<TemplateKey, SearchRequest> searchTemplates = new ConcurrentHashMap<>();
+
+    /**
+     * 读写请求使用的集合名称：配置的集合名（别名或旧版的实际集合）
+     */
+    private volatile String collection;
+
+    /**
+     * 配置的集合名当前对应的实际集合
+     */
+    private volatile String physicalCollection;
+
+    /**
+     * 当前集合的索引参数，决定检索参数的类型和取值
+     */
+    private volatile MilvusIndexProfile indexProfile;
+
+    /**
+     * 在线重建期间记录的写入（重建完成前按顺序重放到新集合），不在重建时为null
+     */
+    private volatile List<PendingWrite> pendingWrites;
+
+    /**
+     * 写入持有读锁，切换集合持有写锁，保证切换前的写入都已记录并重放
+     */
+    private final ReentrantReadWriteLock switchLock = new ReentrantReadWriteLock();
+
     private static final String FIELD_ID = "id";
     private static final String FIELD_VECTOR = "vector";
     private static final String FIELD_CHUNK_ID = "chunk_id";
     private static final String FIELD_DOC_ID = "doc_id";
     private static final String FIELD_CONTENT = "content";
     private static final String FIELD_CATEGORY = "category";
+    private static final String FIELD_PAGE_NUMBER = "page_number";
+    private static final String FIELD_TITLE = "title";
+
+    private static final Set<String> SCHEMA_FIELDS = Set.of(FIELD_ID, FIELD_VECTOR, FIELD_CHUNK_ID, FIELD_DOC_ID,
+            FIELD_CONTENT, FIELD_CATEGORY, FIELD_PAGE_NUMBER, FIELD_TITLE);
+    private static final long INDEX_POLL_INTERVAL_MS = 2000;
+
+    /** 标题字段最大长度（字节），写入前按字符截断到 TITLE_MAX_CHARS 以内 */
+    private static final int TITLE_MAX_LENGTH = 1024;
+    private static final int TITLE_MAX_CHARS = 300;
+
+    /**
+     * 集合是否包含页码、标题载荷字段（旧版本创建的集合没有，需重建集合后才能免回查数据库）
+     */
+    private volatile boolean payloadFields;
+
+    /**
+     * category 字段是否为分区键：是则按分类过滤的检索和删除只访问对应分区，否则退化为全集合的标量过滤
+     */
+    private volatile boolean partitionKey;
+
+    /**
+     * 当前集合的向量维度，与配置不一致时需重新向量化重建版本集合
+     */
+    private volatile int collectionDimension;
 
     @PostConstruct
     public void init() {
@@ -56,13 +127,18 @@ public class MilvusServiceImpl implements MilvusService {
                     .withConnectTimeout(5, TimeUnit.SECONDS) // 5秒超时
                     .build();
             
-            milvusClient = new MilvusServiceClient(connectParam);
+            grpcAdapter = new MilvusGrpcAdapter(connectParam);
+            milvusClient = grpcAdapter.client();
             log.info("Milvus连接成功: {}:{}", milvusConfig.getHost(), milvusConfig.getPort());
             
             // 初始化集合
             initCollection();
         } catch (Exception e) {
             log.warn("Milvus连接失败，向量功能将暂时禁用: {}", e.getMessage());
+            if (grpcAdapter != null) {
+                grpcAdapter.close();
+            }
+            grpcAdapter = null;
             milvusClient = null;
         }
     }
@@ -81,8 +157,8 @@ public class MilvusServiceImpl implements MilvusService {
 
     @PreDestroy
     public void destroy() {
-        if (milvusClient != null) {
-            milvusClient.close();
+        if (grpcAdapter != null) {
+            grpcAdapter.close();
             log.info("Milvus连接已关闭");
         }
     }
@@ -95,6 +171,8 @@ public class MilvusServiceImpl implements MilvusService {
         }
 
         String collectionName = milvusConfig.getCollectionName();
+        collection = collectionName;
+        searchTemplates.clear();
         
         // 检查集合是否存在
         R<Boolean> hasCollection = milvusClient.hasCollection(
@@ -104,7 +182,6 @@ public class MilvusServiceImpl implements MilvusService {
         );
 
         if (hasCollection.getData()) {
-            // 检查维度是否匹配
             R<DescribeCollectionResponse> descResp = milvusClient.describeCollection(
                     DescribeCollectionParam.newBuilder()
                             .withCollectionName(collectionName)
@@ -112,41 +189,57 @@ public class MilvusServiceImpl implements MilvusService {
             );
             
             if (descResp.getStatus() == R.Status.Success.getCode()) {
-                // 检查vector字段的维度
-                for (FieldSchema field : descResp.getData().getSchema().getFieldsList()) {
-                    if (FIELD_VECTOR.equals(field.getName())) {
-                        long existingDim = field.getTypeParamsList().stream()
-                                .filter(p -> "dim".equals(p.getKey()))
-                                .findFirst()
-                                .map(p -> Long.parseLong(p.getValue()))
-                                .orElse(0L);
-                        
-                        if (existingDim != milvusConfig.getDimension()) {
-                            log.warn("Milvus集合维度不匹配! 现有:{}, 配置:{}, 将删除并重建集合", 
-                                    existingDim, milvusConfig.getDimension());
-                            dropCollection();
-                            break;
-                        }
-                    }
+                // 配置的名称是别名时，describe 返回别名指向的实际集合
+                physicalCollection = descResp.getData().getCollectionName();
+                Set<String> fieldNames = new HashSet<>();
+                descResp.getData().getSchema().getFieldsList().forEach(f -> fieldNames.add(f.getName()));
+                payloadFields = fieldNames.contains(FIELD_PAGE_NUMBER) && fieldNames.contains(FIELD_TITLE);
+                if (!payloadFields) {
+                    log.warn("Milvus集合缺少 {}/{} 字段，检索结果需回查数据库；重建版本集合后生效",
+                            FIELD_PAGE_NUMBER, FIELD_TITLE);
+                }
+                partitionKey = descResp.getData().getSchema().getFieldsList().stream()
+                        .anyMatch(f -> FIELD_CATEGORY.equals(f.getName()) && f.getIsPartitionKey());
+                if (!partitionKey) {
+                    log.warn("Milvus集合的 {} 字段不是分区键，按分类过滤将扫描全部数据；重建版本集合后生效",
+                            FIELD_CATEGORY);
+                }
+
+                // 维度不匹配时保留现有集合继续服务，由重建任务在后台按新维度重新向量化后切换
+                collectionDimension = dimensionOf(descResp.getData());
+                if (collectionDimension != milvusConfig.getDimension()) {
+                    log.warn("Milvus集合维度不匹配! 现有:{}, 配置:{}，切换前继续使用现有集合，需按新维度重建版本集合",
+                            collectionDimension, milvusConfig.getDimension());
                 }
             }
-            
-            // 重新检查集合是否存在
-            hasCollection = milvusClient.hasCollection(
-                    HasCollectionParam.newBuilder()
-                            .withCollectionName(collectionName)
-                            .build()
-            );
-            
-            if (hasCollection.getData()) {
-                log.info("Milvus集合已存在: {}", collectionName);
-                // 加载集合到内存
-                loadCollection();
-                return;
-            }
+
+            log.info("Milvus集合已存在: {}{}", collectionName,
+                    collectionName.equals(physicalCollection) ? "" : "（别名，指向 " + physicalCollection + "）");
+            indexProfile = describeIndexProfile(collectionName);
+            // 加载集合到内存
+            loadCollection(collectionName);
+            return;
         }
 
-        // 创建集合
+        if (!createCollection(collectionName, MilvusIndexProfile.from(milvusConfig), milvusConfig.getDimension())) {
+            return;
+        }
+        physicalCollection = collectionName;
+        payloadFields = true;
+        partitionKey = true;
+        collectionDimension = milvusConfig.getDimension();
+
+        // 加载集合
+        loadCollection(collectionName);
+    }
+
+    /**
+     * 创建集合并按索引参数建索引
+     *
+     * @param dimension 向量维度
+     * @return 是否创建成功
+     */
+    private boolean createCollection(String collectionName, MilvusIndexProfile profile, int dimension) {
         FieldType idField = FieldType.newBuilder()
                 .withName(FIELD_ID)
                 .withDataType(DataType.VarChar)
@@ -158,7 +251,7 @@ public class MilvusServiceImpl implements MilvusService {
         FieldType vectorField = FieldType.newBuilder()
                 .withName(FIELD_VECTOR)
                 .withDataType(DataType.FloatVector)
-                .withDimension(milvusConfig.getDimension())
+                .withDimension(dimension)
                 .build();
 
         FieldType chunkIdField = FieldType.newBuilder()
@@ -181,56 +274,132 @@ public class MilvusServiceImpl implements MilvusService {
                 .withName(FIELD_CATEGORY)
                 .withDataType(DataType.VarChar)
                 .withMaxLength(100)
+                .withPartitionKey(true)
+                .build();
+
+        FieldType pageNumberField = FieldType.newBuilder()
+                .withName(FIELD_PAGE_NUMBER)
+                .withDataType(DataType.Int32)
+                .build();
+
+        FieldType titleField = FieldType.newBuilder()
+                .withName(FIELD_TITLE)
+                .withDataType(DataType.VarChar)
+                .withMaxLength(TITLE_MAX_LENGTH)
                 .build();
 
         CreateCollectionParam createCollectionParam = CreateCollectionParam.newBuilder()
                 .withCollectionName(collectionName)
                 .withDescription("EchoCampus知识库向量集合")
+                .withPartitionsNum(milvusConfig.getPartitionNum())
                 .addFieldType(idField)
                 .addFieldType(vectorField)
                 .addFieldType(chunkIdField)
                 .addFieldType(docIdField)
                 .addFieldType(contentField)
                 .addFieldType(categoryField)
+                .addFieldType(pageNumberField)
+                .addFieldType(titleField)
                 .build();
 
         R<RpcStatus> createResult = milvusClient.createCollection(createCollectionParam);
         if (createResult.getStatus() != R.Status.Success.getCode()) {
             log.error("创建Milvus集合失败: {}", createResult.getMessage());
-            return;
+            return false;
         }
-
-        log.info("Milvus集合创建成功: {}", collectionName);
+        log.info("Milvus集合创建成功: {}, 分区数={}", collectionName, milvusConfig.getPartitionNum());
 
         // 创建索引
-        createIndex();
-
-        // 加载集合
-        loadCollection();
+        createIndex(collectionName, profile);
+        return true;
     }
 
-    private void createIndex() {
-        String collectionName = milvusConfig.getCollectionName();
-        
+    private void createIndex(String collectionName, MilvusIndexProfile profile) {
         CreateIndexParam createIndexParam = CreateIndexParam.newBuilder()
                 .withCollectionName(collectionName)
                 .withFieldName(FIELD_VECTOR)
-                .withIndexType(IndexType.valueOf(milvusConfig.getIndexType()))
-                .withMetricType(MetricType.valueOf(milvusConfig.getMetricType()))
-                .withExtraParam("{\"nlist\":" + milvusConfig.getNlist() + "}")
+                .withIndexType(IndexType.valueOf(profile.indexType()))
+                .withMetricType(MetricType.valueOf(profile.metricType()))
+                .withExtraParam(profile.indexParams())
                 .build();
 
         R<RpcStatus> createIndexResult = milvusClient.createIndex(createIndexParam);
         if (createIndexResult.getStatus() == R.Status.Success.getCode()) {
-            log.info("Milvus索引创建成功");
+            indexProfile = collectionName.equals(collection) ? profile : indexProfile;
+            log.info("Milvus索引创建成功: collection={}, type={}, params={}",
+                    collectionName, profile.indexType(), profile.indexParams());
         } else {
             log.error("Milvus索引创建失败: {}", createIndexResult.getMessage());
         }
     }
 
-    private void loadCollection() {
-        String collectionName = milvusConfig.getCollectionName();
-        
+    /**
+     * 读取集合现有索引的类型和参数，读取失败时按配置
+     */
+    private MilvusIndexProfile describeIndexProfile(String collectionName) {
+        MilvusIndexProfile configured = MilvusIndexProfile.from(milvusConfig);
+        try {
+            R<DescribeIndexResponse> response = milvusClient.describeIndex(DescribeIndexParam.newBuilder()
+                    .withCollectionName(collectionName)
+                    .build());
+            IndexDescription index = response.getStatus() == R.Status.Success.getCode()
+                    ? vectorIndex(response.getData()) : null;
+            if (index == null) {
+                return configured;
+            }
+            Map<String, String> params = new HashMap<>();
+            index.getParamsList().forEach(kv -> params.put(kv.getKey(), kv.getValue()));
+            MilvusIndexProfile profile = indexProfileOf(configured, params);
+            if (!profile.indexType().equals(configured.indexType())) {
+                log.info("Milvus集合现有索引为 {}（配置为 {}），检索参数按现有索引；更换索引需在线重建",
+                        profile.indexType(), configured.indexType());
+            }
+            return profile;
+        } catch (Exception e) {
+            log.warn("读取Milvus索引信息失败，检索参数按配置: {}", e.getMessage());
+            return configured;
+        }
+    }
+
+    /**
+     * 以现有索引的类型和建索引参数覆盖配置（describeIndex 返回 index_type、metric_type 及 JSON 格式的 params）
+     */
+    static MilvusIndexProfile indexProfileOf(MilvusIndexProfile configured, Map<String, String> describe) {
+        String type = describe.getOrDefault("index_type", configured.indexType());
+        if (!MilvusIndexProfile.SUPPORTED_TYPES.contains(type)) {
+            return configured;
+        }
+        JsonNode params = NullNode.getInstance();
+        try {
+            params = JSON.readTree(describe.getOrDefault("params", "{}"));
+        } catch (Exception ignored) {
+            // 参数无法解析时沿用配置
+        }
+        return new MilvusIndexProfile(type, describe.getOrDefault("metric_type", configured.metricType()),
+                params.path("nlist").asInt(configured.nlist()), configured.nprobe(),
+                params.path("m").asInt(configured.pqM()), params.path("nbits").asInt(configured.pqNbits()),
+                params.path("M").asInt(configured.hnswM()), params.path("efConstruction").asInt(configured.efConstruction()),
+                configured.ef(), configured.searchList());
+    }
+
+    private static int dimensionOf(DescribeCollectionResponse response) {
+        return response.getSchema().getFieldsList().stream()
+                .filter(f -> FIELD_VECTOR.equals(f.getName()))
+                .flatMap(f -> f.getTypeParamsList().stream())
+                .filter(p -> "dim".equals(p.getKey()))
+                .findFirst()
+                .map(p -> Integer.parseInt(p.getValue()))
+                .orElse(0);
+    }
+
+    private static IndexDescription vectorIndex(DescribeIndexResponse response) {
+        return response.getIndexDescriptionsList().stream()
+                .filter(d -> FIELD_VECTOR.equals(d.getFieldName()))
+                .findFirst()
+                .orElse(null);
+    }
+
+    private void loadCollection(String collectionName) {
         R<RpcStatus> loadResult = milvusClient.loadCollection(
                 LoadCollectionParam.newBuilder()
                         .withCollectionName(collectionName)
@@ -247,9 +416,7 @@ public class MilvusServiceImpl implements MilvusService {
     /**
      * 删除集合
      */
-    private void dropCollection() {
-        String collectionName = milvusConfig.getCollectionName();
-        
+    private void dropCollection(String collectionName) {
         try {
             // 先释放集合
             milvusClient.releaseCollection(
@@ -277,7 +444,8 @@ public class MilvusServiceImpl implements MilvusService {
 
     @Override
     public List<String> insertVectors(List<float[]> vectors, List<Long> chunkIds, List<Long> docIds,
-                                       List<String> contents, List<String> categories) {
+                                       List<String> contents, List<String> categories,
+                                       List<Integer> pageNumbers, List<String> titles) {
         if (milvusClient == null || vectors.isEmpty()) {
             return Collections.emptyList();
         }
@@ -288,34 +456,38 @@ public class MilvusServiceImpl implements MilvusService {
             vectorIds.add(UUID.randomUUID().toString());
         }
 
-        // 转换向量格式
-        List<List<Float>> vectorList = new ArrayList<>();
-        for (float[] vector : vectors) {
-            List<Float> floatList = new ArrayList<>();
-            for (float v : vector) {
-                floatList.add(v);
-            }
-            vectorList.add(floatList);
+        // 直接构建gRPC请求：向量不经过 List<Float> 装箱，也省去 SDK 每次写入前的 describeCollection
+        InsertRequest.Builder request = InsertRequest.newBuilder()
+                .setBase(MsgBase.newBuilder().setMsgType(MsgType.Insert))
+                .setNumRows(vectors.size())
+                .addFieldsData(stringField(FIELD_ID, vectorIds))
+                .addFieldsData(MilvusVectorCodec.floatVectorField(FIELD_VECTOR, vectors))
+                .addFieldsData(longField(FIELD_CHUNK_ID, chunkIds))
+                .addFieldsData(longField(FIELD_DOC_ID, docIds))
+                .addFieldsData(stringField(FIELD_CONTENT, contents))
+                .addFieldsData(stringField(FIELD_CATEGORY, categories));
+        if (payloadFields) {
+            // Milvus标量字段不支持null，无页码时写0
+            request.addFieldsData(intField(FIELD_PAGE_NUMBER,
+                    pageNumbers.stream().map(p -> p != null ? p : 0).toList()));
+            request.addFieldsData(stringField(FIELD_TITLE,
+                    titles.stream().map(MilvusServiceImpl::truncateTitle).toList()));
         }
 
-        // 构建插入数据
-        List<InsertParam.Field> fields = new ArrayList<>();
-        fields.add(new InsertParam.Field(FIELD_ID, vectorIds));
-        fields.add(new InsertParam.Field(FIELD_VECTOR, vectorList));
-        fields.add(new InsertParam.Field(FIELD_CHUNK_ID, chunkIds));
-        fields.add(new InsertParam.Field(FIELD_DOC_ID, docIds));
-        fields.add(new InsertParam.Field(FIELD_CONTENT, contents));
-        fields.add(new InsertParam.Field(FIELD_CATEGORY, categories));
-
-        InsertParam insertParam = InsertParam.newBuilder()
-                .withCollectionName(milvusConfig.getCollectionName())
-                .withFields(fields)
-                .build();
-
-        R<MutationResult> insertResult = milvusClient.insert(insertParam);
-        if (insertResult.getStatus() != R.Status.Success.getCode()) {
-            log.error("向量插入失败: {}", insertResult.getMessage());
+        switchLock.readLock().lock();
+        try {
+            InsertRequest insert = request.setCollectionName(collection).build();
+            MutationResult insertResult = grpcAdapter.blockingStub().insert(insert);
+            if (!isSuccess(insertResult.getStatus())) {
+                log.error("向量插入失败: {}", insertResult.getStatus().getReason());
+                return Collections.emptyList();
+            }
+            recordWrite(new PendingWrite(insert.getFieldsDataList(), insert.getNumRows(), null));
+        } catch (Exception e) {
+            log.error("向量插入失败: {}", e.getMessage());
             return Collections.emptyList();
+        } finally {
+            switchLock.readLock().unlock();
         }
 
         log.info("成功插入 {} 条向量", vectors.size());
@@ -323,84 +495,117 @@ public class MilvusServiceImpl implements MilvusService {
     }
 
     @Override
-    public List<SearchResult> search(float[] queryVector, int topK, float threshold) {
-        if (milvusClient == null) {
-            return Collections.emptyList();
+    public List<SearchResult> search(float[] queryVector, int topK, float threshold, SearchFilter filter) {
+        return search(queryVector, topK, threshold, filter, null);
+    }
+
+    @Override
+    public List<SearchResult> search(float[] queryVector, int topK, float threshold, SearchFilter filter,
+                                     SearchBudget budget) {
+        return searchBatch(List.of(queryVector), topK, threshold, filter, budget).get(0);
+    }
+
+    @Override
+    public List<List<SearchResult>> searchBatch(List<float[]> queryVectors, int topK, float threshold,
+                                                SearchFilter filter) {
+        return searchBatch(queryVectors, topK, threshold, filter, null);
+    }
+
+    /**
+     * 一次请求检索多个查询向量（PlaceholderGroup 中放入全部向量，nq 为向量数）
+     */
+    @Override
+    public List<List<SearchResult>> searchBatch(List<float[]> queryVectors, int topK, float threshold,
+                                                SearchFilter filter, SearchBudget budget) {
+        List<List<SearchResult>> batchResults = new ArrayList<>(queryVectors.size());
+        queryVectors.forEach(v -> batchResults.add(new ArrayList<>()));
+        if (milvusClient == null || queryVectors.isEmpty()) {
+            return batchResults;
         }
 
-        // 转换查询向量格式
-        List<Float> queryVectorList = new ArrayList<>();
-        for (float v : queryVector) {
-            queryVectorList.add(v);
+        SearchRequest.Builder request = searchTemplate(topK, budget).toBuilder()
+                .setPlaceholderGroup(MilvusVectorCodec.placeholderGroup(queryVectors))
+                .setNq(queryVectors.size());
+        if (filter != null && !filter.isEmpty()) {
+            // 表达式中包含分区键时Milvus只检索对应分区
+            request.setDsl(filterExpression(filter));
         }
 
-        SearchParam searchParam = SearchParam.newBuilder()
-                .withCollectionName(milvusConfig.getCollectionName())
-                .withMetricType(MetricType.valueOf(milvusConfig.getMetricType()))
-                .withOutFields(Arrays.asList(FIELD_ID, FIELD_CHUNK_ID, FIELD_DOC_ID, FIELD_CONTENT, FIELD_CATEGORY))
-                .withTopK(topK)
-                .withVectors(Collections.singletonList(queryVectorList))
-                .withVectorFieldName(FIELD_VECTOR)
-                .withParams("{\"nprobe\":" + milvusConfig.getNprobe() + "}")
-                .build();
+        SearchResults searchResult;
+        try {
+            searchResult = grpcAdapter.blockingStub().search(request.build());
+        } catch (Exception e) {
+            log.error("向量搜索失败: {}", e.getMessage());
+            return batchResults;
+        }
+        if (!isSuccess(searchResult.getStatus())) {
+            log.error("向量搜索失败: {}", searchResult.getStatus().getReason());
+            return batchResults;
+        }
 
-        R<SearchResults> searchResult = milvusClient.search(searchParam);
-        if (searchResult.getStatus() != R.Status.Success.getCode()) {
-            log.error("向量搜索失败: {}", searchResult.getMessage());
-            return Collections.emptyList();
+        SearchResultsWrapper wrapper = new SearchResultsWrapper(searchResult.getResults());
+        int total = 0;
+        for (int q = 0; q < queryVectors.size(); q++) {
+            List<SearchResult> results = batchResults.get(q);
+            List<QueryResultsWrapper.RowRecord> rows = wrapper.getRowRecords(q);
+            for (int i = 0; i < rows.size(); i++) {
+                QueryResultsWrapper.RowRecord row = rows.get(i);
+                float score = wrapper.getIDScore(q).get(i).getScore();
+
+                // COSINE相似度，分数越高越相似，转换为0-1范围
+                float similarity = (1 + score) / 2;
+
+                if (similarity < threshold) {
+                    continue;
+                }
+                results.add(toSearchResult(row, similarity));
+            }
+            total += results.size();
         }
 
-        List<SearchResult> results = new ArrayList<>();
-        SearchResultsWrapper wrapper = new SearchResultsWrapper(searchResult.getData().getResults());
-        
-        if (wrapper.getRowRecords(0).isEmpty()) {
-            return results;
+        log.info("向量搜索完成，查询数 {}，返回 {} 条结果", queryVectors.size(), total);
+        return batchResults;
+    }
+
+    private SearchResult toSearchResult(QueryResultsWrapper.RowRecord row, float similarity) {
+        SearchResult result = new SearchResult();
+
+        // 安全获取字段值，处理类型转换
+        Object idObj = row.get(FIELD_ID);
+        result.setVectorId(idObj != null ? idObj.toString() : "");
+
+        Object chunkIdObj = row.get(FIELD_CHUNK_ID);
+        if (chunkIdObj instanceof Long) {
+            result.setChunkId((Long) chunkIdObj);
+        } else if (chunkIdObj != null) {
+            result.setChunkId(Long.parseLong(chunkIdObj.toString()));
         }
 
-        for (int i = 0; i < wrapper.getRowRecords(0).size(); i++) {
-            QueryResultsWrapper.RowRecord row = wrapper.getRowRecords(0).get(i);
-            float score = (float) wrapper.getIDScore(0).get(i).getScore();
-            
-            // COSINE相似度，分数越高越相似，转换为0-1范围
-            float similarity = (1 + score) / 2;
-            
-            if (similarity < threshold) {
-                continue;
-            }
+        Object docIdObj = row.get(FIELD_DOC_ID);
+        if (docIdObj instanceof Long) {
+            result.setDocId((Long) docIdObj);
+        } else if (docIdObj != null) {
+            result.setDocId(Long.parseLong(docIdObj.toString()));
+        }
 
-            SearchResult result = new SearchResult();
-            
-            // 安全获取字段值，处理类型转换
-            Object idObj = row.get(FIELD_ID);
-            result.setVectorId(idObj != null ? idObj.toString() : "");
-            
-            Object chunkIdObj = row.get(FIELD_CHUNK_ID);
-            if (chunkIdObj instanceof Long) {
-                result.setChunkId((Long) chunkIdObj);
-            } else if (chunkIdObj != null) {
-                result.setChunkId(Long.parseLong(chunkIdObj.toString()));
-            }
-            
-            Object docIdObj = row.get(FIELD_DOC_ID);
-            if (docIdObj instanceof Long) {
-                result.setDocId((Long) docIdObj);
-            } else if (docIdObj != null) {
-                result.setDocId(Long.parseLong(docIdObj.toString()));
+        Object contentObj = row.get(FIELD_CONTENT);
+        result.setContent(contentObj != null ? contentObj.toString() : "");
+
+        Object categoryObj = row.get(FIELD_CATEGORY);
+        result.setCategory(categoryObj != null ? categoryObj.toString() : "");
+
+        if (payloadFields) {
+            Object pageObj = row.get(FIELD_PAGE_NUMBER);
+            if (pageObj instanceof Number page && page.intValue() > 0) {
+                result.setPageNumber(page.intValue());
             }
-            
-            Object contentObj = row.get(FIELD_CONTENT);
-            result.setContent(contentObj != null ? contentObj.toString() : "");
-            
-            Object categoryObj = row.get(FIELD_CATEGORY);
-            result.setCategory(categoryObj != null ? categoryObj.toString() : "");
-            
-            result.setScore(similarity);
-            
-            results.add(result);
+            Object titleObj = row.get(FIELD_TITLE);
+            result.setTitle(titleObj != null ? titleObj.toString() : "");
+            result.setPayloadLoaded(contentObj != null);
         }
 
-        log.info("向量搜索完成，返回 {} 条结果", results.size());
-        return results;
+        result.setScore(similarity);
+        return result;
     }
 
     @Override
@@ -411,12 +616,7 @@ public class MilvusServiceImpl implements MilvusService {
 
         String expr = FIELD_ID + " in [\"" + String.join("\",\"", vectorIds) + "\"]";
         
-        DeleteParam deleteParam = DeleteParam.newBuilder()
-                .withCollectionName(milvusConfig.getCollectionName())
-                .withExpr(expr)
-                .build();
-
-        R<MutationResult> deleteResult = milvusClient.delete(deleteParam);
+        R<MutationResult> deleteResult = delete(expr);
         if (deleteResult.getStatus() == R.Status.Success.getCode()) {
             log.info("成功删除 {} 条向量", vectorIds.size());
         } else {
@@ -425,19 +625,63 @@ public class MilvusServiceImpl implements MilvusService {
     }
 
     @Override
-    public void deleteByDocId(Long docId) {
-        if (milvusClient == null) {
+    public void deleteByChunkIds(List<Long> chunkIds) {
+        if (milvusClient == null || chunkIds.isEmpty()) {
             return;
         }
 
-        String expr = FIELD_DOC_ID + " == " + docId;
-        
-        DeleteParam deleteParam = DeleteParam.newBuilder()
-                .withCollectionName(milvusConfig.getCollectionName())
+        String expr = FIELD_CHUNK_ID + " in " + chunkIds;
+
+        R<MutationResult> deleteResult = delete(expr);
+        if (deleteResult.getStatus() == R.Status.Success.getCode()) {
+            log.info("成功删除 {} 个切块的向量", chunkIds.size());
+        } else {
+            log.error("按切块删除向量失败: {}", deleteResult.getMessage());
+        }
+    }
+
+    @Override
+    public Map<String, float[]> getVectors(List<String> vectorIds) {
+        if (milvusClient == null || vectorIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        String expr = FIELD_ID + " in [\"" + String.join("\",\"", vectorIds) + "\"]";
+
+        QueryParam queryParam = QueryParam.newBuilder()
+                .withCollectionName(collection)
                 .withExpr(expr)
+                .withOutFields(Arrays.asList(FIELD_ID, FIELD_VECTOR))
                 .build();
 
-        R<MutationResult> deleteResult = milvusClient.delete(deleteParam);
+        R<QueryResults> queryResult = milvusClient.query(queryParam);
+        if (queryResult.getStatus() != R.Status.Success.getCode()) {
+            log.warn("读取向量失败: {}", queryResult.getMessage());
+            return Collections.emptyMap();
+        }
+
+        Map<String, float[]> vectors = new HashMap<>();
+        QueryResultsWrapper wrapper = new QueryResultsWrapper(queryResult.getData());
+        for (QueryResultsWrapper.RowRecord row : wrapper.getRowRecords()) {
+            Object idObj = row.get(FIELD_ID);
+            if (idObj != null && row.get(FIELD_VECTOR) instanceof List<?> values) {
+                float[] vector = new float[values.size()];
+                for (int i = 0; i < vector.length; i++) {
+                    vector[i] = ((Number) values.get(i)).floatValue();
+                }
+                vectors.put(idObj.toString(), vector);
+            }
+        }
+        return vectors;
+    }
+
+    @Override
+    public void deleteByDocId(Long docId, String category) {
+        if (milvusClient == null) {
+            return;
+        }
+
+        R<MutationResult> deleteResult = delete(docDeleteExpression(docId, category, partitionKey));
         if (deleteResult.getStatus() == R.Status.Success.getCode()) {
             log.info("成功删除文档 {} 的所有向量", docId);
         } else {
@@ -453,7 +697,7 @@ public class MilvusServiceImpl implements MilvusService {
 
         R<GetCollectionStatisticsResponse> statsResult = milvusClient.getCollectionStatistics(
                 GetCollectionStatisticsParam.newBuilder()
-                        .withCollectionName(milvusConfig.getCollectionName())
+                        .withCollectionName(collection)
                         .build()
         );
 
@@ -467,6 +711,614 @@ public class MilvusServiceImpl implements MilvusService {
         return 0;
     }
 
+    /**
+     * 检索请求模板：用SDK转换一次参数（占位向量任意），之后只替换 PlaceholderGroup
+     */
+    private SearchRequest searchTemplate(int topK, SearchBudget budget) {
+        MilvusIndexProfile profile = indexProfile != null ? indexProfile : MilvusIndexProfile.from(milvusConfig);
+        return searchTemplates.computeIfAbsent(new TemplateKey(collection, profile, topK, budget), k -> ParamUtils.convertSearchParam(SearchParam.newBuilder()
+                .withCollectionName(collection)
+                .withMetricType(MetricType.valueOf(profile.metricType()))
+                .withOutFields(outputFields())
+                .withTopK(topK)
+                .withVectors(Collections.singletonList(Collections.singletonList(0f)))
+                .withVectorFieldName(FIELD_VECTOR)
+                .withParams(profile.searchParams(budget, topK))
+                .build()));
+    }
+
+    /**
+     * 删除并在重建期间记录删除条件
+     */
+    private R<MutationResult> delete(String expr) {
+        switchLock.readLock().lock();
+        try {
+            R<MutationResult> result = milvusClient.delete(DeleteParam.newBuilder()
+                    .withCollectionName(collection)
+                    .withExpr(expr)
+                    .build());
+            if (result.getStatus() == R.Status.Success.getCode()) {
+                recordWrite(new PendingWrite(null, 0, expr));
+            }
+            return result;
+        } finally {
+            switchLock.readLock().unlock();
+        }
+    }
+
+    private void recordWrite(PendingWrite write) {
+        List<PendingWrite> writes = pendingWrites;
+        if (writes != null) {
+            writes.add(write);
+        }
+    }
+
+    /**
+     * 构建按文档删除的表达式
+     * <p>
+     * 分类条件只用于按分区键裁剪分区；集合没有分区键时只按 doc_id 删除，
+     * 否则多出的分类条件不会加快删除，文档改过分类时还会漏删旧分类下的向量。
+     */
+    static String docDeleteExpression(Long docId, String category, boolean partitionKey) {
+        String expr = FIELD_DOC_ID + " == " + docId;
+        if (category != null && partitionKey) {
+            expr = FIELD_CATEGORY + " == " + quote(category) + " && " + expr;
+        }
+        return expr;
+    }
+
+    /**
+     * 构建检索过滤表达式，如 category in ["课程","教务"] && doc_id in [3,5]
+     */
+    static String filterExpression(SearchFilter filter) {
+        List<String> conditions = new ArrayList<>(2);
+        if (!filter.categories().isEmpty()) {
+            StringJoiner values = new StringJoiner(",", "[", "]");
+            filter.categories().stream().sorted().map(MilvusServiceImpl::quote).forEach(values::add);
+            conditions.add(FIELD_CATEGORY + " in " + values);
+        }
+        if (!filter.docIds().isEmpty()) {
+            conditions.add(FIELD_DOC_ID + " in " + filter.docIds().stream().sorted().toList());
+        }
+        return String.join(" && ", conditions);
+    }
+
+    /**
+     * 表达式中的字符串字面量，转义反斜杠和双引号
+     */
+    private static String quote(String value) {
+        return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    private List<String> outputFields() {
+        List<String> fields = new ArrayList<>(List.of(FIELD_ID, FIELD_CHUNK_ID, FIELD_DOC_ID, FIELD_CONTENT, FIELD_CATEGORY));
+        if (payloadFields) {
+            fields.add(FIELD_PAGE_NUMBER);
+            fields.add(FIELD_TITLE);
+        }
+        return fields;
+    }
+
+    private static String truncateTitle(String title) {
+        if (title == null) {
+            return "";
+        }
+        return title.length() > TITLE_MAX_CHARS ? title.substring(0, TITLE_MAX_CHARS) : title;
+    }
+
+    private static FieldData stringField(String name, List<String> values) {
+        return FieldData.newBuilder()
+                .setFieldName(name)
+                .setType(DataType.VarChar)
+                .setScalars(ScalarField.newBuilder().setStringData(StringArray.newBuilder().addAllData(values)))
+                .build();
+    }
+
+    private static FieldData longField(String name, List<Long> values) {
+        return FieldData.newBuilder()
+                .setFieldName(name)
+                .setType(DataType.Int64)
+                .setScalars(ScalarField.newBuilder().setLongData(LongArray.newBuilder().addAllData(values)))
+                .build();
+    }
+
+    private static FieldData intField(String name, List<Integer> values) {
+        return FieldData.newBuilder()
+                .setFieldName(name)
+                .setType(DataType.Int32)
+                .setScalars(ScalarField.newBuilder().setIntData(IntArray.newBuilder().addAllData(values)))
+                .build();
+    }
+
+    private static boolean isSuccess(io.milvus.grpc.Status status) {
+        return status.getCode() == 0;
+    }
+
+    /**
+     * 在线重建第一步：按索引参数创建新版本集合（配置名_v{n}），并开始记录之后的写入
+     *
+     * @return 新集合名称
+     * @throws IllegalStateException Milvus未连接、已有重建在进行或创建失败
+     */
+    public String beginRebuild(MilvusIndexProfile profile) {
+        return beginRebuild(profile, collectionDimension > 0 ? collectionDimension : milvusConfig.getDimension());
+    }
+
+    /**
+     * 按指定维度创建新版本集合（更换Embedding模型或维度时，新集合的向量需重新生成）
+     *
+     * @param dimension 新集合的向量维度
+     * @return 新集合名称
+     * @throws IllegalStateException Milvus未连接、已有重建在进行或创建失败
+     */
+    public String beginRebuild(MilvusIndexProfile profile, int dimension) {
+        requireClient();
+        switchLock.writeLock().lock();
+        try {
+            if (pendingWrites != null) {
+                throw new IllegalStateException("已有索引重建在进行");
+            }
+            String name = nextVersionName();
+            if (!createCollection(name, profile, dimension)) {
+                throw new IllegalStateException("创建Milvus集合失败: " + name);
+            }
+            pendingWrites = Collections.synchronizedList(new ArrayList<>());
+            log.info("开始在线重建Milvus索引: {} -> {}, dim={}, type={}, params={}",
+                    physicalCollection, name, dimension, profile.indexType(), profile.indexParams());
+            return name;
+        } finally {
+            switchLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 继续进程重启前未完成的重建：新集合仍存在时重新开始记录写入
+     *
+     * @return 新集合是否存在（不存在时需重新开始）
+     * @throws IllegalStateException Milvus未连接或已有重建在进行
+     */
+    public boolean resumeRebuild(String newCollection) {
+        requireClient();
+        switchLock.writeLock().lock();
+        try {
+            if (pendingWrites != null) {
+                throw new IllegalStateException("已有索引重建在进行");
+            }
+            R<Boolean> exists = milvusClient.hasCollection(HasCollectionParam.newBuilder()
+                    .withCollectionName(newCollection)
+                    .build());
+            if (exists.getStatus() != R.Status.Success.getCode() || !Boolean.TRUE.equals(exists.getData())) {
+                return false;
+            }
+            pendingWrites = Collections.synchronizedList(new ArrayList<>());
+            log.info("继续未完成的Milvus集合重建: {} -> {}", physicalCollection, newCollection);
+            return true;
+        } finally {
+            switchLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 集合的向量维度
+     *
+     * @return 维度，集合不存在或读取失败时返回0
+     */
+    public int getCollectionDimension(String collectionName) {
+        requireClient();
+        R<DescribeCollectionResponse> response = milvusClient.describeCollection(DescribeCollectionParam.newBuilder()
+                .withCollectionName(collectionName)
+                .build());
+        return response.getStatus() == R.Status.Success.getCode() ? dimensionOf(response.getData()) : 0;
+    }
+
+    /**
+     * 当前集合的向量维度（启动时读取，切换集合后更新）
+     */
+    public int getCollectionDimension() {
+        return collectionDimension;
+    }
+
+    /**
+     * 读取新集合中切块ID在 [fromChunkId, toChunkId] 范围内的向量ID，用于重新向量化时跳过已写入的切块
+     */
+    public Map<String, Long> vectorIdsInRange(String targetCollection, long fromChunkId, long toChunkId) {
+        requireClient();
+        R<QueryResults> result = milvusClient.query(QueryParam.newBuilder()
+                .withCollectionName(targetCollection)
+                .withExpr(FIELD_CHUNK_ID + " >= " + fromChunkId + " && " + FIELD_CHUNK_ID + " <= " + toChunkId)
+                .withOutFields(List.of(FIELD_ID, FIELD_CHUNK_ID))
+                .build());
+        if (result.getStatus() != R.Status.Success.getCode()) {
+            throw new IllegalStateException("读取新集合失败: " + result.getMessage());
+        }
+        Map<String, Long> ids = new HashMap<>();
+        for (QueryResultsWrapper.RowRecord row : new QueryResultsWrapper(result.getData()).getRowRecords()) {
+            if (row.get(FIELD_ID) != null && row.get(FIELD_CHUNK_ID) instanceof Number chunkId) {
+                ids.put(row.get(FIELD_ID).toString(), chunkId.longValue());
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * 从新集合删除向量（数据库中已不存在的切块）
+     */
+    public void deleteVectors(String targetCollection, Collection<String> vectorIds) {
+        requireClient();
+        if (vectorIds.isEmpty()) {
+            return;
+        }
+        StringJoiner ids = new StringJoiner(",", "[", "]");
+        vectorIds.forEach(id -> ids.add(quote(id)));
+        R<MutationResult> result = milvusClient.delete(DeleteParam.newBuilder()
+                .withCollectionName(targetCollection)
+                .withExpr(FIELD_ID + " in " + ids)
+                .build());
+        if (result.getStatus() != R.Status.Success.getCode()) {
+            throw new IllegalStateException("删除新集合向量失败: " + result.getMessage());
+        }
+    }
+
+    /**
+     * 以指定的向量ID写入新集合（upsert，重复写入无副作用），参数含义同 {@link #insertVectors}
+     */
+    public void upsertVectors(String targetCollection, List<String> vectorIds, List<float[]> vectors,
+                              List<Long> chunkIds, List<Long> docIds, List<String> contents,
+                              List<String> categories, List<Integer> pageNumbers, List<String> titles) {
+        requireClient();
+        if (vectors.isEmpty()) {
+            return;
+        }
+        List<FieldData> fields = List.of(
+                stringField(FIELD_ID, vectorIds),
+                MilvusVectorCodec.floatVectorField(FIELD_VECTOR, vectors),
+                longField(FIELD_CHUNK_ID, chunkIds),
+                longField(FIELD_DOC_ID, docIds),
+                stringField(FIELD_CONTENT, contents),
+                stringField(FIELD_CATEGORY, categories),
+                intField(FIELD_PAGE_NUMBER, pageNumbers.stream().map(p -> p != null ? p : 0).toList()),
+                stringField(FIELD_TITLE, titles.stream().map(MilvusServiceImpl::truncateTitle).toList()));
+        upsert(targetCollection, fields, vectors.size());
+    }
+
+    /**
+     * 在线重建第二步：按向量ID从当前集合读取一批向量及载荷，写入新集合（upsert，重复复制无副作用）
+     *
+     * @return 复制的行数（当前集合中不存在的ID不计）
+     */
+    public int copyVectors(String targetCollection, List<String> vectorIds) {
+        requireClient();
+        if (vectorIds.isEmpty()) {
+            return 0;
+        }
+        List<String> fields = new ArrayList<>(List.of(FIELD_ID, FIELD_VECTOR, FIELD_CHUNK_ID, FIELD_DOC_ID,
+                FIELD_CONTENT, FIELD_CATEGORY));
+        if (payloadFields) {
+            fields.add(FIELD_PAGE_NUMBER);
+            fields.add(FIELD_TITLE);
+        }
+        StringJoiner ids = new StringJoiner(",", "[", "]");
+        vectorIds.forEach(id -> ids.add(quote(id)));
+        R<QueryResults> result = milvusClient.query(QueryParam.newBuilder()
+                .withCollectionName(collection)
+                .withExpr(FIELD_ID + " in " + ids)
+                .withOutFields(fields)
+                .build());
+        if (result.getStatus() != R.Status.Success.getCode()) {
+            throw new IllegalStateException("读取向量失败: " + result.getMessage());
+        }
+        List<FieldData> data = result.getData().getFieldsDataList();
+        int rows = data.stream().filter(f -> FIELD_ID.equals(f.getFieldName())).findFirst()
+                .map(f -> f.getScalars().getStringData().getDataCount()).orElse(0);
+        if (rows > 0) {
+            upsert(targetCollection, data, rows);
+        }
+        return rows;
+    }
+
+    /**
+     * 在线重建第三步：等待新集合建完索引并加载，重放重建期间的写入，再把配置的集合名（别名）切换到新集合。
+     * 切换前检索一直访问旧集合；切换时短暂阻塞写入，不阻塞检索。
+     *
+     * @param timeout 等待索引构建的最长时间
+     */
+    public void completeRebuild(String newCollection, MilvusIndexProfile profile, long timeout, TimeUnit unit)
+            throws InterruptedException {
+        completeRebuild(newCollection, profile, timeout, unit, null, null);
+    }
+
+    /**
+     * 重新向量化重建的第三步：重建期间的写入来自当前模型，重放前用 reembed 按内容重新生成向量；
+     * onSwitch 在持有写锁、别名切换后执行（切换当前模型），此后的写入才使用新模型
+     *
+     * @param reembed 按内容重新生成向量，为 null 时原样重放
+     * @param onSwitch 别名切换后、释放写锁前执行，可为 null
+     */
+    public void completeRebuild(String newCollection, MilvusIndexProfile profile, long timeout, TimeUnit unit,
+                                Function<List<String>, List<float[]>> reembed, Runnable onSwitch)
+            throws InterruptedException {
+        requireClient();
+        milvusClient.flush(FlushParam.newBuilder().addCollectionName(newCollection).build());
+        awaitIndex(newCollection, System.nanoTime() + unit.toNanos(timeout));
+        R<RpcStatus> load = milvusClient.loadCollection(LoadCollectionParam.newBuilder()
+                .withCollectionName(newCollection)
+                .withSyncLoadWaitingTimeout(Constant.MAX_WAITING_LOADING_TIMEOUT)
+                .build());
+        if (load.getStatus() != R.Status.Success.getCode()) {
+            throw new IllegalStateException("加载新集合失败: " + load.getMessage());
+        }
+
+        // 先在锁外重放大部分写入，持有写锁时只需重放剩余的少量写入
+        replayPendingWrites(newCollection, reembed);
+        String previous;
+        switchLock.writeLock().lock();
+        try {
+            replayPendingWrites(newCollection, reembed);
+            previous = switchAlias(newCollection);
+            pendingWrites = null;
+            physicalCollection = newCollection;
+            indexProfile = profile;
+            payloadFields = true;
+            partitionKey = true;
+            collectionDimension = getCollectionDimension(newCollection);
+            searchTemplates.clear();
+            if (onSwitch != null) {
+                onSwitch.run();
+            }
+        } finally {
+            switchLock.writeLock().unlock();
+        }
+        log.info("Milvus索引在线重建完成: {} -> {}（别名 {}），type={}",
+                previous, newCollection, milvusConfig.getCollectionName(), profile.indexType());
+
+        // 旧集合释放内存后保留一个版本用于回退，更早的版本删除
+        if (previous != null) {
+            milvusClient.releaseCollection(ReleaseCollectionParam.newBuilder().withCollectionName(previous).build());
+        }
+        for (String name : versionedCollections().keySet()) {
+            if (!name.equals(newCollection) && !name.equals(previous)) {
+                dropCollection(name);
+            }
+        }
+    }
+
+    /**
+     * 暂停重建：停止记录写入，保留新集合以便之后通过 {@link #resumeRebuild} 继续
+     */
+    public void suspendRebuild() {
+        pendingWrites = null;
+    }
+
+    /**
+     * 放弃重建：停止记录写入并删除新集合，检索和写入仍使用当前集合
+     */
+    public void abortRebuild(String newCollection) {
+        pendingWrites = null;
+        if (milvusClient != null && newCollection != null) {
+            dropCollection(newCollection);
+        }
+    }
+
+    /**
+     * 当前索引状态：集合、索引参数、是否在重建及待重放的写入数
+     */
+    public Map<String, Object> getIndexStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("collection", milvusConfig.getCollectionName());
+        status.put("physicalCollection", physicalCollection);
+        status.put("indexProfile", indexProfile != null ? indexProfile : MilvusIndexProfile.from(milvusConfig));
+        status.put("dimension", collectionDimension);
+        status.put("configuredDimension", milvusConfig.getDimension());
+        List<PendingWrite> writes = pendingWrites;
+        status.put("rebuilding", writes != null);
+        status.put("pendingWrites", writes != null ? writes.size() : 0);
+        return status;
+    }
+
+    /**
+     * 当前集合的索引参数
+     */
+    public MilvusIndexProfile getIndexProfile() {
+        return indexProfile != null ? indexProfile : MilvusIndexProfile.from(milvusConfig);
+    }
+
+    private void replayPendingWrites(String targetCollection, Function<List<String>, List<float[]>> reembed) {
+        List<PendingWrite> writes = pendingWrites;
+        if (writes == null) {
+            return;
+        }
+        List<PendingWrite> batch;
+        synchronized (writes) {
+            batch = new ArrayList<>(writes);
+            writes.clear();
+        }
+        for (PendingWrite write : batch) {
+            if (write.deleteExpr() != null) {
+                R<MutationResult> result = milvusClient.delete(DeleteParam.newBuilder()
+                        .withCollectionName(targetCollection)
+                        .withExpr(write.deleteExpr())
+                        .build());
+                if (result.getStatus() != R.Status.Success.getCode()) {
+                    throw new IllegalStateException("重放删除失败: " + result.getMessage());
+                }
+            } else {
+                upsert(targetCollection, reembed != null ? reembedFields(write, reembed) : write.fields(),
+                        write.rows());
+            }
+        }
+        if (!batch.isEmpty()) {
+            log.info("已重放重建期间的 {} 次写入到 {}", batch.size(), targetCollection);
+        }
+    }
+
+    /**
+     * 按内容重新生成一次写入的向量字段，其余字段（包括向量ID）不变
+     */
+    private static List<FieldData> reembedFields(PendingWrite write, Function<List<String>, List<float[]>> reembed) {
+        List<String> contents = write.fields().stream()
+                .filter(f -> FIELD_CONTENT.equals(f.getFieldName()))
+                .findFirst()
+                .map(f -> f.getScalars().getStringData().getDataList())
+                .orElseThrow(() -> new IllegalStateException("重放写入缺少内容字段，无法重新向量化"));
+        List<float[]> vectors = reembed.apply(contents);
+        if (vectors.size() != write.rows()) {
+            throw new IllegalStateException("重放写入重新向量化失败: expected=" + write.rows() + ", actual=" + vectors.size());
+        }
+        List<FieldData> fields = new ArrayList<>(write.fields().size());
+        for (FieldData field : write.fields()) {
+            fields.add(FIELD_VECTOR.equals(field.getFieldName())
+                    ? MilvusVectorCodec.floatVectorField(FIELD_VECTOR, vectors) : field);
+        }
+        return fields;
+    }
+
+    /**
+     * 写入新集合，旧集合缺少的页码、标题字段补默认值
+     */
+    private void upsert(String targetCollection, List<FieldData> fields, int rows) {
+        UpsertRequest.Builder request = UpsertRequest.newBuilder()
+                .setBase(MsgBase.newBuilder().setMsgType(MsgType.Upsert))
+                .setCollectionName(targetCollection)
+                .setNumRows(rows);
+        Set<String> present = new HashSet<>();
+        for (FieldData field : fields) {
+            if (SCHEMA_FIELDS.contains(field.getFieldName())) {
+                request.addFieldsData(field);
+                present.add(field.getFieldName());
+            }
+        }
+        if (!present.contains(FIELD_PAGE_NUMBER)) {
+            request.addFieldsData(intField(FIELD_PAGE_NUMBER, Collections.nCopies(rows, 0)));
+        }
+        if (!present.contains(FIELD_TITLE)) {
+            request.addFieldsData(stringField(FIELD_TITLE, Collections.nCopies(rows, "")));
+        }
+        MutationResult result = grpcAdapter.blockingStub().upsert(request.build());
+        if (!isSuccess(result.getStatus())) {
+            throw new IllegalStateException("写入新集合失败: " + result.getStatus().getReason());
+        }
+    }
+
+    private void awaitIndex(String collectionName, long deadlineNanos) throws InterruptedException {
+        while (true) {
+            R<DescribeIndexResponse> response = milvusClient.describeIndex(DescribeIndexParam.newBuilder()
+                    .withCollectionName(collectionName)
+                    .build());
+            IndexDescription index = response.getStatus() == R.Status.Success.getCode()
+                    ? vectorIndex(response.getData()) : null;
+            if (index != null) {
+                if (index.getState() == IndexState.Failed) {
+                    throw new IllegalStateException("新集合索引构建失败: " + index.getIndexStateFailReason());
+                }
+                if (index.getState() == IndexState.Finished && index.getPendingIndexRows() == 0) {
+                    return;
+                }
+            }
+            if (System.nanoTime() > deadlineNanos) {
+                throw new IllegalStateException("等待新集合索引构建超时: " + collectionName);
+            }
+            Thread.sleep(INDEX_POLL_INTERVAL_MS);
+        }
+    }
+
+    /**
+     * 把配置的集合名指向新集合。旧版部署中配置名是实际集合，先改名为 配置名_v0 腾出名字再创建同名别名，
+     * 旧数据作为回退版本保留；创建别名失败时改回原名，继续使用旧集合
+     *
+     * @return 切换前实际使用的集合（旧版部署时为改名后的 配置名_v0）
+     */
+    private String switchAlias(String newCollection) {
+        String alias = milvusConfig.getCollectionName();
+        if (alias.equals(physicalCollection)) {
+            String legacy = alias + "_v0";
+            renameCollection(alias, legacy);
+            R<RpcStatus> created = milvusClient.createAlias(CreateAliasParam.newBuilder()
+                    .withCollectionName(newCollection)
+                    .withAlias(alias)
+                    .build());
+            if (created.getStatus() != R.Status.Success.getCode()) {
+                try {
+                    renameCollection(legacy, alias);
+                } catch (IllegalStateException e) {
+                    log.error("旧集合改回原名失败，需手动把 {} 改回 {}: {}", legacy, alias, e.getMessage());
+                }
+                throw new IllegalStateException("创建Milvus别名失败: " + created.getMessage());
+            }
+            log.info("旧版集合已改名为 {} 并保留为回退版本，{} 改为指向 {} 的别名", legacy, alias, newCollection);
+            return legacy;
+        }
+        R<RpcStatus> altered = milvusClient.alterAlias(AlterAliasParam.newBuilder()
+                .withCollectionName(newCollection)
+                .withAlias(alias)
+                .build());
+        if (altered.getStatus() != R.Status.Success.getCode()) {
+            throw new IllegalStateException("切换Milvus别名失败: " + altered.getMessage());
+        }
+        return physicalCollection;
+    }
+
+    private void renameCollection(String oldName, String newName) {
+        R<RpcStatus> renamed = milvusClient.renameCollection(RenameCollectionParam.newBuilder()
+                .withOldCollectionName(oldName)
+                .withNewCollectionName(newName)
+                .build());
+        if (renamed.getStatus() != R.Status.Success.getCode()) {
+            throw new IllegalStateException("重命名Milvus集合失败: " + oldName + " -> " + newName + ": "
+                    + renamed.getMessage());
+        }
+    }
+
+    /**
+     * 已有的版本集合（配置名_v{n}），按版本号排序
+     */
+    private Map<String, Integer> versionedCollections() {
+        R<ShowCollectionsResponse> response = milvusClient.showCollections(ShowCollectionsParam.newBuilder().build());
+        Map<String, Integer> versions = new TreeMap<>();
+        if (response.getStatus() != R.Status.Success.getCode()) {
+            return versions;
+        }
+        Pattern pattern = Pattern.compile(Pattern.quote(milvusConfig.getCollectionName()) + "_v(\\d+)");
+        for (String name : response.getData().getCollectionNamesList()) {
+            Matcher matcher = pattern.matcher(name);
+            if (matcher.matches()) {
+                versions.put(name, Integer.parseInt(matcher.group(1)));
+            }
+        }
+        return versions;
+    }
+
+    private String nextVersionName() {
+        int next = versionedCollections().values().stream().max(Integer::compare).orElse(0) + 1;
+        return milvusConfig.getCollectionName() + "_v" + next;
+    }
+
+    private void requireClient() {
+        if (milvusClient == null) {
+            throw new IllegalStateException("Milvus未连接");
+        }
+    }
+
+    /**
+     * 集合是否包含页码、标题载荷字段
+     */
+    public boolean hasPayloadFields() {
+        return payloadFields;
+    }
+
+    /**
+     * 集合的 category 字段是否为分区键
+     */
+    public boolean hasPartitionKey() {
+        return partitionKey;
+    }
+
+    /**
+     * 启动时是否已连接到Milvus（不发起请求）
+     */
+    public boolean isConnected() {
+        return milvusClient != null;
+    }
+
     @Override
     public boolean isAvailable() {
         if (milvusClient == null) {
@@ -477,7 +1329,7 @@ public class MilvusServiceImpl implements MilvusService {
             // 使用较短超时快速检查
             R<Boolean> result = milvusClient.hasCollection(
                     HasCollectionParam.newBuilder()
-                            .withCollectionName(milvusConfig.getCollectionName())
+                            .withCollectionName(collection)
                             .withDatabaseName("default")
                             .build()
             );
@@ -487,4 +1339,14 @@ public class MilvusServiceImpl implements MilvusService {
             return false;
         }
     }
+
+    /**
+     * 重建期间记录的写入：插入的字段数据，或删除条件
+     */
+    private record PendingWrite(List<FieldData> fields, int rows, String deleteExpr) {}
+
+    /**
+     * 检索请求模板的缓存键
+     */
+    private record TemplateKey(String collection, MilvusIndexProfile profile, int topK, SearchBudget budget) {}
 }
@@ -3,15 +3,19 @@ package com.echocampus.bot.service.impl;
 import com.echocampus.bot.entity.KnowledgeChunk;
 import com.echocampus.bot.entity.KnowledgeDoc;
 import com.echocampus.bot.entity.Message;
-import com.echocampus.bot.mapper.KnowledgeChunkMapper;
-import com.echocampus.bot.mapper.KnowledgeDocMapper;
 import com.echocampus.bot.service.*;
+import com.echocampus.bot.service.retrieval.ChunkHitResolver;
+import com.echocampus.bot.service.retrieval.ContextPacker;
+import com.echocampus.bot.service.retrieval.KnowledgeRetriever;
+import com.echocampus.bot.service.retrieval.NeighbourChunkExpander;
+import com.echocampus.bot.service.stream.StreamCancellation;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
@@ -23,11 +27,10 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class RagServiceImpl implements RagService {
 
-    private final EmbeddingService embeddingService;
     private final LlmService llmService;
-    private final MilvusService milvusService;
-    private final KnowledgeChunkMapper chunkMapper;
-    private final KnowledgeDocMapper docMapper;
+    private final KnowledgeRetriever knowledgeRetriever;
+    private final ContextPacker contextPacker;
+    private final NeighbourChunkExpander neighbourChunkExpander;
 
     @Value("${rag.top-k:5}")
     private int defaultTopK;
@@ -35,8 +38,6 @@ public class RagServiceImpl implements RagService {
     @Value("${rag.similarity-threshold:0.6}")
     private float similarityThreshold;
 
-    @Value("${rag.max-context-length:4000}")
-    private int maxContextLength;
 
     @Override
     public RagResponse answer(String question, List<Message> historyMessages, Long userId, Long conversationId) {
@@ -44,147 +45,99 @@ public class RagServiceImpl implements RagService {
         
         log.info("RAG问答开始: question={}, userId={}, historyCount={}", question, userId, historyMessages.size());
 
-        // 1. 检索相关知识片段
-        List<KnowledgeChunk> relevantChunks = retrieve(question, defaultTopK);
+        // 1. 检索相关知识片段（分数随检索结果一并返回）
+        RetrievalResult retrieval = retrieve(question, defaultTopK);
         
         // 2. 构建知识库上下文
-        String context = buildContext(relevantChunks);
+        String context = buildContext(retrieval);
         
         // 3. 生成回答（携带历史消息）
         String answer = llmService.ragAnswer(question, context, historyMessages);
         
-        // 4. 构建来源信息（需要从 Milvus 重新获取分数）
-        List<SourceInfo> sources = buildSourcesWithScores(relevantChunks, question);
+        // 4. 构建来源信息
+        List<SourceInfo> sources = buildSources(retrieval);
         
         long responseTime = System.currentTimeMillis() - startTime;
-        log.info("RAG问答完成: 耗时={}ms, 检索到{}个片段", responseTime, relevantChunks.size());
+        log.info("RAG问答完成: 耗时={}ms, 检索耗时={}ms, 检索到{}个片段", 
+                responseTime, retrieval.elapsedMs(), retrieval.chunks().size());
 
         return new RagResponse(answer, sources, responseTime);
     }
 
     @Override
-    public List<KnowledgeChunk> retrieve(String question, int topK) {
+    public RetrievalResult retrieve(String question) {
+        return retrieve(question, defaultTopK);
+    }
+
+    @Override
+    public RetrievalResult retrieve(String question, int topK) {
+        long startTime = System.currentTimeMillis();
         if (question == null || question.trim().isEmpty()) {
-            return Collections.emptyList();
+            return RetrievalResult.empty(topK, similarityThreshold, 0);
         }
 
         try {
-            // 1. 将问题向量化
-            float[] queryVector = embeddingService.embed(question);
-            
-            if (queryVector == null || allZeros(queryVector)) {
-                log.warn("问题向量化失败: {}", question);
-                return Collections.emptyList();
-            }
-
-            // 2. 在Milvus中搜索相似向量
-            List<MilvusService.SearchResult> searchResults = 
-                    milvusService.search(queryVector, topK, similarityThreshold);
-
-            if (searchResults.isEmpty()) {
+            // 按配置的策略检索（向量 / 向量+全文混合），载荷齐全时无需回查数据库，文档信息取自缓存
+            ChunkHitResolver.ResolvedHits hits = knowledgeRetriever.retrieve(question, topK);
+            List<KnowledgeChunk> chunks = hits.chunks();
+            if (chunks.isEmpty()) {
                 log.info("未找到相关知识片段: question={}", question);
-                return Collections.emptyList();
+                return RetrievalResult.empty(topK, similarityThreshold, System.currentTimeMillis() - startTime);
             }
 
-            // 3. 根据chunkId获取完整的知识片段
-            List<Long> chunkIds = searchResults.stream()
-                    .map(MilvusService.SearchResult::getChunkId)
-                    .collect(Collectors.toList());
-
-            List<KnowledgeChunk> chunks = chunkMapper.selectBatchIds(chunkIds);
-            
-            // 按搜索结果的顺序排序，并附加分数信息
-            Map<Long, Float> scoreMap = searchResults.stream()
-                    .collect(Collectors.toMap(
-                            MilvusService.SearchResult::getChunkId,
-                            MilvusService.SearchResult::getScore
-                    ));
-            
-            chunks.sort((a, b) -> {
-                Float scoreA = scoreMap.getOrDefault(a.getId(), 0f);
-                Float scoreB = scoreMap.getOrDefault(b.getId(), 0f);
-                return scoreB.compareTo(scoreA); // 降序
-            });
-
-            log.debug("检索到{}个相关知识片段", chunks.size());
-            // 将 scoreMap 附加到 chunks（通过创建包装对象或使用 Map）
-            // 这里我们需要修改 buildSources 方法来接收 scoreMap
-            return chunks;
+            long elapsed = System.currentTimeMillis() - startTime;
+            log.debug("检索到{}个相关知识片段, 耗时={}ms", chunks.size(), elapsed);
+            return new RetrievalResult(chunks, hits.scores(), hits.docs(), topK, similarityThreshold, elapsed);
 
         } catch (Exception e) {
             log.error("知识检索失败: {}", e.getMessage(), e);
-            return Collections.emptyList();
+            return RetrievalResult.empty(topK, similarityThreshold, System.currentTimeMillis() - startTime);
         }
     }
 
     /**
      * 构建上下文（包含文档元信息）
+     * <p>
+     * 排名靠前的片段先补充相邻切块（{@link NeighbourChunkExpander}），
+     * 再由 {@link ContextPacker} 按token预算去重、合并相邻片段后装入，不在句中截断
      */
-    private String buildContext(List<KnowledgeChunk> chunks) {
-        if (chunks.isEmpty()) {
+    private String buildContext(RetrievalResult retrieval) {
+        if (retrieval.isEmpty()) {
             return "";
         }
 
-        // 批量查询所有涉及的文档信息
-        Set<Long> docIds = chunks.stream()
-                .map(KnowledgeChunk::getDocId)
-                .collect(Collectors.toSet());
-        
-        Map<Long, KnowledgeDoc> docMap = new HashMap<>();
-        if (!docIds.isEmpty()) {
-            List<KnowledgeDoc> docs = docMapper.selectBatchIds(docIds);
-            docMap = docs.stream()
-                    .collect(Collectors.toMap(KnowledgeDoc::getId, doc -> doc));
-        }
+        List<ContextPacker.Span> spans = contextPacker.pack(neighbourChunkExpander.expand(
+                new ChunkHitResolver.ResolvedHits(retrieval.chunks(), retrieval.scores(), retrieval.docs())));
+        Map<Long, KnowledgeDoc> docMap = retrieval.docs();
 
         StringBuilder context = new StringBuilder();
-        int totalLength = 0;
         Long lastDocId = null;
 
-        for (int i = 0; i < chunks.size(); i++) {
-            KnowledgeChunk chunk = chunks.get(i);
-            KnowledgeDoc doc = docMap.get(chunk.getDocId());
-            
+        for (int i = 0; i < spans.size(); i++) {
+            ContextPacker.Span span = spans.get(i);
+            KnowledgeDoc doc = docMap.get(span.docId());
+
             // 构建片段头部（包含文档元信息）
-            StringBuilder chunkHeader = new StringBuilder();
-            chunkHeader.append(String.format("[片段%d]", i + 1));
-            
+            context.append(String.format("[片段%d]", i + 1));
+
             // 只在文档切换时显示文档信息，避免重复
-            if (doc != null && !chunk.getDocId().equals(lastDocId)) {
-                chunkHeader.append(String.format(" 【文档：%s", doc.getTitle()));
-                
+            if (doc != null && !span.docId().equals(lastDocId)) {
+                context.append(String.format(" 【文档：%s", doc.getTitle()));
+
                 if (doc.getCategory() != null && !doc.getCategory().isEmpty()) {
-                    chunkHeader.append(String.format(" | 分类：%s", doc.getCategory()));
-                }
-                
-                if (chunk.getPageNumber() != null && chunk.getPageNumber() > 0) {
-                    chunkHeader.append(String.format(" | 第%d页", chunk.getPageNumber()));
+                    context.append(String.format(" | 分类：%s", doc.getCategory()));
                 }
-                
-                chunkHeader.append("】");
-                lastDocId = chunk.getDocId();
-            }
-            
-            chunkHeader.append("\n");
-            String content = chunk.getContent();
-            String fullChunk = chunkHeader.toString() + content;
-            
-            // 检查是否超过最大上下文长度
-            if (totalLength + fullChunk.length() > maxContextLength) {
-                // 截断
-                int remaining = maxContextLength - totalLength;
-                if (remaining > 150) { // 需要更多空间来容纳头部信息
-                    int contentLength = remaining - chunkHeader.length() - 3; // 3为"..."的长度
-                    if (contentLength > 50) {
-                        content = content.substring(0, contentLength) + "...";
-                        context.append(chunkHeader).append(content).append("\n\n");
-                    }
+
+                Integer pageNumber = span.pageNumber();
+                if (pageNumber != null) {
+                    context.append(String.format(" | 第%d页", pageNumber));
                 }
-                break;
+
+                context.append("】");
+                lastDocId = span.docId();
             }
-            
-            context.append(fullChunk).append("\n\n");
-            totalLength += fullChunk.length();
+
+            context.append("\n").append(span.content()).append("\n\n");
         }
 
         return context.toString().trim();
@@ -201,104 +154,76 @@ public class RagServiceImpl implements RagService {
         statusConsumer.accept("检索相关知识...");
         
         // 2. 检索相关知识片段
-        List<KnowledgeChunk> relevantChunks = retrieve(question, defaultTopK);
+        RetrievalResult retrieval = retrieve(question, defaultTopK);
         
         // 3. 状态更新：检索完成
-        statusConsumer.accept("检索到 " + relevantChunks.size() + " 个相关片段");
+        statusConsumer.accept("检索到 " + retrieval.chunks().size() + " 个相关片段");
         
-        // 4. 发送来源信息（需要从 Milvus 重新获取分数）
-        List<SourceInfo> sources = buildSourcesWithScores(relevantChunks, question);
+        // 4. 发送来源信息
+        List<SourceInfo> sources = buildSources(retrieval);
         sourcesConsumer.accept(sources);
         
-        // 5. 构建知识库上下文
-        String context = buildContext(relevantChunks);
-        
-        // 6. 状态更新：开始生成
+        // 5. 状态更新：开始生成
         statusConsumer.accept("正在生成回答...");
         
-        // 7. 流式生成回答
+        // 6. 构建知识库上下文并流式生成回答
+        return answerStream(question, retrieval, historyMessages, contentConsumer, StreamCancellation.none());
+    }
+
+    @Override
+    public String answerStream(String question, RetrievalResult retrieval, List<Message> historyMessages,
+                               Consumer<String> contentConsumer, StreamCancellation cancellation) {
+        String context = buildContext(retrieval);
+        
         StringBuilder fullAnswer = new StringBuilder();
         llmService.ragAnswerStream(question, context, historyMessages, chunk -> {
             fullAnswer.append(chunk);
             contentConsumer.accept(chunk);
-        });
+        }, cancellation);
         
-        log.info("RAG流式问答完成: 检索到{}个片段, 回答长度={}", relevantChunks.size(), fullAnswer.length());
+        log.info("RAG流式问答完成: 检索到{}个片段, 回答长度={}", retrieval.chunks().size(), fullAnswer.length());
         
         return fullAnswer.toString();
     }
 
-    /**
-     * 构建来源信息（带准确的相似度分数）
-     */
-    private List<SourceInfo> buildSourcesWithScores(List<KnowledgeChunk> chunks, String question) {
-        if (chunks.isEmpty()) {
-            return Collections.emptyList();
-        }
-
-        // 重新查询以获取分数
-        Map<Long, Float> scoreMap = new HashMap<>();
-        try {
-            float[] queryVector = embeddingService.embed(question);
-            if (queryVector != null && !allZeros(queryVector)) {
-                List<MilvusService.SearchResult> searchResults = 
-                        milvusService.search(queryVector, chunks.size(), 0f);
-                scoreMap = searchResults.stream()
-                        .collect(Collectors.toMap(
-                                MilvusService.SearchResult::getChunkId,
-                                MilvusService.SearchResult::getScore
-                        ));
-            }
-        } catch (Exception e) {
-            log.warn("获取相似度分数失败: {}", e.getMessage());
-        }
+    @Override
+    public CompletableFuture<String> answerStreamAsync(String question, RetrievalResult retrieval,
+                                                       List<Message> historyMessages,
+                                                       Consumer<String> contentConsumer,
+                                                       StreamCancellation cancellation) {
+        String context = buildContext(retrieval);
 
-        // 获取相关文档信息
-        Set<Long> docIds = chunks.stream()
-                .map(KnowledgeChunk::getDocId)
-                .collect(Collectors.toSet());
-        
-        List<KnowledgeDoc> docs = docMapper.selectBatchIds(docIds);
-        Map<Long, String> docTitleMap = docs.stream()
-                .collect(Collectors.toMap(KnowledgeDoc::getId, KnowledgeDoc::getTitle));
-
-        final Map<Long, Float> finalScoreMap = scoreMap;
-        return chunks.stream()
-                .map(chunk -> new SourceInfo(
-                        chunk.getDocId(),
-                        docTitleMap.getOrDefault(chunk.getDocId(), "未知文档"),
-                        chunk.getId(),
-                        truncateContent(chunk.getContent(), 200),
-                        finalScoreMap.getOrDefault(chunk.getId(), 0f)
-                ))
-                .collect(Collectors.toList());
+        StringBuilder fullAnswer = new StringBuilder();
+        return llmService.ragAnswerStreamAsync(question, context, historyMessages, chunk -> {
+            fullAnswer.append(chunk);
+            contentConsumer.accept(chunk);
+        }, cancellation).thenApply(ignored -> {
+            log.info("RAG流式问答完成: 检索到{}个片段, 回答长度={}", retrieval.chunks().size(), fullAnswer.length());
+            return fullAnswer.toString();
+        });
     }
 
     /**
-     * 构建来源信息
+     * 构建来源信息（分数取自检索结果）
      */
-    private List<SourceInfo> buildSources(List<KnowledgeChunk> chunks) {
-        if (chunks.isEmpty()) {
+    @Override
+    public List<SourceInfo> buildSources(RetrievalResult retrieval) {
+        if (retrieval.isEmpty()) {
             return Collections.emptyList();
         }
 
-        // 获取相关文档信息
-        Set<Long> docIds = chunks.stream()
-                .map(KnowledgeChunk::getDocId)
-                .collect(Collectors.toSet());
-        
-        List<KnowledgeDoc> docs = docMapper.selectBatchIds(docIds);
-        Map<Long, String> docTitleMap = docs.stream()
-                .collect(Collectors.toMap(KnowledgeDoc::getId, KnowledgeDoc::getTitle));
-
-        return chunks.stream()
-                .map(chunk -> new SourceInfo(
-                        chunk.getDocId(),
-                        docTitleMap.getOrDefault(chunk.getDocId(), "未知文档"),
-                        chunk.getId(),
-                        truncateContent(chunk.getContent(), 200),
-                        0f // 分数可从搜索结果中获取
-                ))
+        Map<Long, KnowledgeDoc> docMap = retrieval.docs();
+        return retrieval.chunks().stream()
+                .map(chunk -> {
+                    KnowledgeDoc doc = docMap.get(chunk.getDocId());
+                    return new SourceInfo(
+                            chunk.getDocId(),
+                            doc != null ? doc.getTitle() : "未知文档",
+                            chunk.getId(),
+                            truncateContent(chunk.getContent(), 200),
+                            retrieval.scoreOf(chunk.getId())
+                    );
+                })
                 .collect(Collectors.toList());
     }
 
@@ -314,14 +239,4 @@ public class RagServiceImpl implements RagService {
         }
         return content.substring(0, maxLength) + "...";
     }
-
-    /**
-     * 检查向量是否全为零
-     */
-    private boolean allZeros(float[] vector) {
-        for (float v : vector) {
-            if (v != 0) return false;
-        }
-        return true;
-    }
 }
@@ -2,6 +2,7 @@ package com.echocampus.bot.service.impl;
 
 import com.echocampus.bot.entity.KnowledgeChunk;
 import com.echocampus.bot.service.TextChunkService;
+import com.echocampus.bot.utils.ContentHashUtil;
 import dev.langchain4j.data.document.Document;
 import dev.langchain4j.data.document.DocumentSplitter;
 import dev.langchain4j.data.document.splitter.DocumentByParagraphSplitter;
@@ -81,6 +82,7 @@ public class TextChunkServiceImpl implements TextChunkService {
                 chunk.setDocId(docId);
                 chunk.setChunkIndex(i);
                 chunk.setContent(content);
+                chunk.setContentHash(ContentHashUtil.sha256Hex(content));
                 chunk.setStartPosition(position);
                 chunk.setEndPosition(position + content.length());
                 chunk.setTokenCount(estimateTokenCount(content));
@@ -132,6 +134,7 @@ public class TextChunkServiceImpl implements TextChunkService {
                 chunk.setDocId(docId);
                 chunk.setChunkIndex(index++);
                 chunk.setContent(content);
+                chunk.setContentHash(ContentHashUtil.sha256Hex(content));
                 chunk.setStartPosition(start);
                 chunk.setEndPosition(end);
                 chunk.setTokenCount(estimateTokenCount(content));
@@ -169,8 +172,13 @@ public class TextChunkServiceImpl implements TextChunkService {
 
     /**
      * 估算token数量（简单估算：中文1字≈1token，英文4字符≈1token）
+     * <p>
+     * 切块入库与构建提示词上下文（{@link com.echocampus.bot.service.retrieval.ContextPacker}）共用
      */
-    private int estimateTokenCount(String text) {
+    public static int estimateTokenCount(String text) {
+        if (text == null) {
+            return 0;
+        }
         int chineseCount = 0;
         int otherCount = 0;
 
@@ -0,0 +1,192 @@
+package com.echocampus.bot.service.impl;
+
+import com.echocampus.bot.service.MilvusService;
+import com.echocampus.bot.service.impl.LocalVectorService.Mode;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+
+/**
+ * 组合Milvus和进程内索引的向量服务（默认注入的 MilvusService）
+ * <p>
+ * 按 vector.local.mode 决定读写路由：
+ * <ul>
+ *     <li>off：只使用Milvus（默认）</li>
+ *     <li>fallback：写入两边；Milvus未连接或检索异常时改用本地索引</li>
+ *     <li>hot-tier：写入两边；本地索引就绪后检索只读本地，否则读Milvus</li>
+ *     <li>standalone：只使用本地索引</li>
+ * </ul>
+ * 写入两边时以Milvus返回的向量ID为准，本地写入失败不影响主流程。
+ */
+@Slf4j
+@Primary
+@Service
+@RequiredArgsConstructor
+public class TieredMilvusService implements MilvusService {
+
+    private final MilvusServiceImpl remote;
+    private final LocalVectorService local;
+
+    @Override
+    public void initCollection() {
+        if (usesRemote()) {
+            remote.initCollection();
+        }
+    }
+
+    @Override
+    public List<String> insertVectors(List<float[]> vectors, List<Long> chunkIds, List<Long> docIds,
+                                      List<String> contents, List<String> categories,
+                                      List<Integer> pageNumbers, List<String> titles) {
+        if (!usesRemote()) {
+            return local.insertVectors(vectors, chunkIds, docIds, contents, categories, pageNumbers, titles);
+        }
+        List<String> ids = remote.insertVectors(vectors, chunkIds, docIds, contents, categories, pageNumbers, titles);
+        if (usesLocal()) {
+            try {
+                // Milvus写入失败时本地仍写入（生成本地ID），降级检索可以查到；
+                // 返回值仍为空，切块不记录向量ID，下次重建索引时会重新写入Milvus
+                List<String> localIds = ids.size() == vectors.size() ? ids : randomIds(vectors.size());
+                local.put(localIds, vectors, chunkIds, docIds, contents, categories, pageNumbers, titles);
+            } catch (Exception e) {
+                log.warn("写入本地向量索引失败: {}", e.getMessage());
+            }
+        }
+        return ids;
+    }
+
+    @Override
+    public List<SearchResult> search(float[] queryVector, int topK, float threshold, SearchFilter filter) {
+        return search(queryVector, topK, threshold, filter, null);
+    }
+
+    @Override
+    public List<SearchResult> search(float[] queryVector, int topK, float threshold, SearchFilter filter,
+                                     SearchBudget budget) {
+        Mode mode = local.getMode();
+        if (mode == Mode.STANDALONE) {
+            return local.search(queryVector, topK, threshold, filter, budget);
+        }
+        if (mode == Mode.HOT_TIER && local.isAvailable()) {
+            return local.search(queryVector, topK, threshold, filter, budget);
+        }
+        if (mode == Mode.OFF) {
+            return remote.search(queryVector, topK, threshold, filter, budget);
+        }
+
+        boolean canFallback = local.isAvailable();
+        if (!remote.isConnected() && canFallback) {
+            return local.search(queryVector, topK, threshold, filter, budget);
+        }
+        try {
+            return remote.search(queryVector, topK, threshold, filter, budget);
+        } catch (RuntimeException e) {
+            if (!canFallback) {
+                throw e;
+            }
+            log.warn("Milvus检索异常，降级到本地向量索引: {}", e.getMessage());
+            return local.search(queryVector, topK, threshold, filter, budget);
+        }
+    }
+
+    @Override
+    public List<List<SearchResult>> searchBatch(List<float[]> queryVectors, int topK, float threshold,
+                                                SearchFilter filter) {
+        return searchBatch(queryVectors, topK, threshold, filter, null);
+    }
+
+    @Override
+    public List<List<SearchResult>> searchBatch(List<float[]> queryVectors, int topK, float threshold,
+                                                SearchFilter filter, SearchBudget budget) {
+        Mode mode = local.getMode();
+        if (mode == Mode.STANDALONE || (mode == Mode.HOT_TIER && local.isAvailable())) {
+            return local.searchBatch(queryVectors, topK, threshold, filter, budget);
+        }
+        if (mode == Mode.OFF) {
+            return remote.searchBatch(queryVectors, topK, threshold, filter, budget);
+        }
+
+        boolean canFallback = local.isAvailable();
+        if (!remote.isConnected() && canFallback) {
+            return local.searchBatch(queryVectors, topK, threshold, filter, budget);
+        }
+        try {
+            return remote.searchBatch(queryVectors, topK, threshold, filter, budget);
+        } catch (RuntimeException e) {
+            if (!canFallback) {
+                throw e;
+            }
+            log.warn("Milvus批量检索异常，降级到本地向量索引: {}", e.getMessage());
+            return local.searchBatch(queryVectors, topK, threshold, filter, budget);
+        }
+    }
+
+    @Override
+    public void deleteVectors(List<String> vectorIds) {
+        if (usesRemote()) {
+            remote.deleteVectors(vectorIds);
+        }
+        local.deleteVectors(vectorIds);
+    }
+
+    @Override
+    public void deleteByDocId(Long docId, String category) {
+        if (usesRemote()) {
+            remote.deleteByDocId(docId, category);
+        }
+        local.deleteByDocId(docId, category);
+    }
+
+    @Override
+    public void deleteByChunkIds(List<Long> chunkIds) {
+        if (usesRemote()) {
+            remote.deleteByChunkIds(chunkIds);
+        }
+        local.deleteByChunkIds(chunkIds);
+    }
+
+    @Override
+    public Map<String, float[]> getVectors(List<String> vectorIds) {
+        Map<String, float[]> vectors = new HashMap<>(local.getVectors(vectorIds));
+        if (usesRemote() && vectors.size() < vectorIds.size()) {
+            List<String> missing = vectorIds.stream().filter(id -> !vectors.containsKey(id)).toList();
+            vectors.putAll(remote.getVectors(missing));
+        }
+        return vectors;
+    }
+
+    @Override
+    public long getVectorCount() {
+        if (!usesRemote() || (!remote.isConnected() && local.isAvailable())) {
+            return local.getVectorCount();
+        }
+        return remote.getVectorCount();
+    }
+
+    @Override
+    public boolean isAvailable() {
+        if (!usesRemote()) {
+            return local.isAvailable();
+        }
+        return local.isAvailable() || remote.isAvailable();
+    }
+
+    private boolean usesRemote() {
+        return local.getMode() != Mode.STANDALONE;
+    }
+
+    private boolean usesLocal() {
+        return local.getMode() != Mode.OFF;
+    }
+
+    private static List<String> randomIds(int count) {
+        List<String> ids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ids.add(UUID.randomUUID().toString());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,133 @@
+package com.echocampus.bot.service.retrieval;
+
+import com.echocampus.bot.entity.KnowledgeChunk;
+import com.echocampus.bot.entity.KnowledgeDoc;
+import com.echocampus.bot.mapper.KnowledgeChunkMapper;
+import com.echocampus.bot.service.MilvusService.SearchResult;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 将向量检索结果转换为知识片段及所属文档
+ * <p>
+ * 检索结果带有完整载荷（正文、页码、标题）时直接构建片段，不再回查 knowledge_chunks；
+ * 缺少载荷的结果（旧集合）或关闭 rag.retrieval.payload-hits 时按ID批量查询数据库。
+ * 文档元信息取自 {@link KnowledgeDocCache}；文档已不存在时丢弃其片段，
+ * 避免已删除文档残留在Milvus中的向量继续被检索到。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ChunkHitResolver {
+
+    private final KnowledgeChunkMapper knowledgeChunkMapper;
+    private final KnowledgeDocCache knowledgeDocCache;
+
+    @Value("${rag.retrieval.payload-hits:true}")
+    private boolean payloadHits;
+
+    private final AtomicLong payloadResolves = new AtomicLong();
+    private final AtomicLong payloadNanos = new AtomicLong();
+    private final AtomicLong databaseResolves = new AtomicLong();
+    private final AtomicLong databaseNanos = new AtomicLong();
+
+    /**
+     * 转换检索结果
+     *
+     * @param results 向量检索结果
+     * @return 按分数降序的片段（同一片段只保留一次）、分数及文档
+     */
+    public ResolvedHits resolve(List<SearchResult> results) {
+        long start = System.nanoTime();
+        Map<Long, Float> scores = new HashMap<>();
+        Map<Long, KnowledgeChunk> chunks = new LinkedHashMap<>();
+        List<Long> fetchIds = new ArrayList<>();
+
+        for (SearchResult result : results) {
+            scores.merge(result.getChunkId(), result.getScore(), Math::max);
+            if (chunks.containsKey(result.getChunkId()) || fetchIds.contains(result.getChunkId())) {
+                continue;
+            }
+            if (payloadHits && result.isPayloadLoaded()) {
+                chunks.put(result.getChunkId(), toChunk(result));
+            } else {
+                fetchIds.add(result.getChunkId());
+            }
+        }
+        if (!fetchIds.isEmpty()) {
+            for (KnowledgeChunk chunk : knowledgeChunkMapper.selectBatchIds(fetchIds)) {
+                chunks.put(chunk.getId(), chunk);
+            }
+        }
+
+        Set<Long> docIds = new LinkedHashSet<>();
+        chunks.values().forEach(c -> docIds.add(c.getDocId()));
+        Map<Long, KnowledgeDoc> docs = knowledgeDocCache.getAll(docIds);
+
+        List<KnowledgeChunk> sorted = new ArrayList<>(chunks.size());
+        for (KnowledgeChunk chunk : chunks.values()) {
+            if (docs.containsKey(chunk.getDocId())) {
+                sorted.add(chunk);
+            } else {
+                scores.remove(chunk.getId());
+            }
+        }
+        if (sorted.size() < chunks.size()) {
+            log.debug("丢弃文档已不存在的检索结果: {}个", chunks.size() - sorted.size());
+        }
+        sorted.sort((a, b) -> scores.getOrDefault(b.getId(), 0f).compareTo(scores.getOrDefault(a.getId(), 0f)));
+
+        long elapsed = System.nanoTime() - start;
+        if (fetchIds.isEmpty()) {
+            payloadResolves.incrementAndGet();
+            payloadNanos.addAndGet(elapsed);
+        } else {
+            databaseResolves.incrementAndGet();
+            databaseNanos.addAndGet(elapsed);
+        }
+        return new ResolvedHits(sorted, scores, docs);
+    }
+
+    /**
+     * 运行指标：免回查与回查数据库两种路径的次数和平均耗时
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("payloadHits", payloadHits);
+        stats.put("payloadResolves", payloadResolves.get());
+        stats.put("payloadAvgMicros", averageMicros(payloadNanos, payloadResolves));
+        stats.put("databaseResolves", databaseResolves.get());
+        stats.put("databaseAvgMicros", averageMicros(databaseNanos, databaseResolves));
+        stats.put("docCache", knowledgeDocCache.getStats());
+        return stats;
+    }
+
+    private static long averageMicros(AtomicLong nanos, AtomicLong count) {
+        long n = count.get();
+        return n == 0 ? 0 : nanos.get() / n / 1000;
+    }
+
+    private static KnowledgeChunk toChunk(SearchResult result) {
+        KnowledgeChunk chunk = new KnowledgeChunk();
+        chunk.setId(result.getChunkId());
+        chunk.setDocId(result.getDocId());
+        chunk.setContent(result.getContent());
+        chunk.setPageNumber(result.getPageNumber());
+        chunk.setVectorId(result.getVectorId());
+        return chunk;
+    }
+
+    /**
+     * 转换结果
+     *
+     * @param chunks 按分数降序的知识片段
+     * @param scores 片段ID到相似度分数的映射
+     * @param docs 文档ID到文档的映射
+     */
+    public record ResolvedHits(List<KnowledgeChunk> chunks, Map<Long, Float> scores, Map<Long, KnowledgeDoc> docs) {}
+}
@@ -0,0 +1,285 @@
+package com.echocampus.bot.service.retrieval;
+
+import com.echocampus.bot.entity.KnowledgeChunk;
+import com.echocampus.bot.entity.KnowledgeDoc;
+import com.echocampus.bot.service.impl.TextChunkServiceImpl;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+/**
+ * 按token预算把检索片段装入提示词上下文（RagServiceImpl、KnowledgeSearchTool 共用）
+ * <p>
+ * 1. 去重：正文相同或被已选片段包含的片段只保留一次；
+ * 2. 合并：同一文档中相邻的片段（chunk_index 连续，或前一片段结尾与后一片段开头重叠）
+ *    合并为一段，切块时的重叠部分只保留一次；
+ * 3. 装箱：按 分数/token 从高到低选段，直到用完 rag.context.max-tokens，
+ *    最终按检索（重排序）顺序输出；排在第一的段落超出预算时在句末截断，不在句中截断。
+ * token 数按 {@link TextChunkServiceImpl#estimateTokenCount(String)} 估算。
+ */
+@Slf4j
+@Component
+public class ContextPacker {
+
+    /**
+     * 判定两个片段首尾重叠的最短字符数，避免偶然相同的短句被当作重叠
+     */
+    static final int MIN_OVERLAP = 20;
+
+    /**
+     * 重叠检测的最大字符数（切块重叠为50~100字符，按句切分时可能略长）
+     */
+    static final int MAX_OVERLAP = 300;
+
+    /**
+     * 每段的格式开销（片段序号、页码、分隔符），另加文档标题
+     */
+    static final int SPAN_OVERHEAD_TOKENS = 12;
+
+    private static final String SENTENCE_ENDS = "。！？；!?;\n";
+
+    @Value("${rag.context.max-tokens:2000}")
+    private int maxTokens;
+
+    /**
+     * 按默认预算装入
+     */
+    public List<Span> pack(ChunkHitResolver.ResolvedHits hits) {
+        return pack(hits.chunks(), hits.scores(), hits.docs(), maxTokens);
+    }
+
+    /**
+     * 按默认预算装入
+     */
+    public List<Span> pack(List<KnowledgeChunk> chunks, Map<Long, Float> scores, Map<Long, KnowledgeDoc> docs) {
+        return pack(chunks, scores, docs, maxTokens);
+    }
+
+    /**
+     * 装入上下文
+     *
+     * @param chunks 按相关度降序的片段
+     * @param scores 片段ID到分数的映射，缺失时按排名估算
+     * @param docs 文档ID到文档的映射（用于估算标题开销）
+     * @param tokenBudget token预算
+     * @return 按相关度排序的段落
+     */
+    public List<Span> pack(List<KnowledgeChunk> chunks, Map<Long, Float> scores, Map<Long, KnowledgeDoc> docs,
+                           int tokenBudget) {
+        if (chunks.isEmpty() || tokenBudget <= 0) {
+            return List.of();
+        }
+        List<Draft> drafts = merge(deduplicate(chunks), scores);
+
+        // 按分数密度选段
+        List<Draft> byDensity = new ArrayList<>(drafts);
+        byDensity.sort(Comparator.comparingDouble(Draft::density).reversed().thenComparingInt(d -> d.rank));
+        int remaining = tokenBudget;
+        List<Draft> selected = new ArrayList<>();
+        for (Draft draft : byDensity) {
+            int cost = draft.tokens + overhead(draft, docs);
+            if (cost <= remaining) {
+                selected.add(draft);
+                remaining -= cost;
+            }
+        }
+        if (selected.isEmpty()) {
+            Draft best = drafts.get(0);
+            String trimmed = trimToTokens(best.content, tokenBudget - overhead(best, docs));
+            if (trimmed.isEmpty()) {
+                return List.of();
+            }
+            best.content = trimmed;
+            best.tokens = TextChunkServiceImpl.estimateTokenCount(trimmed);
+            selected.add(best);
+        }
+
+        selected.sort(Comparator.comparingInt(d -> d.rank));
+        List<Span> spans = selected.stream()
+                .map(d -> new Span(d.docId, List.copyOf(d.chunks), d.content, d.tokens, d.score))
+                .toList();
+        if (log.isDebugEnabled()) {
+            log.debug("上下文装入: 片段={}, 段落={}/{}, token={}/{}", chunks.size(), spans.size(), drafts.size(),
+                    tokenBudget - remaining, tokenBudget);
+        }
+        return spans;
+    }
+
+    public int getMaxTokens() {
+        return maxTokens;
+    }
+
+    /**
+     * 去掉正文为空、与已保留片段相同或被其包含的片段
+     */
+    private static List<KnowledgeChunk> deduplicate(List<KnowledgeChunk> chunks) {
+        List<KnowledgeChunk> kept = new ArrayList<>();
+        List<String> contents = new ArrayList<>();
+        for (KnowledgeChunk chunk : chunks) {
+            String content = chunk.getContent() == null ? "" : chunk.getContent().trim();
+            if (content.isEmpty() || contents.stream().anyMatch(c -> c.contains(content))) {
+                continue;
+            }
+            kept.add(chunk);
+            contents.add(content);
+        }
+        return kept;
+    }
+
+    /**
+     * 合并同一文档中相邻的片段，段落排名取其中最靠前的片段
+     */
+    private static List<Draft> merge(List<KnowledgeChunk> chunks, Map<Long, Float> scores) {
+        List<Draft> drafts = new ArrayList<>();
+        for (int i = 0; i < chunks.size(); i++) {
+            KnowledgeChunk chunk = chunks.get(i);
+            Float score = scores.get(chunk.getId());
+            drafts.add(new Draft(chunk, i, score != null ? score : 0f, score != null ? score : 1f / (i + 1)));
+        }
+
+        boolean merged = true;
+        while (merged) {
+            merged = false;
+            outer:
+            for (Draft head : drafts) {
+                for (Draft tail : drafts) {
+                    if (head == tail || !Objects.equals(head.docId, tail.docId)) {
+                        continue;
+                    }
+                    int overlap = overlap(head.content, tail.content);
+                    if (consecutive(head.last(), tail.first()) || overlap >= MIN_OVERLAP) {
+                        head.append(tail, overlap >= MIN_OVERLAP ? overlap : 0);
+                        drafts.remove(tail);
+                        merged = true;
+                        break outer;
+                    }
+                }
+            }
+        }
+        drafts.forEach(d -> d.tokens = TextChunkServiceImpl.estimateTokenCount(d.content));
+        drafts.sort(Comparator.comparingInt(d -> d.rank));
+        return drafts;
+    }
+
+    private static boolean consecutive(KnowledgeChunk previous, KnowledgeChunk next) {
+        return previous.getChunkIndex() != null && next.getChunkIndex() != null
+                && next.getChunkIndex() == previous.getChunkIndex() + 1;
+    }
+
+    /**
+     * head 结尾与 tail 开头相同部分的最大长度，不足 {@link #MIN_OVERLAP} 时返回0
+     */
+    static int overlap(String head, String tail) {
+        int max = Math.min(MAX_OVERLAP, Math.min(head.length(), tail.length()));
+        for (int k = max; k >= MIN_OVERLAP; k--) {
+            if (head.regionMatches(head.length() - k, tail, 0, k)) {
+                return k;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * 在不超过预算的最后一个句末截断；没有句末时按字截断并加省略号
+     */
+    static String trimToTokens(String content, int budget) {
+        if (budget <= 0) {
+            return "";
+        }
+        if (TextChunkServiceImpl.estimateTokenCount(content) <= budget) {
+            return content;
+        }
+        // 与 estimateTokenCount 相同的估算方式，逐字累计
+        int han = 0;
+        int other = 0;
+        int end = 0;
+        int lastSentenceEnd = -1;
+        for (; end < content.length(); end++) {
+            char c = content.charAt(end);
+            if (Character.UnicodeScript.of(c) == Character.UnicodeScript.HAN) {
+                han++;
+            } else {
+                other++;
+            }
+            if (han + other / 4 > budget) {
+                break;
+            }
+            if (SENTENCE_ENDS.indexOf(c) >= 0) {
+                lastSentenceEnd = end + 1;
+            }
+        }
+        if (lastSentenceEnd > 0) {
+            return content.substring(0, lastSentenceEnd).trim();
+        }
+        return end > 1 ? content.substring(0, end - 1) + "…" : "";
+    }
+
+    private static int overhead(Draft draft, Map<Long, KnowledgeDoc> docs) {
+        KnowledgeDoc doc = docs.get(draft.docId);
+        return SPAN_OVERHEAD_TOKENS + (doc != null ? TextChunkServiceImpl.estimateTokenCount(doc.getTitle()) : 0);
+    }
+
+    /**
+     * 合并中的段落
+     */
+    private static final class Draft {
+        final Long docId;
+        final List<KnowledgeChunk> chunks = new ArrayList<>();
+        String content;
+        int rank;
+        float score;
+        float value;
+        int tokens;
+
+        Draft(KnowledgeChunk chunk, int rank, float score, float value) {
+            this.docId = chunk.getDocId();
+            this.chunks.add(chunk);
+            this.content = chunk.getContent().trim();
+            this.rank = rank;
+            this.score = score;
+            this.value = value;
+        }
+
+        KnowledgeChunk first() {
+            return chunks.get(0);
+        }
+
+        KnowledgeChunk last() {
+            return chunks.get(chunks.size() - 1);
+        }
+
+        void append(Draft tail, int overlap) {
+            chunks.addAll(tail.chunks);
+            content = overlap > 0 ? content + tail.content.substring(overlap) : content + "\n" + tail.content;
+            rank = Math.min(rank, tail.rank);
+            score = Math.max(score, tail.score);
+            value += tail.value;
+        }
+
+        double density() {
+            return tokens == 0 ? 0 : value / tokens;
+        }
+    }
+
+    /**
+     * 装入上下文的段落
+     *
+     * @param docId 文档ID
+     * @param chunks 合并的片段（按原文顺序）
+     * @param content 合并后的正文
+     * @param tokens 正文的估算token数
+     * @param score 段落中片段的最高分数，没有分数时为0
+     */
+    public record Span(Long docId, List<KnowledgeChunk> chunks, String content, int tokens, float score) {
+
+        /**
+         * 段落起始页码，未知时为null
+         */
+        public Integer pageNumber() {
+            return chunks.stream().map(KnowledgeChunk::getPageNumber)
+                    .filter(p -> p != null && p > 0).findFirst().orElse(null);
+        }
+    }
+}
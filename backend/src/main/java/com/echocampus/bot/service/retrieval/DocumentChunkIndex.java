@@ -0,0 +1,195 @@
+package com.echocampus.bot.service.retrieval;
+
+import com.echocampus.bot.entity.KnowledgeChunk;
+import com.echocampus.bot.mapper.KnowledgeChunkMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 文档切块序号索引：文档ID → 按 chunk_index 排列的切块ID
+ * <p>
+ * 用于邻近切块扩展（{@link NeighbourChunkExpander}）按 chunk_index ± w 定位相邻切块，
+ * 不必为每个命中按文档查询全部切块。每个文档只占一个 long 数组（不含正文）。
+ * 启用 rag.context.expand.enabled 时启动后在后台线程按ID分页从 knowledge_chunks 构建，
+ * 构建完成前 {@link #isReady()} 为false；文档处理完成后 {@link #refresh(Long)}、删除后 {@link #remove(Long)}。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class DocumentChunkIndex {
+
+    private static final int PAGE_SIZE = 5000;
+
+    private final KnowledgeChunkMapper knowledgeChunkMapper;
+
+    @Value("${rag.context.expand.enabled:false}")
+    private boolean enabled;
+
+    private final Map<Long, long[]> chunksByDoc = new ConcurrentHashMap<>();
+    // 构建期间被增量更新的文档，构建结果不覆盖这些文档
+    private final Set<Long> touchedDuringBuild = ConcurrentHashMap.newKeySet();
+    private volatile boolean building;
+    private volatile boolean ready;
+    private volatile long buildMillis;
+    private Thread buildThread;
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        buildThread = new Thread(this::build, "chunk-index-build");
+        buildThread.setDaemon(true);
+        buildThread.start();
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (buildThread != null) {
+            buildThread.interrupt();
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * 从 knowledge_chunks 构建全部文档的索引
+     */
+    void build() {
+        long start = System.currentTimeMillis();
+        building = true;
+        touchedDuringBuild.clear();
+        try {
+            Map<Long, List<KnowledgeChunk>> byDoc = new HashMap<>();
+            long afterId = 0;
+            List<KnowledgeChunk> page;
+            do {
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+                page = knowledgeChunkMapper.selectPositionsAfter(afterId, PAGE_SIZE);
+                for (KnowledgeChunk chunk : page) {
+                    byDoc.computeIfAbsent(chunk.getDocId(), id -> new ArrayList<>()).add(chunk);
+                    afterId = chunk.getId();
+                }
+            } while (page.size() == PAGE_SIZE);
+
+            byDoc.forEach((docId, chunks) -> {
+                if (!touchedDuringBuild.contains(docId)) {
+                    chunksByDoc.put(docId, toArray(chunks));
+                }
+            });
+            buildMillis = System.currentTimeMillis() - start;
+            ready = true;
+            log.info("文档切块序号索引构建完成: 文档数={}, 耗时={}ms", chunksByDoc.size(), buildMillis);
+        } catch (Exception e) {
+            log.error("文档切块序号索引构建失败，邻近切块扩展不可用: {}", e.getMessage(), e);
+        } finally {
+            building = false;
+        }
+    }
+
+    /**
+     * 重新加载文档的索引（文档处理完成或失败后调用）
+     */
+    public void refresh(Long docId) {
+        if (!enabled || docId == null) {
+            return;
+        }
+        try {
+            markTouched(docId);
+            List<KnowledgeChunk> chunks = knowledgeChunkMapper.selectIndexEntriesByDocId(docId);
+            if (chunks.isEmpty()) {
+                chunksByDoc.remove(docId);
+            } else {
+                chunksByDoc.put(docId, toArray(chunks));
+            }
+        } catch (Exception e) {
+            // 索引过期只影响扩展结果，移除后该文档不再扩展
+            chunksByDoc.remove(docId);
+            log.warn("刷新文档切块序号索引失败: docId={}, error={}", docId, e.getMessage());
+        }
+    }
+
+    /**
+     * 移除文档的索引（文档删除后调用）
+     */
+    public void remove(Long docId) {
+        if (!enabled || docId == null) {
+            return;
+        }
+        markTouched(docId);
+        chunksByDoc.remove(docId);
+    }
+
+    /**
+     * 切块在文档中的序号
+     *
+     * @return chunk_index，未收录时返回-1
+     */
+    public int indexOf(Long docId, Long chunkId) {
+        long[] chunks = docId != null ? chunksByDoc.get(docId) : null;
+        if (chunks == null || chunkId == null) {
+            return -1;
+        }
+        for (int i = 0; i < chunks.length; i++) {
+            if (chunks[i] == chunkId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 文档中指定序号的切块ID
+     *
+     * @return 切块ID，不存在时返回0
+     */
+    public long chunkAt(Long docId, int chunkIndex) {
+        long[] chunks = docId != null ? chunksByDoc.get(docId) : null;
+        if (chunks == null || chunkIndex < 0 || chunkIndex >= chunks.length) {
+            return 0;
+        }
+        return chunks[chunkIndex];
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("ready", ready);
+        stats.put("documents", chunksByDoc.size());
+        stats.put("chunks", chunksByDoc.values().stream().mapToLong(a -> a.length).sum());
+        stats.put("buildMillis", buildMillis);
+        return stats;
+    }
+
+    private void markTouched(Long docId) {
+        if (building) {
+            touchedDuringBuild.add(docId);
+        }
+    }
+
+    /**
+     * 按 chunk_index 排列切块ID，缺失的序号为0；没有序号的切块不收录
+     */
+    private static long[] toArray(List<KnowledgeChunk> chunks) {
+        int length = chunks.stream().map(KnowledgeChunk::getChunkIndex).filter(Objects::nonNull)
+                .mapToInt(i -> i + 1).max().orElse(0);
+        long[] ids = new long[length];
+        for (KnowledgeChunk chunk : chunks) {
+            if (chunk.getChunkIndex() != null && chunk.getChunkIndex() >= 0) {
+                ids[chunk.getChunkIndex()] = chunk.getId();
+            }
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,187 @@
+package com.echocampus.bot.service.retrieval;
+
+import com.echocampus.bot.service.MilvusService.SearchBudget;
+import com.echocampus.bot.service.MilvusService.SearchFilter;
+import com.echocampus.bot.service.MilvusService.SearchResult;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 混合检索：向量检索与全文检索并行执行，再用倒数排名融合（RRF）合并
+ * <p>
+ * 两路各自多取 candidate-multiplier 倍候选。每路有独立的超时和线程池，超时或失败的一路按空结果参与融合，
+ * 因此任一路变慢都不会拖住回答，也不会占满另一路的线程，只是退化为单路检索。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class HybridRetrievalStrategy implements RetrievalStrategy {
+
+    public static final String NAME = "hybrid";
+
+    private final VectorRetrievalStrategy vectorStrategy;
+    private final LexicalRetriever lexicalRetriever;
+
+    @Value("${rag.hybrid.vector-timeout-ms:3000}")
+    private long vectorTimeoutMs;
+
+    @Value("${rag.hybrid.lexical-timeout-ms:800}")
+    private long lexicalTimeoutMs;
+
+    @Value("${rag.hybrid.candidate-multiplier:2}")
+    private int candidateMultiplier;
+
+    @Value("${rag.hybrid.rrf-k:60}")
+    private int rrfK;
+
+    @Value("${rag.hybrid.vector-threads:4}")
+    private int vectorThreads;
+
+    @Value("${rag.hybrid.lexical-threads:4}")
+    private int lexicalThreads;
+
+    private ExecutorService vectorExecutor;
+    private ExecutorService lexicalExecutor;
+    private final Map<String, LegStats> legStats = new LinkedHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        vectorExecutor = newLegExecutor("vector", vectorThreads);
+        lexicalExecutor = newLegExecutor("lexical", lexicalThreads);
+        legStats.put("vector", new LegStats());
+        legStats.put("lexical", new LegStats());
+        log.info("混合检索初始化: vectorTimeoutMs={}, lexicalTimeoutMs={}, candidateMultiplier={}, rrfK={}",
+                vectorTimeoutMs, lexicalTimeoutMs, candidateMultiplier, rrfK);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        vectorExecutor.shutdownNow();
+        lexicalExecutor.shutdownNow();
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public List<SearchResult> search(String query, int topK, SearchFilter filter) {
+        return search(query, topK, filter, null);
+    }
+
+    @Override
+    public List<SearchResult> search(String query, int topK, SearchFilter filter, SearchBudget budget) {
+        int candidates = topK * Math.max(1, candidateMultiplier);
+        CompletableFuture<List<SearchResult>> vector = CompletableFuture.supplyAsync(
+                () -> vectorStrategy.search(query, candidates, filter, budget), vectorExecutor);
+        CompletableFuture<List<SearchResult>> lexical = submitLexical(query, candidates, filter);
+
+        long start = System.nanoTime();
+        List<SearchResult> vectorHits = await("vector", vector, vectorTimeoutMs, start, List.of());
+        List<SearchResult> lexicalHits = await("lexical", lexical, lexicalTimeoutMs, start, List.of());
+        log.debug("混合检索: query={}, 向量={}, 全文={}", query, vectorHits.size(), lexicalHits.size());
+        return ReciprocalRankFusion.fuse(List.of(vectorHits, lexicalHits), rrfK, topK);
+    }
+
+    /**
+     * 批量检索：向量路一次向量化、一次Milvus请求检索全部问题，全文路每个问题一个并行查询，再逐个问题融合
+     */
+    @Override
+    public List<List<SearchResult>> searchBatch(List<String> queries, int topK, SearchFilter filter) {
+        int candidates = topK * Math.max(1, candidateMultiplier);
+        CompletableFuture<List<List<SearchResult>>> vector = CompletableFuture.supplyAsync(
+                () -> vectorStrategy.searchBatch(queries, candidates, filter), vectorExecutor);
+        List<CompletableFuture<List<SearchResult>>> lexical = new ArrayList<>(queries.size());
+        for (String query : queries) {
+            lexical.add(submitLexical(query, candidates, filter));
+        }
+
+        long start = System.nanoTime();
+        List<List<SearchResult>> vectorHits = await("vector", vector, vectorTimeoutMs, start, null);
+        List<List<SearchResult>> results = new ArrayList<>(queries.size());
+        for (int i = 0; i < queries.size(); i++) {
+            List<SearchResult> lexicalHits = await("lexical", lexical.get(i), lexicalTimeoutMs, start, List.of());
+            List<SearchResult> vectorLeg = vectorHits != null ? vectorHits.get(i) : List.of();
+            results.add(ReciprocalRankFusion.fuse(List.of(vectorLeg, lexicalHits), rrfK, topK));
+        }
+        log.debug("混合批量检索: queries={}", queries.size());
+        return results;
+    }
+
+    /**
+     * 运行指标：各路的调用、超时、失败次数
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        legStats.forEach((leg, s) -> stats.put(leg, s.toMap()));
+        return stats;
+    }
+
+    private CompletableFuture<List<SearchResult>> submitLexical(String query, int candidates, SearchFilter filter) {
+        return CompletableFuture.supplyAsync(() -> lexicalRetriever.search(query, candidates, filter), lexicalExecutor);
+    }
+
+    private static ExecutorService newLegExecutor(String leg, int threads) {
+        AtomicInteger threadIndex = new AtomicInteger();
+        return Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread thread = new Thread(r, "hybrid-" + leg + "-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 等待一路结果，超时从两路同时开始时计起（两路本身并行，后等待的一路不额外占用前一路的时间）
+     */
+    private <T> T await(String leg, CompletableFuture<T> future, long timeoutMs, long startNanos, T fallback) {
+        LegStats stats = legStats.get(leg);
+        stats.calls.incrementAndGet();
+        long remainingNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMs) - (System.nanoTime() - startNanos);
+        try {
+            return future.get(Math.max(0, remainingNanos), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            stats.timeouts.incrementAndGet();
+            log.warn("混合检索{}路超时（{}ms），按空结果融合", leg, timeoutMs);
+        } catch (ExecutionException e) {
+            stats.failures.incrementAndGet();
+            log.warn("混合检索{}路失败，按空结果融合: {}", leg, e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+        }
+        return fallback;
+    }
+
+    private static class LegStats {
+        final AtomicLong calls = new AtomicLong();
+        final AtomicLong timeouts = new AtomicLong();
+        final AtomicLong failures = new AtomicLong();
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("calls", calls.get());
+            map.put("timeouts", timeouts.get());
+            map.put("failures", failures.get());
+            return map;
+        }
+    }
+}
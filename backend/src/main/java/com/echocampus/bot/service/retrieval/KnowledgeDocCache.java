@@ -0,0 +1,95 @@
+package com.echocampus.bot.service.retrieval;
+
+import com.echocampus.bot.entity.KnowledgeDoc;
+import com.echocampus.bot.mapper.KnowledgeDocMapper;
+import com.echocampus.bot.utils.LruTtlCache;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 知识文档元信息缓存
+ * <p>
+ * 检索时按文档ID批量取文档（标题、分类等），未命中的ID合并为一次数据库查询。
+ * 文档修改、删除、重新处理后由调用方 {@link #invalidate(Long)}；
+ * 加载期间发生失效时本次结果不写入缓存，避免旧数据覆盖失效。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class KnowledgeDocCache {
+
+    private final KnowledgeDocMapper knowledgeDocMapper;
+
+    @Value("${rag.doc-cache.max-entries:5000}")
+    private int maxEntries;
+
+    @Value("${rag.doc-cache.ttl-seconds:600}")
+    private long ttlSeconds;
+
+    private LruTtlCache<Long, KnowledgeDoc> cache;
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        cache = new LruTtlCache<>(maxEntries, maxEntries, ttlSeconds * 1000L, (id, doc) -> 1);
+        log.info("文档元信息缓存初始化: maxEntries={}, ttlSeconds={}", maxEntries, ttlSeconds);
+    }
+
+    /**
+     * 批量获取文档，不存在的ID不包含在结果中
+     */
+    public Map<Long, KnowledgeDoc> getAll(Collection<Long> docIds) {
+        Map<Long, KnowledgeDoc> docs = new HashMap<>();
+        Set<Long> missing = new LinkedHashSet<>();
+        for (Long docId : docIds) {
+            if (docId == null) {
+                continue;
+            }
+            KnowledgeDoc doc = cache.get(docId);
+            if (doc != null) {
+                docs.put(docId, doc);
+            } else {
+                missing.add(docId);
+            }
+        }
+        if (missing.isEmpty()) {
+            return docs;
+        }
+
+        long before = generation.get();
+        List<KnowledgeDoc> loaded = knowledgeDocMapper.selectBatchIds(missing);
+        loads.incrementAndGet();
+        boolean cacheable = generation.get() == before;
+        for (KnowledgeDoc doc : loaded) {
+            docs.put(doc.getId(), doc);
+            if (cacheable) {
+                cache.put(doc.getId(), doc);
+            }
+        }
+        return docs;
+    }
+
+    /**
+     * 文档变更后失效
+     */
+    public void invalidate(Long docId) {
+        generation.incrementAndGet();
+        cache.invalidate(docId);
+    }
+
+    /**
+     * 运行指标
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>(cache.stats().toMap());
+        stats.put("databaseLoads", loads.get());
+        return stats;
+    }
+}
@@ -0,0 +1,116 @@
+package com.echocampus.bot.service.retrieval;
+
+import com.echocampus.bot.service.MilvusService.SearchBudget;
+import com.echocampus.bot.service.MilvusService.SearchFilter;
+import com.echocampus.bot.service.MilvusService.SearchResult;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+/**
+ * 知识检索入口（RagServiceImpl、KnowledgeSearchTool 共用）
+ * <p>
+ * 按 rag.retrieval.strategy 选择检索策略（vector（默认）/ hybrid），再由 {@link ChunkHitResolver}
+ * 转换为知识片段和文档。新增策略只需实现 {@link RetrievalStrategy} 并注册为 Bean。
+ * 启用重排序时多取候选，由 {@link RerankService} 重排后保留前 topK。
+ */
+@Slf4j
+@Component
+public class KnowledgeRetriever {
+
+    private final Map<String, RetrievalStrategy> strategies = new LinkedHashMap<>();
+    private final ChunkHitResolver chunkHitResolver;
+    private final RerankService rerankService;
+
+    @Value("${rag.retrieval.strategy:vector}")
+    private String strategyName;
+
+    private RetrievalStrategy active;
+
+    public KnowledgeRetriever(List<RetrievalStrategy> strategies, ChunkHitResolver chunkHitResolver,
+                              RerankService rerankService) {
+        strategies.forEach(s -> this.strategies.put(s.name(), s));
+        this.chunkHitResolver = chunkHitResolver;
+        this.rerankService = rerankService;
+    }
+
+    @PostConstruct
+    public void init() {
+        active = strategy(strategyName);
+        log.info("知识检索策略: {}（可用: {}）", active.name(), strategies.keySet());
+    }
+
+    /**
+     * 使用当前策略检索
+     *
+     * @return 按相关度降序的片段、分数及文档；未命中时片段为空
+     */
+    public ChunkHitResolver.ResolvedHits retrieve(String query, int topK) {
+        return rerankService.rerank(query, resolve(active.search(query, rerankService.candidates(topK))), topK);
+    }
+
+    /**
+     * 使用当前策略在限定的分类/文档范围内检索
+     */
+    public ChunkHitResolver.ResolvedHits retrieve(String query, int topK, SearchFilter filter) {
+        return rerankService.rerank(query,
+                resolve(active.search(query, rerankService.candidates(topK), filter)), topK);
+    }
+
+    /**
+     * 使用当前策略批量检索（同一轮对话中的多个问题合并向量化和向量检索）
+     *
+     * @return 与问题一一对应的检索结果
+     */
+    public List<ChunkHitResolver.ResolvedHits> retrieveBatch(List<String> queries, int topK, SearchFilter filter) {
+        List<ChunkHitResolver.ResolvedHits> hits = active.searchBatch(queries, rerankService.candidates(topK), filter)
+                .stream().map(this::resolve).toList();
+        return rerankService.rerankAll(queries, hits, topK);
+    }
+
+    /**
+     * 使用指定策略检索（用于离线评估对比）
+     *
+     * @throws IllegalArgumentException 策略不存在
+     */
+    public ChunkHitResolver.ResolvedHits retrieve(String query, int topK, String strategy) {
+        return retrieve(query, topK, strategy, null);
+    }
+
+    /**
+     * 使用指定策略和检索预算检索（用于离线评估对比不同检索参数的召回率和延迟）
+     *
+     * @param budget 检索预算，为null时使用配置的默认参数
+     * @throws IllegalArgumentException 策略不存在
+     */
+    public ChunkHitResolver.ResolvedHits retrieve(String query, int topK, String strategy, SearchBudget budget) {
+        return rerankService.rerank(query,
+                resolve(strategy(strategy).search(query, rerankService.candidates(topK), SearchFilter.NONE, budget)), topK);
+    }
+
+    public String getStrategyName() {
+        return active.name();
+    }
+
+    public Set<String> getStrategyNames() {
+        return Collections.unmodifiableSet(strategies.keySet());
+    }
+
+    private ChunkHitResolver.ResolvedHits resolve(List<SearchResult> results) {
+        if (results.isEmpty()) {
+            return new ChunkHitResolver.ResolvedHits(List.of(), Map.of(), Map.of());
+        }
+        return chunkHitResolver.resolve(results);
+    }
+
+    private RetrievalStrategy strategy(String name) {
+        RetrievalStrategy strategy = strategies.get(name == null ? "" : name.trim());
+        if (strategy == null) {
+            throw new IllegalArgumentException("未知的检索策略: " + name + "，可用: " + strategies.keySet());
+        }
+        return strategy;
+    }
+}
@@ -0,0 +1,160 @@
+package com.echocampus.bot.service.retrieval;
+
+import com.echocampus.bot.entity.KnowledgeChunk;
+import com.echocampus.bot.mapper.KnowledgeChunkMapper;
+import com.echocampus.bot.service.MilvusService.SearchFilter;
+import com.echocampus.bot.service.MilvusService.SearchResult;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 关键词检索，两种匹配方式：
+ * <ul>
+ *     <li>字母数字词：使用 knowledge_chunks 上存储的分词列 content_tsv 及其全文索引（idx_knowledge_chunks_content_search）。
+ *     索引使用 english 分词配置，对课程代码、教室号、英文人名等字母数字词有效，向量检索对这类词的召回较差。
+ *     按前缀匹配（"cs101:*" 能匹配正文中紧跟中文的 "CS101课程"）</li>
+ *     <li>中文：english 配置不切分中文连续文本，改为把问题中的汉字串切成连续三个字的子串，
+ *     按 ILIKE 子串匹配，走 content 列上的 pg_trgm 三元组索引（idx_knowledge_chunks_content_trgm）</li>
+ * </ul>
+ * 两种结果交替合并；问题中没有可用词时不查询数据库。
+ */
+@Component
+@RequiredArgsConstructor
+public class LexicalRetriever {
+
+    private static final Pattern TERM = Pattern.compile("[A-Za-z0-9]+");
+
+    /**
+     * 中文子串的字数：三元组索引只能用于至少三个字的模式，更短的子串只能全表扫描
+     */
+    static final int SUBSTRING_LENGTH = 3;
+
+    private static final Pattern HAN = Pattern.compile("\\p{IsHan}{" + SUBSTRING_LENGTH + ",}");
+
+    /**
+     * 单个问题最多使用的关键词数（字母数字词和中文子串分别计）
+     */
+    private static final int MAX_TERMS = 8;
+
+    private final KnowledgeChunkMapper knowledgeChunkMapper;
+
+    /**
+     * 检索，结果带完整载荷（正文、页码），分数为按排名递减的占位值
+     *
+     * @return 全文检索和中文子串匹配结果交替合并，各自按相关度降序
+     */
+    public List<SearchResult> search(String query, int limit) {
+        return search(query, limit, SearchFilter.NONE);
+    }
+
+    /**
+     * 在限定的分类/文档范围内检索（分类条件通过关联 knowledge_docs 过滤）
+     */
+    public List<SearchResult> search(String query, int limit, SearchFilter filter) {
+        String tsQuery = toTsQuery(query);
+        List<String> patterns = toSubstringPatterns(query);
+        if (tsQuery == null && patterns.isEmpty()) {
+            return List.of();
+        }
+        List<KnowledgeChunk> fullText = tsQuery == null ? List.of()
+                : knowledgeChunkMapper.searchFullText(tsQuery, limit, filter.categories(), filter.docIds());
+        List<KnowledgeChunk> substrings = patterns.isEmpty() ? List.of()
+                : knowledgeChunkMapper.searchSubstrings(patterns, limit, filter.categories(), filter.docIds());
+        List<KnowledgeChunk> chunks = interleave(fullText, substrings, limit);
+        List<SearchResult> results = new ArrayList<>(chunks.size());
+        for (int i = 0; i < chunks.size(); i++) {
+            KnowledgeChunk chunk = chunks.get(i);
+            SearchResult result = new SearchResult();
+            result.setChunkId(chunk.getId());
+            result.setDocId(chunk.getDocId());
+            result.setVectorId(chunk.getVectorId());
+            result.setContent(chunk.getContent());
+            result.setPageNumber(chunk.getPageNumber());
+            result.setScore(1f / (i + 1));
+            result.setPayloadLoaded(true);
+            results.add(result);
+        }
+        return results;
+    }
+
+    /**
+     * 交替取两种匹配的结果，同一片段只保留先出现的一条
+     */
+    private static List<KnowledgeChunk> interleave(List<KnowledgeChunk> first, List<KnowledgeChunk> second, int limit) {
+        if (second.isEmpty()) {
+            return first;
+        }
+        if (first.isEmpty()) {
+            return second;
+        }
+        List<KnowledgeChunk> merged = new ArrayList<>(Math.min(limit, first.size() + second.size()));
+        Set<Long> seen = new HashSet<>();
+        for (int i = 0; i < Math.max(first.size(), second.size()) && merged.size() < limit; i++) {
+            if (i < first.size() && seen.add(first.get(i).getId())) {
+                merged.add(first.get(i));
+            }
+            if (i < second.size() && merged.size() < limit && seen.add(second.get(i).getId())) {
+                merged.add(second.get(i));
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * 把问题中至少三个字的汉字串切成连续三个字的子串（"图书馆几点" → 图书馆、书馆几、馆几点），
+     * 构建 ILIKE 模式；只含汉字，不会出现 % 和 _ 通配符
+     *
+     * @return ILIKE 模式，没有可用的汉字串时返回空列表
+     */
+    static List<String> toSubstringPatterns(String query) {
+        Set<String> substrings = new LinkedHashSet<>();
+        Matcher matcher = HAN.matcher(query);
+        while (matcher.find() && substrings.size() < MAX_TERMS) {
+            int[] codePoints = matcher.group().codePoints().toArray();
+            for (int i = 0; i + SUBSTRING_LENGTH <= codePoints.length && substrings.size() < MAX_TERMS; i++) {
+                substrings.add(new String(codePoints, i, SUBSTRING_LENGTH));
+            }
+        }
+        List<String> patterns = new ArrayList<>(substrings.size());
+        for (String substring : substrings) {
+            patterns.add("%" + substring + "%");
+        }
+        return patterns;
+    }
+
+    /**
+     * 从问题中提取字母数字词，构建 OR 连接的前缀 tsquery（如 "cs101:* | a302:*"）
+     *
+     * @return tsquery 文本，没有可用词时返回 null
+     */
+    static String toTsQuery(String query) {
+        Set<String> terms = new LinkedHashSet<>();
+        Matcher matcher = TERM.matcher(query);
+        while (matcher.find() && terms.size() < MAX_TERMS) {
+            // 单个字符按前缀匹配几乎命中所有切块，没有区分度
+            if (matcher.end() - matcher.start() > 1) {
+                terms.add(matcher.group().toLowerCase(Locale.ROOT));
+            }
+        }
+        if (terms.isEmpty()) {
+            return null;
+        }
+        StringBuilder tsQuery = new StringBuilder();
+        for (String term : terms) {
+            if (!tsQuery.isEmpty()) {
+                tsQuery.append(" | ");
+            }
+            tsQuery.append(term).append(":*");
+        }
+        return tsQuery.toString();
+    }
+}
@@ -0,0 +1,52 @@
+package com.echocampus.bot.service.retrieval;
+
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+/**
+ * 本地重排序：按问题与候选的字符二元组重叠率打分
+ * <p>
+ * 不依赖外部服务，用于开发、测试或没有重排序模型时替代 {@link RemoteReranker}；效果弱于cross-encoder。
+ */
+@Component
+public class LocalReranker implements Reranker {
+
+    public static final String NAME = "local";
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public List<Double> score(String query, List<String> documents) {
+        Set<String> queryGrams = bigrams(query);
+        List<Double> scores = new ArrayList<>(documents.size());
+        for (String document : documents) {
+            if (queryGrams.isEmpty()) {
+                scores.add(0.0);
+                continue;
+            }
+            Set<String> docGrams = bigrams(document);
+            long matched = queryGrams.stream().filter(docGrams::contains).count();
+            scores.add((double) matched / queryGrams.size());
+        }
+        return scores;
+    }
+
+    private static Set<String> bigrams(String text) {
+        Set<String> grams = new HashSet<>();
+        if (text == null) {
+            return grams;
+        }
+        String normalized = text.toLowerCase(Locale.ROOT).replaceAll("[\\s\\p{Punct}，。！？、；：“”‘’（）]+", "");
+        for (int i = 0; i + 1 < normalized.length(); i++) {
+            grams.add(normalized.substring(i, i + 2));
+        }
+        if (grams.isEmpty() && !normalized.isEmpty()) {
+            grams.add(normalized);
+        }
+        return grams;
+    }
+}
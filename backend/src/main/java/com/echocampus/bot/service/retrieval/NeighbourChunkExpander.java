@@ -0,0 +1,116 @@
+package com.echocampus.bot.service.retrieval;
+
+import com.echocampus.bot.entity.KnowledgeChunk;
+import com.echocampus.bot.mapper.KnowledgeChunkMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 邻近切块扩展（small-to-big）：为排名靠前的命中补充同一文档中 chunk_index ± window 的切块
+ * <p>
+ * 相邻切块由 {@link DocumentChunkIndex} 定位，正文合并为一次按ID批量查询；
+ * 补充的切块排在命中之后、分数为所属命中分数的一半，由 {@link ContextPacker} 与命中合并为连续段落。
+ * 只用于构建上下文，来源信息仍为原始命中。索引未就绪或查询失败时返回原结果。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class NeighbourChunkExpander {
+
+    static final float NEIGHBOUR_SCORE_RATIO = 0.5f;
+
+    private final DocumentChunkIndex documentChunkIndex;
+    private final KnowledgeChunkMapper knowledgeChunkMapper;
+
+    @Value("${rag.context.expand.enabled:false}")
+    private boolean enabled;
+
+    @Value("${rag.context.expand.window:1}")
+    private int window;
+
+    @Value("${rag.context.expand.top-hits:3}")
+    private int topHits;
+
+    private final AtomicLong expansions = new AtomicLong();
+    private final AtomicLong neighbours = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    /**
+     * 扩展检索结果
+     *
+     * @return 命中在前、补充的相邻切块在后的结果；未扩展时返回原结果
+     */
+    public ChunkHitResolver.ResolvedHits expand(ChunkHitResolver.ResolvedHits hits) {
+        if (!enabled || window <= 0 || hits.chunks().isEmpty() || !documentChunkIndex.isReady()) {
+            return hits;
+        }
+        Set<Long> present = new HashSet<>();
+        hits.chunks().forEach(c -> present.add(c.getId()));
+
+        // 相邻切块ID → 所属命中的分数
+        Map<Long, Float> wanted = new LinkedHashMap<>();
+        for (int rank = 0; rank < hits.chunks().size(); rank++) {
+            KnowledgeChunk hit = hits.chunks().get(rank);
+            int index = documentChunkIndex.indexOf(hit.getDocId(), hit.getId());
+            if (index < 0) {
+                continue;
+            }
+            if (hit.getChunkIndex() == null) {
+                // 载荷命中不带序号，补上后 ContextPacker 才能按序号合并
+                hit.setChunkIndex(index);
+            }
+            if (rank >= topHits) {
+                continue;
+            }
+            float score = hits.scores().getOrDefault(hit.getId(), 0f) * NEIGHBOUR_SCORE_RATIO;
+            for (int offset = -window; offset <= window; offset++) {
+                long neighbourId = documentChunkIndex.chunkAt(hit.getDocId(), index + offset);
+                if (offset != 0 && neighbourId > 0 && !present.contains(neighbourId)) {
+                    wanted.merge(neighbourId, score, Math::max);
+                }
+            }
+        }
+        if (wanted.isEmpty()) {
+            return hits;
+        }
+
+        List<KnowledgeChunk> fetched;
+        try {
+            fetched = new ArrayList<>(knowledgeChunkMapper.selectBatchIds(wanted.keySet()));
+        } catch (Exception e) {
+            failures.incrementAndGet();
+            log.warn("查询相邻切块失败，不扩展: {}", e.getMessage());
+            return hits;
+        }
+        List<KnowledgeChunk> chunks = new ArrayList<>(hits.chunks());
+        Map<Long, Float> scores = new HashMap<>(hits.scores());
+        fetched.sort(Comparator.comparing((KnowledgeChunk c) -> -wanted.getOrDefault(c.getId(), 0f))
+                .thenComparing(KnowledgeChunk::getId));
+        for (KnowledgeChunk chunk : fetched) {
+            chunks.add(chunk);
+            scores.put(chunk.getId(), wanted.get(chunk.getId()));
+        }
+        expansions.incrementAndGet();
+        neighbours.addAndGet(fetched.size());
+        return new ChunkHitResolver.ResolvedHits(chunks, scores, hits.docs());
+    }
+
+    /**
+     * 运行指标：扩展次数、补充的切块数、查询失败次数及索引状态
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("window", window);
+        stats.put("expansions", expansions.get());
+        stats.put("neighbours", neighbours.get());
+        stats.put("failures", failures.get());
+        stats.put("index", documentChunkIndex.getStats());
+        return stats;
+    }
+}
@@ -0,0 +1,85 @@
+package com.echocampus.bot.service.retrieval;
+
+import com.echocampus.bot.service.MilvusService.SearchResult;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 倒数排名融合（Reciprocal Rank Fusion）
+ * <p>
+ * 每个片段的融合分数为 Σ 1/(k + rank)，rank 为其在各路结果中的名次（从1开始）。
+ * 只依赖名次，不需要把余弦相似度和全文检索相关度换算到同一尺度。
+ */
+public final class ReciprocalRankFusion {
+
+    /**
+     * 常用的平滑常数，削弱头部名次之间的差距
+     */
+    public static final int DEFAULT_K = 60;
+
+    private ReciprocalRankFusion() {
+    }
+
+    /**
+     * 融合多路检索结果
+     * <p>
+     * 同一片段保留带完整载荷的那条结果；输出分数归一化到 (0, 1]（在所有路中都排第一时为1），
+     * 便于沿用相关度的展示方式。归一化按传入的路数计算、不跳过空路：
+     * 只有一路命中的片段最高为 1/路数，不会因另一路为空（如向量检索没有超过阈值的结果）被抬成满分。
+     *
+     * @param rankings 各路按相关度降序的结果
+     * @param k 平滑常数
+     * @param limit 最大返回数
+     * @return 按融合分数降序的结果
+     */
+    public static List<SearchResult> fuse(List<List<SearchResult>> rankings, int k, int limit) {
+        Map<Long, Float> scores = new LinkedHashMap<>();
+        Map<Long, SearchResult> results = new LinkedHashMap<>();
+        for (List<SearchResult> ranking : rankings) {
+            Map<Long, Boolean> seen = new LinkedHashMap<>();
+            int rank = 0;
+            for (SearchResult result : ranking) {
+                Long chunkId = result.getChunkId();
+                if (seen.putIfAbsent(chunkId, Boolean.TRUE) != null) {
+                    continue;
+                }
+                rank++;
+                scores.merge(chunkId, 1f / (k + rank), Float::sum);
+                SearchResult existing = results.get(chunkId);
+                if (existing == null || (!existing.isPayloadLoaded() && result.isPayloadLoaded())) {
+                    results.put(chunkId, result);
+                }
+            }
+        }
+        if (results.isEmpty()) {
+            return List.of();
+        }
+
+        float best = rankings.size() / (float) (k + 1);
+        List<SearchResult> fused = new ArrayList<>(results.size());
+        for (Map.Entry<Long, SearchResult> entry : results.entrySet()) {
+            SearchResult source = entry.getValue();
+            SearchResult copy = copyOf(source);
+            copy.setScore(scores.get(entry.getKey()) / best);
+            fused.add(copy);
+        }
+        fused.sort((a, b) -> Float.compare(b.getScore(), a.getScore()));
+        return fused.size() > limit ? new ArrayList<>(fused.subList(0, limit)) : fused;
+    }
+
+    private static SearchResult copyOf(SearchResult source) {
+        SearchResult copy = new SearchResult();
+        copy.setVectorId(source.getVectorId());
+        copy.setChunkId(source.getChunkId());
+        copy.setDocId(source.getDocId());
+        copy.setContent(source.getContent());
+        copy.setCategory(source.getCategory());
+        copy.setPageNumber(source.getPageNumber());
+        copy.setTitle(source.getTitle());
+        copy.setPayloadLoaded(source.isPayloadLoaded());
+        return copy;
+    }
+}
@@ -0,0 +1,97 @@
+package com.echocampus.bot.service.retrieval;
+
+import com.echocampus.bot.config.AiServiceConfig;
+import com.echocampus.bot.service.transport.AiHttpTransport;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * 调用重排序模型接口（cross-encoder）打分
+ * <p>
+ * 请求体为 {model, query, documents, top_n}，兼容 Jina / Cohere 风格及百炼兼容接口；
+ * 响应的 results（或 output.results）中每项为 {index, relevance_score}，未返回的候选记为最低分。
+ * 不重试：超时预算由 {@link RerankService} 控制，失败时按向量检索顺序。
+ */
+@Slf4j
+@Component
+public class RemoteReranker implements Reranker {
+
+    public static final String NAME = "remote";
+
+    private final AiServiceConfig aiConfig;
+    private final AiHttpTransport aiHttpTransport;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    public RemoteReranker(AiServiceConfig aiConfig, AiHttpTransport aiHttpTransport) {
+        this.aiConfig = aiConfig;
+        this.aiHttpTransport = aiHttpTransport;
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public List<Double> score(String query, List<String> documents) {
+        AiServiceConfig.RerankConfig config = aiConfig.getRerank();
+        Map<String, Object> requestBody = new LinkedHashMap<>();
+        requestBody.put("model", config.getModel());
+        requestBody.put("query", query);
+        requestBody.put("documents", documents);
+        requestBody.put("top_n", documents.size());
+
+        try {
+            Request request = new Request.Builder()
+                    .url(config.getApiUrl())
+                    .addHeader("Authorization", "Bearer " + config.getApiKey())
+                    .post(RequestBody.create(objectMapper.writeValueAsString(requestBody),
+                            MediaType.parse("application/json")))
+                    .build();
+            try (Response response = aiHttpTransport.execute(request, null,
+                    Duration.ofMillis(Math.max(1, config.getTimeoutMs())))) {
+                String body = response.body() != null ? response.body().string() : "";
+                if (!response.isSuccessful()) {
+                    throw new IllegalStateException("重排序接口请求失败: code=" + response.code() + ", body=" + body);
+                }
+                return parseScores(objectMapper.readTree(body), documents.size());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("重排序接口请求异常: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 按 index 还原为与候选一一对应的分数
+     */
+    static List<Double> parseScores(JsonNode root, int size) {
+        JsonNode results = root.path("results");
+        if (!results.isArray()) {
+            results = root.path("output").path("results");
+        }
+        if (!results.isArray()) {
+            throw new IllegalStateException("重排序接口响应缺少 results");
+        }
+        Double[] scores = new Double[size];
+        Arrays.fill(scores, Double.NEGATIVE_INFINITY);
+        for (JsonNode item : results) {
+            int index = item.path("index").asInt(-1);
+            JsonNode score = item.has("relevance_score") ? item.get("relevance_score") : item.get("score");
+            if (index >= 0 && index < size && score != null) {
+                scores[index] = score.asDouble();
+            }
+        }
+        return Arrays.asList(scores);
+    }
+}
@@ -0,0 +1,246 @@
+package com.echocampus.bot.service.retrieval;
+
+import com.echocampus.bot.config.AiServiceConfig;
+import com.echocampus.bot.entity.KnowledgeChunk;
+import com.echocampus.bot.utils.LruTtlCache;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 重排序阶段：检索多取候选（ai.rerank.candidates），由重排序模型打分后保留前 topK
+ * <p>
+ * 重排序有硬超时（ai.rerank.timeout-ms），超时或失败时按向量检索顺序截取，不影响回答。
+ * 分数按 模型 + 问题 + 切块ID 缓存，同一问题重复检索时只对未缓存的候选打分。
+ * 返回结果中的分数仍为检索分数（用于来源展示），只有顺序按重排序分数。
+ */
+@Slf4j
+@Component
+public class RerankService {
+
+    private static final int LATENCY_WINDOW = 1024;
+
+    private final Map<String, Reranker> rerankers = new LinkedHashMap<>();
+    private final AiServiceConfig aiConfig;
+
+    private LruTtlCache<String, Double> cache;
+    private ExecutorService executor;
+
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong cachedQueries = new AtomicLong();
+    private final long[] latencies = new long[LATENCY_WINDOW];
+    private long latencyCount;
+
+    public RerankService(List<Reranker> rerankers, AiServiceConfig aiConfig) {
+        rerankers.forEach(r -> this.rerankers.put(r.name(), r));
+        this.aiConfig = aiConfig;
+    }
+
+    @PostConstruct
+    public void init() {
+        AiServiceConfig.RerankConfig config = aiConfig.getRerank();
+        cache = new LruTtlCache<>(config.getCacheMaxEntries(), config.getCacheMaxEntries(),
+                config.getCacheTtlSeconds() * 1000L, (key, score) -> 1);
+        AtomicInteger threadIndex = new AtomicInteger();
+        executor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "rerank-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (isEnabled()) {
+            reranker();
+        }
+        log.info("重排序初始化: enabled={}, provider={}, candidates={}, timeoutMs={}",
+                config.getEnabled(), config.getProvider(), config.getCandidates(), config.getTimeoutMs());
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    public boolean isEnabled() {
+        return Boolean.TRUE.equals(aiConfig.getRerank().getEnabled());
+    }
+
+    /**
+     * 检索时应取的候选数：启用重排序时多取，否则等于 topK
+     */
+    public int candidates(int topK) {
+        return isEnabled() ? Math.max(topK, aiConfig.getRerank().getCandidates()) : topK;
+    }
+
+    /**
+     * 重排序并保留前 topK
+     */
+    public ChunkHitResolver.ResolvedHits rerank(String query, ChunkHitResolver.ResolvedHits hits, int topK) {
+        return rerankAll(List.of(query), List.of(hits), topK).get(0);
+    }
+
+    /**
+     * 批量重排序：各问题并行打分，共用同一超时
+     *
+     * @return 与问题一一对应的结果
+     */
+    public List<ChunkHitResolver.ResolvedHits> rerankAll(List<String> queries, List<ChunkHitResolver.ResolvedHits> hits,
+                                                         int topK) {
+        if (!isEnabled()) {
+            return hits.stream().map(h -> limit(h, h.chunks(), topK)).toList();
+        }
+        AiServiceConfig.RerankConfig config = aiConfig.getRerank();
+        Reranker reranker = reranker();
+        List<Map<Long, Double>> scores = new ArrayList<>(queries.size());
+        List<CompletableFuture<Map<Long, Double>>> pending = new ArrayList<>(queries.size());
+        for (int i = 0; i < queries.size(); i++) {
+            String query = queries.get(i);
+            List<KnowledgeChunk> chunks = hits.get(i).chunks();
+            Map<Long, Double> known = new HashMap<>();
+            List<KnowledgeChunk> misses = new ArrayList<>();
+            for (KnowledgeChunk chunk : chunks) {
+                Double cached = cache.get(cacheKey(config, query, chunk.getId()));
+                if (cached != null) {
+                    known.put(chunk.getId(), cached);
+                } else {
+                    misses.add(chunk);
+                }
+            }
+            scores.add(known);
+            if (chunks.size() <= 1 || misses.isEmpty()) {
+                pending.add(null);
+                if (chunks.size() > 1) {
+                    cachedQueries.incrementAndGet();
+                }
+                continue;
+            }
+            pending.add(CompletableFuture.supplyAsync(() -> score(reranker, config, query, misses), executor));
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(config.getTimeoutMs());
+        List<ChunkHitResolver.ResolvedHits> results = new ArrayList<>(queries.size());
+        for (int i = 0; i < queries.size(); i++) {
+            ChunkHitResolver.ResolvedHits original = hits.get(i);
+            CompletableFuture<Map<Long, Double>> future = pending.get(i);
+            if (future != null) {
+                Map<Long, Double> fetched = await(future, deadline, config.getTimeoutMs());
+                if (fetched == null) {
+                    results.add(limit(original, original.chunks(), topK));
+                    continue;
+                }
+                scores.get(i).putAll(fetched);
+            }
+            Map<Long, Double> queryScores = scores.get(i);
+            List<KnowledgeChunk> ordered = new ArrayList<>(original.chunks());
+            ordered.sort(Comparator.comparingDouble(
+                    (KnowledgeChunk c) -> queryScores.getOrDefault(c.getId(), Double.NEGATIVE_INFINITY)).reversed());
+            results.add(limit(original, ordered, topK));
+        }
+        return results;
+    }
+
+    /**
+     * 运行指标：调用、超时、失败次数，全部命中缓存的查询数，以及最近调用的重排序耗时
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", isEnabled());
+        stats.put("provider", aiConfig.getRerank().getProvider());
+        stats.put("calls", calls.get());
+        stats.put("timeouts", timeouts.get());
+        stats.put("failures", failures.get());
+        stats.put("cachedQueries", cachedQueries.get());
+        long[] window;
+        synchronized (latencies) {
+            window = Arrays.copyOf(latencies, (int) Math.min(latencyCount, LATENCY_WINDOW));
+        }
+        Arrays.sort(window);
+        stats.put("latencyP50Ms", percentileMillis(window, 0.5));
+        stats.put("latencyP95Ms", percentileMillis(window, 0.95));
+        stats.put("latencyMaxMs", percentileMillis(window, 1));
+        stats.put("cache", cache.stats().toMap());
+        return stats;
+    }
+
+    private Map<Long, Double> score(Reranker reranker, AiServiceConfig.RerankConfig config, String query,
+                                    List<KnowledgeChunk> chunks) {
+        long start = System.nanoTime();
+        try {
+            List<Double> values = reranker.score(query, chunks.stream().map(KnowledgeChunk::getContent).toList());
+            if (values.size() != chunks.size()) {
+                throw new IllegalStateException("重排序分数数量与候选数量不一致: " + values.size() + " != " + chunks.size());
+            }
+            Map<Long, Double> scores = new HashMap<>();
+            for (int i = 0; i < chunks.size(); i++) {
+                scores.put(chunks.get(i).getId(), values.get(i));
+                cache.put(cacheKey(config, query, chunks.get(i).getId()), values.get(i));
+            }
+            return scores;
+        } finally {
+            recordLatency(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * 等待打分结果，超时或失败返回null（按检索顺序）
+     */
+    private Map<Long, Double> await(CompletableFuture<Map<Long, Double>> future, long deadlineNanos, long timeoutMs) {
+        calls.incrementAndGet();
+        try {
+            return future.get(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            timeouts.incrementAndGet();
+            log.warn("重排序超时（{}ms），按检索顺序", timeoutMs);
+        } catch (ExecutionException e) {
+            failures.incrementAndGet();
+            log.warn("重排序失败，按检索顺序: {}", e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+        }
+        return null;
+    }
+
+    private static ChunkHitResolver.ResolvedHits limit(ChunkHitResolver.ResolvedHits hits, List<KnowledgeChunk> ordered,
+                                                       int topK) {
+        if (ordered == hits.chunks() && ordered.size() <= topK) {
+            return hits;
+        }
+        return new ChunkHitResolver.ResolvedHits(ordered.subList(0, Math.min(topK, ordered.size())),
+                hits.scores(), hits.docs());
+    }
+
+    private Reranker reranker() {
+        String provider = aiConfig.getRerank().getProvider();
+        Reranker reranker = rerankers.get(provider == null ? "" : provider.trim());
+        if (reranker == null) {
+            throw new IllegalArgumentException("未知的重排序实现: " + provider + "，可用: " + rerankers.keySet());
+        }
+        return reranker;
+    }
+
+    private static String cacheKey(AiServiceConfig.RerankConfig config, String query, Long chunkId) {
+        return config.getProvider() + '|' + config.getModel() + '|' + query.trim() + '|' + chunkId;
+    }
+
+    private void recordLatency(long nanos) {
+        synchronized (latencies) {
+            latencies[(int) (latencyCount++ % LATENCY_WINDOW)] = nanos;
+        }
+    }
+
+    private static double percentileMillis(long[] sortedNanos, double p) {
+        if (sortedNanos.length == 0) {
+            return 0;
+        }
+        int index = Math.min(sortedNanos.length - 1, (int) Math.ceil(p * sortedNanos.length) - 1);
+        return Math.round(sortedNanos[Math.max(0, index)] / 10_000.0) / 100.0;
+    }
+}
@@ -0,0 +1,26 @@
+package com.echocampus.bot.service.retrieval;
+
+import java.util.List;
+
+/**
+ * 重排序模型：对检索候选按与问题的相关度重新打分
+ * <p>
+ * 由 {@link RerankService} 按 ai.rerank.provider 选择，新增实现只需注册为 Bean。
+ */
+public interface Reranker {
+
+    /**
+     * 实现名称（与 ai.rerank.provider 对应）
+     */
+    String name();
+
+    /**
+     * 打分
+     *
+     * @param query 问题
+     * @param documents 候选正文
+     * @return 与 documents 一一对应的相关度分数，越大越相关
+     * @throws RuntimeException 调用失败
+     */
+    List<Double> score(String query, List<String> documents);
+}
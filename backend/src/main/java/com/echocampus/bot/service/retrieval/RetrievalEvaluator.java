@@ -0,0 +1,141 @@
+package com.echocampus.bot.service.retrieval;
+
+import com.echocampus.bot.dto.request.RetrievalEvalRequest.LabelledQuery;
+import com.echocampus.bot.entity.KnowledgeChunk;
+import com.echocampus.bot.service.MilvusService.SearchBudget;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+/**
+ * 检索离线评估：在标注查询集上对比各检索策略的 hit@k 和 MRR
+ * <p>
+ * 每条查询按最大的 k 检索一次，命中位置为第一个相关片段（或属于相关文档的片段）的名次。
+ * 指定多个检索预算时，同一策略在每个预算下各评估一次，可得到召回率与延迟的对应关系。
+ * 评估直接调用检索链路，不经过大模型。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RetrievalEvaluator {
+
+    /**
+     * 报告中最多列出的未命中查询数
+     */
+    private static final int MAX_MISSES = 20;
+
+    private final KnowledgeRetriever knowledgeRetriever;
+
+    /**
+     * 评估
+     *
+     * @param queries 标注查询
+     * @param strategies 策略名称，为空时评估全部策略
+     * @param ks 计算 hit@k 的 k 值
+     * @return 每个策略一份报告
+     */
+    public List<Report> evaluate(List<LabelledQuery> queries, List<String> strategies, List<Integer> ks) {
+        return evaluate(queries, strategies, ks, List.of());
+    }
+
+    /**
+     * 按检索预算评估：每个策略在每个预算下各出一份报告，用于对比召回率和延迟
+     *
+     * @param budgets 检索预算名称（fast / balanced / accurate），为空时只使用配置的默认参数
+     * @throws IllegalArgumentException k 值或预算无效
+     */
+    public List<Report> evaluate(List<LabelledQuery> queries, List<String> strategies, List<Integer> ks,
+                                 List<String> budgets) {
+        List<String> names = strategies == null || strategies.isEmpty()
+                ? new ArrayList<>(knowledgeRetriever.getStrategyNames()) : strategies;
+        List<Integer> sortedKs = ks.stream().filter(k -> k > 0).distinct().sorted().toList();
+        if (sortedKs.isEmpty()) {
+            throw new IllegalArgumentException("k 值必须大于0");
+        }
+        int maxK = sortedKs.get(sortedKs.size() - 1);
+        List<SearchBudget> searchBudgets = new ArrayList<>();
+        if (budgets == null || budgets.isEmpty()) {
+            searchBudgets.add(null);
+        } else {
+            budgets.stream().map(SearchBudget::of).distinct().forEach(searchBudgets::add);
+        }
+
+        List<Report> reports = new ArrayList<>();
+        for (String name : names) {
+            for (SearchBudget budget : searchBudgets) {
+                int[] ranks = new int[queries.size()];
+                long totalNanos = 0;
+                for (int i = 0; i < queries.size(); i++) {
+                    LabelledQuery query = queries.get(i);
+                    long start = System.nanoTime();
+                    List<KnowledgeChunk> chunks = knowledgeRetriever.retrieve(query.getQuery(), maxK, name, budget).chunks();
+                    totalNanos += System.nanoTime() - start;
+                    ranks[i] = firstRelevantRank(chunks, query);
+                }
+                Report report = report(name, budget, queries, ranks, sortedKs, totalNanos);
+                log.info("检索评估: strategy={}, budget={}, queries={}, hitAtK={}, mrr={}", name, report.budget(),
+                        report.queries(), report.hitAtK(), String.format("%.3f", report.mrr()));
+                reports.add(report);
+            }
+        }
+        return reports;
+    }
+
+    /**
+     * 第一个相关结果的名次（从1开始），没有相关结果时返回0
+     */
+    static int firstRelevantRank(List<KnowledgeChunk> chunks, LabelledQuery query) {
+        Set<Long> chunkIds = query.getRelevantChunkIds() != null ? query.getRelevantChunkIds() : Set.of();
+        Set<Long> docIds = query.getRelevantDocIds() != null ? query.getRelevantDocIds() : Set.of();
+        for (int i = 0; i < chunks.size(); i++) {
+            KnowledgeChunk chunk = chunks.get(i);
+            if (chunkIds.contains(chunk.getId()) || docIds.contains(chunk.getDocId())) {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    static Report report(String strategy, SearchBudget budget, List<LabelledQuery> queries, int[] ranks,
+                         List<Integer> ks, long totalNanos) {
+        Map<Integer, Double> hitAtK = new LinkedHashMap<>();
+        for (int k : ks) {
+            int hits = 0;
+            for (int rank : ranks) {
+                if (rank > 0 && rank <= k) {
+                    hits++;
+                }
+            }
+            hitAtK.put(k, ranks.length == 0 ? 0 : (double) hits / ranks.length);
+        }
+        double reciprocalSum = 0;
+        List<String> misses = new ArrayList<>();
+        for (int i = 0; i < ranks.length; i++) {
+            if (ranks[i] > 0) {
+                reciprocalSum += 1.0 / ranks[i];
+            } else if (misses.size() < MAX_MISSES) {
+                misses.add(queries.get(i).getQuery());
+            }
+        }
+        double mrr = ranks.length == 0 ? 0 : reciprocalSum / ranks.length;
+        long avgMillis = ranks.length == 0 ? 0 : totalNanos / ranks.length / 1_000_000;
+        String budgetName = budget != null ? budget.name().toLowerCase(Locale.ROOT) : "default";
+        return new Report(strategy, budgetName, ranks.length, hitAtK, mrr, avgMillis, misses);
+    }
+
+    /**
+     * 单个策略的评估报告
+     *
+     * @param strategy 策略名称
+     * @param budget 检索预算（default 表示配置的默认参数）
+     * @param queries 查询数
+     * @param hitAtK k → 前k个结果中含相关结果的查询占比
+     * @param mrr 平均倒数排名（检索深度为最大的k）
+     * @param avgMillis 平均检索耗时
+     * @param misses 部分未命中的查询
+     */
+    public record Report(String strategy, String budget, int queries, Map<Integer, Double> hitAtK, double mrr,
+                         long avgMillis, List<String> misses) {}
+}
@@ -0,0 +1,70 @@
+package com.echocampus.bot.service.retrieval;
+
+import com.echocampus.bot.service.MilvusService.SearchBudget;
+import com.echocampus.bot.service.MilvusService.SearchFilter;
+import com.echocampus.bot.service.MilvusService.SearchResult;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 知识检索策略
+ * <p>
+ * 由 {@link KnowledgeRetriever} 按 rag.retrieval.strategy 选择，返回按相关度降序的检索结果。
+ * 结果可以带完整载荷（正文、页码），由 {@link ChunkHitResolver} 决定是否回查数据库。
+ */
+public interface RetrievalStrategy {
+
+    /**
+     * 策略名称（配置中使用）
+     */
+    String name();
+
+    /**
+     * 检索
+     *
+     * @param query 用户问题或关键词（非空）
+     * @param topK 返回数量
+     * @return 按相关度降序的结果，未命中或失败时返回空列表
+     */
+    default List<SearchResult> search(String query, int topK) {
+        return search(query, topK, SearchFilter.NONE);
+    }
+
+    /**
+     * 在限定的分类/文档范围内检索
+     *
+     * @param query 用户问题或关键词（非空）
+     * @param topK 返回数量
+     * @param filter 检索范围，{@link SearchFilter#NONE} 表示不限
+     * @return 按相关度降序的结果，只包含满足条件的片段
+     */
+    List<SearchResult> search(String query, int topK, SearchFilter filter);
+
+    /**
+     * 按检索预算检索（预算决定向量检索的 ef / nprobe，用于在延迟和召回率之间取舍）
+     * <p>
+     * 默认忽略预算；含向量检索的策略按预算调整向量检索参数。
+     *
+     * @param budget 检索预算，为null时使用配置的默认参数
+     */
+    default List<SearchResult> search(String query, int topK, SearchFilter filter, SearchBudget budget) {
+        return search(query, topK, filter);
+    }
+
+    /**
+     * 批量检索（同一轮对话中的多个问题），默认逐条检索
+     *
+     * @param queries 问题列表（非空字符串）
+     * @param topK 每个问题的返回数量
+     * @param filter 检索范围
+     * @return 与问题一一对应的结果
+     */
+    default List<List<SearchResult>> searchBatch(List<String> queries, int topK, SearchFilter filter) {
+        List<List<SearchResult>> results = new ArrayList<>(queries.size());
+        for (String query : queries) {
+            results.add(search(query, topK, filter));
+        }
+        return results;
+    }
+}
@@ -0,0 +1,105 @@
+package com.echocampus.bot.service.retrieval;
+
+import com.echocampus.bot.service.EmbeddingService;
+import com.echocampus.bot.service.MilvusService;
+import com.echocampus.bot.service.MilvusService.SearchBudget;
+import com.echocampus.bot.service.MilvusService.SearchFilter;
+import com.echocampus.bot.service.MilvusService.SearchResult;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 纯向量检索：问题向量化后在Milvus中做近似最近邻搜索
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class VectorRetrievalStrategy implements RetrievalStrategy {
+
+    public static final String NAME = "vector";
+
+    private final EmbeddingService embeddingService;
+    private final MilvusService milvusService;
+
+    @Value("${rag.similarity-threshold:0.6}")
+    private float similarityThreshold;
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public List<SearchResult> search(String query, int topK, SearchFilter filter) {
+        return search(query, topK, filter, null);
+    }
+
+    @Override
+    public List<SearchResult> search(String query, int topK, SearchFilter filter, SearchBudget budget) {
+        float[] queryVector = embeddingService.embed(query);
+        if (queryVector == null || allZeros(queryVector)) {
+            log.warn("问题向量化失败: {}", query);
+            return List.of();
+        }
+        return milvusService.search(queryVector, topK, similarityThreshold, filter, budget);
+    }
+
+    /**
+     * 批量检索：全部问题一次向量化、一次Milvus请求
+     */
+    @Override
+    public List<List<SearchResult>> searchBatch(List<String> queries, int topK, SearchFilter filter) {
+        List<List<SearchResult>> results = new ArrayList<>(queries.size());
+        queries.forEach(q -> results.add(List.of()));
+        if (queries.isEmpty()) {
+            return results;
+        }
+
+        List<float[]> vectors;
+        try {
+            vectors = embeddingService.embedQueries(queries);
+        } catch (RuntimeException e) {
+            log.warn("批量问题向量化失败: count={}, error={}", queries.size(), e.getMessage());
+            return results;
+        }
+
+        // 向量化失败的问题不参与检索，结果为空
+        List<Integer> indexes = new ArrayList<>(queries.size());
+        List<float[]> valid = new ArrayList<>(queries.size());
+        for (int i = 0; i < queries.size(); i++) {
+            float[] vector = vectors.get(i);
+            if (vector == null || allZeros(vector)) {
+                log.warn("问题向量化失败: {}", queries.get(i));
+            } else {
+                indexes.add(i);
+                valid.add(vector);
+            }
+        }
+        if (valid.isEmpty()) {
+            return results;
+        }
+        List<List<SearchResult>> hits = milvusService.searchBatch(valid, topK, similarityThreshold, filter);
+        for (int i = 0; i < indexes.size(); i++) {
+            results.set(indexes.get(i), hits.get(i));
+        }
+        return results;
+    }
+
+    public float getSimilarityThreshold() {
+        return similarityThreshold;
+    }
+
+    private static boolean allZeros(float[] vector) {
+        for (float v : vector) {
+            if (v != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
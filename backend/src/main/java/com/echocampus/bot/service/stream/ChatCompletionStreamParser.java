@@ -0,0 +1,289 @@
+package com.echocampus.bot.service.stream;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * OpenAI 兼容 chat/completions 流式响应（SSE）解析器
+ * <p>
+ * 直接在字节流上按行切分，每个 data 行用 Jackson 流式 {@link JsonParser} 解析，
+ * 只取 choices[0].delta 中的 content 和 tool_calls，其余字段跳过；不构造行字符串和 JsonNode 树，
+ * 每个内容片段只分配一个 String。遇到 data: [DONE] 或流结束时返回。
+ * 数据行解析失败时跳过该行的剩余部分（出错位置之前的内容已回调）。
+ * <p>
+ * 阻塞读取时用 {@link #parse(InputStream, Listener)}；数据块由其他线程推送（非阻塞HTTP客户端）时
+ * 创建实例，按到达顺序调用 {@link #feed} 并在流结束时调用 {@link #finish()}。实例非线程安全。
+ */
+@Slf4j
+public final class ChatCompletionStreamParser {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final byte[] DATA_PREFIX = "data:".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] DONE = "[DONE]".getBytes(StandardCharsets.US_ASCII);
+    private static final int READ_BUFFER_SIZE = 8192;
+
+    /**
+     * 解析结果回调，在调用 {@link #parse} 或 {@link #feed} 的线程上按到达顺序调用
+     */
+    public interface Listener {
+
+        /**
+         * 回答内容片段（非空）
+         */
+        void onContent(String content);
+
+        /**
+         * 工具调用增量：同一 index 的多个增量依次拼接，未出现的字段为null
+         */
+        default void onToolCallDelta(int index, String id, String type, String name, String arguments) {
+        }
+    }
+
+    private final Listener listener;
+    // 未遇到换行的不完整行
+    private byte[] line = new byte[READ_BUFFER_SIZE];
+    private int lineLength;
+    private boolean done;
+
+    public ChatCompletionStreamParser(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * 解析流直到 [DONE] 或流结束，不关闭输入流
+     *
+     * @return 是否读到了 [DONE]
+     */
+    public static boolean parse(InputStream in, Listener listener) throws IOException {
+        ChatCompletionStreamParser parser = new ChatCompletionStreamParser(listener);
+        byte[] read = new byte[READ_BUFFER_SIZE];
+        int n;
+        while ((n = in.read(read)) != -1) {
+            if (parser.feed(read, 0, n)) {
+                return true;
+            }
+        }
+        return parser.finish();
+    }
+
+    /**
+     * 处理到达的一段数据，不完整的行留到下一次
+     *
+     * @return 是否已读到 [DONE]（之后的数据忽略）
+     */
+    public boolean feed(byte[] bytes, int offset, int length) {
+        int start = offset;
+        int end = offset + length;
+        for (int i = offset; i < end && !done; i++) {
+            if (bytes[i] != '\n') {
+                continue;
+            }
+            append(bytes, start, i - start);
+            done = handleLine(line, lineLength, listener);
+            lineLength = 0;
+            start = i + 1;
+        }
+        if (!done) {
+            append(bytes, start, end - start);
+        }
+        return done;
+    }
+
+    /**
+     * 处理到达的一段数据，读取后缓冲区的位置移到末尾
+     *
+     * @see #feed(byte[], int, int)
+     */
+    public boolean feed(ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            boolean result = feed(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            buffer.position(buffer.limit());
+            return result;
+        }
+        byte[] chunk = new byte[Math.min(buffer.remaining(), READ_BUFFER_SIZE)];
+        while (buffer.hasRemaining() && !done) {
+            int n = Math.min(chunk.length, buffer.remaining());
+            buffer.get(chunk, 0, n);
+            feed(chunk, 0, n);
+        }
+        return done;
+    }
+
+    /**
+     * 流结束：处理最后一行没有换行的数据
+     *
+     * @return 是否读到了 [DONE]
+     */
+    public boolean finish() {
+        if (!done && lineLength > 0) {
+            done = handleLine(line, lineLength, listener);
+            lineLength = 0;
+        }
+        return done;
+    }
+
+    private void append(byte[] bytes, int offset, int length) {
+        if (lineLength + length > line.length) {
+            line = Arrays.copyOf(line, Math.max(line.length * 2, lineLength + length));
+        }
+        System.arraycopy(bytes, offset, line, lineLength, length);
+        lineLength += length;
+    }
+
+    /**
+     * 处理一行
+     *
+     * @return 是否为 [DONE]
+     */
+    private static boolean handleLine(byte[] line, int length, Listener listener) {
+        if (length > 0 && line[length - 1] == '\r') {
+            length--;
+        }
+        if (!startsWith(line, length, DATA_PREFIX, 0)) {
+            return false;
+        }
+        int offset = DATA_PREFIX.length;
+        while (offset < length && line[offset] == ' ') {
+            offset++;
+        }
+        int end = length;
+        while (end > offset && line[end - 1] == ' ') {
+            end--;
+        }
+        if (end - offset == DONE.length && startsWith(line, end, DONE, offset)) {
+            return true;
+        }
+        if (end > offset) {
+            try (JsonParser parser = JSON_FACTORY.createParser(line, offset, end - offset)) {
+                parseChunk(parser, listener);
+            } catch (IOException e) {
+                log.debug("解析流式响应数据失败: {}", e.getMessage());
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 顶层对象：只进入 choices
+     */
+    private static void parseChunk(JsonParser parser, Listener listener) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            return;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("choices".equals(field) && value == JsonToken.START_ARRAY) {
+                parseChoices(parser, listener);
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    /**
+     * choices 数组：只处理第一个选项的 delta
+     */
+    private static void parseChoices(JsonParser parser, Listener listener) throws IOException {
+        boolean first = true;
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (!first || parser.currentToken() != JsonToken.START_OBJECT) {
+                parser.skipChildren();
+                continue;
+            }
+            first = false;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("delta".equals(field) && value == JsonToken.START_OBJECT) {
+                    parseDelta(parser, listener);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+    }
+
+    private static void parseDelta(JsonParser parser, Listener listener) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("content".equals(field) && value == JsonToken.VALUE_STRING) {
+                String content = parser.getText();
+                if (!content.isEmpty()) {
+                    listener.onContent(content);
+                }
+            } else if ("tool_calls".equals(field) && value == JsonToken.START_ARRAY) {
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    parseToolCall(parser, listener);
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private static void parseToolCall(JsonParser parser, Listener listener) throws IOException {
+        int index = 0;
+        String id = null;
+        String type = null;
+        String name = null;
+        String arguments = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "index" -> index = value == JsonToken.VALUE_NUMBER_INT ? parser.getIntValue() : index;
+                case "id" -> id = textOrNull(parser, value);
+                case "type" -> type = textOrNull(parser, value);
+                case "function" -> {
+                    if (value != JsonToken.START_OBJECT) {
+                        parser.skipChildren();
+                        break;
+                    }
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String functionField = parser.currentName();
+                        JsonToken functionValue = parser.nextToken();
+                        if ("name".equals(functionField)) {
+                            name = textOrNull(parser, functionValue);
+                        } else if ("arguments".equals(functionField)) {
+                            arguments = textOrNull(parser, functionValue);
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                }
+                default -> parser.skipChildren();
+            }
+        }
+        listener.onToolCallDelta(index, id, type, name, arguments);
+    }
+
+    private static String textOrNull(JsonParser parser, JsonToken value) throws IOException {
+        if (value == JsonToken.VALUE_STRING) {
+            return parser.getText();
+        }
+        parser.skipChildren();
+        return null;
+    }
+
+    private static boolean startsWith(byte[] line, int length, byte[] prefix, int offset) {
+        if (length - offset < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (line[offset + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
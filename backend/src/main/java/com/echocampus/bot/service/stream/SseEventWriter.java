@@ -0,0 +1,116 @@
+package com.echocampus.bot.service.stream;
+
+import com.echocampus.bot.dto.response.StreamChatResponse;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 把流式聊天事件编码为SSE帧，直接写入响应输出流
+ * <p>
+ * 每个事件编码为 {@code event:<type>\ndata:<json>\n\n}，整帧在复用的缓冲区中拼好后一次写出并刷新。
+ * 内容事件（占事件总数的绝大部分）由 {@link JsonGenerator} 直接写出 type、conversationId、messageId、content
+ * 四个字段，不经过 ObjectMapper 的对象序列化；其余事件仍按 {@link StreamChatResponse} 完整序列化。
+ * 非线程安全：一个连接一个实例，同一时刻只由一个线程写出（见 {@link TokenCoalescer.Sink}）。
+ */
+public class SseEventWriter {
+
+    private static final Map<StreamChatResponse.EventType, byte[]> PREFIXES =
+            new EnumMap<>(StreamChatResponse.EventType.class);
+    private static final byte[] FRAME_END = "\n\n".getBytes(StandardCharsets.US_ASCII);
+
+    static {
+        for (StreamChatResponse.EventType type : StreamChatResponse.EventType.values()) {
+            PREFIXES.put(type, ("event:" + type.name().toLowerCase(Locale.ROOT) + "\ndata:")
+                    .getBytes(StandardCharsets.US_ASCII));
+        }
+    }
+
+    private final OutputStream out;
+    private final ObjectMapper objectMapper;
+    private final FrameBuffer frame = new FrameBuffer();
+    private final JsonGenerator generator;
+    private volatile boolean failed;
+
+    public SseEventWriter(OutputStream out, ObjectMapper objectMapper) throws IOException {
+        this.out = out;
+        this.objectMapper = objectMapper;
+        this.generator = objectMapper.getFactory().createGenerator(frame);
+        // 每帧只有一个JSON值，不需要值之间的分隔符
+        generator.setRootValueSeparator(null);
+    }
+
+    /**
+     * 写出一个事件并刷新到客户端
+     *
+     * @throws IOException 客户端已断开等写出失败，之后 {@link #isFailed()} 为true
+     */
+    public void send(StreamChatResponse event) throws IOException {
+        try {
+            writeFrame(event);
+        } catch (IOException e) {
+            failed = true;
+            throw e;
+        }
+    }
+
+    /**
+     * 是否已写出失败（客户端已断开）
+     */
+    public boolean isFailed() {
+        return failed;
+    }
+
+    private void writeFrame(StreamChatResponse event) throws IOException {
+        frame.reset();
+        frame.write(PREFIXES.get(event.getType()));
+        if (event.getType() == StreamChatResponse.EventType.CONTENT) {
+            writeContent(event.getConversationId(), event.getMessageId(), event.getContent());
+        } else {
+            objectMapper.writeValue(generator, event);
+        }
+        generator.flush();
+        frame.write(FRAME_END);
+        out.write(frame.buffer(), 0, frame.size());
+        out.flush();
+    }
+
+    private void writeContent(Long conversationId, Long messageId, String content) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("type", StreamChatResponse.EventType.CONTENT.name());
+        writeNumberField("conversationId", conversationId);
+        writeNumberField("messageId", messageId);
+        generator.writeStringField("content", content);
+        generator.writeEndObject();
+    }
+
+    private void writeNumberField(String name, Long value) throws IOException {
+        generator.writeFieldName(name);
+        if (value == null) {
+            generator.writeNull();
+        } else {
+            generator.writeNumber(value);
+        }
+    }
+
+    /**
+     * 可直接取出内部数组的缓冲区，避免 toByteArray 复制
+     */
+    private static final class FrameBuffer extends ByteArrayOutputStream {
+
+        FrameBuffer() {
+            super(512);
+        }
+
+        byte[] buffer() {
+            return buf;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.echocampus.bot.service.stream;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 流式对话的取消标记：客户端断开（SSE写出失败、连接关闭或超时）时取消，
+ * 各层在取消时中止进行中的上游请求、不再发起新的工具调用轮次，已生成的部分回答照常保存
+ * <p>
+ * 取消只发生一次；注册的回调在取消时（或注册时已取消则立即）在调用 {@link #cancel()} 的线程上执行。线程安全。
+ */
+@Slf4j
+public final class StreamCancellation {
+
+    private final Set<Runnable> callbacks = new LinkedHashSet<>();
+    private volatile boolean cancelled;
+
+    /**
+     * 不会被取消的标记（不支持取消的调用方使用）
+     */
+    public static StreamCancellation none() {
+        return new StreamCancellation();
+    }
+
+    /**
+     * 取消：执行所有已注册的回调，重复调用无效果
+     */
+    public void cancel() {
+        List<Runnable> toRun;
+        synchronized (this) {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            toRun = new ArrayList<>(callbacks);
+            callbacks.clear();
+        }
+        toRun.forEach(StreamCancellation::run);
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * 注册取消时执行的回调（如中止HTTP请求）；已取消时立即执行
+     *
+     * @return 注销句柄，请求结束后关闭，避免同一标记上的回调随工具调用轮次累积
+     */
+    public Registration onCancel(Runnable callback) {
+        synchronized (this) {
+            if (!cancelled) {
+                callbacks.add(callback);
+                return () -> {
+                    synchronized (this) {
+                        callbacks.remove(callback);
+                    }
+                };
+            }
+        }
+        run(callback);
+        return () -> { };
+    }
+
+    private static void run(Runnable callback) {
+        try {
+            callback.run();
+        } catch (RuntimeException e) {
+            log.warn("取消回调执行失败: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 回调注册句柄
+     */
+    public interface Registration extends AutoCloseable {
+
+        @Override
+        void close();
+    }
+}
@@ -0,0 +1,409 @@
+package com.echocampus.bot.service.stream;
+
+import com.echocampus.bot.config.AiServiceConfig;
+import com.echocampus.bot.dto.response.StreamChatResponse;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 流式回答的内容片段合并
+ * <p>
+ * LLM 每个片段通常只有一两个字，逐个写出时每个片段都是一次SSE事件和一次网络写。每个连接一个 {@link Sink}，
+ * 连续的内容片段先在缓冲区中合并，满足任一条件时合并为一个内容事件写出：
+ * <ul>
+ *     <li>缓冲字符数达到 ai.stream.max-buffer-chars</li>
+ *     <li>片段以句末标点或换行结尾（ai.stream.flush-on-sentence-end）</li>
+ *     <li>距缓冲第一个片段超过合并窗口；片段停止到达时由共享的定时线程发出写出信号</li>
+ * </ul>
+ * 所有网络写都在该连接自己的执行器上进行：产生事件的线程（HTTP客户端共享回调线程）和所有连接共用的定时线程
+ * 只追加缓冲、排入待写队列，不做可能阻塞的网络写，一个慢客户端不会拖住回调线程或推迟其他连接的写出。
+ * 执行器满载、在提交线程上直接执行（CallerRunsPolicy）时不写出，稍后重新提交。
+ * 合并窗口在 min-flush-interval-ms 和 max-flush-interval-ms 之间自适应：取最近写出耗时（指数滑动平均）的
+ * {@value #LATENCY_MULTIPLIER} 倍，客户端网络慢、写出阻塞时自动攒更多片段。
+ * 其他事件（状态、来源、完成、错误）写出前先写出缓冲的内容，保证事件顺序不变。
+ */
+@Slf4j
+@Component
+public class TokenCoalescer {
+
+    /**
+     * 合并窗口 = 写出耗时滑动平均 × 该倍数（再限制在配置的最短和最长窗口之间）
+     */
+    static final int LATENCY_MULTIPLIER = 4;
+
+    private static final String SENTENCE_ENDS = "。！？；…\n.!?;";
+
+    private final AiServiceConfig aiConfig;
+    private ScheduledExecutorService scheduler;
+    private volatile Thread schedulerThread;
+
+    private final AtomicLong contentEvents = new AtomicLong();
+    private final AtomicLong contentFrames = new AtomicLong();
+    private final AtomicLong sizeFlushes = new AtomicLong();
+    private final AtomicLong sentenceFlushes = new AtomicLong();
+    private final AtomicLong windowFlushes = new AtomicLong();
+    private final AtomicLong timerFlushes = new AtomicLong();
+
+    public TokenCoalescer(AiServiceConfig aiConfig) {
+        this.aiConfig = aiConfig;
+    }
+
+    @PostConstruct
+    public void init() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "sse-coalesce-flush");
+            thread.setDaemon(true);
+            schedulerThread = thread;
+            return thread;
+        });
+        // 大部分定时写出在到期前已被正常写出取代，取消后立即移出队列
+        executor.setRemoveOnCancelPolicy(true);
+        scheduler = executor;
+        AiServiceConfig.StreamConfig config = aiConfig.getStream();
+        log.info("流式内容合并初始化: enabled={}, maxBufferChars={}, flushIntervalMs={}-{}, flushOnSentenceEnd={}",
+                config.getCoalesceEnabled(), config.getMaxBufferChars(), config.getMinFlushIntervalMs(),
+                config.getMaxFlushIntervalMs(), config.getFlushOnSentenceEnd());
+    }
+
+    @PreDestroy
+    public void destroy() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * 为一个连接创建事件出口，流结束时必须调用 {@link Sink#close()} 写出剩余内容
+     *
+     * @param flushExecutor 执行全部写出的执行器（该连接所属的流式响应线程池）
+     */
+    public Sink open(SseEventWriter writer, Executor flushExecutor) {
+        return new Sink(writer, flushExecutor, aiConfig.getStream());
+    }
+
+    /**
+     * 运行指标：内容片段数、写出的内容事件数（两者之比为平均合并片段数）及各写出原因的次数
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long events = contentEvents.get();
+        long frames = contentFrames.get();
+        stats.put("enabled", aiConfig.getStream().getCoalesceEnabled());
+        stats.put("contentEvents", events);
+        stats.put("contentFrames", frames);
+        stats.put("eventsPerFrame", frames == 0 ? 0.0 : Math.round(events * 100.0 / frames) / 100.0);
+        stats.put("sizeFlushes", sizeFlushes.get());
+        stats.put("sentenceFlushes", sentenceFlushes.get());
+        stats.put("windowFlushes", windowFlushes.get());
+        stats.put("timerFlushes", timerFlushes.get());
+        return stats;
+    }
+
+    static boolean endsSentence(String content) {
+        return !content.isEmpty() && SENTENCE_ENDS.indexOf(content.charAt(content.length() - 1)) >= 0;
+    }
+
+    /**
+     * 单个连接的事件出口
+     * <p>
+     * 产生事件的线程（非阻塞模式下为HTTP客户端的共享回调线程）只在对象锁内追加缓冲和待写队列，从不写网络；
+     * 待写事件按顺序由该连接的执行器取出写出，同一时刻只有一个线程持有写锁使用底层 {@link SseEventWriter}。
+     * 写出跟不上时，队列中相邻的同一消息的内容事件合并为一个，不随片段数增长。
+     */
+    public final class Sink {
+
+        private final SseEventWriter writer;
+        private final Executor flushExecutor;
+        private final boolean enabled;
+        private final int maxBufferChars;
+        private final long minWindowNanos;
+        private final long maxWindowNanos;
+        private final boolean flushOnSentenceEnd;
+        private final Runnable timerFlush = this::flushOnTimer;
+        private final Runnable drainSignal = this::signalDrain;
+        private final ReentrantLock writeLock = new ReentrantLock();
+
+        private final StringBuilder buffer = new StringBuilder();
+        private final ArrayDeque<StreamChatResponse> pending = new ArrayDeque<>();
+        private Long conversationId;
+        private Long messageId;
+        private long bufferStartNanos;
+        private long writeLatencyNanos;
+        private ScheduledFuture<?> pendingFlush;
+        private boolean drainScheduled;
+        private boolean closed;
+        private CompletableFuture<Void> closeFuture;
+
+        private Sink(SseEventWriter writer, Executor flushExecutor, AiServiceConfig.StreamConfig config) {
+            this.writer = writer;
+            this.flushExecutor = flushExecutor;
+            this.enabled = Boolean.TRUE.equals(config.getCoalesceEnabled());
+            this.maxBufferChars = config.getMaxBufferChars();
+            this.minWindowNanos = TimeUnit.MILLISECONDS.toNanos(config.getMinFlushIntervalMs());
+            this.maxWindowNanos = Math.max(minWindowNanos, TimeUnit.MILLISECONDS.toNanos(config.getMaxFlushIntervalMs()));
+            this.flushOnSentenceEnd = Boolean.TRUE.equals(config.getFlushOnSentenceEnd());
+        }
+
+        /**
+         * 发送一个事件：内容片段进入缓冲区，其他事件先把缓冲内容排入待写队列再排入；不在调用线程上写出
+         *
+         * @throws IOException 之前的写出已失败（客户端已断开）
+         */
+        public void send(StreamChatResponse event) throws IOException {
+            if (writer.isFailed()) {
+                throw new IOException("SSE写出已失败，客户端可能已断开");
+            }
+            boolean drain;
+            synchronized (this) {
+                if (event.getType() != StreamChatResponse.EventType.CONTENT) {
+                    flush();
+                    pending.add(event);
+                } else if (!append(event)) {
+                    return;
+                }
+                drain = markDrain();
+            }
+            if (drain) {
+                dispatchDrain();
+            }
+        }
+
+        /**
+         * 是否已写出失败（客户端已断开）
+         */
+        public boolean isFailed() {
+            return writer.isFailed();
+        }
+
+        /**
+         * 排入剩余内容，之后定时写出不再生效
+         *
+         * @return 全部事件写出后完成；写出失败时异常完成
+         */
+        public CompletableFuture<Void> close() {
+            boolean drain;
+            CompletableFuture<Void> future;
+            synchronized (this) {
+                if (closeFuture != null) {
+                    return closeFuture;
+                }
+                closeFuture = new CompletableFuture<>();
+                future = closeFuture;
+                flush();
+                closed = true;
+                drain = markDrain();
+                if (!drain && !drainScheduled) {
+                    closeFuture.complete(null);
+                }
+            }
+            if (drain) {
+                dispatchDrain();
+            }
+            return future;
+        }
+
+        /**
+         * 当前合并窗口（纳秒）
+         */
+        synchronized long window() {
+            return Math.min(maxWindowNanos, Math.max(minWindowNanos, writeLatencyNanos * LATENCY_MULTIPLIER));
+        }
+
+        /**
+         * 内容片段进入缓冲区，满足写出条件时排入待写队列（持有对象锁）
+         *
+         * @return 片段为空时返回false
+         */
+        private boolean append(StreamChatResponse event) {
+            String content = event.getContent();
+            if (content == null || content.isEmpty()) {
+                return false;
+            }
+            contentEvents.incrementAndGet();
+            if (!enabled) {
+                pending.add(event);
+                return true;
+            }
+            if (buffer.length() > 0 && (!Objects.equals(conversationId, event.getConversationId())
+                    || !Objects.equals(messageId, event.getMessageId()))) {
+                flush();
+            }
+            long now = System.nanoTime();
+            if (buffer.length() == 0) {
+                conversationId = event.getConversationId();
+                messageId = event.getMessageId();
+                bufferStartNanos = now;
+                pendingFlush = scheduler.schedule(timerFlush, window(), TimeUnit.NANOSECONDS);
+            }
+            buffer.append(content);
+            if (buffer.length() >= maxBufferChars) {
+                sizeFlushes.incrementAndGet();
+                flush();
+            } else if (flushOnSentenceEnd && endsSentence(content)) {
+                sentenceFlushes.incrementAndGet();
+                flush();
+            } else if (now - bufferStartNanos >= window()) {
+                windowFlushes.incrementAndGet();
+                flush();
+            }
+            return true;
+        }
+
+        /**
+         * 缓冲内容排入待写队列（持有对象锁）；队尾是同一消息尚未写出的内容事件时直接合并
+         */
+        private void flush() {
+            if (pendingFlush != null) {
+                pendingFlush.cancel(false);
+                pendingFlush = null;
+            }
+            if (buffer.length() == 0) {
+                return;
+            }
+            String content = buffer.toString();
+            buffer.setLength(0);
+            StreamChatResponse last = pending.peekLast();
+            if (last != null && last.getType() == StreamChatResponse.EventType.CONTENT
+                    && Objects.equals(last.getConversationId(), conversationId)
+                    && Objects.equals(last.getMessageId(), messageId)) {
+                pending.pollLast();
+                content = last.getContent() + content;
+            }
+            pending.add(StreamChatResponse.content(conversationId, messageId, content));
+        }
+
+        /**
+         * 有待写事件且没有已提交的写出任务时标记提交（持有对象锁）
+         *
+         * @return 调用方需要在锁外提交写出任务
+         */
+        private boolean markDrain() {
+            if (drainScheduled || pending.isEmpty()) {
+                return false;
+            }
+            drainScheduled = true;
+            return true;
+        }
+
+        private void dispatchDrain() {
+            Thread submitter = Thread.currentThread();
+            try {
+                flushExecutor.execute(() -> drain(submitter));
+            } catch (RejectedExecutionException e) {
+                log.debug("SSE写出任务被拒绝: {}", e.getMessage());
+                fail(new IOException("SSE写出任务被拒绝", e));
+            }
+        }
+
+        /**
+         * 在连接的执行器上按顺序写出待写事件
+         */
+        private void drain(Thread submitter) {
+            // 执行器满载时由提交线程直接执行（CallerRunsPolicy）：提交线程可能是HTTP回调线程或定时线程，
+            // 不在其上写出，稍后重新提交
+            if (Thread.currentThread() == submitter) {
+                synchronized (this) {
+                    drainScheduled = false;
+                }
+                try {
+                    scheduler.schedule(drainSignal, minWindowNanos, TimeUnit.NANOSECONDS);
+                } catch (RejectedExecutionException e) {
+                    fail(new IOException("SSE写出任务被拒绝", e));
+                }
+                return;
+            }
+            writeLock.lock();
+            try {
+                writePending();
+            } catch (IOException e) {
+                log.debug("SSE写出失败: {}", e.getMessage());
+                fail(e);
+            } finally {
+                writeLock.unlock();
+            }
+        }
+
+        private void writePending() throws IOException {
+            while (true) {
+                StreamChatResponse event;
+                synchronized (this) {
+                    event = pending.poll();
+                    if (event == null) {
+                        drainScheduled = false;
+                        if (closed) {
+                            closeFuture.complete(null);
+                        }
+                        return;
+                    }
+                }
+                long start = System.nanoTime();
+                writer.send(event);
+                if (event.getType() == StreamChatResponse.EventType.CONTENT) {
+                    long elapsed = System.nanoTime() - start;
+                    synchronized (this) {
+                        // 滑动平均，新样本权重 1/8
+                        writeLatencyNanos += (elapsed - writeLatencyNanos) >> 3;
+                    }
+                    contentFrames.incrementAndGet();
+                }
+            }
+        }
+
+        /**
+         * 写出失败或无法提交：丢弃待写事件，关闭中的连接异常完成
+         */
+        private void fail(IOException e) {
+            synchronized (this) {
+                pending.clear();
+                drainScheduled = false;
+                if (closeFuture != null) {
+                    closeFuture.completeExceptionally(e);
+                }
+            }
+        }
+
+        private void signalDrain() {
+            boolean drain;
+            synchronized (this) {
+                drain = markDrain();
+            }
+            if (drain) {
+                dispatchDrain();
+            }
+        }
+
+        /**
+         * 在定时线程上执行：对象锁只在追加缓冲时短暂持有，这里只把到期的缓冲排入待写队列，写出交给连接的执行器
+         */
+        private void flushOnTimer() {
+            synchronized (this) {
+                // 缓冲已写出并开始了新一轮时，由新一轮自己的定时写出
+                if (closed || writer.isFailed() || buffer.length() == 0
+                        || System.nanoTime() - bufferStartNanos < window()) {
+                    return;
+                }
+                timerFlushes.incrementAndGet();
+                flush();
+                if (!markDrain()) {
+                    return;
+                }
+            }
+            dispatchDrain();
+        }
+    }
+}
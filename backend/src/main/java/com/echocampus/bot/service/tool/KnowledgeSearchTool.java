@@ -2,10 +2,13 @@ package com.echocampus.bot.service.tool;
 
 import com.echocampus.bot.entity.KnowledgeChunk;
 import com.echocampus.bot.entity.KnowledgeDoc;
-import com.echocampus.bot.mapper.KnowledgeChunkMapper;
-import com.echocampus.bot.mapper.KnowledgeDocMapper;
-import com.echocampus.bot.service.EmbeddingService;
-import com.echocampus.bot.service.MilvusService;
+import com.echocampus.bot.service.MilvusService.SearchFilter;
+import com.echocampus.bot.service.RagService.SourceInfo;
+import com.echocampus.bot.service.retrieval.ChunkHitResolver;
+import com.echocampus.bot.service.retrieval.ContextPacker;
+import com.echocampus.bot.service.retrieval.KnowledgeRetriever;
+import com.echocampus.bot.service.retrieval.NeighbourChunkExpander;
+import dev.langchain4j.agent.tool.P;
 import dev.langchain4j.agent.tool.Tool;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -24,127 +27,164 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class KnowledgeSearchTool {
 
-    private final EmbeddingService embeddingService;
-    private final MilvusService milvusService;
-    private final KnowledgeChunkMapper chunkMapper;
-    private final KnowledgeDocMapper docMapper;
+    private final KnowledgeRetriever knowledgeRetriever;
+    private final ContextPacker contextPacker;
+    private final NeighbourChunkExpander neighbourChunkExpander;
 
     @Value("${rag.top-k:5}")
     private int defaultTopK;
 
-    @Value("${rag.similarity-threshold:0.6}")
-    private float similarityThreshold;
+    private static final String NOT_FOUND_TEXT = "知识库中未找到相关内容";
 
     /**
      * 在知识库中搜索相关信息
      * 
      * @param query 要搜索的问题或关键词
+     * @param category 限定的知识分类，为空时检索全部分类
      * @return 格式化的知识库检索结果，包含相关文档片段
      */
     @Tool("在校园知识库中搜索相关信息。当用户询问关于学校、课程、活动、设施等校园相关问题时，使用此工具获取准确的知识库信息。")
-    public String searchKnowledge(String query) {
-        log.info("AI调用知识库检索工具: query={}", query);
-        
-        try {
-            // 1. 将查询向量化
-            float[] queryVector = embeddingService.embed(query);
-            
-            if (queryVector == null || allZeros(queryVector)) {
-                log.warn("查询向量化失败: {}", query);
-                return "知识库检索失败：无法向量化查询内容";
-            }
-
-            // 2. 在Milvus中搜索相似向量
-            List<MilvusService.SearchResult> searchResults = 
-                    milvusService.search(queryVector, defaultTopK, similarityThreshold);
-
-            if (searchResults.isEmpty()) {
-                log.info("未找到相关知识片段: query={}", query);
-                return "知识库中未找到相关内容";
-            }
+    public String searchKnowledge(@P("要搜索的问题或关键词") String query,
+                                  @P("可选，限定检索的知识分类；不确定分类时传空字符串") String category) {
+        return search(query, category).text();
+    }
 
-            // 3. 根据chunkId获取完整的知识片段
-            List<Long> chunkIds = searchResults.stream()
-                    .map(MilvusService.SearchResult::getChunkId)
-                    .collect(Collectors.toList());
+    /**
+     * 在知识库中搜索相关信息，同时返回提供给AI的文本和结构化的来源信息
+     *
+     * @param query 要搜索的问题或关键词
+     * @return 检索结果（格式化文本 + 来源列表，两者来自同一次检索）
+     */
+    public KnowledgeResult search(String query) {
+        return search(query, null);
+    }
 
-            List<KnowledgeChunk> chunks = chunkMapper.selectBatchIds(chunkIds);
-            
-            // 4. 按搜索结果的顺序排序
-            Map<Long, Float> scoreMap = searchResults.stream()
-                    .collect(Collectors.toMap(
-                            MilvusService.SearchResult::getChunkId,
-                            MilvusService.SearchResult::getScore
-                    ));
-            
-            chunks.sort((a, b) -> {
-                Float scoreA = scoreMap.getOrDefault(a.getId(), 0f);
-                Float scoreB = scoreMap.getOrDefault(b.getId(), 0f);
-                return scoreB.compareTo(scoreA); // 降序
-            });
+    /**
+     * 在指定分类中搜索相关信息
+     *
+     * @param query 要搜索的问题或关键词
+     * @param category 限定的知识分类，为空白时检索全部分类
+     * @return 检索结果（格式化文本 + 来源列表，两者来自同一次检索）
+     */
+    public KnowledgeResult search(String query, String category) {
+        return searchBatch(List.of(new KnowledgeQuery(query, category))).get(0);
+    }
 
-            // 5. 构建格式化的知识库内容
-            return formatKnowledgeResult(chunks, scoreMap);
+    /**
+     * 批量检索（AI在一轮回复中发起的多个检索调用）：相同分类的问题合并为一次向量化和一次向量检索
+     *
+     * @param queries 检索请求
+     * @return 与请求一一对应的检索结果
+     */
+    public List<KnowledgeResult> searchBatch(List<KnowledgeQuery> queries) {
+        KnowledgeResult[] results = new KnowledgeResult[queries.size()];
+        Map<SearchFilter, List<Integer>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < queries.size(); i++) {
+            KnowledgeQuery query = queries.get(i);
+            log.info("AI调用知识库检索工具: query={}, category={}", query.query(), query.category());
+            if (query.query() == null || query.query().trim().isEmpty()) {
+                results[i] = KnowledgeResult.of(NOT_FOUND_TEXT);
+            } else {
+                groups.computeIfAbsent(SearchFilter.byCategory(query.category()), f -> new ArrayList<>()).add(i);
+            }
+        }
 
+        try {
+            // 1. 按配置的策略检索（与RAG模式一致），载荷齐全时无需回查数据库，文档信息取自缓存
+            List<Integer> unfiltered = new ArrayList<>();
+            for (Map.Entry<SearchFilter, List<Integer>> group : groups.entrySet()) {
+                SearchFilter filter = group.getKey();
+                List<Integer> indexes = group.getValue();
+                List<ChunkHitResolver.ResolvedHits> hits = knowledgeRetriever.retrieveBatch(
+                        indexes.stream().map(i -> queries.get(i).query()).toList(), defaultTopK, filter);
+                for (int j = 0; j < indexes.size(); j++) {
+                    int index = indexes.get(j);
+                    if (hits.get(j).chunks().isEmpty() && !filter.isEmpty()) {
+                        // 分类由AI推断，可能与文档分类不一致，限定分类无结果时退回全库检索
+                        log.info("分类 {} 中未找到相关知识片段，改为全库检索: query={}",
+                                queries.get(index).category(), queries.get(index).query());
+                        unfiltered.add(index);
+                    } else {
+                        results[index] = toResult(queries.get(index).query(), hits.get(j));
+                    }
+                }
+            }
+            if (!unfiltered.isEmpty()) {
+                List<ChunkHitResolver.ResolvedHits> hits = knowledgeRetriever.retrieveBatch(
+                        unfiltered.stream().map(i -> queries.get(i).query()).toList(), defaultTopK, SearchFilter.NONE);
+                for (int j = 0; j < unfiltered.size(); j++) {
+                    results[unfiltered.get(j)] = toResult(queries.get(unfiltered.get(j)).query(), hits.get(j));
+                }
+            }
         } catch (Exception e) {
             log.error("知识库检索失败: {}", e.getMessage(), e);
-            return "知识库检索出现错误：" + e.getMessage();
+            for (int i = 0; i < results.length; i++) {
+                if (results[i] == null) {
+                    results[i] = KnowledgeResult.of("知识库检索出现错误：" + e.getMessage());
+                }
+            }
         }
+        return Arrays.asList(results);
     }
 
     /**
-     * 格式化知识库检索结果
+     * 构建格式化的知识库内容及来源信息
      */
-    private String formatKnowledgeResult(List<KnowledgeChunk> chunks, Map<Long, Float> scoreMap) {
+    private KnowledgeResult toResult(String query, ChunkHitResolver.ResolvedHits hits) {
+        List<KnowledgeChunk> chunks = hits.chunks();
         if (chunks.isEmpty()) {
-            return "知识库中未找到相关内容";
+            log.info("未找到相关知识片段: query={}", query);
+            return KnowledgeResult.of(NOT_FOUND_TEXT);
         }
+        Map<Long, Float> scoreMap = hits.scores();
+        Map<Long, KnowledgeDoc> docMap = hits.docs();
+        return new KnowledgeResult(
+                formatKnowledgeResult(neighbourChunkExpander.expand(hits)),
+                buildSources(chunks, scoreMap, docMap));
+    }
 
-        // 批量查询文档信息
-        Set<Long> docIds = chunks.stream()
-                .map(KnowledgeChunk::getDocId)
-                .collect(Collectors.toSet());
-        
-        Map<Long, KnowledgeDoc> docMap = new HashMap<>();
-        if (!docIds.isEmpty()) {
-            List<KnowledgeDoc> docs = docMapper.selectBatchIds(docIds);
-            docMap = docs.stream()
-                    .collect(Collectors.toMap(KnowledgeDoc::getId, doc -> doc));
+    /**
+     * 格式化知识库检索结果（补充相邻切块后由 {@link ContextPacker} 按token预算去重、合并相邻片段）
+     */
+    private String formatKnowledgeResult(ChunkHitResolver.ResolvedHits hits) {
+        List<ContextPacker.Span> spans = contextPacker.pack(hits);
+        Map<Long, KnowledgeDoc> docMap = hits.docs();
+        if (spans.isEmpty()) {
+            return NOT_FOUND_TEXT;
         }
 
         StringBuilder result = new StringBuilder();
         result.append("【知识库检索结果】\n");
-        result.append(String.format("找到 %d 个相关内容片段：\n\n", chunks.size()));
+        result.append(String.format("找到 %d 个相关内容片段：\n\n", spans.size()));
 
         Long lastDocId = null;
-        for (int i = 0; i < chunks.size(); i++) {
-            KnowledgeChunk chunk = chunks.get(i);
-            KnowledgeDoc doc = docMap.get(chunk.getDocId());
+        for (int i = 0; i < spans.size(); i++) {
+            ContextPacker.Span span = spans.get(i);
+            KnowledgeDoc doc = docMap.get(span.docId());
             
             // 只在文档切换时显示文档信息
-            if (doc != null && !chunk.getDocId().equals(lastDocId)) {
+            if (doc != null && !span.docId().equals(lastDocId)) {
                 result.append(String.format("--- 来源文档：%s", doc.getTitle()));
                 if (doc.getCategory() != null && !doc.getCategory().isEmpty()) {
                     result.append(String.format("（分类：%s）", doc.getCategory()));
                 }
                 result.append(" ---\n");
-                lastDocId = chunk.getDocId();
+                lastDocId = span.docId();
             }
             
             // 添加片段内容
             result.append(String.format("[片段%d] ", i + 1));
-            if (chunk.getPageNumber() != null && chunk.getPageNumber() > 0) {
-                result.append(String.format("(第%d页) ", chunk.getPageNumber()));
+            if (span.pageNumber() != null) {
+                result.append(String.format("(第%d页) ", span.pageNumber()));
             }
             
-            // 添加相似度分数
-            Float score = scoreMap.get(chunk.getId());
-            if (score != null) {
-                result.append(String.format("[相关度:%.2f] ", score));
+            // 添加相似度分数（合并段落取最高分）
+            if (span.score() > 0) {
+                result.append(String.format("[相关度:%.2f] ", span.score()));
             }
             
             result.append("\n");
-            result.append(chunk.getContent().trim());
+            result.append(span.content());
             result.append("\n\n");
         }
 
@@ -152,14 +192,54 @@ public class KnowledgeSearchTool {
     }
 
     /**
-     * 检查向量是否全为0
+     * 构建来源信息
      */
-    private boolean allZeros(float[] vector) {
-        for (float v : vector) {
-            if (v != 0f) {
-                return false;
-            }
+    private List<SourceInfo> buildSources(List<KnowledgeChunk> chunks, Map<Long, Float> scoreMap,
+                                          Map<Long, KnowledgeDoc> docMap) {
+        return chunks.stream()
+                .map(chunk -> {
+                    KnowledgeDoc doc = docMap.get(chunk.getDocId());
+                    return new SourceInfo(
+                            chunk.getDocId(),
+                            doc != null ? doc.getTitle() : "未知文档",
+                            chunk.getId(),
+                            truncateContent(chunk.getContent(), 200),
+                            scoreMap.getOrDefault(chunk.getId(), 0f)
+                    );
+                })
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 截断内容
+     */
+    private String truncateContent(String content, int maxLength) {
+        if (content == null) {
+            return "";
+        }
+        if (content.length() <= maxLength) {
+            return content;
+        }
+        return content.substring(0, maxLength) + "...";
+    }
+
+    /**
+     * 工具检索请求
+     *
+     * @param query 要搜索的问题或关键词
+     * @param category 限定的知识分类，可为空
+     */
+    public record KnowledgeQuery(String query, String category) {}
+
+    /**
+     * 工具检索结果
+     *
+     * @param text 提供给AI的格式化知识库内容
+     * @param sources 与文本对应的知识来源
+     */
+    public record KnowledgeResult(String text, List<SourceInfo> sources) {
+        static KnowledgeResult of(String text) {
+            return new KnowledgeResult(text, Collections.emptyList());
         }
-        return true;
     }
 }
@@ -0,0 +1,358 @@
+package com.echocampus.bot.service.transport;
+
+import com.echocampus.bot.config.AiServiceConfig;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Call;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.ForwardingSource;
+import okio.Okio;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * AI服务共用的HTTP传输层（Embedding、LLM、重排序）
+ * <p>
+ * 每个服务主机一个客户端：独立的连接池和调度器，HTTPS下优先协商HTTP/2，同一连接上多路复用；
+ * 同时进行中的请求数按主机限制为 ai.http.max-requests-per-host，超出时排队（名额在响应体关闭时归还，
+ * 流式响应读完之前一直占用）。读超时和整体超时按请求指定，同一主机不同读超时的客户端共享连接池。
+ * 启动时在后台线程预先连接各服务主机，首个请求不必等待DNS解析和TLS握手。
+ * <p>
+ * 流式响应另有非阻塞方式 {@link #stream}（见 {@link StreamingHttpClient}），等待数据期间不占用线程。
+ */
+@Slf4j
+@Component
+public class AiHttpTransport {
+
+    private final AiServiceConfig aiConfig;
+    private final Map<String, HostClient> hosts = new ConcurrentHashMap<>();
+    private Thread warmUpThread;
+    private StreamingHttpClient streamingClient;
+
+    public AiHttpTransport(AiServiceConfig aiConfig) {
+        this.aiConfig = aiConfig;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!Boolean.TRUE.equals(aiConfig.getHttp().getWarmUp())) {
+            return;
+        }
+        List<String> urls = new ArrayList<>();
+        urls.add(aiConfig.getEmbedding().getApiUrl());
+        urls.add(aiConfig.getLlm().getApiUrl());
+        if (Boolean.TRUE.equals(aiConfig.getRerank().getEnabled())) {
+            urls.add(aiConfig.getRerank().getApiUrl());
+        }
+        warmUpThread = new Thread(() -> urls.forEach(this::warmUp), "ai-transport-warmup");
+        warmUpThread.setDaemon(true);
+        warmUpThread.start();
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (warmUpThread != null) {
+            warmUpThread.interrupt();
+        }
+        hosts.values().forEach(HostClient::close);
+        synchronized (this) {
+            if (streamingClient != null) {
+                streamingClient.close();
+            }
+        }
+    }
+
+    /**
+     * 创建请求
+     *
+     * @param readTimeout 读超时（两次读取之间的最长间隔），为空时使用 ai.http.read-timeout-ms
+     * @param callTimeout 整体超时（含排队、连接、读完响应体），为空时不限
+     */
+    public Call newCall(Request request, Duration readTimeout, Duration callTimeout) {
+        HostClient host = host(request.url());
+        Call call = host.client(readTimeout).newCall(request);
+        if (callTimeout != null && !callTimeout.isZero() && !callTimeout.isNegative()) {
+            call.timeout().timeout(callTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        }
+        return call;
+    }
+
+    /**
+     * 同步执行请求，调用方负责关闭响应
+     *
+     * @see #newCall(Request, Duration, Duration)
+     */
+    public Response execute(Request request, Duration readTimeout, Duration callTimeout) throws IOException {
+        return newCall(request, readTimeout, callTimeout).execute();
+    }
+
+    /**
+     * 非阻塞地发出流式请求，响应体的数据块按到达顺序交给 chunkConsumer（在回调线程上调用，不应阻塞）
+     * <p>
+     * 不占用同步请求的并发名额，每个主机同时进行中的流式请求数上限为 ai.http.max-streams-per-host。
+     *
+     * @param readTimeout 两次数据到达之间的最长间隔（含等待响应头），为空时使用 ai.http.read-timeout-ms
+     * @return 响应体读完时完成；非2xx状态码以 {@link HttpStatusException} 失败；取消返回的Future会中止请求
+     */
+    public CompletableFuture<Void> stream(Request request, Duration readTimeout, Consumer<ByteBuffer> chunkConsumer) {
+        HostClient host = host(request.url());
+        Duration timeout = readTimeout != null ? readTimeout : Duration.ofMillis(aiConfig.getHttp().getReadTimeoutMs());
+        return streamingClient().stream(host.key, request, timeout, chunkConsumer);
+    }
+
+    /**
+     * 预先建立到服务主机的连接：发送 HEAD 请求到根路径，不关心状态码
+     *
+     * @return 是否成功建立连接
+     */
+    public boolean warmUp(String url) {
+        HttpUrl parsed = url != null ? HttpUrl.parse(url) : null;
+        if (parsed == null) {
+            return false;
+        }
+        HostClient host = host(parsed);
+        HttpUrl root = new HttpUrl.Builder().scheme(parsed.scheme()).host(parsed.host()).port(parsed.port()).build();
+        Request request = new Request.Builder().url(root).head().build();
+        try (Response response = newCall(request, null,
+                Duration.ofMillis(aiConfig.getHttp().getConnectTimeoutMs())).execute()) {
+            host.warmedUp = true;
+            log.info("AI服务连接预热完成: host={}, protocol={}, code={}", host.key, response.protocol(), response.code());
+            return true;
+        } catch (IOException e) {
+            log.warn("AI服务连接预热失败: host={}, error={}", host.key, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 各服务主机的连接池和并发使用情况
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        AiServiceConfig.HttpConfig config = aiConfig.getHttp();
+        stats.put("http2", config.getHttp2());
+        stats.put("maxRequestsPerHost", config.getMaxRequestsPerHost());
+        Map<String, Object> perHost = new TreeMap<>();
+        hosts.forEach((key, host) -> {
+            Map<String, Object> hostStats = host.getStats();
+            StreamingHttpClient streams = currentStreamingClient();
+            if (streams != null) {
+                hostStats.put("streams", streams.getStats(key));
+            }
+            perHost.put(key, hostStats);
+        });
+        stats.put("hosts", perHost);
+        return stats;
+    }
+
+    private synchronized StreamingHttpClient streamingClient() {
+        if (streamingClient == null) {
+            streamingClient = new StreamingHttpClient(aiConfig.getHttp());
+        }
+        return streamingClient;
+    }
+
+    private synchronized StreamingHttpClient currentStreamingClient() {
+        return streamingClient;
+    }
+
+    private HostClient host(HttpUrl url) {
+        String key = url.scheme() + "://" + url.host() + ":" + url.port();
+        return hosts.computeIfAbsent(key, k -> new HostClient(k, aiConfig.getHttp()));
+    }
+
+    /**
+     * 单个服务主机的客户端、连接池和并发名额
+     */
+    private static final class HostClient implements Interceptor {
+
+        private final String key;
+        private final int maxRequests;
+        private final long acquireTimeoutMs;
+        private final long defaultReadTimeoutMs;
+        private final ConnectionPool connectionPool;
+        private final Dispatcher dispatcher;
+        private final OkHttpClient baseClient;
+        // 读超时（毫秒）→ 共享连接池和调度器的客户端
+        private final Map<Long, OkHttpClient> clientsByReadTimeout = new ConcurrentHashMap<>();
+        private final Semaphore permits;
+
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicInteger peakInFlight = new AtomicInteger();
+        private final AtomicLong calls = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private final AtomicLong queued = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+        private volatile Protocol lastProtocol;
+        private volatile boolean warmedUp;
+
+        HostClient(String key, AiServiceConfig.HttpConfig config) {
+            this.key = key;
+            this.maxRequests = Math.max(1, config.getMaxRequestsPerHost());
+            this.acquireTimeoutMs = config.getAcquireTimeoutMs();
+            this.defaultReadTimeoutMs = config.getReadTimeoutMs();
+            this.permits = new Semaphore(maxRequests, true);
+            this.connectionPool = new ConnectionPool(Math.max(1, config.getMaxIdleConnectionsPerHost()),
+                    config.getKeepAliveSeconds(), TimeUnit.SECONDS);
+            // 调度器只作用于异步请求，与同步请求的名额保持一致
+            this.dispatcher = new Dispatcher();
+            dispatcher.setMaxRequests(maxRequests);
+            dispatcher.setMaxRequestsPerHost(maxRequests);
+
+            OkHttpClient.Builder builder = new OkHttpClient.Builder()
+                    .connectionPool(connectionPool)
+                    .dispatcher(dispatcher)
+                    .addInterceptor(this)
+                    .connectTimeout(config.getConnectTimeoutMs(), TimeUnit.MILLISECONDS)
+                    .writeTimeout(config.getWriteTimeoutMs(), TimeUnit.MILLISECONDS)
+                    .readTimeout(defaultReadTimeoutMs, TimeUnit.MILLISECONDS)
+                    .protocols(Boolean.TRUE.equals(config.getHttp2())
+                            ? List.of(Protocol.HTTP_2, Protocol.HTTP_1_1) : List.of(Protocol.HTTP_1_1));
+            if (config.getPingIntervalSeconds() > 0) {
+                builder.pingInterval(config.getPingIntervalSeconds(), TimeUnit.SECONDS);
+            }
+            this.baseClient = builder.build();
+            clientsByReadTimeout.put(defaultReadTimeoutMs, baseClient);
+        }
+
+        OkHttpClient client(Duration readTimeout) {
+            long millis = readTimeout != null ? readTimeout.toMillis() : defaultReadTimeoutMs;
+            return clientsByReadTimeout.computeIfAbsent(millis,
+                    ms -> baseClient.newBuilder().readTimeout(ms, TimeUnit.MILLISECONDS).build());
+        }
+
+        /**
+         * 占用并发名额后发出请求，响应体关闭时归还
+         */
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            acquire(chain.call());
+            AtomicBoolean released = new AtomicBoolean();
+            Runnable release = () -> {
+                if (released.compareAndSet(false, true)) {
+                    inFlight.decrementAndGet();
+                    permits.release();
+                }
+            };
+            peakInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            calls.incrementAndGet();
+
+            Response response;
+            try {
+                response = chain.proceed(chain.request());
+            } catch (IOException | RuntimeException e) {
+                failures.incrementAndGet();
+                release.run();
+                throw e;
+            }
+            lastProtocol = response.protocol();
+            ResponseBody body = response.body();
+            if (body == null) {
+                release.run();
+                return response;
+            }
+            ForwardingSource source = new ForwardingSource(body.source()) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        release.run();
+                    }
+                }
+            };
+            return response.newBuilder()
+                    .body(ResponseBody.create(Okio.buffer(source), body.contentType(), body.contentLength()))
+                    .build();
+        }
+
+        private void acquire(Call call) throws IOException {
+            if (permits.tryAcquire()) {
+                return;
+            }
+            queued.incrementAndGet();
+            long waitMs = acquireTimeoutMs;
+            long callTimeoutNanos = call.timeout().timeoutNanos();
+            if (callTimeoutNanos > 0) {
+                waitMs = Math.min(waitMs, TimeUnit.NANOSECONDS.toMillis(callTimeoutNanos));
+            }
+            try {
+                if (!permits.tryAcquire(waitMs, TimeUnit.MILLISECONDS)) {
+                    rejected.incrementAndGet();
+                    throw new InterruptedIOException("AI服务并发请求已达上限，等待超时: host=" + key);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("等待AI服务并发名额时被中断: host=" + key);
+            }
+        }
+
+        Map<String, Object> getStats() {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            int running = inFlight.get();
+            stats.put("protocol", lastProtocol != null ? lastProtocol.toString() : null);
+            stats.put("warmedUp", warmedUp);
+            stats.put("inFlight", running);
+            stats.put("peakInFlight", peakInFlight.get());
+            stats.put("waiting", permits.getQueueLength());
+            stats.put("utilization", Math.round(running * 1000.0 / maxRequests) / 1000.0);
+            stats.put("connections", connectionPool.connectionCount());
+            stats.put("idleConnections", connectionPool.idleConnectionCount());
+            stats.put("calls", calls.get());
+            stats.put("failures", failures.get());
+            stats.put("queued", queued.get());
+            stats.put("rejected", rejected.get());
+            return stats;
+        }
+
+        void close() {
+            dispatcher.executorService().shutdown();
+            connectionPool.evictAll();
+        }
+    }
+
+    /**
+     * 服务返回非2xx状态码
+     */
+    public static class HttpStatusException extends IOException {
+
+        private final int statusCode;
+        private final String body;
+
+        public HttpStatusException(int statusCode, String body) {
+            super("HTTP " + statusCode + ": " + body);
+            this.statusCode = statusCode;
+            this.body = body;
+        }
+
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        public String getBody() {
+            return body;
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package com.echocampus.bot.service.transport;
+
+import com.echocampus.bot.config.AiServiceConfig;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okio.Buffer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * 非阻塞的流式请求（JDK HttpClient）
+ * <p>
+ * 连接读写由 HttpClient 的选择器线程完成，响应数据块到达后在固定大小的回调线程池中交给调用方，
+ * 等待数据期间不占用任何线程，同时进行中的流式请求数不受线程数限制。
+ * JDK HttpClient 没有读超时，由定时线程检查两次数据到达的间隔。回调中的处理应尽快返回，阻塞会推迟其他流的数据。
+ */
+@Slf4j
+final class StreamingHttpClient {
+
+    // JDK HttpClient 不允许设置的请求头
+    private static final Set<String> RESTRICTED_HEADERS = Set.of("connection", "content-length", "expect", "host", "upgrade");
+
+    private final int maxStreamsPerHost;
+    private final boolean http2;
+    private final ExecutorService callbackExecutor;
+    private final ScheduledExecutorService watchdog;
+    private final HttpClient client;
+    private final Map<String, HostStreams> hosts = new ConcurrentHashMap<>();
+
+    StreamingHttpClient(AiServiceConfig.HttpConfig config) {
+        this.maxStreamsPerHost = Math.max(1, config.getMaxStreamsPerHost());
+        this.http2 = Boolean.TRUE.equals(config.getHttp2());
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.callbackExecutor = Executors.newFixedThreadPool(Math.max(1, config.getStreamCallbackThreads()), r -> {
+            Thread thread = new Thread(r, "ai-stream-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "ai-stream-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.setRemoveOnCancelPolicy(true);
+        this.watchdog = scheduler;
+        this.client = HttpClient.newBuilder()
+                .version(http2 ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofMillis(config.getConnectTimeoutMs()))
+                .executor(callbackExecutor)
+                .build();
+    }
+
+    /**
+     * 发出请求，响应体的数据块按到达顺序交给 chunkConsumer（回调线程上调用）
+     *
+     * @param hostKey     统计用的服务主机标识
+     * @param readTimeout 两次数据到达之间的最长间隔（含等待响应头）
+     * @return 响应体读完时完成；非2xx状态码以 {@link AiHttpTransport.HttpStatusException} 失败；
+     * 调用方取消时中止请求
+     */
+    CompletableFuture<Void> stream(String hostKey, Request request, Duration readTimeout,
+                                   Consumer<ByteBuffer> chunkConsumer) {
+        HostStreams host = hosts.computeIfAbsent(hostKey, k -> new HostStreams());
+        int active = host.active.incrementAndGet();
+        if (active > maxStreamsPerHost) {
+            host.active.decrementAndGet();
+            host.rejected.incrementAndGet();
+            return CompletableFuture.failedFuture(new IOException("AI服务并发流式请求已达上限: host=" + hostKey));
+        }
+        host.peak.accumulateAndGet(active, Math::max);
+        host.calls.incrementAndGet();
+
+        HttpRequest httpRequest;
+        try {
+            httpRequest = toHttpRequest(request);
+        } catch (IOException | RuntimeException e) {
+            host.active.decrementAndGet();
+            host.failures.incrementAndGet();
+            return CompletableFuture.failedFuture(e);
+        }
+
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        ChunkSubscriber subscriber = new ChunkSubscriber(chunkConsumer, result, readTimeout.toNanos());
+        CompletableFuture<HttpResponse<Void>> response = client.sendAsync(httpRequest, info ->
+                info.statusCode() / 100 == 2
+                        ? HttpResponse.BodySubscribers.fromSubscriber(subscriber)
+                        : errorBody(info.statusCode()));
+        response.whenComplete((r, e) -> {
+            if (e != null) {
+                result.completeExceptionally(unwrap(e));
+            }
+        });
+        result.whenComplete((r, e) -> {
+            host.active.decrementAndGet();
+            subscriber.stop();
+            if (e != null) {
+                host.failures.incrementAndGet();
+            }
+            if (result.isCancelled()) {
+                response.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    Map<String, Object> getStats(String hostKey) {
+        HostStreams host = hosts.get(hostKey);
+        if (host == null) {
+            return null;
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("active", host.active.get());
+        stats.put("peak", host.peak.get());
+        stats.put("calls", host.calls.get());
+        stats.put("failures", host.failures.get());
+        stats.put("rejected", host.rejected.get());
+        return stats;
+    }
+
+    void close() {
+        watchdog.shutdownNow();
+        callbackExecutor.shutdownNow();
+    }
+
+    private HttpRequest toHttpRequest(Request request) throws IOException {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(request.url().uri());
+        // 明文HTTP不尝试 h2c 升级
+        if (!request.isHttps() || !http2) {
+            builder.version(HttpClient.Version.HTTP_1_1);
+        }
+        request.headers().forEach(header -> {
+            if (!RESTRICTED_HEADERS.contains(header.getFirst().toLowerCase())) {
+                builder.header(header.getFirst(), header.getSecond());
+            }
+        });
+        RequestBody body = request.body();
+        if (body == null) {
+            return builder.method(request.method(), HttpRequest.BodyPublishers.noBody()).build();
+        }
+        MediaType contentType = body.contentType();
+        if (contentType != null && request.header("Content-Type") == null) {
+            builder.header("Content-Type", contentType.toString());
+        }
+        Buffer buffer = new Buffer();
+        body.writeTo(buffer);
+        return builder.method(request.method(), HttpRequest.BodyPublishers.ofByteArray(buffer.readByteArray())).build();
+    }
+
+    private static HttpResponse.BodySubscriber<Void> errorBody(int statusCode) {
+        return HttpResponse.BodySubscribers.mapping(HttpResponse.BodySubscribers.ofString(StandardCharsets.UTF_8),
+                body -> {
+                    throw new UncheckedIOException(new AiHttpTransport.HttpStatusException(statusCode, body));
+                });
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        while ((e instanceof CompletionException || e instanceof UncheckedIOException) && e.getCause() != null) {
+            e = e.getCause();
+        }
+        return e;
+    }
+
+    /**
+     * 逐个请求数据块（处理完一块再请求下一块），记录最后一次数据到达时间供读超时检查
+     */
+    private final class ChunkSubscriber implements Flow.Subscriber<List<ByteBuffer>> {
+
+        private final Consumer<ByteBuffer> chunkConsumer;
+        private final CompletableFuture<Void> result;
+        private final long readTimeoutNanos;
+        private volatile long lastActivityNanos = System.nanoTime();
+        private volatile Flow.Subscription subscription;
+        private volatile ScheduledFuture<?> timeoutCheck;
+
+        ChunkSubscriber(Consumer<ByteBuffer> chunkConsumer, CompletableFuture<Void> result, long readTimeoutNanos) {
+            this.chunkConsumer = chunkConsumer;
+            this.result = result;
+            this.readTimeoutNanos = readTimeoutNanos;
+            scheduleTimeoutCheck(readTimeoutNanos);
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            if (result.isDone()) {
+                subscription.cancel();
+                return;
+            }
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> buffers) {
+            lastActivityNanos = System.nanoTime();
+            if (result.isDone()) {
+                subscription.cancel();
+                return;
+            }
+            try {
+                for (ByteBuffer buffer : buffers) {
+                    chunkConsumer.accept(buffer);
+                }
+            } catch (RuntimeException e) {
+                subscription.cancel();
+                result.completeExceptionally(e);
+                return;
+            }
+            subscription.request(1);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            result.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            result.complete(null);
+        }
+
+        void stop() {
+            ScheduledFuture<?> check = timeoutCheck;
+            if (check != null) {
+                check.cancel(false);
+            }
+            Flow.Subscription current = subscription;
+            if (current != null && result.isCompletedExceptionally()) {
+                current.cancel();
+            }
+        }
+
+        private void scheduleTimeoutCheck(long delayNanos) {
+            try {
+                timeoutCheck = watchdog.schedule(this::checkTimeout, delayNanos, TimeUnit.NANOSECONDS);
+            } catch (RuntimeException e) {
+                // 已关闭
+                log.debug("流式请求读超时检查未启动: {}", e.getMessage());
+            }
+        }
+
+        private void checkTimeout() {
+            if (result.isDone()) {
+                return;
+            }
+            long idle = System.nanoTime() - lastActivityNanos;
+            if (idle >= readTimeoutNanos) {
+                result.completeExceptionally(new HttpTimeoutException(
+                        "读取超时: " + TimeUnit.NANOSECONDS.toMillis(readTimeoutNanos) + "ms 内未收到数据"));
+            } else {
+                scheduleTimeoutCheck(readTimeoutNanos - idle);
+            }
+        }
+    }
+
+    private static final class HostStreams {
+        private final AtomicInteger active = new AtomicInteger();
+        private final AtomicInteger peak = new AtomicInteger();
+        private final AtomicLong calls = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+    }
+}
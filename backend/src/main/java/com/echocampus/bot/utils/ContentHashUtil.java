@@ -0,0 +1,31 @@
+package com.echocampus.bot.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * 内容哈希工具（用于切块去重和增量重建索引）
+ */
+public class ContentHashUtil {
+
+    private ContentHashUtil() {
+    }
+
+    /**
+     * 计算文本的 SHA-256 哈希
+     *
+     * @param content 文本内容
+     * @return 64位小写十六进制字符串
+     */
+    public static String sha256Hex(String content) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(content.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            // 所有JDK实现都必须支持SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
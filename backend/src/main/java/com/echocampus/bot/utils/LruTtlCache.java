@@ -0,0 +1,188 @@
+package com.echocampus.bot.utils;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BiPredicate;
+import java.util.function.LongSupplier;
+import java.util.function.ToLongBiFunction;
+
+/**
+ * 带容量/内存上限和过期时间的LRU缓存（线程安全）
+ * <p>
+ * 条目数或估算占用字节数超出上限时淘汰最久未访问的条目，过期条目在访问时惰性清除。
+ *
+ * @param <K> 键类型
+ * @param <V> 值类型
+ */
+public class LruTtlCache<K, V> {
+
+    private final int maxEntries;
+    private final long maxWeight;
+    private final long ttlMillis;
+    private final ToLongBiFunction<K, V> weigher;
+    private final LongSupplier clock;
+
+    private final LinkedHashMap<K, Entry<V>> map = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalWeight;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long expirations;
+
+    /**
+     * @param maxEntries 最大条目数
+     * @param maxWeight 最大总权重（通常为估算字节数）
+     * @param ttlMillis 过期时间（毫秒），小于等于0表示不过期
+     * @param weigher 条目权重计算函数
+     */
+    public LruTtlCache(int maxEntries, long maxWeight, long ttlMillis, ToLongBiFunction<K, V> weigher) {
+        this(maxEntries, maxWeight, ttlMillis, weigher, System::currentTimeMillis);
+    }
+
+    public LruTtlCache(int maxEntries, long maxWeight, long ttlMillis,
+                       ToLongBiFunction<K, V> weigher, LongSupplier clock) {
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+        this.ttlMillis = ttlMillis;
+        this.weigher = weigher;
+        this.clock = clock;
+    }
+
+    /**
+     * 获取缓存值，不存在或已过期返回 null
+     */
+    public synchronized V get(K key) {
+        Entry<V> entry = map.get(key);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        if (entry.isExpired(clock.getAsLong())) {
+            removeEntry(key, entry);
+            expirations++;
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.value;
+    }
+
+    /**
+     * 写入缓存，单个条目超过总权重上限时不缓存
+     */
+    public synchronized void put(K key, V value) {
+        long weight = weigher.applyAsLong(key, value);
+        if (weight > maxWeight) {
+            return;
+        }
+        long expiresAt = ttlMillis > 0 ? clock.getAsLong() + ttlMillis : Long.MAX_VALUE;
+        Entry<V> previous = map.put(key, new Entry<>(value, weight, expiresAt));
+        if (previous != null) {
+            totalWeight -= previous.weight;
+        }
+        totalWeight += weight;
+        evictIfNeeded();
+    }
+
+    /**
+     * 移除指定键
+     */
+    public synchronized void invalidate(K key) {
+        Entry<V> entry = map.get(key);
+        if (entry != null) {
+            removeEntry(key, entry);
+        }
+    }
+
+    /**
+     * 移除满足条件的所有条目
+     *
+     * @return 移除的条目数
+     */
+    public synchronized int invalidateIf(BiPredicate<K, V> predicate) {
+        int removed = 0;
+        Iterator<Map.Entry<K, Entry<V>>> it = map.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<K, Entry<V>> e = it.next();
+            if (predicate.test(e.getKey(), e.getValue().value)) {
+                totalWeight -= e.getValue().weight;
+                it.remove();
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * 遍历所有未过期条目的快照（不影响访问顺序和命中统计）
+     */
+    public synchronized Map<K, V> snapshot() {
+        long now = clock.getAsLong();
+        Map<K, V> copy = new HashMap<>();
+        for (Map.Entry<K, Entry<V>> e : map.entrySet()) {
+            if (!e.getValue().isExpired(now)) {
+                copy.put(e.getKey(), e.getValue().value);
+            }
+        }
+        return copy;
+    }
+
+    public synchronized void clear() {
+        map.clear();
+        totalWeight = 0;
+    }
+
+    public synchronized int size() {
+        return map.size();
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(hits, misses, evictions, expirations, map.size(), totalWeight);
+    }
+
+    private void evictIfNeeded() {
+        Iterator<Map.Entry<K, Entry<V>>> it = map.entrySet().iterator();
+        while ((map.size() > maxEntries || totalWeight > maxWeight) && it.hasNext()) {
+            Map.Entry<K, Entry<V>> eldest = it.next();
+            totalWeight -= eldest.getValue().weight;
+            it.remove();
+            evictions++;
+        }
+    }
+
+    private void removeEntry(K key, Entry<V> entry) {
+        map.remove(key);
+        totalWeight -= entry.weight;
+    }
+
+    private record Entry<V>(V value, long weight, long expiresAt) {
+        boolean isExpired(long now) {
+            return now >= expiresAt;
+        }
+    }
+
+    /**
+     * 缓存统计信息
+     */
+    public record Stats(long hits, long misses, long evictions, long expirations, int size, long weight) {
+        public double hitRate() {
+            long total = hits + misses;
+            return total == 0 ? 0 : (double) hits / total;
+        }
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("hits", hits);
+            map.put("misses", misses);
+            map.put("hitRate", Math.round(hitRate() * 10000) / 10000.0);
+            map.put("evictions", evictions);
+            map.put("expirations", expirations);
+            map.put("size", size);
+            map.put("weight", weight);
+            return map;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.echocampus.bot.utils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * 令牌桶限流器（线程安全）
+ * <p>
+ * 以固定速率补充令牌，最多累积 burst 个。令牌不足时预支并按排队顺序等待，
+ * 因此多个线程同时申请时整体速率仍不超过配置值。
+ */
+public class TokenBucket {
+
+    private final double permitsPerSecond;
+    private final double capacity;
+    private final LongSupplier nanoClock;
+
+    private double tokens;
+    private long lastRefillNanos;
+
+    /**
+     * @param permitsPerSecond 每秒补充的令牌数，小于等于0表示不限流
+     * @param burst 最多累积的令牌数（允许的突发请求数）
+     */
+    public TokenBucket(double permitsPerSecond, int burst) {
+        this(permitsPerSecond, burst, System::nanoTime);
+    }
+
+    public TokenBucket(double permitsPerSecond, int burst, LongSupplier nanoClock) {
+        this.permitsPerSecond = permitsPerSecond;
+        this.capacity = Math.max(1, burst);
+        this.nanoClock = nanoClock;
+        this.tokens = this.capacity;
+        this.lastRefillNanos = nanoClock.getAsLong();
+    }
+
+    /**
+     * 获取一个令牌，必要时阻塞等待
+     */
+    public void acquire() throws InterruptedException {
+        long waitNanos = reserve();
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    /**
+     * 预支一个令牌
+     *
+     * @return 需要等待的纳秒数（0表示可立即执行）
+     */
+    public synchronized long reserve() {
+        if (permitsPerSecond <= 0) {
+            return 0;
+        }
+        long now = nanoClock.getAsLong();
+        tokens = Math.min(capacity, tokens + (now - lastRefillNanos) * permitsPerSecond / 1_000_000_000.0);
+        lastRefillNanos = now;
+        tokens -= 1;
+        return tokens >= 0 ? 0 : (long) Math.ceil(-tokens / permitsPerSecond * 1_000_000_000.0);
+    }
+}
@@ -0,0 +1,312 @@
+package com.echocampus.bot.vector;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * 基于 {@link VectorArena} 的 HNSW（分层可导航小世界图）近似最近邻索引
+ * <p>
+ * 相似度为内积，向量需预先单位化（此时即余弦相似度）。图只保存槽位号，向量本身仍在存储区中。
+ * 节点必须按槽位顺序加入，即图始终覆盖存储区的前 {@link #size()} 个槽位；
+ * 已删除的槽位保留在图中参与导航，但不会出现在检索结果里。
+ * <p>
+ * 写入（{@link #add}）需要调用方独占加锁；写入之外的并发检索是安全的。
+ */
+public class HnswIndex {
+
+    private final VectorArena arena;
+    private final int maxConnections;
+    private final int maxConnectionsLevel0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private final SplittableRandom random;
+
+    // links[slot][level] 的第0位为邻居数，其后为邻居槽位
+    private int[][][] links = new int[16][][];
+    private int size;
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+
+    private final Visited buildVisited = new Visited();
+    private final ThreadLocal<Visited> searchVisited = ThreadLocal.withInitial(Visited::new);
+
+    /**
+     * @param arena          向量存储区
+     * @param m              每层最大邻居数（第0层为 2m）
+     * @param efConstruction 建图时的候选集大小
+     * @param seed           层级随机数种子
+     */
+    public HnswIndex(VectorArena arena, int m, int efConstruction, long seed) {
+        if (m < 2) {
+            throw new IllegalArgumentException("m must be at least 2: " + m);
+        }
+        this.arena = arena;
+        this.maxConnections = m;
+        this.maxConnectionsLevel0 = 2 * m;
+        this.efConstruction = Math.max(efConstruction, m);
+        this.levelMultiplier = 1.0 / Math.log(m);
+        this.random = new SplittableRandom(seed);
+    }
+
+    /**
+     * 将下一个槽位加入图
+     *
+     * @param slot 槽位号，必须等于当前 {@link #size()}
+     */
+    public void add(int slot) {
+        if (slot != size) {
+            throw new IllegalArgumentException("slots must be added in order: expected " + size + ", got " + slot);
+        }
+        if (slot >= links.length) {
+            links = Arrays.copyOf(links, Math.max(links.length * 2, slot + 1));
+        }
+
+        int level = randomLevel();
+        int[][] nodeLinks = new int[level + 1][];
+        for (int l = 0; l <= level; l++) {
+            nodeLinks[l] = new int[capacity(l) + 1];
+        }
+        links[slot] = nodeLinks;
+
+        if (entryPoint < 0) {
+            entryPoint = slot;
+            maxLevel = level;
+            size++;
+            return;
+        }
+
+        float[] vector = arena.get(slot);
+        int ep = greedyDescend(vector, entryPoint, maxLevel, level);
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            ScoredHeap candidates = searchLayer(vector, ep, efConstruction, l, false, buildVisited);
+            int[] sorted = drainSlotsDescending(candidates);
+            ep = sorted[0];
+            int[] neighbors = selectNeighbors(vector, sorted, capacity(l));
+            setLinks(nodeLinks[l], neighbors, neighbors.length);
+            for (int neighbor : neighbors) {
+                connect(neighbor, slot, l);
+            }
+        }
+
+        if (level > maxLevel) {
+            maxLevel = level;
+            entryPoint = slot;
+        }
+        size++;
+    }
+
+    /**
+     * 检索与查询向量内积最大的 k 个未删除槽位
+     *
+     * @param query 单位化后的查询向量
+     * @param k     返回数量
+     * @param ef    检索候选集大小（越大召回率越高、越慢），小于 k 时按 k 处理
+     */
+    public SearchHits search(float[] query, int k, int ef) {
+        if (size == 0 || k <= 0) {
+            return new SearchHits(new int[0], new float[0]);
+        }
+        int ep = greedyDescend(query, entryPoint, maxLevel, 0);
+        ScoredHeap results = searchLayer(query, ep, Math.max(ef, k), 0, true, searchVisited.get());
+        while (results.size() > k) {
+            results.pop();
+        }
+        return SearchHits.drainDescending(results);
+    }
+
+    /**
+     * 已加入图的槽位数
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 估算图结构占用的堆内存字节数
+     */
+    public long memoryBytes() {
+        long bytes = (long) links.length * 8;
+        for (int i = 0; i < size; i++) {
+            for (int[] level : links[i]) {
+                bytes += 16 + (long) level.length * Integer.BYTES;
+            }
+        }
+        return bytes;
+    }
+
+    // ========== 内部实现 ==========
+
+    private int capacity(int level) {
+        return level == 0 ? maxConnectionsLevel0 : maxConnections;
+    }
+
+    private int randomLevel() {
+        double u = 1.0 - random.nextDouble();
+        return (int) (-Math.log(u) * levelMultiplier);
+    }
+
+    /**
+     * 从 fromLevel 逐层贪心下降到 toLevel + 1 层，返回进入 toLevel 层的入口
+     */
+    private int greedyDescend(float[] query, int ep, int fromLevel, int toLevel) {
+        float epScore = arena.dot(ep, query);
+        for (int l = fromLevel; l > toLevel; l--) {
+            boolean changed = true;
+            while (changed) {
+                changed = false;
+                int[] neighbors = links[ep][l];
+                for (int i = 1; i <= neighbors[0]; i++) {
+                    int n = neighbors[i];
+                    float score = arena.dot(n, query);
+                    if (score > epScore) {
+                        epScore = score;
+                        ep = n;
+                        changed = true;
+                    }
+                }
+            }
+        }
+        return ep;
+    }
+
+    /**
+     * 单层的最佳优先搜索，返回最多 ef 个结果（最小堆）
+     *
+     * @param skipDeleted 为 true 时已删除节点只参与导航，不进入结果
+     */
+    private ScoredHeap searchLayer(float[] query, int ep, int ef, int level, boolean skipDeleted, Visited visited) {
+        visited.reset(size + 1);
+        ScoredHeap candidates = ScoredHeap.maxHeap(ef * 2);
+        ScoredHeap results = ScoredHeap.minHeap(ef + 1);
+
+        float epScore = arena.dot(ep, query);
+        visited.mark(ep);
+        candidates.push(ep, epScore);
+        if (!skipDeleted || !arena.isDeleted(ep)) {
+            results.push(ep, epScore);
+        }
+        float lowerBound = results.size() >= ef ? results.peekScore() : Float.NEGATIVE_INFINITY;
+
+        while (!candidates.isEmpty()) {
+            float candidateScore = candidates.peekScore();
+            if (candidateScore < lowerBound) {
+                break;
+            }
+            int current = candidates.pop();
+            int[] neighbors = links[current][level];
+            for (int i = 1; i <= neighbors[0]; i++) {
+                int n = neighbors[i];
+                if (!visited.mark(n)) {
+                    continue;
+                }
+                float score = arena.dot(n, query);
+                if (results.size() < ef || score > lowerBound) {
+                    candidates.push(n, score);
+                    if (!skipDeleted || !arena.isDeleted(n)) {
+                        results.push(n, score);
+                        if (results.size() > ef) {
+                            results.pop();
+                        }
+                    }
+                    if (results.size() >= ef) {
+                        lowerBound = results.peekScore();
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 启发式邻居选择：按相似度从高到低，只保留比已选邻居更接近目标的候选，使邻居分布在不同方向
+     *
+     * @param sortedCandidates 按与目标相似度降序排列的候选
+     */
+    private int[] selectNeighbors(float[] target, int[] sortedCandidates, int max) {
+        int[] selected = new int[Math.min(max, sortedCandidates.length)];
+        int count = 0;
+        for (int candidate : sortedCandidates) {
+            if (count == selected.length) {
+                break;
+            }
+            float toTarget = arena.dot(candidate, target);
+            boolean diverse = true;
+            for (int i = 0; i < count; i++) {
+                if (arena.dot(candidate, selected[i]) > toTarget) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse) {
+                selected[count++] = candidate;
+            }
+        }
+        return count == selected.length ? selected : Arrays.copyOf(selected, count);
+    }
+
+    /**
+     * 添加反向连接，邻居已满时重新做启发式选择
+     */
+    private void connect(int node, int newNeighbor, int level) {
+        int[] nodeLinks = links[node][level];
+        int count = nodeLinks[0];
+        int max = capacity(level);
+        if (count < max) {
+            nodeLinks[count + 1] = newNeighbor;
+            nodeLinks[0] = count + 1;
+            return;
+        }
+
+        float[] vector = arena.get(node);
+        ScoredHeap heap = ScoredHeap.minHeap(count + 1);
+        for (int i = 1; i <= count; i++) {
+            heap.push(nodeLinks[i], arena.dot(nodeLinks[i], vector));
+        }
+        heap.push(newNeighbor, arena.dot(newNeighbor, vector));
+        int[] selected = selectNeighbors(vector, drainSlotsDescending(heap), max);
+        setLinks(nodeLinks, selected, selected.length);
+    }
+
+    private static void setLinks(int[] target, int[] neighbors, int count) {
+        System.arraycopy(neighbors, 0, target, 1, count);
+        target[0] = count;
+    }
+
+    private static int[] drainSlotsDescending(ScoredHeap minHeap) {
+        int[] slots = new int[minHeap.size()];
+        for (int i = slots.length - 1; i >= 0; i--) {
+            slots[i] = minHeap.pop();
+        }
+        return slots;
+    }
+
+    /**
+     * 访问标记：按轮次标记，避免每次检索清空数组
+     */
+    private static final class Visited {
+        private int[] marks = new int[0];
+        private int epoch;
+
+        void reset(int capacity) {
+            if (marks.length < capacity) {
+                marks = new int[Math.max(capacity, marks.length * 2)];
+                epoch = 0;
+            }
+            if (++epoch == Integer.MAX_VALUE) {
+                Arrays.fill(marks, 0);
+                epoch = 1;
+            }
+        }
+
+        /**
+         * @return 首次访问返回 true
+         */
+        boolean mark(int slot) {
+            if (marks[slot] == epoch) {
+                return false;
+            }
+            marks[slot] = epoch;
+            return true;
+        }
+    }
+}
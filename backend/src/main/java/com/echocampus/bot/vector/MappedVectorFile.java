@@ -0,0 +1,213 @@
+package com.echocampus.bot.vector;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.LongPredicate;
+
+/**
+ * 内存映射的向量持久化文件
+ * <p>
+ * 文件布局：32字节文件头（魔数、版本、维度、记录数），之后是定长记录（8字节ID + dimension 个 float），
+ * 均为小端序。记录号与 {@link VectorArena} 的槽位号一一对应；删除只把记录ID改为 {@link #DELETED_ID}。
+ * 写入直接落到映射内存，由操作系统异步刷盘，{@link #force()} 强制刷盘。
+ * <p>
+ * 非线程安全，由调用方加锁。单个映射最大2GB，1024维时约可容纳52万条记录。
+ */
+public class MappedVectorFile implements Closeable {
+
+    public static final long DELETED_ID = -1L;
+
+    private static final int MAGIC = 0x45435649;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 32;
+    private static final int COUNT_OFFSET = 12;
+    private static final int MIN_CAPACITY = 1024;
+
+    private final Path path;
+    private final int dimension;
+    private final int recordBytes;
+    private final FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int capacity;
+    private int count;
+
+    private MappedVectorFile(Path path, int dimension, FileChannel channel, int count, int capacity) throws IOException {
+        this.path = path;
+        this.dimension = dimension;
+        this.recordBytes = Long.BYTES + dimension * Float.BYTES;
+        this.channel = channel;
+        this.count = count;
+        map(capacity);
+    }
+
+    /**
+     * 打开向量文件；文件不存在、格式不符或维度不一致时创建空文件
+     *
+     * @param path      文件路径
+     * @param dimension 向量维度
+     */
+    public static MappedVectorFile open(Path path, int dimension) throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            int count = 0;
+            if (channel.size() >= HEADER_BYTES) {
+                MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+                header.order(ByteOrder.LITTLE_ENDIAN);
+                long recordBytes = Long.BYTES + (long) dimension * Float.BYTES;
+                int storedCount = header.getInt(COUNT_OFFSET);
+                boolean compatible = header.getInt(0) == MAGIC
+                        && header.getInt(4) == VERSION
+                        && header.getInt(8) == dimension
+                        && storedCount >= 0
+                        && HEADER_BYTES + storedCount * recordBytes <= channel.size();
+                if (compatible) {
+                    count = storedCount;
+                } else {
+                    channel.truncate(0);
+                }
+            }
+            MappedVectorFile file = new MappedVectorFile(path, dimension, channel, count, Math.max(MIN_CAPACITY, count));
+            file.writeHeader();
+            return file;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 追加记录
+     *
+     * @return 记录号
+     */
+    public int append(long id, float[] vector) throws IOException {
+        if (vector.length != dimension) {
+            throw new IllegalArgumentException(String.format(
+                    "向量维度不匹配: expected=%d, actual=%d", dimension, vector.length));
+        }
+        if (count == capacity) {
+            int maxRecords = (Integer.MAX_VALUE - HEADER_BYTES) / recordBytes;
+            if (capacity >= maxRecords) {
+                throw new IOException(String.format("向量文件超出单个映射上限: records=%d, dimension=%d", capacity, dimension));
+            }
+            map((int) Math.min((long) capacity * 2, maxRecords));
+        }
+        int record = count;
+        int offset = offset(record);
+        buffer.putLong(offset, id);
+        buffer.slice(offset + Long.BYTES, dimension * Float.BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN)
+                .asFloatBuffer()
+                .put(vector);
+        count++;
+        buffer.putInt(COUNT_OFFSET, count);
+        return record;
+    }
+
+    /**
+     * 标记记录为已删除
+     */
+    public void markDeleted(int record) {
+        checkRecord(record);
+        buffer.putLong(offset(record), DELETED_ID);
+    }
+
+    public long id(int record) {
+        checkRecord(record);
+        return buffer.getLong(offset(record));
+    }
+
+    /**
+     * 读取记录向量
+     */
+    public float[] read(int record) {
+        checkRecord(record);
+        float[] vector = new float[dimension];
+        buffer.slice(offset(record) + Long.BYTES, dimension * Float.BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN)
+                .asFloatBuffer()
+                .get(vector);
+        return vector;
+    }
+
+    /**
+     * 只保留满足条件的记录（按原顺序）重写文件，返回新打开的文件，当前实例随之关闭
+     *
+     * @param keep 按记录ID判断是否保留，已删除记录始终丢弃
+     */
+    public MappedVectorFile compact(LongPredicate keep) throws IOException {
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        Files.deleteIfExists(tmp);
+        try (MappedVectorFile target = open(tmp, dimension)) {
+            for (int record = 0; record < count; record++) {
+                long id = id(record);
+                if (id != DELETED_ID && keep.test(id)) {
+                    target.append(id, read(record));
+                }
+            }
+            target.force();
+        }
+        close();
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return open(path, dimension);
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public int dimension() {
+        return dimension;
+    }
+
+    public Path path() {
+        return path;
+    }
+
+    public void force() {
+        buffer.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel.isOpen()) {
+            buffer.force();
+            channel.close();
+        }
+    }
+
+    private void map(int newCapacity) throws IOException {
+        long bytes = HEADER_BYTES + (long) newCapacity * recordBytes;
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        capacity = newCapacity;
+    }
+
+    private void writeHeader() {
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(8, dimension);
+        buffer.putInt(COUNT_OFFSET, count);
+    }
+
+    private int offset(int record) {
+        return HEADER_BYTES + record * recordBytes;
+    }
+
+    private void checkRecord(int record) {
+        if (record < 0 || record >= count) {
+            throw new IndexOutOfBoundsException("record " + record + " out of " + count);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.echocampus.bot.vector;
+
+import io.milvus.client.MilvusServiceClient;
+import io.milvus.grpc.MilvusServiceGrpc;
+import io.milvus.param.ConnectParam;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+/**
+ * Milvus SDK 底层gRPC存根的适配器
+ * <p>
+ * 直接构建的写入/检索请求（见 {@link MilvusVectorCodec}）需要gRPC存根，但SDK没有公开它，
+ * 只能通过子类调用受保护的 blockingStub()。该方法属于SDK内部实现，升级时可能改名或改变语义，
+ * 因此对内部API的依赖只放在这里，并在连接前校验SDK版本：不是已验证的版本时拒绝创建，
+ * 升级SDK时需要在这里确认后再放开。
+ */
+public final class MilvusGrpcAdapter implements AutoCloseable {
+
+    /**
+     * 已验证 blockingStub() 行为的SDK版本（主版本.次版本）
+     */
+    static final String VERIFIED_SDK_VERSION = "2.3";
+
+    private static final String SDK_POM_PROPERTIES = "/META-INF/maven/io.milvus/milvus-sdk-java/pom.properties";
+
+    private final StubExposingClient client;
+
+    public MilvusGrpcAdapter(ConnectParam connectParam) {
+        checkSdkVersion(sdkVersion());
+        this.client = new StubExposingClient(connectParam);
+    }
+
+    /**
+     * SDK客户端，用于公开API能覆盖的请求
+     */
+    public MilvusServiceClient client() {
+        return client;
+    }
+
+    /**
+     * 底层gRPC存根，用于直接构建的请求
+     */
+    public MilvusServiceGrpc.MilvusServiceBlockingStub blockingStub() {
+        return client.stub();
+    }
+
+    @Override
+    public void close() {
+        client.close();
+    }
+
+    /**
+     * 当前classpath上的SDK版本，读取不到时返回 null
+     */
+    static String sdkVersion() {
+        try (InputStream in = MilvusServiceClient.class.getResourceAsStream(SDK_POM_PROPERTIES)) {
+            if (in == null) {
+                return null;
+            }
+            Properties properties = new Properties();
+            properties.load(in);
+            return properties.getProperty("version");
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @throws IllegalStateException 版本未知或不是已验证的版本
+     */
+    static void checkSdkVersion(String version) {
+        if (version == null || !(version.equals(VERIFIED_SDK_VERSION) || version.startsWith(VERIFIED_SDK_VERSION + "."))) {
+            throw new IllegalStateException(String.format(
+                    "Milvus SDK版本未经验证: expected=%s.x, actual=%s", VERIFIED_SDK_VERSION, version));
+        }
+    }
+
+    /**
+     * 唯一依赖SDK内部API的地方
+     */
+    private static final class StubExposingClient extends MilvusServiceClient {
+
+        StubExposingClient(ConnectParam connectParam) {
+            super(connectParam);
+        }
+
+        MilvusServiceGrpc.MilvusServiceBlockingStub stub() {
+            return blockingStub();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.echocampus.bot.vector;
+
+import com.echocampus.bot.config.MilvusConfig;
+import com.echocampus.bot.service.MilvusService.SearchBudget;
+
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Milvus向量索引参数：建索引参数（nlist / M / efConstruction 等）和检索参数（nprobe / ef / search_list）
+ * <p>
+ * 检索参数按索引类型选取，并按 {@link SearchBudget} 缩放：
+ * <ul>
+ *     <li>IVF_FLAT / IVF_SQ8 / IVF_PQ：nprobe，取值范围 [1, nlist]</li>
+ *     <li>HNSW：ef，不小于 topK</li>
+ *     <li>DISKANN：search_list，不小于 topK</li>
+ *     <li>FLAT：暴力检索，无参数</li>
+ * </ul>
+ *
+ * @param indexType 索引类型
+ * @param metricType 相似度度量类型
+ * @param nlist IVF聚类数
+ * @param nprobe IVF检索时探测的聚类数
+ * @param pqM IVF_PQ子向量数
+ * @param pqNbits IVF_PQ编码位数
+ * @param hnswM HNSW最大邻居数
+ * @param efConstruction HNSW建图候选队列长度
+ * @param ef HNSW检索候选队列长度
+ * @param searchList DISKANN检索候选列表长度
+ */
+public record MilvusIndexProfile(String indexType, String metricType, int nlist, int nprobe, int pqM, int pqNbits,
+                                 int hnswM, int efConstruction, int ef, int searchList) {
+
+    /** 支持的索引类型 */
+    public static final Set<String> SUPPORTED_TYPES = Set.of("FLAT", "IVF_FLAT", "IVF_SQ8", "IVF_PQ", "HNSW", "DISKANN");
+
+    public MilvusIndexProfile {
+        indexType = indexType == null ? "" : indexType.trim().toUpperCase(Locale.ROOT);
+        if (!SUPPORTED_TYPES.contains(indexType)) {
+            throw new IllegalArgumentException("不支持的索引类型: " + indexType + "，可用: " + SUPPORTED_TYPES);
+        }
+        if (nlist <= 0 || nprobe <= 0 || pqM <= 0 || pqNbits <= 0 || hnswM <= 0 || efConstruction <= 0
+                || ef <= 0 || searchList <= 0) {
+            throw new IllegalArgumentException("索引参数必须大于0");
+        }
+    }
+
+    /**
+     * 配置文件中的索引参数
+     */
+    public static MilvusIndexProfile from(MilvusConfig config) {
+        return new MilvusIndexProfile(config.getIndexType(), config.getMetricType(), config.getNlist(),
+                config.getNprobe(), config.getPqM(), config.getPqNbits(), config.getHnswM(),
+                config.getEfConstruction(), config.getEf(), config.getSearchList());
+    }
+
+    /**
+     * 更换索引类型，其余参数不变
+     */
+    public MilvusIndexProfile withIndexType(String type) {
+        return new MilvusIndexProfile(type, metricType, nlist, nprobe, pqM, pqNbits, hnswM, efConstruction, ef,
+                searchList);
+    }
+
+    /**
+     * 建索引参数（JSON）
+     */
+    public String indexParams() {
+        return switch (indexType) {
+            case "IVF_FLAT", "IVF_SQ8" -> "{\"nlist\":" + nlist + "}";
+            case "IVF_PQ" -> "{\"nlist\":" + nlist + ",\"m\":" + pqM + ",\"nbits\":" + pqNbits + "}";
+            case "HNSW" -> "{\"M\":" + hnswM + ",\"efConstruction\":" + efConstruction + "}";
+            default -> "{}";
+        };
+    }
+
+    /**
+     * 检索参数（JSON）
+     *
+     * @param budget 检索预算，为null时按 {@link SearchBudget#BALANCED}
+     * @param topK 返回数量
+     */
+    public String searchParams(SearchBudget budget, int topK) {
+        double scale = budget != null ? budget.scale() : SearchBudget.BALANCED.scale();
+        return switch (indexType) {
+            case "IVF_FLAT", "IVF_SQ8", "IVF_PQ" ->
+                    "{\"nprobe\":" + Math.min(nlist, Math.max(1, (int) Math.round(nprobe * scale))) + "}";
+            case "HNSW" -> "{\"ef\":" + Math.max(topK, (int) Math.round(ef * scale)) + "}";
+            case "DISKANN" -> "{\"search_list\":" + Math.max(topK, (int) Math.round(searchList * scale)) + "}";
+            default -> "{}";
+        };
+    }
+}
@@ -0,0 +1,140 @@
+package com.echocampus.bot.vector;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+import io.milvus.grpc.DataType;
+import io.milvus.grpc.FieldData;
+import io.milvus.grpc.FloatArray;
+import io.milvus.grpc.PlaceholderType;
+import io.milvus.grpc.VectorField;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Milvus向量编解码：直接从 float[] 生成gRPC请求中的向量数据
+ * <p>
+ * SDK 的 InsertParam/SearchParam 只接受 List&lt;Float&gt;，每个分量都要装箱，
+ * 1万个1024维切块就是一千多万个 Float 对象。这里绕过装箱：
+ * <ul>
+ *     <li>写入：float 逐个追加到 protobuf 的 packed float 列表（底层是 float[]）</li>
+ *     <li>检索：PlaceholderGroup 按 protobuf 线格式写入线程复用的缓冲区，只在最后复制一次成 ByteString</li>
+ * </ul>
+ * 输出与 SDK 的编码逐字节一致（小端 float32，tag 为 "$0"）。
+ */
+public final class MilvusVectorCodec {
+
+    /**
+     * 检索请求中向量占位符的tag，与 SDK 一致
+     */
+    static final String PLACEHOLDER_TAG = "$0";
+
+    /**
+     * 线程复用缓冲区的上限，超过时临时分配、不保留，避免偶发大请求长期占用内存
+     */
+    private static final int MAX_RETAINED_BUFFER = 1 << 20;
+
+    private static final ThreadLocal<byte[]> BUFFER = ThreadLocal.withInitial(() -> new byte[8 * 1024]);
+
+    private MilvusVectorCodec() {
+    }
+
+    /**
+     * 构建 FloatVector 类型的字段数据（写入用）
+     *
+     * @throws IllegalArgumentException 向量为空或维度不一致
+     */
+    public static FieldData floatVectorField(String fieldName, List<float[]> vectors) {
+        int dim = checkDimension(vectors);
+        FloatArray.Builder data = FloatArray.newBuilder();
+        for (float[] vector : vectors) {
+            for (float v : vector) {
+                data.addData(v);
+            }
+        }
+        return FieldData.newBuilder()
+                .setFieldName(fieldName)
+                .setType(DataType.FloatVector)
+                .setVectors(VectorField.newBuilder()
+                        .setDim(dim)
+                        .setFloatVector(data))
+                .build();
+    }
+
+    /**
+     * 编码单个查询向量的 PlaceholderGroup（检索用）
+     */
+    public static ByteString placeholderGroup(float[] vector) {
+        return placeholderGroup(Collections.singletonList(vector));
+    }
+
+    /**
+     * 编码多个查询向量的 PlaceholderGroup（检索用，nq = vectors.size()）
+     *
+     * @throws IllegalArgumentException 向量为空或维度不一致
+     */
+    public static ByteString placeholderGroup(List<float[]> vectors) {
+        int dim = checkDimension(vectors);
+        int vectorBytes = dim * Float.BYTES;
+        int valueSize = CodedOutputStream.computeStringSize(1, PLACEHOLDER_TAG)
+                + CodedOutputStream.computeEnumSize(2, PlaceholderType.FloatVector_VALUE)
+                + vectors.size() * (CodedOutputStream.computeTagSize(3)
+                + CodedOutputStream.computeUInt32SizeNoTag(vectorBytes) + vectorBytes);
+        int totalSize = CodedOutputStream.computeTagSize(1)
+                + CodedOutputStream.computeUInt32SizeNoTag(valueSize) + valueSize;
+
+        byte[] buffer = buffer(totalSize);
+        CodedOutputStream out = CodedOutputStream.newInstance(buffer, 0, totalSize);
+        try {
+            // PlaceholderGroup.placeholders[0]
+            out.writeTag(1, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+            out.writeUInt32NoTag(valueSize);
+            // PlaceholderValue: tag, type, values
+            out.writeString(1, PLACEHOLDER_TAG);
+            out.writeEnum(2, PlaceholderType.FloatVector_VALUE);
+            for (float[] vector : vectors) {
+                out.writeTag(3, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+                out.writeUInt32NoTag(vectorBytes);
+                for (float v : vector) {
+                    out.writeFloatNoTag(v);
+                }
+            }
+            out.checkNoSpaceLeft();
+        } catch (IOException e) {
+            throw new UncheckedIOException("向量编码失败", e);
+        }
+        return ByteString.copyFrom(buffer, 0, totalSize);
+    }
+
+    private static int checkDimension(List<float[]> vectors) {
+        if (vectors.isEmpty()) {
+            throw new IllegalArgumentException("向量列表不能为空");
+        }
+        int dim = vectors.get(0).length;
+        if (dim == 0) {
+            throw new IllegalArgumentException("向量维度不能为0");
+        }
+        for (float[] vector : vectors) {
+            if (vector.length != dim) {
+                throw new IllegalArgumentException("向量维度不一致: " + vector.length + " != " + dim);
+            }
+        }
+        return dim;
+    }
+
+    private static byte[] buffer(int size) {
+        byte[] buffer = BUFFER.get();
+        if (buffer.length >= size) {
+            return buffer;
+        }
+        if (size > MAX_RETAINED_BUFFER) {
+            return new byte[size];
+        }
+        buffer = new byte[Math.min(MAX_RETAINED_BUFFER, Math.max(size, buffer.length * 2))];
+        BUFFER.set(buffer);
+        return buffer;
+    }
+}
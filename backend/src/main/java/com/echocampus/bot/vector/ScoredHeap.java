@@ -0,0 +1,101 @@
+package com.echocampus.bot.vector;
+
+import java.util.Arrays;
+
+/**
+ * (槽位, 分数) 的二叉堆，使用平行的基本类型数组避免装箱
+ * <p>
+ * 最小堆的堆顶为分数最低的元素，最大堆的堆顶为分数最高的元素。
+ */
+final class ScoredHeap {
+
+    private final boolean max;
+    private int[] slots;
+    private float[] scores;
+    private int size;
+
+    private ScoredHeap(boolean max, int initialCapacity) {
+        this.max = max;
+        int capacity = Math.max(4, initialCapacity);
+        this.slots = new int[capacity];
+        this.scores = new float[capacity];
+    }
+
+    static ScoredHeap minHeap(int initialCapacity) {
+        return new ScoredHeap(false, initialCapacity);
+    }
+
+    static ScoredHeap maxHeap(int initialCapacity) {
+        return new ScoredHeap(true, initialCapacity);
+    }
+
+    void push(int slot, float score) {
+        if (size == slots.length) {
+            slots = Arrays.copyOf(slots, size * 2);
+            scores = Arrays.copyOf(scores, size * 2);
+        }
+        int i = size++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!before(score, scores[parent])) {
+                break;
+            }
+            slots[i] = slots[parent];
+            scores[i] = scores[parent];
+            i = parent;
+        }
+        slots[i] = slot;
+        scores[i] = score;
+    }
+
+    /**
+     * 弹出堆顶，返回其槽位
+     */
+    int pop() {
+        int top = slots[0];
+        int lastSlot = slots[--size];
+        float lastScore = scores[size];
+        int i = 0;
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            int right = child + 1;
+            if (right < size && before(scores[right], scores[child])) {
+                child = right;
+            }
+            if (!before(scores[child], lastScore)) {
+                break;
+            }
+            slots[i] = slots[child];
+            scores[i] = scores[child];
+            i = child;
+        }
+        slots[i] = lastSlot;
+        scores[i] = lastScore;
+        return top;
+    }
+
+    int peekSlot() {
+        return slots[0];
+    }
+
+    float peekScore() {
+        return scores[0];
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    private boolean before(float a, float b) {
+        return max ? a > b : a < b;
+    }
+}
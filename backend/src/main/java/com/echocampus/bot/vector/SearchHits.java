@@ -0,0 +1,28 @@
+package com.echocampus.bot.vector;
+
+/**
+ * 检索结果：槽位和相似度（内积），按相似度降序
+ *
+ * @param slots  槽位号
+ * @param scores 对应的相似度
+ */
+public record SearchHits(int[] slots, float[] scores) {
+
+    public int size() {
+        return slots.length;
+    }
+
+    /**
+     * 依次弹出最小堆并倒序填充，得到降序结果
+     */
+    static SearchHits drainDescending(ScoredHeap minHeap) {
+        int n = minHeap.size();
+        int[] slots = new int[n];
+        float[] scores = new float[n];
+        for (int i = n - 1; i >= 0; i--) {
+            scores[i] = minHeap.peekScore();
+            slots[i] = minHeap.pop();
+        }
+        return new SearchHits(slots, scores);
+    }
+}
@@ -0,0 +1,182 @@
+package com.echocampus.bot.vector;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.function.IntPredicate;
+
+/**
+ * 定长向量的连续存储区
+ * <p>
+ * 所有向量按槽位顺序存放在一个 float[] 中，槽位 i 占用 [i * dimension, (i + 1) * dimension)，
+ * 避免逐个向量分配对象和装箱。删除只做标记，槽位不复用，保证槽位号在存储区生命周期内稳定。
+ * <p>
+ * 非线程安全，由调用方加锁。
+ */
+public class VectorArena {
+
+    private final int dimension;
+    private float[] data;
+    private long[] ids;
+    private final BitSet deleted = new BitSet();
+    private int size;
+    private int deletedCount;
+
+    public VectorArena(int dimension, int initialCapacity) {
+        if (dimension <= 0) {
+            throw new IllegalArgumentException("dimension must be positive: " + dimension);
+        }
+        this.dimension = dimension;
+        int capacity = Math.max(16, initialCapacity);
+        this.data = new float[capacity * dimension];
+        this.ids = new long[capacity];
+    }
+
+    /**
+     * 追加向量
+     *
+     * @param id     外部ID（如切块ID）
+     * @param vector 向量，长度必须等于维度
+     * @return 槽位号
+     */
+    public int add(long id, float[] vector) {
+        if (vector.length != dimension) {
+            throw new IllegalArgumentException(String.format(
+                    "向量维度不匹配: expected=%d, actual=%d", dimension, vector.length));
+        }
+        if (size == ids.length) {
+            int capacity = ids.length * 2;
+            data = Arrays.copyOf(data, capacity * dimension);
+            ids = Arrays.copyOf(ids, capacity);
+        }
+        int slot = size++;
+        System.arraycopy(vector, 0, data, slot * dimension, dimension);
+        ids[slot] = id;
+        return slot;
+    }
+
+    /**
+     * 标记删除
+     *
+     * @return 之前未删除时返回 true
+     */
+    public boolean delete(int slot) {
+        checkSlot(slot);
+        if (deleted.get(slot)) {
+            return false;
+        }
+        deleted.set(slot);
+        deletedCount++;
+        return true;
+    }
+
+    public boolean isDeleted(int slot) {
+        return deleted.get(slot);
+    }
+
+    public long id(int slot) {
+        checkSlot(slot);
+        return ids[slot];
+    }
+
+    /**
+     * 槽位向量与查询向量的内积
+     */
+    public float dot(int slot, float[] query) {
+        return dot(data, slot * dimension, query, 0, dimension);
+    }
+
+    /**
+     * 两个槽位向量的内积
+     */
+    public float dot(int slotA, int slotB) {
+        return dot(data, slotA * dimension, data, slotB * dimension, dimension);
+    }
+
+    /**
+     * 复制槽位向量
+     */
+    public float[] get(int slot) {
+        checkSlot(slot);
+        return Arrays.copyOfRange(data, slot * dimension, (slot + 1) * dimension);
+    }
+
+    /**
+     * 精确（暴力）检索内积最大的 k 个未删除槽位，按相似度降序
+     */
+    public SearchHits exactSearch(float[] query, int k) {
+        return exactSearch(query, k, slot -> true);
+    }
+
+    /**
+     * 精确检索满足条件的未删除槽位中内积最大的 k 个，按相似度降序（条件先于内积判断，不满足的槽位不计算内积）
+     */
+    public SearchHits exactSearch(float[] query, int k, IntPredicate accept) {
+        ScoredHeap top = ScoredHeap.minHeap(k + 1);
+        for (int slot = 0; slot < size; slot++) {
+            if (deleted.get(slot) || !accept.test(slot)) {
+                continue;
+            }
+            float score = dot(slot, query);
+            if (top.size() < k) {
+                top.push(slot, score);
+            } else if (score > top.peekScore()) {
+                top.pop();
+                top.push(slot, score);
+            }
+        }
+        return SearchHits.drainDescending(top);
+    }
+
+    /**
+     * 内积：四路累加打破单一累加器的依赖链，便于JIT流水化执行
+     */
+    static float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        float s0 = 0f;
+        float s1 = 0f;
+        float s2 = 0f;
+        float s3 = 0f;
+        int i = 0;
+        for (int bound = length & ~3; i < bound; i += 4) {
+            s0 += a[aOffset + i] * b[bOffset + i];
+            s1 += a[aOffset + i + 1] * b[bOffset + i + 1];
+            s2 += a[aOffset + i + 2] * b[bOffset + i + 2];
+            s3 += a[aOffset + i + 3] * b[bOffset + i + 3];
+        }
+        for (; i < length; i++) {
+            s0 += a[aOffset + i] * b[bOffset + i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    public int dimension() {
+        return dimension;
+    }
+
+    /**
+     * 已分配的槽位数（含已删除）
+     */
+    public int size() {
+        return size;
+    }
+
+    public int liveCount() {
+        return size - deletedCount;
+    }
+
+    public int deletedCount() {
+        return deletedCount;
+    }
+
+    /**
+     * 估算占用的堆内存字节数
+     */
+    public long memoryBytes() {
+        return (long) data.length * Float.BYTES + (long) ids.length * Long.BYTES;
+    }
+
+    private void checkSlot(int slot) {
+        if (slot < 0 || slot >= size) {
+            throw new IndexOutOfBoundsException("slot " + slot + " out of " + size);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.echocampus.bot.vector;
+
+/**
+ * 向量运算工具
+ */
+public final class VectorMath {
+
+    private VectorMath() {
+    }
+
+    /**
+     * 内积
+     */
+    public static float dot(float[] a, float[] b) {
+        return VectorArena.dot(a, 0, b, 0, a.length);
+    }
+
+    /**
+     * 返回单位化后的副本（零向量原样复制），单位向量的内积即余弦相似度
+     */
+    public static float[] normalize(float[] vector) {
+        float[] copy = vector.clone();
+        double norm = 0;
+        for (float v : copy) {
+            norm += (double) v * v;
+        }
+        if (norm > 0) {
+            float scale = (float) (1.0 / Math.sqrt(norm));
+            for (int i = 0; i < copy.length; i++) {
+                copy[i] *= scale;
+            }
+        }
+        return copy;
+    }
+}
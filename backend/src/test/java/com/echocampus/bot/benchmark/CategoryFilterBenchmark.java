@@ -0,0 +1,198 @@
+package com.echocampus.bot.benchmark;
+
+import com.echocampus.bot.config.MilvusConfig;
+import com.echocampus.bot.mapper.KnowledgeChunkMapper;
+import com.echocampus.bot.mapper.KnowledgeDocMapper;
+import com.echocampus.bot.service.EmbeddingService;
+import com.echocampus.bot.service.MilvusService.SearchFilter;
+import com.echocampus.bot.service.MilvusService.SearchResult;
+import com.echocampus.bot.service.impl.LocalVectorService;
+import com.echocampus.bot.service.impl.MilvusServiceImpl;
+import com.echocampus.bot.vector.VectorMath;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 按分类过滤检索基准测试：10 / 100 个分类下，进程内索引的过滤检索与全库检索的 QPS 和过滤后的 recall@k
+ * <p>
+ * 切块按顺序轮流分配到各分类，每次查询随机限定一个分类，正确结果为该分类内的暴力检索结果。
+ * Milvus分区键的对比见 {@link MilvusPartitionBenchmark}。
+ * 运行方式：mvn test -Pbenchmark -Dtest=CategoryFilterBenchmark [-Dbenchmark.vectors=20000]
+ */
+@Tag("benchmark")
+@DisplayName("按分类过滤检索基准测试")
+class CategoryFilterBenchmark {
+
+    private static final int DIMENSION = 384;
+    private static final int LATENT_DIMENSION = 32;
+    private static final int QUERIES = 300;
+    private static final int K = 10;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("过滤检索应保持高召回率，分类越多越快")
+    void filteredSearchAcrossCategories() throws Exception {
+        int vectors = Integer.getInteger("benchmark.vectors", 20_000);
+        Random random = new Random(42);
+        float[][] projection = new float[LATENT_DIMENSION][DIMENSION];
+        for (float[] row : projection) {
+            for (int i = 0; i < DIMENSION; i++) {
+                row[i] = (float) random.nextGaussian();
+            }
+        }
+        float[][] corpus = new float[vectors][];
+        for (int i = 0; i < vectors; i++) {
+            corpus[i] = sample(projection, random);
+        }
+        float[][] queries = new float[QUERIES][];
+        for (int q = 0; q < QUERIES; q++) {
+            queries[q] = sample(projection, random);
+        }
+
+        System.out.printf("[CategoryFilterBenchmark] vectors=%d dim=%d queries=%d k=%d%n", vectors, DIMENSION, QUERIES, K);
+        Map<Integer, Double> filteredQps = new LinkedHashMap<>();
+        for (int categoryCount : new int[]{10, 100}) {
+            LocalVectorService service = start(tempDir.resolve("categories-" + categoryCount + ".vec"));
+            try {
+                for (int from = 0; from < vectors; from += 500) {
+                    int to = Math.min(from + 500, vectors);
+                    List<float[]> batch = new ArrayList<>();
+                    List<Long> chunkIds = new ArrayList<>();
+                    List<Long> docIds = new ArrayList<>();
+                    List<String> categories = new ArrayList<>();
+                    for (int i = from; i < to; i++) {
+                        batch.add(corpus[i]);
+                        chunkIds.add((long) i);
+                        docIds.add((long) i / 20);
+                        categories.add(category(i, categoryCount));
+                    }
+                    int size = batch.size();
+                    service.insertVectors(batch, chunkIds, docIds, Collections.nCopies(size, "内容"), categories,
+                            Collections.nCopies(size, 1), Collections.nCopies(size, "标题"));
+                }
+
+                String[] queryCategories = new String[QUERIES];
+                for (int q = 0; q < QUERIES; q++) {
+                    queryCategories[q] = category(random.nextInt(categoryCount), categoryCount);
+                }
+
+                // 预热一轮，避免JIT编译计入耗时
+                for (int q = 0; q < QUERIES; q++) {
+                    service.search(queries[q], K, 0f);
+                    service.search(queries[q], K, 0f, SearchFilter.byCategory(queryCategories[q]));
+                }
+
+                long start = System.nanoTime();
+                for (int q = 0; q < QUERIES; q++) {
+                    service.search(queries[q], K, 0f);
+                }
+                double fullQps = QUERIES / ((System.nanoTime() - start) / 1_000_000_000.0);
+
+                int found = 0;
+                int expected = 0;
+                long filteredNanos = 0;
+                for (int q = 0; q < QUERIES; q++) {
+                    long queryStart = System.nanoTime();
+                    String queryCategory = queryCategories[q];
+                    List<SearchResult> results = service.search(queries[q], K, 0f,
+                            SearchFilter.byCategory(queryCategory));
+                    filteredNanos += System.nanoTime() - queryStart;
+
+                    assertThat(results).allSatisfy(r -> assertThat(r.getCategory()).isEqualTo(queryCategory));
+                    Set<Long> truth = exactTopK(corpus, queries[q], queryCategory, categoryCount);
+                    expected += truth.size();
+                    for (SearchResult result : results) {
+                        if (truth.contains(result.getChunkId())) {
+                            found++;
+                        }
+                    }
+                }
+                double qps = QUERIES / (filteredNanos / 1_000_000_000.0);
+                double recall = found / (double) expected;
+                filteredQps.put(categoryCount, qps);
+                System.out.printf("  categories=%d (%d vectors each): full=%.0f QPS, filtered=%.0f QPS (%.1fx), "
+                                + "filtered recall@%d=%.3f%n",
+                        categoryCount, vectors / categoryCount, fullQps, qps, qps / fullQps, K, recall);
+
+                assertThat(recall).isGreaterThan(0.9);
+            } finally {
+                service.destroy();
+            }
+        }
+
+        assertThat(filteredQps.get(100)).isGreaterThan(filteredQps.get(10));
+    }
+
+    private static String category(int index, int categoryCount) {
+        return "category-" + (index % categoryCount);
+    }
+
+    private static Set<Long> exactTopK(float[][] corpus, float[] query, String category, int categoryCount) {
+        PriorityQueue<long[]> top = new PriorityQueue<>(Comparator.comparingDouble(e -> Double.longBitsToDouble(e[1])));
+        for (int i = 0; i < corpus.length; i++) {
+            if (!category.equals(category(i, categoryCount))) {
+                continue;
+            }
+            double score = 0;
+            for (int d = 0; d < DIMENSION; d++) {
+                score += corpus[i][d] * query[d];
+            }
+            top.add(new long[]{i, Double.doubleToLongBits(score)});
+            if (top.size() > K) {
+                top.poll();
+            }
+        }
+        Set<Long> ids = new HashSet<>();
+        top.forEach(e -> ids.add(e[0]));
+        return ids;
+    }
+
+    private static LocalVectorService start(Path file) throws InterruptedException {
+        MilvusConfig config = new MilvusConfig();
+        config.setDimension(DIMENSION);
+        EmbeddingService embeddingService = mock(EmbeddingService.class);
+        when(embeddingService.getDimension()).thenReturn(DIMENSION);
+        // 数据库中没有切块和文档，启动比对为空操作
+        LocalVectorService service = new LocalVectorService(config, new MilvusServiceImpl(config),
+                embeddingService, mock(KnowledgeChunkMapper.class), mock(KnowledgeDocMapper.class));
+        ReflectionTestUtils.setField(service, "modeName", "standalone");
+        ReflectionTestUtils.setField(service, "filePath", file.toString());
+        ReflectionTestUtils.setField(service, "hnswM", 16);
+        ReflectionTestUtils.setField(service, "efConstruction", 128);
+        ReflectionTestUtils.setField(service, "efSearch", 128);
+        ReflectionTestUtils.setField(service, "rebuildBatchSize", 64);
+        ReflectionTestUtils.setField(service, "filterExactMax", 2048);
+        service.init();
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!service.isAvailable() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(service.isAvailable()).isTrue();
+        return service;
+    }
+
+    private static float[] sample(float[][] projection, Random random) {
+        float[] vector = new float[DIMENSION];
+        for (float[] row : projection) {
+            float z = (float) random.nextGaussian();
+            for (int i = 0; i < DIMENSION; i++) {
+                vector[i] += z * row[i];
+            }
+        }
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] += (float) random.nextGaussian() * 2f;
+        }
+        return VectorMath.normalize(vector);
+    }
+}
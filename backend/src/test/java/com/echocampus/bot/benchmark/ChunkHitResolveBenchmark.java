@@ -0,0 +1,215 @@
+package com.echocampus.bot.benchmark;
+
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.core.MybatisSqlSessionFactoryBuilder;
+import com.echocampus.bot.mapper.KnowledgeChunkMapper;
+import com.echocampus.bot.mapper.KnowledgeDocMapper;
+import com.echocampus.bot.service.MilvusService.SearchResult;
+import com.echocampus.bot.service.retrieval.ChunkHitResolver;
+import com.echocampus.bot.service.retrieval.KnowledgeDocCache;
+import org.apache.ibatis.datasource.pooled.PooledDataSource;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.SqlSessionManager;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * 检索结果转换基准测试：回查 knowledge_chunks/knowledge_docs 与 Milvus载荷+文档缓存 的延迟对比
+ * <p>
+ * 模拟每次检索返回 top-5 结果后转换为片段和文档的耗时（不含向量检索本身），输出 p50/p99。
+ * 需要本地 Docker（Testcontainers 启动 PostgreSQL），无 Docker 时自动跳过。
+ * 运行方式：mvn test -Pbenchmark -Dtest=ChunkHitResolveBenchmark
+ */
+@Tag("benchmark")
+@Testcontainers(disabledWithoutDocker = true)
+@DisplayName("检索结果转换基准测试")
+class ChunkHitResolveBenchmark {
+
+    private static final int DOCS = 50;
+    private static final int CHUNKS_PER_DOC = 200;
+    private static final int TOP_K = 5;
+    private static final int QUERIES = 2_000;
+
+    @Container
+    private static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:15-alpine");
+
+    private static KnowledgeChunkMapper chunkMapper;
+    private static KnowledgeDocMapper docMapper;
+
+    @BeforeAll
+    static void setUp() throws Exception {
+        PooledDataSource dataSource = new PooledDataSource(POSTGRES.getDriverClassName(),
+                POSTGRES.getJdbcUrl(), POSTGRES.getUsername(), POSTGRES.getPassword());
+        try (Connection conn = dataSource.getConnection(); Statement stmt = conn.createStatement()) {
+            // 与 docs/reference/数据库设计.sql 中的表结构一致（省略外键）
+            stmt.execute("""
+                    CREATE TABLE knowledge_docs (
+                        id BIGSERIAL PRIMARY KEY,
+                        title VARCHAR(200) NOT NULL,
+                        description TEXT,
+                        file_name VARCHAR(255),
+                        file_path VARCHAR(500),
+                        file_size BIGINT,
+                        file_type VARCHAR(50),
+                        category VARCHAR(100),
+                        tags VARCHAR(500),
+                        status VARCHAR(20) DEFAULT 'ACTIVE',
+                        vector_count INTEGER DEFAULT 0,
+                        process_status VARCHAR(20) DEFAULT 'PENDING',
+                        process_message TEXT,
+                        last_indexed_at TIMESTAMP,
+                        created_by BIGINT,
+                        created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                        updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+                    )""");
+            stmt.execute("""
+                    CREATE TABLE knowledge_chunks (
+                        id BIGSERIAL PRIMARY KEY,
+                        doc_id BIGINT NOT NULL,
+                        chunk_index INTEGER NOT NULL,
+                        chunk_type VARCHAR(20) DEFAULT 'TEXT',
+                        content TEXT NOT NULL,
+                        content_hash VARCHAR(64),
+                        vector_id VARCHAR(100),
+                        page_number INTEGER,
+                        metadata JSONB DEFAULT '{}',
+                        token_count INTEGER DEFAULT 0,
+                        start_position INTEGER,
+                        end_position INTEGER,
+                        created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+                    )""");
+            try (PreparedStatement docs = conn.prepareStatement(
+                    "INSERT INTO knowledge_docs (title, category) VALUES (?, ?)");
+                 PreparedStatement chunks = conn.prepareStatement(
+                         "INSERT INTO knowledge_chunks (doc_id, chunk_index, content, page_number) VALUES (?, ?, ?, ?)")) {
+                for (int d = 1; d <= DOCS; d++) {
+                    docs.setString(1, "文档" + d);
+                    docs.setString(2, "library");
+                    docs.addBatch();
+                    for (int i = 0; i < CHUNKS_PER_DOC; i++) {
+                        chunks.setLong(1, d);
+                        chunks.setInt(2, i);
+                        chunks.setString(3, content(d, i));
+                        chunks.setInt(4, i / 3 + 1);
+                        chunks.addBatch();
+                    }
+                }
+                docs.executeBatch();
+                chunks.executeBatch();
+            }
+        }
+
+        MybatisConfiguration configuration = new MybatisConfiguration();
+        configuration.setMapUnderscoreToCamelCase(true);
+        configuration.setEnvironment(new Environment("benchmark", new JdbcTransactionFactory(), dataSource));
+        configuration.addMapper(KnowledgeChunkMapper.class);
+        configuration.addMapper(KnowledgeDocMapper.class);
+        // 每次调用独立会话，与 Spring 管理的非事务 Mapper 行为一致
+        SqlSessionManager sessions = SqlSessionManager.newInstance(
+                new MybatisSqlSessionFactoryBuilder().build(configuration));
+        chunkMapper = sessions.getMapper(KnowledgeChunkMapper.class);
+        docMapper = sessions.getMapper(KnowledgeDocMapper.class);
+    }
+
+    @Test
+    @DisplayName("载荷直出应显著快于回查数据库，且结果一致")
+    void comparePayloadAndDatabase() {
+        ChunkHitResolver database = resolver(false, 0);
+        ChunkHitResolver payload = resolver(true, 5_000);
+
+        List<List<SearchResult>> queries = buildQueries();
+        for (List<SearchResult> query : queries.subList(0, 200)) {
+            assertThat(payload.resolve(query).chunks())
+                    .usingRecursiveFieldByFieldElementComparatorOnFields("id", "docId", "content", "pageNumber")
+                    .containsExactlyElementsOf(database.resolve(query).chunks());
+        }
+
+        long[] databaseNanos = measure(database, queries);
+        long[] payloadNanos = measure(payload, queries);
+
+        System.out.printf("[ChunkHitResolveBenchmark] top-%d x %d 次: 回查数据库 p50=%.0fµs p99=%.0fµs, "
+                        + "载荷+文档缓存 p50=%.0fµs p99=%.0fµs%n",
+                TOP_K, QUERIES, percentile(databaseNanos, 50), percentile(databaseNanos, 99),
+                percentile(payloadNanos, 50), percentile(payloadNanos, 99));
+
+        assertThat(percentile(payloadNanos, 50)).isLessThan(percentile(databaseNanos, 50) / 2);
+    }
+
+    /**
+     * @param payloadHits 是否使用载荷直出
+     * @param docCacheEntries 文档缓存容量，0 表示不缓存（每次查询文档表，即改造前的行为）
+     */
+    private ChunkHitResolver resolver(boolean payloadHits, int docCacheEntries) {
+        KnowledgeDocCache docCache = new KnowledgeDocCache(docMapper);
+        ReflectionTestUtils.setField(docCache, "maxEntries", docCacheEntries);
+        ReflectionTestUtils.setField(docCache, "ttlSeconds", 600L);
+        docCache.init();
+        ChunkHitResolver resolver = new ChunkHitResolver(chunkMapper, docCache);
+        ReflectionTestUtils.setField(resolver, "payloadHits", payloadHits);
+        return resolver;
+    }
+
+    private static long[] measure(ChunkHitResolver resolver, List<List<SearchResult>> queries) {
+        long[] nanos = new long[queries.size()];
+        for (int i = 0; i < queries.size(); i++) {
+            long start = System.nanoTime();
+            resolver.resolve(queries.get(i));
+            nanos[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(nanos);
+        return nanos;
+    }
+
+    private static double percentile(long[] sortedNanos, int p) {
+        int index = Math.min(sortedNanos.length - 1, sortedNanos.length * p / 100);
+        return sortedNanos[index] / 1000.0;
+    }
+
+    /**
+     * 构造带完整载荷的检索结果（与 Milvus 输出字段一致），ID 与建表时的自增ID对应
+     */
+    private static List<List<SearchResult>> buildQueries() {
+        Random random = new Random(42);
+        List<List<SearchResult>> queries = new ArrayList<>(QUERIES);
+        for (int q = 0; q < QUERIES; q++) {
+            List<SearchResult> results = new ArrayList<>(TOP_K);
+            for (int k = 0; k < TOP_K; k++) {
+                int doc = random.nextInt(DOCS) + 1;
+                int index = random.nextInt(CHUNKS_PER_DOC);
+                SearchResult result = new SearchResult();
+                result.setChunkId((long) (doc - 1) * CHUNKS_PER_DOC + index + 1);
+                result.setDocId((long) doc);
+                result.setContent(content(doc, index));
+                result.setCategory("library");
+                result.setPageNumber(index / 3 + 1);
+                result.setTitle("文档" + doc);
+                result.setPayloadLoaded(true);
+                result.setScore(0.9f - k * 0.05f);
+                results.add(result);
+            }
+            queries.add(results);
+        }
+        return queries;
+    }
+
+    private static String content(int doc, int index) {
+        return "文档" + doc + "第" + index + "个切块：图书馆开放时间为每天8:00-22:00，考试周延长至24:00。".repeat(8);
+    }
+}
@@ -0,0 +1,157 @@
+package com.echocampus.bot.benchmark;
+
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.core.MybatisSqlSessionFactoryBuilder;
+import com.echocampus.bot.entity.KnowledgeChunk;
+import com.echocampus.bot.mapper.KnowledgeChunkMapper;
+import org.apache.ibatis.builder.xml.XMLMapperBuilder;
+import org.apache.ibatis.datasource.pooled.PooledDataSource;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * 切块写库基准测试：逐行 insert 与多行批量插入的 rows/sec 对比
+ * <p>
+ * 需要本地 Docker（Testcontainers 启动 PostgreSQL），无 Docker 时自动跳过。
+ * 运行方式：mvn test -Pbenchmark -Dtest=ChunkInsertBenchmark
+ */
+@Tag("benchmark")
+@Testcontainers(disabledWithoutDocker = true)
+@DisplayName("切块批量写库基准测试")
+class ChunkInsertBenchmark {
+
+    @Container
+    private static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:15-alpine");
+
+    private static SqlSessionFactory sessionFactory;
+
+    @BeforeAll
+    static void setUp() throws Exception {
+        PooledDataSource dataSource = new PooledDataSource(POSTGRES.getDriverClassName(),
+                POSTGRES.getJdbcUrl(), POSTGRES.getUsername(), POSTGRES.getPassword());
+        try (Connection conn = dataSource.getConnection(); Statement stmt = conn.createStatement()) {
+            // 与 docs/reference/数据库设计.sql 中的 knowledge_chunks 表结构一致（省略外键）
+            stmt.execute("""
+                    CREATE TABLE knowledge_chunks (
+                        id BIGSERIAL PRIMARY KEY,
+                        doc_id BIGINT NOT NULL,
+                        chunk_index INTEGER NOT NULL,
+                        chunk_type VARCHAR(20) DEFAULT 'TEXT',
+                        content TEXT NOT NULL,
+                        content_hash VARCHAR(64),
+                        vector_id VARCHAR(100),
+                        page_number INTEGER,
+                        metadata JSONB DEFAULT '{}',
+                        token_count INTEGER DEFAULT 0,
+                        start_position INTEGER,
+                        end_position INTEGER,
+                        created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+                    )""");
+            stmt.execute("CREATE INDEX idx_knowledge_chunks_doc_id ON knowledge_chunks(doc_id)");
+        }
+
+        MybatisConfiguration configuration = new MybatisConfiguration();
+        configuration.setMapUnderscoreToCamelCase(true);
+        configuration.setEnvironment(new Environment("benchmark", new JdbcTransactionFactory(), dataSource));
+        try (InputStream xml = ChunkInsertBenchmark.class.getResourceAsStream("/mapper/KnowledgeChunkMapper.xml")) {
+            new XMLMapperBuilder(xml, configuration, "mapper/KnowledgeChunkMapper.xml",
+                    configuration.getSqlFragments()).parse();
+        }
+        sessionFactory = new MybatisSqlSessionFactoryBuilder().build(configuration);
+    }
+
+    @ParameterizedTest(name = "{0} 行")
+    @ValueSource(ints = {1_000, 10_000})
+    @DisplayName("批量插入应显著快于逐行插入且正确回填ID")
+    void compareInsertStrategies(int rows) throws Exception {
+        double perRow = measure(rows, (mapper, chunks) -> chunks.forEach(mapper::insert));
+        double batched = measure(rows, KnowledgeChunkMapper::insertBatch);
+
+        System.out.printf("[ChunkInsertBenchmark] rows=%d: per-row insert %.0f rows/sec, insertBatch(%d) %.0f rows/sec (%.1fx)%n",
+                rows, perRow, KnowledgeChunkMapper.INSERT_BATCH_SIZE, batched, batched / perRow);
+
+        assertThat(batched).isGreaterThan(perRow * 2);
+    }
+
+    private double measure(int rows, InsertStrategy strategy) throws Exception {
+        truncate();
+        List<KnowledgeChunk> chunks = buildChunks(rows);
+
+        long start = System.nanoTime();
+        try (SqlSession session = sessionFactory.openSession(false)) {
+            strategy.insert(session.getMapper(KnowledgeChunkMapper.class), chunks);
+            session.commit();
+        }
+        double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+
+        verifyGeneratedIds(chunks);
+        return rows / seconds;
+    }
+
+    /**
+     * 校验回填的ID与数据库中的行一一对应（chunk_index 一致）
+     */
+    private void verifyGeneratedIds(List<KnowledgeChunk> chunks) throws Exception {
+        Map<Long, Integer> indexById = new HashMap<>();
+        try (SqlSession session = sessionFactory.openSession();
+             Statement stmt = session.getConnection().createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT id, chunk_index FROM knowledge_chunks")) {
+            while (rs.next()) {
+                indexById.put(rs.getLong(1), rs.getInt(2));
+            }
+        }
+        assertThat(indexById).hasSize(chunks.size());
+        for (KnowledgeChunk chunk : chunks) {
+            assertThat(chunk.getId()).isNotNull();
+            assertThat(indexById.get(chunk.getId())).isEqualTo(chunk.getChunkIndex());
+        }
+    }
+
+    private void truncate() throws Exception {
+        try (SqlSession session = sessionFactory.openSession(true);
+             Statement stmt = session.getConnection().createStatement()) {
+            stmt.execute("TRUNCATE knowledge_chunks RESTART IDENTITY");
+        }
+    }
+
+    private List<KnowledgeChunk> buildChunks(int rows) {
+        List<KnowledgeChunk> chunks = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            KnowledgeChunk chunk = new KnowledgeChunk();
+            chunk.setDocId(1L);
+            chunk.setChunkIndex(i);
+            chunk.setContent("第" + i + "个切块：图书馆开放时间为每天8:00-22:00，考试周延长至24:00。".repeat(8));
+            chunk.setTokenCount(300);
+            chunk.setStartPosition(i * 400);
+            chunk.setEndPosition(i * 400 + 400);
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
+    @FunctionalInterface
+    private interface InsertStrategy {
+        void insert(KnowledgeChunkMapper mapper, List<KnowledgeChunk> chunks);
+    }
+}
@@ -0,0 +1,172 @@
+package com.echocampus.bot.benchmark;
+
+import com.echocampus.bot.config.AiServiceConfig;
+import com.echocampus.bot.service.impl.LlmServiceImpl;
+import com.echocampus.bot.service.stream.StreamCancellation;
+import com.echocampus.bot.service.transport.AiHttpTransport;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * 并发流式对话负载测试：1200 个同时进行的流式生成，对比非阻塞生成与每个流占用一个线程的阻塞生成
+ * <p>
+ * 模拟 LLM 每 200ms 产生一个片段（每个流约 3 秒；片段较稀疏，避免CPU成为瓶颈，测的是并发流数），
+ * 两种方式都经过 LlmServiceImpl 和 AiHttpTransport。
+ * 阻塞方式使用固定大小的线程池（同时进行的流数即线程数）；非阻塞方式由单个线程发起全部请求。
+ * 线程数按采样期间的峰值统计，不含模拟服务端线程；首字延迟从发起请求到收到第一个片段。
+ * <p>
+ * 运行方式：mvn test -Pbenchmark -Dtest=ConcurrentStreamLoadBenchmark
+ */
+@Tag("benchmark")
+@DisplayName("并发流式对话负载测试")
+class ConcurrentStreamLoadBenchmark {
+
+    private static final int STREAMS = 1200;
+    private static final int TOKENS_PER_STREAM = 15;
+    private static final long TOKEN_INTERVAL_MS = 200;
+    private static final int BLOCKING_THREADS = 200;
+
+    @Test
+    @DisplayName("非阻塞生成应支撑 1000+ 并发流，线程数远小于流数")
+    void concurrentStreams() throws Exception {
+        try (MockLlmStreamServer server = new MockLlmStreamServer(TOKENS_PER_STREAM, TOKEN_INTERVAL_MS)) {
+            AiServiceConfig config = new AiServiceConfig();
+            config.getLlm().setApiUrl(server.url());
+            config.getLlm().setApiKey("bench");
+            config.getHttp().setMaxRequestsPerHost(BLOCKING_THREADS);
+            AiHttpTransport transport = new AiHttpTransport(config);
+            LlmServiceImpl llmService = new LlmServiceImpl(config, transport);
+            try {
+                run(llmService, transport, false, 50);
+                run(llmService, transport, true, 50);
+
+                Result blocking = run(llmService, transport, false, STREAMS);
+                Result nonBlocking = run(llmService, transport, true, STREAMS);
+
+                System.out.printf("[ConcurrentStreamLoadBenchmark] streams=%d tokensPerStream=%d tokenIntervalMs=%d blockingThreads=%d%n",
+                        STREAMS, TOKENS_PER_STREAM, TOKEN_INTERVAL_MS, BLOCKING_THREADS);
+                print("blocking", blocking);
+                print("nonBlocking", nonBlocking);
+
+                assertThat(blocking.tokens()).isEqualTo((long) STREAMS * TOKENS_PER_STREAM);
+                assertThat(nonBlocking.tokens()).isEqualTo(blocking.tokens());
+                assertThat(nonBlocking.peakStreams()).isGreaterThanOrEqualTo(1000);
+                assertThat(nonBlocking.peakThreads()).isLessThan(STREAMS / 10);
+                assertThat(nonBlocking.wallNanos()).isLessThan(blocking.wallNanos());
+            } finally {
+                transport.destroy();
+            }
+        }
+    }
+
+    private Result run(LlmServiceImpl llmService, AiHttpTransport transport, boolean nonBlocking, int streams)
+            throws Exception {
+        AtomicLong tokens = new AtomicLong();
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger peakStreams = new AtomicInteger();
+        long[] firstTokenNanos = new long[streams];
+        ThreadSampler threads = new ThreadSampler();
+        ExecutorService blockingPool = nonBlocking ? null : Executors.newFixedThreadPool(BLOCKING_THREADS);
+        long wallStart = System.nanoTime();
+        try {
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < streams; i++) {
+                int index = i;
+                long start = System.nanoTime();
+                AtomicInteger received = new AtomicInteger();
+                Consumer<String> consumer = chunk -> {
+                    if (received.getAndIncrement() == 0) {
+                        firstTokenNanos[index] = System.nanoTime() - start;
+                        peakStreams.accumulateAndGet(active.incrementAndGet(), Math::max);
+                    }
+                    tokens.incrementAndGet();
+                };
+                if (nonBlocking) {
+                    futures.add(llmService.ragAnswerStreamAsync("图书馆几点开门？", "", List.of(), consumer,
+                            StreamCancellation.none())
+                            .whenComplete((r, e) -> active.decrementAndGet()));
+                } else {
+                    futures.add(CompletableFuture.runAsync(() -> {
+                        llmService.ragAnswerStream("图书馆几点开门？", "", List.of(), consumer);
+                        active.decrementAndGet();
+                    }, blockingPool));
+                }
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(10, TimeUnit.MINUTES);
+        } finally {
+            threads.close();
+            if (blockingPool != null) {
+                blockingPool.shutdownNow();
+                blockingPool.awaitTermination(10, TimeUnit.SECONDS);
+            }
+        }
+        long wall = System.nanoTime() - wallStart;
+        Arrays.sort(firstTokenNanos);
+        return new Result(tokens.get(), peakStreams.get(), threads.peak(), wall,
+                percentile(firstTokenNanos, 50), percentile(firstTokenNanos, 99));
+    }
+
+    private static long percentile(long[] sorted, int percentile) {
+        return sorted[Math.min(sorted.length - 1, sorted.length * percentile / 100)];
+    }
+
+    private static void print(String name, Result result) {
+        double seconds = result.wallNanos() / 1e9;
+        System.out.printf("  %-11s peakStreams=%d peakThreads=%d wallMs=%d tokens/sec=%.0f ttftP50Ms=%d ttftP99Ms=%d%n",
+                name, result.peakStreams(), result.peakThreads(), TimeUnit.NANOSECONDS.toMillis(result.wallNanos()),
+                result.tokens() / seconds, TimeUnit.NANOSECONDS.toMillis(result.ttftP50Nanos()),
+                TimeUnit.NANOSECONDS.toMillis(result.ttftP99Nanos()));
+    }
+
+    private record Result(long tokens, int peakStreams, int peakThreads, long wallNanos,
+                          long ttftP50Nanos, long ttftP99Nanos) {
+    }
+
+    /**
+     * 每 50ms 采样一次存活线程数（不含模拟服务端线程），记录峰值
+     */
+    private static final class ThreadSampler implements AutoCloseable {
+
+        private final AtomicInteger peak = new AtomicInteger();
+        private final ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+
+        ThreadSampler() {
+            sampler.scheduleAtFixedRate(this::sample, 0, 50, TimeUnit.MILLISECONDS);
+        }
+
+        private void sample() {
+            int count = 0;
+            for (Thread thread : Thread.getAllStackTraces().keySet()) {
+                String name = thread.getName();
+                if (!name.startsWith(MockLlmStreamServer.THREAD_PREFIX) && !name.startsWith("HTTP-Dispatcher")) {
+                    count++;
+                }
+            }
+            peak.accumulateAndGet(count, Math::max);
+        }
+
+        int peak() {
+            return peak.get();
+        }
+
+        @Override
+        public void close() {
+            sampler.shutdownNow();
+        }
+    }
+}
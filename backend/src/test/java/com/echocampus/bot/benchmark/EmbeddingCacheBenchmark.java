@@ -0,0 +1,94 @@
+package com.echocampus.bot.benchmark;
+
+import com.echocampus.bot.config.AiServiceConfig;
+import com.echocampus.bot.service.EmbeddingService;
+import com.echocampus.bot.service.impl.CachingEmbeddingService;
+import com.echocampus.bot.service.impl.EmbeddingServiceImpl;
+import com.echocampus.bot.service.transport.AiHttpTransport;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * 查询向量缓存基准测试：重复问题负载下检索阶段向量化的 p50 延迟
+ * <p>
+ * 运行方式：mvn test -Pbenchmark -Dtest=EmbeddingCacheBenchmark
+ */
+@Tag("benchmark")
+@DisplayName("查询向量缓存基准测试")
+class EmbeddingCacheBenchmark {
+
+    private static final int DIMENSION = 1024;
+    private static final long SERVER_LATENCY_MS = 15;
+    private static final int DISTINCT_QUESTIONS = 40;
+    private static final int REQUESTS = 300;
+
+    @Test
+    @DisplayName("重复问题负载下缓存应显著降低 p50 延迟")
+    void repeatedQueryWorkload() throws Exception {
+        List<String> workload = buildWorkload();
+
+        try (MockEmbeddingServer server = new MockEmbeddingServer(DIMENSION, SERVER_LATENCY_MS)) {
+            AiServiceConfig config = new AiServiceConfig();
+            config.getEmbedding().setApiUrl(server.url());
+            config.getEmbedding().setApiKey("bench");
+            config.getEmbedding().setDimension(DIMENSION);
+
+            EmbeddingServiceImpl direct = new EmbeddingServiceImpl(config, new AiHttpTransport(config));
+            long[] uncached = run(direct, workload);
+            int uncachedRequests = server.requestCount();
+
+            CachingEmbeddingService caching = new CachingEmbeddingService(direct, config);
+            long[] cached = run(caching, workload);
+            int cachedRequests = server.requestCount() - uncachedRequests;
+
+            System.out.printf("[EmbeddingCacheBenchmark] requests=%d distinct=%d serverLatency=%dms%n",
+                    REQUESTS, DISTINCT_QUESTIONS, SERVER_LATENCY_MS);
+            System.out.printf("  uncached: p50=%.2fms p90=%.2fms upstreamCalls=%d%n",
+                    percentile(uncached, 50), percentile(uncached, 90), uncachedRequests);
+            System.out.printf("  cached:   p50=%.2fms p90=%.2fms upstreamCalls=%d stats=%s%n",
+                    percentile(cached, 50), percentile(cached, 90), cachedRequests,
+                    caching.getCacheStats().toMap());
+
+            assertThat(cachedRequests).isLessThanOrEqualTo(DISTINCT_QUESTIONS);
+            assertThat(percentile(cached, 50)).isLessThan(percentile(uncached, 50) / 2);
+        }
+    }
+
+    /**
+     * 构造偏斜的重复问题序列（少数热门问题占大部分请求）
+     */
+    private List<String> buildWorkload() {
+        Random random = new Random(42);
+        List<String> workload = new ArrayList<>();
+        for (int i = 0; i < REQUESTS; i++) {
+            int q = (int) Math.floor(Math.pow(random.nextDouble(), 2) * DISTINCT_QUESTIONS);
+            workload.add("图书馆几点开门 问题" + q);
+        }
+        return workload;
+    }
+
+    private long[] run(EmbeddingService service, List<String> workload) {
+        long[] latencies = new long[workload.size()];
+        for (int i = 0; i < workload.size(); i++) {
+            long start = System.nanoTime();
+            service.embed(workload.get(i));
+            latencies[i] = System.nanoTime() - start;
+        }
+        return latencies;
+    }
+
+    private double percentile(long[] nanos, int p) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        int index = Math.min(sorted.length - 1, (int) Math.ceil(p / 100.0 * sorted.length) - 1);
+        return sorted[Math.max(index, 0)] / 1_000_000.0;
+    }
+}
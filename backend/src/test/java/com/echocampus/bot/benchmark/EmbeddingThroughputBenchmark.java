@@ -0,0 +1,85 @@
+package com.echocampus.bot.benchmark;
+
+import com.echocampus.bot.config.AiServiceConfig;
+import com.echocampus.bot.service.impl.EmbeddingServiceImpl;
+import com.echocampus.bot.service.transport.AiHttpTransport;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * 批量向量化吞吐基准测试：不同并发批次数下的 chunks/sec
+ * <p>
+ * 运行方式：mvn test -Pbenchmark -Dtest=EmbeddingThroughputBenchmark
+ */
+@Tag("benchmark")
+@DisplayName("批量向量化吞吐基准测试")
+class EmbeddingThroughputBenchmark {
+
+    private static final int DIMENSION = 256;
+    private static final long SERVER_LATENCY_MS = 40;
+    private static final int CHUNKS = 1000;
+    private static final int BATCH_SIZE = 10;
+
+    @Test
+    @DisplayName("并发批次应按窗口大小提升吞吐且保持输入顺序")
+    void pipelinedThroughput() throws Exception {
+        List<String> texts = new ArrayList<>();
+        for (int i = 0; i < CHUNKS; i++) {
+            texts.add("第" + i + "个切块：图书馆开放时间为8:00-22:00");
+        }
+
+        System.out.printf("[EmbeddingThroughputBenchmark] chunks=%d batchSize=%d serverLatency=%dms%n",
+                CHUNKS, BATCH_SIZE, SERVER_LATENCY_MS);
+
+        double sequential = run(texts, 1, 0);
+        double pipelined4 = run(texts, 4, 0);
+        double pipelined8 = run(texts, 8, 0);
+        double rateLimited = run(texts, 8, 50);
+
+        assertThat(pipelined4).isGreaterThan(sequential * 2.5);
+        assertThat(pipelined8).isGreaterThan(pipelined4);
+        // 令牌桶限制为50请求/秒（每请求10条）时吞吐不应明显超过500 chunks/sec
+        assertThat(rateLimited).isLessThan(600);
+    }
+
+    private double run(List<String> texts, int maxInFlight, double requestsPerSecond) throws Exception {
+        try (MockEmbeddingServer server = new MockEmbeddingServer(DIMENSION, SERVER_LATENCY_MS)) {
+            AiServiceConfig config = new AiServiceConfig();
+            config.getEmbedding().setApiUrl(server.url());
+            config.getEmbedding().setApiKey("bench");
+            config.getEmbedding().setDimension(DIMENSION);
+            config.getEmbedding().setBatchSize(BATCH_SIZE);
+            config.getEmbedding().setMaxInFlightBatches(maxInFlight);
+            config.getEmbedding().setRequestsPerSecond(requestsPerSecond);
+            config.getEmbedding().setRequestBurst(maxInFlight);
+
+            EmbeddingServiceImpl service = new EmbeddingServiceImpl(config, new AiHttpTransport(config));
+            try {
+                long start = System.nanoTime();
+                List<float[]> vectors = service.embedBatch(texts);
+                double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+                double throughput = texts.size() / seconds;
+
+                System.out.printf("  maxInFlight=%d rps=%s: %.2fs, %.0f chunks/sec, upstreamCalls=%d, maxConcurrent=%d%n",
+                        maxInFlight, requestsPerSecond > 0 ? String.valueOf(requestsPerSecond) : "unlimited",
+                        seconds, throughput, server.requestCount(), server.maxConcurrent());
+
+                assertThat(vectors).hasSize(texts.size());
+                for (int i = 0; i < texts.size(); i++) {
+                    // 模拟服务端以文本哈希作为第0维，用于校验结果顺序
+                    assertThat(vectors.get(i)[0]).isEqualTo((float) texts.get(i).hashCode());
+                }
+                assertThat(server.maxConcurrent()).isLessThanOrEqualTo(maxInFlight);
+                return throughput;
+            } finally {
+                service.destroy();
+            }
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.echocampus.bot.benchmark;
+
+import com.echocampus.bot.config.AiServiceConfig;
+import com.echocampus.bot.dto.response.StreamChatResponse;
+import com.echocampus.bot.service.stream.ChatCompletionStreamParser;
+import com.echocampus.bot.service.stream.SseEventWriter;
+import com.echocampus.bot.service.transport.AiHttpTransport;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * LLM 流式转发基准测试：上游SSE → 浏览器SSE 每个 token 的吞吐和内存分配
+ * <p>
+ * 对比原实现（readLine + readTree + ObjectMapper 序列化整个事件 + 拼接SSE字符串）与
+ * 流式解析（JsonParser 只取 delta.content + SseEventWriter 直接写出帧）。
+ * 两者都经过 AiHttpTransport 从本地模拟服务读取，写出到丢弃输出流；分配量取当前线程的分配字节数。
+ * <p>
+ * 运行方式：mvn test -Pbenchmark -Dtest=LlmStreamRelayBenchmark
+ */
+@Tag("benchmark")
+@DisplayName("LLM流式转发基准测试")
+class LlmStreamRelayBenchmark {
+
+    private static final int TOKENS = 20000;
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int ROUNDS = 10;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    @DisplayName("流式解析应减少每个 token 的分配且吞吐不低于原实现")
+    void relayThroughputAndAllocation() throws Exception {
+        try (MockLlmStreamServer server = new MockLlmStreamServer(TOKENS)) {
+            AiServiceConfig config = new AiServiceConfig();
+            AiHttpTransport transport = new AiHttpTransport(config);
+            Request request = new Request.Builder()
+                    .url(server.url())
+                    .post(RequestBody.create("{}", MediaType.parse("application/json")))
+                    .build();
+
+            Relay legacy = out -> legacyRelay(transport, request, out);
+            Relay streaming = out -> streamingRelay(transport, request, out);
+            for (int i = 0; i < WARMUP_ROUNDS; i++) {
+                legacy.run(OutputStream.nullOutputStream());
+                streaming.run(OutputStream.nullOutputStream());
+            }
+
+            Result legacyResult = measure(legacy);
+            Result streamingResult = measure(streaming);
+            transport.destroy();
+
+            System.out.printf("[LlmStreamRelayBenchmark] tokens=%d rounds=%d%n", TOKENS, ROUNDS);
+            System.out.printf("  legacy:    %.0f tokens/sec, %.0f bytes/token%n",
+                    legacyResult.tokensPerSecond(), legacyResult.bytesPerToken());
+            System.out.printf("  streaming: %.0f tokens/sec, %.0f bytes/token%n",
+                    streamingResult.tokensPerSecond(), streamingResult.bytesPerToken());
+
+            assertThat(streamingResult.bytesPerToken()).isLessThan(legacyResult.bytesPerToken() / 2);
+            assertThat(streamingResult.tokensPerSecond()).isGreaterThan(legacyResult.tokensPerSecond());
+        }
+    }
+
+    private Result measure(Relay relay) throws IOException {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        long tokens = 0;
+        for (int i = 0; i < ROUNDS; i++) {
+            tokens += relay.run(OutputStream.nullOutputStream());
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        assertThat(tokens).isEqualTo((long) TOKENS * ROUNDS);
+        return new Result(tokens * 1e9 / elapsed, (double) allocated / tokens);
+    }
+
+    /**
+     * 原实现：逐行读取字符串，每行 readTree，每个事件完整序列化后拼成SSE帧
+     */
+    private int legacyRelay(AiHttpTransport transport, Request request, OutputStream out) throws IOException {
+        int tokens = 0;
+        try (Response response = transport.execute(request, null, null);
+             BufferedReader reader = new BufferedReader(
+                     new InputStreamReader(response.body().byteStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.startsWith("data: ")) {
+                    continue;
+                }
+                String data = line.substring(6).trim();
+                if ("[DONE]".equals(data)) {
+                    break;
+                }
+                JsonNode delta = objectMapper.readTree(data).get("choices").get(0).get("delta");
+                String content = delta.get("content").asText();
+                String json = objectMapper.writeValueAsString(StreamChatResponse.content(1L, 2L, content));
+                out.write(("event:content\ndata:" + json + "\n\n").getBytes(StandardCharsets.UTF_8));
+                out.flush();
+                tokens++;
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * 流式解析：字节流上解析 delta.content，直接写出预编码的SSE帧
+     */
+    private int streamingRelay(AiHttpTransport transport, Request request, OutputStream out) throws IOException {
+        SseEventWriter writer = new SseEventWriter(out, objectMapper);
+        int[] tokens = {0};
+        try (Response response = transport.execute(request, null, null)) {
+            ChatCompletionStreamParser.parse(response.body().byteStream(), content -> {
+                try {
+                    writer.send(StreamChatResponse.content(1L, 2L, content));
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+                tokens[0]++;
+            });
+        }
+        return tokens[0];
+    }
+
+    @FunctionalInterface
+    private interface Relay {
+        int run(OutputStream out) throws IOException;
+    }
+
+    private record Result(double tokensPerSecond, double bytesPerToken) {
+    }
+}
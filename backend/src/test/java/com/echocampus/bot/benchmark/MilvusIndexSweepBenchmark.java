@@ -0,0 +1,200 @@
+package com.echocampus.bot.benchmark;
+
+import com.echocampus.bot.config.MilvusConfig;
+import com.echocampus.bot.service.MilvusService.SearchBudget;
+import com.echocampus.bot.service.MilvusService.SearchFilter;
+import com.echocampus.bot.service.MilvusService.SearchResult;
+import com.echocampus.bot.service.impl.MilvusServiceImpl;
+import com.echocampus.bot.vector.MilvusIndexProfile;
+import com.echocampus.bot.vector.VectorMath;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.containers.wait.strategy.Wait;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Milvus索引参数扫描基准测试：各索引类型在 fast / balanced / accurate 检索预算下的 recall@k 与 p50/p99 延迟
+ * <p>
+ * 数据只写入一次，之后通过 {@link MilvusServiceImpl#beginRebuild} 等在线重建接口依次切换到
+ * IVF_FLAT / IVF_SQ8 / IVF_PQ / HNSW / DISKANN，同时验证别名切换后检索结果不丢失。正确结果为暴力检索的 top-k。
+ * 需要本地 Docker（Testcontainers 启动 Milvus standalone），无 Docker 时自动跳过。
+ * 运行方式：mvn test -Pbenchmark -Dtest=MilvusIndexSweepBenchmark [-Dbenchmark.vectors=20000]
+ */
+@Tag("benchmark")
+@Testcontainers(disabledWithoutDocker = true)
+@DisplayName("Milvus索引参数扫描基准测试")
+class MilvusIndexSweepBenchmark {
+
+    private static final int DIMENSION = 384;
+    private static final int LATENT_DIMENSION = 32;
+    private static final int QUERIES = 300;
+    private static final int K = 10;
+    private static final List<String> INDEX_TYPES = List.of("IVF_FLAT", "IVF_SQ8", "IVF_PQ", "HNSW", "DISKANN");
+
+    @Container
+    private static final GenericContainer<?> MILVUS = new GenericContainer<>("milvusdb/milvus:v2.3.4")
+            .withCommand("milvus", "run", "standalone")
+            .withEnv("ETCD_USE_EMBED", "true")
+            .withEnv("ETCD_DATA_DIR", "/var/lib/milvus/etcd")
+            .withEnv("COMMON_STORAGETYPE", "local")
+            .withExposedPorts(19530, 9091)
+            .waitingFor(Wait.forHttp("/healthz").forPort(9091).withStartupTimeout(Duration.ofMinutes(3)));
+
+    @Test
+    @DisplayName("检索预算越高召回率越高，在线重建后检索结果完整")
+    void recallLatencySweep() throws Exception {
+        int vectors = Integer.getInteger("benchmark.vectors", 20_000);
+        Random random = new Random(42);
+        float[][] projection = new float[LATENT_DIMENSION][DIMENSION];
+        for (float[] row : projection) {
+            for (int i = 0; i < DIMENSION; i++) {
+                row[i] = (float) random.nextGaussian();
+            }
+        }
+        float[][] corpus = new float[vectors][];
+        for (int i = 0; i < vectors; i++) {
+            corpus[i] = sample(projection, random);
+        }
+        float[][] queries = new float[QUERIES][];
+        List<Set<Long>> truth = new ArrayList<>();
+        for (int q = 0; q < QUERIES; q++) {
+            queries[q] = sample(projection, random);
+            truth.add(exactTopK(corpus, queries[q]));
+        }
+
+        MilvusServiceImpl milvus = start();
+        try {
+            List<String> vectorIds = new ArrayList<>();
+            for (int from = 0; from < vectors; from += 1000) {
+                int to = Math.min(from + 1000, vectors);
+                List<float[]> batch = new ArrayList<>();
+                List<Long> chunkIds = new ArrayList<>();
+                List<Long> docIds = new ArrayList<>();
+                for (int i = from; i < to; i++) {
+                    batch.add(corpus[i]);
+                    chunkIds.add((long) i);
+                    docIds.add((long) i / 20);
+                }
+                int size = batch.size();
+                vectorIds.addAll(milvus.insertVectors(batch, chunkIds, docIds, Collections.nCopies(size, "内容"),
+                        Collections.nCopies(size, "默认"), Collections.nCopies(size, 1),
+                        Collections.nCopies(size, "标题")));
+            }
+            awaitSearchable(milvus, queries[0]);
+
+            System.out.printf("[MilvusIndexSweepBenchmark] vectors=%d dim=%d queries=%d k=%d%n",
+                    vectors, DIMENSION, QUERIES, K);
+            for (String type : INDEX_TYPES) {
+                MilvusIndexProfile profile = milvus.getIndexProfile().withIndexType(type);
+                long rebuildStart = System.nanoTime();
+                String target = milvus.beginRebuild(profile);
+                for (int from = 0; from < vectorIds.size(); from += 1000) {
+                    milvus.copyVectors(target, vectorIds.subList(from, Math.min(from + 1000, vectorIds.size())));
+                }
+                milvus.completeRebuild(target, profile, 10, TimeUnit.MINUTES);
+                awaitSearchable(milvus, queries[0]);
+                System.out.printf("  %s %s: rebuild=%.1fs%n", type, profile.indexParams(),
+                        (System.nanoTime() - rebuildStart) / 1_000_000_000.0);
+                assertThat(milvus.getVectorCount()).isEqualTo(vectors);
+
+                Map<SearchBudget, Double> recalls = new EnumMap<>(SearchBudget.class);
+                for (SearchBudget budget : SearchBudget.values()) {
+                    long[] latencies = new long[QUERIES];
+                    int found = 0;
+                    for (int round = 0; round < 2; round++) {
+                        // 第一轮为预热
+                        found = 0;
+                        for (int q = 0; q < QUERIES; q++) {
+                            long start = System.nanoTime();
+                            List<SearchResult> results = milvus.search(queries[q], K, 0f, SearchFilter.NONE, budget);
+                            latencies[q] = System.nanoTime() - start;
+                            for (SearchResult result : results) {
+                                if (truth.get(q).contains(result.getChunkId())) {
+                                    found++;
+                                }
+                            }
+                        }
+                    }
+                    Arrays.sort(latencies);
+                    double recall = found / (double) (QUERIES * K);
+                    recalls.put(budget, recall);
+                    System.out.printf("    budget=%-8s params=%-20s recall@%d=%.3f p50=%.2fms p99=%.2fms%n",
+                            budget.name().toLowerCase(Locale.ROOT), profile.searchParams(budget, K), K, recall,
+                            percentile(latencies, 0.5), percentile(latencies, 0.99));
+                }
+                assertThat(recalls.get(SearchBudget.ACCURATE)).isGreaterThanOrEqualTo(recalls.get(SearchBudget.FAST));
+            }
+        } finally {
+            milvus.destroy();
+        }
+    }
+
+    private static MilvusServiceImpl start() {
+        MilvusConfig config = new MilvusConfig();
+        config.setHost(MILVUS.getHost());
+        config.setPort(MILVUS.getMappedPort(19530));
+        config.setCollectionName("benchmark_index_sweep");
+        config.setDimension(DIMENSION);
+        config.setNlist(128);
+        config.setNprobe(8);
+        MilvusServiceImpl milvus = new MilvusServiceImpl(config);
+        milvus.init();
+        assertThat(milvus.isConnected()).isTrue();
+        return milvus;
+    }
+
+    /**
+     * 新写入的数据在一致性窗口后才可检索
+     */
+    private static void awaitSearchable(MilvusServiceImpl milvus, float[] query) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (milvus.search(query, K, 0f).size() < K && System.currentTimeMillis() < deadline) {
+            Thread.sleep(200);
+        }
+    }
+
+    private static Set<Long> exactTopK(float[][] corpus, float[] query) {
+        PriorityQueue<long[]> top = new PriorityQueue<>(Comparator.comparingDouble(e -> Double.longBitsToDouble(e[1])));
+        for (int i = 0; i < corpus.length; i++) {
+            double score = 0;
+            for (int d = 0; d < DIMENSION; d++) {
+                score += corpus[i][d] * query[d];
+            }
+            top.add(new long[]{i, Double.doubleToLongBits(score)});
+            if (top.size() > K) {
+                top.poll();
+            }
+        }
+        Set<Long> ids = new HashSet<>();
+        top.forEach(e -> ids.add(e[0]));
+        return ids;
+    }
+
+    private static double percentile(long[] sortedNanos, double p) {
+        int index = Math.min(sortedNanos.length - 1, (int) Math.ceil(p * sortedNanos.length) - 1);
+        return sortedNanos[Math.max(0, index)] / 1_000_000.0;
+    }
+
+    private static float[] sample(float[][] projection, Random random) {
+        float[] vector = new float[DIMENSION];
+        for (float[] row : projection) {
+            float z = (float) random.nextGaussian();
+            for (int i = 0; i < DIMENSION; i++) {
+                vector[i] += z * row[i];
+            }
+        }
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] += (float) random.nextGaussian() * 2f;
+        }
+        return VectorMath.normalize(vector);
+    }
+}
@@ -0,0 +1,148 @@
+package com.echocampus.bot.benchmark;
+
+import com.echocampus.bot.config.MilvusConfig;
+import com.echocampus.bot.service.MilvusService.SearchFilter;
+import com.echocampus.bot.service.MilvusService.SearchResult;
+import com.echocampus.bot.service.impl.MilvusServiceImpl;
+import com.echocampus.bot.vector.VectorMath;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.containers.wait.strategy.Wait;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.Duration;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Milvus分区键基准测试：10 / 100 个分类下，按分类过滤（只检索对应分区）与全集合检索的延迟对比
+ * <p>
+ * 集合由 {@link MilvusServiceImpl#initCollection()} 创建，category 为分区键，输出 p50/p99。
+ * 需要本地 Docker（Testcontainers 启动 Milvus standalone，内置 etcd 和本地存储），无 Docker 时自动跳过。
+ * 运行方式：mvn test -Pbenchmark -Dtest=MilvusPartitionBenchmark [-Dbenchmark.vectors=20000]
+ */
+@Tag("benchmark")
+@Testcontainers(disabledWithoutDocker = true)
+@DisplayName("Milvus分区键基准测试")
+class MilvusPartitionBenchmark {
+
+    private static final int DIMENSION = 384;
+    private static final int QUERIES = 500;
+    private static final int K = 10;
+
+    @Container
+    private static final GenericContainer<?> MILVUS = new GenericContainer<>("milvusdb/milvus:v2.3.4")
+            .withCommand("milvus", "run", "standalone")
+            .withEnv("ETCD_USE_EMBED", "true")
+            .withEnv("ETCD_DATA_DIR", "/var/lib/milvus/etcd")
+            .withEnv("COMMON_STORAGETYPE", "local")
+            .withExposedPorts(19530, 9091)
+            .waitingFor(Wait.forHttp("/healthz").forPort(9091).withStartupTimeout(Duration.ofMinutes(3)));
+
+    @Test
+    @DisplayName("按分类过滤的检索应快于全集合检索")
+    void partitionKeyPruning() throws Exception {
+        int vectors = Integer.getInteger("benchmark.vectors", 20_000);
+        Random random = new Random(42);
+        float[][] corpus = new float[vectors][];
+        for (int i = 0; i < vectors; i++) {
+            corpus[i] = randomVector(random);
+        }
+        float[][] queries = new float[QUERIES][];
+        for (int q = 0; q < QUERIES; q++) {
+            queries[q] = randomVector(random);
+        }
+
+        System.out.printf("[MilvusPartitionBenchmark] vectors=%d dim=%d queries=%d k=%d%n", vectors, DIMENSION, QUERIES, K);
+        for (int categoryCount : new int[]{10, 100}) {
+            MilvusServiceImpl milvus = start("benchmark_categories_" + categoryCount);
+            try {
+                for (int from = 0; from < vectors; from += 1000) {
+                    int to = Math.min(from + 1000, vectors);
+                    List<float[]> batch = new ArrayList<>();
+                    List<Long> chunkIds = new ArrayList<>();
+                    List<Long> docIds = new ArrayList<>();
+                    List<String> categories = new ArrayList<>();
+                    for (int i = from; i < to; i++) {
+                        batch.add(corpus[i]);
+                        chunkIds.add((long) i);
+                        docIds.add((long) i / 20);
+                        categories.add("category-" + (i % categoryCount));
+                    }
+                    int size = batch.size();
+                    assertThat(milvus.insertVectors(batch, chunkIds, docIds, Collections.nCopies(size, "内容"),
+                            categories, Collections.nCopies(size, 1), Collections.nCopies(size, "标题"))).hasSize(size);
+                }
+                awaitSearchable(milvus, queries[0]);
+
+                long[] full = new long[QUERIES];
+                long[] filtered = new long[QUERIES];
+                for (int round = 0; round < 2; round++) {
+                    // 第一轮为预热
+                    for (int q = 0; q < QUERIES; q++) {
+                        String category = "category-" + random.nextInt(categoryCount);
+                        long start = System.nanoTime();
+                        milvus.search(queries[q], K, 0f);
+                        full[q] = System.nanoTime() - start;
+
+                        start = System.nanoTime();
+                        List<SearchResult> results = milvus.search(queries[q], K, 0f, SearchFilter.byCategory(category));
+                        filtered[q] = System.nanoTime() - start;
+                        assertThat(results).isNotEmpty().allSatisfy(r -> assertThat(r.getCategory()).isEqualTo(category));
+                    }
+                }
+                Arrays.sort(full);
+                Arrays.sort(filtered);
+                System.out.printf("  categories=%d partitionKey=%s: full p50=%.2fms p99=%.2fms, "
+                                + "filtered p50=%.2fms p99=%.2fms%n",
+                        categoryCount, milvus.hasPartitionKey(), percentile(full, 0.5), percentile(full, 0.99),
+                        percentile(filtered, 0.5), percentile(filtered, 0.99));
+
+                assertThat(milvus.hasPartitionKey()).isTrue();
+                assertThat(percentile(filtered, 0.5)).isLessThan(percentile(full, 0.5));
+            } finally {
+                milvus.destroy();
+            }
+        }
+    }
+
+    private static MilvusServiceImpl start(String collectionName) {
+        MilvusConfig config = new MilvusConfig();
+        config.setHost(MILVUS.getHost());
+        config.setPort(MILVUS.getMappedPort(19530));
+        config.setCollectionName(collectionName);
+        config.setDimension(DIMENSION);
+        config.setNlist(128);
+        MilvusServiceImpl milvus = new MilvusServiceImpl(config);
+        milvus.init();
+        assertThat(milvus.isConnected()).isTrue();
+        return milvus;
+    }
+
+    /**
+     * 新写入的数据在一致性窗口后才可检索
+     */
+    private static void awaitSearchable(MilvusServiceImpl milvus, float[] query) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (milvus.search(query, K, 0f).size() < K && System.currentTimeMillis() < deadline) {
+            Thread.sleep(200);
+        }
+    }
+
+    private static double percentile(long[] sortedNanos, double p) {
+        int index = Math.min(sortedNanos.length - 1, (int) Math.ceil(p * sortedNanos.length) - 1);
+        return sortedNanos[Math.max(0, index)] / 1_000_000.0;
+    }
+
+    private static float[] randomVector(Random random) {
+        float[] vector = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return VectorMath.normalize(vector);
+    }
+}
@@ -0,0 +1,88 @@
+package com.echocampus.bot.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 本地模拟 Embedding 接口（OpenAI 兼容格式），可注入固定延迟
+ */
+class MockEmbeddingServer implements AutoCloseable {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpServer server;
+    private final int dimension;
+    private final long latencyMs;
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private final AtomicInteger maxConcurrent = new AtomicInteger();
+    private final AtomicInteger concurrent = new AtomicInteger();
+
+    MockEmbeddingServer(int dimension, long latencyMs) throws IOException {
+        this.dimension = dimension;
+        this.latencyMs = latencyMs;
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        this.server.setExecutor(Executors.newCachedThreadPool());
+        this.server.createContext("/v1/embeddings", exchange -> {
+            int current = concurrent.incrementAndGet();
+            maxConcurrent.accumulateAndGet(current, Math::max);
+            try {
+                requestCount.incrementAndGet();
+                JsonNode request = objectMapper.readTree(exchange.getRequestBody());
+                Thread.sleep(latencyMs);
+                byte[] body = buildResponse(request.get("input")).getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream os = exchange.getResponseBody()) {
+                    os.write(body);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                exchange.sendResponseHeaders(500, -1);
+            } finally {
+                concurrent.decrementAndGet();
+                exchange.close();
+            }
+        });
+        this.server.start();
+    }
+
+    String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/v1/embeddings";
+    }
+
+    int requestCount() {
+        return requestCount.get();
+    }
+
+    int maxConcurrent() {
+        return maxConcurrent.get();
+    }
+
+    private String buildResponse(JsonNode input) {
+        StringBuilder sb = new StringBuilder("{\"data\":[");
+        for (int i = 0; i < input.size(); i++) {
+            if (i > 0) sb.append(',');
+            // 以文本哈希为种子生成确定性的向量，便于校验结果顺序
+            int seed = input.get(i).asText().hashCode();
+            sb.append("{\"index\":").append(i).append(",\"embedding\":[");
+            for (int d = 0; d < dimension; d++) {
+                if (d > 0) sb.append(',');
+                sb.append(d == 0 ? seed : ((seed * 31 + d) % 1000) / 1000.0);
+            }
+            sb.append("]}");
+        }
+        return sb.append("]}").toString();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
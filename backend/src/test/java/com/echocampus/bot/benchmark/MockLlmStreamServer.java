@@ -0,0 +1,104 @@
+package com.echocampus.bot.benchmark;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 本地模拟 LLM 流式接口（OpenAI 兼容 chat/completions SSE 格式），每次请求返回固定数量的内容片段
+ * <p>
+ * 指定片段间隔时按间隔逐块写出（模拟模型逐 token 生成），每个请求占用一个服务端线程，线程名以 {@value #THREAD_PREFIX} 开头
+ */
+class MockLlmStreamServer implements AutoCloseable {
+
+    static final String THREAD_PREFIX = "mock-llm-";
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final byte[] body;
+    private final byte[][] chunks;
+
+    MockLlmStreamServer(int tokens) throws IOException {
+        this(tokens, 0);
+    }
+
+    MockLlmStreamServer(int tokens, long tokenIntervalMs) throws IOException {
+        this.chunks = buildChunks(tokens);
+        this.body = join(chunks);
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.executor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, THREAD_PREFIX + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        // 大量并发连接同时建立时避免 accept 队列溢出
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 4096);
+        this.server.setExecutor(executor);
+        this.server.createContext("/v1/chat/completions", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+            if (tokenIntervalMs <= 0) {
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream os = exchange.getResponseBody()) {
+                    os.write(body);
+                }
+                return;
+            }
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream os = exchange.getResponseBody()) {
+                for (byte[] chunk : chunks) {
+                    Thread.sleep(tokenIntervalMs);
+                    os.write(chunk);
+                    os.flush();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                // 客户端断开
+            }
+        });
+        this.server.start();
+    }
+
+    String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/v1/chat/completions";
+    }
+
+    /**
+     * 与 DeepSeek 返回的数据块结构一致（含 id、created、model 等每块重复的字段），最后一块为 [DONE]
+     */
+    private static byte[][] buildChunks(int tokens) {
+        byte[][] chunks = new byte[tokens + 1][];
+        String[] pieces = {"图书馆", "开放", "时间", "为", "8:00", "-", "22:00", "，", "周末", "照常", "开放", "。"};
+        for (int i = 0; i < tokens; i++) {
+            String chunk = "data: {\"id\":\"chatcmpl-bench\",\"object\":\"chat.completion.chunk\",\"created\":1700000000,"
+                    + "\"model\":\"deepseek-chat\",\"system_fingerprint\":\"fp_bench\",\"choices\":[{\"index\":0,"
+                    + "\"delta\":{\"content\":\"" + pieces[i % pieces.length] + "\"},\"logprobs\":null,"
+                    + "\"finish_reason\":null}]}\n\n";
+            chunks[i] = chunk.getBytes(StandardCharsets.UTF_8);
+        }
+        chunks[tokens] = "data: [DONE]\n\n".getBytes(StandardCharsets.UTF_8);
+        return chunks;
+    }
+
+    private static byte[] join(byte[][] chunks) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] chunk : chunks) {
+            out.writeBytes(chunk);
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,231 @@
+package com.echocampus.bot.benchmark;
+
+import com.echocampus.bot.config.AiServiceConfig;
+import com.echocampus.bot.dto.response.ChatResponse;
+import com.echocampus.bot.dto.response.StreamChatResponse;
+import com.echocampus.bot.service.stream.SseEventWriter;
+import com.echocampus.bot.service.stream.TokenCoalescer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * 流式内容合并基准测试：500 个并发流，对比逐片段写出与合并写出的事件数和CPU时间
+ * <p>
+ * 每个流一个本地回环 TCP 连接（对端线程只读取丢弃），按固定间隔产生 LLM 片段，经 TokenCoalescer 和
+ * SseEventWriter 写出；每个SSE帧都是一次 write + flush，即一次真实的 socket 写。
+ * CPU 取整个进程的CPU时间（含对端读取线程）。
+ * <p>
+ * 运行方式：mvn test -Pbenchmark -Dtest=StreamCoalescingBenchmark
+ */
+@Tag("benchmark")
+@DisplayName("流式内容合并基准测试")
+class StreamCoalescingBenchmark {
+
+    private static final int STREAMS = 500;
+    private static final int TOKENS_PER_STREAM = 200;
+    private static final long TOKEN_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+    private static final String[] PIECES = {"图书馆", "开放", "时间", "为", "早上", "8", "点", "到", "晚上", "10", "点", "。"};
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    @DisplayName("合并写出应显著减少事件数和CPU时间")
+    void coalescingAtConcurrentStreams() throws Exception {
+        try (Drain drain = new Drain()) {
+            run(drain, false, 50);
+            run(drain, true, 50);
+
+            Result direct = run(drain, false, STREAMS);
+            Result coalesced = run(drain, true, STREAMS);
+
+            System.out.printf("[StreamCoalescingBenchmark] streams=%d tokensPerStream=%d tokenIntervalMs=%d%n",
+                    STREAMS, TOKENS_PER_STREAM, TimeUnit.NANOSECONDS.toMillis(TOKEN_INTERVAL_NANOS));
+            print("direct", direct);
+            print("coalesced", coalesced);
+
+            assertThat(direct.tokens()).isEqualTo((long) STREAMS * TOKENS_PER_STREAM);
+            assertThat(coalesced.tokens()).isEqualTo(direct.tokens());
+            assertThat(coalesced.bytes()).isLessThan(direct.bytes());
+            assertThat(coalesced.frames()).isLessThan(direct.frames() / 3);
+            assertThat(coalesced.cpuNanos()).isLessThan(direct.cpuNanos());
+        }
+    }
+
+    private Result run(Drain drain, boolean coalesce, int streams) throws Exception {
+        AiServiceConfig config = new AiServiceConfig();
+        config.getStream().setCoalesceEnabled(coalesce);
+        TokenCoalescer coalescer = new TokenCoalescer(config);
+        coalescer.init();
+        AtomicLong frames = new AtomicLong();
+        AtomicLong tokens = new AtomicLong();
+        long bytesBefore = drain.bytes.get();
+        ExecutorService executor = Executors.newFixedThreadPool(streams);
+        ExecutorService flushExecutor = Executors.newFixedThreadPool(2);
+        CountDownLatch start = new CountDownLatch(1);
+        com.sun.management.OperatingSystemMXBean os =
+                (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < streams; i++) {
+                long conversationId = i;
+                futures.add(executor.submit(() -> {
+                    try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), drain.port())) {
+                        socket.setTcpNoDelay(true);
+                        OutputStream out = new CountingStream(socket.getOutputStream(), frames);
+                        TokenCoalescer.Sink sink = coalescer.open(new SseEventWriter(out, objectMapper), flushExecutor);
+                        start.await();
+                        stream(sink, conversationId, tokens);
+                    }
+                    return null;
+                }));
+            }
+            long cpuBefore = os.getProcessCpuTime();
+            long wallStart = System.nanoTime();
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            long wall = System.nanoTime() - wallStart;
+            long cpu = os.getProcessCpuTime() - cpuBefore;
+            // 等对端读完，字节数才完整
+            drain.awaitIdle();
+            return new Result(tokens.get(), frames.get(), drain.bytes.get() - bytesBefore, wall, cpu);
+        } finally {
+            executor.shutdownNow();
+            flushExecutor.shutdownNow();
+            coalescer.destroy();
+        }
+    }
+
+    private void stream(TokenCoalescer.Sink sink, long conversationId, AtomicLong tokens) throws IOException {
+        long next = System.nanoTime();
+        for (int t = 0; t < TOKENS_PER_STREAM; t++) {
+            next += TOKEN_INTERVAL_NANOS;
+            LockSupport.parkNanos(next - System.nanoTime());
+            sink.send(StreamChatResponse.content(conversationId, conversationId, PIECES[t % PIECES.length]));
+            tokens.incrementAndGet();
+        }
+        ChatResponse.TokenUsage usage = ChatResponse.TokenUsage.builder()
+                .promptTokens(0).completionTokens(TOKENS_PER_STREAM).totalTokens(TOKENS_PER_STREAM).build();
+        sink.send(StreamChatResponse.done(conversationId, conversationId, usage, 0L));
+        sink.close().join();
+    }
+
+    private static void print(String name, Result result) {
+        double seconds = result.wallNanos() / 1e9;
+        System.out.printf("  %-9s tokens/sec=%.0f events/sec=%.0f events=%d bytes=%d cpuMs=%d cpuUsPerToken=%.2f%n",
+                name, result.tokens() / seconds, result.frames() / seconds, result.frames(), result.bytes(),
+                TimeUnit.NANOSECONDS.toMillis(result.cpuNanos()), result.cpuNanos() / 1000.0 / result.tokens());
+    }
+
+    private record Result(long tokens, long frames, long bytes, long wallNanos, long cpuNanos) {
+    }
+
+    /**
+     * 每次 flush 计为一个写出的SSE帧（SseEventWriter 每帧一次 write + flush）
+     */
+    private static final class CountingStream extends FilterOutputStream {
+
+        private final AtomicLong frames;
+
+        CountingStream(OutputStream out, AtomicLong frames) {
+            super(out);
+            this.frames = frames;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            frames.incrementAndGet();
+            out.flush();
+        }
+    }
+
+    /**
+     * 本地回环对端：每个连接一个线程读取并丢弃，统计收到的字节数
+     */
+    private static final class Drain implements AutoCloseable {
+
+        private final ServerSocket server = new ServerSocket(0, STREAMS, InetAddress.getLoopbackAddress());
+        private final ExecutorService readers = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "coalescing-bench-drain");
+            thread.setDaemon(true);
+            return thread;
+        });
+        private final AtomicLong bytes = new AtomicLong();
+        private final AtomicLong open = new AtomicLong();
+
+        Drain() throws IOException {
+            readers.submit(this::accept);
+        }
+
+        int port() {
+            return server.getLocalPort();
+        }
+
+        private void accept() {
+            while (!server.isClosed()) {
+                try {
+                    Socket socket = server.accept();
+                    open.incrementAndGet();
+                    readers.submit(() -> read(socket));
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        }
+
+        private void read(Socket socket) {
+            byte[] buffer = new byte[8192];
+            try (socket; InputStream in = socket.getInputStream()) {
+                int n;
+                while ((n = in.read(buffer)) > 0) {
+                    bytes.addAndGet(n);
+                }
+            } catch (IOException ignored) {
+                // 连接关闭
+            } finally {
+                open.decrementAndGet();
+            }
+        }
+
+        void awaitIdle() throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (open.get() > 0 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            server.close();
+            readers.shutdownNow();
+        }
+    }
+}
@@ -15,6 +15,8 @@ class RateLimitConfigTest {
     @BeforeEach
     void setUp() {
         rateLimitConfig = new RateLimitConfig();
+        ReflectionTestUtils.setField(rateLimitConfig, "maxConcurrentRequests", 100);
+        ReflectionTestUtils.setField(rateLimitConfig, "maxSseConnections", 50);
         ReflectionTestUtils.setField(rateLimitConfig, "sendIntervalSeconds", 60);
         ReflectionTestUtils.setField(rateLimitConfig, "maxSendPerDay", 5);
         ReflectionTestUtils.setField(rateLimitConfig, "registerIntervalSeconds", 3600);
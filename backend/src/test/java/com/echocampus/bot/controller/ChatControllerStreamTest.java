@@ -0,0 +1,120 @@
+package com.echocampus.bot.controller;
+
+import com.echocampus.bot.config.AiServiceConfig;
+import com.echocampus.bot.config.RateLimitConfig;
+import com.echocampus.bot.dto.response.ChatResponse;
+import com.echocampus.bot.dto.response.StreamChatResponse;
+import com.echocampus.bot.service.ChatService;
+import com.echocampus.bot.service.stream.TokenCoalescer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * ChatController 流式接口测试
+ * 验证SSE帧在异步处理开始后直接写入响应输出流，结束后完成异步请求并释放限流
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+@DisplayName("ChatController - 流式接口测试")
+class ChatControllerStreamTest {
+
+    private static final String BODY = "{\"conversationId\":1,\"message\":\"图书馆几点开门\"}";
+
+    @Mock
+    private ChatService chatService;
+
+    @Mock
+    private RateLimitConfig.RateLimiter rateLimiter;
+
+    private TokenCoalescer tokenCoalescer;
+    private ThreadPoolTaskExecutor sseExecutor;
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        AiServiceConfig aiConfig = new AiServiceConfig();
+        tokenCoalescer = new TokenCoalescer(aiConfig);
+        tokenCoalescer.init();
+        sseExecutor = new ThreadPoolTaskExecutor();
+        sseExecutor.setCorePoolSize(2);
+        sseExecutor.initialize();
+        when(rateLimiter.tryAcquire(anyLong())).thenReturn(true);
+        mockMvc = MockMvcBuilders.standaloneSetup(
+                new ChatController(chatService, rateLimiter, tokenCoalescer, sseExecutor, aiConfig)).build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        tokenCoalescer.destroy();
+        sseExecutor.shutdown();
+    }
+
+    @Test
+    @DisplayName("异步处理开始后写出事件帧，完成后释放限流")
+    void shouldWriteFramesToResponseStream() throws Exception {
+        when(chatService.sendMessageStreamAsync(eq(1L), any(), any(), any())).thenAnswer(invocation -> {
+            Consumer<StreamChatResponse> sender = invocation.getArgument(2);
+            sender.accept(StreamChatResponse.content(1L, 2L, "八点"));
+            sender.accept(StreamChatResponse.content(1L, 2L, "开门。"));
+            sender.accept(StreamChatResponse.done(1L, 2L, ChatResponse.TokenUsage.builder()
+                    .promptTokens(1).completionTokens(2).totalTokens(3).build(), 5L));
+            return CompletableFuture.completedFuture(null);
+        });
+
+        MvcResult result = mockMvc.perform(post("/v1/chat/message/stream")
+                        .requestAttr("userId", 1L)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(BODY))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        result.getAsyncResult(2000);
+
+        String body = result.getResponse().getContentAsString(StandardCharsets.UTF_8);
+        assertThat(result.getResponse().getContentType()).startsWith(MediaType.TEXT_EVENT_STREAM_VALUE);
+        assertThat(result.getResponse().getHeader("X-Accel-Buffering")).isEqualTo("no");
+        assertThat(body).contains("event:content\ndata:").contains("八点开门。");
+        assertThat(body.indexOf("event:done")).isGreaterThan(body.indexOf("八点开门。"));
+        verify(rateLimiter).release(1L);
+    }
+
+    @Test
+    @DisplayName("生成失败时写出错误事件并释放限流")
+    void failureShouldWriteErrorEvent() throws Exception {
+        when(chatService.sendMessageStreamAsync(eq(1L), any(), any(), any()))
+                .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("上游不可用")));
+
+        MvcResult result = mockMvc.perform(post("/v1/chat/message/stream")
+                        .requestAttr("userId", 1L)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(BODY))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        result.getAsyncResult(2000);
+
+        assertThat(result.getResponse().getContentAsString(StandardCharsets.UTF_8))
+                .contains("event:error").contains("上游不可用");
+        verify(rateLimiter).release(1L);
+    }
+}
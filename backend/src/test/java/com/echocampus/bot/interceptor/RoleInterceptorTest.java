@@ -13,8 +13,6 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.web.method.HandlerMethod;
 
-import java.lang.reflect.Method;
-
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.*;
@@ -35,8 +33,9 @@ class RoleInterceptorTest {
     private RoleInterceptor roleInterceptor;
 
     @BeforeEach
-    void setUp() {
-        lenient().when(handlerMethod.getMethod()).thenReturn(mock(Method.class));
+    void setUp() throws NoSuchMethodException {
+        // 使用真实的 Method：内联模拟 java.lang.reflect.Method 会改写其字节码，导致同一JVM中后续的 Mockito 调用全部失败
+        lenient().when(handlerMethod.getMethod()).thenReturn(Object.class.getMethod("toString"));
     }
 
     @Test
@@ -0,0 +1,156 @@
+package com.echocampus.bot.service.impl;
+
+import com.echocampus.bot.service.AnswerCacheService;
+import com.echocampus.bot.service.EmbeddingService;
+import com.echocampus.bot.service.RagService.SourceInfo;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * AnswerCacheServiceImpl 单元测试
+ */
+@DisplayName("AnswerCacheServiceImpl - 语义回答缓存测试")
+class AnswerCacheServiceImplTest {
+
+    private StubEmbeddingService embeddingService;
+    private AnswerCacheServiceImpl answerCache;
+
+    @BeforeEach
+    void setUp() {
+        embeddingService = new StubEmbeddingService();
+        embeddingService.vectors.put("图书馆几点开门", new float[]{1f, 0f, 0f});
+        embeddingService.vectors.put("图书馆什么时候开门", new float[]{0.99f, 0.05f, 0f});
+        embeddingService.vectors.put("食堂在哪里", new float[]{0f, 1f, 0f});
+
+        answerCache = new AnswerCacheServiceImpl(embeddingService);
+        ReflectionTestUtils.setField(answerCache, "enabled", true);
+        ReflectionTestUtils.setField(answerCache, "similarityThreshold", 0.95f);
+        ReflectionTestUtils.setField(answerCache, "maxEntries", 100);
+        ReflectionTestUtils.setField(answerCache, "ttlSeconds", 3600L);
+        answerCache.init();
+    }
+
+    @Nested
+    @DisplayName("查找测试")
+    class LookupTests {
+
+        @Test
+        @DisplayName("相似问题应命中缓存并返回来源")
+        void similarQuestionShouldHit() {
+            answerCache.store("图书馆几点开门", "8:00-22:00", List.of(source(1L)), answerCache.currentVersion());
+
+            Optional<AnswerCacheService.CachedAnswer> cached = answerCache.lookup("图书馆什么时候开门");
+
+            assertThat(cached).isPresent();
+            assertThat(cached.get().answer()).isEqualTo("8:00-22:00");
+            assertThat(cached.get().sources()).extracting(SourceInfo::docId).containsExactly(1L);
+            assertThat(cached.get().similarity()).isGreaterThan(0.95f);
+        }
+
+        @Test
+        @DisplayName("不相似问题不应命中")
+        void dissimilarQuestionShouldMiss() {
+            answerCache.store("图书馆几点开门", "8:00-22:00", List.of(source(1L)), answerCache.currentVersion());
+
+            assertThat(answerCache.lookup("食堂在哪里")).isEmpty();
+            assertThat(answerCache.getStats()).containsEntry("misses", 1L);
+        }
+
+        @Test
+        @DisplayName("服务异常的兜底回答不应缓存")
+        void errorAnswerShouldNotBeCached() {
+            answerCache.store("图书馆几点开门", "抱歉，AI服务暂时不可用", List.of(), answerCache.currentVersion());
+
+            assertThat(answerCache.lookup("图书馆几点开门")).isEmpty();
+        }
+
+        @Test
+        @DisplayName("向量化失败时应视为未命中")
+        void embeddingFailureShouldMiss() {
+            answerCache.store("图书馆几点开门", "8:00-22:00", List.of(source(1L)), answerCache.currentVersion());
+            embeddingService.fail = true;
+
+            assertThat(answerCache.lookup("图书馆几点开门")).isEmpty();
+        }
+    }
+
+    @Nested
+    @DisplayName("失效测试")
+    class InvalidationTests {
+
+        @Test
+        @DisplayName("文档变更应失效引用该文档的回答")
+        void shouldInvalidateByDocument() {
+            answerCache.store("图书馆几点开门", "8:00-22:00", List.of(source(1L)), answerCache.currentVersion());
+            answerCache.store("食堂在哪里", "一号楼", List.of(source(2L)), answerCache.currentVersion());
+
+            answerCache.invalidateDocument(1L);
+
+            assertThat(answerCache.lookup("图书馆几点开门")).isEmpty();
+            assertThat(answerCache.lookup("食堂在哪里")).isPresent();
+        }
+
+        @Test
+        @DisplayName("任意文档变更应失效无来源的回答")
+        void shouldInvalidateSourcelessAnswers() {
+            answerCache.store("图书馆几点开门", "知识库中暂无相关信息", List.of(), answerCache.currentVersion());
+
+            answerCache.invalidateDocument(99L);
+
+            assertThat(answerCache.lookup("图书馆几点开门")).isEmpty();
+        }
+
+        @Test
+        @DisplayName("生成期间知识库变更时不应写入缓存")
+        void staleVersionShouldNotBeStored() {
+            long version = answerCache.currentVersion();
+            answerCache.invalidateDocument(1L);
+
+            answerCache.store("图书馆几点开门", "8:00-22:00", List.of(source(1L)), version);
+
+            assertThat(answerCache.lookup("图书馆几点开门")).isEmpty();
+        }
+    }
+
+    private static SourceInfo source(Long docId) {
+        return new SourceInfo(docId, "文档" + docId, docId * 10, "内容", 0.9f);
+    }
+
+    private static class StubEmbeddingService implements EmbeddingService {
+        final Map<String, float[]> vectors = new HashMap<>();
+        boolean fail;
+
+        @Override
+        public float[] embed(String text) {
+            if (fail) {
+                throw new IllegalStateException("embedding unavailable");
+            }
+            return vectors.getOrDefault(text, new float[]{0f, 0f, 1f});
+        }
+
+        @Override
+        public List<float[]> embedBatch(List<String> texts) {
+            throw new UnsupportedOperationException("embedBatch");
+        }
+
+        @Override
+        public int getDimension() {
+            return 3;
+        }
+
+        @Override
+        public boolean isAvailable() {
+            return true;
+        }
+    }
+}
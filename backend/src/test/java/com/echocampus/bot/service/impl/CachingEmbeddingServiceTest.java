@@ -0,0 +1,213 @@
+package com.echocampus.bot.service.impl;
+
+import com.echocampus.bot.config.AiServiceConfig;
+import com.echocampus.bot.service.EmbeddingService;
+import com.echocampus.bot.utils.LruTtlCache;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * CachingEmbeddingService / LruTtlCache 单元测试
+ */
+@DisplayName("CachingEmbeddingService - 查询向量缓存测试")
+class CachingEmbeddingServiceTest {
+
+    private AiServiceConfig aiConfig;
+    private CountingEmbeddingService delegate;
+    private CachingEmbeddingService cachingService;
+
+    @BeforeEach
+    void setUp() {
+        aiConfig = new AiServiceConfig();
+        delegate = new CountingEmbeddingService();
+        cachingService = new CachingEmbeddingService(delegate, aiConfig);
+    }
+
+    @Nested
+    @DisplayName("缓存命中测试")
+    class HitMissTests {
+
+        @Test
+        @DisplayName("相同问题第二次应命中缓存")
+        void repeatedQueryShouldHitCache() {
+            float[] first = cachingService.embed("图书馆几点开门");
+            float[] second = cachingService.embed("图书馆几点开门");
+
+            assertThat(delegate.calls.get()).isEqualTo(1);
+            assertThat(second).containsExactly(first);
+            LruTtlCache.Stats stats = cachingService.getCacheStats();
+            assertThat(stats.hits()).isEqualTo(1);
+            assertThat(stats.misses()).isEqualTo(1);
+        }
+
+        @Test
+        @DisplayName("空白和全角差异应视为同一问题")
+        void normalizedTextShouldShareEntry() {
+            cachingService.embed("图书馆  几点开门？ ");
+            cachingService.embed("图书馆 几点开门?");
+
+            assertThat(delegate.calls.get()).isEqualTo(1);
+        }
+
+        @Test
+        @DisplayName("切换模型后不应复用旧向量")
+        void modelChangeShouldMiss() {
+            cachingService.embed("图书馆几点开门");
+            cachingService.activate(new EmbeddingService.EmbeddingModel("text-embedding-v4", 4));
+            cachingService.embed("图书馆几点开门");
+
+            assertThat(delegate.calls.get()).isEqualTo(2);
+            assertThat(cachingService.getModel().name()).isEqualTo("text-embedding-v4");
+        }
+
+        @Test
+        @DisplayName("零向量（请求失败）不应被缓存")
+        void zeroVectorShouldNotBeCached() {
+            delegate.returnZeros = true;
+            cachingService.embed("图书馆几点开门");
+            cachingService.embed("图书馆几点开门");
+
+            assertThat(delegate.calls.get()).isEqualTo(2);
+        }
+
+        @Test
+        @DisplayName("关闭缓存时应直接调用底层服务")
+        void disabledCacheShouldPassThrough() {
+            aiConfig.getEmbedding().getCache().setEnabled(false);
+            cachingService.embed("图书馆几点开门");
+            cachingService.embed("图书馆几点开门");
+
+            assertThat(delegate.calls.get()).isEqualTo(2);
+        }
+
+        @Test
+        @DisplayName("批量向量化不经过缓存")
+        void embedBatchShouldBypassCache() {
+            cachingService.embedBatch(List.of("a", "b"));
+
+            assertThat(delegate.batchCalls.get()).isEqualTo(1);
+            assertThat(cachingService.getCacheStats().size()).isZero();
+        }
+
+        @Test
+        @DisplayName("批量问题应复用缓存，未命中的问题去重后合并为一次查询请求（不走批量入库通道）")
+        void embedQueriesShouldShareCacheAndBatchMisses() {
+            cachingService.embed("图书馆几点开门");
+
+            List<float[]> vectors = cachingService.embedQueries(
+                    List.of("图书馆几点开门 ", "食堂在哪", "食堂在哪 ", "校医院电话"));
+
+            assertThat(vectors).hasSize(4);
+            assertThat(vectors.get(0)).containsExactly(cachingService.embed("图书馆几点开门"));
+            assertThat(delegate.calls.get()).isEqualTo(1);
+            assertThat(delegate.queryCalls.get()).isEqualTo(1);
+            assertThat(delegate.batchCalls.get()).isZero();
+            assertThat(delegate.lastBatch).containsExactly("食堂在哪", "校医院电话");
+
+            cachingService.embedQueries(List.of("食堂在哪", "校医院电话"));
+            assertThat(delegate.queryCalls.get()).isEqualTo(1);
+        }
+    }
+
+    @Nested
+    @DisplayName("淘汰与过期测试")
+    class EvictionTests {
+
+        @Test
+        @DisplayName("超过条目上限应淘汰最久未访问的条目")
+        void shouldEvictLeastRecentlyUsed() {
+            LruTtlCache<String, String> cache = new LruTtlCache<>(2, Long.MAX_VALUE, 0, (k, v) -> 1);
+            cache.put("a", "1");
+            cache.put("b", "2");
+            cache.get("a");
+            cache.put("c", "3");
+
+            assertThat(cache.get("b")).isNull();
+            assertThat(cache.get("a")).isEqualTo("1");
+            assertThat(cache.stats().evictions()).isEqualTo(1);
+        }
+
+        @Test
+        @DisplayName("超过内存上限应按权重淘汰")
+        void shouldEvictByWeight() {
+            LruTtlCache<String, float[]> cache = new LruTtlCache<>(100, 100, 0, (k, v) -> v.length * 4L);
+            cache.put("a", new float[10]);
+            cache.put("b", new float[10]);
+            cache.put("c", new float[10]);
+
+            assertThat(cache.size()).isEqualTo(2);
+            assertThat(cache.stats().weight()).isEqualTo(80);
+        }
+
+        @Test
+        @DisplayName("过期条目应视为未命中")
+        void expiredEntryShouldMiss() {
+            AtomicLong now = new AtomicLong(1000);
+            LruTtlCache<String, String> cache = new LruTtlCache<>(10, Long.MAX_VALUE, 500, (k, v) -> 1, now::get);
+            cache.put("a", "1");
+            now.addAndGet(499);
+            assertThat(cache.get("a")).isEqualTo("1");
+            now.addAndGet(1);
+
+            assertThat(cache.get("a")).isNull();
+            assertThat(cache.stats().expirations()).isEqualTo(1);
+        }
+    }
+
+    private static class CountingEmbeddingService implements EmbeddingService {
+        final AtomicInteger calls = new AtomicInteger();
+        final AtomicInteger batchCalls = new AtomicInteger();
+        final AtomicInteger queryCalls = new AtomicInteger();
+        volatile List<String> lastBatch;
+        volatile EmbeddingModel model = new EmbeddingModel("text-embedding-v3", 4);
+        boolean returnZeros;
+
+        @Override
+        public EmbeddingModel getModel() {
+            return model;
+        }
+
+        @Override
+        public void activate(EmbeddingModel model) {
+            this.model = model;
+        }
+
+        @Override
+        public float[] embed(String text) {
+            calls.incrementAndGet();
+            return returnZeros ? new float[4] : new float[]{text.length(), 1f, 2f, 3f};
+        }
+
+        @Override
+        public List<float[]> embedBatch(List<String> texts) {
+            batchCalls.incrementAndGet();
+            lastBatch = texts;
+            return texts.stream().map(t -> new float[]{1f, 2f, 3f, 4f}).toList();
+        }
+
+        @Override
+        public List<float[]> embedQueries(List<String> queries) {
+            queryCalls.incrementAndGet();
+            lastBatch = queries;
+            return queries.stream().map(t -> new float[]{1f, 2f, 3f, 4f}).toList();
+        }
+
+        @Override
+        public int getDimension() {
+            return 4;
+        }
+
+        @Override
+        public boolean isAvailable() {
+            return true;
+        }
+    }
+}
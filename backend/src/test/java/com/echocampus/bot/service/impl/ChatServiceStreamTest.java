@@ -0,0 +1,415 @@
+package com.echocampus.bot.service.impl;
+
+import com.echocampus.bot.common.exception.BusinessException;
+import com.echocampus.bot.dto.request.ChatRequest;
+import com.echocampus.bot.dto.response.StreamChatResponse;
+import com.echocampus.bot.entity.Conversation;
+import com.echocampus.bot.entity.KnowledgeChunk;
+import com.echocampus.bot.entity.KnowledgeDoc;
+import com.echocampus.bot.entity.Message;
+import com.echocampus.bot.mapper.ConversationMapper;
+import com.echocampus.bot.mapper.MessageMapper;
+import com.echocampus.bot.service.AnswerCacheService;
+import com.echocampus.bot.service.RagService;
+import com.echocampus.bot.service.stream.StreamCancellation;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.lang.reflect.Method;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * ChatServiceImpl 流式对话测试
+ * 验证会话校验先于检索，检索与消息写入、历史加载并行，检索完成后不等历史即发送来源，完成事件附带各阶段耗时
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+@DisplayName("ChatServiceImpl - 流式对话并行测试")
+class ChatServiceStreamTest {
+
+    @Mock
+    private ConversationMapper conversationMapper;
+
+    @Mock
+    private MessageMapper messageMapper;
+
+    @Mock
+    private RagService ragService;
+
+    @Mock
+    private AnswerCacheService answerCacheService;
+
+    private final List<StreamChatResponse> events = Collections.synchronizedList(new ArrayList<>());
+    private final List<Message> storedMessages = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicLong ids = new AtomicLong(100);
+    private final CountDownLatch retrievalStarted = new CountDownLatch(1);
+    private volatile boolean retrievalOverlappedPersist;
+    private volatile RuntimeException retrievalFailure;
+    private volatile CountDownLatch historyGate;
+    private final CompletableFuture<Void> generationGate = new CompletableFuture<>();
+
+    private ExecutorService executor;
+    private ChatServiceImpl chatService;
+
+    @BeforeEach
+    void setUp() {
+        when(conversationMapper.selectById(anyLong())).thenAnswer(invocation -> {
+            Long id = invocation.getArgument(0);
+            if (id == 404L) {
+                return null;
+            }
+            Conversation conversation = new Conversation();
+            conversation.setId(id);
+            // 消息数由数据库触发器维护
+            conversation.setMessageCount(storedMessages.size());
+            return conversation;
+        });
+        when(conversationMapper.insert(any(Conversation.class))).thenAnswer(invocation -> {
+            invocation.<Conversation>getArgument(0).setId(7L);
+            return 1;
+        });
+        when(messageMapper.insert(any(Message.class))).thenAnswer(invocation -> {
+            // 检索应在写入消息之前（或同时）已经开始
+            if (retrievalStarted.await(5, TimeUnit.SECONDS)) {
+                retrievalOverlappedPersist = true;
+            }
+            Message message = invocation.getArgument(0);
+            message.setId(ids.incrementAndGet());
+            message.setCreatedAt(LocalDateTime.now());
+            storedMessages.add(message);
+            return 1;
+        });
+        when(messageMapper.selectByConversationId(anyLong())).thenAnswer(invocation -> {
+            if (historyGate != null) {
+                historyGate.await(5, TimeUnit.SECONDS);
+            }
+            synchronized (storedMessages) {
+                return new ArrayList<>(storedMessages);
+            }
+        });
+        when(messageMapper.updateContentAndMetadata(anyLong(), anyString(), any())).thenReturn(1);
+
+        when(ragService.retrieve(anyString())).thenAnswer(invocation -> {
+            retrievalStarted.countDown();
+            if (retrievalFailure != null) {
+                throw retrievalFailure;
+            }
+            return retrievalResult();
+        });
+        when(ragService.buildSources(any())).thenReturn(List.of(
+                new RagService.SourceInfo(1L, "图书馆指南", 11L, "图书馆开放时间为8:00-22:00", 0.9f)));
+        when(ragService.answerStream(anyString(), any(RagService.RetrievalResult.class), anyList(), any(), any()))
+                .thenAnswer(invocation -> {
+                    Consumer<String> consumer = invocation.getArgument(3);
+                    consumer.accept("八点");
+                    consumer.accept("开门。");
+                    return "八点开门。";
+                });
+        when(ragService.answerStreamAsync(anyString(), any(RagService.RetrievalResult.class), anyList(), any(), any()))
+                .thenAnswer(invocation -> {
+                    Consumer<String> consumer = invocation.getArgument(3);
+                    StreamCancellation cancellation = invocation.getArgument(4);
+                    // 模拟HTTP回调线程上到达的内容；取消后不再有内容到达，返回已生成的部分
+                    return generationGate.thenApplyAsync(ignored -> {
+                        consumer.accept("八点");
+                        if (cancellation.isCancelled()) {
+                            return "八点";
+                        }
+                        consumer.accept("开门。");
+                        return "八点开门。";
+                    });
+                });
+
+        when(answerCacheService.lookup(anyString())).thenReturn(Optional.empty());
+        when(answerCacheService.currentVersion()).thenReturn(1L);
+
+        executor = Executors.newFixedThreadPool(4);
+        chatService = new ChatServiceImpl(conversationMapper, messageMapper, ragService,
+                null, answerCacheService, executor);
+        ReflectionTestUtils.setField(chatService, "enhancedMode", false);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Nested
+    @DisplayName("传统模式测试")
+    class TraditionalModeTests {
+
+        @Test
+        @DisplayName("检索在保存消息完成前已经开始")
+        void retrievalShouldOverlapPersistence() {
+            chatService.sendMessageStream(1L, request(null), events::add, StreamCancellation.none());
+
+            assertThat(retrievalOverlappedPersist).isTrue();
+            verify(ragService).retrieve(anyString());
+            verify(messageMapper, times(2)).insert(any(Message.class));
+        }
+
+        @Test
+        @DisplayName("检索完成后先发送来源再生成回答，完成事件附带各阶段耗时")
+        void sourcesShouldPrecedeGenerationAndDoneShouldCarryTimings() {
+            chatService.sendMessageStream(1L, request(null), events::add, StreamCancellation.none());
+
+            assertThat(events).extracting(StreamChatResponse::getType).containsExactly(
+                    StreamChatResponse.EventType.STATUS,
+                    StreamChatResponse.EventType.STATUS,
+                    StreamChatResponse.EventType.SOURCES,
+                    StreamChatResponse.EventType.STATUS,
+                    StreamChatResponse.EventType.CONTENT,
+                    StreamChatResponse.EventType.CONTENT,
+                    StreamChatResponse.EventType.DONE);
+            assertThat(events.get(1).getStage()).isEqualTo("检索到 1 个相关片段");
+            assertThat(events.get(2).getSources()).hasSize(1);
+
+            Map<String, Long> timings = events.get(events.size() - 1).getTimings();
+            assertThat(timings).containsKeys("retrievalMs", "persistMs", "sourcesAtMs",
+                    "firstTokenAtMs", "generationMs", "totalMs");
+            assertThat(timings.get("sourcesAtMs")).isLessThanOrEqualTo(timings.get("firstTokenAtMs"));
+            assertThat(timings.get("totalMs")).isEqualTo(events.get(events.size() - 1).getResponseTimeMs());
+        }
+
+        @Test
+        @DisplayName("已有会话并行加载历史，排除本轮消息，不查询语义缓存")
+        @SuppressWarnings("unchecked")
+        void existingConversationShouldLoadHistoryInParallel() {
+            storedMessages.add(message(1L, "USER", "图书馆在哪里？", 2));
+            storedMessages.add(message(2L, "BOT", "在校园中心。", 1));
+
+            chatService.sendMessageStream(1L, request(7L), events::add, StreamCancellation.none());
+
+            ArgumentCaptor<List<Message>> history = ArgumentCaptor.forClass(List.class);
+            verify(ragService).answerStream(anyString(), any(RagService.RetrievalResult.class), history.capture(),
+                    any(), any());
+            assertThat(history.getValue()).extracting(Message::getId).containsExactly(1L, 2L);
+            verify(answerCacheService, never()).lookup(anyString());
+        }
+
+        @Test
+        @DisplayName("会话不存在时直接失败，不启动检索和缓存查询")
+        void missingConversationShouldFailBeforeRetrieval() {
+            assertThatThrownBy(() -> chatService.sendMessageStream(1L, request(404L), events::add,
+                    StreamCancellation.none()))
+                    .isInstanceOf(BusinessException.class);
+
+            verify(ragService, never()).retrieve(anyString());
+            verify(answerCacheService, never()).lookup(anyString());
+            verify(messageMapper, never()).insert(any(Message.class));
+            assertThat(events).isEmpty();
+        }
+
+        @Test
+        @DisplayName("检索完成且AI消息已创建后立即发送来源，不等待历史加载")
+        void sourcesShouldNotWaitForHistory() throws Exception {
+            storedMessages.add(message(1L, "USER", "图书馆在哪里？", 2));
+            storedMessages.add(message(2L, "BOT", "在校园中心。", 1));
+            historyGate = new CountDownLatch(1);
+            ExecutorService caller = Executors.newSingleThreadExecutor();
+            try {
+                CompletableFuture<Void> done = CompletableFuture.runAsync(() -> chatService.sendMessageStream(
+                        1L, request(7L), events::add, StreamCancellation.none()), caller);
+                long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+                while (events.stream().noneMatch(e -> e.getType() == StreamChatResponse.EventType.SOURCES)
+                        && System.nanoTime() < deadline) {
+                    Thread.sleep(5);
+                }
+
+                assertThat(done).isNotDone();
+                assertThat(events).extracting(StreamChatResponse::getType).containsExactly(
+                        StreamChatResponse.EventType.STATUS,
+                        StreamChatResponse.EventType.STATUS,
+                        StreamChatResponse.EventType.SOURCES);
+                assertThat(events.get(2).getMessageId()).isNotNull();
+
+                historyGate.countDown();
+                done.get(5, TimeUnit.SECONDS);
+                assertThat(events.get(events.size() - 1).getType()).isEqualTo(StreamChatResponse.EventType.DONE);
+                assertThat(events).filteredOn(e -> e.getType() == StreamChatResponse.EventType.SOURCES).hasSize(1);
+            } finally {
+                historyGate.countDown();
+                caller.shutdownNow();
+            }
+        }
+
+        @Test
+        @DisplayName("新会话命中语义缓存时回放缓存，不等待检索也不生成")
+        void cacheHitShouldSkipGeneration() {
+            when(answerCacheService.lookup(anyString())).thenReturn(
+                    Optional.of(new AnswerCacheService.CachedAnswer("缓存的回答", List.of(), 0.99f)));
+
+            chatService.sendMessageStream(1L, request(null), events::add, StreamCancellation.none());
+
+            verify(ragService, never()).answerStream(anyString(), any(RagService.RetrievalResult.class), anyList(),
+                    any(), any());
+            assertThat(events).extracting(StreamChatResponse::getContent).contains("缓存的回答");
+            assertThat(events.get(events.size() - 1).getType()).isEqualTo(StreamChatResponse.EventType.DONE);
+        }
+
+        @Test
+        @DisplayName("检索失败时按原异常抛出")
+        void retrievalFailureShouldPropagate() {
+            retrievalFailure = new IllegalStateException("向量服务不可用");
+
+            assertThatThrownBy(() -> chatService.sendMessageStream(1L, request(null), events::add,
+                    StreamCancellation.none()))
+                    .isInstanceOf(IllegalStateException.class)
+                    .hasMessage("向量服务不可用");
+        }
+    }
+
+    @Nested
+    @DisplayName("非阻塞模式测试")
+    class NonBlockingModeTests {
+
+        @Test
+        @DisplayName("生成未结束时即返回，生成结束后更新消息并发送完成事件")
+        void shouldReturnBeforeGenerationCompletes() throws Exception {
+            CompletableFuture<Void> result = chatService.sendMessageStreamAsync(1L, request(null), events::add,
+                    StreamCancellation.none());
+
+            assertThat(result).isNotDone();
+            verify(ragService).answerStreamAsync(anyString(), any(RagService.RetrievalResult.class), anyList(),
+                    any(), any());
+            verify(messageMapper, never()).updateContentAndMetadata(anyLong(), anyString(), any());
+
+            generationGate.complete(null);
+            result.get(5, TimeUnit.SECONDS);
+
+            assertThat(events).extracting(StreamChatResponse::getType).containsExactly(
+                    StreamChatResponse.EventType.STATUS,
+                    StreamChatResponse.EventType.STATUS,
+                    StreamChatResponse.EventType.SOURCES,
+                    StreamChatResponse.EventType.STATUS,
+                    StreamChatResponse.EventType.CONTENT,
+                    StreamChatResponse.EventType.CONTENT,
+                    StreamChatResponse.EventType.DONE);
+            verify(messageMapper).updateContentAndMetadata(anyLong(), eq("八点开门。"), any());
+            assertThat(events.get(events.size() - 1).getTimings()).containsKeys("generationMs", "totalMs");
+        }
+
+        @Test
+        @DisplayName("生成在返回前已经结束时，仍应更新消息内容并发送完成事件")
+        void alreadyCompletedGenerationShouldPersistAnswer() throws Exception {
+            doAnswer(invocation -> {
+                Consumer<String> consumer = invocation.getArgument(3);
+                consumer.accept("八点开门。");
+                return CompletableFuture.completedFuture("八点开门。");
+            }).when(ragService).answerStreamAsync(anyString(), any(RagService.RetrievalResult.class), anyList(), any(),
+                    any());
+
+            chatService.sendMessageStreamAsync(1L, request(null), events::add, StreamCancellation.none())
+                    .get(5, TimeUnit.SECONDS);
+
+            verify(messageMapper).updateContentAndMetadata(eq(102L), eq("八点开门。"), any());
+            assertThat(events.get(events.size() - 1).getType()).isEqualTo(StreamChatResponse.EventType.DONE);
+        }
+
+        @Test
+        @DisplayName("非阻塞入口不应开启事务，消息写入须在其他线程更新前提交")
+        void asyncEntryShouldNotBeTransactional() throws Exception {
+            Method method = ChatServiceImpl.class.getMethod("sendMessageStreamAsync", Long.class, ChatRequest.class,
+                    Consumer.class, StreamCancellation.class);
+
+            assertThat(method.isAnnotationPresent(Transactional.class)).isFalse();
+            assertThat(ChatServiceImpl.class.isAnnotationPresent(Transactional.class)).isFalse();
+        }
+
+        @Test
+        @DisplayName("生成失败时结果异常完成，不发送完成事件")
+        void generationFailureShouldCompleteExceptionally() {
+            CompletableFuture<Void> result = chatService.sendMessageStreamAsync(1L, request(null), events::add,
+                    StreamCancellation.none());
+
+            generationGate.completeExceptionally(new IllegalStateException("连接中断"));
+
+            assertThatThrownBy(() -> result.get(5, TimeUnit.SECONDS))
+                    .hasCauseInstanceOf(IllegalStateException.class);
+            assertThat(events).extracting(StreamChatResponse::getType)
+                    .doesNotContain(StreamChatResponse.EventType.DONE);
+        }
+
+        @Test
+        @DisplayName("客户端断开时保存已生成的部分回答，不写入语义缓存")
+        void cancellationShouldPersistPartialAnswerWithoutCaching() throws Exception {
+            StreamCancellation cancellation = new StreamCancellation();
+            CompletableFuture<Void> result = chatService.sendMessageStreamAsync(1L, request(null), events::add, cancellation);
+
+            cancellation.cancel();
+            generationGate.complete(null);
+            result.get(5, TimeUnit.SECONDS);
+
+            verify(messageMapper).updateContentAndMetadata(anyLong(), eq("八点"), any());
+            verify(answerCacheService, never()).store(anyString(), anyString(), anyList(), anyLong());
+        }
+
+        @Test
+        @DisplayName("正常完成时保存完整回答并写入语义缓存")
+        void completionShouldPersistAndCacheAnswer() throws Exception {
+            CompletableFuture<Void> result = chatService.sendMessageStreamAsync(1L, request(null), events::add,
+                    StreamCancellation.none());
+
+            generationGate.complete(null);
+            result.get(5, TimeUnit.SECONDS);
+
+            verify(messageMapper).updateContentAndMetadata(anyLong(), eq("八点开门。"), any());
+            verify(answerCacheService).store(anyString(), eq("八点开门。"), anyList(), anyLong());
+        }
+    }
+
+    private static ChatRequest request(Long conversationId) {
+        ChatRequest request = new ChatRequest();
+        request.setConversationId(conversationId);
+        request.setMessage("图书馆几点开门？");
+        return request;
+    }
+
+    private static Message message(Long id, String senderType, String content, int minutesAgo) {
+        Message message = new Message();
+        message.setId(id);
+        message.setConversationId(7L);
+        message.setSenderType(senderType);
+        message.setContent(content);
+        message.setCreatedAt(LocalDateTime.now().minusMinutes(minutesAgo));
+        return message;
+    }
+
+    private static RagService.RetrievalResult retrievalResult() {
+        KnowledgeChunk chunk = new KnowledgeChunk();
+        chunk.setId(11L);
+        chunk.setDocId(1L);
+        chunk.setContent("图书馆开放时间为8:00-22:00");
+        KnowledgeDoc doc = new KnowledgeDoc();
+        doc.setId(1L);
+        doc.setTitle("图书馆指南");
+        return new RagService.RetrievalResult(List.of(chunk), Map.of(11L, 0.9f), Map.of(1L, doc), 5, 0.5f, 3);
+    }
+}
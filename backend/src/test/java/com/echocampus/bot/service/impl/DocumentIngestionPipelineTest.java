@@ -0,0 +1,561 @@
+package com.echocampus.bot.service.impl;
+
+import com.echocampus.bot.entity.KnowledgeChunk;
+import com.echocampus.bot.entity.KnowledgeDoc;
+import com.echocampus.bot.mapper.KnowledgeChunkMapper;
+import com.echocampus.bot.parser.DocumentParser;
+import com.echocampus.bot.parser.dto.DocumentMetadata;
+import com.echocampus.bot.parser.dto.ParsedSegment;
+import com.echocampus.bot.parser.exception.DocumentParseException;
+import com.echocampus.bot.service.DocumentProgressService;
+import com.echocampus.bot.service.EmbeddingService;
+import com.echocampus.bot.service.MilvusService;
+import com.echocampus.bot.service.TextChunkService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * DocumentIngestionPipeline 单元测试
+ * 知识片段表用 Mockito 模拟为内存中的行（分配自增ID、记录写入的切块），Milvus和Embedding服务为记录调用的手写桩
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+@DisplayName("DocumentIngestionPipeline - 文档入库流水线测试")
+class DocumentIngestionPipelineTest {
+
+    private static final int BATCH_SIZE = 8;
+    private static final int QUEUE_CAPACITY = 2;
+
+    @Mock
+    private KnowledgeChunkMapper knowledgeChunkMapper;
+
+    @Mock
+    private DocumentProgressService progressService;
+
+    private KnowledgeDoc doc;
+    private AtomicLong nextChunkId;
+    private List<KnowledgeChunk> insertedChunks;
+    private Map<Long, KnowledgeChunk> persistedChunks;
+    private List<Long> deletedChunkIds;
+    private AtomicInteger inFlightChunks;
+    private AtomicInteger maxInFlightChunks;
+    private StubEmbeddingService embeddingService;
+    private RecordingMilvusService milvusService;
+    private List<String> progressStages;
+    private CountDownLatch embeddingReported;
+
+    @BeforeEach
+    void setUp() {
+        doc = new KnowledgeDoc();
+        doc.setId(7L);
+        doc.setFilePath("/tmp/doc.pdf");
+        doc.setFileType("pdf");
+        doc.setCategory("library");
+
+        nextChunkId = new AtomicLong(100);
+        insertedChunks = Collections.synchronizedList(new ArrayList<>());
+        persistedChunks = new ConcurrentHashMap<>();
+        deletedChunkIds = Collections.synchronizedList(new ArrayList<>());
+        inFlightChunks = new AtomicInteger();
+        maxInFlightChunks = new AtomicInteger();
+        embeddingService = new StubEmbeddingService();
+        milvusService = new RecordingMilvusService();
+        progressStages = Collections.synchronizedList(new ArrayList<>());
+        embeddingReported = new CountDownLatch(1);
+
+        when(knowledgeChunkMapper.insertBatch(anyList())).thenAnswer(invocation -> {
+            List<KnowledgeChunk> chunks = invocation.getArgument(0);
+            for (KnowledgeChunk chunk : chunks) {
+                chunk.setId(nextChunkId.incrementAndGet());
+                insertedChunks.add(chunk);
+                persistedChunks.put(chunk.getId(), copyOf(chunk));
+            }
+            return chunks.size();
+        });
+        when(knowledgeChunkMapper.selectIndexEntriesByDocId(anyLong())).thenAnswer(invocation -> {
+            Long docId = invocation.getArgument(0);
+            return persistedChunks.values().stream()
+                    .filter(c -> c.getDocId().equals(docId))
+                    .sorted(Comparator.comparing(KnowledgeChunk::getChunkIndex))
+                    .map(DocumentIngestionPipelineTest::copyOf)
+                    .toList();
+        });
+        when(knowledgeChunkMapper.selectVectorizedByContentHashes(anyCollection(), anyLong())).thenAnswer(invocation -> {
+            Collection<String> hashes = invocation.getArgument(0);
+            Long excludeDocId = invocation.getArgument(1);
+            return persistedChunks.values().stream()
+                    .filter(c -> hashes.contains(c.getContentHash()))
+                    .filter(c -> c.getVectorId() != null && !c.getDocId().equals(excludeDocId))
+                    .map(DocumentIngestionPipelineTest::copyOf)
+                    .toList();
+        });
+        when(knowledgeChunkMapper.updatePositions(anyList())).thenAnswer(invocation -> persist(invocation.getArgument(0)));
+        when(knowledgeChunkMapper.updateVectorIds(anyList())).thenAnswer(invocation -> persist(invocation.getArgument(0)));
+        when(knowledgeChunkMapper.deleteBatch(anyList())).thenAnswer(invocation -> {
+            List<Long> ids = invocation.getArgument(0);
+            ids.forEach(persistedChunks::remove);
+            deletedChunkIds.addAll(ids);
+            return ids.size();
+        });
+
+        doAnswer(invocation -> progressStages.add("PARSING"))
+                .when(progressService).sendParsingProgress(anyLong(), anyInt(), any());
+        doAnswer(invocation -> progressStages.add("CHUNKING"))
+                .when(progressService).sendChunkingProgress(anyLong(), anyInt(), anyInt());
+        doAnswer(invocation -> {
+            progressStages.add("EMBEDDING");
+            embeddingReported.countDown();
+            return null;
+        }).when(progressService).sendEmbeddingProgress(anyLong(), anyInt(), anyInt(), anyInt());
+        doAnswer(invocation -> progressStages.add("STORING"))
+                .when(progressService).sendStoringProgress(anyLong(), anyInt(), any());
+    }
+
+    @Nested
+    @DisplayName("正常入库测试")
+    class SuccessTests {
+
+        @Test
+        @DisplayName("所有切块应按顺序写入Milvus，并携带页码和全局序号")
+        void shouldStoreAllChunksInOrder() throws Exception {
+            DocumentIngestionPipeline.Result result = pipeline(new PagedParser(20, null)).run();
+
+            // 每页切成3块
+            assertThat(result.chunkCount()).isEqualTo(60);
+            assertThat(result.embeddedCount()).isEqualTo(60);
+            assertThat(milvusService.chunkIds).hasSize(60);
+            assertThat(milvusService.chunkIds).isSorted();
+            assertThat(milvusService.contents.get(0)).isEqualTo("第1页-0");
+            assertThat(milvusService.contents.get(59)).isEqualTo("第20页-2");
+            assertThat(milvusService.categories).containsOnly("library");
+            assertThat(insertedChunks.get(59).getChunkIndex()).isEqualTo(59);
+            assertThat(insertedChunks.get(59).getPageNumber()).isEqualTo(20);
+            assertThat(insertedChunks.get(59).getStartPosition()).isGreaterThan(insertedChunks.get(3).getStartPosition());
+        }
+
+        @Test
+        @DisplayName("驻留内存的切块数应受批次大小和队列容量限制，而与文档大小无关")
+        void inFlightChunksShouldBeBounded() throws Exception {
+            embeddingService.delayMillis = 5;
+
+            pipeline(new PagedParser(200, null)).run();
+
+            // 切块阶段1批 + 队列2批 + 向量化1批 + 队列2批 + 存储1批，另加解析中的一段
+            int bound = BATCH_SIZE * (2 * QUEUE_CAPACITY + 3) + 3 * (QUEUE_CAPACITY + 1);
+            assertThat(maxInFlightChunks.get()).isLessThanOrEqualTo(bound);
+            assertThat(milvusService.chunkIds).hasSize(600);
+        }
+
+        @Test
+        @DisplayName("进度应按阶段顺序推进")
+        void progressShouldAdvanceThroughStages() throws Exception {
+            // 向量化等到切块完成并上报 EMBEDDING 后才开始，否则向量化可能在切块结束前完成而跳过该阶段。
+            // 两页6个切块不超过一个批次，切块阶段不会因队列已满而等待向量化
+            embeddingService.gate = embeddingReported;
+
+            pipeline(new PagedParser(2, null)).run();
+
+            assertThat(progressStages).contains("PARSING", "EMBEDDING", "STORING");
+            assertThat(progressStages.lastIndexOf("PARSING")).isLessThan(progressStages.indexOf("EMBEDDING"));
+            assertThat(progressStages.lastIndexOf("EMBEDDING")).isLessThan(progressStages.indexOf("STORING"));
+            assertThat(progressStages.get(progressStages.size() - 1)).isEqualTo("STORING");
+        }
+    }
+
+    @Nested
+    @DisplayName("增量重建索引测试")
+    class IncrementalTests {
+
+        @Test
+        @DisplayName("内容未变时不应重新向量化，也不应删除或新增切块")
+        void unchangedDocumentShouldReuseEverything() throws Exception {
+            pipeline(new PagedParser(20, null)).run();
+            int embeddedBefore = embeddingService.embeddedTexts.get();
+
+            DocumentIngestionPipeline.Result result = pipeline(new PagedParser(20, null)).run();
+
+            assertThat(result.chunkCount()).isEqualTo(60);
+            assertThat(result.keptCount()).isEqualTo(60);
+            assertThat(result.embeddedCount()).isZero();
+            assertThat(result.removedCount()).isZero();
+            assertThat(embeddingService.embeddedTexts.get()).isEqualTo(embeddedBefore);
+            assertThat(persistedChunks).hasSize(60);
+            assertThat(milvusService.chunkIds).hasSize(60);
+        }
+
+        @Test
+        @DisplayName("修改一页时只应向量化该页的切块，并删除旧切块的行和向量")
+        void changedPageShouldOnlyEmbedChangedChunks() throws Exception {
+            pipeline(new PagedParser(20, null)).run();
+            List<Long> oldPageIds = insertedChunks.stream()
+                    .filter(c -> c.getPageNumber() == 5).map(KnowledgeChunk::getId).toList();
+            int embeddedBefore = embeddingService.embeddedTexts.get();
+
+            PagedParser revised = new PagedParser(20, null);
+            revised.revisedPage = 5;
+            DocumentIngestionPipeline.Result result = pipeline(revised).run();
+
+            assertThat(result.keptCount()).isEqualTo(57);
+            assertThat(result.embeddedCount()).isEqualTo(3);
+            assertThat(result.removedCount()).isEqualTo(3);
+            assertThat(embeddingService.embeddedTexts.get() - embeddedBefore).isEqualTo(3);
+            assertThat(deletedChunkIds).containsExactlyInAnyOrderElementsOf(oldPageIds);
+            assertThat(milvusService.deletedChunkIds).containsExactlyInAnyOrderElementsOf(oldPageIds);
+            assertThat(persistedChunks).hasSize(60);
+        }
+
+        @Test
+        @DisplayName("插入新页后保留的切块应更新序号和页码")
+        void keptChunksShouldBeRenumbered() throws Exception {
+            pipeline(new PagedParser(3, null)).run();
+            KnowledgeChunk lastChunk = insertedChunks.get(8);
+
+            PagedParser shifted = new PagedParser(4, null);
+            shifted.firstPage = 0;
+            pipeline(shifted).run();
+
+            assertThat(persistedChunks.get(lastChunk.getId()).getChunkIndex()).isEqualTo(11);
+            assertThat(persistedChunks.get(lastChunk.getId()).getPageNumber()).isEqualTo(4);
+        }
+
+        @Test
+        @DisplayName("页码变化的保留切块应用原向量重写Milvus记录，更新页码载荷")
+        void movedChunksShouldRewritePagePayload() throws Exception {
+            pipeline(new PagedParser(3, null)).run();
+            KnowledgeChunk lastChunk = insertedChunks.get(8);
+            float[] originalVector = milvusService.vectors.get(lastChunk.getVectorId());
+            int embeddedBefore = embeddingService.embeddedTexts.get();
+            milvusService.chunkIds.clear();
+            milvusService.pageNumbers.clear();
+
+            PagedParser shifted = new PagedParser(4, null);
+            shifted.firstPage = 0;
+            DocumentIngestionPipeline.Result result = pipeline(shifted).run();
+
+            assertThat(result.keptCount()).isEqualTo(9);
+            assertThat(embeddingService.embeddedTexts.get() - embeddedBefore).isEqualTo(3);
+            int rewritten = milvusService.chunkIds.indexOf(lastChunk.getId());
+            assertThat(rewritten).isNotNegative();
+            assertThat(milvusService.pageNumbers.get(rewritten)).isEqualTo(4);
+            String newVectorId = persistedChunks.get(lastChunk.getId()).getVectorId();
+            assertThat(newVectorId).isNotEqualTo(lastChunk.getVectorId());
+            assertThat(milvusService.vectors.get(newVectorId)).isEqualTo(originalVector);
+            // 先写入新记录，再按旧向量ID删除旧记录
+            assertThat(milvusService.deletedVectorIds).contains(lastChunk.getVectorId());
+            assertThat(milvusService.operations.indexOf("insert:" + newVectorId))
+                    .isLessThan(milvusService.operations.indexOf("delete:" + lastChunk.getVectorId()));
+        }
+
+        @Test
+        @DisplayName("其他文档中已有相同内容时应复用其向量")
+        void identicalChunksInOtherDocumentsShouldReuseVectors() throws Exception {
+            pipeline(new PagedParser(10, null)).run();
+            doc.setId(8L);
+
+            DocumentIngestionPipeline.Result result = pipeline(new PagedParser(10, null)).run();
+
+            assertThat(result.reusedCount()).isEqualTo(30);
+            assertThat(result.embeddedCount()).isZero();
+            assertThat(embeddingService.embeddedTexts.get()).isEqualTo(30);
+            assertThat(milvusService.chunkIds).hasSize(60);
+        }
+
+        @Test
+        @DisplayName("上次入库未写入向量的切块应删除并重新向量化")
+        void chunksWithoutVectorIdShouldBeReembedded() throws Exception {
+            pipeline(new PagedParser(10, null)).run();
+            persistedChunks.values().forEach(c -> c.setVectorId(null));
+
+            DocumentIngestionPipeline.Result result = pipeline(new PagedParser(10, null)).run();
+
+            assertThat(result.keptCount()).isZero();
+            assertThat(result.embeddedCount()).isEqualTo(30);
+            assertThat(result.removedCount()).isEqualTo(30);
+            assertThat(persistedChunks).hasSize(30);
+        }
+    }
+
+    @Nested
+    @DisplayName("失败处理测试")
+    class FailureTests {
+
+        @Test
+        @DisplayName("向量化失败时应抛出原始异常，且解析阶段不再继续读取")
+        void embeddingFailureShouldAbortPipeline() {
+            embeddingService.failAfterCalls = 1;
+            PagedParser parser = new PagedParser(1000, null);
+
+            assertThatThrownBy(() -> pipeline(parser).run())
+                    .isInstanceOf(IllegalStateException.class)
+                    .hasMessageContaining("embedding failed");
+            assertThat(parser.emitted.get()).isLessThan(1000);
+        }
+
+        @Test
+        @DisplayName("解析失败时应抛出 DocumentParseException")
+        void parseFailureShouldPropagate() {
+            PagedParser parser = new PagedParser(10, 5);
+
+            assertThatThrownBy(() -> pipeline(parser).run())
+                    .isInstanceOf(DocumentParseException.class);
+        }
+
+        @Test
+        @DisplayName("内容为空时应视为解析失败")
+        void emptyDocumentShouldFail() {
+            assertThatThrownBy(() -> pipeline(new PagedParser(0, null)).run())
+                    .isInstanceOf(DocumentParseException.class)
+                    .hasMessageContaining("文档内容为空");
+        }
+    }
+
+    private DocumentIngestionPipeline pipeline(DocumentParser parser) {
+        return new DocumentIngestionPipeline(doc, parser, new PerLineChunkService(), knowledgeChunkMapper,
+                embeddingService, milvusService, progressService, BATCH_SIZE, QUEUE_CAPACITY);
+    }
+
+    private int persist(List<KnowledgeChunk> chunks) {
+        chunks.forEach(c -> persistedChunks.put(c.getId(), copyOf(c)));
+        return chunks.size();
+    }
+
+    private static KnowledgeChunk copyOf(KnowledgeChunk chunk) {
+        KnowledgeChunk copy = new KnowledgeChunk();
+        copy.setId(chunk.getId());
+        copy.setDocId(chunk.getDocId());
+        copy.setChunkIndex(chunk.getChunkIndex());
+        copy.setContentHash(chunk.getContentHash());
+        copy.setVectorId(chunk.getVectorId());
+        copy.setPageNumber(chunk.getPageNumber());
+        copy.setStartPosition(chunk.getStartPosition());
+        copy.setEndPosition(chunk.getEndPosition());
+        return copy;
+    }
+
+    /**
+     * 每页输出三行文本的解析器，可在指定页抛出解析异常
+     */
+    private class PagedParser implements DocumentParser {
+        private final int pages;
+        private final Integer failAtPage;
+        final AtomicInteger emitted = new AtomicInteger();
+        // 内容被修改的页码，以及首页编号（小于1时在文档开头插入新页）
+        Integer revisedPage;
+        int firstPage = 1;
+
+        PagedParser(int pages, Integer failAtPage) {
+            this.pages = pages;
+            this.failAtPage = failAtPage;
+        }
+
+        @Override
+        public void parseSegments(String filePath, SegmentConsumer consumer)
+                throws DocumentParseException, InterruptedException {
+            for (int i = 0; i < pages; i++) {
+                int page = firstPage + i;
+                if (failAtPage != null && page == failAtPage) {
+                    throw new DocumentParseException("第" + page + "页损坏");
+                }
+                String label = Integer.valueOf(page).equals(revisedPage) ? "第" + page + "页（修订）" : "第" + page + "页";
+                String text = label + "-0\n" + label + "-1\n" + label + "-2";
+                trackInFlight(3);
+                consumer.accept(new ParsedSegment(text, i + 1, (i + 1) * 100 / pages));
+                emitted.incrementAndGet();
+            }
+        }
+
+        @Override
+        public String parse(String filePath) {
+            throw new UnsupportedOperationException("parse");
+        }
+
+        @Override
+        public DocumentMetadata getMetadata(String filePath) {
+            throw new UnsupportedOperationException("getMetadata");
+        }
+
+        @Override
+        public List<String> getSupportedTypes() {
+            return List.of("pdf");
+        }
+    }
+
+    private void trackInFlight(int delta) {
+        int current = inFlightChunks.addAndGet(delta);
+        maxInFlightChunks.accumulateAndGet(current, Math::max);
+    }
+
+    /**
+     * 按行切块的切块服务
+     */
+    private static class PerLineChunkService implements TextChunkService {
+        @Override
+        public List<KnowledgeChunk> chunkText(String text, Long docId, String fileType) {
+            List<KnowledgeChunk> chunks = new ArrayList<>();
+            int position = 0;
+            for (String line : text.split("\n")) {
+                KnowledgeChunk chunk = new KnowledgeChunk();
+                chunk.setDocId(docId);
+                chunk.setChunkIndex(chunks.size());
+                chunk.setContent(line);
+                chunk.setStartPosition(position);
+                chunk.setEndPosition(position + line.length());
+                chunks.add(chunk);
+                position += line.length() + 1;
+            }
+            return chunks;
+        }
+
+        @Override
+        public List<KnowledgeChunk> chunkText(String text, Long docId) {
+            return chunkText(text, docId, null);
+        }
+    }
+
+    private static class StubEmbeddingService implements EmbeddingService {
+        final AtomicInteger calls = new AtomicInteger();
+        final AtomicInteger embeddedTexts = new AtomicInteger();
+        volatile long delayMillis;
+        volatile int failAfterCalls = -1;
+        // 不为空时每次向量化前等待放行
+        volatile CountDownLatch gate;
+
+        @Override
+        public float[] embed(String text) {
+            throw new UnsupportedOperationException("embed");
+        }
+
+        @Override
+        public List<float[]> embedBatch(List<String> texts) {
+            CountDownLatch currentGate = gate;
+            try {
+                if (currentGate != null && !currentGate.await(5, TimeUnit.SECONDS)) {
+                    throw new IllegalStateException("向量化未被放行");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            int call = calls.incrementAndGet();
+            embeddedTexts.addAndGet(texts.size());
+            if (failAfterCalls >= 0 && call > failAfterCalls) {
+                throw new IllegalStateException("embedding failed");
+            }
+            if (delayMillis > 0) {
+                try {
+                    Thread.sleep(delayMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return texts.stream().map(t -> new float[]{t.length()}).toList();
+        }
+
+        @Override
+        public int getDimension() {
+            return 1;
+        }
+
+        @Override
+        public boolean isAvailable() {
+            return true;
+        }
+    }
+
+    private class RecordingMilvusService implements MilvusService {
+        final List<Long> chunkIds = Collections.synchronizedList(new ArrayList<>());
+        final List<String> contents = Collections.synchronizedList(new ArrayList<>());
+        final List<String> categories = Collections.synchronizedList(new ArrayList<>());
+        final List<Integer> pageNumbers = Collections.synchronizedList(new ArrayList<>());
+        final List<String> titles = Collections.synchronizedList(new ArrayList<>());
+        final List<Long> deletedChunkIds = Collections.synchronizedList(new ArrayList<>());
+        final List<String> deletedVectorIds = Collections.synchronizedList(new ArrayList<>());
+        // 按调用顺序记录的写入和删除
+        final List<String> operations = Collections.synchronizedList(new ArrayList<>());
+        final Map<String, float[]> vectors = new ConcurrentHashMap<>();
+        private final AtomicLong nextVectorId = new AtomicLong();
+
+        @Override
+        public void initCollection() {
+        }
+
+        @Override
+        public List<String> insertVectors(List<float[]> vectors, List<Long> chunkIds, List<Long> docIds,
+                                          List<String> contents, List<String> categories,
+                                          List<Integer> pageNumbers, List<String> titles) {
+            this.chunkIds.addAll(chunkIds);
+            this.contents.addAll(contents);
+            this.categories.addAll(categories);
+            this.pageNumbers.addAll(pageNumbers);
+            this.titles.addAll(titles);
+            trackInFlight(-chunkIds.size());
+            // 与Milvus自增主键一样，重写的记录得到新的向量ID
+            List<String> vectorIds = chunkIds.stream().map(id -> "v" + nextVectorId.incrementAndGet()).toList();
+            vectorIds.forEach(id -> operations.add("insert:" + id));
+            for (int i = 0; i < vectorIds.size(); i++) {
+                this.vectors.put(vectorIds.get(i), vectors.get(i));
+            }
+            return vectorIds;
+        }
+
+        @Override
+        public List<SearchResult> search(float[] queryVector, int topK, float threshold, SearchFilter filter) {
+            return List.of();
+        }
+
+        @Override
+        public void deleteVectors(List<String> vectorIds) {
+            deletedVectorIds.addAll(vectorIds);
+            vectorIds.forEach(id -> operations.add("delete:" + id));
+        }
+
+        @Override
+        public void deleteByDocId(Long docId, String category) {
+        }
+
+        @Override
+        public void deleteByChunkIds(List<Long> chunkIds) {
+            deletedChunkIds.addAll(chunkIds);
+        }
+
+        @Override
+        public Map<String, float[]> getVectors(List<String> vectorIds) {
+            Map<String, float[]> found = new HashMap<>();
+            vectorIds.stream().filter(vectors::containsKey).forEach(id -> found.put(id, vectors.get(id)));
+            return found;
+        }
+
+        @Override
+        public long getVectorCount() {
+            return chunkIds.size();
+        }
+
+        @Override
+        public boolean isAvailable() {
+            return true;
+        }
+    }
+}
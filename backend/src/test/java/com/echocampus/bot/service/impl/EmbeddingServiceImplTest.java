@@ -0,0 +1,126 @@
+package com.echocampus.bot.service.impl;
+
+import com.echocampus.bot.config.AiServiceConfig;
+import com.echocampus.bot.service.transport.AiHttpTransport;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * EmbeddingServiceImpl 单元测试
+ * 使用本地 HttpServer 模拟 Embedding 接口（以文本长度作为向量第0维），验证检索问题与批量入库分别限流
+ */
+@DisplayName("EmbeddingServiceImpl - 向量化限流测试")
+class EmbeddingServiceImplTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final AtomicInteger requests = new AtomicInteger();
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private AiServiceConfig aiConfig;
+    private AiHttpTransport transport;
+    private EmbeddingServiceImpl embeddingService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v1/embeddings", exchange -> {
+            requests.incrementAndGet();
+            JsonNode input = objectMapper.readTree(exchange.getRequestBody()).get("input");
+            StringBuilder json = new StringBuilder("{\"data\":[");
+            for (int i = 0; i < input.size(); i++) {
+                json.append(i > 0 ? "," : "").append("{\"embedding\":[")
+                        .append(input.get(i).asText().length()).append(",1.0]}");
+            }
+            byte[] body = json.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        });
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+        server.start();
+
+        aiConfig = new AiServiceConfig();
+        aiConfig.getEmbedding().setApiUrl("http://127.0.0.1:" + server.getAddress().getPort() + "/v1/embeddings");
+        aiConfig.getEmbedding().setApiKey("test");
+        aiConfig.getEmbedding().setDimension(2);
+        aiConfig.getEmbedding().setBatchSize(2);
+        aiConfig.getEmbedding().setMaxInFlightBatches(1);
+        // 批量入库每秒1个请求
+        aiConfig.getEmbedding().setRequestsPerSecond(1.0);
+        aiConfig.getEmbedding().setRequestBurst(1);
+        transport = new AiHttpTransport(aiConfig);
+        embeddingService = new EmbeddingServiceImpl(aiConfig, transport);
+    }
+
+    @AfterEach
+    void tearDown() {
+        embeddingService.destroy();
+        transport.destroy();
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Nested
+    @DisplayName("限流测试")
+    class RateLimitTests {
+
+        @Test
+        @DisplayName("批量入库被限流时，检索问题不排在其后")
+        void queriesShouldNotWaitBehindBulkIngestion() throws Exception {
+            List<String> texts = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                texts.add("切块" + i);
+            }
+            CompletableFuture<List<float[]>> bulk = CompletableFuture.supplyAsync(() -> embeddingService.embedBatch(texts));
+            while (requests.get() < 2) {
+                Thread.sleep(10);
+            }
+
+            long start = System.nanoTime();
+            float[] vector = embeddingService.embed("图书馆几点开门");
+            List<float[]> vectors = embeddingService.embedQueries(List.of("食堂", "校医院电话"));
+            long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            assertThat(bulk).isNotDone();
+            assertThat(elapsedMs).isLessThan(500);
+            assertThat(vector[0]).isEqualTo(7f);
+            assertThat(vectors).extracting(v -> v[0]).containsExactly(2f, 5f);
+            assertThat(bulk.get(10, TimeUnit.SECONDS)).hasSize(8);
+        }
+
+        @Test
+        @DisplayName("批量入库请求按配置速率限流，结果保持输入顺序")
+        void bulkIngestionShouldBeRateLimited() {
+            long start = System.nanoTime();
+            List<float[]> vectors = embeddingService.embedBatch(List.of("a", "bb", "ccc", "dddd", "eeeee"));
+            long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            // 3个请求：首个立即执行，其余每秒1个
+            assertThat(elapsedMs).isGreaterThanOrEqualTo(1800);
+            assertThat(vectors).extracting(v -> v[0]).containsExactly(1f, 2f, 3f, 4f, 5f);
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.echocampus.bot.service.impl;
+
+import com.echocampus.bot.config.AiServiceConfig;
+import com.echocampus.bot.service.EnhancedLlmService.ToolCall;
+import com.echocampus.bot.service.EnhancedLlmService.ToolExecutor;
+import com.echocampus.bot.service.stream.StreamCancellation;
+import com.echocampus.bot.service.transport.AiHttpTransport;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import dev.langchain4j.agent.tool.ToolParameters;
+import dev.langchain4j.agent.tool.ToolSpecification;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * EnhancedLlmServiceImpl 单元测试
+ * 使用本地 HttpServer 模拟 OpenAI 兼容的聊天接口，按顺序返回预置的响应
+ */
+@DisplayName("EnhancedLlmServiceImpl - 工具调用测试")
+class EnhancedLlmServiceImplTest {
+
+    private static final String TWO_TOOL_CALLS = """
+            {"choices":[{"message":{"role":"assistant","content":"","tool_calls":[
+              {"id":"call_1","type":"function","function":{"name":"searchKnowledge","arguments":"{\\"query\\":\\"图书馆\\"}"}},
+              {"id":"call_2","type":"function","function":{"name":"searchKnowledge","arguments":"{\\"query\\":\\"食堂\\"}"}}
+            ]}}]}
+            """;
+    private static final String ANSWER = """
+            {"choices":[{"message":{"role":"assistant","content":"图书馆8点开门，食堂在二楼"}}]}
+            """;
+    private static final String STREAM_TOOL_CALL = """
+            data: {"choices":[{"delta":{"content":"我查一下。"}}]}
+
+            data: {"choices":[{"delta":{"tool_calls":[{"index":0,"id":"call_1","type":"function","function":{"name":"searchKnowledge","arguments":"{\\"query\\":\\"图书馆\\"}"}}]}}]}
+
+            data: [DONE]
+
+            """;
+    private static final String STREAM_ANSWER = """
+            data: {"choices":[{"delta":{"content":"图书馆8点开门"}}]}
+
+            data: [DONE]
+
+            """;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Deque<String> responses = new ArrayDeque<>();
+    private final List<JsonNode> requests = Collections.synchronizedList(new ArrayList<>());
+    private HttpServer server;
+    private EnhancedLlmServiceImpl llmService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v1/chat/completions", exchange -> {
+            requests.add(objectMapper.readTree(exchange.getRequestBody()));
+            byte[] body = Objects.requireNonNull(responses.poll()).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        });
+        server.start();
+
+        AiServiceConfig aiConfig = new AiServiceConfig();
+        aiConfig.getLlm().setApiUrl("http://127.0.0.1:" + server.getAddress().getPort() + "/v1/chat/completions");
+        aiConfig.getLlm().setApiKey("test");
+        aiConfig.getLlm().setTimeout(5);
+        llmService = new EnhancedLlmServiceImpl(aiConfig, new AiHttpTransport(aiConfig), Runnable::run);
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    @Nested
+    @DisplayName("工具调用测试")
+    class ToolCallTests {
+
+        @Test
+        @DisplayName("同一轮的多个工具调用应一次性交给执行器，结果按调用顺序回传")
+        void toolCallsOfOneTurnShouldExecuteTogether() {
+            responses.addAll(List.of(TWO_TOOL_CALLS, ANSWER));
+            List<List<ToolCall>> batches = new ArrayList<>();
+            ToolExecutor executor = new ToolExecutor() {
+                @Override
+                public String execute(String toolName, String arguments) {
+                    throw new AssertionError("应通过 executeAll 执行");
+                }
+
+                @Override
+                public List<String> executeAll(List<ToolCall> toolCalls) {
+                    batches.add(toolCalls);
+                    return toolCalls.stream().map(call -> "结果-" + call.id()).toList();
+                }
+            };
+
+            String answer = llmService.chatWithTools("系统", "图书馆几点开门，食堂在哪", null, List.of(searchTool()), executor);
+
+            assertThat(answer).isEqualTo("图书馆8点开门，食堂在二楼");
+            assertThat(batches).singleElement().satisfies(calls ->
+                    assertThat(calls).extracting(ToolCall::id).containsExactly("call_1", "call_2"));
+            List<JsonNode> toolMessages = new ArrayList<>();
+            requests.get(1).get("messages").forEach(m -> {
+                if ("tool".equals(m.get("role").asText())) {
+                    toolMessages.add(m);
+                }
+            });
+            assertThat(toolMessages).extracting(m -> m.get("tool_call_id").asText() + "=" + m.get("content").asText())
+                    .containsExactly("call_1=结果-call_1", "call_2=结果-call_2");
+        }
+
+        @Test
+        @DisplayName("工具参数只有声明为必需的才应标记为 required")
+        void optionalParametersShouldNotBeRequired() {
+            responses.add(ANSWER);
+
+            llmService.chatWithTools("系统", "你好", null, List.of(searchTool()), (name, args) -> "");
+
+            JsonNode parameters = requests.get(0).get("tools").get(0).get("function").get("parameters");
+            assertThat(parameters.get("properties").has("category")).isTrue();
+            assertThat(parameters.get("required")).extracting(JsonNode::asText).containsExactly("query");
+        }
+    }
+
+    @Nested
+    @DisplayName("流式取消测试")
+    class StreamCancellationTests {
+
+        @Test
+        @DisplayName("阻塞流式：工具执行期间取消时不再发起下一轮，返回已生成的部分")
+        void blockingToolLoopShouldStopOnCancel() {
+            responses.addAll(List.of(STREAM_TOOL_CALL, STREAM_ANSWER));
+            StreamCancellation cancellation = new StreamCancellation();
+            List<String> content = new ArrayList<>();
+
+            String answer = llmService.chatWithToolsStream("系统", "图书馆几点开门", null, List.of(searchTool()),
+                    cancellingExecutor(cancellation), content::add, cancellation);
+
+            assertThat(answer).isEqualTo("我查一下。");
+            assertThat(content).containsExactly("我查一下。");
+            assertThat(requests).hasSize(1);
+        }
+
+        @Test
+        @DisplayName("非阻塞流式：工具执行期间取消时不再发起下一轮，返回已生成的部分")
+        void nonBlockingToolLoopShouldStopOnCancel() throws Exception {
+            responses.addAll(List.of(STREAM_TOOL_CALL, STREAM_ANSWER));
+            StreamCancellation cancellation = new StreamCancellation();
+            List<String> content = Collections.synchronizedList(new ArrayList<>());
+
+            String answer = llmService.chatWithToolsStreamAsync("系统", "图书馆几点开门", null, List.of(searchTool()),
+                    cancellingExecutor(cancellation), content::add, cancellation).get(5, TimeUnit.SECONDS);
+
+            assertThat(answer).isEqualTo("我查一下。");
+            assertThat(content).containsExactly("我查一下。");
+            assertThat(requests).hasSize(1);
+        }
+
+        @Test
+        @DisplayName("未取消时执行工具后继续生成")
+        void toolLoopShouldContinueWithoutCancel() {
+            responses.addAll(List.of(STREAM_TOOL_CALL, STREAM_ANSWER));
+
+            String answer = llmService.chatWithToolsStream("系统", "图书馆几点开门", null, List.of(searchTool()),
+                    (name, args) -> "8:00-22:00", chunk -> { }, StreamCancellation.none());
+
+            assertThat(answer).isEqualTo("我查一下。图书馆8点开门");
+            assertThat(requests).hasSize(2);
+        }
+
+        /**
+         * 执行工具时客户端断开
+         */
+        private ToolExecutor cancellingExecutor(StreamCancellation cancellation) {
+            return (name, args) -> {
+                cancellation.cancel();
+                return "8:00-22:00";
+            };
+        }
+    }
+
+    private static ToolSpecification searchTool() {
+        Map<String, Map<String, Object>> properties = new LinkedHashMap<>();
+        properties.put("query", Map.of("type", "string", "description", "问题"));
+        properties.put("category", Map.of("type", "string", "description", "分类"));
+        return ToolSpecification.builder()
+                .name("searchKnowledge")
+                .description("检索知识库")
+                .parameters(ToolParameters.builder().properties(properties).required(List.of("query")).build())
+                .build();
+    }
+}
@@ -451,7 +451,7 @@ class KnowledgeServiceImplTest {
             knowledgeService.deleteDocument(1L);
 
             // Assert
-            verify(milvusService).deleteByDocId(1L);
+            verify(milvusService).deleteByDocId(1L, "技术文档");
             verify(knowledgeChunkMapper).deleteByDocId(1L);
             verify(knowledgeDocMapper).deleteById(1L);
             assertThat(Files.exists(testFile)).isFalse(); // 物理文件应被删除
@@ -482,7 +482,7 @@ class KnowledgeServiceImplTest {
             KnowledgeDoc doc = createTestDoc();
             doc.setFilePath(testFile.toString());
             when(knowledgeDocMapper.selectById(1L)).thenReturn(doc);
-            doThrow(new RuntimeException("Milvus error")).when(milvusService).deleteByDocId(1L);
+            doThrow(new RuntimeException("Milvus error")).when(milvusService).deleteByDocId(1L, "技术文档");
 
             // Act - 不应该抛出异常
             knowledgeService.deleteDocument(1L);
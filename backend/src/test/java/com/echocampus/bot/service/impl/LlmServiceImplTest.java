@@ -0,0 +1,162 @@
+package com.echocampus.bot.service.impl;
+
+import com.echocampus.bot.config.AiServiceConfig;
+import com.echocampus.bot.service.stream.StreamCancellation;
+import com.echocampus.bot.service.transport.AiHttpTransport;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * LlmServiceImpl 流式问答测试
+ * 使用本地 HttpServer 模拟逐片段缓慢输出的流式接口，验证取消时上游连接被关闭、不再读取后续内容
+ */
+@DisplayName("LlmServiceImpl - 流式问答取消测试")
+class LlmServiceImplTest {
+
+    private static final int TOKENS = 200;
+    private static final long TOKEN_INTERVAL_MS = 20;
+
+    private final List<String> chunks = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicInteger written = new AtomicInteger();
+    private final CountDownLatch clientClosed = new CountDownLatch(1);
+    private final CountDownLatch firstChunk = new CountDownLatch(1);
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private AiHttpTransport transport;
+    private LlmServiceImpl llmService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v1/chat/completions", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream os = exchange.getResponseBody()) {
+                for (int i = 0; i < TOKENS; i++) {
+                    os.write(("data: {\"choices\":[{\"delta\":{\"content\":\"片段" + i + "\"}}]}\n\n")
+                            .getBytes(StandardCharsets.UTF_8));
+                    os.flush();
+                    written.incrementAndGet();
+                    Thread.sleep(TOKEN_INTERVAL_MS);
+                }
+                os.write("data: [DONE]\n\n".getBytes(StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                // 客户端关闭了连接
+                clientClosed.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+        server.start();
+
+        AiServiceConfig aiConfig = new AiServiceConfig();
+        aiConfig.getLlm().setApiUrl("http://127.0.0.1:" + server.getAddress().getPort() + "/v1/chat/completions");
+        aiConfig.getLlm().setApiKey("test");
+        aiConfig.getLlm().setTimeout(10);
+        transport = new AiHttpTransport(aiConfig);
+        llmService = new LlmServiceImpl(aiConfig, transport);
+    }
+
+    @AfterEach
+    void tearDown() {
+        transport.destroy();
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Nested
+    @DisplayName("取消测试")
+    class CancellationTests {
+
+        @Test
+        @DisplayName("阻塞流式：取消后中止请求并关闭上游连接，已收到的内容保留且不追加错误提示")
+        void blockingStreamShouldCloseUpstreamOnCancel() throws Exception {
+            StreamCancellation cancellation = new StreamCancellation();
+            CompletableFuture<Void> result = CompletableFuture.runAsync(() ->
+                    llmService.ragAnswerStream("图书馆几点开门？", "", List.of(), collector(), cancellation));
+
+            assertThat(firstChunk.await(5, TimeUnit.SECONDS)).isTrue();
+            cancellation.cancel();
+            result.get(5, TimeUnit.SECONDS);
+
+            assertUpstreamClosed();
+        }
+
+        @Test
+        @DisplayName("非阻塞流式：取消后结果正常完成并关闭上游连接，已收到的内容保留且不追加错误提示")
+        void nonBlockingStreamShouldCloseUpstreamOnCancel() throws Exception {
+            StreamCancellation cancellation = new StreamCancellation();
+            CompletableFuture<Void> result = llmService.ragAnswerStreamAsync("图书馆几点开门？", "", List.of(),
+                    collector(), cancellation);
+
+            assertThat(firstChunk.await(5, TimeUnit.SECONDS)).isTrue();
+            cancellation.cancel();
+            result.get(5, TimeUnit.SECONDS);
+
+            assertUpstreamClosed();
+        }
+
+        @Test
+        @DisplayName("已取消时不发出请求")
+        void cancelledBeforeStartShouldNotSendRequest() throws Exception {
+            StreamCancellation cancellation = new StreamCancellation();
+            cancellation.cancel();
+
+            llmService.ragAnswerStream("图书馆几点开门？", "", List.of(), collector(), cancellation);
+            llmService.ragAnswerStreamAsync("图书馆几点开门？", "", List.of(), collector(), cancellation)
+                    .get(5, TimeUnit.SECONDS);
+
+            assertThat(written.get()).isZero();
+            assertThat(chunks).isEmpty();
+        }
+
+        @Test
+        @DisplayName("未取消时完整读取全部内容")
+        void uncancelledStreamShouldReadAllChunks() throws Exception {
+            llmService.ragAnswerStreamAsync("图书馆几点开门？", "", List.of(), collector(), StreamCancellation.none())
+                    .get(30, TimeUnit.SECONDS);
+
+            assertThat(chunks).hasSize(TOKENS).endsWith("片段" + (TOKENS - 1));
+        }
+    }
+
+    private Consumer<String> collector() {
+        return chunk -> {
+            chunks.add(chunk);
+            firstChunk.countDown();
+        };
+    }
+
+    private void assertUpstreamClosed() throws InterruptedException {
+        assertThat(clientClosed.await(5, TimeUnit.SECONDS)).as("上游连接应被关闭").isTrue();
+        assertThat(written.get()).isLessThan(TOKENS);
+        assertThat(chunks).isNotEmpty().allMatch(chunk -> chunk.startsWith("片段"));
+        int received = chunks.size();
+        Thread.sleep(TOKEN_INTERVAL_MS * 5);
+        assertThat(chunks).hasSize(received);
+    }
+}
@@ -0,0 +1,305 @@
+package com.echocampus.bot.service.impl;
+
+import com.echocampus.bot.config.MilvusConfig;
+import com.echocampus.bot.entity.KnowledgeChunk;
+import com.echocampus.bot.entity.KnowledgeDoc;
+import com.echocampus.bot.mapper.KnowledgeChunkMapper;
+import com.echocampus.bot.mapper.KnowledgeDocMapper;
+import com.echocampus.bot.service.EmbeddingService;
+import com.echocampus.bot.service.MilvusService.SearchFilter;
+import com.echocampus.bot.service.MilvusService.SearchResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * LocalVectorService 单元测试
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+@DisplayName("LocalVectorService - 进程内向量索引测试")
+class LocalVectorServiceTest {
+
+    private static final int DIMENSION = 4;
+
+    @TempDir
+    Path tempDir;
+
+    @Mock
+    private EmbeddingService embeddingService;
+
+    @Mock
+    private KnowledgeChunkMapper knowledgeChunkMapper;
+
+    @Mock
+    private KnowledgeDocMapper knowledgeDocMapper;
+
+    private final List<KnowledgeChunk> dbChunks = new ArrayList<>();
+    private volatile int dimension = DIMENSION;
+    private LocalVectorService service;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        when(embeddingService.getDimension()).thenAnswer(invocation -> dimension);
+        when(embeddingService.embedBatch(anyList())).thenAnswer(invocation -> {
+            List<String> texts = invocation.getArgument(0);
+            return texts.stream().map(t -> {
+                float[] vector = new float[dimension];
+                vector[0] = 1f;
+                vector[1] = 0.1f;
+                return vector;
+            }).toList();
+        });
+        when(knowledgeChunkMapper.selectIndexSources()).thenAnswer(invocation -> new ArrayList<>(dbChunks));
+        when(knowledgeDocMapper.selectList(any())).thenReturn(List.of(doc(10L), doc(20L)));
+        service = start("standalone");
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.destroy();
+    }
+
+    @Nested
+    @DisplayName("读写测试")
+    class ReadWriteTests {
+
+        @Test
+        @DisplayName("写入后应能检索到最相似的切块")
+        void shouldSearchInsertedVectors() {
+            insert(1L, 10L, new float[]{1f, 0f, 0f, 0f});
+            insert(2L, 10L, new float[]{0f, 1f, 0f, 0f});
+            insert(3L, 20L, new float[]{0.9f, 0.1f, 0f, 0f});
+
+            List<SearchResult> results = service.search(new float[]{2f, 0f, 0f, 0f}, 2, 0.5f);
+
+            assertThat(results).extracting(SearchResult::getChunkId).containsExactly(1L, 3L);
+            assertThat(results.get(0).getDocId()).isEqualTo(10L);
+            assertThat(results.get(0).getScore()).isCloseTo(1f, within(1e-5f));
+            assertThat(results.get(0).getCategory()).isEqualTo("library");
+        }
+
+        @Test
+        @DisplayName("低于阈值的结果应被过滤")
+        void shouldApplyThreshold() {
+            insert(1L, 10L, new float[]{1f, 0f, 0f, 0f});
+            insert(2L, 10L, new float[]{-1f, 0f, 0f, 0f});
+
+            List<SearchResult> results = service.search(new float[]{1f, 0f, 0f, 0f}, 5, 0.6f);
+
+            assertThat(results).extracting(SearchResult::getChunkId).containsExactly(1L);
+        }
+
+        @Test
+        @DisplayName("按文档删除后不应再检索到")
+        void deleteByDocIdShouldRemoveVectors() {
+            insert(1L, 10L, new float[]{1f, 0f, 0f, 0f});
+            insert(2L, 20L, new float[]{0.9f, 0.1f, 0f, 0f});
+
+            service.deleteByDocId(10L);
+
+            assertThat(service.search(new float[]{1f, 0f, 0f, 0f}, 5, 0f))
+                    .extracting(SearchResult::getChunkId).containsExactly(2L);
+            assertThat(service.getVectorCount()).isEqualTo(1);
+        }
+
+        @Test
+        @DisplayName("应能按向量ID读取向量")
+        void shouldReturnVectorsById() {
+            List<String> ids = insert(1L, 10L, new float[]{3f, 0f, 4f, 0f});
+
+            assertThat(service.getVectors(ids).get(ids.get(0))).containsExactly(0.6f, 0f, 0.8f, 0f);
+        }
+    }
+
+    @Nested
+    @DisplayName("过滤检索测试")
+    class FilteredSearchTests {
+
+        @Test
+        @DisplayName("按分类过滤时只返回该分类的切块，即使其他分类更相似")
+        void shouldRestrictToCategory() {
+            // 走图检索多取候选再过滤的路径
+            ReflectionTestUtils.setField(service, "filterExactMax", 0);
+            insert(1L, 10L, "library", new float[]{1f, 0f, 0f, 0f});
+            insert(2L, 20L, "course", new float[]{0.6f, 0.8f, 0f, 0f});
+            insert(3L, 20L, "course", new float[]{0f, 1f, 0f, 0f});
+
+            List<SearchResult> results = service.search(new float[]{1f, 0f, 0f, 0f}, 5, 0f,
+                    SearchFilter.byCategory("course"));
+
+            assertThat(results).extracting(SearchResult::getChunkId).containsExactly(2L, 3L);
+            assertThat(results).allSatisfy(r -> assertThat(r.getCategory()).isEqualTo("course"));
+        }
+
+        @Test
+        @DisplayName("满足条件的切块很少时应精确检索，不受图检索候选范围影响")
+        void selectiveFilterShouldFallBackToExactScan() {
+            for (long id = 1; id <= 40; id++) {
+                insert(id, 10L, "library", new float[]{1f, id / 100f, 0f, 0f});
+            }
+            insert(99L, 30L, "sports", new float[]{0f, 0f, 1f, 0f});
+
+            List<SearchResult> results = service.search(new float[]{1f, 0f, 0f, 0f}, 2, 0f,
+                    new SearchFilter(Set.of(), Set.of(30L)));
+
+            assertThat(results).extracting(SearchResult::getChunkId).containsExactly(99L);
+        }
+
+        @Test
+        @DisplayName("没有切块满足条件时应直接返回空结果，删除后计数同步更新")
+        void unmatchedFilterShouldReturnEmpty() {
+            insert(1L, 10L, "library", new float[]{1f, 0f, 0f, 0f});
+            insert(2L, 20L, "course", new float[]{0.9f, 0.1f, 0f, 0f});
+            service.deleteByDocId(20L, "course");
+
+            assertThat(service.search(new float[]{1f, 0f, 0f, 0f}, 5, 0f, SearchFilter.byCategory("sports"))).isEmpty();
+            assertThat(service.search(new float[]{1f, 0f, 0f, 0f}, 5, 0f, SearchFilter.byCategory("course"))).isEmpty();
+            assertThat(service.search(new float[]{1f, 0f, 0f, 0f}, 5, 0f, SearchFilter.byCategory("library")))
+                    .extracting(SearchResult::getChunkId).containsExactly(1L);
+        }
+
+        @Test
+        @DisplayName("不带过滤条件时与原检索结果一致")
+        void emptyFilterShouldSearchAll() {
+            insert(1L, 10L, "library", new float[]{1f, 0f, 0f, 0f});
+            insert(2L, 20L, "course", new float[]{0.9f, 0.1f, 0f, 0f});
+
+            assertThat(service.search(new float[]{1f, 0f, 0f, 0f}, 5, 0f, SearchFilter.NONE))
+                    .extracting(SearchResult::getChunkId).containsExactly(1L, 2L);
+        }
+    }
+
+    @Nested
+    @DisplayName("重启与比对测试")
+    class RestartTests {
+
+        @Test
+        @DisplayName("重启后应从文件恢复向量，无需重新向量化")
+        void shouldRestoreFromFile() throws Exception {
+            insert(1L, 10L, new float[]{1f, 0f, 0f, 0f});
+            insert(2L, 10L, new float[]{0f, 1f, 0f, 0f});
+            service.destroy();
+
+            service = start("standalone");
+
+            verify(embeddingService, never()).embedBatch(anyList());
+            assertThat(service.search(new float[]{0f, 1f, 0f, 0f}, 1, 0f))
+                    .extracting(SearchResult::getChunkId).containsExactly(2L);
+        }
+
+        @Test
+        @DisplayName("重启时应删除数据库中已不存在的切块并补齐缺失的切块")
+        void shouldReconcileWithDatabase() throws Exception {
+            insert(1L, 10L, new float[]{1f, 0f, 0f, 0f});
+            insert(2L, 10L, new float[]{0f, 1f, 0f, 0f});
+            service.destroy();
+            dbChunks.removeIf(c -> c.getId() == 1L);
+            dbChunks.add(chunk(3L, 10L, "新增切块"));
+
+            service = start("standalone");
+
+            verify(embeddingService, times(1)).embedBatch(anyList());
+            assertThat(service.getVectorCount()).isEqualTo(2);
+            assertThat(service.search(new float[]{1f, 0f, 0f, 0f}, 5, 0f))
+                    .extracting(SearchResult::getChunkId).containsExactlyInAnyOrder(2L, 3L);
+        }
+
+        @Test
+        @DisplayName("重置后应丢弃旧向量，按新维度重新补齐")
+        void resetShouldRebuildWithNewDimension() throws Exception {
+            insert(1L, 10L, new float[]{1f, 0f, 0f, 0f});
+            insert(2L, 10L, new float[]{0f, 1f, 0f, 0f});
+            dimension = 3;
+
+            service.reset(3);
+            awaitAvailable(service);
+
+            verify(embeddingService, times(1)).embedBatch(anyList());
+            assertThat(service.getVectorCount()).isEqualTo(2);
+            assertThat(service.search(new float[]{1f, 0f, 0f}, 5, 0f))
+                    .extracting(SearchResult::getChunkId).containsExactlyInAnyOrder(1L, 2L);
+        }
+
+        @Test
+        @DisplayName("未启用时不可用且不写入")
+        void offModeShouldBeUnavailable() throws Exception {
+            service.destroy();
+            service = start("off");
+
+            assertThat(service.isAvailable()).isFalse();
+            assertThat(service.insertVectors(List.of(new float[]{1f, 0f, 0f, 0f}), List.of(1L), List.of(10L),
+                    List.of("内容"), List.of("library"), List.of(1), List.of("图书馆指南"))).isEmpty();
+        }
+    }
+
+    private List<String> insert(Long chunkId, Long docId, float[] vector) {
+        return insert(chunkId, docId, "library", vector);
+    }
+
+    private List<String> insert(Long chunkId, Long docId, String category, float[] vector) {
+        dbChunks.add(chunk(chunkId, docId, "切块" + chunkId));
+        return service.insertVectors(List.of(vector), List.of(chunkId), List.of(docId),
+                List.of("切块" + chunkId), List.of(category), List.of(1), List.of("图书馆指南"));
+    }
+
+    private static KnowledgeChunk chunk(Long id, Long docId, String content) {
+        KnowledgeChunk chunk = new KnowledgeChunk();
+        chunk.setId(id);
+        chunk.setDocId(docId);
+        chunk.setContent(content);
+        return chunk;
+    }
+
+    private static KnowledgeDoc doc(Long id) {
+        KnowledgeDoc doc = new KnowledgeDoc();
+        doc.setId(id);
+        doc.setCategory("library");
+        return doc;
+    }
+
+    private LocalVectorService start(String mode) throws InterruptedException {
+        MilvusConfig config = new MilvusConfig();
+        config.setDimension(DIMENSION);
+        LocalVectorService local = new LocalVectorService(config, new MilvusServiceImpl(config),
+                embeddingService, knowledgeChunkMapper, knowledgeDocMapper);
+        ReflectionTestUtils.setField(local, "modeName", mode);
+        ReflectionTestUtils.setField(local, "filePath", tempDir.resolve("knowledge.vec").toString());
+        ReflectionTestUtils.setField(local, "hnswM", 8);
+        ReflectionTestUtils.setField(local, "efConstruction", 32);
+        ReflectionTestUtils.setField(local, "efSearch", 32);
+        ReflectionTestUtils.setField(local, "rebuildBatchSize", 16);
+        ReflectionTestUtils.setField(local, "filterExactMax", 2048);
+        local.init();
+        if (!"off".equals(mode)) {
+            awaitAvailable(local);
+        }
+        return local;
+    }
+
+    private static void awaitAvailable(LocalVectorService local) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!local.isAvailable() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(local.isAvailable()).isTrue();
+    }
+}
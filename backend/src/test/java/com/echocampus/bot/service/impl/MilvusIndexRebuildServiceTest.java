@@ -0,0 +1,475 @@
+package com.echocampus.bot.service.impl;
+
+import com.echocampus.bot.common.exception.BusinessException;
+import com.echocampus.bot.config.AiServiceConfig;
+import com.echocampus.bot.config.MilvusConfig;
+import com.echocampus.bot.entity.KnowledgeChunk;
+import com.echocampus.bot.entity.KnowledgeDoc;
+import com.echocampus.bot.entity.SystemConfig;
+import com.echocampus.bot.mapper.KnowledgeChunkMapper;
+import com.echocampus.bot.mapper.KnowledgeDocMapper;
+import com.echocampus.bot.mapper.SystemConfigMapper;
+import com.echocampus.bot.service.EmbeddingService;
+import com.echocampus.bot.service.retrieval.KnowledgeDocCache;
+import com.echocampus.bot.vector.MilvusIndexProfile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.Serializable;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * MilvusIndexRebuildService 单元测试
+ * 使用内存中的新集合替代Milvus，Embedding服务为记录调用的手写桩
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+@DisplayName("MilvusIndexRebuildService - 集合在线重建测试")
+class MilvusIndexRebuildServiceTest {
+
+    private static final int DIMENSION = 4;
+    private static final MilvusIndexProfile PROFILE =
+            new MilvusIndexProfile("HNSW", "COSINE", 128, 10, 16, 8, 16, 200, 64, 100);
+
+    @Mock
+    private KnowledgeChunkMapper knowledgeChunkMapper;
+
+    @Mock
+    private KnowledgeDocMapper knowledgeDocMapper;
+
+    @Mock
+    private SystemConfigMapper systemConfigMapper;
+
+    private final List<KnowledgeChunk> chunks = new ArrayList<>();
+    private final Map<String, SystemConfig> systemConfigs = new ConcurrentHashMap<>();
+    private final AtomicLong nextConfigId = new AtomicLong(100);
+    private final List<KnowledgeChunk> vectorIdUpdates = Collections.synchronizedList(new ArrayList<>());
+    private final MilvusConfig milvusConfig = new MilvusConfig();
+    private final AiServiceConfig aiConfig = new AiServiceConfig();
+    private FakeMilvus milvus;
+    private CountingEmbeddingService embeddingService;
+    private MilvusIndexRebuildService service;
+
+    @BeforeEach
+    void setUp() {
+        milvusConfig.setCollectionName("kb");
+        milvusConfig.setRebuildBatchSize(2);
+        milvusConfig.setRebuildEmbedConcurrency(2);
+        aiConfig.getEmbedding().setDimension(DIMENSION);
+        milvus = new FakeMilvus(milvusConfig);
+        embeddingService = new CountingEmbeddingService();
+        for (long id = 1; id <= 5; id++) {
+            KnowledgeChunk chunk = new KnowledgeChunk();
+            chunk.setId(id);
+            chunk.setDocId(id <= 3 ? 10L : 20L);
+            chunk.setContent("切块" + id);
+            chunk.setVectorId(id == 4 ? null : "v" + id);
+            chunk.setPageNumber((int) id);
+            chunks.add(chunk);
+        }
+        Map<Long, KnowledgeDoc> docs = Map.of(10L, doc(10L, "教务", "学籍手册"), 20L, doc(20L, null, "选课指南"));
+
+        when(knowledgeChunkMapper.selectIndexSourcesAfter(anyLong(), anyInt())).thenAnswer(invocation -> {
+            long afterId = invocation.getArgument(0);
+            int limit = invocation.getArgument(1);
+            return chunks.stream().filter(c -> c.getId() > afterId).limit(limit).toList();
+        });
+        when(knowledgeChunkMapper.selectCount(any())).thenAnswer(invocation -> (long) chunks.size());
+        when(knowledgeChunkMapper.updateVectorIds(anyList())).thenAnswer(invocation -> {
+            List<KnowledgeChunk> updated = invocation.getArgument(0);
+            vectorIdUpdates.addAll(updated);
+            return updated.size();
+        });
+        when(knowledgeDocMapper.selectBatchIds(anyCollection())).thenAnswer(invocation -> {
+            Collection<Long> ids = invocation.getArgument(0);
+            return ids.stream().map(docs::get).filter(Objects::nonNull).toList();
+        });
+        when(systemConfigMapper.selectByKey(anyString()))
+                .thenAnswer(invocation -> systemConfigs.get(invocation.<String>getArgument(0)));
+        when(systemConfigMapper.insert(any(SystemConfig.class))).thenAnswer(invocation -> {
+            SystemConfig config = invocation.getArgument(0);
+            config.setId(nextConfigId.incrementAndGet());
+            systemConfigs.put(config.getConfigKey(), config);
+            return 1;
+        });
+        doAnswer(invocation -> {
+            systemConfigs.get(invocation.<String>getArgument(0)).setConfigValue(invocation.getArgument(1));
+            return null;
+        }).when(systemConfigMapper).updateValueByKey(anyString(), anyString());
+        when(systemConfigMapper.deleteById(any(Serializable.class))).thenAnswer(invocation -> {
+            Object id = invocation.getArgument(0);
+            systemConfigs.values().removeIf(c -> c.getId().equals(id));
+            return 1;
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (service != null) {
+            service.destroy();
+        }
+    }
+
+    @Nested
+    @DisplayName("重新向量化测试")
+    class ReembedTests {
+
+        @Test
+        @DisplayName("应向量化全部切块、为缺少向量ID的切块回写ID，并在完成后切换集合、删除重建记录")
+        void shouldReembedAllChunks() throws Exception {
+            service = start();
+
+            service.start(PROFILE, true);
+            awaitFinished();
+
+            assertThat(state()).isEqualTo("COMPLETED");
+            assertThat(milvus.completed).containsExactly("kb_v1");
+            assertThat(milvus.target.values()).containsExactlyInAnyOrder(1L, 2L, 3L, 4L, 5L);
+            assertThat(milvus.upserted.get("v1").category()).isEqualTo("教务");
+            assertThat(milvus.upserted.get("v5").title()).isEqualTo("选课指南");
+            assertThat(vectorIdUpdates).singleElement().satisfies(c -> {
+                assertThat(c.getId()).isEqualTo(4L);
+                assertThat(milvus.target).containsKey(c.getVectorId());
+            });
+            assertThat(embeddingService.texts).hasSize(5);
+            assertThat(embeddingService.maxConcurrent.get()).isLessThanOrEqualTo(2);
+            assertThat(systemConfigs).doesNotContainKey(MilvusIndexRebuildService.CHECKPOINT_KEY);
+        }
+
+        @Test
+        @DisplayName("重启后应沿用记录的新集合，只向量化缺失的切块并删除数据库中已不存在的向量")
+        void shouldResumeFromCheckpoint() throws Exception {
+            SystemConfig checkpoint = new SystemConfig();
+            checkpoint.setId(1L);
+            checkpoint.setConfigKey(MilvusIndexRebuildService.CHECKPOINT_KEY);
+            checkpoint.setConfigValue("{\"collection\":\"kb_v3\",\"model\":\"text-embedding-v3\",\"dimension\":4,"
+                    + "\"profile\":{\"indexType\":\"HNSW\",\"metricType\":\"COSINE\",\"nlist\":128,\"nprobe\":10,"
+                    + "\"pqM\":16,\"pqNbits\":8,\"hnswM\":16,\"efConstruction\":200,\"ef\":64,\"searchList\":100}}");
+            systemConfigs.put(checkpoint.getConfigKey(), checkpoint);
+            milvus.existing.add("kb_v3");
+            milvus.target.put("v1", 1L);
+            milvus.target.put("v2", 2L);
+            milvus.target.put("gone", 3L);
+            milvus.target.put("tail", 99L);
+
+            // 启动时自动继续
+            service = start();
+            awaitFinished();
+
+            assertThat(state()).isEqualTo("COMPLETED");
+            assertThat(milvus.completed).containsExactly("kb_v3");
+            assertThat(milvus.began).isZero();
+            assertThat(embeddingService.texts).containsExactlyInAnyOrder("切块3", "切块4", "切块5");
+            assertThat(milvus.target).doesNotContainKeys("gone", "tail");
+            assertThat(milvus.target.values()).containsExactlyInAnyOrder(1L, 2L, 3L, 4L, 5L);
+            assertThat(systemConfigs).doesNotContainKey(MilvusIndexRebuildService.CHECKPOINT_KEY);
+        }
+
+        @Test
+        @DisplayName("向量化失败时应保留新集合和重建记录，以便继续")
+        void shouldKeepCheckpointOnFailure() throws Exception {
+            embeddingService.failOn = "切块3";
+            service = start();
+
+            service.start(PROFILE, true);
+            awaitFinished();
+
+            assertThat(state()).isEqualTo("FAILED");
+            assertThat(milvus.completed).isEmpty();
+            assertThat(milvus.aborted).isEmpty();
+            assertThat(milvus.suspended).isTrue();
+            assertThat(systemConfigs).containsKey(MilvusIndexRebuildService.CHECKPOINT_KEY);
+        }
+
+        @Test
+        @DisplayName("更换模型时切换前应继续使用旧模型，新集合和重建期间的写入用新模型向量化，切换时启用新模型")
+        void shouldKeepServingModelUntilSwitch() throws Exception {
+            SystemConfig recorded = new SystemConfig();
+            recorded.setId(1L);
+            recorded.setConfigKey(MilvusIndexRebuildService.COLLECTION_MODEL_KEY);
+            recorded.setConfigValue("{\"name\":\"text-embedding-v2\",\"dimension\":4}");
+            systemConfigs.put(recorded.getConfigKey(), recorded);
+            milvus.pendingContents = List.of("重建期间新增的切块");
+            AtomicReference<EmbeddingService.EmbeddingModel> beforeSwitch = new AtomicReference<>();
+            milvus.beforeSwitch = () -> beforeSwitch.set(embeddingService.getModel());
+            service = start();
+
+            assertThat(embeddingService.getModel().name()).isEqualTo("text-embedding-v2");
+            service.start(PROFILE, true);
+            awaitFinished();
+
+            assertThat(state()).isEqualTo("COMPLETED");
+            assertThat(beforeSwitch.get().name()).isEqualTo("text-embedding-v2");
+            assertThat(embeddingService.models).containsOnly("text-embedding-v3");
+            assertThat(embeddingService.texts).contains("重建期间新增的切块");
+            assertThat(milvus.replayed).hasSize(1);
+            assertThat(embeddingService.getModel().name()).isEqualTo("text-embedding-v3");
+            assertThat(systemConfigs.get(MilvusIndexRebuildService.COLLECTION_MODEL_KEY).getConfigValue())
+                    .contains("text-embedding-v3");
+        }
+    }
+
+    @Test
+    @DisplayName("启动时集合维度与当前模型不一致应自动重新向量化")
+    void dimensionChangeShouldStartReembed() throws Exception {
+        milvus.dimension = 8;
+        service = start();
+        awaitFinished();
+
+        assertThat(state()).isEqualTo("COMPLETED");
+        assertThat(milvus.began).isEqualTo(1);
+        assertThat(embeddingService.texts).hasSize(5);
+    }
+
+    @Test
+    @DisplayName("向量维度变更时不应允许只复制向量")
+    void copyShouldRequireSameDimension() {
+        milvus.dimension = 8;
+        milvusConfig.setAutoRebuildOnDimensionChange(false);
+        service = start();
+
+        assertThatThrownBy(() -> service.start(PROFILE, false))
+                .isInstanceOf(BusinessException.class)
+                .hasMessageContaining("重新向量化");
+        assertThat(milvus.began).isZero();
+    }
+
+    private MilvusIndexRebuildService start() {
+        KnowledgeDocCache docCache = new KnowledgeDocCache(knowledgeDocMapper);
+        ReflectionTestUtils.setField(docCache, "maxEntries", 100);
+        ReflectionTestUtils.setField(docCache, "ttlSeconds", 60L);
+        docCache.init();
+        LocalVectorService localVectorService = new LocalVectorService(milvusConfig, milvus, embeddingService, null, null);
+        MilvusIndexRebuildService rebuildService = new MilvusIndexRebuildService(milvus, localVectorService,
+                knowledgeChunkMapper, docCache, systemConfigMapper, embeddingService, milvusConfig, aiConfig);
+        rebuildService.init();
+        return rebuildService;
+    }
+
+    private void awaitFinished() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        do {
+            Thread.sleep(20);
+        } while (!"COMPLETED".equals(state()) && !"FAILED".equals(state())
+                && System.currentTimeMillis() < deadline);
+    }
+
+    @SuppressWarnings("unchecked")
+    private String state() {
+        return (String) ((Map<String, Object>) service.getStatus().get("rebuild")).get("state");
+    }
+
+    private static KnowledgeDoc doc(Long id, String category, String title) {
+        KnowledgeDoc doc = new KnowledgeDoc();
+        doc.setId(id);
+        doc.setCategory(category);
+        doc.setTitle(title);
+        return doc;
+    }
+
+    /**
+     * 内存中的Milvus：只记录新集合的向量ID → 切块ID 及写入的载荷
+     */
+    private static class FakeMilvus extends MilvusServiceImpl {
+        final Map<String, Long> target = new ConcurrentHashMap<>();
+        final Map<String, Payload> upserted = new ConcurrentHashMap<>();
+        final Set<String> existing = ConcurrentHashMap.newKeySet();
+        final List<String> completed = Collections.synchronizedList(new ArrayList<>());
+        final List<String> aborted = Collections.synchronizedList(new ArrayList<>());
+        volatile int dimension = DIMENSION;
+        volatile int began;
+        volatile boolean suspended;
+        volatile List<String> pendingContents = List.of();
+        volatile List<float[]> replayed = List.of();
+        volatile Runnable beforeSwitch = () -> {};
+
+        FakeMilvus(MilvusConfig config) {
+            super(config);
+        }
+
+        @Override
+        public boolean isConnected() {
+            return true;
+        }
+
+        @Override
+        public int getCollectionDimension() {
+            return dimension;
+        }
+
+        @Override
+        public MilvusIndexProfile getIndexProfile() {
+            return PROFILE;
+        }
+
+        @Override
+        public Map<String, Object> getIndexStatus() {
+            return new LinkedHashMap<>();
+        }
+
+        @Override
+        public String beginRebuild(MilvusIndexProfile profile, int dimension) {
+            began++;
+            existing.add("kb_v1");
+            return "kb_v1";
+        }
+
+        @Override
+        public boolean resumeRebuild(String newCollection) {
+            return existing.contains(newCollection);
+        }
+
+        @Override
+        public Map<String, Long> vectorIdsInRange(String targetCollection, long fromChunkId, long toChunkId) {
+            Map<String, Long> ids = new HashMap<>();
+            target.forEach((id, chunkId) -> {
+                if (chunkId >= fromChunkId && chunkId <= toChunkId) {
+                    ids.put(id, chunkId);
+                }
+            });
+            return ids;
+        }
+
+        @Override
+        public void deleteVectors(String targetCollection, Collection<String> vectorIds) {
+            vectorIds.forEach(target::remove);
+        }
+
+        @Override
+        public void upsertVectors(String targetCollection, List<String> vectorIds, List<float[]> vectors,
+                                  List<Long> chunkIds, List<Long> docIds, List<String> contents,
+                                  List<String> categories, List<Integer> pageNumbers, List<String> titles) {
+            for (int i = 0; i < vectorIds.size(); i++) {
+                target.put(vectorIds.get(i), chunkIds.get(i));
+                upserted.put(vectorIds.get(i), new Payload(categories.get(i), titles.get(i)));
+            }
+        }
+
+        @Override
+        public void completeRebuild(String newCollection, MilvusIndexProfile profile, long timeout, TimeUnit unit,
+                                    Function<List<String>, List<float[]>> reembed, Runnable onSwitch) {
+            if (reembed != null && !pendingContents.isEmpty()) {
+                replayed = reembed.apply(pendingContents);
+            }
+            beforeSwitch.run();
+            if (onSwitch != null) {
+                onSwitch.run();
+            }
+            completed.add(newCollection);
+        }
+
+        @Override
+        public void suspendRebuild() {
+            suspended = true;
+        }
+
+        @Override
+        public void abortRebuild(String newCollection) {
+            aborted.add(newCollection);
+        }
+
+        record Payload(String category, String title) {}
+    }
+
+    /**
+     * 记录向量化的文本、使用的模型及同时进行的批次数
+     */
+    private static class CountingEmbeddingService implements EmbeddingService {
+        final List<String> texts = Collections.synchronizedList(new ArrayList<>());
+        final List<String> models = Collections.synchronizedList(new ArrayList<>());
+        volatile EmbeddingModel model = new EmbeddingModel("text-embedding-v3", DIMENSION);
+        final AtomicInteger concurrent = new AtomicInteger();
+        final AtomicInteger maxConcurrent = new AtomicInteger();
+        volatile String failOn;
+
+        @Override
+        public float[] embed(String text) {
+            return embedBatch(List.of(text)).get(0);
+        }
+
+        @Override
+        public List<float[]> embedBatch(List<String> batch) {
+            return embedWith(model, batch);
+        }
+
+        @Override
+        public EmbeddingModel getModel() {
+            return model;
+        }
+
+        @Override
+        public void activate(EmbeddingModel model) {
+            this.model = model;
+        }
+
+        @Override
+        public EmbeddingService forModel(EmbeddingModel target) {
+            return new EmbeddingService() {
+                @Override
+                public float[] embed(String text) {
+                    return embedWith(target, List.of(text)).get(0);
+                }
+
+                @Override
+                public List<float[]> embedBatch(List<String> batch) {
+                    return embedWith(target, batch);
+                }
+
+                @Override
+                public int getDimension() {
+                    return target.dimension();
+                }
+
+                @Override
+                public boolean isAvailable() {
+                    return true;
+                }
+            };
+        }
+
+        private List<float[]> embedWith(EmbeddingModel using, List<String> batch) {
+            models.add(using.name());
+            maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(20);
+                texts.addAll(batch);
+                // 与 EmbeddingServiceImpl 一致：失败时返回零向量
+                return batch.stream().map(t -> t.equals(failOn) ? new float[DIMENSION] : new float[]{1, 0, 0, 0}).toList();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            } finally {
+                concurrent.decrementAndGet();
+            }
+        }
+
+        @Override
+        public int getDimension() {
+            return model.dimension();
+        }
+
+        @Override
+        public boolean isAvailable() {
+            return true;
+        }
+    }
+}
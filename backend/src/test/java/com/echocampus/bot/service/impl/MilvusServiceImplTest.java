@@ -0,0 +1,167 @@
+package com.echocampus.bot.service.impl;
+
+import com.echocampus.bot.config.MilvusConfig;
+import com.echocampus.bot.service.MilvusService.SearchFilter;
+import com.echocampus.bot.vector.MilvusIndexProfile;
+import io.milvus.client.MilvusServiceClient;
+import io.milvus.param.R;
+import io.milvus.param.RpcStatus;
+import io.milvus.param.alias.AlterAliasParam;
+import io.milvus.param.alias.CreateAliasParam;
+import io.milvus.param.collection.DropCollectionParam;
+import io.milvus.param.collection.RenameCollectionParam;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * MilvusServiceImpl 单元测试（不连接Milvus，只验证请求构建和别名切换的调用顺序）
+ */
+@DisplayName("MilvusServiceImpl - Milvus向量服务测试")
+class MilvusServiceImplTest {
+
+    @Nested
+    @DisplayName("过滤表达式测试")
+    class FilterExpressionTests {
+
+        @Test
+        @DisplayName("分类和文档ID条件应以 && 连接，值按顺序排列")
+        void shouldCombineCategoryAndDocIds() {
+            SearchFilter filter = new SearchFilter(Set.of("教务", "课程"), Set.of(5L, 3L));
+
+            assertThat(MilvusServiceImpl.filterExpression(filter))
+                    .isEqualTo("category in [\"教务\",\"课程\"] && doc_id in [3, 5]");
+        }
+
+        @Test
+        @DisplayName("只有分类条件时不应包含文档ID条件")
+        void shouldBuildCategoryOnly() {
+            assertThat(MilvusServiceImpl.filterExpression(SearchFilter.byCategory("课程")))
+                    .isEqualTo("category in [\"课程\"]");
+        }
+
+        @Test
+        @DisplayName("分类中的引号和反斜杠应被转义")
+        void shouldEscapeQuotes() {
+            assertThat(MilvusServiceImpl.filterExpression(SearchFilter.byCategory("a\"] || doc_id > 0 || [\\")))
+                    .isEqualTo("category in [\"a\\\"] || doc_id > 0 || [\\\\\"]");
+        }
+
+        @Test
+        @DisplayName("按文档删除时只有集合带分区键才附加分类条件")
+        void docDeleteShouldUseCategoryOnlyWithPartitionKey() {
+            assertThat(MilvusServiceImpl.docDeleteExpression(7L, "课程", true))
+                    .isEqualTo("category == \"课程\" && doc_id == 7");
+            assertThat(MilvusServiceImpl.docDeleteExpression(7L, "课程", false)).isEqualTo("doc_id == 7");
+            assertThat(MilvusServiceImpl.docDeleteExpression(7L, null, true)).isEqualTo("doc_id == 7");
+        }
+    }
+
+    @Nested
+    @DisplayName("索引参数解析测试")
+    class IndexProfileTests {
+
+        private final MilvusIndexProfile configured =
+                new MilvusIndexProfile("IVF_FLAT", "COSINE", 1024, 10, 16, 8, 16, 200, 64, 100);
+
+        @Test
+        @DisplayName("已有集合的索引类型和建索引参数应以Milvus为准，检索参数沿用配置")
+        void shouldReadExistingIndex() {
+            MilvusIndexProfile profile = MilvusServiceImpl.indexProfileOf(configured, Map.of(
+                    "index_type", "HNSW", "metric_type", "IP", "params", "{\"M\":32,\"efConstruction\":400}"));
+
+            assertThat(profile.indexType()).isEqualTo("HNSW");
+            assertThat(profile.metricType()).isEqualTo("IP");
+            assertThat(profile.hnswM()).isEqualTo(32);
+            assertThat(profile.efConstruction()).isEqualTo(400);
+            assertThat(profile.ef()).isEqualTo(64);
+            assertThat(profile.nlist()).isEqualTo(1024);
+        }
+
+        @Test
+        @DisplayName("不支持的索引类型或无法解析的参数应沿用配置")
+        void shouldFallBackToConfig() {
+            assertThat(MilvusServiceImpl.indexProfileOf(configured, Map.of("index_type", "SCANN")))
+                    .isEqualTo(configured);
+            assertThat(MilvusServiceImpl.indexProfileOf(configured,
+                    Map.of("index_type", "IVF_PQ", "params", "not json")).nlist()).isEqualTo(1024);
+        }
+    }
+
+    @Nested
+    @DisplayName("别名切换测试")
+    class SwitchAliasTests {
+
+        private final MilvusServiceClient client = mock(MilvusServiceClient.class);
+        private final MilvusServiceImpl service = new MilvusServiceImpl(new MilvusConfig());
+
+        private void givenPhysicalCollection(String name) {
+            ReflectionTestUtils.setField(service, "milvusClient", client);
+            ReflectionTestUtils.setField(service, "physicalCollection", name);
+            when(client.renameCollection(any())).thenReturn(R.success(new RpcStatus(RpcStatus.SUCCESS_MSG)));
+            when(client.createAlias(any())).thenReturn(R.success(new RpcStatus(RpcStatus.SUCCESS_MSG)));
+            when(client.alterAlias(any())).thenReturn(R.success(new RpcStatus(RpcStatus.SUCCESS_MSG)));
+        }
+
+        @Test
+        @DisplayName("旧版集合应先改名为 _v0 再创建别名，不删除旧数据")
+        void legacyCollectionShouldBeRenamedNotDropped() {
+            givenPhysicalCollection("echocampus_knowledge");
+
+            String previous = ReflectionTestUtils.invokeMethod(service, "switchAlias", "echocampus_knowledge_v1");
+
+            assertThat(previous).isEqualTo("echocampus_knowledge_v0");
+            ArgumentCaptor<RenameCollectionParam> rename = ArgumentCaptor.forClass(RenameCollectionParam.class);
+            ArgumentCaptor<CreateAliasParam> alias = ArgumentCaptor.forClass(CreateAliasParam.class);
+            InOrder order = inOrder(client);
+            order.verify(client).renameCollection(rename.capture());
+            order.verify(client).createAlias(alias.capture());
+            assertThat(rename.getValue().getOldCollectionName()).isEqualTo("echocampus_knowledge");
+            assertThat(rename.getValue().getNewCollectionName()).isEqualTo("echocampus_knowledge_v0");
+            assertThat(alias.getValue().getAlias()).isEqualTo("echocampus_knowledge");
+            assertThat(alias.getValue().getCollectionName()).isEqualTo("echocampus_knowledge_v1");
+            verify(client, never()).dropCollection(any(DropCollectionParam.class));
+        }
+
+        @Test
+        @DisplayName("创建别名失败时旧集合改回原名并抛出异常")
+        void aliasFailureShouldRenameBack() {
+            givenPhysicalCollection("echocampus_knowledge");
+            when(client.createAlias(any())).thenReturn(R.failed(R.Status.UnexpectedError, "alias exists"));
+
+            assertThatThrownBy(() -> ReflectionTestUtils.invokeMethod(service, "switchAlias", "echocampus_knowledge_v1"))
+                    .isInstanceOf(IllegalStateException.class)
+                    .hasMessageContaining("alias exists");
+
+            ArgumentCaptor<RenameCollectionParam> rename = ArgumentCaptor.forClass(RenameCollectionParam.class);
+            verify(client, times(2)).renameCollection(rename.capture());
+            List<RenameCollectionParam> renames = rename.getAllValues();
+            assertThat(renames.get(1).getOldCollectionName()).isEqualTo("echocampus_knowledge_v0");
+            assertThat(renames.get(1).getNewCollectionName()).isEqualTo("echocampus_knowledge");
+            verify(client, never()).dropCollection(any(DropCollectionParam.class));
+        }
+
+        @Test
+        @DisplayName("已是别名时直接切换别名，返回切换前的版本集合")
+        void existingAliasShouldBeAltered() {
+            givenPhysicalCollection("echocampus_knowledge_v1");
+
+            String previous = ReflectionTestUtils.invokeMethod(service, "switchAlias", "echocampus_knowledge_v2");
+
+            assertThat(previous).isEqualTo("echocampus_knowledge_v1");
+            verify(client).alterAlias(any(AlterAliasParam.class));
+            verify(client, never()).renameCollection(any());
+        }
+    }
+}
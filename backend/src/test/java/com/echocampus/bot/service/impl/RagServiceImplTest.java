@@ -0,0 +1,303 @@
+package com.echocampus.bot.service.impl;
+
+import com.echocampus.bot.config.AiServiceConfig;
+import com.echocampus.bot.entity.KnowledgeChunk;
+import com.echocampus.bot.entity.KnowledgeDoc;
+import com.echocampus.bot.mapper.KnowledgeChunkMapper;
+import com.echocampus.bot.mapper.KnowledgeDocMapper;
+import com.echocampus.bot.service.EmbeddingService;
+import com.echocampus.bot.service.LlmService;
+import com.echocampus.bot.service.MilvusService;
+import com.echocampus.bot.service.RagService;
+import com.echocampus.bot.service.retrieval.ChunkHitResolver;
+import com.echocampus.bot.service.retrieval.ContextPacker;
+import com.echocampus.bot.service.retrieval.DocumentChunkIndex;
+import com.echocampus.bot.service.retrieval.KnowledgeDocCache;
+import com.echocampus.bot.service.retrieval.KnowledgeRetriever;
+import com.echocampus.bot.service.retrieval.NeighbourChunkExpander;
+import com.echocampus.bot.service.retrieval.RerankService;
+import com.echocampus.bot.service.retrieval.VectorRetrievalStrategy;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * RagServiceImpl 单元测试
+ * 验证传统RAG模式每个问题只做一次向量化和一次向量搜索
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+@DisplayName("RagServiceImpl - RAG检索服务测试")
+class RagServiceImplTest {
+
+    @Mock
+    private EmbeddingService embeddingService;
+
+    @Mock
+    private MilvusService milvusService;
+
+    @Mock
+    private LlmService llmService;
+
+    @Mock
+    private KnowledgeChunkMapper knowledgeChunkMapper;
+
+    @Mock
+    private KnowledgeDocMapper knowledgeDocMapper;
+
+    private RagServiceImpl ragService;
+
+    @BeforeEach
+    void setUp() {
+        List<KnowledgeChunk> chunks = List.of(
+                createChunk(11L, 1L, "图书馆开放时间为8:00-22:00"),
+                createChunk(12L, 1L, "借书证需要在一卡通中心办理"),
+                createChunk(13L, 2L, "自习室位于图书馆三楼"));
+        List<KnowledgeDoc> docs = List.of(createDoc(1L, "图书馆指南"), createDoc(2L, "教学楼指南"));
+
+        when(embeddingService.embed(anyString())).thenReturn(new float[]{0.1f, 0.2f, 0.3f});
+        givenSearchResults(List.of(
+                createSearchResult(12L, 1L, 0.72f),
+                createSearchResult(11L, 1L, 0.91f),
+                createSearchResult(13L, 2L, 0.65f)));
+        when(knowledgeChunkMapper.selectBatchIds(anyCollection()))
+                .thenAnswer(invocation -> matching(chunks, invocation.getArgument(0), KnowledgeChunk::getId));
+        when(knowledgeDocMapper.selectBatchIds(anyCollection()))
+                .thenAnswer(invocation -> matching(docs, invocation.getArgument(0), KnowledgeDoc::getId));
+        when(llmService.ragAnswer(anyString(), anyString(), anyList())).thenReturn("回答");
+        doAnswer(invocation -> {
+            Consumer<String> chunkConsumer = invocation.getArgument(3);
+            chunkConsumer.accept("回答");
+            return null;
+        }).when(llmService).ragAnswerStream(anyString(), anyString(), anyList(), any());
+
+        KnowledgeDocCache docCache = new KnowledgeDocCache(knowledgeDocMapper);
+        ReflectionTestUtils.setField(docCache, "maxEntries", 100);
+        ReflectionTestUtils.setField(docCache, "ttlSeconds", 60L);
+        docCache.init();
+        ChunkHitResolver resolver = new ChunkHitResolver(knowledgeChunkMapper, docCache);
+        ReflectionTestUtils.setField(resolver, "payloadHits", true);
+
+        VectorRetrievalStrategy vectorStrategy = new VectorRetrievalStrategy(embeddingService, milvusService);
+        ReflectionTestUtils.setField(vectorStrategy, "similarityThreshold", 0.6f);
+        RerankService rerankService = new RerankService(List.of(), new AiServiceConfig());
+        rerankService.init();
+        KnowledgeRetriever retriever = new KnowledgeRetriever(List.of(vectorStrategy), resolver, rerankService);
+        ReflectionTestUtils.setField(retriever, "strategyName", VectorRetrievalStrategy.NAME);
+        retriever.init();
+
+        ContextPacker contextPacker = new ContextPacker();
+        ReflectionTestUtils.setField(contextPacker, "maxTokens", 2000);
+        NeighbourChunkExpander expander = new NeighbourChunkExpander(
+                new DocumentChunkIndex(knowledgeChunkMapper), knowledgeChunkMapper);
+        ragService = new RagServiceImpl(llmService, retriever, contextPacker, expander);
+        ReflectionTestUtils.setField(ragService, "defaultTopK", 5);
+        ReflectionTestUtils.setField(ragService, "similarityThreshold", 0.6f);
+    }
+
+    @Nested
+    @DisplayName("检索调用次数测试")
+    class SingleRetrievalTests {
+
+        @Test
+        @DisplayName("answer 每个问题只向量化一次、搜索一次")
+        void answerShouldEmbedAndSearchOnce() {
+            RagService.RagResponse response = ragService.answer("图书馆几点开门", Collections.emptyList(), 1L, 1L);
+
+            verify(embeddingService, times(1)).embed(anyString());
+            verify(milvusService, times(1)).search(any(), anyInt(), anyFloat(), any(), any());
+            assertThat(response.sources()).hasSize(3);
+        }
+
+        @Test
+        @DisplayName("answerStream 每个问题只向量化一次、搜索一次")
+        void answerStreamShouldEmbedAndSearchOnce() {
+            List<List<RagService.SourceInfo>> sourceEvents = new ArrayList<>();
+
+            ragService.answerStream("图书馆几点开门", Collections.emptyList(), 1L, 1L,
+                    status -> {}, sourceEvents::add, chunk -> {});
+
+            verify(embeddingService, times(1)).embed(anyString());
+            verify(milvusService, times(1)).search(any(), anyInt(), anyFloat(), any(), any());
+            assertThat(sourceEvents).hasSize(1);
+        }
+    }
+
+    @Nested
+    @DisplayName("检索结果测试")
+    class RetrievalResultTests {
+
+        @Test
+        @DisplayName("来源分数应直接取自检索结果并按分数降序")
+        void sourcesShouldCarrySearchScores() {
+            RagService.RagResponse response = ragService.answer("图书馆几点开门", Collections.emptyList(), 1L, 1L);
+
+            assertThat(response.sources())
+                    .extracting(RagService.SourceInfo::chunkId)
+                    .containsExactly(11L, 12L, 13L);
+            assertThat(response.sources())
+                    .extracting(RagService.SourceInfo::score)
+                    .containsExactly(0.91f, 0.72f, 0.65f);
+            assertThat(response.sources().get(0).docTitle()).isEqualTo("图书馆指南");
+        }
+
+        @Test
+        @DisplayName("上下文应包含检索到的片段和文档标题")
+        void contextShouldBeBuiltFromRetrieval() {
+            ragService.answer("图书馆几点开门", Collections.emptyList(), 1L, 1L);
+
+            ArgumentCaptor<String> context = ArgumentCaptor.forClass(String.class);
+            verify(llmService).ragAnswer(anyString(), context.capture(), anyList());
+            assertThat(context.getValue())
+                    .contains("图书馆开放时间为8:00-22:00")
+                    .contains("【文档：图书馆指南");
+        }
+
+        @Test
+        @DisplayName("retrieve 应返回分数及检索元信息")
+        void retrieveShouldReturnScoresAndMetadata() {
+            RagService.RetrievalResult result = ragService.retrieve("图书馆几点开门", 5);
+
+            assertThat(result.chunks()).hasSize(3);
+            assertThat(result.scoreOf(12L)).isEqualTo(0.72f);
+            assertThat(result.docs()).containsKeys(1L, 2L);
+            assertThat(result.topK()).isEqualTo(5);
+            assertThat(result.threshold()).isEqualTo(0.6f);
+        }
+
+        @Test
+        @DisplayName("空问题不应调用向量化和搜索")
+        void blankQuestionShouldNotCallServices() {
+            RagService.RetrievalResult result = ragService.retrieve("  ", 5);
+
+            assertThat(result.isEmpty()).isTrue();
+            verify(embeddingService, never()).embed(anyString());
+            verify(milvusService, never()).search(any(), anyInt(), anyFloat(), any(), any());
+        }
+    }
+
+    @Nested
+    @DisplayName("免回查检索测试")
+    class PayloadHitTests {
+
+        @Test
+        @DisplayName("检索结果带完整载荷时不应查询知识片段表")
+        void payloadHitsShouldSkipChunkQuery() {
+            givenSearchResults(List.of(
+                    payloadResult(11L, 1L, 0.91f, "图书馆开放时间为8:00-22:00", 3, "图书馆指南"),
+                    payloadResult(13L, 2L, 0.65f, "自习室位于图书馆三楼", null, "教学楼指南")));
+
+            RagService.RetrievalResult result = ragService.retrieve("图书馆几点开门", 5);
+
+            verify(knowledgeChunkMapper, never()).selectBatchIds(anyCollection());
+            assertThat(result.chunks()).extracting(KnowledgeChunk::getId).containsExactly(11L, 13L);
+            assertThat(result.chunks().get(0).getPageNumber()).isEqualTo(3);
+            assertThat(result.docs().get(1L).getTitle()).isEqualTo("图书馆指南");
+        }
+
+        @Test
+        @DisplayName("部分结果缺少载荷时只回查缺少的片段")
+        @SuppressWarnings("unchecked")
+        void mixedHitsShouldOnlyFetchMissingChunks() {
+            givenSearchResults(List.of(
+                    payloadResult(11L, 1L, 0.91f, "图书馆开放时间为8:00-22:00", 3, "图书馆指南"),
+                    createSearchResult(12L, 1L, 0.72f)));
+
+            RagService.RetrievalResult result = ragService.retrieve("图书馆几点开门", 5);
+
+            ArgumentCaptor<Collection<Long>> ids = ArgumentCaptor.forClass(Collection.class);
+            verify(knowledgeChunkMapper).selectBatchIds(ids.capture());
+            assertThat(ids.getValue()).containsExactly(12L);
+            assertThat(result.chunks()).extracting(KnowledgeChunk::getId).containsExactly(11L, 12L);
+        }
+
+        @Test
+        @DisplayName("文档元信息应命中缓存，不重复查询文档表")
+        void docMetadataShouldBeCached() {
+            ragService.retrieve("图书馆几点开门", 5);
+            ragService.retrieve("自习室在哪", 5);
+
+            verify(knowledgeDocMapper, times(1)).selectBatchIds(anyCollection());
+        }
+
+        @Test
+        @DisplayName("文档已删除时应丢弃其片段，不用载荷标题兜底")
+        void missingDocShouldDropHit() {
+            givenSearchResults(List.of(payloadResult(21L, 9L, 0.8f, "已删除文档的片段", 1, "旧版手册")));
+
+            RagService.RetrievalResult result = ragService.retrieve("手册", 5);
+
+            assertThat(result.chunks()).isEmpty();
+            assertThat(result.docs()).doesNotContainKey(9L);
+        }
+    }
+
+    private static KnowledgeChunk createChunk(Long id, Long docId, String content) {
+        KnowledgeChunk chunk = new KnowledgeChunk();
+        chunk.setId(id);
+        chunk.setDocId(docId);
+        chunk.setContent(content);
+        return chunk;
+    }
+
+    private static KnowledgeDoc createDoc(Long id, String title) {
+        KnowledgeDoc doc = new KnowledgeDoc();
+        doc.setId(id);
+        doc.setTitle(title);
+        return doc;
+    }
+
+    private static MilvusService.SearchResult createSearchResult(Long chunkId, Long docId, float score) {
+        MilvusService.SearchResult result = new MilvusService.SearchResult();
+        result.setChunkId(chunkId);
+        result.setDocId(docId);
+        result.setScore(score);
+        return result;
+    }
+
+    private static MilvusService.SearchResult payloadResult(Long chunkId, Long docId, float score, String content,
+                                                           Integer pageNumber, String title) {
+        MilvusService.SearchResult result = createSearchResult(chunkId, docId, score);
+        result.setContent(content);
+        result.setPageNumber(pageNumber);
+        result.setTitle(title);
+        result.setPayloadLoaded(true);
+        return result;
+    }
+
+    private void givenSearchResults(List<MilvusService.SearchResult> results) {
+        when(milvusService.search(any(), anyInt(), anyFloat(), any(), any())).thenReturn(results);
+    }
+
+    /**
+     * 模拟 selectBatchIds：按ID过滤给定数据
+     */
+    private static <T> List<T> matching(List<T> rows, Collection<?> ids, Function<T, Long> idOf) {
+        List<T> matched = new ArrayList<>();
+        for (T row : rows) {
+            if (ids.contains(idOf.apply(row))) {
+                matched.add(row);
+            }
+        }
+        return matched;
+    }
+}
@@ -0,0 +1,159 @@
+package com.echocampus.bot.service.retrieval;
+
+import com.echocampus.bot.entity.KnowledgeChunk;
+import com.echocampus.bot.entity.KnowledgeDoc;
+import com.echocampus.bot.service.impl.TextChunkServiceImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * ContextPacker 单元测试
+ * 验证片段去重、相邻片段合并，以及按token预算和分数密度装入
+ */
+@DisplayName("ContextPacker - 上下文装入测试")
+class ContextPackerTest {
+
+    private static final String OVERLAP = "图书馆一楼设有自助借还机和咨询台，工作日全天有馆员值班。";
+
+    private ContextPacker packer;
+    private final Map<Long, Float> scores = new HashMap<>();
+    private final Map<Long, KnowledgeDoc> docs = new HashMap<>();
+
+    @BeforeEach
+    void setUp() {
+        packer = new ContextPacker();
+        ReflectionTestUtils.setField(packer, "maxTokens", 2000);
+        docs.put(1L, doc(1L, "图书馆指南"));
+        docs.put(2L, doc(2L, "教学楼指南"));
+    }
+
+    @Nested
+    @DisplayName("去重与合并测试")
+    class MergeTests {
+
+        @Test
+        @DisplayName("同一文档 chunk_index 相邻的片段合并为一段，重叠部分只保留一次")
+        void adjacentChunksShouldMergeWithoutOverlap() {
+            KnowledgeChunk first = chunk(11L, 1L, 0, "图书馆开放时间为8:00-22:00。" + OVERLAP);
+            KnowledgeChunk second = chunk(12L, 1L, 1, OVERLAP + "借书证需要在一卡通中心办理。");
+
+            List<ContextPacker.Span> spans = packer.pack(List.of(second, first), scores(second, 0.9f, first, 0.8f), docs);
+
+            assertThat(spans).hasSize(1);
+            ContextPacker.Span span = spans.get(0);
+            assertThat(span.chunks()).extracting(KnowledgeChunk::getId).containsExactly(11L, 12L);
+            assertThat(span.content())
+                    .isEqualTo("图书馆开放时间为8:00-22:00。" + OVERLAP + "借书证需要在一卡通中心办理。");
+            assertThat(span.score()).isEqualTo(0.9f);
+        }
+
+        @Test
+        @DisplayName("没有 chunk_index 时按首尾重叠识别相邻片段")
+        void overlappingChunksWithoutIndexShouldMerge() {
+            KnowledgeChunk first = chunk(11L, 1L, null, "开放时间为8:00-22:00。" + OVERLAP);
+            KnowledgeChunk second = chunk(12L, 1L, null, OVERLAP + "借书需要借书证。");
+
+            List<ContextPacker.Span> spans = packer.pack(List.of(first, second), scores(first, 0.9f, second, 0.8f), docs);
+
+            assertThat(spans).hasSize(1);
+            assertThat(spans.get(0).content()).containsOnlyOnce(OVERLAP);
+        }
+
+        @Test
+        @DisplayName("不同文档或不相邻的片段不合并")
+        void unrelatedChunksShouldStaySeparate() {
+            KnowledgeChunk first = chunk(11L, 1L, 0, "图书馆开放时间为8:00-22:00。");
+            KnowledgeChunk far = chunk(15L, 1L, 4, "图书馆四楼为期刊阅览室。");
+            KnowledgeChunk other = chunk(21L, 2L, 1, "自习室位于教学楼三楼。");
+
+            List<ContextPacker.Span> spans = packer.pack(List.of(first, far, other), Map.of(), docs);
+
+            assertThat(spans).extracting(ContextPacker.Span::docId).containsExactly(1L, 1L, 2L);
+        }
+
+        @Test
+        @DisplayName("正文重复或被已有片段包含的片段只保留一次")
+        void duplicateChunksShouldBeDropped() {
+            KnowledgeChunk first = chunk(11L, 1L, 0, "图书馆开放时间为8:00-22:00，节假日另行通知。");
+            KnowledgeChunk copy = chunk(31L, 2L, 0, "图书馆开放时间为8:00-22:00");
+
+            List<ContextPacker.Span> spans = packer.pack(List.of(first, copy), Map.of(), docs);
+
+            assertThat(spans).hasSize(1);
+            assertThat(spans.get(0).chunks()).extracting(KnowledgeChunk::getId).containsExactly(11L);
+        }
+    }
+
+    @Nested
+    @DisplayName("预算测试")
+    class BudgetTests {
+
+        @Test
+        @DisplayName("总token不超过预算，超出时优先保留分数密度高的段落并按检索顺序输出")
+        void shouldPackByScoreDensityWithinBudget() {
+            KnowledgeChunk longChunk = chunk(11L, 1L, 0, "长".repeat(60) + "。");
+            KnowledgeChunk shortA = chunk(21L, 2L, 0, "短甲".repeat(10) + "。");
+            KnowledgeChunk shortB = chunk(22L, 2L, 5, "短乙".repeat(10) + "。");
+            int budget = 2 * (21 + ContextPacker.SPAN_OVERHEAD_TOKENS + 5) + 5;
+
+            List<ContextPacker.Span> spans = packer.pack(List.of(longChunk, shortA, shortB),
+                    Map.of(11L, 0.9f, 21L, 0.8f, 22L, 0.7f), docs, budget);
+
+            assertThat(spans).flatExtracting(ContextPacker.Span::chunks).extracting(KnowledgeChunk::getId)
+                    .containsExactly(21L, 22L);
+            int used = spans.stream().mapToInt(s -> s.tokens() + ContextPacker.SPAN_OVERHEAD_TOKENS + 5).sum();
+            assertThat(used).isLessThanOrEqualTo(budget);
+        }
+
+        @Test
+        @DisplayName("第一段超出预算时在句末截断")
+        void oversizedSpanShouldBeTrimmedAtSentenceEnd() {
+            KnowledgeChunk chunk = chunk(11L, 1L, 0, "第一句话说明开放时间。第二句话说明借阅规则。第三句话说明自习室位置。");
+            int budget = ContextPacker.SPAN_OVERHEAD_TOKENS + 5 + 22;
+
+            List<ContextPacker.Span> spans = packer.pack(List.of(chunk), Map.of(11L, 0.9f), docs, budget);
+
+            assertThat(spans).hasSize(1);
+            assertThat(spans.get(0).content()).isEqualTo("第一句话说明开放时间。第二句话说明借阅规则。");
+            assertThat(spans.get(0).tokens()).isLessThanOrEqualTo(22);
+        }
+
+        @Test
+        @DisplayName("token 估算：中文1字1个token，其他字符4个1个token")
+        void tokenEstimateShouldMatchChunking() {
+            assertThat(TextChunkServiceImpl.estimateTokenCount("图书馆abcdefgh")).isEqualTo(5);
+            assertThat(TextChunkServiceImpl.estimateTokenCount(null)).isZero();
+        }
+    }
+
+    private Map<Long, Float> scores(KnowledgeChunk a, float scoreA, KnowledgeChunk b, float scoreB) {
+        scores.put(a.getId(), scoreA);
+        scores.put(b.getId(), scoreB);
+        return scores;
+    }
+
+    private static KnowledgeChunk chunk(Long id, Long docId, Integer chunkIndex, String content) {
+        KnowledgeChunk chunk = new KnowledgeChunk();
+        chunk.setId(id);
+        chunk.setDocId(docId);
+        chunk.setChunkIndex(chunkIndex);
+        chunk.setContent(content);
+        return chunk;
+    }
+
+    private static KnowledgeDoc doc(Long id, String title) {
+        KnowledgeDoc doc = new KnowledgeDoc();
+        doc.setId(id);
+        doc.setTitle(title);
+        return doc;
+    }
+}
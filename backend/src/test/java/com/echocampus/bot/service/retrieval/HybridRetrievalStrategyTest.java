@@ -0,0 +1,388 @@
+package com.echocampus.bot.service.retrieval;
+
+import com.echocampus.bot.entity.KnowledgeChunk;
+import com.echocampus.bot.mapper.KnowledgeChunkMapper;
+import com.echocampus.bot.service.EmbeddingService;
+import com.echocampus.bot.service.MilvusService;
+import com.echocampus.bot.service.MilvusService.SearchFilter;
+import com.echocampus.bot.service.MilvusService.SearchResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * HybridRetrievalStrategy 单元测试
+ * 验证向量/全文两路的倒数排名融合，以及单路超时、失败时的降级
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+@DisplayName("HybridRetrievalStrategy - 混合检索测试")
+class HybridRetrievalStrategyTest {
+
+    private static final float[] QUERY_VECTOR = {0.1f, 0.2f, 0.3f};
+
+    @Mock
+    private MilvusService milvusService;
+
+    @Mock
+    private EmbeddingService embeddingService;
+
+    @Mock
+    private KnowledgeChunkMapper knowledgeChunkMapper;
+
+    private final List<KnowledgeChunk> lexicalRows = Collections.synchronizedList(new ArrayList<>());
+    private final List<KnowledgeChunk> substringRows = Collections.synchronizedList(new ArrayList<>());
+    private volatile CountDownLatch lexicalGate;
+    private volatile RuntimeException lexicalFailure;
+    private HybridRetrievalStrategy strategy;
+
+    @BeforeEach
+    void setUp() {
+        when(embeddingService.embed(anyString())).thenReturn(QUERY_VECTOR);
+        when(embeddingService.embedQueries(anyList())).thenAnswer(invocation -> {
+            List<String> queries = invocation.getArgument(0);
+            return queries.stream().map(q -> QUERY_VECTOR).toList();
+        });
+        givenVectorHits(List.of());
+        // 全文检索可阻塞（模拟慢查询）或抛出异常
+        when(knowledgeChunkMapper.searchFullText(anyString(), anyInt(), any(), any())).thenAnswer(invocation -> {
+            if (lexicalGate != null) {
+                lexicalGate.await();
+            }
+            if (lexicalFailure != null) {
+                throw lexicalFailure;
+            }
+            int limit = invocation.getArgument(1);
+            synchronized (lexicalRows) {
+                return lexicalRows.stream().limit(limit).toList();
+            }
+        });
+
+        when(knowledgeChunkMapper.searchSubstrings(anyList(), anyInt(), any(), any())).thenAnswer(invocation -> {
+            int limit = invocation.getArgument(1);
+            synchronized (substringRows) {
+                return substringRows.stream().limit(limit).toList();
+            }
+        });
+
+        VectorRetrievalStrategy vector = new VectorRetrievalStrategy(embeddingService, milvusService);
+        ReflectionTestUtils.setField(vector, "similarityThreshold", 0.5f);
+
+        strategy = new HybridRetrievalStrategy(vector, new LexicalRetriever(knowledgeChunkMapper));
+        ReflectionTestUtils.setField(strategy, "vectorTimeoutMs", 1000L);
+        ReflectionTestUtils.setField(strategy, "lexicalTimeoutMs", 200L);
+        ReflectionTestUtils.setField(strategy, "candidateMultiplier", 2);
+        ReflectionTestUtils.setField(strategy, "rrfK", 60);
+        ReflectionTestUtils.setField(strategy, "vectorThreads", 2);
+        ReflectionTestUtils.setField(strategy, "lexicalThreads", 2);
+        strategy.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (lexicalGate != null) {
+            lexicalGate.countDown();
+        }
+        strategy.destroy();
+    }
+
+    @Nested
+    @DisplayName("融合测试")
+    class FusionTests {
+
+        @Test
+        @DisplayName("两路都命中的片段应排在前面，只被全文检索命中的片段也应返回")
+        void fusedResultsShouldCombineBothLegs() {
+            givenVectorHits(List.of(vectorHit(1L, 0.9f), vectorHit(2L, 0.8f), vectorHit(3L, 0.7f)));
+            lexicalRows.addAll(List.of(row(3L, "CS101 课程在A302教室"), row(9L, "CS101 任课教师")));
+
+            List<SearchResult> results = strategy.search("CS101在哪个教室", 4);
+
+            assertThat(results).extracting(SearchResult::getChunkId).containsExactly(3L, 1L, 2L, 9L);
+            assertThat(results.get(0).getScore()).isLessThanOrEqualTo(1f).isGreaterThan(results.get(1).getScore());
+            verify(knowledgeChunkMapper).searchFullText(eq("cs101:*"), anyInt(), any(), any());
+        }
+
+        @Test
+        @DisplayName("全文检索结果应带完整载荷，无需回查数据库")
+        void lexicalHitsShouldCarryPayload() {
+            lexicalRows.add(row(9L, "CS101 任课教师"));
+
+            List<SearchResult> results = strategy.search("CS101", 5);
+
+            assertThat(results).singleElement().satisfies(r -> {
+                assertThat(r.isPayloadLoaded()).isTrue();
+                assertThat(r.getContent()).isEqualTo("CS101 任课教师");
+                assertThat(r.getPageNumber()).isEqualTo(2);
+            });
+        }
+
+        @Test
+        @DisplayName("中文问题应按汉字子串检索，不查询全文索引")
+        void chineseQueryShouldUseSubstringLeg() {
+            givenVectorHits(List.of(vectorHit(1L, 0.9f)));
+            substringRows.add(row(7L, "图书馆开放时间为早上8点"));
+
+            List<SearchResult> results = strategy.search("图书馆几点开门", 5);
+
+            assertThat(results).extracting(SearchResult::getChunkId).containsExactly(1L, 7L);
+            assertThat(results.get(1).getContent()).isEqualTo("图书馆开放时间为早上8点");
+            verify(knowledgeChunkMapper).searchSubstrings(
+                    eq(List.of("%图书馆%", "%书馆几%", "%馆几点%", "%几点开%", "%点开门%")), anyInt(), any(), any());
+            verify(knowledgeChunkMapper, never()).searchFullText(any(), anyInt(), any(), any());
+        }
+
+        @Test
+        @DisplayName("同时有字母数字词和汉字串时两种结果交替合并并去重")
+        void mixedQueryShouldInterleaveBothMatches() {
+            lexicalRows.addAll(List.of(row(3L, "CS101 课程在A302教室"), row(9L, "CS101 任课教师")));
+            substringRows.addAll(List.of(row(3L, "CS101 课程在A302教室"), row(5L, "任课教师名单")));
+
+            List<SearchResult> results = strategy.search("CS101任课教师", 5);
+
+            assertThat(results).extracting(SearchResult::getChunkId).containsExactly(3L, 9L, 5L);
+        }
+
+        @Test
+        @DisplayName("分类过滤应同时作用于向量检索和全文检索")
+        @SuppressWarnings("unchecked")
+        void filterShouldApplyToBothLegs() {
+            givenVectorHits(List.of(vectorHit(1L, 0.9f)));
+            lexicalRows.add(row(9L, "CS101 任课教师"));
+
+            strategy.search("CS101", 5, SearchFilter.byCategory("课程"));
+
+            ArgumentCaptor<SearchFilter> vectorFilter = ArgumentCaptor.forClass(SearchFilter.class);
+            verify(milvusService).search(any(), anyInt(), anyFloat(), vectorFilter.capture(), any());
+            assertThat(vectorFilter.getValue().categories()).containsExactly("课程");
+            ArgumentCaptor<Collection<String>> lexicalCategories = ArgumentCaptor.forClass(Collection.class);
+            verify(knowledgeChunkMapper).searchFullText(anyString(), anyInt(), lexicalCategories.capture(), any());
+            assertThat(lexicalCategories.getValue()).containsExactly("课程");
+        }
+
+        @Test
+        @DisplayName("空白分类不应产生过滤条件")
+        void blankCategoryShouldNotFilter() {
+            assertThat(SearchFilter.byCategory("  ")).isSameAs(SearchFilter.NONE);
+            assertThat(SearchFilter.byCategory(" 课程 ").categories()).containsExactly("课程");
+            assertThat(new SearchFilter(Set.of("课程"), Set.of(3L)).matches(3L, "课程")).isTrue();
+            assertThat(new SearchFilter(Set.of("课程"), Set.of(3L)).matches(4L, "课程")).isFalse();
+        }
+    }
+
+    @Nested
+    @DisplayName("批量检索测试")
+    class BatchTests {
+
+        @Test
+        @DisplayName("多个问题应只发起一次向量化和一次向量检索，结果按问题顺序返回")
+        @SuppressWarnings("unchecked")
+        void batchShouldUseSingleVectorRequest() {
+            givenVectorHits(List.of(vectorHit(1L, 0.9f)));
+            lexicalRows.add(row(9L, "CS101 任课教师"));
+
+            List<List<SearchResult>> results = strategy.searchBatch(
+                    List.of("图书馆几点开门", "CS101在哪个教室", "食堂在哪"), 5, SearchFilter.byCategory("课程"));
+
+            assertThat(results).hasSize(3);
+            assertThat(results.get(0)).extracting(SearchResult::getChunkId).containsExactly(1L);
+            assertThat(results.get(1)).extracting(SearchResult::getChunkId).containsExactly(1L, 9L);
+            ArgumentCaptor<List<float[]>> vectors = ArgumentCaptor.forClass(List.class);
+            ArgumentCaptor<SearchFilter> vectorFilter = ArgumentCaptor.forClass(SearchFilter.class);
+            verify(milvusService, times(1)).searchBatch(vectors.capture(), anyInt(), anyFloat(), vectorFilter.capture());
+            assertThat(vectors.getValue()).hasSize(3);
+            assertThat(vectorFilter.getValue().categories()).containsExactly("课程");
+            verify(embeddingService, times(1)).embedQueries(anyList());
+            verify(knowledgeChunkMapper).searchFullText(eq("cs101:*"), anyInt(), any(), any());
+        }
+
+        @Test
+        @DisplayName("向量检索失败时每个问题都应退回全文检索结果")
+        void failedVectorBatchShouldFallBackPerQuery() {
+            givenVectorFailure(new IllegalStateException("milvus down"));
+            lexicalRows.add(row(9L, "CS101 任课教师"));
+
+            List<List<SearchResult>> results = strategy.searchBatch(List.of("CS101", "食堂在哪"), 5, SearchFilter.NONE);
+
+            assertThat(results.get(0)).extracting(SearchResult::getChunkId).containsExactly(9L);
+            assertThat(results.get(1)).isEmpty();
+        }
+    }
+
+    @Nested
+    @DisplayName("降级测试")
+    class DegradationTests {
+
+        @Test
+        @DisplayName("全文检索超时时应在超时后返回向量结果")
+        void slowLexicalLegShouldNotStallSearch() {
+            givenVectorHits(List.of(vectorHit(1L, 0.9f)));
+            lexicalRows.add(row(9L, "CS101 任课教师"));
+            lexicalGate = new CountDownLatch(1);
+
+            long start = System.nanoTime();
+            List<SearchResult> results = strategy.search("CS101", 5);
+            long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            assertThat(results).extracting(SearchResult::getChunkId).containsExactly(1L);
+            assertThat(elapsedMs).isLessThan(900);
+            assertThat(strategy.getStats()).extractingByKey("lexical")
+                    .asInstanceOf(MAP).containsEntry("timeouts", 1L);
+        }
+
+        @Test
+        @DisplayName("全文检索线程全部被慢查询占用时，向量检索不应排队")
+        void blockedLexicalThreadsShouldNotDelayVectorLeg() {
+            givenVectorHits(List.of(vectorHit(1L, 0.9f)));
+            lexicalGate = new CountDownLatch(1);
+            strategy.search("CS101", 5);
+            strategy.search("CS102", 5);
+
+            long start = System.nanoTime();
+            List<SearchResult> results = strategy.search("CS103", 5);
+            long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            assertThat(results).extracting(SearchResult::getChunkId).containsExactly(1L);
+            assertThat(elapsedMs).isLessThan(900);
+            assertThat(strategy.getStats()).extractingByKey("vector")
+                    .asInstanceOf(MAP).containsEntry("timeouts", 0L);
+        }
+
+        @Test
+        @DisplayName("向量检索失败时应只返回全文检索结果")
+        void failedVectorLegShouldFallBackToLexical() {
+            givenVectorFailure(new IllegalStateException("milvus down"));
+            lexicalRows.add(row(9L, "CS101 任课教师"));
+
+            List<SearchResult> results = strategy.search("CS101", 5);
+
+            assertThat(results).extracting(SearchResult::getChunkId).containsExactly(9L);
+            assertThat(strategy.getStats()).extractingByKey("vector")
+                    .asInstanceOf(MAP).containsEntry("failures", 1L);
+        }
+
+        @Test
+        @DisplayName("全文检索失败时应只返回向量结果")
+        void failedLexicalLegShouldFallBackToVector() {
+            givenVectorHits(List.of(vectorHit(1L, 0.9f)));
+            lexicalFailure = new IllegalStateException("db down");
+
+            assertThat(strategy.search("CS101", 5)).extracting(SearchResult::getChunkId).containsExactly(1L);
+        }
+    }
+
+    @Nested
+    @DisplayName("关键词提取测试")
+    class TsQueryTests {
+
+        @Test
+        @DisplayName("应提取字母数字词并按前缀匹配，忽略单个字符")
+        void shouldBuildPrefixQuery() {
+            assertThat(LexicalRetriever.toTsQuery("CS101课程在A302教室吗？老师是 Zhang Wei, 第3节"))
+                    .isEqualTo("cs101:* | a302:* | zhang:* | wei:*");
+        }
+
+        @Test
+        @DisplayName("汉字串应切成连续三个字的子串，短于三个字的汉字串忽略")
+        void shouldBuildSubstringPatterns() {
+            assertThat(LexicalRetriever.toSubstringPatterns("CS101课程在A302教室吗？食堂几点开"))
+                    .containsExactly("%课程在%", "%教室吗%", "%食堂几%", "%堂几点%", "%几点开%");
+            assertThat(LexicalRetriever.toSubstringPatterns("a%b_c 图书 100%")).isEmpty();
+        }
+
+        @Test
+        @DisplayName("没有可用词时应返回 null，且不能注入 tsquery 运算符")
+        void shouldIgnoreOperators() {
+            assertThat(LexicalRetriever.toTsQuery("图书馆 & | ! ( )")).isNull();
+            assertThat(LexicalRetriever.toTsQuery("a&b|c:*")).isNull();
+        }
+    }
+
+    @Nested
+    @DisplayName("倒数排名融合测试")
+    class ReciprocalRankFusionTests {
+
+        @Test
+        @DisplayName("同一路中重复的片段只计一次，且保留带载荷的结果")
+        void duplicatesShouldCountOnce() {
+            SearchResult bare = vectorHit(1L, 0.9f);
+            SearchResult loaded = vectorHit(1L, 0.9f);
+            loaded.setContent("正文");
+            loaded.setPayloadLoaded(true);
+
+            List<SearchResult> fused = ReciprocalRankFusion.fuse(
+                    List.of(List.of(bare, bare, vectorHit(2L, 0.5f)), List.of(loaded)), 60, 10);
+
+            assertThat(fused).extracting(SearchResult::getChunkId).containsExactly(1L, 2L);
+            assertThat(fused.get(0).getScore()).isEqualTo(1f);
+            assertThat(fused.get(0).isPayloadLoaded()).isTrue();
+        }
+
+        @Test
+        @DisplayName("只有一路有结果时分数不应被抬成满分")
+        void singleLegShouldNotScoreFull() {
+            List<SearchResult> fused = ReciprocalRankFusion.fuse(
+                    List.of(List.of(), List.of(vectorHit(9L, 0.3f), vectorHit(8L, 0.2f))), 60, 10);
+
+            assertThat(fused).extracting(SearchResult::getChunkId).containsExactly(9L, 8L);
+            assertThat(fused.get(0).getScore()).isEqualTo(0.5f);
+        }
+
+        @Test
+        @DisplayName("所有路都为空时应返回空列表")
+        void emptyRankingsShouldReturnEmpty() {
+            assertThat(ReciprocalRankFusion.fuse(List.of(List.of(), List.of()), 60, 5)).isEmpty();
+        }
+    }
+
+    private static SearchResult vectorHit(Long chunkId, float score) {
+        SearchResult result = new SearchResult();
+        result.setChunkId(chunkId);
+        result.setDocId(1L);
+        result.setScore(score);
+        return result;
+    }
+
+    private static KnowledgeChunk row(Long id, String content) {
+        KnowledgeChunk chunk = new KnowledgeChunk();
+        chunk.setId(id);
+        chunk.setDocId(2L);
+        chunk.setContent(content);
+        chunk.setPageNumber(2);
+        return chunk;
+    }
+
+    private void givenVectorHits(List<SearchResult> results) {
+        when(milvusService.search(any(), anyInt(), anyFloat(), any(), any())).thenReturn(results);
+        when(milvusService.searchBatch(anyList(), anyInt(), anyFloat(), any())).thenAnswer(invocation -> {
+            List<float[]> vectors = invocation.getArgument(0);
+            return vectors.stream().map(v -> results).toList();
+        });
+    }
+
+    private void givenVectorFailure(RuntimeException failure) {
+        when(milvusService.search(any(), anyInt(), anyFloat(), any(), any())).thenThrow(failure);
+        when(milvusService.searchBatch(anyList(), anyInt(), anyFloat(), any())).thenThrow(failure);
+    }
+}
@@ -0,0 +1,189 @@
+package com.echocampus.bot.service.retrieval;
+
+import com.echocampus.bot.entity.KnowledgeChunk;
+import com.echocampus.bot.mapper.KnowledgeChunkMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * NeighbourChunkExpander / DocumentChunkIndex 单元测试
+ * 验证按切块序号索引补充相邻切块、批量查询正文，以及索引的构建和增量更新
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+@DisplayName("NeighbourChunkExpander - 邻近切块扩展测试")
+class NeighbourChunkExpanderTest {
+
+    @Mock
+    private KnowledgeChunkMapper knowledgeChunkMapper;
+
+    private final List<KnowledgeChunk> rows = new ArrayList<>();
+    private DocumentChunkIndex index;
+    private NeighbourChunkExpander expander;
+
+    @BeforeEach
+    void setUp() {
+        for (int i = 0; i < 5; i++) {
+            rows.add(row(10L + i, 1L, i, "图书馆指南第" + i + "段。"));
+        }
+        rows.add(row(20L, 2L, 0, "教学楼指南第0段。"));
+        rows.add(row(21L, 2L, 1, "教学楼指南第1段。"));
+
+        when(knowledgeChunkMapper.selectPositionsAfter(anyLong(), anyInt())).thenAnswer(invocation -> {
+            long afterId = invocation.getArgument(0);
+            int limit = invocation.getArgument(1);
+            return rows.stream()
+                    .filter(r -> r.getId() > afterId)
+                    .sorted(Comparator.comparing(KnowledgeChunk::getId))
+                    .limit(limit)
+                    .toList();
+        });
+        when(knowledgeChunkMapper.selectIndexEntriesByDocId(anyLong())).thenAnswer(invocation -> rows.stream()
+                .filter(r -> Objects.equals(r.getDocId(), invocation.getArgument(0)))
+                .toList());
+        when(knowledgeChunkMapper.selectBatchIds(anyCollection())).thenAnswer(invocation -> {
+            Collection<?> ids = invocation.getArgument(0);
+            return rows.stream().filter(r -> ids.contains(r.getId())).toList();
+        });
+
+        index = new DocumentChunkIndex(knowledgeChunkMapper);
+        ReflectionTestUtils.setField(index, "enabled", true);
+        expander = new NeighbourChunkExpander(index, knowledgeChunkMapper);
+        ReflectionTestUtils.setField(expander, "enabled", true);
+        ReflectionTestUtils.setField(expander, "window", 1);
+        ReflectionTestUtils.setField(expander, "topHits", 1);
+    }
+
+    @Nested
+    @DisplayName("扩展测试")
+    class ExpandTests {
+
+        @Test
+        @DisplayName("为靠前的命中补充前后相邻切块，正文只查询一次，命中仍排在最前")
+        void shouldAddNeighboursOfTopHits() {
+            index.build();
+
+            ChunkHitResolver.ResolvedHits result = expander.expand(hits(hit(12L, 1L), hit(20L, 2L)));
+
+            assertThat(result.chunks()).extracting(KnowledgeChunk::getId).containsExactly(12L, 20L, 11L, 13L);
+            verify(knowledgeChunkMapper, times(1)).selectBatchIds(anyCollection());
+            assertThat(result.scores()).containsEntry(11L, 0.4f).containsEntry(12L, 0.8f);
+            assertThat(result.chunks().get(0).getChunkIndex()).isEqualTo(2);
+        }
+
+        @Test
+        @DisplayName("扩展后的切块由 ContextPacker 合并为一个连续段落")
+        void expandedChunksShouldPackIntoOnePassage() {
+            index.build();
+            ContextPacker packer = new ContextPacker();
+            ReflectionTestUtils.setField(packer, "maxTokens", 2000);
+
+            List<ContextPacker.Span> spans = packer.pack(expander.expand(hits(hit(12L, 1L))));
+
+            assertThat(spans).hasSize(1);
+            assertThat(spans.get(0).chunks()).extracting(KnowledgeChunk::getId).containsExactly(11L, 12L, 13L);
+            assertThat(spans.get(0).content()).isEqualTo("图书馆指南第1段。\n图书馆指南第2段。\n图书馆指南第3段。");
+        }
+
+        @Test
+        @DisplayName("已在命中中的相邻切块不重复补充，文档边界之外不补充")
+        void shouldSkipPresentAndOutOfRangeNeighbours() {
+            index.build();
+            ReflectionTestUtils.setField(expander, "topHits", 2);
+
+            ChunkHitResolver.ResolvedHits result = expander.expand(hits(hit(10L, 1L), hit(11L, 1L)));
+
+            assertThat(result.chunks()).extracting(KnowledgeChunk::getId).containsExactly(10L, 11L, 12L);
+        }
+
+        @Test
+        @DisplayName("索引未就绪时返回原结果")
+        void notReadyShouldPassThrough() {
+            ChunkHitResolver.ResolvedHits hits = hits(hit(12L, 1L));
+
+            assertThat(expander.expand(hits)).isSameAs(hits);
+            verify(knowledgeChunkMapper, never()).selectBatchIds(anyCollection());
+        }
+    }
+
+    @Nested
+    @DisplayName("索引测试")
+    class IndexTests {
+
+        @Test
+        @DisplayName("构建后可按序号定位切块")
+        void buildShouldIndexByChunkIndex() {
+            index.build();
+
+            assertThat(index.isReady()).isTrue();
+            assertThat(index.indexOf(1L, 13L)).isEqualTo(3);
+            assertThat(index.chunkAt(1L, 4)).isEqualTo(14L);
+            assertThat(index.chunkAt(1L, 5)).isZero();
+            assertThat(index.indexOf(3L, 13L)).isEqualTo(-1);
+        }
+
+        @Test
+        @DisplayName("文档重新处理后刷新，删除后移除")
+        void refreshAndRemoveShouldUpdateDocument() {
+            index.build();
+            rows.removeIf(r -> r.getDocId() == 2L);
+            rows.add(row(30L, 2L, 0, "新版第0段。"));
+
+            index.refresh(2L);
+            assertThat(index.chunkAt(2L, 0)).isEqualTo(30L);
+            assertThat(index.chunkAt(2L, 1)).isZero();
+
+            index.remove(1L);
+            assertThat(index.indexOf(1L, 12L)).isEqualTo(-1);
+        }
+    }
+
+    private static ChunkHitResolver.ResolvedHits hits(KnowledgeChunk... chunks) {
+        Map<Long, Float> scores = new HashMap<>();
+        for (KnowledgeChunk chunk : chunks) {
+            scores.put(chunk.getId(), 0.8f);
+        }
+        return new ChunkHitResolver.ResolvedHits(List.of(chunks), scores, Map.of());
+    }
+
+    /**
+     * 载荷命中：不带 chunk_index
+     */
+    private KnowledgeChunk hit(Long id, Long docId) {
+        KnowledgeChunk source = rows.stream().filter(r -> r.getId().equals(id)).findFirst().orElseThrow();
+        KnowledgeChunk chunk = new KnowledgeChunk();
+        chunk.setId(id);
+        chunk.setDocId(docId);
+        chunk.setContent(source.getContent());
+        return chunk;
+    }
+
+    private static KnowledgeChunk row(Long id, Long docId, int chunkIndex, String content) {
+        KnowledgeChunk chunk = new KnowledgeChunk();
+        chunk.setId(id);
+        chunk.setDocId(docId);
+        chunk.setChunkIndex(chunkIndex);
+        chunk.setContent(content);
+        return chunk;
+    }
+}
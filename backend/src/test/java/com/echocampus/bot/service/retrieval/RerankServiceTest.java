@@ -0,0 +1,232 @@
+package com.echocampus.bot.service.retrieval;
+
+import com.echocampus.bot.config.AiServiceConfig;
+import com.echocampus.bot.entity.KnowledgeChunk;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * RerankService 单元测试
+ * 验证重排序后的顺序和截取、超时/失败时按检索顺序降级，以及分数缓存
+ */
+@DisplayName("RerankService - 重排序测试")
+class RerankServiceTest {
+
+    private StubReranker reranker;
+    private AiServiceConfig aiConfig;
+    private RerankService rerankService;
+
+    @BeforeEach
+    void setUp() {
+        reranker = new StubReranker();
+        aiConfig = new AiServiceConfig();
+        aiConfig.getRerank().setEnabled(true);
+        aiConfig.getRerank().setProvider(StubReranker.NAME);
+        aiConfig.getRerank().setCandidates(30);
+        aiConfig.getRerank().setTimeoutMs(200L);
+        rerankService = new RerankService(List.of(reranker, new LocalReranker()), aiConfig);
+        rerankService.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (reranker.gate != null) {
+            reranker.gate.countDown();
+        }
+        rerankService.destroy();
+    }
+
+    @Nested
+    @DisplayName("重排序测试")
+    class OrderingTests {
+
+        @Test
+        @DisplayName("按重排序分数排序并只保留前 topK，分数仍为检索分数")
+        void shouldReorderAndKeepTopK() {
+            reranker.scores.putAll(Map.of("甲", 0.1, "乙", 0.9, "丙", 0.5));
+
+            ChunkHitResolver.ResolvedHits result = rerankService.rerank("问题", hits("甲", "乙", "丙"), 2);
+
+            assertThat(result.chunks()).extracting(KnowledgeChunk::getContent).containsExactly("乙", "丙");
+            assertThat(result.scores()).containsEntry(1L, 0.5f);
+        }
+
+        @Test
+        @DisplayName("启用时多取候选，未启用时候选数等于 topK")
+        void candidatesShouldOverFetchOnlyWhenEnabled() {
+            assertThat(rerankService.candidates(5)).isEqualTo(30);
+            assertThat(rerankService.candidates(40)).isEqualTo(40);
+
+            aiConfig.getRerank().setEnabled(false);
+
+            assertThat(rerankService.candidates(5)).isEqualTo(5);
+        }
+
+        @Test
+        @DisplayName("未启用时不调用重排序，只按检索顺序截取")
+        void disabledShouldPassThrough() {
+            aiConfig.getRerank().setEnabled(false);
+
+            ChunkHitResolver.ResolvedHits result = rerankService.rerank("问题", hits("甲", "乙", "丙"), 2);
+
+            assertThat(result.chunks()).extracting(KnowledgeChunk::getContent).containsExactly("甲", "乙");
+            assertThat(reranker.calls).isEmpty();
+        }
+
+        @Test
+        @DisplayName("批量重排序的结果与问题一一对应")
+        void rerankAllShouldKeepQueryOrder() {
+            reranker.scores.putAll(Map.of("甲", 0.1, "乙", 0.9, "丙", 0.8, "丁", 0.2));
+
+            List<ChunkHitResolver.ResolvedHits> results = rerankService.rerankAll(List.of("问题一", "问题二"),
+                    List.of(hits("甲", "乙"), hits("丁", "丙")), 1);
+
+            assertThat(results).hasSize(2);
+            assertThat(results.get(0).chunks()).extracting(KnowledgeChunk::getContent).containsExactly("乙");
+            assertThat(results.get(1).chunks()).extracting(KnowledgeChunk::getContent).containsExactly("丙");
+        }
+    }
+
+    @Nested
+    @DisplayName("降级测试")
+    class FallbackTests {
+
+        @Test
+        @DisplayName("超时时在预算内返回，按检索顺序截取")
+        void timeoutShouldFallBackToRetrievalOrder() {
+            reranker.gate = new CountDownLatch(1);
+            reranker.scores.putAll(Map.of("甲", 0.1, "乙", 0.9, "丙", 0.5));
+
+            long start = System.nanoTime();
+            ChunkHitResolver.ResolvedHits result = rerankService.rerank("问题", hits("甲", "乙", "丙"), 2);
+            long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            assertThat(result.chunks()).extracting(KnowledgeChunk::getContent).containsExactly("甲", "乙");
+            assertThat(elapsedMs).isLessThan(1000);
+            assertThat(rerankService.getStats()).containsEntry("timeouts", 1L);
+        }
+
+        @Test
+        @DisplayName("重排序失败时按检索顺序截取")
+        void failureShouldFallBackToRetrievalOrder() {
+            reranker.failure = new IllegalStateException("接口不可用");
+
+            ChunkHitResolver.ResolvedHits result = rerankService.rerank("问题", hits("甲", "乙", "丙"), 2);
+
+            assertThat(result.chunks()).extracting(KnowledgeChunk::getContent).containsExactly("甲", "乙");
+            assertThat(rerankService.getStats()).containsEntry("failures", 1L);
+        }
+    }
+
+    @Nested
+    @DisplayName("缓存测试")
+    class CacheTests {
+
+        @Test
+        @DisplayName("同一问题再次重排序时只对未缓存的候选打分")
+        void shouldScoreOnlyUncachedCandidates() {
+            reranker.scores.putAll(Map.of("甲", 0.1, "乙", 0.9, "丙", 0.5, "丁", 0.7));
+
+            rerankService.rerank("问题", hits("甲", "乙", "丙"), 2);
+            ChunkHitResolver.ResolvedHits result = rerankService.rerank("问题", hits("甲", "乙", "丙", "丁"), 2);
+
+            assertThat(reranker.calls).hasSize(2);
+            assertThat(reranker.calls.get(1)).containsExactly("丁");
+            assertThat(result.chunks()).extracting(KnowledgeChunk::getContent).containsExactly("乙", "丁");
+        }
+
+        @Test
+        @DisplayName("全部命中缓存时不调用重排序")
+        void fullyCachedQueryShouldNotCallReranker() {
+            reranker.scores.putAll(Map.of("甲", 0.1, "乙", 0.9));
+
+            rerankService.rerank("问题", hits("甲", "乙"), 2);
+            rerankService.rerank("问题", hits("甲", "乙"), 2);
+
+            assertThat(reranker.calls).hasSize(1);
+            assertThat(rerankService.getStats()).containsEntry("cachedQueries", 1L);
+        }
+    }
+
+    @Nested
+    @DisplayName("重排序实现测试")
+    class RerankerTests {
+
+        @Test
+        @DisplayName("本地重排序与问题重叠越多分数越高")
+        void localRerankerShouldPreferOverlap() {
+            List<Double> scores = new LocalReranker().score("图书馆开放时间", List.of("食堂营业时间", "图书馆每天开放时间为8点"));
+
+            assertThat(scores.get(1)).isGreaterThan(scores.get(0));
+        }
+
+        @Test
+        @DisplayName("远程重排序响应按 index 还原顺序，缺失的候选记为最低分")
+        void remoteRerankerShouldParseResultsByIndex() throws Exception {
+            ObjectMapper objectMapper = new ObjectMapper();
+            String body = "{\"results\":[{\"index\":2,\"relevance_score\":0.9},{\"index\":0,\"relevance_score\":0.3}]}";
+            String nested = "{\"output\":{\"results\":[{\"index\":1,\"score\":0.6}]}}";
+
+            assertThat(RemoteReranker.parseScores(objectMapper.readTree(body), 3))
+                    .containsExactly(0.3, Double.NEGATIVE_INFINITY, 0.9);
+            assertThat(RemoteReranker.parseScores(objectMapper.readTree(nested), 2))
+                    .containsExactly(Double.NEGATIVE_INFINITY, 0.6);
+        }
+    }
+
+    private static ChunkHitResolver.ResolvedHits hits(String... contents) {
+        List<KnowledgeChunk> chunks = new ArrayList<>();
+        Map<Long, Float> scores = new HashMap<>();
+        for (String content : contents) {
+            KnowledgeChunk chunk = new KnowledgeChunk();
+            chunk.setId((long) ("甲乙丙丁".indexOf(content)));
+            chunk.setContent(content);
+            chunks.add(chunk);
+            scores.put(chunk.getId(), 0.5f);
+        }
+        return new ChunkHitResolver.ResolvedHits(chunks, scores, Map.of());
+    }
+
+    private static class StubReranker implements Reranker {
+        static final String NAME = "stub";
+        final Map<String, Double> scores = new HashMap<>();
+        final List<List<String>> calls = Collections.synchronizedList(new ArrayList<>());
+        volatile CountDownLatch gate;
+        volatile RuntimeException failure;
+
+        @Override
+        public String name() {
+            return NAME;
+        }
+
+        @Override
+        public List<Double> score(String query, List<String> documents) {
+            calls.add(documents);
+            if (failure != null) {
+                throw failure;
+            }
+            if (gate != null) {
+                try {
+                    gate.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return documents.stream().map(scores::get).toList();
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.echocampus.bot.service.retrieval;
+
+import com.echocampus.bot.dto.request.RetrievalEvalRequest.LabelledQuery;
+import com.echocampus.bot.entity.KnowledgeChunk;
+import com.echocampus.bot.service.MilvusService.SearchBudget;
+import com.echocampus.bot.service.MilvusService.SearchFilter;
+import com.echocampus.bot.service.MilvusService.SearchResult;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * RetrievalEvaluator 单元测试：hit@k 与 MRR 的计算
+ */
+@DisplayName("RetrievalEvaluator - 检索离线评估测试")
+class RetrievalEvaluatorTest {
+
+    @Test
+    @DisplayName("相关片段或相关文档的首个名次应决定命中位置")
+    void firstRelevantRankShouldMatchChunkOrDoc() {
+        List<KnowledgeChunk> ranked = List.of(chunk(1L, 10L), chunk(2L, 20L), chunk(3L, 30L));
+
+        assertThat(RetrievalEvaluator.firstRelevantRank(ranked, query("q", Set.of(3L), Set.of()))).isEqualTo(3);
+        assertThat(RetrievalEvaluator.firstRelevantRank(ranked, query("q", Set.of(3L), Set.of(20L)))).isEqualTo(2);
+        assertThat(RetrievalEvaluator.firstRelevantRank(ranked, query("q", Set.of(9L), Set.of()))).isZero();
+    }
+
+    @Test
+    @DisplayName("应按名次统计各k值的命中率、MRR及未命中查询")
+    void reportShouldAggregateRanks() {
+        List<LabelledQuery> queries = List.of(query("a", Set.of(), Set.of()), query("b", Set.of(), Set.of()),
+                query("c", Set.of(), Set.of()), query("d", Set.of(), Set.of()));
+
+        RetrievalEvaluator.Report report = RetrievalEvaluator.report("hybrid", null, queries,
+                new int[]{1, 3, 0, 2}, List.of(1, 3, 5), 4_000_000L);
+
+        assertThat(report.hitAtK()).containsExactly(Map.entry(1, 0.25), Map.entry(3, 0.75), Map.entry(5, 0.75));
+        assertThat(report.mrr()).isCloseTo((1 + 1.0 / 3 + 0.5) / 4, within(1e-9));
+        assertThat(report.misses()).containsExactly("c");
+        assertThat(report.avgMillis()).isEqualTo(1);
+        assertThat(report.budget()).isEqualTo("default");
+    }
+
+    @Test
+    @DisplayName("评估应对每个策略按最大k检索一次")
+    void evaluateShouldRunEveryStrategy() {
+        RetrievalStrategy first = fixedStrategy("first", 2L, 1L);
+        RetrievalStrategy second = fixedStrategy("second", 1L, 2L);
+        KnowledgeRetriever retriever = retriever(first, second, new ArrayList<>());
+
+        List<RetrievalEvaluator.Report> reports = new RetrievalEvaluator(retriever)
+                .evaluate(List.of(query("q", Set.of(1L), Set.of())), List.of(), List.of(1, 2));
+
+        assertThat(reports).extracting(RetrievalEvaluator.Report::strategy).containsExactly("first", "second");
+        assertThat(reports.get(0).hitAtK()).containsEntry(1, 0.0).containsEntry(2, 1.0);
+        assertThat(reports.get(1).hitAtK()).containsEntry(1, 1.0);
+    }
+
+    @Test
+    @DisplayName("指定检索预算时每个策略在每个预算下各评估一次")
+    void evaluateShouldRunEveryBudget() {
+        List<SearchBudget> budgets = new ArrayList<>();
+        KnowledgeRetriever retriever = retriever(fixedStrategy("first", 1L), fixedStrategy("second", 1L), budgets);
+
+        List<RetrievalEvaluator.Report> reports = new RetrievalEvaluator(retriever)
+                .evaluate(List.of(query("q", Set.of(1L), Set.of())), List.of("first"), List.of(1),
+                        List.of("fast", "ACCURATE", "fast"));
+
+        assertThat(reports).extracting(RetrievalEvaluator.Report::budget).containsExactly("fast", "accurate");
+        assertThat(budgets).containsExactly(SearchBudget.FAST, SearchBudget.ACCURATE);
+        assertThatThrownBy(() -> new RetrievalEvaluator(retriever)
+                .evaluate(List.of(query("q", Set.of(1L), Set.of())), List.of("first"), List.of(1), List.of("slow")))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    /**
+     * 不经过数据库解析，直接把策略结果转成切块，并记录每次检索的预算
+     */
+    private static KnowledgeRetriever retriever(RetrievalStrategy first, RetrievalStrategy second,
+                                                List<SearchBudget> budgets) {
+        KnowledgeRetriever retriever = new KnowledgeRetriever(List.of(first, second), null, null) {
+            @Override
+            public ChunkHitResolver.ResolvedHits retrieve(String query, int topK, String strategy, SearchBudget budget) {
+                budgets.add(budget);
+                RetrievalStrategy s = "first".equals(strategy) ? first : second;
+                List<KnowledgeChunk> chunks = s.search(query, topK).stream()
+                        .map(r -> chunk(r.getChunkId(), r.getDocId())).toList();
+                return new ChunkHitResolver.ResolvedHits(chunks, Map.of(), Map.of());
+            }
+        };
+        ReflectionTestUtils.setField(retriever, "strategyName", "first");
+        retriever.init();
+        return retriever;
+    }
+
+    private static RetrievalStrategy fixedStrategy(String name, Long... chunkIds) {
+        return new RetrievalStrategy() {
+            @Override
+            public String name() {
+                return name;
+            }
+
+            @Override
+            public List<SearchResult> search(String query, int topK, SearchFilter filter) {
+                return java.util.Arrays.stream(chunkIds).limit(topK).map(id -> {
+                    SearchResult result = new SearchResult();
+                    result.setChunkId(id);
+                    result.setDocId(id * 10);
+                    return result;
+                }).toList();
+            }
+        };
+    }
+
+    private static LabelledQuery query(String text, Set<Long> chunkIds, Set<Long> docIds) {
+        LabelledQuery query = new LabelledQuery();
+        query.setQuery(text);
+        query.setRelevantChunkIds(chunkIds);
+        query.setRelevantDocIds(docIds);
+        return query;
+    }
+
+    private static KnowledgeChunk chunk(Long id, Long docId) {
+        KnowledgeChunk chunk = new KnowledgeChunk();
+        chunk.setId(id);
+        chunk.setDocId(docId);
+        return chunk;
+    }
+}
@@ -0,0 +1,181 @@
+package com.echocampus.bot.service.stream;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * ChatCompletionStreamParser 单元测试
+ * 验证在字节流上切分SSE行，只取 delta.content 和 tool_calls，以及 [DONE]、跨读取边界、推送模式和异常行的处理
+ */
+@DisplayName("ChatCompletionStreamParser - 流式响应解析测试")
+class ChatCompletionStreamParserTest {
+
+    private final List<String> contents = new ArrayList<>();
+    private final List<String> toolCalls = new ArrayList<>();
+
+    private final ChatCompletionStreamParser.Listener listener = new ChatCompletionStreamParser.Listener() {
+        @Override
+        public void onContent(String content) {
+            contents.add(content);
+        }
+
+        @Override
+        public void onToolCallDelta(int index, String id, String type, String name, String arguments) {
+            toolCalls.add(index + "|" + id + "|" + type + "|" + name + "|" + arguments);
+        }
+    };
+
+    @Nested
+    @DisplayName("内容测试")
+    class ContentTests {
+
+        @Test
+        @DisplayName("按顺序取出 delta.content，跳过其他字段和空内容，读到 [DONE] 后停止")
+        void shouldExtractContentUntilDone() throws IOException {
+            String stream = """
+                    : keep-alive
+
+                    data: {"id":"c1","object":"chat.completion.chunk","choices":[{"index":0,"delta":{"role":"assistant","content":""}}]}
+
+                    data: {"id":"c1","choices":[{"index":0,"delta":{"content":"图书馆"},"logprobs":null,"finish_reason":null}]}
+
+                    data: {"id":"c1","choices":[{"index":0,"delta":{"content":"8点开门\\n\\"周末\\"照常"}}],"usage":{"total_tokens":9}}
+
+                    data: [DONE]
+
+                    data: {"choices":[{"delta":{"content":"不应出现"}}]}
+                    """;
+
+            boolean done = ChatCompletionStreamParser.parse(input(stream), listener);
+
+            assertThat(done).isTrue();
+            assertThat(contents).containsExactly("图书馆", "8点开门\n\"周末\"照常");
+        }
+
+        @Test
+        @DisplayName("逐字节到达、CRLF换行、data: 后无空格时结果不变")
+        void shouldHandleSplitReadsAndCrlf() throws IOException {
+            String stream = "data:{\"choices\":[{\"delta\":{\"content\":\"你好\"}}]}\r\n\r\n"
+                    + "data: {\"choices\":[{\"delta\":{\"content\":\"，同学\"}}]}\r\n\r\n";
+
+            boolean done = ChatCompletionStreamParser.parse(oneByteAtATime(stream), listener);
+
+            assertThat(done).isFalse();
+            assertThat(contents).containsExactly("你好", "，同学");
+        }
+
+        @Test
+        @DisplayName("无法解析的数据行跳过，只处理第一个选项，最后一行没有换行也处理")
+        void shouldSkipMalformedLinesAndOtherChoices() throws IOException {
+            String stream = "data: {\"choices\":[{\"delta\":{\"content\":甲}}]}\n"
+                    + "data: {\"choices\":[{\"delta\":{\"content\":\"乙\"}},{\"delta\":{\"content\":\"丙\"}}]}\n"
+                    + "data: {\"choices\":[{\"delta\":{\"content\":\"丁\"}}]}";
+
+            ChatCompletionStreamParser.parse(input(stream), listener);
+
+            assertThat(contents).containsExactly("乙", "丁");
+        }
+
+        @Test
+        @DisplayName("超过读缓冲区的长行完整解析")
+        void shouldParseLongLines() throws IOException {
+            String longContent = "长".repeat(10000);
+            String stream = "data: {\"choices\":[{\"delta\":{\"content\":\"" + longContent + "\"}}]}\n\n";
+
+            ChatCompletionStreamParser.parse(oneByteAtATime(stream), listener);
+
+            assertThat(contents).containsExactly(longContent);
+        }
+    }
+
+    @Nested
+    @DisplayName("推送模式测试")
+    class FeedTests {
+
+        @Test
+        @DisplayName("数据块任意切分（含只读缓冲区）时结果不变，[DONE] 之后的数据忽略")
+        void shouldParseFedChunks() {
+            byte[] bytes = ("data: {\"choices\":[{\"delta\":{\"content\":\"图书馆\"}}]}\n\n"
+                    + "data: {\"choices\":[{\"delta\":{\"content\":\"开门\"}}]}\n\n"
+                    + "data: [DONE]\n\n"
+                    + "data: {\"choices\":[{\"delta\":{\"content\":\"不应出现\"}}]}\n\n")
+                    .getBytes(StandardCharsets.UTF_8);
+            ChatCompletionStreamParser parser = new ChatCompletionStreamParser(listener);
+
+            boolean done = false;
+            for (int offset = 0; offset < bytes.length && !done; offset += 7) {
+                ByteBuffer chunk = ByteBuffer.wrap(bytes, offset, Math.min(7, bytes.length - offset)).asReadOnlyBuffer();
+                done = parser.feed(chunk);
+            }
+
+            assertThat(done).isTrue();
+            assertThat(parser.finish()).isTrue();
+            assertThat(contents).containsExactly("图书馆", "开门");
+        }
+
+        @Test
+        @DisplayName("流结束时处理最后一行没有换行的数据")
+        void finishShouldHandleTrailingLine() {
+            byte[] bytes = "data: {\"choices\":[{\"delta\":{\"content\":\"闭馆\"}}]}".getBytes(StandardCharsets.UTF_8);
+            ChatCompletionStreamParser parser = new ChatCompletionStreamParser(listener);
+
+            assertThat(parser.feed(bytes, 0, bytes.length)).isFalse();
+            assertThat(contents).isEmpty();
+            assertThat(parser.finish()).isFalse();
+            assertThat(contents).containsExactly("闭馆");
+        }
+    }
+
+    @Nested
+    @DisplayName("工具调用测试")
+    class ToolCallTests {
+
+        @Test
+        @DisplayName("逐个回调工具调用增量，未出现的字段为null")
+        void shouldReportToolCallDeltas() throws IOException {
+            String stream = """
+                    data: {"choices":[{"delta":{"content":null,"tool_calls":[{"index":0,"id":"call_1","type":"function","function":{"name":"searchKnowledge","arguments":""}}]}}]}
+                    data: {"choices":[{"delta":{"tool_calls":[{"index":0,"function":{"arguments":"{\\"query\\":"}}]}}]}
+                    data: {"choices":[{"delta":{"tool_calls":[{"index":0,"function":{"arguments":"\\"图书馆\\"}"}},{"index":1,"id":"call_2","function":{"name":"searchKnowledge"}}]}}]}
+                    data: {"choices":[{"delta":{},"finish_reason":"tool_calls"}]}
+                    data: [DONE]
+                    """;
+
+            ChatCompletionStreamParser.parse(input(stream), listener);
+
+            assertThat(contents).isEmpty();
+            assertThat(toolCalls).containsExactly(
+                    "0|call_1|function|searchKnowledge|",
+                    "0|null|null|null|{\"query\":",
+                    "0|null|null|null|\"图书馆\"}",
+                    "1|call_2|null|searchKnowledge|null");
+        }
+    }
+
+    private static InputStream input(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 每次只返回一个字节，模拟多字节字符和行被拆到多次读取中
+     */
+    private static InputStream oneByteAtATime(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(1, len));
+            }
+        };
+    }
+}
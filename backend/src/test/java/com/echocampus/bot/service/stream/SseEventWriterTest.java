@@ -0,0 +1,115 @@
+package com.echocampus.bot.service.stream;
+
+import com.echocampus.bot.dto.response.ChatResponse;
+import com.echocampus.bot.dto.response.StreamChatResponse;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * SseEventWriter 单元测试
+ * 验证SSE帧格式、内容事件与完整序列化字段一致，以及写出失败后的状态
+ */
+@DisplayName("SseEventWriter - SSE事件写出测试")
+class SseEventWriterTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    @Nested
+    @DisplayName("帧格式测试")
+    class FrameTests {
+
+        @Test
+        @DisplayName("内容事件直接写出四个字段，特殊字符按JSON转义，每帧以空行结束")
+        void contentEventShouldBeFramed() throws IOException {
+            SseEventWriter writer = new SseEventWriter(out, objectMapper);
+
+            writer.send(StreamChatResponse.content(1L, 2L, "第一行\n\"引号\""));
+            writer.send(StreamChatResponse.content(1L, 2L, "继续"));
+
+            assertThat(out.toString(StandardCharsets.UTF_8)).isEqualTo(
+                    "event:content\ndata:{\"type\":\"CONTENT\",\"conversationId\":1,\"messageId\":2,"
+                            + "\"content\":\"第一行\\n\\\"引号\\\"\"}\n\n"
+                            + "event:content\ndata:{\"type\":\"CONTENT\",\"conversationId\":1,\"messageId\":2,"
+                            + "\"content\":\"继续\"}\n\n");
+        }
+
+        @Test
+        @DisplayName("内容事件与完整序列化的非空字段一致")
+        void contentEventShouldMatchFullSerialization() throws IOException {
+            StreamChatResponse event = StreamChatResponse.content(1L, null, "你好");
+            SseEventWriter writer = new SseEventWriter(out, objectMapper);
+
+            writer.send(event);
+
+            JsonNode fast = objectMapper.readTree(data(out.toString(StandardCharsets.UTF_8)));
+            JsonNode full = objectMapper.readTree(objectMapper.writeValueAsString(event));
+            full.fieldNames().forEachRemaining(field -> {
+                if (!full.get(field).isNull()) {
+                    assertThat(fast.get(field)).as(field).isEqualTo(full.get(field));
+                }
+            });
+            assertThat(fast.get("messageId").isNull()).isTrue();
+        }
+
+        @Test
+        @DisplayName("其他事件按对象完整序列化，事件名为小写类型")
+        void otherEventsShouldUseObjectMapper() throws IOException {
+            SseEventWriter writer = new SseEventWriter(out, objectMapper);
+            ChatResponse.TokenUsage usage = ChatResponse.TokenUsage.builder()
+                    .promptTokens(0).completionTokens(0).totalTokens(0).build();
+
+            writer.send(StreamChatResponse.status(1L, 2L, "正在生成回答..."));
+            writer.send(StreamChatResponse.done(1L, 2L, usage, 120L, Map.of("totalMs", 120L)));
+
+            String[] frames = out.toString(StandardCharsets.UTF_8).split("\n\n");
+            assertThat(frames).hasSize(2);
+            assertThat(frames[0]).startsWith("event:status\ndata:");
+            assertThat(objectMapper.readTree(data(frames[0])).get("stage").asText()).isEqualTo("正在生成回答...");
+            assertThat(frames[1]).startsWith("event:done\ndata:");
+            assertThat(objectMapper.readTree(data(frames[1])).at("/timings/totalMs").asLong()).isEqualTo(120L);
+        }
+    }
+
+    @Nested
+    @DisplayName("写出失败测试")
+    class FailureTests {
+
+        @Test
+        @DisplayName("写出失败后抛出异常并标记为失败")
+        void failedWriteShouldMarkWriter() throws IOException {
+            OutputStream broken = new OutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    throw new IOException("Broken pipe");
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    throw new IOException("Broken pipe");
+                }
+            };
+            SseEventWriter writer = new SseEventWriter(broken, objectMapper);
+            assertThat(writer.isFailed()).isFalse();
+
+            assertThatThrownBy(() -> writer.send(StreamChatResponse.content(1L, 2L, "你好")))
+                    .isInstanceOf(IOException.class);
+            assertThat(writer.isFailed()).isTrue();
+        }
+    }
+
+    private static String data(String frame) {
+        return frame.substring(frame.indexOf("data:") + 5).trim();
+    }
+}
@@ -0,0 +1,72 @@
+package com.echocampus.bot.service.stream;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * StreamCancellation 单元测试
+ */
+@DisplayName("StreamCancellation - 流式对话取消标记测试")
+class StreamCancellationTest {
+
+    @Test
+    @DisplayName("取消时按注册顺序执行回调，重复取消不再执行")
+    void cancelShouldRunCallbacksOnce() {
+        StreamCancellation cancellation = new StreamCancellation();
+        List<String> calls = new ArrayList<>();
+        cancellation.onCancel(() -> calls.add("first"));
+        cancellation.onCancel(() -> calls.add("second"));
+
+        cancellation.cancel();
+        cancellation.cancel();
+
+        assertThat(cancellation.isCancelled()).isTrue();
+        assertThat(calls).containsExactly("first", "second");
+    }
+
+    @Test
+    @DisplayName("已注销的回调在取消时不执行")
+    void closedRegistrationShouldNotRun() {
+        StreamCancellation cancellation = new StreamCancellation();
+        List<String> calls = new ArrayList<>();
+        StreamCancellation.Registration registration = cancellation.onCancel(() -> calls.add("closed"));
+        cancellation.onCancel(() -> calls.add("kept"));
+
+        registration.close();
+        cancellation.cancel();
+
+        assertThat(calls).containsExactly("kept");
+    }
+
+    @Test
+    @DisplayName("已取消时注册的回调立即执行")
+    void registrationAfterCancelShouldRunImmediately() {
+        StreamCancellation cancellation = new StreamCancellation();
+        cancellation.cancel();
+        List<String> calls = new ArrayList<>();
+
+        cancellation.onCancel(() -> calls.add("late")).close();
+
+        assertThat(calls).containsExactly("late");
+    }
+
+    @Test
+    @DisplayName("回调异常不影响其他回调")
+    void failingCallbackShouldNotStopOthers() {
+        StreamCancellation cancellation = new StreamCancellation();
+        List<String> calls = new ArrayList<>();
+        cancellation.onCancel(() -> {
+            throw new IllegalStateException("连接已关闭");
+        });
+        cancellation.onCancel(() -> calls.add("after"));
+
+        cancellation.cancel();
+
+        assertThat(calls).containsExactly("after");
+    }
+}
@@ -0,0 +1,306 @@
+package com.echocampus.bot.service.stream;
+
+import com.echocampus.bot.config.AiServiceConfig;
+import com.echocampus.bot.dto.response.StreamChatResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * TokenCoalescer 单元测试
+ * 验证按字符数、句末标点、合并窗口和定时写出合并内容片段，以及与其他事件的顺序
+ */
+@DisplayName("TokenCoalescer - 流式内容合并测试")
+class TokenCoalescerTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private final ExecutorService flushExecutor = Executors.newCachedThreadPool();
+    private AiServiceConfig config;
+    private TokenCoalescer coalescer;
+
+    @BeforeEach
+    void setUp() {
+        config = new AiServiceConfig();
+        // 测试中默认不触发时间条件，需要时单独调小
+        config.getStream().setMinFlushIntervalMs(60000L);
+        config.getStream().setMaxFlushIntervalMs(60000L);
+        config.getStream().setMaxBufferChars(8);
+        coalescer = new TokenCoalescer(config);
+        coalescer.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        coalescer.destroy();
+        flushExecutor.shutdownNow();
+    }
+
+    @Nested
+    @DisplayName("合并条件测试")
+    class FlushTests {
+
+        @Test
+        @DisplayName("缓冲字符数达到上限时合并写出")
+        void shouldFlushOnSize() throws Exception {
+            TokenCoalescer.Sink sink = open();
+
+            send(sink, "图书馆", "开放", "时间");
+            assertThat(frames()).isEmpty();
+            send(sink, "为早上");
+            awaitFrames(1);
+
+            assertThat(contents()).containsExactly("图书馆开放时间为早上");
+        }
+
+        @Test
+        @DisplayName("片段以句末标点或换行结尾时立即写出")
+        void shouldFlushOnSentenceEnd() throws Exception {
+            TokenCoalescer.Sink sink = open();
+
+            send(sink, "周末", "照常。");
+            // 前一帧写出前排入的内容会与其合并，等写出后再继续
+            awaitFrames(1);
+            send(sink, "下一", "行\n", "未完");
+            awaitFrames(2);
+
+            assertThat(contents()).containsExactly("周末照常。", "下一行\n");
+            sink.close().get(2, TimeUnit.SECONDS);
+            assertThat(contents()).containsExactly("周末照常。", "下一行\n", "未完");
+        }
+
+        @Test
+        @DisplayName("关闭句末写出后只按字符数写出")
+        void shouldIgnoreSentenceEndWhenDisabled() throws Exception {
+            config.getStream().setFlushOnSentenceEnd(false);
+            TokenCoalescer.Sink sink = open();
+
+            send(sink, "好。", "的");
+            sink.close().get(2, TimeUnit.SECONDS);
+
+            assertThat(contents()).containsExactly("好。的");
+        }
+
+        @Test
+        @DisplayName("片段停止到达时合并窗口到期后由定时线程写出")
+        void shouldFlushOnTimer() throws Exception {
+            config.getStream().setMinFlushIntervalMs(20L);
+            config.getStream().setMaxFlushIntervalMs(40L);
+            TokenCoalescer.Sink sink = open();
+
+            send(sink, "你好", "同学");
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+            while (frames().isEmpty() && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+
+            assertThat(contents()).containsExactly("你好同学");
+            assertThat(coalescer.getStats().get("timerFlushes")).isEqualTo(1L);
+        }
+
+        @Test
+        @DisplayName("定时写出在连接的执行器上执行，慢客户端不推迟其他连接的定时写出")
+        void slowClientShouldNotDelayOtherTimerFlushes() throws Exception {
+            config.getStream().setMinFlushIntervalMs(20L);
+            config.getStream().setMaxFlushIntervalMs(40L);
+            CountDownLatch release = new CountDownLatch(1);
+            List<String> writeThreads = Collections.synchronizedList(new ArrayList<>());
+            OutputStream blocked = new OutputStream() {
+                @Override
+                public void write(int b) {
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    writeThreads.add(Thread.currentThread().getName());
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException(e);
+                    }
+                }
+            };
+            TokenCoalescer.Sink slow = coalescer.open(new SseEventWriter(blocked, objectMapper), flushExecutor);
+            TokenCoalescer.Sink fast = open();
+
+            try {
+                send(slow, "慢客户端");
+                long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+                while (writeThreads.isEmpty() && System.nanoTime() < deadline) {
+                    Thread.sleep(5);
+                }
+                send(fast, "你好", "同学");
+                while (frames().isEmpty() && System.nanoTime() < deadline) {
+                    Thread.sleep(5);
+                }
+
+                assertThat(contents()).containsExactly("你好同学");
+                assertThat(writeThreads).singleElement().isNotEqualTo("sse-coalesce-flush");
+            } finally {
+                release.countDown();
+            }
+        }
+
+        @Test
+        @DisplayName("合并窗口取写出耗时的倍数，限制在最短和最长窗口之间")
+        void windowShouldStayWithinBounds() throws Exception {
+            config.getStream().setMinFlushIntervalMs(20L);
+            config.getStream().setMaxFlushIntervalMs(40L);
+            TokenCoalescer.Sink sink = open();
+
+            send(sink, "快速写出。");
+            sink.close().get(2, TimeUnit.SECONDS);
+
+            assertThat(sink.window()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(20));
+        }
+    }
+
+    @Nested
+    @DisplayName("事件顺序测试")
+    class OrderTests {
+
+        @Test
+        @DisplayName("其他事件写出前先写出缓冲的内容")
+        void otherEventsShouldFlushBufferFirst() throws Exception {
+            TokenCoalescer.Sink sink = open();
+
+            send(sink, "图书馆", "开放");
+            sink.send(StreamChatResponse.error(1L, 2L, "中断"));
+            awaitFrames(2);
+
+            List<String> frames = frames();
+            assertThat(frames).hasSize(2);
+            assertThat(frames.get(0)).startsWith("event:content\n");
+            assertThat(objectMapper.readTree(data(frames.get(0))).get("content").asText()).isEqualTo("图书馆开放");
+            assertThat(frames.get(1)).startsWith("event:error\n");
+        }
+
+        @Test
+        @DisplayName("发送线程只排入队列，所有写出在连接的执行器上按顺序执行")
+        void sendShouldNotWriteOnCallingThread() throws Exception {
+            List<String> writeThreads = Collections.synchronizedList(new ArrayList<>());
+            OutputStream recording = new OutputStream() {
+                @Override
+                public void write(int b) {
+                    out.write(b);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) {
+                    writeThreads.add(Thread.currentThread().getName());
+                    out.write(b, off, len);
+                }
+            };
+            TokenCoalescer.Sink sink = coalescer.open(new SseEventWriter(recording, objectMapper), flushExecutor);
+
+            sink.send(StreamChatResponse.status(1L, 2L, "retrieving"));
+            send(sink, "开馆。", "闭馆", "时间");
+            sink.send(StreamChatResponse.error(1L, 2L, "中断"));
+            sink.close().get(2, TimeUnit.SECONDS);
+
+            // 写出跟不上时相邻的内容事件会合并，只比较顺序和拼接后的内容
+            List<String> frames = frames();
+            assertThat(frames.get(0)).startsWith("event:status\n");
+            assertThat(frames.get(frames.size() - 1)).startsWith("event:error\n");
+            StringBuilder content = new StringBuilder();
+            for (String frame : frames.subList(1, frames.size() - 1)) {
+                content.append(objectMapper.readTree(data(frame)).get("content").asText());
+            }
+            assertThat(content.toString()).isEqualTo("开馆。闭馆时间");
+            assertThat(writeThreads).hasSize(frames.size()).doesNotContain(Thread.currentThread().getName());
+        }
+
+        @Test
+        @DisplayName("写出失败后发送抛出异常，关闭异常完成")
+        void failedWriteShouldSurfaceOnSendAndClose() throws Exception {
+            OutputStream broken = new OutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    throw new IOException("Broken pipe");
+                }
+            };
+            TokenCoalescer.Sink sink = coalescer.open(new SseEventWriter(broken, objectMapper), flushExecutor);
+
+            sink.send(StreamChatResponse.error(1L, 2L, "中断"));
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+            while (!sink.isFailed() && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+
+            assertThat(sink.isFailed()).isTrue();
+            assertThatThrownBy(() -> send(sink, "同学")).isInstanceOf(IOException.class);
+        }
+
+        @Test
+        @DisplayName("关闭合并时每个片段单独写出，空片段跳过")
+        void shouldPassThroughWhenDisabled() throws Exception {
+            config.getStream().setCoalesceEnabled(false);
+            TokenCoalescer.Sink sink = open();
+
+            send(sink, "图书馆", "", "开放");
+            awaitFrames(2);
+
+            assertThat(contents()).containsExactly("图书馆", "开放");
+            assertThat(coalescer.getStats().get("contentFrames")).isEqualTo(2L);
+        }
+    }
+
+    private TokenCoalescer.Sink open() throws IOException {
+        return coalescer.open(new SseEventWriter(out, objectMapper), flushExecutor);
+    }
+
+    private static void send(TokenCoalescer.Sink sink, String... contents) throws IOException {
+        for (String content : contents) {
+            sink.send(StreamChatResponse.content(1L, 2L, content));
+        }
+    }
+
+    private void awaitFrames(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (frames().size() < count && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+
+    private List<String> frames() {
+        List<String> frames = new ArrayList<>();
+        synchronized (out) {
+            for (String frame : out.toString(StandardCharsets.UTF_8).split("\n\n")) {
+                if (!frame.isEmpty()) {
+                    frames.add(frame);
+                }
+            }
+        }
+        return frames;
+    }
+
+    private List<String> contents() throws IOException {
+        List<String> contents = new ArrayList<>();
+        for (String frame : frames()) {
+            contents.add(objectMapper.readTree(data(frame)).get("content").asText());
+        }
+        return contents;
+    }
+
+    private static String data(String frame) {
+        return frame.substring(frame.indexOf("data:") + 5).trim();
+    }
+}
@@ -0,0 +1,205 @@
+package com.echocampus.bot.service.tool;
+
+import com.echocampus.bot.config.AiServiceConfig;
+import com.echocampus.bot.entity.KnowledgeChunk;
+import com.echocampus.bot.entity.KnowledgeDoc;
+import com.echocampus.bot.mapper.KnowledgeChunkMapper;
+import com.echocampus.bot.mapper.KnowledgeDocMapper;
+import com.echocampus.bot.service.EmbeddingService;
+import com.echocampus.bot.service.MilvusService;
+import com.echocampus.bot.service.RagService.SourceInfo;
+import com.echocampus.bot.service.retrieval.ChunkHitResolver;
+import com.echocampus.bot.service.retrieval.ContextPacker;
+import com.echocampus.bot.service.retrieval.DocumentChunkIndex;
+import com.echocampus.bot.service.retrieval.KnowledgeDocCache;
+import com.echocampus.bot.service.retrieval.KnowledgeRetriever;
+import com.echocampus.bot.service.retrieval.NeighbourChunkExpander;
+import com.echocampus.bot.service.retrieval.RerankService;
+import com.echocampus.bot.service.retrieval.VectorRetrievalStrategy;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * KnowledgeSearchTool 单元测试
+ * 验证工具返回的结构化来源与提供给AI的文本来自同一次检索，不再额外检索
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+@DisplayName("KnowledgeSearchTool - 知识库检索工具测试")
+class KnowledgeSearchToolTest {
+
+    private static final float[] QUERY_VECTOR = {0.1f, 0.2f, 0.3f};
+
+    @Mock
+    private EmbeddingService embeddingService;
+
+    @Mock
+    private MilvusService milvusService;
+
+    @Mock
+    private KnowledgeChunkMapper knowledgeChunkMapper;
+
+    @Mock
+    private KnowledgeDocMapper knowledgeDocMapper;
+
+    private KnowledgeSearchTool searchTool;
+
+    @BeforeEach
+    void setUp() {
+        List<KnowledgeChunk> chunks = List.of(
+                createChunk(11L, 1L, "图书馆开放时间为8:00-22:00"),
+                createChunk(12L, 1L, "借书证需要在一卡通中心办理"),
+                createChunk(13L, 2L, "自习室位于图书馆三楼"));
+        List<KnowledgeDoc> docs = List.of(createDoc(1L, "图书馆指南"), createDoc(2L, "教学楼指南"));
+
+        when(embeddingService.embedQueries(anyList())).thenAnswer(invocation -> {
+            List<String> queries = invocation.getArgument(0);
+            return queries.stream().map(q -> QUERY_VECTOR).toList();
+        });
+        givenSearchResults(List.of(
+                createSearchResult(12L, 1L, 0.72f),
+                createSearchResult(11L, 1L, 0.91f),
+                createSearchResult(13L, 2L, 0.65f)));
+        when(knowledgeChunkMapper.selectBatchIds(anyCollection()))
+                .thenAnswer(invocation -> matching(chunks, invocation.getArgument(0), KnowledgeChunk::getId));
+        when(knowledgeDocMapper.selectBatchIds(anyCollection()))
+                .thenAnswer(invocation -> matching(docs, invocation.getArgument(0), KnowledgeDoc::getId));
+
+        KnowledgeDocCache docCache = new KnowledgeDocCache(knowledgeDocMapper);
+        ReflectionTestUtils.setField(docCache, "maxEntries", 100);
+        ReflectionTestUtils.setField(docCache, "ttlSeconds", 60L);
+        docCache.init();
+        ChunkHitResolver resolver = new ChunkHitResolver(knowledgeChunkMapper, docCache);
+
+        VectorRetrievalStrategy vectorStrategy = new VectorRetrievalStrategy(embeddingService, milvusService);
+        ReflectionTestUtils.setField(vectorStrategy, "similarityThreshold", 0.6f);
+        RerankService rerankService = new RerankService(List.of(), new AiServiceConfig());
+        rerankService.init();
+        KnowledgeRetriever retriever = new KnowledgeRetriever(List.of(vectorStrategy), resolver, rerankService);
+        ReflectionTestUtils.setField(retriever, "strategyName", VectorRetrievalStrategy.NAME);
+        retriever.init();
+
+        ContextPacker contextPacker = new ContextPacker();
+        ReflectionTestUtils.setField(contextPacker, "maxTokens", 2000);
+        NeighbourChunkExpander expander = new NeighbourChunkExpander(
+                new DocumentChunkIndex(knowledgeChunkMapper), knowledgeChunkMapper);
+        searchTool = new KnowledgeSearchTool(retriever, contextPacker, expander);
+        ReflectionTestUtils.setField(searchTool, "defaultTopK", 5);
+    }
+
+    @Nested
+    @DisplayName("结构化来源测试")
+    class SourceTests {
+
+        @Test
+        @DisplayName("来源的文档ID、标题、片段ID和分数应与检索到的片段一致")
+        void sourcesShouldMatchRetrievedChunks() {
+            KnowledgeSearchTool.KnowledgeResult result = searchTool.search("图书馆几点开门");
+
+            assertThat(result.sources())
+                    .extracting(SourceInfo::docId, SourceInfo::docTitle, SourceInfo::chunkId, SourceInfo::score)
+                    .containsExactly(
+                            tuple(1L, "图书馆指南", 11L, 0.91f),
+                            tuple(1L, "图书馆指南", 12L, 0.72f),
+                            tuple(2L, "教学楼指南", 13L, 0.65f));
+            assertThat(result.sources().get(0).content()).isEqualTo("图书馆开放时间为8:00-22:00");
+        }
+
+        @Test
+        @DisplayName("来源与提供给AI的文本来自同一次检索")
+        void sourcesAndTextShouldComeFromOneSearch() {
+            KnowledgeSearchTool.KnowledgeResult result = searchTool.search("图书馆几点开门");
+
+            verify(embeddingService, times(1)).embedQueries(anyList());
+            verify(milvusService, times(1)).searchBatch(anyList(), anyInt(), anyFloat(), any());
+            assertThat(result.text())
+                    .contains("来源文档：图书馆指南")
+                    .contains("图书馆开放时间为8:00-22:00")
+                    .contains("自习室位于图书馆三楼");
+        }
+
+        @Test
+        @DisplayName("未检索到内容时不返回来源")
+        void emptySearchShouldReturnNoSources() {
+            givenSearchResults(Collections.emptyList());
+
+            KnowledgeSearchTool.KnowledgeResult result = searchTool.search("食堂几点开门");
+
+            assertThat(result.sources()).isEmpty();
+            assertThat(result.text()).isEqualTo("知识库中未找到相关内容");
+        }
+
+        @Test
+        @DisplayName("批量检索的来源与请求一一对应，空问题不检索")
+        void batchSourcesShouldFollowRequestOrder() {
+            List<KnowledgeSearchTool.KnowledgeResult> results = searchTool.searchBatch(List.of(
+                    new KnowledgeSearchTool.KnowledgeQuery("图书馆几点开门", null),
+                    new KnowledgeSearchTool.KnowledgeQuery(" ", null)));
+
+            assertThat(results).hasSize(2);
+            assertThat(results.get(0).sources()).extracting(SourceInfo::chunkId).containsExactly(11L, 12L, 13L);
+            assertThat(results.get(1).sources()).isEmpty();
+        }
+    }
+
+    private static KnowledgeChunk createChunk(Long id, Long docId, String content) {
+        KnowledgeChunk chunk = new KnowledgeChunk();
+        chunk.setId(id);
+        chunk.setDocId(docId);
+        chunk.setContent(content);
+        return chunk;
+    }
+
+    private static KnowledgeDoc createDoc(Long id, String title) {
+        KnowledgeDoc doc = new KnowledgeDoc();
+        doc.setId(id);
+        doc.setTitle(title);
+        return doc;
+    }
+
+    private static MilvusService.SearchResult createSearchResult(Long chunkId, Long docId, float score) {
+        MilvusService.SearchResult result = new MilvusService.SearchResult();
+        result.setChunkId(chunkId);
+        result.setDocId(docId);
+        result.setScore(score);
+        return result;
+    }
+
+    private void givenSearchResults(List<MilvusService.SearchResult> results) {
+        when(milvusService.searchBatch(anyList(), anyInt(), anyFloat(), any())).thenAnswer(invocation -> {
+            List<float[]> vectors = invocation.getArgument(0);
+            return vectors.stream().map(v -> results).toList();
+        });
+    }
+
+    /**
+     * 模拟 selectBatchIds：按ID过滤给定数据
+     */
+    private static <T> List<T> matching(List<T> rows, Collection<?> ids, Function<T, Long> idOf) {
+        List<T> matched = new ArrayList<>();
+        for (T row : rows) {
+            if (ids.contains(idOf.apply(row))) {
+                matched.add(row);
+            }
+        }
+        return matched;
+    }
+}
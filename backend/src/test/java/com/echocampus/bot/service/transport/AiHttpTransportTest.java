@@ -0,0 +1,289 @@
+package com.echocampus.bot.service.transport;
+
+import com.echocampus.bot.config.AiServiceConfig;
+import com.sun.net.httpserver.HttpServer;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * AiHttpTransport 单元测试
+ * 验证按主机限制并发请求数、响应体关闭时归还名额、按请求的超时、非阻塞流式请求，以及连接预热和运行指标
+ */
+@DisplayName("AiHttpTransport - AI服务HTTP传输测试")
+class AiHttpTransportTest {
+
+    private final AtomicInteger concurrent = new AtomicInteger();
+    private final AtomicInteger peakConcurrent = new AtomicInteger();
+    private volatile long delayMs = 0;
+    private volatile int streamStatus = 200;
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private AiServiceConfig aiConfig;
+    private AiHttpTransport transport;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/stream", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            if (streamStatus != 200) {
+                byte[] body = "{\"error\":\"overloaded\"}".getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(streamStatus, body.length);
+                try (OutputStream os = exchange.getResponseBody()) {
+                    os.write(body);
+                }
+                return;
+            }
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream os = exchange.getResponseBody()) {
+                for (int i = 0; i < 3; i++) {
+                    os.write(("chunk" + i + "\n").getBytes(StandardCharsets.UTF_8));
+                    os.flush();
+                    Thread.sleep(delayMs);
+                }
+            } catch (IOException | InterruptedException e) {
+                // 客户端中止
+            }
+        });
+        server.createContext("/", exchange -> {
+            peakConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(delayMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                concurrent.decrementAndGet();
+            }
+            byte[] body = "ok".getBytes(StandardCharsets.UTF_8);
+            if ("HEAD".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(404, -1);
+                exchange.close();
+                return;
+            }
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        });
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+        server.start();
+
+        aiConfig = new AiServiceConfig();
+        aiConfig.getHttp().setMaxRequestsPerHost(2);
+        aiConfig.getHttp().setAcquireTimeoutMs(5000L);
+        transport = new AiHttpTransport(aiConfig);
+    }
+
+    @AfterEach
+    void tearDown() {
+        transport.destroy();
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Nested
+    @DisplayName("并发限制测试")
+    class ConcurrencyTests {
+
+        @Test
+        @DisplayName("同一主机同时进行中的请求数不超过上限，超出的排队等待")
+        void shouldLimitRequestsPerHost() throws Exception {
+            delayMs = 100;
+            ExecutorService callers = Executors.newFixedThreadPool(6);
+            try {
+                List<Future<String>> results = new ArrayList<>();
+                for (int i = 0; i < 6; i++) {
+                    results.add(callers.submit(() -> {
+                        try (Response response = transport.execute(request("/embeddings"), null, null)) {
+                            return response.body().string();
+                        }
+                    }));
+                }
+                for (Future<String> result : results) {
+                    assertThat(result.get()).isEqualTo("ok");
+                }
+            } finally {
+                callers.shutdownNow();
+            }
+
+            assertThat(peakConcurrent.get()).isLessThanOrEqualTo(2);
+            Map<String, Object> host = hostStats();
+            assertThat(host).containsEntry("peakInFlight", 2).containsEntry("inFlight", 0)
+                    .containsEntry("calls", 6L);
+            assertThat((Long) host.get("queued")).isPositive();
+        }
+
+        @Test
+        @DisplayName("名额在响应体关闭时归还，等待超过整体超时的请求失败")
+        void permitShouldBeReleasedWhenBodyIsClosed() throws Exception {
+            aiConfig.getHttp().setMaxRequestsPerHost(1);
+            transport = new AiHttpTransport(aiConfig);
+
+            Response held = transport.execute(request("/chat"), null, null);
+            assertThatThrownBy(() -> transport.execute(request("/chat"), null, Duration.ofMillis(200)))
+                    .isInstanceOf(InterruptedIOException.class);
+
+            held.close();
+            try (Response response = transport.execute(request("/chat"), null, Duration.ofMillis(2000))) {
+                assertThat(response.body().string()).isEqualTo("ok");
+            }
+            assertThat(hostStats()).containsEntry("rejected", 1L).containsEntry("inFlight", 0);
+        }
+    }
+
+    @Nested
+    @DisplayName("超时测试")
+    class TimeoutTests {
+
+        @Test
+        @DisplayName("按请求指定的读超时生效，不影响同一主机的其他请求")
+        void readTimeoutShouldApplyPerCall() throws Exception {
+            delayMs = 300;
+
+            assertThatThrownBy(() -> transport.execute(request("/slow"), Duration.ofMillis(50), null))
+                    .isInstanceOf(IOException.class);
+            try (Response response = transport.execute(request("/slow"), null, null)) {
+                assertThat(response.body().string()).isEqualTo("ok");
+            }
+            assertThat(hostStats()).containsEntry("failures", 1L).containsEntry("inFlight", 0);
+        }
+    }
+
+    @Nested
+    @DisplayName("非阻塞流式请求测试")
+    class StreamTests {
+
+        @Test
+        @DisplayName("数据块按到达顺序回调，读完后完成，不占用调用线程")
+        void shouldDeliverChunksInOrder() throws Exception {
+            delayMs = 20;
+            StringBuilder received = new StringBuilder();
+
+            CompletableFuture<Void> result = transport.stream(streamRequest(), Duration.ofSeconds(2),
+                    buffer -> received.append(StandardCharsets.UTF_8.decode(buffer)));
+
+            assertThat(result).isNotDone();
+            result.get(5, TimeUnit.SECONDS);
+            assertThat(received.toString()).isEqualTo("chunk0\nchunk1\nchunk2\n");
+            assertThat(streamStats()).containsEntry("active", 0).containsEntry("calls", 1L)
+                    .containsEntry("failures", 0L);
+        }
+
+        @Test
+        @DisplayName("非2xx状态码以 HttpStatusException 失败，带响应体")
+        void errorStatusShouldFail() {
+            streamStatus = 503;
+
+            assertThatThrownBy(() -> transport.stream(streamRequest(), Duration.ofSeconds(2), buffer -> { })
+                    .get(5, TimeUnit.SECONDS))
+                    .cause()
+                    .isInstanceOfSatisfying(AiHttpTransport.HttpStatusException.class, e -> {
+                        assertThat(e.getStatusCode()).isEqualTo(503);
+                        assertThat(e.getBody()).contains("overloaded");
+                    });
+            assertThat(streamStats()).containsEntry("failures", 1L).containsEntry("active", 0);
+        }
+
+        @Test
+        @DisplayName("两次数据到达间隔超过读超时时失败")
+        void idleStreamShouldTimeOut() {
+            delayMs = 1000;
+
+            assertThatThrownBy(() -> transport.stream(streamRequest(), Duration.ofMillis(200), buffer -> { })
+                    .get(5, TimeUnit.SECONDS))
+                    .cause()
+                    .isInstanceOf(HttpTimeoutException.class);
+            assertThat(streamStats()).containsEntry("active", 0);
+        }
+
+        @Test
+        @DisplayName("超过每主机流式请求上限时立即失败")
+        void shouldRejectBeyondLimit() throws Exception {
+            aiConfig.getHttp().setMaxStreamsPerHost(1);
+            transport = new AiHttpTransport(aiConfig);
+            delayMs = 200;
+
+            CompletableFuture<Void> first = transport.stream(streamRequest(), Duration.ofSeconds(2), buffer -> { });
+            assertThatThrownBy(() -> transport.stream(streamRequest(), Duration.ofSeconds(2), buffer -> { }).join())
+                    .hasCauseInstanceOf(IOException.class);
+
+            first.get(5, TimeUnit.SECONDS);
+            assertThat(streamStats()).containsEntry("rejected", 1L).containsEntry("peak", 1);
+        }
+    }
+
+    @Nested
+    @DisplayName("预热与指标测试")
+    class WarmUpTests {
+
+        @Test
+        @DisplayName("预热建立到主机的连接，状态码不影响结果")
+        void warmUpShouldOpenConnection() {
+            assertThat(transport.warmUp(baseUrl() + "/v1/embeddings")).isTrue();
+
+            Map<String, Object> host = hostStats();
+            assertThat(host).containsEntry("warmedUp", true).containsEntry("protocol", "http/1.1");
+            assertThat((Integer) host.get("idleConnections")).isEqualTo(1);
+        }
+
+        @Test
+        @DisplayName("无效地址不预热")
+        void invalidUrlShouldBeSkipped() {
+            assertThat(transport.warmUp("not a url")).isFalse();
+            assertThat(transport.warmUp(null)).isFalse();
+        }
+    }
+
+    private String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    private Request request(String path) {
+        return new Request.Builder().url(baseUrl() + path).get().build();
+    }
+
+    private Request streamRequest() {
+        return new Request.Builder().url(baseUrl() + "/stream")
+                .post(RequestBody.create("{}", MediaType.parse("application/json")))
+                .build();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> streamStats() {
+        return (Map<String, Object>) hostStats().get("streams");
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> hostStats() {
+        Map<String, Object> hosts = (Map<String, Object>) transport.getStats().get("hosts");
+        assertThat(hosts).hasSize(1);
+        return (Map<String, Object>) hosts.values().iterator().next();
+    }
+}
@@ -0,0 +1,64 @@
+package com.echocampus.bot.utils;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * TokenBucket 单元测试
+ */
+@DisplayName("TokenBucket - 令牌桶限流测试")
+class TokenBucketTest {
+
+    private static final long SECOND = 1_000_000_000L;
+
+    @Test
+    @DisplayName("突发容量内的请求应立即放行")
+    void burstShouldPassImmediately() {
+        AtomicLong now = new AtomicLong();
+        TokenBucket bucket = new TokenBucket(10, 3, now::get);
+
+        assertThat(bucket.reserve()).isZero();
+        assertThat(bucket.reserve()).isZero();
+        assertThat(bucket.reserve()).isZero();
+    }
+
+    @Test
+    @DisplayName("令牌不足时应按速率排队等待")
+    void exhaustedBucketShouldQueue() {
+        AtomicLong now = new AtomicLong();
+        TokenBucket bucket = new TokenBucket(10, 1, now::get);
+
+        assertThat(bucket.reserve()).isZero();
+        assertThat(bucket.reserve()).isEqualTo(SECOND / 10);
+        assertThat(bucket.reserve()).isEqualTo(2 * SECOND / 10);
+    }
+
+    @Test
+    @DisplayName("空闲一段时间后应补充令牌但不超过容量")
+    void shouldRefillUpToCapacity() {
+        AtomicLong now = new AtomicLong();
+        TokenBucket bucket = new TokenBucket(10, 2, now::get);
+        bucket.reserve();
+        bucket.reserve();
+
+        now.addAndGet(10 * SECOND);
+
+        assertThat(bucket.reserve()).isZero();
+        assertThat(bucket.reserve()).isZero();
+        assertThat(bucket.reserve()).isPositive();
+    }
+
+    @Test
+    @DisplayName("速率小于等于0时不限流")
+    void nonPositiveRateShouldNotLimit() {
+        TokenBucket bucket = new TokenBucket(0, 1);
+
+        for (int i = 0; i < 100; i++) {
+            assertThat(bucket.reserve()).isZero();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.echocampus.bot.vector;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * HnswIndex 单元测试
+ */
+@DisplayName("HnswIndex - HNSW近似检索测试")
+class HnswIndexTest {
+
+    private static final int DIMENSION = 32;
+    private static final int COUNT = 2000;
+
+    private VectorArena arena;
+    private HnswIndex index;
+    private Random random;
+
+    @BeforeEach
+    void setUp() {
+        random = new Random(7);
+        arena = new VectorArena(DIMENSION, COUNT);
+        index = new HnswIndex(arena, 16, 128, 42L);
+        for (int i = 0; i < COUNT; i++) {
+            index.add(arena.add(i, randomUnitVector()));
+        }
+    }
+
+    @Test
+    @DisplayName("召回率应接近暴力检索")
+    void recallShouldBeHigh() {
+        int k = 10;
+        int found = 0;
+        for (int q = 0; q < 100; q++) {
+            float[] query = randomUnitVector();
+            int[] exact = arena.exactSearch(query, k).slots();
+            int[] approx = index.search(query, k, 100).slots();
+            Arrays.sort(exact);
+            for (int slot : approx) {
+                if (Arrays.binarySearch(exact, slot) >= 0) {
+                    found++;
+                }
+            }
+        }
+
+        assertThat(found / (100.0 * k)).isGreaterThan(0.95);
+    }
+
+    @Test
+    @DisplayName("结果应按相似度降序排列")
+    void resultsShouldBeSortedDescending() {
+        SearchHits hits = index.search(randomUnitVector(), 10, 64);
+
+        assertThat(hits.size()).isEqualTo(10);
+        for (int i = 1; i < hits.size(); i++) {
+            assertThat(hits.scores()[i]).isLessThanOrEqualTo(hits.scores()[i - 1]);
+        }
+    }
+
+    @Test
+    @DisplayName("已删除的槽位不应出现在结果中")
+    void deletedSlotsShouldBeExcluded() {
+        float[] query = arena.get(123);
+        assertThat(index.search(query, 1, 64).slots()).containsExactly(123);
+
+        arena.delete(123);
+
+        SearchHits hits = index.search(query, 10, 64);
+        assertThat(hits.slots()).doesNotContain(123).hasSize(10);
+    }
+
+    @Test
+    @DisplayName("槽位必须按顺序加入")
+    void slotsMustBeAddedInOrder() {
+        arena.add(COUNT, randomUnitVector());
+        arena.add(COUNT + 1, randomUnitVector());
+
+        assertThatThrownBy(() -> index.add(COUNT + 1))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private float[] randomUnitVector() {
+        float[] vector = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return VectorMath.normalize(vector);
+    }
+}
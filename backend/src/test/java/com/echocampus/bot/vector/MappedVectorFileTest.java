@@ -0,0 +1,81 @@
+package com.echocampus.bot.vector;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * MappedVectorFile 单元测试
+ */
+@DisplayName("MappedVectorFile - 向量文件持久化测试")
+class MappedVectorFileTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("重新打开后应恢复记录和向量")
+    void shouldPersistAcrossReopen() throws Exception {
+        Path path = tempDir.resolve("index.vec");
+        try (MappedVectorFile file = MappedVectorFile.open(path, 3)) {
+            file.append(10L, new float[]{1f, 2f, 3f});
+            file.append(11L, new float[]{4f, 5f, 6f});
+            file.markDeleted(0);
+        }
+
+        try (MappedVectorFile file = MappedVectorFile.open(path, 3)) {
+            assertThat(file.count()).isEqualTo(2);
+            assertThat(file.id(0)).isEqualTo(MappedVectorFile.DELETED_ID);
+            assertThat(file.id(1)).isEqualTo(11L);
+            assertThat(file.read(1)).containsExactly(4f, 5f, 6f);
+        }
+    }
+
+    @Test
+    @DisplayName("超出初始容量时应自动扩容")
+    void shouldGrowBeyondInitialCapacity() throws Exception {
+        try (MappedVectorFile file = MappedVectorFile.open(tempDir.resolve("grow.vec"), 2)) {
+            for (int i = 0; i < 5000; i++) {
+                file.append(i, new float[]{i, -i});
+            }
+
+            assertThat(file.count()).isEqualTo(5000);
+            assertThat(file.read(4999)).containsExactly(4999f, -4999f);
+        }
+    }
+
+    @Test
+    @DisplayName("维度不一致时应重置为空文件")
+    void dimensionMismatchShouldReset() throws Exception {
+        Path path = tempDir.resolve("dim.vec");
+        try (MappedVectorFile file = MappedVectorFile.open(path, 3)) {
+            file.append(1L, new float[]{1f, 2f, 3f});
+        }
+
+        try (MappedVectorFile file = MappedVectorFile.open(path, 4)) {
+            assertThat(file.count()).isZero();
+        }
+    }
+
+    @Test
+    @DisplayName("压缩应丢弃已删除记录并保持顺序")
+    void compactShouldDropDeletedRecords() throws Exception {
+        Path path = tempDir.resolve("compact.vec");
+        MappedVectorFile file = MappedVectorFile.open(path, 1);
+        for (int i = 0; i < 6; i++) {
+            file.append(i, new float[]{i});
+        }
+        file.markDeleted(1);
+
+        try (MappedVectorFile compacted = file.compact(id -> id != 4)) {
+            assertThat(compacted.count()).isEqualTo(4);
+            assertThat(compacted.id(0)).isEqualTo(0L);
+            assertThat(compacted.id(1)).isEqualTo(2L);
+            assertThat(compacted.read(3)).containsExactly(5f);
+        }
+    }
+}
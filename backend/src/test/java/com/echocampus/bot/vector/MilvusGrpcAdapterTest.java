@@ -0,0 +1,34 @@
+package com.echocampus.bot.vector;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * MilvusGrpcAdapter 单元测试：SDK版本校验
+ */
+@DisplayName("MilvusGrpcAdapter - SDK版本校验测试")
+class MilvusGrpcAdapterTest {
+
+    @Test
+    @DisplayName("classpath上的SDK应是已验证的版本")
+    void bundledSdkShouldBeVerified() {
+        String version = MilvusGrpcAdapter.sdkVersion();
+
+        assertThat(version).isNotNull();
+        assertThatCode(() -> MilvusGrpcAdapter.checkSdkVersion(version)).doesNotThrowAnyException();
+    }
+
+    @Test
+    @DisplayName("未验证或未知的SDK版本应拒绝")
+    void unverifiedSdkShouldBeRejected() {
+        assertThatThrownBy(() -> MilvusGrpcAdapter.checkSdkVersion("2.4.0"))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("2.4.0");
+        assertThatThrownBy(() -> MilvusGrpcAdapter.checkSdkVersion("2.30.1"))
+                .isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> MilvusGrpcAdapter.checkSdkVersion(null))
+                .isInstanceOf(IllegalStateException.class);
+    }
+}
@@ -0,0 +1,91 @@
+package com.echocampus.bot.vector;
+
+import com.echocampus.bot.config.MilvusConfig;
+import com.echocampus.bot.service.MilvusService.SearchBudget;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * MilvusIndexProfile 单元测试：各索引类型的建索引参数与按预算缩放的检索参数
+ */
+@DisplayName("MilvusIndexProfile - 索引参数测试")
+class MilvusIndexProfileTest {
+
+    private static MilvusIndexProfile profile(String type) {
+        return new MilvusIndexProfile(type, "COSINE", 128, 10, 16, 8, 16, 200, 64, 100);
+    }
+
+    @Nested
+    @DisplayName("建索引参数测试")
+    class IndexParamTests {
+
+        @Test
+        @DisplayName("各索引类型应生成对应的建索引参数")
+        void shouldBuildParamsPerType() {
+            assertThat(profile("IVF_FLAT").indexParams()).isEqualTo("{\"nlist\":128}");
+            assertThat(profile("IVF_SQ8").indexParams()).isEqualTo("{\"nlist\":128}");
+            assertThat(profile("IVF_PQ").indexParams()).isEqualTo("{\"nlist\":128,\"m\":16,\"nbits\":8}");
+            assertThat(profile("HNSW").indexParams()).isEqualTo("{\"M\":16,\"efConstruction\":200}");
+            assertThat(profile("DISKANN").indexParams()).isEqualTo("{}");
+            assertThat(profile("FLAT").indexParams()).isEqualTo("{}");
+        }
+
+        @Test
+        @DisplayName("索引类型应忽略大小写，不支持的类型和非正数参数应抛出异常")
+        void shouldValidate() {
+            assertThat(profile(" hnsw ").indexType()).isEqualTo("HNSW");
+            assertThatThrownBy(() -> profile("SCANN")).isInstanceOf(IllegalArgumentException.class);
+            assertThatThrownBy(() -> new MilvusIndexProfile("HNSW", "COSINE", 128, 10, 16, 8, 16, 200, 0, 100))
+                    .isInstanceOf(IllegalArgumentException.class);
+        }
+
+        @Test
+        @DisplayName("默认配置应生成 IVF_FLAT 参数")
+        void shouldReadConfig() {
+            MilvusIndexProfile fromConfig = MilvusIndexProfile.from(new MilvusConfig());
+
+            assertThat(fromConfig.indexType()).isEqualTo("IVF_FLAT");
+            assertThat(fromConfig.withIndexType("HNSW").indexParams()).isEqualTo("{\"M\":16,\"efConstruction\":200}");
+        }
+    }
+
+    @Nested
+    @DisplayName("检索参数测试")
+    class SearchParamTests {
+
+        @Test
+        @DisplayName("IVF的nprobe应按预算缩放并限制在 [1, nlist]")
+        void nprobeShouldScaleAndClamp() {
+            MilvusIndexProfile ivf = profile("IVF_SQ8");
+
+            assertThat(ivf.searchParams(null, 10)).isEqualTo("{\"nprobe\":10}");
+            assertThat(ivf.searchParams(SearchBudget.FAST, 10)).isEqualTo("{\"nprobe\":5}");
+            assertThat(ivf.searchParams(SearchBudget.ACCURATE, 10)).isEqualTo("{\"nprobe\":40}");
+            assertThat(new MilvusIndexProfile("IVF_PQ", "COSINE", 16, 10, 16, 8, 16, 200, 64, 100)
+                    .searchParams(SearchBudget.ACCURATE, 10)).isEqualTo("{\"nprobe\":16}");
+            assertThat(new MilvusIndexProfile("IVF_FLAT", "COSINE", 16, 1, 16, 8, 16, 200, 64, 100)
+                    .searchParams(SearchBudget.FAST, 10)).isEqualTo("{\"nprobe\":1}");
+        }
+
+        @Test
+        @DisplayName("HNSW的ef和DISKANN的search_list应不小于topK")
+        void efShouldNotBeLessThanTopK() {
+            assertThat(profile("HNSW").searchParams(SearchBudget.BALANCED, 10)).isEqualTo("{\"ef\":64}");
+            assertThat(profile("HNSW").searchParams(SearchBudget.FAST, 50)).isEqualTo("{\"ef\":50}");
+            assertThat(profile("HNSW").searchParams(SearchBudget.ACCURATE, 10)).isEqualTo("{\"ef\":256}");
+            assertThat(profile("DISKANN").searchParams(SearchBudget.FAST, 80)).isEqualTo("{\"search_list\":80}");
+            assertThat(profile("FLAT").searchParams(SearchBudget.ACCURATE, 10)).isEqualTo("{}");
+        }
+
+        @Test
+        @DisplayName("预算名称应忽略大小写，空值为默认，无效名称应抛出异常")
+        void budgetShouldParse() {
+            assertThat(SearchBudget.of("Fast")).isEqualTo(SearchBudget.FAST);
+            assertThat(SearchBudget.of(" ")).isNull();
+            assertThatThrownBy(() -> SearchBudget.of("slow")).isInstanceOf(IllegalArgumentException.class);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.echocampus.bot.vector;
+
+import com.google.protobuf.ByteString;
+import io.milvus.grpc.CollectionSchema;
+import io.milvus.grpc.DataType;
+import io.milvus.grpc.DescribeCollectionResponse;
+import io.milvus.grpc.FieldData;
+import io.milvus.grpc.InsertRequest;
+import io.milvus.param.MetricType;
+import io.milvus.param.ParamUtils;
+import io.milvus.param.collection.FieldType;
+import io.milvus.param.dml.InsertParam;
+import io.milvus.param.dml.SearchParam;
+import io.milvus.response.DescCollResponseWrapper;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * MilvusVectorCodec 单元测试：与 SDK 装箱路径的编码结果对比
+ */
+@DisplayName("MilvusVectorCodec - 向量编码测试")
+class MilvusVectorCodecTest {
+
+    private static final int DIM = 8;
+
+    private final Random random = new Random(7);
+
+    @Test
+    @DisplayName("查询向量编码应与SDK生成的PlaceholderGroup逐字节一致")
+    void placeholderGroupShouldMatchSdk() {
+        List<float[]> vectors = List.of(randomVector(), randomVector(), randomVector());
+
+        ByteString encoded = MilvusVectorCodec.placeholderGroup(vectors);
+
+        assertThat(encoded).isEqualTo(sdkPlaceholderGroup(vectors));
+        assertThat(MilvusVectorCodec.placeholderGroup(vectors.get(0)))
+                .isEqualTo(sdkPlaceholderGroup(List.of(vectors.get(0))));
+    }
+
+    @Test
+    @DisplayName("复用线程缓冲区不应影响已返回的编码结果")
+    void reusedBufferShouldNotCorruptEarlierResults() {
+        float[] first = randomVector();
+        ByteString firstEncoded = MilvusVectorCodec.placeholderGroup(first);
+        byte[] snapshot = firstEncoded.toByteArray();
+
+        MilvusVectorCodec.placeholderGroup(randomVector());
+        // 超出初始缓冲区，触发扩容
+        MilvusVectorCodec.placeholderGroup(new float[4096]);
+
+        assertThat(firstEncoded.toByteArray()).isEqualTo(snapshot);
+        assertThat(firstEncoded).isEqualTo(sdkPlaceholderGroup(List.of(first)));
+    }
+
+    @Test
+    @DisplayName("写入向量字段应与SDK生成的字段数据一致")
+    void floatVectorFieldShouldMatchSdk() {
+        List<float[]> vectors = List.of(randomVector(), randomVector());
+
+        FieldData encoded = MilvusVectorCodec.floatVectorField("vector", vectors);
+
+        assertThat(encoded).isEqualTo(sdkVectorField(vectors));
+        assertThat(encoded.getVectors().getDim()).isEqualTo(DIM);
+        assertThat(encoded.getVectors().getFloatVector().getDataCount()).isEqualTo(2 * DIM);
+    }
+
+    @Test
+    @DisplayName("维度不一致或为空时应拒绝编码")
+    void shouldRejectInvalidVectors() {
+        List<float[]> mixed = List.of(new float[DIM], new float[DIM + 1]);
+
+        assertThatThrownBy(() -> MilvusVectorCodec.placeholderGroup(mixed))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> MilvusVectorCodec.floatVectorField("vector", mixed))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> MilvusVectorCodec.placeholderGroup(List.of()))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private ByteString sdkPlaceholderGroup(List<float[]> vectors) {
+        SearchParam param = SearchParam.newBuilder()
+                .withCollectionName("test")
+                .withMetricType(MetricType.COSINE)
+                .withTopK(5)
+                .withVectors(boxed(vectors))
+                .withVectorFieldName("vector")
+                .build();
+        return ParamUtils.convertSearchParam(param).getPlaceholderGroup();
+    }
+
+    private FieldData sdkVectorField(List<float[]> vectors) {
+        FieldType vectorField = FieldType.newBuilder()
+                .withName("vector")
+                .withDataType(DataType.FloatVector)
+                .withDimension(DIM)
+                .build();
+        DescribeCollectionResponse desc = DescribeCollectionResponse.newBuilder()
+                .setCollectionName("test")
+                .setSchema(CollectionSchema.newBuilder()
+                        .setName("test")
+                        .addFields(ParamUtils.ConvertField(vectorField)))
+                .build();
+        InsertParam param = InsertParam.newBuilder()
+                .withCollectionName("test")
+                .withFields(List.of(new InsertParam.Field("vector", boxed(vectors))))
+                .build();
+        InsertRequest request = new ParamUtils.InsertBuilderWrapper(param, new DescCollResponseWrapper(desc))
+                .buildInsertRequest();
+        return request.getFieldsData(0);
+    }
+
+    private static List<List<Float>> boxed(List<float[]> vectors) {
+        List<List<Float>> result = new ArrayList<>();
+        for (float[] vector : vectors) {
+            List<Float> list = new ArrayList<>();
+            for (float v : vector) {
+                list.add(v);
+            }
+            result.add(list);
+        }
+        return result;
+    }
+
+    private float[] randomVector() {
+        float[] vector = new float[DIM];
+        for (int i = 0; i < DIM; i++) {
+            vector[i] = random.nextFloat() * 2 - 1;
+        }
+        return vector;
+    }
+}
@@ -0,0 +1,32 @@
+-- ============================================
+-- 知识片段关键词检索升级
+-- ============================================
+-- 适用: 按 1.0.0 版 数据库设计.sql 创建的已有数据库（新建的数据库已包含以下内容，无需执行）
+-- 执行: psql -U postgres -d echocampus_bot -f V2__knowledge_chunks_lexical_search.sql
+-- 可重复执行；添加存储生成列会重写 knowledge_chunks 表，片段较多时在低峰期执行
+--
+-- 1. content_tsv: english 分词结果的存储生成列，字母数字词（课程代码、教室号等）的全文检索用
+-- 2. pg_trgm 三元组索引: 中文片段的关键词检索用（english 分词不切分中文），ILIKE '%子串%' 走该索引；
+--    数据库的 LC_CTYPE 需为 UTF-8 的非 C 区域（如 en_US.utf8，postgres 官方镜像默认），否则汉字不计入三元组
+
+BEGIN;
+
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+ALTER TABLE knowledge_chunks
+    ADD COLUMN IF NOT EXISTS content_tsv TSVECTOR GENERATED ALWAYS AS (to_tsvector('english', content)) STORED;
+
+-- 旧版全文索引建在表达式 to_tsvector('english', content) 上，改建到 content_tsv 列
+DO $$
+BEGIN
+    IF EXISTS (SELECT 1 FROM pg_indexes
+               WHERE indexname = 'idx_knowledge_chunks_content_search' AND indexdef NOT LIKE '%content_tsv%') THEN
+        DROP INDEX idx_knowledge_chunks_content_search;
+    END IF;
+END
+$$;
+CREATE INDEX IF NOT EXISTS idx_knowledge_chunks_content_search ON knowledge_chunks USING gin(content_tsv);
+
+CREATE INDEX IF NOT EXISTS idx_knowledge_chunks_content_trgm ON knowledge_chunks USING gin(content gin_trgm_ops);
+
+COMMIT;
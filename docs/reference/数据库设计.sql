@@ -4,6 +4,10 @@
 -- 最后更新: 2026年1月14日
 -- 版本: 1.0.0
 -- 注意: 数据库已由Docker环境变量自动创建，此处直接使用
+-- 已有数据库的升级脚本见 migrations/ 目录，按版本号顺序执行
+
+-- 三元组索引（中文片段的关键词检索）
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
 
 -- ============================================
 -- 1. 用户表 (users)
@@ -168,6 +172,7 @@ CREATE TABLE knowledge_chunks (
     token_count INTEGER DEFAULT 0,
     start_position INTEGER,  -- 在文档中的起始位置
     end_position INTEGER,  -- 在文档中的结束位置
+    content_tsv TSVECTOR GENERATED ALWAYS AS (to_tsvector('english', content)) STORED,  -- 全文检索分词结果,避免检索时重复计算
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
 );
 
@@ -372,7 +377,10 @@ CREATE TRIGGER trigger_update_doc_vector_count
 -- 为全文搜索创建索引
 CREATE INDEX idx_knowledge_docs_title_search ON knowledge_docs USING gin(to_tsvector('english', title));
 CREATE INDEX idx_knowledge_docs_description_search ON knowledge_docs USING gin(to_tsvector('english', description));
-CREATE INDEX idx_knowledge_chunks_content_search ON knowledge_chunks USING gin(to_tsvector('english', content));
+CREATE INDEX idx_knowledge_chunks_content_search ON knowledge_chunks USING gin(content_tsv);
+-- english 分词不切分中文，中文子串匹配（ILIKE '%子串%'）使用三元组索引
+CREATE INDEX idx_knowledge_chunks_content_trgm ON knowledge_chunks USING gin(content gin_trgm_ops);
+-- 已有数据库升级: migrations/V2__knowledge_chunks_lexical_search.sql
 
 -- 为JSONB字段创建索引
 CREATE INDEX idx_messages_metadata ON messages USING gin(metadata);